@@ -0,0 +1,17 @@
+package edu.brown.lasvegas;
+
+import edu.brown.lasvegas.lvfs.LVFSFileType;
+
+/**
+ * Defines how the files of a column file are laid out in the data node.
+ * This is part of <b>physical</b> data schemes, recorded in {@link LVColumnFile}
+ * so that readers know which files to open without probing the file system.
+ */
+public enum ColumnFileLayout {
+    /** The data file and each index file are separate files ({@link LVFSFileType#DATA_FILE} etc). */
+    SEPARATE,
+    /** All files are embedded in one segment file ({@link LVFSFileType#SEGMENT_FILE}). */
+    SEGMENT,
+    /** The column is stored in the PAX file of its column group ({@link LVFSFileType#PAX_FILE}), shared with other columns. */
+    PAX,
+}
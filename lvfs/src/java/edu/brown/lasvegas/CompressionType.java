@@ -35,4 +35,51 @@ public enum CompressionType {
     GZIP_BEST_COMPRESSION,
     /** kind of null. */
     INVALID,
+    // ordinals are serialized (see LVColumnFile#write()), so new types are appended after INVALID.
+    /**
+     * Frame-of-reference or delta encoding with bit-packing, chosen for each block of values.
+     * Only for integer and date/time columns. Great for sorted keys and dates, and decoding
+     * is much cheaper than Snappy.
+     */
+    BITPACK,
+    /**
+     * LZ4 block compression, compressed with the fast compressor.
+     * The compression ratio is close to Snappy, but decompression is even faster.
+     * See <a href="http://code.google.com/p/lz4">lz4</a>.
+     */
+    LZ4,
+    /**
+     * LZ4 block compression, compressed with the high-compression (HC) compressor.
+     * Compression is much slower than {@link #LZ4}, but the ratio is better while decompression
+     * is as fast as {@link #LZ4}. Good for cold replicas that still need interactive queries,
+     * where {@link #GZIP_BEST_COMPRESSION} is too slow to decompress.
+     */
+    LZ4_HC,
+    ;
+
+    /**
+     * Returns whether this compression scheme can be applied to columns of the given type.
+     */
+    public boolean isSupported (ColumnType columnType) {
+        switch (this) {
+        case INVALID:
+            return false;
+        case BITPACK:
+            switch (columnType) {
+            case BIGINT:
+            case INTEGER:
+            case SMALLINT:
+            case TINYINT:
+            case BOOLEAN:
+            case DATE:
+            case TIME:
+            case TIMESTAMP:
+                return true;
+            default:
+                return false;
+            }
+        default:
+            return true;
+        }
+    }
 }
\ No newline at end of file
@@ -32,7 +32,7 @@ import edu.brown.lasvegas.lvfs.ValueIndex;
  * All column files that belong to the same replica partition
  * are located in the same node.</p>
  */
-@Entity
+@Entity(version=3)
 public class LVColumnFile implements LVObject {
     
     /** The Constant IX_PARTITION_ID. */
@@ -72,8 +72,10 @@ public class LVColumnFile implements LVObject {
 
     /**
      * Byte size of this file. Only used as statistics.
+     * 64-bit so that a partition can exceed 2GB. Was int until entity version 1;
+     * BDB widens the records stored in version 0 when it evolves the class.
      */
-    private int fileSize;
+    private long fileSize;
     
     /** number of tuples in this file. kind of de-normalization too. (but handy to have it here!) */
     private int tupleCount;
@@ -106,6 +108,18 @@ public class LVColumnFile implements LVObject {
     /** file size without gzip/snappy compression (in KB).  Set only when the column file is GZIP/SNAPPY-compressed (otherwise 0). */
     private int uncompressedSizeKB;
 
+    /**
+     * Byte size of the Bloom filter file ({@link edu.brown.lasvegas.lvfs.BloomFilter}) of this column file.
+     * 0 if the column file has no Bloom filter. Added in entity version 2.
+     */
+    private int bloomFilterSize;
+
+    /**
+     * How the files of this column file are laid out (separate files, a segment file, or a PAX file).
+     * Added in entity version 3. null in the records stored before that, which means {@link ColumnFileLayout#SEPARATE}.
+     */
+    private ColumnFileLayout layout;
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -114,7 +128,8 @@ public class LVColumnFile implements LVObject {
             + " localFilePath=" + localFilePath + ", FileSize=" + fileSize + ", checksum=" + checksum
             + ", columnType=" + columnType + ", compressionType=" + compressionType + ", sorted=" + sorted
             + ", dictionaryBytesPerEntry=" + dictionaryBytesPerEntry + ", distinctValues=" + distinctValues
-            + ", runCount=" + runCount + ", uncompressedSizeKB=" + uncompressedSizeKB + ",tupleCount=" + tupleCount;
+            + ", runCount=" + runCount + ", uncompressedSizeKB=" + uncompressedSizeKB + ",tupleCount=" + tupleCount
+            + ", bloomFilterSize=" + bloomFilterSize + ", layout=" + getLayout();
     }
 
     /**
@@ -132,13 +147,15 @@ public class LVColumnFile implements LVObject {
         out.writeInt(uncompressedSizeKB);
         out.writeInt(columnFileId);
         out.writeInt(columnId);
-        out.writeInt(fileSize);
+        out.writeLong(fileSize);
         out.writeInt(tupleCount);
         out.writeBoolean(localFilePath == null);
         if (localFilePath != null) {
             out.writeUTF(localFilePath);
         }
         out.writeInt(partitionId);
+        out.writeInt(bloomFilterSize);
+        out.writeInt(getLayout().ordinal());
     }
     
     /**
@@ -156,7 +173,7 @@ public class LVColumnFile implements LVObject {
         uncompressedSizeKB = in.readInt();
         columnFileId = in.readInt();
         columnId = in.readInt();
-        fileSize = in.readInt();
+        fileSize = in.readLong();
         tupleCount = in.readInt();
         if (in.readBoolean()) {
             localFilePath = null;
@@ -164,6 +181,8 @@ public class LVColumnFile implements LVObject {
             localFilePath = in.readUTF();
         }
         partitionId = in.readInt();
+        bloomFilterSize = in.readInt();
+        layout = ColumnFileLayout.values()[in.readInt()];
     }
     /** Creates and returns a new instance of this class from the data input.*/
     public static LVColumnFile read (DataInput in) throws IOException {
@@ -258,7 +277,7 @@ public class LVColumnFile implements LVObject {
      *
      * @return the byte size of this file
      */
-    public int getFileSize() {
+    public long getFileSize() {
         return fileSize;
     }
 
@@ -267,7 +286,7 @@ public class LVColumnFile implements LVObject {
      *
      * @param fileSize the new byte size of this file
      */
-    public void setFileSize(int fileSize) {
+    public void setFileSize(long fileSize) {
         this.fileSize = fileSize;
     }
     
@@ -432,4 +451,49 @@ public class LVColumnFile implements LVObject {
     public void setUncompressedSizeKB(int uncompressedSizeKB) {
         this.uncompressedSizeKB = uncompressedSizeKB;
     }
+
+    /**
+     * Gets the byte size of the Bloom filter file. 0 if the column file has no Bloom filter.
+     *
+     * @return the byte size of the Bloom filter file
+     */
+    public int getBloomFilterSize() {
+        return bloomFilterSize;
+    }
+
+    /**
+     * Sets the byte size of the Bloom filter file.
+     *
+     * @param bloomFilterSize the new byte size of the Bloom filter file. 0 if the column file has no Bloom filter
+     */
+    public void setBloomFilterSize(int bloomFilterSize) {
+        this.bloomFilterSize = bloomFilterSize;
+    }
+
+    /**
+     * Returns whether the column file comes with a Bloom filter file.
+     *
+     * @return whether the column file comes with a Bloom filter file
+     */
+    public boolean hasBloomFilter() {
+        return bloomFilterSize > 0;
+    }
+
+    /**
+     * Gets how the files of this column file are laid out.
+     *
+     * @return how the files of this column file are laid out. never null
+     */
+    public ColumnFileLayout getLayout() {
+        return layout == null ? ColumnFileLayout.SEPARATE : layout;
+    }
+
+    /**
+     * Sets how the files of this column file are laid out.
+     *
+     * @param layout the new layout of the files of this column file
+     */
+    public void setLayout(ColumnFileLayout layout) {
+        this.layout = layout;
+    }
 }
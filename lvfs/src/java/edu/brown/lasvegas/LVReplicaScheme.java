@@ -4,7 +4,9 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.sleepycat.persist.model.Entity;
 import com.sleepycat.persist.model.PrimaryKey;
@@ -15,7 +17,7 @@ import com.sleepycat.persist.model.SecondaryKey;
  * A replica scheme that specifies the partitioning and sorting
  * to replicate a table.
  */
-@Entity
+@Entity(version=3)
 public class LVReplicaScheme implements LVObject {
     public static final String IX_GROUP_ID = "IX_GROUP_ID";
     /**
@@ -59,6 +61,56 @@ public class LVReplicaScheme implements LVObject {
         }
     }
     
+    /**
+     * Column groups of co-accessed columns, which are stored together in one PAX file
+     * ({@link edu.brown.lasvegas.lvfs.PaxColumnGroup}) with per-column mini-pages in each block.
+     * The key is column ID and the value is the ID of the group (unique only in this replica scheme).
+     * Columns not in this map are stored in their own files.
+     * Added in entity version 1. Schemes stored before that have no column groups.
+     */
+    private HashMap<Integer, Integer> columnGroups = new HashMap<Integer, Integer>();
+    /**
+     * Gets the column group of specified column.
+     * @param columnId ID of the column
+     * @return the ID of the column group. null if the column is stored in its own files
+     */
+    public Integer getColumnGroup(int columnId) {
+        return columnGroups.get(columnId);
+    }
+
+    /**
+     * IDs of dictionary-compressed columns whose partitions share one dictionary
+     * for each fracture ({@link edu.brown.lasvegas.lvfs.data.DictionaryUnifier}).
+     * Compressed values of such columns can be compared and moved between partitions
+     * without decompression. Other columns have their own dictionary for each partition.
+     * Added in entity version 2. Schemes stored before that share no dictionaries.
+     */
+    private HashSet<Integer> sharedDictionaryColumnIds = new HashSet<Integer>();
+    /**
+     * Returns whether the partitions of specified column share one dictionary.
+     * @param columnId ID of the column
+     * @return whether the column uses a shared dictionary
+     */
+    public boolean isSharedDictionary(int columnId) {
+        return sharedDictionaryColumnIds.contains(columnId);
+    }
+
+    /**
+     * IDs of columns whose files come with a Bloom filter ({@link edu.brown.lasvegas.lvfs.BloomFilter}),
+     * typically join or lookup keys. Only effective for compression types that support Bloom filters
+     * ({@link edu.brown.lasvegas.lvfs.ColumnFileBundle#isBloomFilterSupported(CompressionType)}).
+     * Added in entity version 3. Schemes stored before that have no Bloom filters.
+     */
+    private HashSet<Integer> bloomFilterColumnIds = new HashSet<Integer>();
+    /**
+     * Returns whether the files of specified column come with a Bloom filter.
+     * @param columnId ID of the column
+     * @return whether the column has Bloom filters
+     */
+    public boolean isBloomFilterColumn(int columnId) {
+        return bloomFilterColumnIds.contains(columnId);
+    }
+
     /**
      * To string.
      *
@@ -68,7 +120,9 @@ public class LVReplicaScheme implements LVObject {
     @Override
     public String toString() {
         return "ReplicaScheme-" + schemeId + " in Group-" + groupId
-            + ", sortColumnId=" + sortColumnId + ", compressionSchemes=" + columnCompressionSchemes;
+            + ", sortColumnId=" + sortColumnId + ", compressionSchemes=" + columnCompressionSchemes
+            + ", columnGroups=" + columnGroups + ", sharedDictionaryColumnIds=" + sharedDictionaryColumnIds
+            + ", bloomFilterColumnIds=" + bloomFilterColumnIds;
     }
 
     @Override
@@ -87,6 +141,19 @@ public class LVReplicaScheme implements LVObject {
             out.writeInt(entry.getKey());
             out.writeInt(entry.getValue() == null ? CompressionType.INVALID.ordinal() : entry.getValue().ordinal());
         }
+        out.writeInt(columnGroups.size());
+        for (Map.Entry<Integer, Integer> entry : columnGroups.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(sharedDictionaryColumnIds.size());
+        for (Integer columnId : sharedDictionaryColumnIds) {
+            out.writeInt(columnId);
+        }
+        out.writeInt(bloomFilterColumnIds.size());
+        for (Integer columnId : bloomFilterColumnIds) {
+            out.writeInt(columnId);
+        }
     }
     @Override
     public void readFields(DataInput in) throws IOException {
@@ -105,6 +172,23 @@ public class LVReplicaScheme implements LVObject {
             assert (!columnCompressionSchemes.containsKey(key));
             columnCompressionSchemes.put(key, CompressionType.values()[val]);
         }
+        columnGroups.clear();
+        int groupCount = in.readInt();
+        for (int i = 0; i < groupCount; ++i) {
+            int key = in.readInt();
+            int val = in.readInt();
+            columnGroups.put(key, val);
+        }
+        sharedDictionaryColumnIds.clear();
+        int sharedCount = in.readInt();
+        for (int i = 0; i < sharedCount; ++i) {
+            sharedDictionaryColumnIds.add(in.readInt());
+        }
+        bloomFilterColumnIds.clear();
+        int bloomFilterCount = in.readInt();
+        for (int i = 0; i < bloomFilterCount; ++i) {
+            bloomFilterColumnIds.add(in.readInt());
+        }
     }
     /** Creates and returns a new instance of this class from the data input.*/
     public static LVReplicaScheme read (DataInput in) throws IOException {
@@ -189,4 +273,58 @@ public class LVReplicaScheme implements LVObject {
     public void setColumnCompressionSchemes(Map<Integer, CompressionType> columnCompressionSchemes) {
         this.columnCompressionSchemes = new HashMap<Integer, CompressionType>(columnCompressionSchemes);
     }
+
+    /**
+     * Gets the column groups of co-accessed columns.
+     *
+     * @return the column groups of co-accessed columns
+     */
+    public HashMap<Integer, Integer> getColumnGroups() {
+        return columnGroups;
+    }
+
+    /**
+     * Sets the column groups of co-accessed columns.
+     *
+     * @param columnGroups the new column groups of co-accessed columns
+     */
+    public void setColumnGroups(Map<Integer, Integer> columnGroups) {
+        this.columnGroups = new HashMap<Integer, Integer>(columnGroups);
+    }
+
+    /**
+     * Gets the IDs of columns whose partitions share one dictionary.
+     *
+     * @return the IDs of columns whose partitions share one dictionary
+     */
+    public HashSet<Integer> getSharedDictionaryColumnIds() {
+        return sharedDictionaryColumnIds;
+    }
+
+    /**
+     * Sets the IDs of columns whose partitions share one dictionary.
+     *
+     * @param sharedDictionaryColumnIds the new IDs of columns whose partitions share one dictionary
+     */
+    public void setSharedDictionaryColumnIds(Set<Integer> sharedDictionaryColumnIds) {
+        this.sharedDictionaryColumnIds = new HashSet<Integer>(sharedDictionaryColumnIds);
+    }
+
+    /**
+     * Gets the IDs of columns whose files come with a Bloom filter.
+     *
+     * @return the IDs of columns whose files come with a Bloom filter
+     */
+    public HashSet<Integer> getBloomFilterColumnIds() {
+        return bloomFilterColumnIds;
+    }
+
+    /**
+     * Sets the IDs of columns whose files come with a Bloom filter.
+     *
+     * @param bloomFilterColumnIds the new IDs of columns whose files come with a Bloom filter
+     */
+    public void setBloomFilterColumnIds(Set<Integer> bloomFilterColumnIds) {
+        this.bloomFilterColumnIds = new HashSet<Integer>(bloomFilterColumnIds);
+    }
 }
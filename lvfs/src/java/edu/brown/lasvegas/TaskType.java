@@ -30,6 +30,8 @@ import edu.brown.lasvegas.lvfs.data.task.RecoverPartitionFromRepartitionedFilesT
 import edu.brown.lasvegas.lvfs.data.task.RecoverPartitionFromRepartitionedFilesTaskRunner;
 import edu.brown.lasvegas.lvfs.data.task.RepartitionTaskParameters;
 import edu.brown.lasvegas.lvfs.data.task.RepartitionTaskRunner;
+import edu.brown.lasvegas.lvfs.data.task.ShareDictionariesTaskParameters;
+import edu.brown.lasvegas.lvfs.data.task.ShareDictionariesTaskRunner;
 
 /**
  * Defines types of local Tasks ({@link TaskJob}).
@@ -99,6 +101,14 @@ public enum TaskType {
      * @see MergePartitionSameSchemeTaskRunner
      */
     MERGE_PARTITION_SAME_SCHEME,
+
+    /**
+     * Sub task of {@link JobType#IMPORT_FRACTURE}.
+     * Merges the dictionaries of dictionary-compressed columns in all partitions of a replica
+     * into one shared dictionary and re-codes the partitions in the node with it.
+     * @see ShareDictionariesTaskRunner
+     */
+    SHARE_DICTIONARIES,
     
     /**
      * Sub task of a few jobs.
@@ -194,6 +204,8 @@ public enum TaskType {
             return new RecoverPartitionFromRepartitionedFilesTaskParameters();
         case MERGE_PARTITION_SAME_SCHEME:
             return new MergePartitionSameSchemeTaskParameters();
+        case SHARE_DICTIONARIES:
+            return new ShareDictionariesTaskParameters();
         case DELETE_PARTITION_FILES:
             return new DeletePartitionFilesTaskParameters();
         case DELETE_TMP_FILES:
@@ -235,6 +247,8 @@ public enum TaskType {
             return new RecoverPartitionFromRepartitionedFilesTaskRunner();
         case MERGE_PARTITION_SAME_SCHEME:
             return new MergePartitionSameSchemeTaskRunner();
+        case SHARE_DICTIONARIES:
+            return new ShareDictionariesTaskRunner();
         case DELETE_PARTITION_FILES:
             return new DeletePartitionFilesTaskRunner();
         case DELETE_TMP_FILES:
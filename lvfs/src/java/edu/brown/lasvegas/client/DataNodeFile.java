@@ -7,6 +7,7 @@ import org.apache.hadoop.conf.Configuration;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.VirtualFileInputStream;
 import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
 import edu.brown.lasvegas.protocol.LVDataProtocol;
 
 /**
@@ -38,6 +39,11 @@ public class DataNodeFile implements VirtualFile {
         throw new IOException ("output not supported");
     }
 
+    @Override
+    public VirtualFilePositionalInput getPositionalInput() throws IOException {
+        return null; // so far our data node protocol provides only a stream 
+    }
+
     @Override
     public long length() throws IOException {
         return dataNode.getFileLength(localPath);
@@ -17,7 +17,7 @@ import edu.brown.lasvegas.protocol.LVDataProtocol;
  */
 public class DataNodeFileInputStream extends VirtualFileInputStream {
     public DataNodeFileInputStream (Configuration conf, LVDataProtocol dataNode, String localPath) throws IOException {
-        int[] statuses = dataNode.getCombinedFileStatus(localPath);
+        long[] statuses = dataNode.getCombinedFileStatus(localPath);
         boolean exists = statuses[1] != 0;
         if (!exists) {
             throw new FileNotFoundException("this file doesn't exist in the data node:" + localPath);
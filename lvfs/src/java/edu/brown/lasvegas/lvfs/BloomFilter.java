@@ -0,0 +1,63 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.IOException;
+
+/**
+ * A Bloom filter is a small sidecar file that tells whether a key might be
+ * in the data file, without reading the data file.
+ * 
+ * <p>It never returns false for a key in the data file (no false negatives), but it
+ * might return true for a key not in the data file (false positives) with a small
+ * probability determined by the number of bits per key. This is useful to skip
+ * partitions and files during lookups and semi-joins on non-sorting key columns,
+ * for which value index ({@link ValueIndex}) and zone map ({@link ZoneMap}) don't help.</p>
+ * 
+ * <p>Just like position index, this file is supposed to be small. So, we read/write them at once.</p>
+ * @param <T> Value type
+ * @param <AT> Array type
+ */
+public interface BloomFilter<T extends Comparable<T>, AT> {
+    /** default number of bits per distinct key. gives about 1% false positives. */
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    /**
+     * Tests a single key.
+     * @param key the key to test
+     * @return false if the key is definitely not in the data file. true if it might be.
+     */
+    public boolean mightContain (T key);
+
+    /**
+     * Tests a batch of keys.
+     * @param keys the keys to test
+     * @param off offset of the keys
+     * @param len number of keys to test
+     * @param results receives the result for each key at the same index as the keys (results[off + i]).
+     * @return the number of keys that might be in the data file
+     */
+    public int mightContain (AT keys, int off, int len, boolean[] results);
+
+    /**
+     * Tests whether any of the keys might be in the data file.
+     * If this returns false, the data file can be skipped entirely.
+     * @param keys the keys to test
+     * @param off offset of the keys
+     * @param len number of keys to test
+     * @return false if all of the keys are definitely not in the data file.
+     */
+    public boolean mightContainAny (AT keys, int off, int len);
+
+    /** Returns the number of distinct keys added to this filter. */
+    public int getKeyCount ();
+
+    /** Returns the number of hash functions. */
+    public int getHashCount ();
+
+    /** Returns the number of bits in this filter. */
+    public long getBitCount ();
+
+    /**
+     * Writes out the Bloom filter file.
+     */
+    public void writeToFile (VirtualFile file) throws IOException;
+}
@@ -2,10 +2,12 @@ package edu.brown.lasvegas.lvfs;
 
 import java.io.IOException;
 
+import edu.brown.lasvegas.ColumnFileLayout;
 import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.client.DataNodeFile;
+import edu.brown.lasvegas.lvfs.local.LocalPaxFile;
 import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
 import edu.brown.lasvegas.protocol.LVDataProtocol;
 import edu.brown.lasvegas.util.VirtualFileUtil;
@@ -36,6 +38,7 @@ public final class ColumnFileBundle {
             parentFolder.mkdirs();
             assert (parentFolder.exists());
         }
+        this.columnFileId = file.getColumnFileId();
         this.columnType = file.getColumnType();
         this.compressionType = file.getCompressionType();
         this.dataFileChecksum = file.getChecksum();
@@ -47,6 +50,37 @@ public final class ColumnFileBundle {
         this.uncompressedSizeKB = file.getUncompressedSizeKB();
         
         String filename = filePath.getName(); // note that this filename is WITHOUT file extension.
+        if (file.getLayout() == ColumnFileLayout.PAX) {
+            // the column is stored in the PAX file of its column group, which is shared with other columns
+            VirtualFile pax = parentFolder.getChildFile(LVFSFileType.PAX_FILE.appendExtension(filename));
+            this.dataFile = pax;
+            this.paxFile = pax;
+            this.paxColumnId = file.getColumnId();
+            // its tuple-based index files are beside the PAX file
+            if (isSorted()) {
+                this.valueFile = PaxColumnGroup.getIndexFile(pax, paxColumnId, LVFSFileType.VALUE_FILE);
+            }
+            if (isZoneMapSupported(compressionType)) {
+                this.zoneMapFile = PaxColumnGroup.getIndexFile(pax, paxColumnId, LVFSFileType.ZONE_MAP_FILE);
+            }
+            if (file.hasBloomFilter()) {
+                this.bloomFilterFile = PaxColumnGroup.getIndexFile(pax, paxColumnId, LVFSFileType.BLOOM_FILTER_FILE);
+            }
+            return;
+        }
+        if (file.getLayout() == ColumnFileLayout.SEGMENT) {
+            // the column file has been packed into a single file
+            VirtualFile segment = parentFolder.getChildFile(LVFSFileType.SEGMENT_FILE.appendExtension(filename));
+            ColumnFileBundle packed = ColumnSegment.open(segment);
+            this.segmentFile = segment;
+            this.dataFile = packed.dataFile;
+            this.dictionaryFile = packed.dictionaryFile;
+            this.positionFile = packed.positionFile;
+            this.valueFile = packed.valueFile;
+            this.zoneMapFile = packed.zoneMapFile;
+            this.bloomFilterFile = packed.bloomFilterFile;
+            return;
+        }
         this.dataFile = parentFolder.getChildFile(LVFSFileType.DATA_FILE.appendExtension(filename));
         if (compressionType == CompressionType.DICTIONARY) {
             this.dictionaryFile = parentFolder.getChildFile(LVFSFileType.DICTIONARY_FILE.appendExtension(filename));
@@ -58,6 +92,51 @@ public final class ColumnFileBundle {
         if (isSorted()) {
             this.valueFile = parentFolder.getChildFile(LVFSFileType.VALUE_FILE.appendExtension(filename));
         }
+        if (isZoneMapSupported(compressionType)) {
+            // files written before zone maps were introduced don't have it. readers have to check exists()
+            this.zoneMapFile = parentFolder.getChildFile(LVFSFileType.ZONE_MAP_FILE.appendExtension(filename));
+        }
+        if (file.hasBloomFilter()) {
+            // Bloom filters are optional (only for chosen columns). the record tells whether it has one
+            this.bloomFilterFile = parentFolder.getChildFile(LVFSFileType.BLOOM_FILTER_FILE.appendExtension(filename));
+        }
+    }
+
+    /**
+     * Returns whether column files of the given compression type come with a zone map file ({@link ZoneMap}).
+     * RLE files don't need it because runs already tell the values of consecutive tuples.
+     */
+    public static boolean isZoneMapSupported (CompressionType compressionType) {
+        switch (compressionType) {
+        case NONE:
+        case DICTIONARY:
+        case SNAPPY:
+        case GZIP_BEST_COMPRESSION:
+        case LZ4:
+        case LZ4_HC:
+        case BITPACK:
+            return true;
+        default:
+            return false;
+        }
+    }
+    /**
+     * Returns whether column files of the given compression type can come with a Bloom filter file ({@link BloomFilter}).
+     * Dictionary-compressed files don't need it because the dictionary tells the exact membership.
+     * RLE files are not supported.
+     */
+    public static boolean isBloomFilterSupported (CompressionType compressionType) {
+        switch (compressionType) {
+        case NONE:
+        case SNAPPY:
+        case GZIP_BEST_COMPRESSION:
+        case LZ4:
+        case LZ4_HC:
+        case BITPACK:
+            return true;
+        default:
+            return false;
+        }
     }
     /** this constructor extracts the written files from the given writer. */
     public ColumnFileBundle (ColumnFileWriterBundle writer, boolean sorted) throws IOException {
@@ -76,8 +155,12 @@ public final class ColumnFileBundle {
         this.positionFile = writer.getPositionFile();
         this.tmpFile = null;
         this.valueFile = writer.getValueFile();
+        this.zoneMapFile = writer.getZoneMapFile();
+        this.bloomFilterFile = writer.getBloomFilterFile();
     }
     
+    /** ID of the column file ({@link LVColumnFile#getColumnFileId()}). 0 if the files are not registered yet. */
+    private int columnFileId;
     /** main data file. always exists. */
     private VirtualFile dataFile;
     /** CRC32 of the data file. */
@@ -88,8 +171,18 @@ public final class ColumnFileBundle {
     private VirtualFile positionFile;
     /** value index file. only when the file is sorted by the column. */
     private VirtualFile valueFile;
+    /** zone map file. only for some file types. might not exist for old files. */
+    private VirtualFile zoneMapFile;
+    /** Bloom filter file. only for chosen columns. might not exist. */
+    private VirtualFile bloomFilterFile;
     /** temporary file. only while constructing a new dictionary-encoded file. */
     private VirtualFile tmpFile;
+    /** the segment file ({@link ColumnSegment}) if the files above are embedded in it. null otherwise. */
+    private VirtualFile segmentFile;
+    /** the PAX file ({@link PaxColumnGroup}) if the column is stored in it with other columns. null otherwise. */
+    private VirtualFile paxFile;
+    /** ID of the column in {@link #paxFile}. */
+    private int paxColumnId;
     
     /** Original (before dictionary compression, if any) value type of the column file. */
     private CompressionType compressionType;
@@ -114,7 +207,7 @@ public final class ColumnFileBundle {
     /** number of tuples in the file. */
     private int tupleCount = 0;
 
-    /** file size without gzip/snappy compression in KB.  Set only when the column file is GZIP/SNAPPY-compressed (otherwise 0). */
+    /** file size without block compression in KB.  Set only when the column file is block-compressed (GZIP/SNAPPY/LZ4) (otherwise 0). */
     private int uncompressedSizeKB;
     
     /**
@@ -123,7 +216,8 @@ public final class ColumnFileBundle {
     @Override
     public String toString() {
         return "FileBundle[ dataFile = " + dataFile + ",dictionaryFile=" + dictionaryFile
-        + ",positionFile=" + positionFile + ", valueFile=" + valueFile
+        + ",positionFile=" + positionFile + ", valueFile=" + valueFile + ", zoneMapFile=" + zoneMapFile + ", bloomFilterFile=" + bloomFilterFile
+        + ", segmentFile=" + segmentFile + ", paxFile=" + paxFile
         + "]. properties=[compressionType=" + compressionType + ", columnType=" + columnType
         + ", dictionaryBytesPerEntry=" + dictionaryBytesPerEntry + ", sorted=" + sorted
         + ", distinctValues=" + distinctValues + ", runCount=" + runCount
@@ -132,10 +226,25 @@ public final class ColumnFileBundle {
     
     /** delete all files in this bundle. */
     public void deleteFiles () throws IOException {
+        if (paxFile != null) {
+            // the PAX file is shared with the other columns in the group. the first call deletes it
+            tryDeleteFile(paxFile);
+            tryDeleteFile(valueFile);
+            tryDeleteFile(zoneMapFile);
+            tryDeleteFile(bloomFilterFile);
+            return;
+        }
+        if (segmentFile != null) {
+            // the other files are slices of it
+            tryDeleteFile(segmentFile);
+            return;
+        }
         tryDeleteFile(dataFile);
         tryDeleteFile(dictionaryFile);
         tryDeleteFile(positionFile);
         tryDeleteFile(valueFile);
+        tryDeleteFile(zoneMapFile);
+        tryDeleteFile(bloomFilterFile);
         tryDeleteFile(tmpFile);
     }
     private static void tryDeleteFile (VirtualFile file) throws IOException {
@@ -156,12 +265,57 @@ public final class ColumnFileBundle {
         if (!destinationFolder.isDirectory()) {
             throw new IOException ("this isn't a folder: " + destinationFolder);
         }
+        if (paxFile != null) {
+            // moving the shared file would leave the other columns in the group pointing to the old path
+            throw new IOException ("a column in a PAX file must be moved with the other columns by moveColumnGroup(): " + this);
+        }
+        if (segmentFile != null) {
+            VirtualFile movedSegment = moveFile(destinationFolder, segmentFile, newName, LVFSFileType.SEGMENT_FILE.getExtension());
+            int id = columnFileId;
+            copyFilesFrom(ColumnSegment.open(movedSegment));
+            columnFileId = id;
+            return;
+        }
         dataFile = moveFile(destinationFolder, dataFile, newName, LVFSFileType.DATA_FILE.getExtension());
         dictionaryFile = moveFile(destinationFolder, dictionaryFile, newName, LVFSFileType.DICTIONARY_FILE.getExtension());
         positionFile = moveFile(destinationFolder, positionFile, newName, LVFSFileType.POSITION_FILE.getExtension());
         tmpFile = moveFile(destinationFolder, tmpFile, newName, LVFSFileType.TMP_DATA_FILE.getExtension());
         valueFile = moveFile(destinationFolder, valueFile, newName, LVFSFileType.VALUE_FILE.getExtension());
+        zoneMapFile = moveFile(destinationFolder, zoneMapFile, newName, LVFSFileType.ZONE_MAP_FILE.getExtension());
+        bloomFilterFile = moveFile(destinationFolder, bloomFilterFile, newName, LVFSFileType.BLOOM_FILTER_FILE.getExtension());
+    }
+
+    /**
+     * Moves the PAX file shared by the given columns and their index files to the given _local_ folder as one unit,
+     * and updates all the given bundles to point to the moved files.
+     * @param group all columns in the PAX file. They must share the same PAX file.
+     * @param newName the new name of the PAX file (without extension). The index files are named after it.
+     */
+    public static void moveColumnGroup (ColumnFileBundle[] group, LocalVirtualFile destinationFolder, String newName) throws IOException {
+        assert (group.length > 0);
+        VirtualFile oldPaxFile = group[0].paxFile;
+        for (ColumnFileBundle column : group) {
+            if (column.paxFile == null || !column.paxFile.getAbsolutePath().equals(oldPaxFile.getAbsolutePath())) {
+                throw new IOException ("not in the PAX file " + oldPaxFile + ": " + column);
+            }
+        }
+        if (!destinationFolder.exists()) {
+            destinationFolder.mkdirs();
+            if (!destinationFolder.exists()) {
+                throw new IOException ("couldn't create this folder: " + destinationFolder);
+            }
+        }
+        VirtualFile newPaxFile = group[0].moveFile(destinationFolder, oldPaxFile, newName, LVFSFileType.PAX_FILE.getExtension());
+        for (ColumnFileBundle column : group) {
+            String indexName = PaxColumnGroup.getIndexFileBaseName(newPaxFile.getName(), column.paxColumnId);
+            column.paxFile = newPaxFile;
+            column.dataFile = newPaxFile;
+            column.valueFile = column.moveFile(destinationFolder, column.valueFile, indexName, LVFSFileType.VALUE_FILE.getExtension());
+            column.zoneMapFile = column.moveFile(destinationFolder, column.zoneMapFile, indexName, LVFSFileType.ZONE_MAP_FILE.getExtension());
+            column.bloomFilterFile = column.moveFile(destinationFolder, column.bloomFilterFile, indexName, LVFSFileType.BLOOM_FILTER_FILE.getExtension());
+        }
     }
+
     private VirtualFile moveFile (LocalVirtualFile destinationFolder, VirtualFile file, String newName, String extension) throws IOException {
         if (file == null || !file.exists()) {
             return null;
@@ -186,7 +340,28 @@ public final class ColumnFileBundle {
         if (!destinationFolder.isDirectory()) {
             throw new IOException ("this isn't a folder: " + destinationFolder);
         }
+        if (paxFile != null) {
+            // the other columns in the group might have already copied it
+            VirtualFile copiedPax = destinationFolder.getChildFile(paxFile.getName());
+            if (!copiedPax.exists()) {
+                VirtualFileUtil.copyFile(paxFile, copiedPax);
+            }
+            ColumnFileBundle copied = new ColumnFileBundle();
+            copied.copyFilesFrom(this);
+            copied.dataFile = copiedPax;
+            copied.paxFile = copiedPax;
+            copied.valueFile = copyToLocal(destinationFolder, this.valueFile);
+            copied.zoneMapFile = copyToLocal(destinationFolder, this.zoneMapFile);
+            copied.bloomFilterFile = copyToLocal(destinationFolder, this.bloomFilterFile);
+            return copied;
+        }
+        if (segmentFile != null) {
+            ColumnFileBundle copied = ColumnSegment.open(copyToLocal(destinationFolder, segmentFile));
+            copied.columnFileId = this.columnFileId;
+            return copied;
+        }
         ColumnFileBundle copied = new ColumnFileBundle();
+        copied.columnFileId = this.columnFileId;
         copied.columnType = this.columnType;
         copied.compressionType = this.compressionType;
         copied.dataFile = copyToLocal(destinationFolder, this.dataFile);
@@ -201,8 +376,33 @@ public final class ColumnFileBundle {
         copied.tupleCount = this.tupleCount;
         copied.uncompressedSizeKB = this.uncompressedSizeKB;
         copied.valueFile = copyToLocal(destinationFolder, this.valueFile);
+        copied.zoneMapFile = copyToLocal(destinationFolder, this.zoneMapFile);
+        copied.bloomFilterFile = copyToLocal(destinationFolder, this.bloomFilterFile);
         return copied;
     }
+    /** takes the files and properties of the given bundle. */
+    private void copyFilesFrom (ColumnFileBundle other) {
+        this.columnFileId = other.columnFileId;
+        this.columnType = other.columnType;
+        this.compressionType = other.compressionType;
+        this.dataFile = other.dataFile;
+        this.dataFileChecksum = other.dataFileChecksum;
+        this.dictionaryBytesPerEntry = other.dictionaryBytesPerEntry;
+        this.dictionaryFile = other.dictionaryFile;
+        this.distinctValues = other.distinctValues;
+        this.positionFile = other.positionFile;
+        this.runCount = other.runCount;
+        this.sorted = other.sorted;
+        this.tmpFile = other.tmpFile;
+        this.tupleCount = other.tupleCount;
+        this.uncompressedSizeKB = other.uncompressedSizeKB;
+        this.valueFile = other.valueFile;
+        this.zoneMapFile = other.zoneMapFile;
+        this.bloomFilterFile = other.bloomFilterFile;
+        this.segmentFile = other.segmentFile;
+        this.paxFile = other.paxFile;
+        this.paxColumnId = other.paxColumnId;
+    }
     private VirtualFile copyToLocal (LocalVirtualFile destinationFolder, VirtualFile file) throws IOException {
         if (file == null || !file.exists()) {
             return null;
@@ -213,6 +413,22 @@ public final class ColumnFileBundle {
         return copiedFile;
     }
     
+    /**
+     * Returns the byte size of the main data file. For a column in a PAX file,
+     * this is the size of its mini-pages, not the size of the whole PAX file shared with the other columns.
+     */
+    public long getDataFileSize () throws IOException {
+        if (paxFile != null) {
+            LocalPaxFile pax = LocalPaxFile.open(paxFile);
+            int column = pax.getColumnIndex(paxColumnId);
+            if (column < 0) {
+                throw new IOException ("column " + paxColumnId + " is not in the PAX file: " + pax);
+            }
+            return pax.getColumnByteSize(column);
+        }
+        return getDataFile().length();
+    }
+
     /** converts this object into an LVColumnFile object. */
     public LVColumnFile toLVColumnFile () throws IOException {
         LVColumnFile result = new LVColumnFile();
@@ -221,14 +437,16 @@ public final class ColumnFileBundle {
         result.setCompressionType(compressionType);
         result.setDictionaryBytesPerEntry(getDictionaryBytesPerEntry());
         result.setDistinctValues(getDistinctValues());
-        result.setFileSize((int) getDataFile().length());
-        String dataFilePath = getDataFile().getAbsolutePath();
+        result.setFileSize(getDataFileSize());
+        String dataFilePath = segmentFile != null ? segmentFile.getAbsolutePath()
+            : (paxFile != null ? paxFile.getAbsolutePath() : getDataFile().getAbsolutePath());
         assert (dataFilePath.lastIndexOf('.') >= 0);
         result.setLocalFilePath(dataFilePath.substring(0, dataFilePath.lastIndexOf('.')));
+        result.setLayout(segmentFile != null ? ColumnFileLayout.SEGMENT
+            : (paxFile != null ? ColumnFileLayout.PAX : ColumnFileLayout.SEPARATE));
         result.setRunCount(getRunCount());
         result.setSorted(isSorted());
         result.setTupleCount(getTupleCount());
-        result.setTupleCount(getTupleCount());
         result.setUncompressedSizeKB(getUncompressedSizeKB());
         return result;
     }
@@ -307,6 +525,50 @@ public final class ColumnFileBundle {
         this.valueFile = valueFile;
     }
 
+    /**
+     * Gets the zone map file.
+     *
+     * @return the zone map file
+     */
+    public VirtualFile getZoneMapFile() {
+        return zoneMapFile;
+    }
+
+    /**
+     * Sets the zone map file.
+     *
+     * @param zoneMapFile the new zone map file
+     */
+    public void setZoneMapFile(VirtualFile zoneMapFile) {
+        this.zoneMapFile = zoneMapFile;
+    }
+
+    /**
+     * Gets the Bloom filter file.
+     *
+     * @return the Bloom filter file
+     */
+    public VirtualFile getBloomFilterFile() {
+        return bloomFilterFile;
+    }
+
+    /**
+     * Returns whether this column file comes with a Bloom filter file.
+     * For files in the repository, this is told by {@link LVColumnFile#hasBloomFilter()} without touching the file.
+     */
+    public boolean hasBloomFilter() {
+        return bloomFilterFile != null;
+    }
+
+    /**
+     * Sets the Bloom filter file.
+     *
+     * @param bloomFilterFile the new Bloom filter file
+     */
+    public void setBloomFilterFile(VirtualFile bloomFilterFile) {
+        this.bloomFilterFile = bloomFilterFile;
+    }
+
     /**
      * Gets the original (before dictionary compression, if any) value type of the column file.
      *
@@ -415,6 +677,24 @@ public final class ColumnFileBundle {
         this.runCount = runCount;
     }
 
+    /**
+     * Gets the ID of the column file.
+     *
+     * @return the ID of the column file. 0 if the files are not registered yet.
+     */
+    public int getColumnFileId() {
+        return columnFileId;
+    }
+
+    /**
+     * Sets the ID of the column file.
+     *
+     * @param columnFileId the new ID of the column file
+     */
+    public void setColumnFileId(int columnFileId) {
+        this.columnFileId = columnFileId;
+    }
+
     /**
      * Gets the cRC32 of the data file.
      *
@@ -487,4 +767,51 @@ public final class ColumnFileBundle {
         this.tmpFile = tmpFile;
     }
     
+
+    /**
+     * Gets the segment file ({@link ColumnSegment}) the other files are embedded in.
+     *
+     * @return the segment file. null if the files are separate
+     */
+    public VirtualFile getSegmentFile() {
+        return segmentFile;
+    }
+
+    /**
+     * Sets the segment file ({@link ColumnSegment}) the other files are embedded in.
+     *
+     * @param segmentFile the segment file. null if the files are separate
+     */
+    public void setSegmentFile(VirtualFile segmentFile) {
+        this.segmentFile = segmentFile;
+    }
+
+    /**
+     * Gets the PAX file ({@link PaxColumnGroup}) the column is stored in with other columns.
+     *
+     * @return the PAX file. null if the column is stored in its own files
+     */
+    public VirtualFile getPaxFile() {
+        return paxFile;
+    }
+
+    /**
+     * Gets the ID of the column in the PAX file.
+     *
+     * @return the ID of the column in the PAX file. meaningful only when {@link #getPaxFile()} is not null
+     */
+    public int getPaxColumnId() {
+        return paxColumnId;
+    }
+
+    /**
+     * Sets the PAX file ({@link PaxColumnGroup}) the column is stored in with other columns.
+     *
+     * @param paxFile the PAX file. null if the column is stored in its own files
+     * @param paxColumnId the ID of the column in the PAX file
+     */
+    public void setPaxFile(VirtualFile paxFile, int paxColumnId) {
+        this.paxFile = paxFile;
+        this.paxColumnId = paxColumnId;
+    }
 }
@@ -2,16 +2,25 @@ package edu.brown.lasvegas.lvfs;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalBitPackReader;
+import edu.brown.lasvegas.lvfs.local.LocalBloomFilter;
+import edu.brown.lasvegas.lvfs.local.LocalBlockCache;
 import edu.brown.lasvegas.lvfs.local.LocalBlockCompressionFixLenReader;
+import edu.brown.lasvegas.lvfs.local.LocalBlockCompressionReader;
+import edu.brown.lasvegas.lvfs.local.LocalBlockReadAhead;
 import edu.brown.lasvegas.lvfs.local.LocalBlockCompressionVarLenReader;
 import edu.brown.lasvegas.lvfs.local.LocalDictCompressionReader;
 import edu.brown.lasvegas.lvfs.local.LocalFixLenReader;
+import edu.brown.lasvegas.lvfs.local.LocalPaxFile;
 import edu.brown.lasvegas.lvfs.local.LocalPosFile;
 import edu.brown.lasvegas.lvfs.local.LocalRLEReader;
 import edu.brown.lasvegas.lvfs.local.LocalValFile;
 import edu.brown.lasvegas.lvfs.local.LocalVarLenReader;
+import edu.brown.lasvegas.lvfs.local.LocalZoneMapFile;
 import edu.brown.lasvegas.traits.FixLenValueTraits;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
 import edu.brown.lasvegas.traits.IntegerValueTraits;
@@ -32,6 +41,12 @@ public final class ColumnFileReaderBundle implements Closeable {
     private final ValueTraits<?, ?> originalDataTraits;
     /** buffer size for the data reader. */
     private final int streamBufferSize;
+    /** whether to read the main data file via memory-mapped buffer. */
+    private final boolean memoryMapped;
+    /** thread pool to read ahead blocks of block-compressed files. null if disabled. */
+    private LocalBlockReadAhead blockReadAhead;
+    /** node-wide cache of decompressed blocks of block-compressed files. null if not used. */
+    private LocalBlockCache blockCache;
 
     /** reader for main data file. */
     private TypedReader<?, ?> dataReader;
@@ -40,6 +55,10 @@ public final class ColumnFileReaderBundle implements Closeable {
     private PositionIndex positionIndex;
     /** the value index, which is loaded lazily. */
     private ValueIndex<?> valueIndex;
+    /** the zone map, which is loaded lazily. */
+    private ZoneMap<?> zoneMap;
+    /** the Bloom filter, which is loaded lazily. */
+    private BloomFilter<?, ?> bloomFilter;
     
     /**
      * Instantiate a reader bundle. This doesn't open any file at this point
@@ -49,9 +68,20 @@ public final class ColumnFileReaderBundle implements Closeable {
         this (fileBundle, 1 << 16);
     }
     public ColumnFileReaderBundle (ColumnFileBundle fileBundle, int streamBufferSize) {
+        this (fileBundle, streamBufferSize, false);
+    }
+    /**
+     * Instantiate a reader bundle. This doesn't open any file at this point
+     * because some file might not be required.
+     * @param memoryMapped whether to read the main data file via memory-mapped buffer.
+     * This is much faster when the file is (or will be) in page cache because values are converted
+     * directly from the mapped memory. streamBufferSize is ignored in this case.
+     */
+    public ColumnFileReaderBundle (ColumnFileBundle fileBundle, int streamBufferSize, boolean memoryMapped) {
         this.fileBundle = fileBundle;
         this.originalDataTraits = ValueTraitsFactory.getInstance(fileBundle.getColumnType());
         this.streamBufferSize = streamBufferSize;
+        this.memoryMapped = memoryMapped;
         if (fileBundle.getCompressionType() == CompressionType.DICTIONARY) {
             // dictionary encoding changes the data type in main data file to be 1/2/4 integers
             switch (fileBundle.getDictionaryBytesPerEntry()) {
@@ -71,6 +101,33 @@ public final class ColumnFileReaderBundle implements Closeable {
         }
     }
     
+    /**
+     * Enables reading ahead following blocks if the main data file is block-compressed.
+     * Ignored for other compression types.
+     * @param blockReadAhead thread pool to read ahead blocks. null to disable read-ahead.
+     * @see LocalBlockCompressionReader#setReadAhead(LocalBlockReadAhead)
+     */
+    public void setBlockReadAhead (LocalBlockReadAhead blockReadAhead) throws IOException {
+        this.blockReadAhead = blockReadAhead;
+        if (dataReader instanceof LocalBlockCompressionReader<?, ?>) {
+            ((LocalBlockCompressionReader<?, ?>) dataReader).setReadAhead(blockReadAhead);
+        }
+    }
+
+    /**
+     * Lets the reader of the main data file share decompressed blocks via the given cache
+     * if the file is block-compressed. Ignored for other compression types and for files
+     * without column file ID (e.g., files being constructed), which can't be identified in the cache.
+     * @param blockCache node-wide cache of decompressed blocks. null to disable caching.
+     * @see LocalBlockCompressionReader#setBlockCache(LocalBlockCache, int)
+     */
+    public void setBlockCache (LocalBlockCache blockCache) {
+        this.blockCache = fileBundle.getColumnFileId() > 0 ? blockCache : null;
+        if (dataReader instanceof LocalBlockCompressionReader<?, ?>) {
+            ((LocalBlockCompressionReader<?, ?>) dataReader).setBlockCache(this.blockCache, fileBundle.getColumnFileId());
+        }
+    }
+
     /**
      * Gets the reader for main data file.
      *
@@ -79,6 +136,15 @@ public final class ColumnFileReaderBundle implements Closeable {
     public TypedReader<?, ?> getDataReader () throws IOException {
         if (dataReader == null) {
             dataReader = instantiateDataReader();
+            if (dataReader instanceof LocalBlockCompressionReader<?, ?>) {
+                LocalBlockCompressionReader<?, ?> blockReader = (LocalBlockCompressionReader<?, ?>) dataReader;
+                if (blockCache != null) {
+                    blockReader.setBlockCache(blockCache, fileBundle.getColumnFileId());
+                }
+                if (blockReadAhead != null) {
+                    blockReader.setReadAhead(blockReadAhead);
+                }
+            }
             if (positionIndex != null) {
                 dataReader.loadPositionIndex(positionIndex);
             }
@@ -100,25 +166,49 @@ public final class ColumnFileReaderBundle implements Closeable {
         return reader;
     }
 
+    /**
+     * Gets the reader for main data file as an RLE reader, which can read value runs without expanding them.
+     * @return the RLE reader. null if the column file is not RLE-compressed
+     * @see TypedRLEReader#readRuns(ValueRunBatch, int)
+     */
+    public TypedRLEReader<?, ?> getRLEReader() throws IOException {
+        if (fileBundle.getCompressionType() != CompressionType.RLE) {
+            return null;
+        }
+        return (TypedRLEReader<?, ?>) getDataReader();
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private TypedReader<?, ?> instantiateDataReader () throws IOException {
+        if (fileBundle.getPaxFile() != null) {
+            LocalPaxFile paxFile = LocalPaxFile.open(fileBundle.getPaxFile());
+            int column = paxFile.getColumnIndex(fileBundle.getPaxColumnId());
+            if (column < 0) {
+                throw new IOException ("column " + fileBundle.getPaxColumnId() + " is not in the PAX file: " + paxFile);
+            }
+            return paxFile.createReader(column, memoryMapped);
+        }
         switch (fileBundle.getCompressionType()) {
         case DICTIONARY:
-            return new LocalDictCompressionReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) compressedDataTraits, fileBundle.getDictionaryFile(), originalDataTraits, streamBufferSize);
+            return new LocalDictCompressionReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) compressedDataTraits, fileBundle.getDictionaryFile(), originalDataTraits, streamBufferSize, memoryMapped);
         case RLE:
-            return new LocalRLEReader(fileBundle.getDataFile(), null, originalDataTraits, streamBufferSize);
+            return new LocalRLEReader(fileBundle.getDataFile(), null, originalDataTraits, streamBufferSize, memoryMapped);
         case GZIP_BEST_COMPRESSION:
         case SNAPPY:
+        case LZ4:
+        case LZ4_HC:
             if (originalDataTraits instanceof VarLenValueTraits<?>) {
-                return new LocalBlockCompressionVarLenReader(fileBundle.getDataFile(), (VarLenValueTraits<?>) originalDataTraits, fileBundle.getCompressionType());
+                return new LocalBlockCompressionVarLenReader(fileBundle.getDataFile(), (VarLenValueTraits<?>) originalDataTraits, fileBundle.getCompressionType(), memoryMapped);
             } else {
-                return new LocalBlockCompressionFixLenReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) originalDataTraits, fileBundle.getCompressionType());
+                return new LocalBlockCompressionFixLenReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) originalDataTraits, fileBundle.getCompressionType(), memoryMapped);
             }
+        case BITPACK:
+            return new LocalBitPackReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) originalDataTraits, streamBufferSize, memoryMapped);
         case NONE:
             if (originalDataTraits instanceof VarLenValueTraits<?>) {
-                return new LocalVarLenReader(fileBundle.getDataFile(), null, (VarLenValueTraits<?>) originalDataTraits, streamBufferSize);
+                return new LocalVarLenReader(fileBundle.getDataFile(), null, (VarLenValueTraits<?>) originalDataTraits, streamBufferSize, memoryMapped);
             } else {
-                return new LocalFixLenReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) originalDataTraits, streamBufferSize);
+                return new LocalFixLenReader(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) originalDataTraits, streamBufferSize, memoryMapped);
             }
         default:
             throw new IllegalArgumentException("unexpected compression type:" + fileBundle.getCompressionType());
@@ -162,6 +252,98 @@ public final class ColumnFileReaderBundle implements Closeable {
         }
         return valueIndex;
     }
+
+    /**
+     * Gets the zone map, which is loaded lazily.
+     *
+     * @return the zone map, which is loaded lazily. null if the file doesn't have a zone map.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ZoneMap<?> getZoneMap () throws IOException {
+        if (zoneMap == null && fileBundle.getZoneMapFile() != null && fileBundle.getZoneMapFile().exists()) {
+            zoneMap = new LocalZoneMapFile(fileBundle.getZoneMapFile(), originalDataTraits);
+        }
+        return zoneMap;
+    }
+
+    /**
+     * Returns the tuple ranges that might contain values between the given bounds,
+     * skipping zones that can't satisfy the range predicate.
+     * If the file doesn't have a zone map, returns one range that covers the whole file.
+     * The caller still has to evaluate the predicate on each tuple in the returned ranges.
+     * @param lower the lower bound (inclusive). null to specify no lower bound.
+     * @param upper the upper bound (inclusive). null to specify no upper bound.
+     * @return qualifying tuple ranges in ascending order. empty if no tuple qualifies.
+     * @see ZoneMap#searchRange(Comparable, Comparable)
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public List<TupleRange> getQualifyingTupleRanges (Comparable<?> lower, Comparable<?> upper) throws IOException {
+        ZoneMap zoneMap = getZoneMap();
+        if (zoneMap == null) {
+            List<TupleRange> ranges = new ArrayList<TupleRange>();
+            ranges.add(new TupleRange(0, getDataReader().getTotalTuples()));
+            return ranges;
+        }
+        return zoneMap.searchRange(lower, upper);
+    }
+
+    /**
+     * Gets the Bloom filter, which is loaded lazily.
+     *
+     * @return the Bloom filter, which is loaded lazily. null if the file doesn't have a Bloom filter.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public BloomFilter<?, ?> getBloomFilter () throws IOException {
+        if (bloomFilter == null && fileBundle.hasBloomFilter()) {
+            bloomFilter = new LocalBloomFilter(fileBundle.getBloomFilterFile(), originalDataTraits);
+        }
+        return bloomFilter;
+    }
+
+    /**
+     * Tells whether the given key might be in this file without reading the data file.
+     * Uses the Bloom filter if exists, or the dictionary if the file is dictionary-compressed
+     * (which gives the exact answer). Otherwise, always returns true.
+     * @param key the key to test. must be the original (not compressed) data type of the column.
+     * @return false if the key is definitely not in this file.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public boolean mightContain (Comparable<?> key) throws IOException {
+        BloomFilter filter = getBloomFilter();
+        if (filter != null) {
+            return filter.mightContain(key);
+        }
+        if (fileBundle.getCompressionType() == CompressionType.DICTIONARY) {
+            return ((OrderedDictionary) getDictionary()).compress(key) != null;
+        }
+        return true;
+    }
+
+    /**
+     * Batch version of {@link #mightContain(Comparable)}. Use this to skip the file in semi-joins.
+     * @param keys array of keys to test (e.g., int[] for an INTEGER column).
+     * @param off offset of the keys
+     * @param len number of keys to test
+     * @return false if none of the keys is in this file.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public boolean mightContainAny (Object keys, int off, int len) throws IOException {
+        BloomFilter filter = getBloomFilter();
+        if (filter != null) {
+            return filter.mightContainAny(keys, off, len);
+        }
+        if (fileBundle.getCompressionType() == CompressionType.DICTIONARY) {
+            OrderedDictionary dict = getDictionary();
+            ValueTraits traits = originalDataTraits;
+            for (int i = 0; i < len; ++i) {
+                if (dict.compress(traits.get(keys, off + i)) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return len > 0;
+    }
     
     
     @Override
@@ -5,12 +5,15 @@ import java.io.IOException;
 
 import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalBitPackWriter;
 import edu.brown.lasvegas.lvfs.local.LocalBlockCompressionFixLenWriter;
 import edu.brown.lasvegas.lvfs.local.LocalBlockCompressionVarLenWriter;
 import edu.brown.lasvegas.lvfs.local.LocalDictCompressionWriter;
 import edu.brown.lasvegas.lvfs.local.LocalFixLenWriter;
 import edu.brown.lasvegas.lvfs.local.LocalRLEWriter;
 import edu.brown.lasvegas.lvfs.local.LocalVarLenWriter;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
+import edu.brown.lasvegas.lvfs.local.LocalWriterFactory;
 import edu.brown.lasvegas.traits.FixLenValueTraits;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
 import edu.brown.lasvegas.traits.ValueTraits;
@@ -35,6 +38,8 @@ public final class ColumnFileWriterBundle implements Closeable {
     private VirtualFile dictionaryFile;
     private VirtualFile positionFile;
     private VirtualFile valueFile;
+    private VirtualFile zoneMapFile;
+    private VirtualFile bloomFilterFile;
     
     /** The size of one entry after dictionary-compression (1/2/4), Set only when the column file is dictionary-compressed (otherwise 0).*/
     private byte dictionaryBytesPerEntry = 0;
@@ -45,7 +50,7 @@ public final class ColumnFileWriterBundle implements Closeable {
     /** The average run length in this file, Set only when the column file is RLE-compressed (otherwise 0).*/
     private int runCount = 0;
     
-    /** file size without gzip/snappy compression in KB.  Set only when the column file is GZIP/SNAPPY-compressed (otherwise 0). */
+    /** file size without block compression in KB.  Set only when the column file is block-compressed (GZIP/SNAPPY/LZ4) (otherwise 0). */
     private int uncompressedSizeKB;
 
     /** Total number of tuples in this file. */
@@ -66,6 +71,35 @@ public final class ColumnFileWriterBundle implements Closeable {
         if (calculateChecksum) {
             dataWriter.setCRC32Enabled(true);
         }
+        if (ColumnFileBundle.isZoneMapSupported(compressionType)) {
+            zoneMapFile = outputFolder.getChildFile(LVFSFileType.ZONE_MAP_FILE.appendExtension(fileNameSeed));
+            dataWriter.enableZoneMap(ZoneMap.DEFAULT_TUPLES_PER_ZONE);
+        }
+    }
+
+    /**
+     * Makes this writer output a Bloom filter file ({@link BloomFilter}) with default bits per key.
+     * Must be called before writing any values. Does nothing if the compression type doesn't
+     * support Bloom filters (e.g., dictionary compression, whose dictionary tells the exact membership).
+     * @return whether a Bloom filter file will be written
+     */
+    public boolean enableBloomFilter () {
+        if (!ColumnFileBundle.isBloomFilterSupported(compressionType)) {
+            return false;
+        }
+        bloomFilterFile = outputFolder.getChildFile(LVFSFileType.BLOOM_FILTER_FILE.appendExtension(fileNameSeed));
+        dataWriter.enableBloomFilter(BloomFilter.DEFAULT_BITS_PER_KEY);
+        return true;
+    }
+    
+    /**
+     * Makes this writer write out the data file in background threads of the given pool
+     * so that disk writes overlap with encoding. Must be called before writing any values.
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     * @see LocalWriteBehind
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        LocalWriterFactory.setWriteBehind(dataWriter, writeBehind);
     }
     
     @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -81,11 +115,15 @@ public final class ColumnFileWriterBundle implements Closeable {
             return new LocalRLEWriter(dataFile, traits, 1 << 10, streamBufferSize);
         case GZIP_BEST_COMPRESSION:
         case SNAPPY:
+        case LZ4:
+        case LZ4_HC:
             if (traits instanceof VarLenValueTraits<?>) {
                 return new LocalBlockCompressionVarLenWriter(dataFile, (VarLenValueTraits<?>) traits, compressionType);
             } else {
                 return new LocalBlockCompressionFixLenWriter(dataFile, (FixLenValueTraits<?, ?>) traits, compressionType);
             }
+        case BITPACK:
+            return new LocalBitPackWriter(dataFile, (FixLenValueTraits<?, ?>) traits, LocalBitPackWriter.DEFAULT_BLOCK_SIZE, streamBufferSize);
         case NONE:
             if (traits instanceof VarLenValueTraits<?>) {
                 return new LocalVarLenWriter(dataFile, (VarLenValueTraits<?>) traits, 1 << 13, streamBufferSize);
@@ -104,6 +142,12 @@ public final class ColumnFileWriterBundle implements Closeable {
         if (positionFile != null) {
             dataWriter.writePositionFile(positionFile);
         }
+        if (zoneMapFile != null) {
+            dataWriter.writeZoneMapFile(zoneMapFile);
+        }
+        if (bloomFilterFile != null) {
+            dataWriter.writeBloomFilterFile(bloomFilterFile);
+        }
 
         // collect statistics
         switch (compressionType) {
@@ -119,6 +163,8 @@ public final class ColumnFileWriterBundle implements Closeable {
             break;
         case GZIP_BEST_COMPRESSION:
         case SNAPPY:
+        case LZ4:
+        case LZ4_HC:
         {
             long uncompressedSize = ((TypedBlockCmpWriter<?, ?>) dataWriter).getTotalUncompressedSize();
             uncompressedSizeKB = (int) (uncompressedSize / 1024L) + (uncompressedSize % 1024 == 0 ? 0 : 1);
@@ -178,6 +224,14 @@ public final class ColumnFileWriterBundle implements Closeable {
         return valueFile;
     }
 
+    public VirtualFile getZoneMapFile() {
+        return zoneMapFile;
+    }
+
+    public VirtualFile getBloomFilterFile() {
+        return bloomFilterFile;
+    }
+
     public byte getDictionaryBytesPerEntry() {
         return dictionaryBytesPerEntry;
     }
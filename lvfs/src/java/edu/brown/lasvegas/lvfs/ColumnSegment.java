@@ -0,0 +1,294 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+
+/**
+ * A self-describing single-file format of a column file ({@link LVFSFileType#SEGMENT_FILE}).
+ *
+ * <p>A column file otherwise consists of up to seven files (data, dictionary, position index,
+ * value index, zone map, Bloom filter, tmp), which multiplies open file handles and
+ * metadata round trips to (remote) data nodes. A segment file embeds all of them as
+ * sections followed by a footer directory:</p>
+ * <pre>
+ * [section 0 (data file)][section 1 (e.g., dictionary file)]...
+ * [directory: version, column properties, (extension, offset, length) for each section]
+ * [int directoryLength][int MAGIC]
+ * </pre>
+ * <p>{@link #open(VirtualFile)} reads only the footer and returns a {@link ColumnFileBundle}
+ * whose files are {@link VirtualFileSlice}s of the segment file. Hence, the existing readers work
+ * as they are and load each index lazily when it's first used, reading only its byte range.
+ * All slices share one file handle.</p>
+ * <p>{@link #pack(ColumnFileBundle, VirtualFile)} converts an existing bundle to a segment file.
+ * {@link #packInPlace(ColumnFileBundle, LocalVirtualFile)} does it by appending to the data file
+ * so that the data is not copied again.</p>
+ */
+public final class ColumnSegment {
+    private static Logger LOG = Logger.getLogger(ColumnSegment.class);
+
+    private ColumnSegment () {}
+
+    /** magic number at the end of segment files. */
+    public static final int MAGIC = 0x4C565347; // "LVSG"
+    /** version of the directory format. */
+    public static final int VERSION = 1;
+    /** byte size of the tail (directoryLength and MAGIC). */
+    private static final int TAIL_SIZE = 8;
+
+    /**
+     * Writes all files in the bundle into one segment file.
+     * The original files are not deleted.
+     * @param bundle the column file to convert
+     * @param segmentFile the segment file to write. overwritten if it exists.
+     * @return the column file read from the segment file
+     */
+    public static ColumnFileBundle pack (ColumnFileBundle bundle, VirtualFile segmentFile) throws IOException {
+        checkDataFile(bundle);
+        OutputStream out = segmentFile.getOutputStream();
+        try {
+            writeSections(bundle, out, true);
+        } finally {
+            out.close();
+        }
+        return open(segmentFile);
+    }
+
+    /**
+     * Converts the bundle in a local folder into a segment file without copying its data file.
+     * The other files and the directory are appended to the data file, which then becomes the segment file.
+     * As the data file is by far the largest, this writes the column file almost only once.
+     * The other files are deleted.
+     * @param bundle the column file to convert. its files must be local files
+     * @param segmentFile the segment file to write. must not exist.
+     * @return the column file read from the segment file
+     */
+    public static ColumnFileBundle packInPlace (ColumnFileBundle bundle, LocalVirtualFile segmentFile) throws IOException {
+        checkDataFile(bundle);
+        if (!(bundle.getDataFile() instanceof LocalVirtualFile)) {
+            throw new IOException ("the data file is not a local file: " + bundle);
+        }
+        if (segmentFile.exists()) {
+            throw new IOException ("the segment file already exists: " + segmentFile);
+        }
+        OutputStream out = new FileOutputStream(bundle.getDataFile().getAbsolutePath(), true);
+        try {
+            writeSections(bundle, out, false);
+        } finally {
+            out.close();
+        }
+        VirtualFile[] others = new VirtualFile[]{bundle.getDictionaryFile(),
+            bundle.getPositionFile(), bundle.getValueFile(), bundle.getZoneMapFile(), bundle.getBloomFilterFile()};
+        for (VirtualFile file : others) {
+            if (file != null && file.exists() && !file.delete()) {
+                LOG.warn("failed to delete a file packed into the segment file:" + file);
+            }
+        }
+        if (!bundle.getDataFile().renameTo(segmentFile)) {
+            throw new IOException ("failed to rename " + bundle.getDataFile() + " to the segment file " + segmentFile);
+        }
+        return open(segmentFile);
+    }
+
+    private static void checkDataFile (ColumnFileBundle bundle) throws IOException {
+        if (bundle.getDataFile() == null || !bundle.getDataFile().exists()) {
+            throw new IOException ("data file doesn't exist: " + bundle);
+        }
+    }
+
+    /**
+     * Writes the sections and the footer directory.
+     * @param writeDataFile whether to copy the data file to the output. false if the output
+     * is appended to the data file itself, in which case it becomes the first section as it is.
+     */
+    private static void writeSections (ColumnFileBundle bundle, OutputStream out, boolean writeDataFile) throws IOException {
+        LVFSFileType[] types = new LVFSFileType[]{LVFSFileType.DATA_FILE, LVFSFileType.DICTIONARY_FILE,
+            LVFSFileType.POSITION_FILE, LVFSFileType.VALUE_FILE, LVFSFileType.ZONE_MAP_FILE, LVFSFileType.BLOOM_FILTER_FILE};
+        VirtualFile[] files = new VirtualFile[]{bundle.getDataFile(), bundle.getDictionaryFile(),
+            bundle.getPositionFile(), bundle.getValueFile(), bundle.getZoneMapFile(), bundle.getBloomFilterFile()};
+
+        ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+        DataOutputStream directory = new DataOutputStream(directoryBytes);
+        directory.writeInt(VERSION);
+        directory.writeUTF(bundle.getColumnType().name());
+        directory.writeUTF(bundle.getCompressionType().name());
+        directory.writeInt(bundle.getTupleCount());
+        directory.writeByte(bundle.getDictionaryBytesPerEntry());
+        directory.writeInt(bundle.getDistinctValues());
+        directory.writeInt(bundle.getRunCount());
+        directory.writeBoolean(bundle.isSorted());
+        directory.writeInt(bundle.getUncompressedSizeKB());
+        directory.writeLong(bundle.getDataFileChecksum());
+        int sectionCount = 0;
+        for (int i = 0; i < files.length; ++i) {
+            if (files[i] != null && files[i].exists()) {
+                ++sectionCount;
+            }
+        }
+        directory.writeInt(sectionCount);
+
+        byte[] buffer = new byte[1 << 20];
+        long offset = 0;
+        for (int i = 0; i < files.length; ++i) {
+            if (files[i] == null || !files[i].exists()) {
+                continue;
+            }
+            long length;
+            if (i == 0 && !writeDataFile) {
+                length = files[i].length();
+            } else {
+                length = 0;
+                InputStream in = files[i].getInputStream();
+                try {
+                    while (true) {
+                        int read = in.read(buffer);
+                        if (read < 0) {
+                            break;
+                        }
+                        out.write(buffer, 0, read);
+                        length += read;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            directory.writeUTF(types[i].getExtension());
+            directory.writeLong(offset);
+            directory.writeLong(length);
+            offset += length;
+        }
+        directory.flush();
+        out.write(directoryBytes.toByteArray());
+        DataOutputStream tail = new DataOutputStream(out);
+        tail.writeInt(directoryBytes.size());
+        tail.writeInt(MAGIC);
+        tail.flush();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("packed " + sectionCount + " files into a segment file. data bytes=" + offset);
+        }
+    }
+
+    /**
+     * Returns whether the given file is a segment file.
+     */
+    public static boolean isSegmentFile (VirtualFile file) throws IOException {
+        if (!file.exists() || file.length() < TAIL_SIZE) {
+            return false;
+        }
+        ByteBuffer tail = ByteBuffer.wrap(readBytes(file, file.length() - TAIL_SIZE, TAIL_SIZE));
+        tail.getInt();
+        return tail.getInt() == MAGIC;
+    }
+
+    /**
+     * Reads the footer directory of the segment file.
+     * @return the column file whose files are slices of the segment file.
+     * The column file ID is not stored in the segment file, so it's 0.
+     */
+    public static ColumnFileBundle open (VirtualFile segmentFile) throws IOException {
+        long fileLength = segmentFile.length();
+        if (fileLength < TAIL_SIZE) {
+            throw new IOException ("too short for a segment file: " + segmentFile);
+        }
+        ByteBuffer tail = ByteBuffer.wrap(readBytes(segmentFile, fileLength - TAIL_SIZE, TAIL_SIZE));
+        int directoryLength = tail.getInt();
+        if (tail.getInt() != MAGIC) {
+            throw new IOException ("not a segment file (magic number doesn't match): " + segmentFile);
+        }
+        if (directoryLength <= 0 || directoryLength > fileLength - TAIL_SIZE) {
+            throw new IOException ("invalid directory length " + directoryLength + ". corrupted file? file=" + segmentFile);
+        }
+        long directoryOffset = fileLength - TAIL_SIZE - directoryLength;
+        DataInputStream directory = new DataInputStream(new ByteArrayInputStream(readBytes(segmentFile, directoryOffset, directoryLength)));
+        int version = directory.readInt();
+        if (version != VERSION) {
+            throw new IOException ("unsupported segment file version " + version + ": " + segmentFile);
+        }
+        ColumnFileBundle bundle = new ColumnFileBundle();
+        bundle.setColumnType(ColumnType.valueOf(directory.readUTF()));
+        bundle.setCompressionType(CompressionType.valueOf(directory.readUTF()));
+        bundle.setTupleCount(directory.readInt());
+        bundle.setDictionaryBytesPerEntry(directory.readByte());
+        bundle.setDistinctValues(directory.readInt());
+        bundle.setRunCount(directory.readInt());
+        bundle.setSorted(directory.readBoolean());
+        bundle.setUncompressedSizeKB(directory.readInt());
+        bundle.setDataFileChecksum(directory.readLong());
+        bundle.setSegmentFile(segmentFile);
+
+        // the embedded files are named after the segment file
+        String baseName = segmentFile.getName();
+        if (baseName.lastIndexOf('.') >= 0) {
+            baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+        }
+        int sectionCount = directory.readInt();
+        for (int i = 0; i < sectionCount; ++i) {
+            String extension = directory.readUTF();
+            long offset = directory.readLong();
+            long length = directory.readLong();
+            if (offset < 0 || length < 0 || offset + length > directoryOffset) {
+                throw new IOException ("invalid section " + extension + ": offset=" + offset + ", length=" + length + ". corrupted file? file=" + segmentFile);
+            }
+            LVFSFileType type = LVFSFileType.getFromExtension(extension);
+            VirtualFileSlice slice = new VirtualFileSlice(segmentFile, baseName + "." + extension, offset, length);
+            if (type == null) {
+                LOG.warn("ignored unknown section " + extension + " in " + segmentFile);
+                continue;
+            }
+            switch (type) {
+            case DATA_FILE: bundle.setDataFile(slice); break;
+            case DICTIONARY_FILE: bundle.setDictionaryFile(slice); break;
+            case POSITION_FILE: bundle.setPositionFile(slice); break;
+            case VALUE_FILE: bundle.setValueFile(slice); break;
+            case ZONE_MAP_FILE: bundle.setZoneMapFile(slice); break;
+            case BLOOM_FILTER_FILE: bundle.setBloomFilterFile(slice); break;
+            default:
+                LOG.warn("ignored unexpected section " + extension + " in " + segmentFile);
+            }
+        }
+        if (bundle.getDataFile() == null) {
+            throw new IOException ("no data section in the segment file: " + segmentFile);
+        }
+        return bundle;
+    }
+
+    /** reads the given byte range of the file, using a positional read if available. */
+    private static byte[] readBytes (VirtualFile file, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        VirtualFilePositionalInput input = file.getPositionalInput();
+        if (input != null) {
+            try {
+                input.readFully(position, bytes, 0, length);
+            } finally {
+                input.close();
+            }
+            return bytes;
+        }
+        InputStream in = new VirtualFileSlice(file, file.getName(), position, length).getInputStream();
+        try {
+            int totalRead = 0;
+            while (totalRead < length) {
+                int read = in.read(bytes, totalRead, length - totalRead);
+                if (read < 0) {
+                    throw new IOException ("EOF before reading " + length + " bytes from " + position + ": " + file);
+                }
+                totalRead += read;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,312 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.util.Collection;
+
+import edu.brown.lasvegas.util.ByteArray;
+
+/**
+ * A predicate on a dictionary-compressed column, translated into compressed values (codes)
+ * so that it is evaluated on the byte/short/int code arrays without decompressing values.
+ *
+ * <p>As dictionaries are order-preserving ({@link OrderedDictionary}), equality, range and prefix
+ * predicates become a contiguous code range, which is just two comparisons per value.
+ * IN-list predicates become a bitmap over the dictionary. Both are evaluated batch-wise and
+ * output a <b>selection vector</b>, the array of positions that satisfy the predicate.
+ * Conjunctions are evaluated by {@link #refine(Object, int[], int)} on the output of
+ * another predicate.</p>
+ *
+ * <p>The translation only looks up the bounds in the dictionary (binary search), so it's cheap.
+ * If no code satisfies the predicate ({@link #isEmpty()}), the caller can skip reading the column.</p>
+ */
+public final class DictionaryPredicate {
+    /** the smallest code that might satisfy the predicate. */
+    private final int minCode;
+    /** the largest code that might satisfy the predicate. minCode > maxCode if empty. */
+    private final int maxCode;
+    /** if not null, tells whether each code in [minCode, maxCode] satisfies the predicate. bit (code - minCode). */
+    private final long[] bitmap;
+
+    private DictionaryPredicate (int minCode, int maxCode, long[] bitmap) {
+        this.minCode = minCode;
+        this.maxCode = maxCode;
+        this.bitmap = bitmap;
+    }
+    private static DictionaryPredicate empty () {
+        return new DictionaryPredicate(0, -1, null);
+    }
+    /** the predicate that selects the given range of dictionary indexes (inclusive). */
+    private static DictionaryPredicate indexRange (OrderedDictionary<?, ?> dict, int lowIndex, int highIndex) {
+        if (lowIndex > highIndex || lowIndex >= dict.getDictionarySize() || highIndex < 0) {
+            return empty();
+        }
+        return new DictionaryPredicate(dict.convertDictionaryIndexToCompressedValue(lowIndex), dict.convertDictionaryIndexToCompressedValue(highIndex), null);
+    }
+
+    /**
+     * Translates "column = value".
+     */
+    public static <T extends Comparable<T>> DictionaryPredicate equalTo (OrderedDictionary<T, ?> dict, T value) {
+        Integer code = dict.compress(value);
+        if (code == null) {
+            return empty();
+        }
+        return new DictionaryPredicate(code, code, null);
+    }
+
+    /**
+     * Translates "column IN (values)".
+     */
+    public static <T extends Comparable<T>> DictionaryPredicate in (OrderedDictionary<T, ?> dict, Collection<T> values) {
+        int minCode = Integer.MAX_VALUE, maxCode = Integer.MIN_VALUE;
+        int[] codes = new int[values.size()];
+        int count = 0;
+        for (T value : values) {
+            Integer code = dict.compress(value);
+            if (code == null) {
+                continue;
+            }
+            codes[count++] = code;
+            minCode = Math.min(minCode, code);
+            maxCode = Math.max(maxCode, code);
+        }
+        if (count == 0) {
+            return empty();
+        }
+        if (minCode == maxCode) {
+            return new DictionaryPredicate(minCode, maxCode, null);
+        }
+        long[] bitmap = new long[(int) ((((long) maxCode - minCode) >> 6) + 1)];
+        for (int i = 0; i < count; ++i) {
+            int bit = codes[i] - minCode;
+            bitmap[bit >>> 6] |= 1L << bit;
+        }
+        return new DictionaryPredicate(minCode, maxCode, bitmap);
+    }
+
+    /**
+     * Translates a range predicate such as "lower &lt;= column &lt; upper".
+     * @param lower the lower bound. null to specify no lower bound.
+     * @param lowerInclusive whether the lower bound itself satisfies the predicate
+     * @param upper the upper bound. null to specify no upper bound.
+     * @param upperInclusive whether the upper bound itself satisfies the predicate
+     */
+    public static <T extends Comparable<T>> DictionaryPredicate range (OrderedDictionary<T, ?> dict,
+                    T lower, boolean lowerInclusive, T upper, boolean upperInclusive) {
+        final int size = dict.getDictionarySize();
+        if (size == 0) {
+            return empty();
+        }
+        int lowIndex = 0;
+        if (lower != null) {
+            // compressLower() gives the largest entry that doesn't exceed the bound
+            Integer code = dict.compressLower(lower);
+            if (code != null) {
+                lowIndex = dict.convertCompressedValueToDictionaryIndex(code);
+                if (!lowerInclusive || dict.decompress(code).compareTo(lower) != 0) {
+                    ++lowIndex;
+                }
+            }
+        }
+        int highIndex = size - 1;
+        if (upper != null) {
+            Integer code = dict.compressLower(upper);
+            if (code == null) {
+                return empty();
+            }
+            highIndex = dict.convertCompressedValueToDictionaryIndex(code);
+            if (!upperInclusive && dict.decompress(code).compareTo(upper) == 0) {
+                --highIndex;
+            }
+        }
+        return indexRange(dict, lowIndex, highIndex);
+    }
+
+    /**
+     * Translates "column LIKE 'prefix%'" on VARCHAR columns.
+     * The values starting with the prefix are contiguous in the dictionary.
+     */
+    public static DictionaryPredicate startsWith (OrderedDictionary<String, ?> dict, String prefix) {
+        // strings starting with the prefix are smaller than the prefix whose last character is incremented
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            --end;
+        }
+        String upper = null;
+        if (end > 0) {
+            upper = prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+        }
+        return range(dict, prefix, true, upper, false);
+    }
+
+    /**
+     * Translates a prefix predicate on VARBINARY columns.
+     * Note that {@link ByteArray} compares bytes as signed values.
+     */
+    public static DictionaryPredicate startsWith (OrderedDictionary<ByteArray, ?> dict, ByteArray prefix) {
+        byte[] bytes = prefix.getBytes() == null ? new byte[0] : prefix.getBytes();
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == Byte.MAX_VALUE) {
+            --end;
+        }
+        ByteArray upper = null;
+        if (end > 0) {
+            byte[] upperBytes = new byte[end];
+            System.arraycopy(bytes, 0, upperBytes, 0, end);
+            ++upperBytes[end - 1];
+            upper = new ByteArray(upperBytes);
+        }
+        return range(dict, new ByteArray(bytes), true, upper, false);
+    }
+
+    /** Returns whether no value in the dictionary satisfies the predicate. If so, the column doesn't have to be read. */
+    public boolean isEmpty () {
+        return minCode > maxCode;
+    }
+    /** Returns whether this predicate is a contiguous code range (no bitmap). */
+    public boolean isRange () {
+        return bitmap == null;
+    }
+    /** Returns the smallest code that might satisfy the predicate. */
+    public int getMinCode () {
+        return minCode;
+    }
+    /** Returns the largest code that might satisfy the predicate. */
+    public int getMaxCode () {
+        return maxCode;
+    }
+
+    /** Tests a single code. */
+    public boolean matches (int code) {
+        if (code < minCode || code > maxCode) {
+            return false;
+        }
+        if (bitmap == null) {
+            return true;
+        }
+        int bit = code - minCode;
+        return (bitmap[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Evaluates the predicate on the codes and outputs the positions that satisfy it.
+     * @param codes compressed values (1-byte dictionary)
+     * @param off the position of the first code to evaluate
+     * @param len number of codes to evaluate
+     * @param selection receives the positions (index in codes) that satisfy the predicate. must have len entries.
+     * @return the number of positions written to selection
+     */
+    public int select (byte[] codes, int off, int len, int[] selection) {
+        int count = 0;
+        if (bitmap == null) {
+            // code range. always write the position and advance conditionally, which avoids unpredictable branches
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += codes[i] >= minCode && codes[i] <= maxCode ? 1 : 0;
+            }
+        } else {
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += matches(codes[i]) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+    /** 2-byte dictionary version of {@link #select(byte[], int, int, int[])}. */
+    public int select (short[] codes, int off, int len, int[] selection) {
+        int count = 0;
+        if (bitmap == null) {
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += codes[i] >= minCode && codes[i] <= maxCode ? 1 : 0;
+            }
+        } else {
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += matches(codes[i]) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+    /** 4-byte dictionary version of {@link #select(byte[], int, int, int[])}. */
+    public int select (int[] codes, int off, int len, int[] selection) {
+        int count = 0;
+        if (bitmap == null) {
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += codes[i] >= minCode && codes[i] <= maxCode ? 1 : 0;
+            }
+        } else {
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += matches(codes[i]) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+    /**
+     * Version of {@link #select(byte[], int, int, int[])} for code arrays whose type depends on
+     * the dictionary size (byte[], short[] or int[], as read from {@link ColumnFileReaderBundle#getCompressedDataReader()}).
+     */
+    public int select (Object codes, int off, int len, int[] selection) {
+        if (codes instanceof byte[]) {
+            return select ((byte[]) codes, off, len, selection);
+        } else if (codes instanceof short[]) {
+            return select ((short[]) codes, off, len, selection);
+        } else {
+            return select ((int[]) codes, off, len, selection);
+        }
+    }
+
+    /**
+     * Evaluates the predicate only on the positions in the selection vector
+     * and removes the positions that don't satisfy it (AND with the previous predicates).
+     * @param codes compressed values (1-byte dictionary)
+     * @param selection positions to evaluate. overwritten by the positions that satisfy the predicate.
+     * @param selectionCount number of positions in selection
+     * @return the number of positions left in selection
+     */
+    public int refine (byte[] codes, int[] selection, int selectionCount) {
+        int count = 0;
+        for (int i = 0; i < selectionCount; ++i) {
+            int pos = selection[i];
+            selection[count] = pos;
+            count += matches(codes[pos]) ? 1 : 0;
+        }
+        return count;
+    }
+    /** 2-byte dictionary version of {@link #refine(byte[], int[], int)}. */
+    public int refine (short[] codes, int[] selection, int selectionCount) {
+        int count = 0;
+        for (int i = 0; i < selectionCount; ++i) {
+            int pos = selection[i];
+            selection[count] = pos;
+            count += matches(codes[pos]) ? 1 : 0;
+        }
+        return count;
+    }
+    /** 4-byte dictionary version of {@link #refine(byte[], int[], int)}. */
+    public int refine (int[] codes, int[] selection, int selectionCount) {
+        int count = 0;
+        for (int i = 0; i < selectionCount; ++i) {
+            int pos = selection[i];
+            selection[count] = pos;
+            count += matches(codes[pos]) ? 1 : 0;
+        }
+        return count;
+    }
+    /** Version of {@link #refine(byte[], int[], int)} for code arrays of any type. */
+    public int refine (Object codes, int[] selection, int selectionCount) {
+        if (codes instanceof byte[]) {
+            return refine ((byte[]) codes, selection, selectionCount);
+        } else if (codes instanceof short[]) {
+            return refine ((short[]) codes, selection, selectionCount);
+        } else {
+            return refine ((int[]) codes, selection, selectionCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryPredicate[minCode=" + minCode + ",maxCode=" + maxCode + (bitmap == null ? "" : ",bitmap") + "]";
+    }
+}
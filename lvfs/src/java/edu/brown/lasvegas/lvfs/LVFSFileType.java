@@ -43,6 +43,38 @@ public enum LVFSFileType {
             return "dic";
         }
     },
+
+    /** Zone map file (per-zone min/max values) to skip tuples that can't satisfy range predicates. */
+    ZONE_MAP_FILE {
+        @Override
+        public String getExtension() {
+            return "zmp";
+        }
+    },
+
+    /** Bloom filter file to tell keys that are not in the data file without reading it. */
+    BLOOM_FILTER_FILE {
+        @Override
+        public String getExtension() {
+            return "blm";
+        }
+    },
+
+    /** Single-file format that embeds all the other files of a column file. See {@link ColumnSegment}. */
+    SEGMENT_FILE {
+        @Override
+        public String getExtension() {
+            return "seg";
+        }
+    },
+
+    /** PAX file that stores a group of columns with per-column mini-pages in each block. See {@link PaxColumnGroup}. */
+    PAX_FILE {
+        @Override
+        public String getExtension() {
+            return "pax";
+        }
+    },
     ;
     
     /** Gives the file extension for the file type. */
@@ -58,6 +90,10 @@ public enum LVFSFileType {
         if (extension.equals(POSITION_FILE.getExtension())) return POSITION_FILE;
         if (extension.equals(VALUE_FILE.getExtension())) return VALUE_FILE;
         if (extension.equals(DICTIONARY_FILE.getExtension())) return DICTIONARY_FILE;
+        if (extension.equals(ZONE_MAP_FILE.getExtension())) return ZONE_MAP_FILE;
+        if (extension.equals(BLOOM_FILTER_FILE.getExtension())) return BLOOM_FILTER_FILE;
+        if (extension.equals(SEGMENT_FILE.getExtension())) return SEGMENT_FILE;
+        if (extension.equals(PAX_FILE.getExtension())) return PAX_FILE;
         return null;
     }
 }
@@ -2,6 +2,8 @@ package edu.brown.lasvegas.lvfs;
 
 import java.io.IOException;
 
+import edu.brown.lasvegas.util.StringArena;
+
 /**
  * Represents a order-preserving dictionary loaded in-memory for dictionary compression.
  * 
@@ -116,6 +118,24 @@ public interface OrderedDictionary<T extends Comparable<T>, AT> {
      */
     public int decompressBatch (int[] src, int srcOff, AT dest, int destOff, int len);
     
+    /**
+     * Decompresses the given array of values and appends their bytes to the arena
+     * without materializing java objects. Only for VARCHAR/VARBINARY dictionaries.
+     * @param src array of values to de-compress. byte[], short[] or int[] depending on {@link #getBytesPerEntry()}
+     * @param srcOff index of src from which we de-compress values
+     * @param dest arena to receive values after de-compression
+     * @param len number of values to de-compress
+     * @return actual number of values de-compressed
+     */
+    public int decompressBatch (Object src, int srcOff, StringArena dest, int len);
+
+    /**
+     * Returns the compressed value of the given value in an arena, comparing the bytes
+     * instead of materialized java objects. Only for VARCHAR/VARBINARY dictionaries.
+     * @return null if the value doesn't exist in this dictionary
+     */
+    public Integer compress (StringArena values, int index);
+
     /**
      * Given a compressed value in signed integer, returns the
      * corresponding array index in dict.
@@ -0,0 +1,178 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalBlockCompressionWriter;
+import edu.brown.lasvegas.lvfs.local.LocalPaxFile;
+import edu.brown.lasvegas.util.VirtualFileUtil;
+
+/**
+ * Stores a group of co-accessed columns in one PAX file ({@link LVFSFileType#PAX_FILE}).
+ *
+ * <p>Queries often read the same columns together (e.g., l_orderkey and l_quantity in TPC-H Q18).
+ * When they are in separate column files, each of them costs a file handle and a seek per block.
+ * A PAX file has per-column mini-pages in each block instead, so one contiguous read serves
+ * all columns in the group while each column is still compressed individually and read through
+ * its own {@link TypedReader}. See {@link LocalPaxFile} for the file format.</p>
+ *
+ * <p>Each column in the group is still registered as its own column file
+ * whose path points to the shared PAX file. {@link ColumnFileBundle} finds the column
+ * in the PAX file by its column ID. The tuple-based index files of each column
+ * (value index, zone map and Bloom filter) are kept beside the PAX file
+ * ({@link #getIndexFile(VirtualFile, int, LVFSFileType)}) so that scans on the column
+ * can still skip tuples. The PAX file and the index files of all columns in the group
+ * are moved together ({@link ColumnFileBundle#moveColumnGroup(ColumnFileBundle[], edu.brown.lasvegas.lvfs.local.LocalVirtualFile, String)}).</p>
+ */
+public final class PaxColumnGroup {
+    private static Logger LOG = Logger.getLogger(PaxColumnGroup.class);
+
+    private PaxColumnGroup () {}
+
+    /**
+     * Returns whether a column file of the given compression type can be stored in a PAX file.
+     * Dictionary, RLE and bit-packed columns are stored in their own files.
+     */
+    public static boolean isSupported (CompressionType compressionType) {
+        return LocalPaxFile.isSupported(compressionType);
+    }
+
+    /** the index files of the columns that are kept beside the PAX file. */
+    private static final LVFSFileType[] INDEX_FILE_TYPES = new LVFSFileType[]{
+        LVFSFileType.VALUE_FILE, LVFSFileType.ZONE_MAP_FILE, LVFSFileType.BLOOM_FILTER_FILE};
+
+    /**
+     * Returns the index file of the given column in the PAX file, which is placed beside the PAX file
+     * and named after it. The file might not exist.
+     * @param paxFile the PAX file
+     * @param columnId ID of the column
+     * @param type {@link LVFSFileType#VALUE_FILE}, {@link LVFSFileType#ZONE_MAP_FILE} or {@link LVFSFileType#BLOOM_FILTER_FILE}
+     */
+    public static VirtualFile getIndexFile (VirtualFile paxFile, int columnId, LVFSFileType type) {
+        return paxFile.getParentFile().getChildFile(type.appendExtension(getIndexFileBaseName(paxFile.getName(), columnId)));
+    }
+    /** file name (without extension) of the index files of the column in the PAX file of the given name. */
+    static String getIndexFileBaseName (String paxFileName, int columnId) {
+        String baseName = paxFileName;
+        if (baseName.lastIndexOf('.') >= 0) {
+            baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+        }
+        return baseName + "_" + columnId;
+    }
+
+    /**
+     * Writes the given column files into one PAX file.
+     * The values are re-written so that blocks of all columns cover the same tuples.
+     * The value indexes, zone maps and Bloom filters of the columns are copied beside the PAX file.
+     * The original files are not deleted.
+     * @param columns the column files to pack. must have the same number of tuples.
+     * Their compression types must be supported ({@link #isSupported(CompressionType)}).
+     * @param columnIds ID of each column
+     * @param paxFile the PAX file to write. overwritten if it exists.
+     * @param tuplesPerBlock number of tuples in each block
+     * @return the column files read from the PAX file
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static ColumnFileBundle[] pack (ColumnFileBundle[] columns, int[] columnIds, VirtualFile paxFile, int tuplesPerBlock) throws IOException {
+        assert (columns.length == columnIds.length);
+        ColumnType[] columnTypes = new ColumnType[columns.length];
+        CompressionType[] compressionTypes = new CompressionType[columns.length];
+        VirtualFile[] tmpFiles = new VirtualFile[columns.length];
+        long[] uncompressedSizes = new long[columns.length];
+        LocalPaxFile pax;
+        if (!paxFile.getParentFile().exists()) {
+            paxFile.getParentFile().mkdirs();
+        }
+        try {
+            for (int i = 0; i < columns.length; ++i) {
+                columnTypes[i] = columns[i].getColumnType();
+                compressionTypes[i] = columns[i].getCompressionType();
+                if (columns[i].getTupleCount() != columns[0].getTupleCount()) {
+                    throw new IOException ("the number of tuples doesn't match: " + columns[i] + " and " + columns[0]);
+                }
+                tmpFiles[i] = paxFile.getParentFile().getChildFile(LVFSFileType.TMP_DATA_FILE.appendExtension(paxFile.getName() + "_" + i));
+                LocalBlockCompressionWriter writer = LocalPaxFile.createColumnWriter(tmpFiles[i], columnTypes[i], compressionTypes[i], tuplesPerBlock);
+                ColumnFileReaderBundle reader = new ColumnFileReaderBundle(columns[i]);
+                try {
+                    TypedReader dataReader = reader.getDataReader();
+                    Object buffer = dataReader.getValueTraits().createArray(tuplesPerBlock);
+                    while (true) {
+                        int read = dataReader.readValues(buffer, 0, tuplesPerBlock);
+                        if (read <= 0) {
+                            break;
+                        }
+                        writer.writeValues(buffer, 0, read);
+                    }
+                    writer.writeFileFooter();
+                    writer.flush();
+                    uncompressedSizes[i] = writer.getTotalUncompressedSize();
+                    if (writer.getTupleCount() != columns[i].getTupleCount()) {
+                        throw new IOException ("the number of tuples read doesn't match: " + writer.getTupleCount() + ". " + columns[i]);
+                    }
+                } finally {
+                    reader.close();
+                    writer.close();
+                }
+            }
+            pax = LocalPaxFile.interleave(paxFile, columnIds, tmpFiles, columnTypes, compressionTypes);
+        } finally {
+            for (int i = 0; i < tmpFiles.length; ++i) {
+                if (tmpFiles[i] != null && tmpFiles[i].exists() && !tmpFiles[i].delete()) {
+                    LOG.warn("couldn't delete a temporary file: " + tmpFiles[i]);
+                }
+            }
+        }
+
+        ColumnFileBundle[] packed = new ColumnFileBundle[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            packed[i] = new ColumnFileBundle();
+            packed[i].setColumnType(columnTypes[i]);
+            packed[i].setCompressionType(compressionTypes[i]);
+            packed[i].setTupleCount(columns[i].getTupleCount());
+            packed[i].setSorted(columns[i].isSorted());
+            packed[i].setDistinctValues(columns[i].getDistinctValues());
+            packed[i].setDataFileChecksum(pax.getColumnChecksum(i));
+            packed[i].setUncompressedSizeKB((int) ((uncompressedSizes[i] + 1023L) / 1024L));
+            packed[i].setDataFile(paxFile);
+            packed[i].setPaxFile(paxFile, columnIds[i]);
+            VirtualFile[] indexFiles = new VirtualFile[]{columns[i].getValueFile(), columns[i].getZoneMapFile(), columns[i].getBloomFilterFile()};
+            for (int j = 0; j < INDEX_FILE_TYPES.length; ++j) {
+                if (indexFiles[j] == null || !indexFiles[j].exists()) {
+                    continue;
+                }
+                VirtualFile copied = getIndexFile(paxFile, columnIds[i], INDEX_FILE_TYPES[j]);
+                VirtualFileUtil.copyFile(indexFiles[j], copied);
+                switch (INDEX_FILE_TYPES[j]) {
+                case VALUE_FILE: packed[i].setValueFile(copied); break;
+                case ZONE_MAP_FILE: packed[i].setZoneMapFile(copied); break;
+                default:
+                    assert (INDEX_FILE_TYPES[j] == LVFSFileType.BLOOM_FILTER_FILE);
+                    packed[i].setBloomFilterFile(copied);
+                }
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Opens a column in the PAX file. The index files beside the PAX file are not opened.
+     * @return the column file. The column file ID is not stored in the PAX file, so it's 0.
+     */
+    public static ColumnFileBundle open (VirtualFile paxFile, int columnId) throws IOException {
+        LocalPaxFile pax = LocalPaxFile.open(paxFile);
+        int column = pax.getColumnIndex(columnId);
+        if (column < 0) {
+            throw new IOException ("column " + columnId + " is not in the PAX file: " + pax);
+        }
+        ColumnFileBundle bundle = new ColumnFileBundle();
+        bundle.setColumnType(pax.getColumnType(column));
+        bundle.setCompressionType(pax.getCompressionType(column));
+        bundle.setTupleCount(pax.getTotalTuples());
+        bundle.setDataFile(paxFile);
+        bundle.setPaxFile(paxFile, columnId);
+        return bundle;
+    }
+}
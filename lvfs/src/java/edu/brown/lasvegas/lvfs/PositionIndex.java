@@ -10,9 +10,9 @@ import java.io.IOException;
  * writing are extremely simple and fast. Also, a position file should be small,
  * most likely 100-200KB or so. So, we read/write them at once.</p>
  * 
- * <p>The file format is a series of int-pairs.
+ * <p>The file format is a series of pairs.
  * 1) tuple-num of the pointed tuple.
- * 2) byte position of the tuple.</p>
+ * 2) byte position of the tuple (64-bit so that data files can exceed 2GB).</p>
  * 
  * <p>Additionally, it's guaranteed that the first pair points to the first tuple
  * in the file, the last pair points to the last tuple + 1 (=the total number of tuples).</p>
@@ -25,12 +25,12 @@ public interface PositionIndex {
      * Tuple-number and byte-position pair.
      */
     public static class Pos {
-        public Pos (int tuple, int bytePosition) {
+        public Pos (int tuple, long bytePosition) {
             this.tuple = tuple;
             this.bytePosition = bytePosition;
         }
         public final int tuple;
-        public final int bytePosition;
+        public final long bytePosition;
         @Override
         public String toString() {
             return "Pos: tuple=" + tuple + ", from " + bytePosition + "th bytes";
@@ -67,7 +67,7 @@ public interface PositionIndex {
     /**
      * Returns the total byte size of the data file.
      */
-    public int getTotalBytes ();
+    public long getTotalBytes ();
 
 
     /**
@@ -0,0 +1,130 @@
+package edu.brown.lasvegas.lvfs;
+
+/**
+ * An inclusive range predicate "lower &lt;= column &lt;= upper" evaluated on de-compressed values.
+ * This is the counterpart of {@link DictionaryPredicate} for columns that are not dictionary-encoded.
+ * Like it, the predicate is evaluated batch-wise on primitive arrays and outputs a selection vector.
+ *
+ * <p>The bounds are converted to the primitive type of the value array when the array is
+ * a primitive array, so they must be {@link Number} in that case.</p>
+ */
+public final class RangePredicate {
+    /** the lower bound (inclusive). null to specify no lower bound. */
+    @SuppressWarnings("rawtypes")
+    private final Comparable lower;
+    /** the upper bound (inclusive). null to specify no upper bound. */
+    @SuppressWarnings("rawtypes")
+    private final Comparable upper;
+
+    /**
+     * @param lower the lower bound (inclusive). null to specify no lower bound.
+     * @param upper the upper bound (inclusive). null to specify no upper bound.
+     */
+    public RangePredicate (Comparable<?> lower, Comparable<?> upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /** Returns the lower bound (inclusive). null if no lower bound. */
+    public Comparable<?> getLower () {
+        return lower;
+    }
+    /** Returns the upper bound (inclusive). null if no upper bound. */
+    public Comparable<?> getUpper () {
+        return upper;
+    }
+
+    /**
+     * Translates this predicate into the codes of the dictionary.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public DictionaryPredicate toDictionaryPredicate (OrderedDictionary<?, ?> dict) {
+        return DictionaryPredicate.range((OrderedDictionary) dict, lower, true, upper, true);
+    }
+
+    /** Tests a single value. */
+    @SuppressWarnings("unchecked")
+    public boolean matches (Comparable<?> value) {
+        if (lower != null && lower.compareTo(value) > 0) {
+            return false;
+        }
+        if (upper != null && upper.compareTo(value) < 0) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the predicate on the values and outputs the positions that satisfy it.
+     * @param values de-compressed values (long[], int[], short[], byte[], float[], double[] or an array of Comparable)
+     * @param off the position of the first value to evaluate
+     * @param len number of values to evaluate
+     * @param selection receives the positions (index in values) that satisfy the predicate. must have len entries.
+     * @return the number of positions written to selection
+     */
+    public int select (Object values, int off, int len, int[] selection) {
+        int count = 0;
+        if (values instanceof long[]) {
+            long[] array = (long[]) values;
+            long low = lower == null ? Long.MIN_VALUE : ((Number) lower).longValue();
+            long high = upper == null ? Long.MAX_VALUE : ((Number) upper).longValue();
+            // always write the position and advance conditionally, which avoids unpredictable branches
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += array[i] >= low && array[i] <= high ? 1 : 0;
+            }
+        } else if (values instanceof int[]) {
+            int[] array = (int[]) values;
+            int low = lower == null ? Integer.MIN_VALUE : ((Number) lower).intValue();
+            int high = upper == null ? Integer.MAX_VALUE : ((Number) upper).intValue();
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += array[i] >= low && array[i] <= high ? 1 : 0;
+            }
+        } else if (values instanceof short[]) {
+            short[] array = (short[]) values;
+            int low = lower == null ? Short.MIN_VALUE : ((Number) lower).intValue();
+            int high = upper == null ? Short.MAX_VALUE : ((Number) upper).intValue();
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += array[i] >= low && array[i] <= high ? 1 : 0;
+            }
+        } else if (values instanceof byte[]) {
+            byte[] array = (byte[]) values;
+            int low = lower == null ? Byte.MIN_VALUE : ((Number) lower).intValue();
+            int high = upper == null ? Byte.MAX_VALUE : ((Number) upper).intValue();
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += array[i] >= low && array[i] <= high ? 1 : 0;
+            }
+        } else if (values instanceof float[]) {
+            float[] array = (float[]) values;
+            float low = lower == null ? Float.NEGATIVE_INFINITY : ((Number) lower).floatValue();
+            float high = upper == null ? Float.POSITIVE_INFINITY : ((Number) upper).floatValue();
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += array[i] >= low && array[i] <= high ? 1 : 0;
+            }
+        } else if (values instanceof double[]) {
+            double[] array = (double[]) values;
+            double low = lower == null ? Double.NEGATIVE_INFINITY : ((Number) lower).doubleValue();
+            double high = upper == null ? Double.POSITIVE_INFINITY : ((Number) upper).doubleValue();
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += array[i] >= low && array[i] <= high ? 1 : 0;
+            }
+        } else {
+            Comparable<?>[] array = (Comparable<?>[]) values;
+            for (int i = off; i < off + len; ++i) {
+                selection[count] = i;
+                count += matches(array[i]) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "RangePredicate[lower=" + lower + ",upper=" + upper + "]";
+    }
+}
@@ -109,13 +109,41 @@ public abstract class RawValueReader {
         return length;
     }
 
+    /**
+     * Returns a read-only view of the next bytes (at most bytesToRead bytes) and advances the cursor
+     * as much as the remaining bytes of the returned buffer.
+     * The batch read methods (readInts() etc) use this to convert values directly from the
+     * underlying memory (e.g., memory-mapped file or decompressed block) without
+     * copying them into the conversion buffer.
+     * The default implementation returns null, which means the implementation can't
+     * provide such a view and the batch read methods fall back to {@link #readBytes(byte[], int, int)}.
+     * @param bytesToRead maximum number of bytes to read
+     * @return view of the next bytes. null if not supported.
+     */
+    protected ByteBuffer readDirect (int bytesToRead) throws IOException {
+        return null;
+    }
+
     /** temporary buffer to do batch conversion. */
     private byte[] conversionBuffer = new byte[1024];
-    private int readIntoConversionBuffer(int bytesToRead) throws IOException {
+    /**
+     * Reads the next bytes into a byte buffer, either directly via {@link #readDirect(int)}
+     * or via the conversion buffer.
+     * @return the byte buffer positioned at the read bytes. null if no more bytes to read (EOF).
+     */
+    private ByteBuffer readIntoConversionBuffer(int bytesToRead) throws IOException {
+        ByteBuffer direct = readDirect(bytesToRead);
+        if (direct != null) {
+            return (direct.hasRemaining() || bytesToRead == 0) ? direct : null;
+        }
         if (bytesToRead > conversionBuffer.length) {
             conversionBuffer = new byte[bytesToRead];
         }
-        return readBytes(conversionBuffer, 0, bytesToRead);
+        int bytesRead = readBytes(conversionBuffer, 0, bytesToRead);
+        if (bytesRead < 0) {
+            return null;
+        }
+        return ByteBuffer.wrap(conversionBuffer, 0, bytesRead);
     }
 
     /**
@@ -123,12 +151,12 @@ public abstract class RawValueReader {
      * @return number of values actually read.  -1 if no more values to read.
      */
     public final int readShorts(short[] buffer, int off, int len) throws IOException {
-        int bytesRead = readIntoConversionBuffer(len * 2);
-        if (bytesRead <= 0) {
-            return bytesRead;
+        ByteBuffer bytes = readIntoConversionBuffer(len * 2);
+        if (bytes == null) {
+            return -1;
         }
-        len = bytesRead / 2;
-        ByteBuffer.wrap(conversionBuffer).asShortBuffer().get(buffer, off, len);
+        len = bytes.remaining() / 2;
+        bytes.asShortBuffer().get(buffer, off, len);
         return len;
     }
 
@@ -137,12 +165,12 @@ public abstract class RawValueReader {
      * @return number of values actually read.  -1 if no more values to read.
      */
     public final int readInts(int[] buffer, int off, int len) throws IOException {
-        int bytesRead = readIntoConversionBuffer(len * 4);
-        if (bytesRead <= 0) {
-            return bytesRead;
+        ByteBuffer bytes = readIntoConversionBuffer(len * 4);
+        if (bytes == null) {
+            return -1;
         }
-        len = bytesRead / 4;
-        ByteBuffer.wrap(conversionBuffer).asIntBuffer().get(buffer, off, len);
+        len = bytes.remaining() / 4;
+        bytes.asIntBuffer().get(buffer, off, len);
         return len;
     }
 
@@ -151,12 +179,12 @@ public abstract class RawValueReader {
      * @return number of values actually read.  -1 if no more values to read.
      */
     public final int readLongs(long[] buffer, int off, int len) throws IOException {
-        int bytesRead = readIntoConversionBuffer(len * 8);
-        if (bytesRead <= 0) {
-            return bytesRead;
+        ByteBuffer bytes = readIntoConversionBuffer(len * 8);
+        if (bytes == null) {
+            return -1;
         }
-        len = bytesRead / 8;
-        ByteBuffer.wrap(conversionBuffer).asLongBuffer().get(buffer, off, len);
+        len = bytes.remaining() / 8;
+        bytes.asLongBuffer().get(buffer, off, len);
         return len;
     }
     
@@ -165,12 +193,12 @@ public abstract class RawValueReader {
      * @return number of values actually read.  -1 if no more values to read.
      */
     public final int readFloats(float[] buffer, int off, int len) throws IOException {
-        int bytesRead = readIntoConversionBuffer(len * 4);
-        if (bytesRead <= 0) {
-            return bytesRead;
+        ByteBuffer bytes = readIntoConversionBuffer(len * 4);
+        if (bytes == null) {
+            return -1;
         }
-        len = bytesRead / 4;
-        ByteBuffer.wrap(conversionBuffer).asFloatBuffer().get(buffer, off, len);
+        len = bytes.remaining() / 4;
+        bytes.asFloatBuffer().get(buffer, off, len);
         return len;
     }
 
@@ -179,12 +207,12 @@ public abstract class RawValueReader {
      * @return number of values actually read.  -1 if no more values to read.
      */
     public final int readDoubles(double[] buffer, int off, int len) throws IOException {
-        int bytesRead = readIntoConversionBuffer(len * 8);
-        if (bytesRead <= 0) {
-            return bytesRead;
+        ByteBuffer bytes = readIntoConversionBuffer(len * 8);
+        if (bytes == null) {
+            return -1;
         }
-        len = bytesRead / 8;
-        ByteBuffer.wrap(conversionBuffer).asDoubleBuffer().get(buffer, off, len);
+        len = bytes.remaining() / 8;
+        bytes.asDoubleBuffer().get(buffer, off, len);
         return len;
     }
     
@@ -70,25 +70,29 @@ public abstract class RawValueWriter {
     }
     /** Write a variable-length byte[] with length header. */
     public final void writeBytesWithLengthHeader (byte[] bytes) throws IOException {
-        if (bytes.length < (1 << 7)) {
+        writeBytesWithLengthHeader (bytes, 0, bytes.length);
+    }
+    /** Write a part of byte[] as a variable-length value with length header. */
+    public final void writeBytesWithLengthHeader (byte[] bytes, int off, int len) throws IOException {
+        if (len < (1 << 7)) {
             // 1 byte length header
             writeByte((byte) 1);
-            writeByte((byte) bytes.length);
-        } else if (bytes.length < (1 << 15)) {
+            writeByte((byte) len);
+        } else if (len < (1 << 15)) {
             // 2 byte length header
             writeByte((byte) 2);
-            writeShort((short) bytes.length);
+            writeShort((short) len);
         } else {
             // 4 byte length header
             writeByte((byte) 4);
-            writeInt(bytes.length);
+            writeInt(len);
             /*
             // 8 byte length header (this is not quite implemented as byte[1<<32] isn't possible)
             writeByte((byte) 8);
-            writeLong(bytes.length);
+            writeLong(len);
             */
         }
-        writeBytes(bytes, 0, bytes.length);
+        writeBytes(bytes, off, len);
     }
 
     /** temporary buffer to do batch conversion. */
@@ -0,0 +1,28 @@
+package edu.brown.lasvegas.lvfs;
+
+/**
+ * A contiguous range of tuples in a column file, [startTuple, endTuple).
+ * Returned by a zone map ({@link ZoneMap}) to tell which tuples might satisfy a predicate.
+ */
+public final class TupleRange {
+    /** the first tuple in the range. */
+    public final int startTuple;
+    /** the tuple after the last tuple in the range (exclusive). */
+    public final int endTuple;
+
+    public TupleRange (int startTuple, int endTuple) {
+        assert (startTuple <= endTuple);
+        this.startTuple = startTuple;
+        this.endTuple = endTuple;
+    }
+
+    /** Returns the number of tuples in this range. */
+    public int getTupleCount () {
+        return endTuple - startTuple;
+    }
+
+    @Override
+    public String toString() {
+        return "[startTuple=" + startTuple + ",endTuple=" + endTuple + "]";
+    }
+}
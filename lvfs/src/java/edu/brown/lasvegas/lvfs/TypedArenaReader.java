@@ -0,0 +1,30 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Additional methods for readers of VARCHAR/VARBINARY columns to read
+ * values into a {@link StringArena} without materializing java objects.
+ */
+public interface TypedArenaReader {
+    /**
+     * Same as {@link TypedReader#readValues(Object, int, int)}, but appends the bytes of
+     * values to the arena.
+     * @param dest the arena to receive results
+     * @param len maximum number of values to read. must be within the remaining capacity of dest.
+     * @return number of values actually read. -1 if no more values.
+     */
+    int readValues (StringArena dest, int len) throws IOException;
+
+    /**
+     * Same as {@link TypedReader#readValuesAtPositions(Object, int, int[], int)}, but appends the bytes of
+     * values to the arena.
+     * @param dest the arena to receive results
+     * @param positions tuple positions relative to the current tuple, in ascending order without duplicates.
+     * @param positionCount number of positions to read
+     * @return number of values actually read.
+     */
+    int readValuesAtPositions (StringArena dest, int[] positions, int positionCount) throws IOException;
+}
@@ -0,0 +1,21 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Additional methods for writers of VARCHAR/VARBINARY columns to write
+ * values from a {@link StringArena} without materializing java objects.
+ * @see TypedArenaReader
+ */
+public interface TypedArenaWriter {
+    /**
+     * Same as {@link TypedWriter#writeValues(Object, int, int)}, but writes the bytes
+     * of the values [off, off + len) in the arena.
+     * @param values the arena to write
+     * @param off index of the first value to write
+     * @param len number of values to write
+     */
+    void writeValues (StringArena values, int off, int len) throws IOException;
+}
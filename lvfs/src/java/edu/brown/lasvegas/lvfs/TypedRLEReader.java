@@ -21,4 +21,17 @@ public interface TypedRLEReader<T extends Comparable<T>, AT> extends TypedReader
      * @throws IOException
      */
     ValueRun<T> getNextRun () throws IOException;
+
+    /**
+     * Reads the runs from the current tuple without expanding them into values.
+     * The first run is clipped to start at the current tuple, and the last run is clipped
+     * so that at most maxTuples tuples are read. Hence, reading the same number of tuples
+     * from other columns keeps them aligned with the runs.
+     * The current tuple moves to the end of the runs read.
+     * @param batch receives the runs. They are appended after the runs already in the batch.
+     * @param maxTuples maximum number of tuples to read
+     * @return the number of runs read. -1 if it already reached EOF.
+     * @throws IOException
+     */
+    int readRuns (ValueRunBatch<T, AT> batch, int maxTuples) throws IOException;
 }
@@ -40,6 +40,22 @@ public interface TypedReader<T extends Comparable<T>, AT> extends Closeable {
      */
     int readValues (AT buffer, int off, int len) throws IOException;
 
+    /**
+     * Reads the values only at the given positions, skipping the tuples in between.
+     * This is used for late materialization, where a selective predicate on another column
+     * determines the positions (selection vector) and only the surviving tuples are read.
+     * Consecutive positions are read in one {@link #readValues(Object, int, int)} call
+     * and gaps are skipped as efficiently as {@link #skipValues(int)} does for the file type.
+     * @param buffer the buffer to receive results. buffer[off + i] receives the value at positions[i].
+     * @param off offset of the buffer
+     * @param positions tuple positions relative to the current tuple (0 is the current tuple),
+     * in ascending order without duplicates.
+     * @param positionCount number of positions to read
+     * @return number of values actually read.
+     * After this method, the current tuple is the one after the last position.
+     */
+    int readValuesAtPositions (AT buffer, int off, int[] positions, int positionCount) throws IOException;
+
     /**
      * Skip one entry.
      */
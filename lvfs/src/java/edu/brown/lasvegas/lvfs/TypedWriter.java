@@ -68,6 +68,37 @@ public interface TypedWriter<T extends Comparable<T>, AT> extends Closeable {
      * Position file is not needed for some file types, such as fixed-length column.
      */
     void writePositionFile (VirtualFile posFile) throws IOException;
+
+    /**
+     * Specifies that the writer collects the minimum and maximum values of every
+     * tuplesPerZone tuples to write out a zone map file ({@link ZoneMap}).
+     * To turn it on, this method has to be called before writing any contents.
+     * Initially turned off.
+     * @throws UnsupportedOperationException if the file type doesn't support zone maps (e.g., RLE).
+     */
+    void enableZoneMap (int tuplesPerZone);
+
+    /**
+     * Writes out the collected zone map to a zone map file.
+     * Must be called after {@link #writeFileFooter()} and only when {@link #enableZoneMap(int)} was called.
+     */
+    void writeZoneMapFile (VirtualFile zoneMapFile) throws IOException;
+
+    /**
+     * Specifies that the writer collects hash values of all written values
+     * to write out a Bloom filter file ({@link BloomFilter}).
+     * To turn it on, this method has to be called before writing any contents.
+     * Initially turned off.
+     * @param bitsPerKey number of bits per distinct key. 10 gives about 1% false positives.
+     * @throws UnsupportedOperationException if the file type doesn't support Bloom filters (e.g., RLE).
+     */
+    void enableBloomFilter (int bitsPerKey);
+
+    /**
+     * Writes out the collected keys to a Bloom filter file.
+     * Must be called after {@link #writeFileFooter()} and only when {@link #enableBloomFilter(int)} was called.
+     */
+    void writeBloomFilterFile (VirtualFile bloomFilterFile) throws IOException;
     /**
      * this version only flushes the underlying stream, does not call sync.
      */
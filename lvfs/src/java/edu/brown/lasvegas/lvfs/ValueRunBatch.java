@@ -0,0 +1,368 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.brown.lasvegas.traits.ValueTraits;
+
+/**
+ * A batch of value runs read from an RLE-compressed column by
+ * {@link TypedRLEReader#readRuns(ValueRunBatch, int)}.
+ *
+ * <p>Each run is a (value, startTuple, runLength) triplet, stored in parallel arrays
+ * so that primitive values are not boxed. Filters, counts, sums and group-bys
+ * are computed per run rather than per tuple, which makes them O(runs) instead of O(tuples)
+ * on well-sorted columns.</p>
+ *
+ * <p>Run filters output the indexes of qualifying runs. They can be turned into
+ * tuple ranges ({@link #toTupleRanges(int[], int, List)}), or into a selection vector
+ * of the same format as {@link DictionaryPredicate#select(Object, int, int, int[])}
+ * to be combined with predicates on other columns of the same batch of tuples.
+ * Methods taking <code>selectedRuns</code> accept null to use all runs in this batch.</p>
+ */
+public final class ValueRunBatch<T extends Comparable<T>, AT> {
+    private final ValueTraits<T, AT> traits;
+    private final int capacity;
+    /** the value of each run. */
+    private final AT values;
+    /** the tuple (in the column file) where each run starts at. */
+    private final int[] startTuples;
+    /** number of tuples in each run. */
+    private final int[] runLengths;
+    /** number of runs in this batch. */
+    private int count;
+
+    /**
+     * Constructs an empty batch.
+     * @param capacity maximum number of runs this batch can hold
+     */
+    public ValueRunBatch (ValueTraits<T, AT> traits, int capacity) {
+        this.traits = traits;
+        this.capacity = capacity;
+        this.values = traits.createArray(capacity);
+        this.startTuples = new int[capacity];
+        this.runLengths = new int[capacity];
+        this.count = 0;
+    }
+
+    /** Appends a run. Usually called by readers. */
+    public void add (T value, int startTuple, int runLength) {
+        assert (count < capacity);
+        assert (count == 0 || startTuples[count - 1] + runLengths[count - 1] == startTuple);
+        traits.set(values, count, value);
+        startTuples[count] = startTuple;
+        runLengths[count] = runLength;
+        ++count;
+    }
+    /** Removes all runs in this batch to reuse it. */
+    public void resetCount () {
+        count = 0;
+    }
+    /** Returns whether no more run can be added. */
+    public boolean isFull () {
+        return count >= capacity;
+    }
+
+    /** Returns the number of runs in this batch. */
+    public int getCount () {
+        return count;
+    }
+    /** Returns the maximum number of runs this batch can hold. */
+    public int getCapacity () {
+        return capacity;
+    }
+    /** Returns the array of run values. Only the first {@link #getCount()} entries are valid. */
+    public AT getValues () {
+        return values;
+    }
+    /** Returns the array of run start tuples. Only the first {@link #getCount()} entries are valid. */
+    public int[] getStartTuples () {
+        return startTuples;
+    }
+    /** Returns the array of run lengths. Only the first {@link #getCount()} entries are valid. */
+    public int[] getRunLengths () {
+        return runLengths;
+    }
+    /** Returns the value of the run. Boxes the value if AT is a primitive array. */
+    public T getValue (int run) {
+        return traits.get(values, run);
+    }
+    /** Returns the first tuple of this batch. */
+    public int getFirstTuple () {
+        assert (count > 0);
+        return startTuples[0];
+    }
+    /** Returns the tuple after the last tuple of this batch (exclusive). */
+    public int getEndTuple () {
+        assert (count > 0);
+        return startTuples[count - 1] + runLengths[count - 1];
+    }
+    /** Returns the total number of tuples in this batch. */
+    public int getTupleCount () {
+        return count == 0 ? 0 : getEndTuple() - getFirstTuple();
+    }
+
+    /**
+     * Evaluates a range predicate such as "lower &lt;= column &lt; upper" on each run.
+     * @param lower the lower bound. null to specify no lower bound.
+     * @param lowerInclusive whether the lower bound itself satisfies the predicate
+     * @param upper the upper bound. null to specify no upper bound.
+     * @param upperInclusive whether the upper bound itself satisfies the predicate
+     * @param selectedRuns receives the indexes of the runs that satisfy the predicate. must have {@link #getCount()} entries.
+     * @return the number of runs written to selectedRuns
+     */
+    public int selectRuns (T lower, boolean lowerInclusive, T upper, boolean upperInclusive, int[] selectedRuns) {
+        int selected = 0;
+        for (int i = 0; i < count; ++i) {
+            T value = traits.get(values, i);
+            if (lower != null) {
+                int cmp = value.compareTo(lower);
+                if (cmp < 0 || (cmp == 0 && !lowerInclusive)) {
+                    continue;
+                }
+            }
+            if (upper != null) {
+                int cmp = value.compareTo(upper);
+                if (cmp > 0 || (cmp == 0 && !upperInclusive)) {
+                    continue;
+                }
+            }
+            selectedRuns[selected++] = i;
+        }
+        return selected;
+    }
+
+    /**
+     * Returns the number of tuples in the runs.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     */
+    public int countTuples (int[] selectedRuns, int runCount) {
+        if (selectedRuns == null) {
+            return getTupleCount();
+        }
+        int tuples = 0;
+        for (int i = 0; i < runCount; ++i) {
+            tuples += runLengths[selectedRuns[i]];
+        }
+        return tuples;
+    }
+
+    /**
+     * Returns the sum of the values in the runs (value * runLength for each run) for numeric columns.
+     * The sum of floating point columns is computed in double as {@link #sumDouble(int[], int)} does,
+     * and then truncated to long.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     */
+    public long sumLong (int[] selectedRuns, int runCount) {
+        int n = selectedRuns == null ? count : runCount;
+        long sum = 0;
+        if (values instanceof long[]) {
+            long[] array = (long[]) values;
+            for (int i = 0; i < n; ++i) {
+                int run = selectedRuns == null ? i : selectedRuns[i];
+                sum += array[run] * runLengths[run];
+            }
+        } else if (values instanceof int[]) {
+            int[] array = (int[]) values;
+            for (int i = 0; i < n; ++i) {
+                int run = selectedRuns == null ? i : selectedRuns[i];
+                sum += (long) array[run] * runLengths[run];
+            }
+        } else if (values instanceof short[]) {
+            short[] array = (short[]) values;
+            for (int i = 0; i < n; ++i) {
+                int run = selectedRuns == null ? i : selectedRuns[i];
+                sum += (long) array[run] * runLengths[run];
+            }
+        } else if (values instanceof byte[]) {
+            byte[] array = (byte[]) values;
+            for (int i = 0; i < n; ++i) {
+                int run = selectedRuns == null ? i : selectedRuns[i];
+                sum += (long) array[run] * runLengths[run];
+            }
+        } else if (values instanceof double[] || values instanceof float[]) {
+            return (long) sumDouble(selectedRuns, runCount);
+        } else {
+            throw new UnsupportedOperationException("sumLong() is not supported for " + values.getClass().getName());
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the values in the runs (value * runLength for each run) for numeric columns.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     */
+    public double sumDouble (int[] selectedRuns, int runCount) {
+        int n = selectedRuns == null ? count : runCount;
+        double sum = 0;
+        if (values instanceof double[]) {
+            double[] array = (double[]) values;
+            for (int i = 0; i < n; ++i) {
+                int run = selectedRuns == null ? i : selectedRuns[i];
+                sum += array[run] * runLengths[run];
+            }
+        } else if (values instanceof float[]) {
+            float[] array = (float[]) values;
+            for (int i = 0; i < n; ++i) {
+                int run = selectedRuns == null ? i : selectedRuns[i];
+                sum += (double) array[run] * runLengths[run];
+            }
+        } else {
+            return sumLong(selectedRuns, runCount);
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the tuples per distinct value (GROUP BY column, COUNT(*)). One map lookup per run.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     * @param counts receives the counts. The value is an array of length 1 so that
+     * it is updated without re-boxing. Counts are added to the existing entries.
+     */
+    public void countByValue (int[] selectedRuns, int runCount, Map<T, long[]> counts) {
+        int n = selectedRuns == null ? count : runCount;
+        for (int i = 0; i < n; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            T value = traits.get(values, run);
+            long[] entry = counts.get(value);
+            if (entry == null) {
+                entry = new long[1];
+                counts.put(value, entry);
+            }
+            entry[0] += runLengths[run];
+        }
+    }
+
+    /**
+     * Sums up another column of the same tuples per run, which is the building block of
+     * "GROUP BY this column, SUM(other column)". The caller then needs only one group lookup per run.
+     * @param measures values of the other column
+     * @param baseTuple the tuple (in the column file) corresponding to measures[0]
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     * @param runSums receives the sum for each run, in the order of selectedRuns
+     */
+    public void sumPerRun (double[] measures, int baseTuple, int[] selectedRuns, int runCount, double[] runSums) {
+        int n = selectedRuns == null ? count : runCount;
+        for (int i = 0; i < n; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            int from = startTuples[run] - baseTuple;
+            int to = from + runLengths[run];
+            double sum = 0;
+            for (int j = from; j < to; ++j) {
+                sum += measures[j];
+            }
+            runSums[i] = sum;
+        }
+    }
+    /** float version of {@link #sumPerRun(double[], int, int[], int, double[])}. */
+    public void sumPerRun (float[] measures, int baseTuple, int[] selectedRuns, int runCount, double[] runSums) {
+        int n = selectedRuns == null ? count : runCount;
+        for (int i = 0; i < n; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            int from = startTuples[run] - baseTuple;
+            int to = from + runLengths[run];
+            double sum = 0;
+            for (int j = from; j < to; ++j) {
+                sum += measures[j];
+            }
+            runSums[i] = sum;
+        }
+    }
+    /** long version of {@link #sumPerRun(double[], int, int[], int, double[])}. */
+    public void sumPerRun (long[] measures, int baseTuple, int[] selectedRuns, int runCount, long[] runSums) {
+        int n = selectedRuns == null ? count : runCount;
+        for (int i = 0; i < n; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            int from = startTuples[run] - baseTuple;
+            int to = from + runLengths[run];
+            long sum = 0;
+            for (int j = from; j < to; ++j) {
+                sum += measures[j];
+            }
+            runSums[i] = sum;
+        }
+    }
+
+    /**
+     * Expands the runs into a selection vector, the positions of the tuples relative to baseTuple.
+     * The output can be refined by predicates on other columns, e.g., {@link DictionaryPredicate#refine(Object, int[], int)}.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     * @param baseTuple the tuple (in the column file) corresponding to position 0
+     * @param selection receives the positions. must have {@link #countTuples(int[], int)} entries.
+     * @return the number of positions written to selection
+     */
+    public int toSelection (int[] selectedRuns, int runCount, int baseTuple, int[] selection) {
+        int n = selectedRuns == null ? count : runCount;
+        int selected = 0;
+        for (int i = 0; i < n; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            int from = startTuples[run] - baseTuple;
+            int to = from + runLengths[run];
+            for (int j = from; j < to; ++j) {
+                selection[selected++] = j;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Removes the positions that are not in the runs from a selection vector (AND with the previous predicates).
+     * Both the selection vector and selectedRuns must be sorted, which is the case
+     * for the outputs of {@link DictionaryPredicate} and {@link #selectRuns(Comparable, boolean, Comparable, boolean, int[])}.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     * @param baseTuple the tuple (in the column file) corresponding to position 0
+     * @param selection positions to evaluate. overwritten by the positions in the runs.
+     * @param selectionCount number of positions in selection
+     * @return the number of positions left in selection
+     */
+    public int refineSelection (int[] selectedRuns, int runCount, int baseTuple, int[] selection, int selectionCount) {
+        int n = selectedRuns == null ? count : runCount;
+        int selected = 0;
+        int cur = 0;
+        for (int i = 0; i < n && cur < selectionCount; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            int from = startTuples[run] - baseTuple;
+            int to = from + runLengths[run];
+            while (cur < selectionCount && selection[cur] < from) {
+                ++cur;
+            }
+            while (cur < selectionCount && selection[cur] < to) {
+                selection[selected++] = selection[cur++];
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Converts the runs into tuple ranges. Adjacent runs are merged into one range,
+     * also with the last range already in the list.
+     * @param selectedRuns indexes of the runs. null to use all runs in this batch.
+     * @param runCount number of indexes in selectedRuns
+     * @param ranges receives the tuple ranges
+     */
+    public void toTupleRanges (int[] selectedRuns, int runCount, List<TupleRange> ranges) {
+        int n = selectedRuns == null ? count : runCount;
+        for (int i = 0; i < n; ++i) {
+            int run = selectedRuns == null ? i : selectedRuns[i];
+            int start = startTuples[run];
+            int end = start + runLengths[run];
+            if (!ranges.isEmpty() && ranges.get(ranges.size() - 1).endTuple == start) {
+                TupleRange last = ranges.remove(ranges.size() - 1);
+                start = last.startTuple;
+            }
+            ranges.add(new TupleRange(start, end));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ValueRunBatch[count=" + count + ",capacity=" + capacity + "]";
+    }
+}
@@ -25,6 +25,13 @@ public interface VirtualFile {
      * Returns an output stream to write to the file.
      */
     VirtualFileOutputStream getOutputStream() throws IOException;
+
+    /**
+     * Returns a positional (pread-like) reader of the file, which allows
+     * O(1) random accesses and can be shared by multiple readers.
+     * @return positional reader of the file. null if the underlying file system doesn't support it.
+     */
+    VirtualFilePositionalInput getPositionalInput() throws IOException;
     
     /**
      * Returns the length of the file.
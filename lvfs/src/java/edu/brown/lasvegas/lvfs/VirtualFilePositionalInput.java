@@ -0,0 +1,50 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Positional (pread-like) read access to {@link VirtualFile}.
+ * Unlike {@link VirtualFileInputStream}, this object has no notion of current position.
+ * Thus, reading from an arbitrary position (even backward) costs the same
+ * and one file handle can be safely shared by multiple readers and threads.
+ */
+public abstract class VirtualFilePositionalInput implements Closeable {
+    /**
+     * Reads up to len bytes from the given absolute position in the file.
+     * This method doesn't change any state of this object and is thread-safe.
+     * @param position byte position in the file to start reading
+     * @param buf buffer to receive the result
+     * @param off offset of buf
+     * @param len maximum number of bytes to read
+     * @return number of bytes actually read. -1 if position is at or beyond the end of file.
+     */
+    public abstract int read (long position, byte[] buf, int off, int len) throws IOException;
+
+    /**
+     * Reads exactly len bytes from the given absolute position in the file.
+     * @throws IOException if the file doesn't have enough bytes
+     */
+    public final void readFully (long position, byte[] buf, int off, int len) throws IOException {
+        int totalRead = 0;
+        while (totalRead < len) {
+            int read = read (position + totalRead, buf, off + totalRead, len - totalRead);
+            if (read < 0) {
+                throw new IOException ("EOF before reading " + len + " bytes from " + position + ": " + this);
+            }
+            totalRead += read;
+        }
+    }
+
+    /**
+     * Returns the length of the file.
+     */
+    public abstract long length () throws IOException;
+
+    /**
+     * Releases this reference to the file handle.
+     * The file handle itself might be kept open as far as other readers share it.
+     */
+    @Override
+    public abstract void close () throws IOException;
+}
@@ -0,0 +1,218 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.IOException;
+
+/**
+ * A read-only view of a byte range in another file.
+ * Used to read a file embedded in a column segment file ({@link ColumnSegment}) with the
+ * existing readers, which only see a file starting at byte 0.
+ * Positional reads share the file handle of the underlying file.
+ */
+public final class VirtualFileSlice implements VirtualFile {
+    private final VirtualFile baseFile;
+    private final String name;
+    private final long offset;
+    private final long length;
+
+    /**
+     * @param baseFile the file that contains the slice
+     * @param name the name of the embedded file (e.g., "123.dat")
+     * @param offset byte position of the slice in baseFile
+     * @param length byte length of the slice
+     */
+    public VirtualFileSlice (VirtualFile baseFile, String name, long offset, long length) {
+        this.baseFile = baseFile;
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Returns the file that contains the slice. */
+    public VirtualFile getBaseFile () {
+        return baseFile;
+    }
+    /** Returns the byte position of the slice in the base file. */
+    public long getOffset () {
+        return offset;
+    }
+
+    @Override
+    public VirtualFileInputStream getInputStream() throws IOException {
+        VirtualFilePositionalInput input = baseFile.getPositionalInput();
+        if (input != null) {
+            return new PositionalSliceInputStream(input);
+        }
+        return new SliceInputStream(baseFile.getInputStream());
+    }
+    @Override
+    public VirtualFileOutputStream getOutputStream() throws IOException {
+        throw new UnsupportedOperationException("slices are read-only: " + this);
+    }
+    @Override
+    public VirtualFilePositionalInput getPositionalInput() throws IOException {
+        final VirtualFilePositionalInput input = baseFile.getPositionalInput();
+        if (input == null) {
+            return null;
+        }
+        return new VirtualFilePositionalInput() {
+            @Override
+            public int read(long position, byte[] buf, int off, int len) throws IOException {
+                if (position >= length) {
+                    return -1;
+                }
+                return input.read(offset + position, buf, off, (int) Math.min(len, length - position));
+            }
+            @Override
+            public long length() throws IOException {
+                return length;
+            }
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+        };
+    }
+    @Override
+    public long length() throws IOException {
+        return length;
+    }
+    @Override
+    public boolean exists() throws IOException {
+        return baseFile.exists();
+    }
+    @Override
+    public boolean isDirectory() throws IOException {
+        return false;
+    }
+    @Override
+    public boolean delete(boolean recursive) throws IOException {
+        throw new UnsupportedOperationException("slices can't be deleted separately: " + this);
+    }
+    @Override
+    public boolean delete() throws IOException {
+        return delete(false);
+    }
+    @Override
+    public VirtualFile getParentFile() {
+        return baseFile.getParentFile();
+    }
+    @Override
+    public VirtualFile getChildFile(String filename) {
+        throw new UnsupportedOperationException();
+    }
+    @Override
+    public boolean mkdirs() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+    @Override
+    public boolean renameTo(VirtualFile newPath) throws IOException {
+        throw new UnsupportedOperationException("slices can't be renamed separately: " + this);
+    }
+    @Override
+    public String getAbsolutePath() {
+        return baseFile.getAbsolutePath() + "!" + name;
+    }
+    @Override
+    public String getName() {
+        return name;
+    }
+    @Override
+    public String toString() {
+        return "Slice:" + baseFile + "!" + name + "[offset=" + offset + ",length=" + length + "]";
+    }
+
+    /** reads the slice via positional reads on the shared file handle. */
+    private final class PositionalSliceInputStream extends VirtualFileInputStream {
+        private final VirtualFilePositionalInput input;
+        private long position = 0;
+        private PositionalSliceInputStream (VirtualFilePositionalInput input) {
+            this.input = input;
+        }
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read <= 0 ? -1 : (b[0] & 0xFF);
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            int read = input.read(offset + position, b, off, (int) Math.min(len, length - position));
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /** reads the slice from an input stream of the whole base file. */
+    private final class SliceInputStream extends VirtualFileInputStream {
+        private final VirtualFileInputStream stream;
+        private long position = 0;
+        private boolean skippedToSlice = false;
+        private SliceInputStream (VirtualFileInputStream stream) {
+            this.stream = stream;
+        }
+        private void skipToSlice () throws IOException {
+            if (skippedToSlice) {
+                return;
+            }
+            long remaining = offset;
+            while (remaining > 0) {
+                long skipped = stream.skip(remaining);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) {
+                        throw new IOException ("EOF before the slice: " + VirtualFileSlice.this);
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            skippedToSlice = true;
+        }
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read <= 0 ? -1 : (b[0] & 0xFF);
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            skipToSlice();
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            int read = stream.read(b, off, (int) Math.min(len, length - position));
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
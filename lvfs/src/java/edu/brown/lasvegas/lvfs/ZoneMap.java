@@ -0,0 +1,63 @@
+package edu.brown.lasvegas.lvfs;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A zone map is a small sidecar file that stores the minimum and maximum values
+ * of each zone (a fixed number of consecutive tuples) in a data file.
+ * 
+ * <p>Unlike value index ({@link ValueIndex}), a zone map is useful for any column, not only
+ * for the sorting column. Data are usually clustered by the loading order or
+ * by correlated columns (e.g., ship date and order date), so scans with a range predicate
+ * can skip most zones without reading or decompressing them.</p>
+ * 
+ * <p>Just like position index, this file is supposed to be small. So, we read/write them at once.</p>
+ */
+public interface ZoneMap<T extends Comparable<T>> {
+    /** default number of tuples in each zone. */
+    public static final int DEFAULT_TUPLES_PER_ZONE = 1 << 12;
+
+    /**
+     * Returns the number of zones.
+     */
+    public int getZoneCount ();
+
+    /**
+     * Returns the first tuple of the specified zone.
+     * @param zone 0 to getZoneCount() - 1.
+     */
+    public int getZoneStartTuple (int zone);
+
+    /**
+     * Returns the minimum value in the specified zone.
+     * @param zone 0 to getZoneCount() - 1.
+     */
+    public T getMin (int zone);
+
+    /**
+     * Returns the maximum value in the specified zone.
+     * @param zone 0 to getZoneCount() - 1.
+     */
+    public T getMax (int zone);
+
+    /**
+     * Returns the number of tuples in the data file.
+     */
+    public int getTotalTuples ();
+
+    /**
+     * Returns the tuple ranges that might contain values between the given bounds.
+     * Tuples outside of the returned ranges are guaranteed to not satisfy the predicate.
+     * Adjacent qualifying zones are merged into one range.
+     * @param lower the lower bound (inclusive). null to specify no lower bound.
+     * @param upper the upper bound (inclusive). null to specify no upper bound.
+     * @return qualifying tuple ranges in ascending order. empty if no tuple qualifies.
+     */
+    public List<TupleRange> searchRange (T lower, T upper);
+
+    /**
+     * Writes out the zone map file.
+     */
+    public void writeToFile (VirtualFile file) throws IOException;
+}
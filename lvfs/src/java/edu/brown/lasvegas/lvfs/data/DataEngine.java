@@ -98,6 +98,19 @@ public final class DataEngine implements LVDataProtocol, Closeable {
             pollingThread.join();
         } catch (InterruptedException ex) {
         }
+        if (context.blockReadAhead != null) {
+            context.blockReadAhead.close();
+        }
+        if (context.writeBehind != null) {
+            context.writeBehind.close();
+        }
+        if (context.scanExecutor != null) {
+            context.scanExecutor.shutdown();
+        }
+        if (context.blockCache != null) {
+            LOG.info("block cache statistics: " + context.blockCache);
+            context.blockCache.clear();
+        }
         didShutdown = true;
     }
     public boolean isShutdown () {
@@ -135,10 +148,8 @@ public final class DataEngine implements LVDataProtocol, Closeable {
     }
 
     @Override
-    public int getFileLength(String localPath) throws IOException {
-        File file = new File (localPath);
-        assert (file.length() <= 0x7FFFFFFF);
-        return (int) file.length();
+    public long getFileLength(String localPath) throws IOException {
+        return new File (localPath).length();
     }
     @Override
     public boolean existsFile(String localPath) throws IOException {
@@ -150,16 +161,15 @@ public final class DataEngine implements LVDataProtocol, Closeable {
         return file.exists() && file.isDirectory();
     }
     @Override
-    public int[] getCombinedFileStatus(String localPath) throws IOException {
+    public long[] getCombinedFileStatus(String localPath) throws IOException {
         File file = new File (localPath);
         if (!file.exists()) {
-            return new int[]{0, 0, 0};
+            return new long[]{0, 0, 0};
         }
         if (file.isDirectory()) {
-            return new int[]{0, 1, 1};
+            return new long[]{0, 1, 1};
         }
-        assert (file.length() <= 0x7FFFFFFF);
-        return new int[]{(int) file.length(), 1, 0};
+        return new long[]{file.length(), 1, 0};
     }
     @Override
     public boolean deleteFile(String localPath, boolean recursive) throws IOException {
@@ -1,21 +1,102 @@
 package edu.brown.lasvegas.lvfs.data;
 
 import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 
+import edu.brown.lasvegas.lvfs.local.LocalBlockCache;
+import edu.brown.lasvegas.lvfs.local.LocalBlockReadAhead;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
 import edu.brown.lasvegas.protocol.LVMetadataProtocol;
 
 /**
  * All tasks and modules in data node shares this context. 
  */
 public class DataEngineContext {
+    /** number of threads to read ahead blocks of block-compressed files. 0 to disable read-ahead. */
+    public static final String BLOCK_READ_AHEAD_THREADS_KEY = "lasvegas.server.data.block_read_ahead.threads";
+    public static final int BLOCK_READ_AHEAD_THREADS_DEFAULT = 2;
+    /** number of blocks to read ahead in each block-compressed file reader. 0 to disable read-ahead. */
+    public static final String BLOCK_READ_AHEAD_DEPTH_KEY = "lasvegas.server.data.block_read_ahead.depth";
+    public static final int BLOCK_READ_AHEAD_DEPTH_DEFAULT = 2;
+    /** maximum bytes of decompressed blocks cached in direct (off-heap) memory. 0 to disable the cache. */
+    public static final String BLOCK_CACHE_BYTES_KEY = "lasvegas.server.data.block_cache.bytes";
+    public static final long BLOCK_CACHE_BYTES_DEFAULT = 128L << 20;
+    /** number of threads to write out column files in background while tasks fill next buffers. 0 to disable write-behind. */
+    public static final String WRITE_BEHIND_THREADS_KEY = "lasvegas.server.data.write_behind.threads";
+    public static final int WRITE_BEHIND_THREADS_DEFAULT = 2;
+    /** number of filled buffers each column file writer can hand over before it waits for the disk. 0 to disable write-behind. */
+    public static final String WRITE_BEHIND_DEPTH_KEY = "lasvegas.server.data.write_behind.depth";
+    public static final int WRITE_BEHIND_DEPTH_DEFAULT = 2;
+    /** byte size of write-behind buffers for column file writers that don't specify their own buffer size. */
+    public static final String WRITE_BEHIND_BUFFER_BYTES_KEY = "lasvegas.server.data.write_behind.buffer_bytes";
+    public static final int WRITE_BEHIND_BUFFER_BYTES_DEFAULT = 1 << 18;
+    /** number of threads to scan partitions in parallel within one task ({@link ParallelPartitionScanner}). 1 or less to scan sequentially. */
+    public static final String SCAN_THREADS_KEY = "lasvegas.server.data.scan.threads";
+    public static final int SCAN_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+    /** partitions with more tuples than this are split into tuple ranges scanned by different threads. */
+    public static final String SCAN_SPLIT_TUPLES_KEY = "lasvegas.server.data.scan.split_tuples";
+    public static final int SCAN_SPLIT_TUPLES_DEFAULT = 1 << 22;
+    /**
+     * bytes of hash tables a task can use for aggregation ({@link edu.brown.lasvegas.qe.operator.HashAggregateOperator})
+     * before spilling them to the local tmp folder. Divided among the partitions scanned in parallel.
+     */
+    public static final String AGGREGATE_MEMORY_BYTES_KEY = "lasvegas.server.data.aggregate.memory_bytes";
+    public static final long AGGREGATE_MEMORY_BYTES_DEFAULT = 256L << 20;
+    /**
+     * bytes of inputs and hash tables a task can use for joins ({@link edu.brown.lasvegas.qe.operator.RadixHashJoinOperator})
+     * before spilling them to the local tmp folder. Divided among the partitions scanned in parallel.
+     */
+    public static final String JOIN_MEMORY_BYTES_KEY = "lasvegas.server.data.join.memory_bytes";
+    public static final long JOIN_MEMORY_BYTES_DEFAULT = 256L << 20;
+
+    /**
+     * whether to pack each new column file into a single segment file ({@link edu.brown.lasvegas.lvfs.ColumnSegment})
+     * rather than keeping the data, dictionary and index files separately. Reduces open file handles.
+     */
+    public static final String COLUMN_SEGMENT_KEY = "lasvegas.server.data.column_segment";
+    public static final boolean COLUMN_SEGMENT_DEFAULT = false;
+
+    /**
+     * number of tuples in each block of PAX files, which store the column groups declared in replica schemes
+     * ({@link edu.brown.lasvegas.LVReplicaScheme#getColumnGroup(int)}).
+     */
+    public static final String PAX_TUPLES_PER_BLOCK_KEY = "lasvegas.server.data.pax_tuples_per_block";
+    public static final int PAX_TUPLES_PER_BLOCK_DEFAULT = 1 << 14;
+
     public DataEngineContext(int nodeId, Configuration conf, LVMetadataProtocol metaRepo, File localLvfsRootDir, File localLvfsTmpDir) {
         this.nodeId = nodeId;
         this.conf = conf;
         this.metaRepo = metaRepo;
         this.localLvfsRootDir = localLvfsRootDir;
         this.localLvfsTmpDir = localLvfsTmpDir;
+        int readAheadThreads = conf.getInt(BLOCK_READ_AHEAD_THREADS_KEY, BLOCK_READ_AHEAD_THREADS_DEFAULT);
+        int readAheadDepth = conf.getInt(BLOCK_READ_AHEAD_DEPTH_KEY, BLOCK_READ_AHEAD_DEPTH_DEFAULT);
+        this.blockReadAhead = (readAheadThreads > 0 && readAheadDepth > 0) ? new LocalBlockReadAhead(readAheadThreads, readAheadDepth) : null;
+        long blockCacheBytes = conf.getLong(BLOCK_CACHE_BYTES_KEY, BLOCK_CACHE_BYTES_DEFAULT);
+        this.blockCache = blockCacheBytes > 0 ? new LocalBlockCache(blockCacheBytes) : null;
+        int writeBehindThreads = conf.getInt(WRITE_BEHIND_THREADS_KEY, WRITE_BEHIND_THREADS_DEFAULT);
+        int writeBehindDepth = conf.getInt(WRITE_BEHIND_DEPTH_KEY, WRITE_BEHIND_DEPTH_DEFAULT);
+        int writeBehindBufferBytes = conf.getInt(WRITE_BEHIND_BUFFER_BYTES_KEY, WRITE_BEHIND_BUFFER_BYTES_DEFAULT);
+        this.writeBehind = (writeBehindThreads > 0 && writeBehindDepth > 0) ? new LocalWriteBehind(writeBehindThreads, writeBehindDepth, writeBehindBufferBytes) : null;
+        this.scanThreads = Math.max(1, conf.getInt(SCAN_THREADS_KEY, SCAN_THREADS_DEFAULT));
+        this.scanSplitTuples = conf.getInt(SCAN_SPLIT_TUPLES_KEY, SCAN_SPLIT_TUPLES_DEFAULT);
+        this.aggregateMemoryBytes = conf.getLong(AGGREGATE_MEMORY_BYTES_KEY, AGGREGATE_MEMORY_BYTES_DEFAULT);
+        this.joinMemoryBytes = conf.getLong(JOIN_MEMORY_BYTES_KEY, JOIN_MEMORY_BYTES_DEFAULT);
+        // the task thread itself is one of the scanners, so the pool needs one less
+        this.scanExecutor = scanThreads > 1 ? Executors.newFixedThreadPool(scanThreads - 1, new ThreadFactory() {
+            private final AtomicInteger sequence = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lvfs-scan-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
     }
     
     /** ID of LVRackNode this engine is running on. */
@@ -28,4 +109,20 @@ public class DataEngineContext {
     public final File localLvfsRootDir;
     /** the directory in the local file system which contains all tentative files managed by LVFS. */
     public final File localLvfsTmpDir;
+    /** thread pool to read ahead blocks of block-compressed files, shared by all tasks. null if disabled. */
+    public final LocalBlockReadAhead blockReadAhead;
+    /** cache of decompressed blocks, shared by all tasks. null if disabled. */
+    public final LocalBlockCache blockCache;
+    /** thread pool to write out column files in background, shared by all tasks. null if disabled. */
+    public final LocalWriteBehind writeBehind;
+    /** maximum number of threads to scan partitions of one task, including the task thread. */
+    public final int scanThreads;
+    /** partitions with more tuples than this are split into tuple ranges in parallel scans. */
+    public final int scanSplitTuples;
+    /** memory budget of hash aggregations in one task, beyond which they spill to {@link #localLvfsTmpDir}. */
+    public final long aggregateMemoryBytes;
+    /** memory budget of hash joins in one task, beyond which they spill to {@link #localLvfsTmpDir}. */
+    public final long joinMemoryBytes;
+    /** thread pool to scan partitions in parallel, shared by all tasks. null if disabled. */
+    public final ExecutorService scanExecutor;
 }
@@ -8,12 +8,18 @@ import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.log4j.Logger;
 
+import edu.brown.lasvegas.LVColumn;
+import edu.brown.lasvegas.LVColumnFile;
+import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVTask;
 import edu.brown.lasvegas.TaskParameters;
 import edu.brown.lasvegas.TaskRunner;
 import edu.brown.lasvegas.TaskStatus;
+import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
 import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.qe.operator.ScanOperator;
+import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
 
 /**
  * Base class for tasks that will run on an LVFS data node.
@@ -89,7 +95,39 @@ public abstract class DataTaskRunner<ParamType extends TaskParameters> implement
             return true;
         }
     }
+
+    /**
+     * Runs the given scan over partitions with the threads in {@link DataEngineContext#scanExecutor}.
+     * Cancellation of this task is checked between partitions.
+     * @return the merged result of all threads
+     * @see ParallelPartitionScanner
+     */
+    protected final <R> R scanPartitionsInParallel (int partitionCount, ParallelPartitionScanner.PartitionScan<R> scan) throws IOException, TaskCanceledException {
+        ParallelPartitionScanner scanner = new ParallelPartitionScanner(context.scanExecutor, context.scanThreads, context.scanSplitTuples,
+            new ParallelPartitionScanner.CancelCheck() {
+                @Override
+                public boolean isCanceled() {
+                    return isTaskCanceled();
+                }
+            });
+        return scanner.execute(partitionCount, scan);
+    }
     
+    /**
+     * Returns a batch scan of the given columns of a partition in this node.
+     * The files are read memory-mapped with the block cache and read-ahead of this node.
+     */
+    protected final ScanOperator scanLocalPartition (LVReplicaPartition partition, LVColumn[] columns) throws IOException {
+        assert (partition.getNodeId().intValue() == context.nodeId);
+        ColumnFileBundle[] files = new ColumnFileBundle[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            LVColumnFile file = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), columns[i].getColumnId());
+            assert (file != null);
+            files[i] = new ColumnFileBundle(file);
+        }
+        return new ScanOperator(new ColumnFileTupleReader(files, 0, true, context.blockReadAhead, context.blockCache), ScanOperator.DEFAULT_BATCH_SIZE);
+    }
+
     /** saves the given result to a local temporary file. */
     protected LocalVirtualFile outputToLocalTmpFile (Writable result) throws IOException {
     	LocalVirtualFile tmpFolder = new LocalVirtualFile(context.localLvfsTmpDir);
@@ -1,7 +1,15 @@
 package edu.brown.lasvegas.lvfs.data;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnFileLayout;
 import edu.brown.lasvegas.LVColumn;
 import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVFracture;
@@ -10,8 +18,10 @@ import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVReplicaScheme;
 import edu.brown.lasvegas.LVTable;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
+import edu.brown.lasvegas.lvfs.ColumnSegment;
 import edu.brown.lasvegas.lvfs.LVFSFilePath;
 import edu.brown.lasvegas.lvfs.LVFSFileType;
+import edu.brown.lasvegas.lvfs.PaxColumnGroup;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
 
@@ -19,10 +29,14 @@ import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
  * Misc methods used from a few tasks and jobs in this package.
  */
 public class DataTaskUtil {
+    private static Logger LOG = Logger.getLogger(DataTaskUtil.class);
     /**
      * Registers the given temporary files as new LVColumnFile record in the metadata.
      * This method moves the columnar files to non-temporary folder.
      * Also it renames the files according to the rule defined in {@link LVFSFilePath}.
+     * If {@link DataEngineContext#COLUMN_SEGMENT_KEY} is set, the files are packed into a segment file instead.
+     * Columns in the same column group of the replica scheme ({@link LVReplicaScheme#getColumnGroup(int)})
+     * are packed into one PAX file ({@link PaxColumnGroup}) shared by their column files.
      */
     public static void registerTemporaryFilesAsColumnFiles (
                     DataEngineContext context,
@@ -36,36 +50,143 @@ public class DataTaskUtil {
         LVReplicaScheme scheme = context.metaRepo.getReplicaScheme(replica.getSchemeId());
         LVFracture fracture = context.metaRepo.getFracture(replica.getFractureId());
         LVTable table = context.metaRepo.getTable(fracture.getTableId());
+        boolean packSegment = context.conf.getBoolean(DataEngineContext.COLUMN_SEGMENT_KEY, DataEngineContext.COLUMN_SEGMENT_DEFAULT);
+        int paxTuplesPerBlock = context.conf.getInt(DataEngineContext.PAX_TUPLES_PER_BLOCK_KEY, DataEngineContext.PAX_TUPLES_PER_BLOCK_DEFAULT);
+        Map<Integer, List<Integer>> columnGroups = collectColumnGroups(scheme, columns, temporaryFiles);
+        for (List<Integer> group : columnGroups.values()) {
+            registerColumnGroup(context, table, fracture, scheme, partition, columns, temporaryFiles, group, paxTuplesPerBlock);
+        }
         for (int i = 0; i < columns.length; ++i) {
             assert (columns[i].getTableId() == table.getTableId());
             assert (temporaryFiles[i] != null);
             final int columnId = columns[i].getColumnId();
-            // if a record already exists, drop it.
-            LVColumnFile existingFile = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partitionId, columnId);
-            if (existingFile != null) {
-                context.metaRepo.dropColumnFile(existingFile.getColumnFileId());
+            Integer columnGroup = scheme.getColumnGroup(columnId);
+            if (columnGroup != null && columnGroups.containsKey(columnGroup) && columnGroups.get(columnGroup).contains(i)) {
+                continue; // already registered above
             }
             ColumnFileBundle tmpFile = temporaryFiles[i];
-
-            // first, create an LVColumnFile record for the file. At this point we have no idea what the ID is, so we can't construct the permanent path.
-            int columnFileId = context.metaRepo.createNewColumnFileIdOnlyReturn(partitionId, columnId,
-                "", // this value is bogus at this point
-                // but other values are final
-                (int) tmpFile.getDataFile().length(), tmpFile.getTupleCount(), tmpFile.getDataFileChecksum(),
-                tmpFile.getDictionaryBytesPerEntry(), tmpFile.getDistinctValues(), tmpFile.getRunCount(), tmpFile.getUncompressedSizeKB());
+            int columnFileId = createColumnFileRecord(context, partitionId, columnId, tmpFile);
             
             // then, construct the permanent path
             String pathWithoutExtension = new LVFSFilePath(
                 context.conf, table.getDatabaseId(), table.getTableId(), fracture.getFractureId(), scheme.getSchemeId(),
                 partition.getRange(), partitionId, columnId, columnFileId, null).getAbsolutePath();
-            // move the files
-            moveFile (tmpFile.getDataFile(), pathWithoutExtension, LVFSFileType.DATA_FILE);
-            moveFile (tmpFile.getDictionaryFile(), pathWithoutExtension, LVFSFileType.DICTIONARY_FILE);
-            moveFile (tmpFile.getPositionFile(), pathWithoutExtension, LVFSFileType.POSITION_FILE);
-            moveFile (tmpFile.getValueFile(), pathWithoutExtension, LVFSFileType.VALUE_FILE);
+            ColumnFileLayout layout;
+            if (tmpFile.getSegmentFile() != null) {
+                moveFile (tmpFile.getSegmentFile(), pathWithoutExtension, LVFSFileType.SEGMENT_FILE);
+                layout = ColumnFileLayout.SEGMENT;
+            } else if (packSegment) {
+                // the data file becomes the segment file. only the small index files are copied into it
+                ColumnSegment.packInPlace(tmpFile, new LocalVirtualFile(LVFSFileType.SEGMENT_FILE.appendExtension(pathWithoutExtension)));
+                layout = ColumnFileLayout.SEGMENT;
+            } else {
+                moveFiles (tmpFile, pathWithoutExtension);
+                layout = ColumnFileLayout.SEPARATE;
+            }
             // finally update the LVColumnFile record
-            context.metaRepo.updateColumnFilePathNoReturn(columnFileId, pathWithoutExtension);
+            context.metaRepo.updateColumnFilePathNoReturn(columnFileId, pathWithoutExtension, layout);
+        }
+    }
+
+    /**
+     * Drops the existing record of the column file if any, and then creates an LVColumnFile record for the file.
+     * At this point we have no idea what the ID is, so we can't construct the permanent path.
+     */
+    private static int createColumnFileRecord (DataEngineContext context, int partitionId, int columnId, ColumnFileBundle tmpFile) throws IOException {
+        // if a record already exists, drop it.
+        LVColumnFile existingFile = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partitionId, columnId);
+        if (existingFile != null) {
+            context.metaRepo.dropColumnFile(existingFile.getColumnFileId());
+            // the file is being replaced. its blocks must not be served any more
+            if (context.blockCache != null) {
+                context.blockCache.invalidate(existingFile.getColumnFileId());
+            }
+        }
+        return context.metaRepo.createNewColumnFileIdOnlyReturn(partitionId, columnId,
+            "", // this value is bogus at this point
+            // but other values are final
+            tmpFile.getDataFileSize(), tmpFile.getTupleCount(), tmpFile.getDataFileChecksum(),
+            tmpFile.getDictionaryBytesPerEntry(), tmpFile.getDistinctValues(), tmpFile.getRunCount(), tmpFile.getUncompressedSizeKB(),
+            tmpFile.hasBloomFilter() ? (int) tmpFile.getBloomFilterFile().length() : 0);
+    }
+
+    /**
+     * Returns the column groups that can be stored in PAX files, which must have at least two columns.
+     * Columns whose compression type isn't supported in PAX files are stored in their own files.
+     * @return column indexes in each column group (key is the ID of the column group)
+     */
+    private static Map<Integer, List<Integer>> collectColumnGroups (LVReplicaScheme scheme, LVColumn[] columns, ColumnFileBundle[] temporaryFiles) {
+        Map<Integer, List<Integer>> groups = new TreeMap<Integer, List<Integer>>();
+        for (int i = 0; i < columns.length; ++i) {
+            Integer columnGroup = scheme.getColumnGroup(columns[i].getColumnId());
+            if (columnGroup == null) {
+                continue;
+            }
+            ColumnFileBundle tmpFile = temporaryFiles[i];
+            if (tmpFile.getSegmentFile() != null || tmpFile.getTupleCount() == 0
+                    || !PaxColumnGroup.isSupported(tmpFile.getCompressionType())) {
+                LOG.warn("column " + columns[i] + " can't be stored in the PAX file of column group " + columnGroup + ". stored in its own files: " + tmpFile);
+                continue;
+            }
+            List<Integer> group = groups.get(columnGroup);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(columnGroup, group);
+            }
+            group.add(i);
+        }
+        for (Iterator<List<Integer>> it = groups.values().iterator(); it.hasNext();) {
+            if (it.next().size() < 2) {
+                it.remove();
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Packs the temporary files of the column group into one PAX file and registers each column in it.
+     * The PAX file is named after the first column in the group, and all column files in the group point to it.
+     */
+    private static void registerColumnGroup (DataEngineContext context, LVTable table, LVFracture fracture, LVReplicaScheme scheme,
+                    LVReplicaPartition partition, LVColumn[] columns, ColumnFileBundle[] temporaryFiles,
+                    List<Integer> group, int tuplesPerBlock) throws IOException {
+        final int partitionId = partition.getPartitionId();
+        int[] columnFileIds = new int[group.size()];
+        int[] columnIds = new int[group.size()];
+        ColumnFileBundle[] tmpFiles = new ColumnFileBundle[group.size()];
+        for (int i = 0; i < group.size(); ++i) {
+            LVColumn column = columns[group.get(i)];
+            assert (column.getTableId() == table.getTableId());
+            columnIds[i] = column.getColumnId();
+            tmpFiles[i] = temporaryFiles[group.get(i)];
         }
+        // first pack them into a temporary PAX file beside the temporary files so that
+        // the records have the checksums and sizes of the packed columns
+        LocalVirtualFile tmpFolder = (LocalVirtualFile) tmpFiles[0].getDataFile().getParentFile();
+        VirtualFile tmpPaxFile = tmpFolder.getChildFile(LVFSFileType.PAX_FILE.appendExtension(tmpFiles[0].getDataFile().getName() + "_grp"));
+        ColumnFileBundle[] packed = PaxColumnGroup.pack(tmpFiles, columnIds, tmpPaxFile, tuplesPerBlock);
+        for (int i = 0; i < group.size(); ++i) {
+            tmpFiles[i].deleteFiles();
+            columnFileIds[i] = createColumnFileRecord(context, partitionId, columnIds[i], packed[i]);
+        }
+        // then move the PAX file and the index files of all columns to the permanent path at once
+        String pathWithoutExtension = new LVFSFilePath(
+            context.conf, table.getDatabaseId(), table.getTableId(), fracture.getFractureId(), scheme.getSchemeId(),
+            partition.getRange(), partitionId, columnIds[0], columnFileIds[0], null).getAbsolutePath();
+        LocalVirtualFile permanentFile = new LocalVirtualFile(pathWithoutExtension);
+        ColumnFileBundle.moveColumnGroup(packed, (LocalVirtualFile) permanentFile.getParentFile(), permanentFile.getName());
+        for (int i = 0; i < group.size(); ++i) {
+            context.metaRepo.updateColumnFilePathNoReturn(columnFileIds[i], pathWithoutExtension, ColumnFileLayout.PAX);
+        }
+    }
+
+    private static void moveFiles (ColumnFileBundle tmpFile, String pathWithoutExtension) throws IOException {
+        moveFile (tmpFile.getDataFile(), pathWithoutExtension, LVFSFileType.DATA_FILE);
+        moveFile (tmpFile.getDictionaryFile(), pathWithoutExtension, LVFSFileType.DICTIONARY_FILE);
+        moveFile (tmpFile.getPositionFile(), pathWithoutExtension, LVFSFileType.POSITION_FILE);
+        moveFile (tmpFile.getValueFile(), pathWithoutExtension, LVFSFileType.VALUE_FILE);
+        moveFile (tmpFile.getZoneMapFile(), pathWithoutExtension, LVFSFileType.ZONE_MAP_FILE);
+        moveFile (tmpFile.getBloomFilterFile(), pathWithoutExtension, LVFSFileType.BLOOM_FILTER_FILE);
     }
     
     private static void moveFile (VirtualFile tmpFile, String pathWithoutExtension, LVFSFileType type) throws IOException {
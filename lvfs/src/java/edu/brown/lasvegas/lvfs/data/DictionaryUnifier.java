@@ -0,0 +1,270 @@
+package edu.brown.lasvegas.lvfs.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.ColumnFileBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.LVFSFileType;
+import edu.brown.lasvegas.lvfs.OrderedDictionary;
+import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.data.task.ShareDictionariesTaskRunner;
+import edu.brown.lasvegas.lvfs.local.LocalDictFile;
+import edu.brown.lasvegas.lvfs.local.LocalFixLenWriter;
+import edu.brown.lasvegas.lvfs.local.LocalValFile;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.util.VirtualFileUtil;
+
+/**
+ * Core implementation of shared dictionaries ({@link ShareDictionariesTaskRunner}).
+ * Separated for better modularization and thus ease of testing.
+ *
+ * <p>Each partition of a dictionary-compressed column is written with its own
+ * order-preserving dictionary, so compressed values of two partitions can't be compared
+ * and merging partitions has to convert all compressed values.
+ * This class merges the dictionaries of all partitions into one shared order-preserving dictionary
+ * and re-codes each partition with it. Afterwards, compressed values mean the same in all
+ * the partitions, and {@link PartitionMergerForSameScheme} simply copies them.</p>
+ *
+ * <p>The merge is deterministic. Every data node merges the same dictionaries in the same
+ * order and gets the identical shared dictionary without exchanging it.
+ * To extend the shared dictionary of a previous fracture, pass its dictionary as one of the inputs.
+ * The new shared dictionary is then a superset of it, and the values already compressed
+ * with the previous one are re-coded when the fractures are merged.</p>
+ */
+public final class DictionaryUnifier {
+    private static Logger LOG = Logger.getLogger(DictionaryUnifier.class);
+
+    /** interval of tuples to collect in the value index. same as {@link PartitionRewriter}. */
+    private static final int VALUE_INDEX_INTERVAL = 128;
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    /** traits for the column type BEFORE compression. */
+    @SuppressWarnings("rawtypes")
+    private final ValueTraits originalTraits;
+    /** the dictionaries to be unified. */
+    private final OrderedDictionary<?, ?>[] baseDicts;
+    /** [dictionary][index in old dictionary] : index in shared dictionary. */
+    private final int[][] conversions;
+    /** the shared dictionary. */
+    @SuppressWarnings("rawtypes")
+    private final LocalDictFile sharedDict;
+
+    /**
+     * Merges the given dictionaries into one shared dictionary.
+     * @param type column type BEFORE compression
+     * @param dictionaries dictionaries to be unified
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public DictionaryUnifier (ColumnType type, OrderedDictionary<?, ?>[] dictionaries) throws IOException {
+        this.originalTraits = ValueTraitsFactory.getInstance(type);
+        this.baseDicts = dictionaries;
+        long startMillisec = System.currentTimeMillis();
+        Object[] entries = originalTraits.create2DArray(dictionaries.length);
+        for (int i = 0; i < dictionaries.length; ++i) {
+            entries[i] = dictionaries[i].getDictionary();
+        }
+        this.conversions = new int[dictionaries.length][];
+        Object merged = originalTraits.mergeDictionary(entries, conversions);
+        this.sharedDict = new LocalDictFile(merged, originalTraits);
+        long endMillisec = System.currentTimeMillis();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("unified " + dictionaries.length + " dictionaries into a dictionary of "
+                + sharedDict.getDictionarySize() + " entries in " + (endMillisec - startMillisec) + "ms");
+        }
+    }
+
+    /** Returns the shared dictionary. */
+    public OrderedDictionary<?, ?> getSharedDictionary () {
+        return sharedDict;
+    }
+
+    /**
+     * Returns the mapping from indexes in the given dictionary to indexes in the shared dictionary.
+     * @param index index of the dictionary in the constructor parameter
+     */
+    public int[] getConversion (int index) {
+        return conversions[index];
+    }
+
+    /**
+     * Returns whether the given dictionary is already identical to the shared dictionary,
+     * in which case the partition doesn't have to be re-coded.
+     * @param index index of the dictionary in the constructor parameter
+     */
+    public boolean isIdentical (int index) {
+        // the shared dictionary is a superset, so the same size means the same entries
+        return baseDicts[index].getDictionarySize() == sharedDict.getDictionarySize();
+    }
+
+    /**
+     * Writes a new column file that has the same values as the given column file but
+     * is compressed with the shared dictionary. The given column file is not modified.
+     * @param index index of the column file's dictionary in the constructor parameter
+     * @param file the dictionary-compressed column file to re-code
+     * @param outputFolder the folder to output the new column file
+     * @param fileName filename seed of the new column file (WITHOUT file extension)
+     * @return the new column file
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ColumnFileBundle recode (int index, ColumnFileBundle file, VirtualFile outputFolder, String fileName) throws IOException {
+        if (file.getCompressionType() != CompressionType.DICTIONARY) {
+            throw new IOException ("not a dictionary-compressed file: " + file);
+        }
+        long startMillisec = System.currentTimeMillis();
+        ColumnFileBundle newFile = new ColumnFileBundle();
+        newFile.setColumnType(file.getColumnType());
+        newFile.setCompressionType(CompressionType.DICTIONARY);
+        newFile.setTupleCount(file.getTupleCount());
+        newFile.setSorted(file.isSorted());
+        // this is the number of distinct values in the partition, not the size of the dictionary
+        newFile.setDistinctValues(file.getDistinctValues());
+        newFile.setUncompressedSizeKB(file.getUncompressedSizeKB());
+        newFile.setDictionaryBytesPerEntry(sharedDict.getBytesPerEntry());
+        newFile.setDataFile(outputFolder.getChildFile(LVFSFileType.DATA_FILE.appendExtension(fileName)));
+        newFile.setDictionaryFile(outputFolder.getChildFile(LVFSFileType.DICTIONARY_FILE.appendExtension(fileName)));
+        sharedDict.writeToFile(newFile.getDictionaryFile());
+        if (file.getZoneMapFile() != null && file.getZoneMapFile().exists()) {
+            // zone maps and Bloom filters have original values, so they are still valid
+            newFile.setZoneMapFile(outputFolder.getChildFile(LVFSFileType.ZONE_MAP_FILE.appendExtension(fileName)));
+            VirtualFileUtil.copyFile(file.getZoneMapFile(), newFile.getZoneMapFile());
+        }
+        if (file.hasBloomFilter()) {
+            newFile.setBloomFilterFile(outputFolder.getChildFile(LVFSFileType.BLOOM_FILTER_FILE.appendExtension(fileName)));
+            VirtualFileUtil.copyFile(file.getBloomFilterFile(), newFile.getBloomFilterFile());
+        }
+        List<Integer> valueIndexValues = null;
+        List<Integer> valueIndexPositions = null;
+        if (file.getValueFile() != null && file.getValueFile().exists()) {
+            // the value index has compressed values. same as PartitionRewriter
+            newFile.setValueFile(outputFolder.getChildFile(LVFSFileType.VALUE_FILE.appendExtension(fileName)));
+            valueIndexValues = new ArrayList<Integer>();
+            valueIndexPositions = new ArrayList<Integer>();
+        }
+
+        int[] conversion = conversions[index];
+        OrderedDictionary<?, ?> baseDict = baseDicts[index];
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            TypedReader compressedReader = reader.getCompressedDataReader();
+            ValueTraits compressedTraits = reader.getCompressedDataTraits();
+            Object inBuffer = compressedTraits.createArray(BUFFER_SIZE);
+            int[] newValues = new int[BUFFER_SIZE];
+            LocalFixLenWriter writer = createWriter(newFile.getDataFile(), sharedDict.getBytesPerEntry());
+            try {
+                writer.setCRC32Enabled(true);
+                Object outBuffer = writer.getValueTraits().createArray(BUFFER_SIZE);
+                int tuple = 0;
+                while (true) {
+                    int read = compressedReader.readValues(inBuffer, 0, BUFFER_SIZE);
+                    if (read <= 0) {
+                        break;
+                    }
+                    readCompressedValues(inBuffer, newValues, read);
+                    for (int i = 0; i < read; ++i) {
+                        newValues[i] = sharedDict.convertDictionaryIndexToCompressedValue(
+                            conversion[baseDict.convertCompressedValueToDictionaryIndex(newValues[i])]);
+                    }
+                    writeCompressedValues(newValues, outBuffer, read);
+                    writer.writeValues(outBuffer, 0, read);
+                    if (valueIndexValues != null) {
+                        for (int i = (VALUE_INDEX_INTERVAL - tuple % VALUE_INDEX_INTERVAL) % VALUE_INDEX_INTERVAL; i < read; i += VALUE_INDEX_INTERVAL) {
+                            valueIndexValues.add(newValues[i]);
+                            valueIndexPositions.add(tuple + i);
+                        }
+                    }
+                    tuple += read;
+                }
+                if (tuple != file.getTupleCount()) {
+                    throw new IOException ("the number of tuples read doesn't match: " + tuple + ". " + file);
+                }
+                newFile.setDataFileChecksum(writer.writeFileFooter());
+                writer.flush();
+            } finally {
+                writer.close();
+            }
+            if (valueIndexValues != null) {
+                List<Object> values = new ArrayList<Object>();
+                for (Integer value : valueIndexValues) {
+                    values.add(toCompressedObject(value, sharedDict.getBytesPerEntry()));
+                }
+                new LocalValFile(values, valueIndexPositions, createWriterTraits(sharedDict.getBytesPerEntry())).writeToFile(newFile.getValueFile());
+            }
+        } finally {
+            reader.close();
+        }
+        long endMillisec = System.currentTimeMillis();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("re-coded " + file + " to the shared dictionary in " + (endMillisec - startMillisec) + "ms");
+        }
+        return newFile;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static LocalFixLenWriter createWriter (VirtualFile file, byte bytesPerEntry) throws IOException {
+        switch (bytesPerEntry) {
+        case 1: return LocalFixLenWriter.getInstanceTinyint(file);
+        case 2: return LocalFixLenWriter.getInstanceSmallint(file);
+        default:
+            assert (bytesPerEntry == 4);
+            return LocalFixLenWriter.getInstanceInteger(file);
+        }
+    }
+    @SuppressWarnings("rawtypes")
+    private static ValueTraits createWriterTraits (byte bytesPerEntry) {
+        switch (bytesPerEntry) {
+        case 1: return ValueTraitsFactory.TINYINT_TRAITS;
+        case 2: return ValueTraitsFactory.SMALLINT_TRAITS;
+        default:
+            assert (bytesPerEntry == 4);
+            return ValueTraitsFactory.INTEGER_TRAITS;
+        }
+    }
+    private static Object toCompressedObject (int value, byte bytesPerEntry) {
+        switch (bytesPerEntry) {
+        case 1: return (byte) value;
+        case 2: return (short) value;
+        default: return value;
+        }
+    }
+
+    /** widens 1/2/4-byte compressed values to int. */
+    private static void readCompressedValues (Object src, int[] dest, int len) {
+        if (src instanceof byte[]) {
+            byte[] array = (byte[]) src;
+            for (int i = 0; i < len; ++i) {
+                dest[i] = array[i];
+            }
+        } else if (src instanceof short[]) {
+            short[] array = (short[]) src;
+            for (int i = 0; i < len; ++i) {
+                dest[i] = array[i];
+            }
+        } else {
+            System.arraycopy((int[]) src, 0, dest, 0, len);
+        }
+    }
+    /** narrows compressed values to 1/2/4 bytes. */
+    private static void writeCompressedValues (int[] src, Object dest, int len) {
+        if (dest instanceof byte[]) {
+            byte[] array = (byte[]) dest;
+            for (int i = 0; i < len; ++i) {
+                array[i] = (byte) src[i];
+            }
+        } else if (dest instanceof short[]) {
+            short[] array = (short[]) dest;
+            for (int i = 0; i < len; ++i) {
+                array[i] = (short) src[i];
+            }
+        } else {
+            System.arraycopy(src, 0, (int[]) dest, 0, len);
+        }
+    }
+}
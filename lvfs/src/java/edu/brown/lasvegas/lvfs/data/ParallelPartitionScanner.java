@@ -0,0 +1,257 @@
+package edu.brown.lasvegas.lvfs.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.lvfs.TupleRange;
+
+/**
+ * Runs a scan over the partitions of a data task with multiple threads.
+ * <p>The partitions (or tuple ranges of large partitions, see {@link PartitionScan#getTupleCount(int)})
+ * are the units of work. Each worker thread takes the next unit until all units are done,
+ * accumulating into its own partial result, and the partial results are merged at the end.
+ * Hence the scan itself doesn't need any synchronization.</p>
+ * <p>The calling thread also works as one of the workers, so the scan makes progress
+ * even if all threads in the pool are busy with other tasks.</p>
+ * <p>The workers check cancellation of the task between units
+ * and stop as soon as one of them fails.</p>
+ * @see DataTaskRunner#scanPartitionsInParallel(int, PartitionScan)
+ */
+public final class ParallelPartitionScanner {
+    private static Logger LOG = Logger.getLogger(ParallelPartitionScanner.class);
+
+    /** minimal interval between checking cancellation, which might be an RPC to the metadata repository. */
+    private static final long CANCEL_CHECK_INTERVAL_MILLISECONDS = 1000L;
+
+    /**
+     * A scan to run by {@link ParallelPartitionScanner}.
+     * @param <R> type of the partial result each worker thread accumulates into.
+     */
+    public static abstract class PartitionScan<R> {
+        /** Creates an empty partial result for one worker thread. */
+        protected abstract R createPartialResult () throws IOException;
+
+        /**
+         * Processes the given partition (or a part of it) and accumulates into the partial result.
+         * Called from multiple threads at the same time for different partitions or ranges.
+         * @param partition index of the partition
+         * @param range tuples to process. null to process the whole partition.
+         * @param partialResult the partial result of the calling worker thread
+         */
+        protected abstract void scan (int partition, TupleRange range, R partialResult) throws IOException;
+
+        /** Merges the partial result of another worker thread into the first one. */
+        protected abstract void merge (R result, R other) throws IOException;
+
+        /**
+         * Returns the number of tuples in the given partition so that a large partition
+         * can be split into tuple ranges processed by multiple threads.
+         * @return -1 (default) if the partition must be processed as a whole
+         */
+        protected int getTupleCount (int partition) throws IOException {
+            return -1;
+        }
+    }
+
+    /** Tells whether the task has been canceled. */
+    public static interface CancelCheck {
+        /** @return whether the task has been requested to terminate */
+        boolean isCanceled ();
+    }
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int splitTuples;
+    private final CancelCheck cancelCheck;
+
+    /**
+     * @param executor thread pool to run the workers. null to run the scan only on the calling thread.
+     * @param parallelism maximum number of worker threads including the calling thread
+     * @param splitTuples partitions with more tuples than this are split into ranges of at most this number of tuples
+     * @param cancelCheck tells whether the task has been canceled. null if it can't be canceled.
+     */
+    public ParallelPartitionScanner (ExecutorService executor, int parallelism, int splitTuples, CancelCheck cancelCheck) {
+        if (splitTuples <= 0) {
+            throw new IllegalArgumentException ("invalid splitTuples:" + splitTuples);
+        }
+        this.executor = executor;
+        this.parallelism = executor == null ? 1 : Math.max(1, parallelism);
+        this.splitTuples = splitTuples;
+        this.cancelCheck = cancelCheck;
+    }
+
+    /** a unit of work. */
+    private static final class WorkUnit {
+        WorkUnit (int partition, TupleRange range) {
+            this.partition = partition;
+            this.range = range;
+        }
+        final int partition;
+        final TupleRange range;
+    }
+
+    /**
+     * Runs the scan over the given number of partitions.
+     * @return the merged result
+     * @throws TaskCanceledException if the task is canceled during the scan
+     */
+    public <R> R execute (int partitionCount, PartitionScan<R> scan) throws IOException, TaskCanceledException {
+        final ArrayList<WorkUnit> units = new ArrayList<WorkUnit>();
+        for (int partition = 0; partition < partitionCount; ++partition) {
+            int tupleCount = parallelism > 1 ? scan.getTupleCount(partition) : -1;
+            if (tupleCount <= splitTuples) {
+                units.add(new WorkUnit(partition, null));
+                continue;
+            }
+            for (int start = 0; start < tupleCount; start += splitTuples) {
+                units.add(new WorkUnit(partition, new TupleRange(start, Math.min(tupleCount, start + splitTuples))));
+            }
+        }
+        int workerCount = Math.min(parallelism, units.size());
+        LOG.info("scanning " + partitionCount + " partitions as " + units.size() + " units with " + workerCount + " threads");
+
+        Worker<R> self = new Worker<R>(units, scan);
+        ArrayList<Future<R>> helpers = new ArrayList<Future<R>>();
+        for (int i = 1; i < workerCount; ++i) {
+            try {
+                helpers.add(executor.submit(new Worker<R>(self, units, scan)));
+            } catch (RejectedExecutionException ex) {
+                LOG.warn("scan pool is not available. running with fewer threads");
+                break;
+            }
+        }
+
+        // the calling thread works too, and then waits for the helpers
+        Exception error = null;
+        R result = null;
+        try {
+            result = self.call();
+        } catch (Exception ex) {
+            error = ex;
+        }
+        ArrayList<R> partials = new ArrayList<R>();
+        for (Future<R> helper : helpers) {
+            try {
+                R partial = helper.get();
+                if (partial != null) {
+                    partials.add(partial);
+                }
+            } catch (ExecutionException ex) {
+                if (error == null && ex.getCause() instanceof Exception) {
+                    error = (Exception) ex.getCause();
+                } else if (error == null) {
+                    error = new IOException ("unexpected error in scan", ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                self.stopped = true;
+                if (error == null) {
+                    error = new IOException ("interrupted while waiting for scan threads", ex);
+                }
+            }
+        }
+        if (error instanceof TaskCanceledException) {
+            throw (TaskCanceledException) error;
+        } else if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw new IOException ("unexpected error in scan", error);
+        }
+        for (R partial : partials) {
+            if (result == null) {
+                result = partial;
+            } else {
+                scan.merge(result, partial);
+            }
+        }
+        if (result == null) {
+            // no partitions at all
+            result = scan.createPartialResult();
+        }
+        return result;
+    }
+
+    /** takes units one by one and accumulates into its own partial result. */
+    private final class Worker<R> implements Callable<R> {
+        /** the first worker, which holds the state shared by all workers. */
+        private final Worker<R> shared;
+        private final ArrayList<WorkUnit> units;
+        private final PartitionScan<R> scan;
+        // only used in the first worker
+        private final AtomicInteger nextUnit;
+        private volatile boolean stopped;
+        /** set once a check sees the cancellation so that every later check fails without waiting for the interval. */
+        private volatile boolean canceled;
+        private long lastCancelCheck;
+
+        Worker (ArrayList<WorkUnit> units, PartitionScan<R> scan) {
+            this.shared = this;
+            this.units = units;
+            this.scan = scan;
+            this.nextUnit = new AtomicInteger();
+        }
+        Worker (Worker<R> shared, ArrayList<WorkUnit> units, PartitionScan<R> scan) {
+            this.shared = shared;
+            this.units = units;
+            this.scan = scan;
+            this.nextUnit = null;
+        }
+
+        @Override
+        public R call() throws Exception {
+            R partialResult = null;
+            try {
+                while (!shared.stopped) {
+                    int index = shared.nextUnit.getAndIncrement();
+                    if (index >= units.size()) {
+                        break;
+                    }
+                    shared.checkCanceled();
+                    WorkUnit unit = units.get(index);
+                    if (partialResult == null) {
+                        partialResult = scan.createPartialResult();
+                    }
+                    // another worker might have failed or seen the cancellation meanwhile
+                    if (shared.canceled) {
+                        throw new TaskCanceledException();
+                    }
+                    if (shared.stopped) {
+                        break;
+                    }
+                    scan.scan(unit.partition, unit.range, partialResult);
+                }
+            } catch (Exception ex) {
+                shared.stopped = true; // let other workers quit
+                throw ex;
+            }
+            return partialResult;
+        }
+
+        /** called only on the first worker. */
+        private synchronized void checkCanceled () throws TaskCanceledException {
+            if (canceled) {
+                throw new TaskCanceledException();
+            }
+            if (cancelCheck == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastCancelCheck < CANCEL_CHECK_INTERVAL_MILLISECONDS) {
+                return;
+            }
+            lastCancelCheck = now;
+            if (cancelCheck.isCanceled()) {
+                canceled = true;
+                stopped = true;
+                throw new TaskCanceledException();
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.data.task.MergePartitionSameSchemeTaskRunner;
 import edu.brown.lasvegas.lvfs.local.LocalDictFile;
 import edu.brown.lasvegas.lvfs.local.LocalFixLenWriter;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
 import edu.brown.lasvegas.lvfs.local.LocalWriterFactory;
 import edu.brown.lasvegas.traits.BigintValueTraits;
 import edu.brown.lasvegas.traits.DoubleValueTraits;
@@ -68,6 +69,18 @@ public final class PartitionMergerForSameScheme {
 
     /** the sorting column. index in the array (0 to columnCount-1). null if no sorting. */
     private final Integer sortColumn;
+
+    /** thread pool to write out new files in background. null if synchronous. */
+    private LocalWriteBehind writeBehind;
+
+    /**
+     * Makes the new files written out in background threads of the given pool
+     * so that disk writes overlap with merging. Must be called before {@link #execute()}.
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
     
     /**
      * mapping from values in each base partition to values in new partition.
@@ -139,6 +152,14 @@ public final class PartitionMergerForSameScheme {
                 newFile.setSorted(true);
                 newFile.setValueFile(outputFolder.getChildFile(LVFSFileType.VALUE_FILE.appendExtension(filename)));
             }
+            // dictionary-compressed columns are merged as compressed values, so we can't collect the zone map of the original values
+            if (compressions[i] != CompressionType.DICTIONARY && ColumnFileBundle.isZoneMapSupported(compressions[i])) {
+                newFile.setZoneMapFile(outputFolder.getChildFile(LVFSFileType.ZONE_MAP_FILE.appendExtension(filename)));
+            }
+            if (ColumnFileBundle.isBloomFilterSupported(compressions[i])) {
+                // reset later in prepareBloomFilters() unless any base file has it
+                newFile.setBloomFilterFile(outputFolder.getChildFile(LVFSFileType.BLOOM_FILTER_FILE.appendExtension(filename)));
+            }
             newFile.setTupleCount((int) tupleCount);
             newFiles[i] = newFile;
         }
@@ -152,6 +173,7 @@ public final class PartitionMergerForSameScheme {
     public ColumnFileBundle[] execute () throws IOException {
         LOG.info("started");
         prepareDictionary ();
+        prepareBloomFilters ();
         
         if (sortColumn == null) {
             // easy. just append one by one
@@ -166,6 +188,24 @@ public final class PartitionMergerForSameScheme {
         return newFiles;
     }
     
+    /**
+     * Bloom filters are only for chosen columns. A merged file gets one if any of the base files had one.
+     */
+    private void prepareBloomFilters () throws IOException {
+        for (int col = 0; col < columnCount; ++col) {
+            if (newFiles[col].getBloomFilterFile() == null) {
+                continue;
+            }
+            boolean found = false;
+            for (int i = 0; i < basePartitionCount && !found; ++i) {
+                found = baseFiles[i][col].hasBloomFilter();
+            }
+            if (!found) {
+                newFiles[col].setBloomFilterFile(null);
+            }
+        }
+    }
+
     /**
      * Creates new dictionary files and also prepares the mapping from old values to new values. 
      * @throws IOException
@@ -193,6 +233,15 @@ public final class PartitionMergerForSameScheme {
             // merge the dictionary. this also produces the conversion map
             @SuppressWarnings("unchecked")
             Object mergedDict = originalTraits[i].mergeDictionary(baseDictsEntries, dictionaryConversion[i]);
+            @SuppressWarnings("unchecked")
+            int mergedSize = originalTraits[i].length(mergedDict);
+            for (int j = 0; j < basePartitionCount; ++j) {
+                if (baseDicts[j].getDictionarySize() == mergedSize) {
+                    // the base partition already uses the merged dictionary (e.g., a shared dictionary).
+                    // the conversion is identity, so compressed values are copied as they are.
+                    dictionaryConversion[i][j] = null;
+                }
+            }
 
             LOG.info("merged. writing...");
             @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -235,6 +284,7 @@ public final class PartitionMergerForSameScheme {
         } else {
             dataWriter = LocalWriterFactory.getInstance(newFile, compressions[col], traits);
         }
+        LocalWriterFactory.setWriteBehind(dataWriter, writeBehind);
         try {
             // simply copy from each file.
             for (int i = 0; i < basePartitionCount; ++i) {
@@ -243,7 +293,7 @@ public final class PartitionMergerForSameScheme {
                 ValueTraits baseTraits = baseFilesReader[i][col].getCompressedDataTraits();
 
                 try {
-                    if (compressions[i] == CompressionType.DICTIONARY) {
+                    if (compressions[col] == CompressionType.DICTIONARY) {
                         copyBaseDataNoSortingDictionaryCompressed(col, i, dataWriter, baseDataReader, traits, baseTraits);
                     } else {
                         copyBaseDataNoSortingNonDictionary(col, i, dataWriter, baseDataReader, traits);
@@ -288,7 +338,7 @@ public final class PartitionMergerForSameScheme {
                     ValueTraits traits, ValueTraits baseTraits) throws IOException {
         Object outCacheArray = traits.createArray(cacheArrraySize);
         Object inCacheArray;
-        if (newDictionaryBytesPerEntry[base] != baseFiles[base][col].getDictionaryBytesPerEntry()) {
+        if (newDictionaryBytesPerEntry[col] != baseFiles[base][col].getDictionaryBytesPerEntry()) {
             // the base dictionary and the new dictionary has different size-per-entry. a bit tricky
             inCacheArray = baseTraits.createArray(cacheArrraySize);
         } else {
@@ -415,6 +465,7 @@ public final class PartitionMergerForSameScheme {
                 } else {
                     dataWriters[col] = LocalWriterFactory.getInstance(newFiles[col], compressions[col], compressedTraits[col], 1 << 20);
                 }
+                LocalWriterFactory.setWriteBehind(dataWriters[col], writeBehind);
 
                 for (int base = 0; base < basePartitionCount; ++base) {
                     baseDataReaders[col][base] = baseFilesReader[base][col].getCompressedDataReader();
@@ -731,10 +782,16 @@ public final class PartitionMergerForSameScheme {
      * Converts dictionary-compressed values in the base partition to
      * compressed values in the new partition with the new dictionary.
      * This method does lots of casting and type-specific things to avoid creating Objects.
+     * @param conversion the old->new dictionary mapping. null if it's identity.
      */
     private static void convertDictionaryCompressedData (int[] conversion,
                     Object outCacheArray, Object inCacheArray,
                     int offset, int len) throws IOException {
+        if (conversion == null) {
+            // same dictionary, hence same integer size
+            assert (outCacheArray == inCacheArray);
+            return;
+        }
         if (outCacheArray == inCacheArray) {
             // convert the values using the old->new dictionary mapping
             if (outCacheArray instanceof byte[]) {
@@ -809,6 +866,12 @@ public final class PartitionMergerForSameScheme {
         if (newFile.getPositionFile() != null) {
             dataWriter.writePositionFile(newFile.getPositionFile());
         }
+        if (newFile.getZoneMapFile() != null) {
+            dataWriter.writeZoneMapFile(newFile.getZoneMapFile());
+        }
+        if (newFile.getBloomFilterFile() != null) {
+            dataWriter.writeBloomFilterFile(newFile.getBloomFilterFile());
+        }
         dataWriter.flush();
         // collect statistics
         assert (!(dataWriter instanceof TypedDictWriter));
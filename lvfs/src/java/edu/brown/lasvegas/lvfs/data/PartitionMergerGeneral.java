@@ -18,6 +18,7 @@ import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.TypedWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.local.LocalValFile;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
 import edu.brown.lasvegas.lvfs.local.LocalWriterFactory;
 import edu.brown.lasvegas.traits.ValueTraits;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
@@ -50,6 +51,18 @@ public final class PartitionMergerGeneral {
 
     /** the sorting column. index in the array (0 to columnCount-1). null if no sorting. */
     private final Integer sortColumn;
+
+    /** thread pool to write out new files in background. null if synchronous. */
+    private LocalWriteBehind writeBehind;
+
+    /**
+     * Makes the new files written out in background threads of the given pool
+     * so that disk writes overlap with merging. Must be called before {@link #executeOnDisk(VirtualFile, String[], CompressionType[])}.
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
     
 
     /**
@@ -185,6 +198,13 @@ public final class PartitionMergerGeneral {
                 newFile.setSorted(true);
                 newFile.setValueFile(outputFolder.getChildFile(LVFSFileType.VALUE_FILE.appendExtension(filename)));
             }
+            if (ColumnFileBundle.isZoneMapSupported(compressions[i])) {
+                newFile.setZoneMapFile(outputFolder.getChildFile(LVFSFileType.ZONE_MAP_FILE.appendExtension(filename)));
+            }
+            if (ColumnFileBundle.isBloomFilterSupported(compressions[i]) && anyBaseFileHasBloomFilter(i)) {
+                // Bloom filters are only for chosen columns. a merged file gets one if any of the base files had one
+                newFile.setBloomFilterFile(outputFolder.getChildFile(LVFSFileType.BLOOM_FILTER_FILE.appendExtension(filename)));
+            }
             newFile.setTupleCount((int) tupleCount);
             newFiles[i] = newFile;
         }
@@ -201,6 +221,7 @@ public final class PartitionMergerGeneral {
     @SuppressWarnings({"unchecked", "rawtypes"})
     private void writeMergedData (int col, Object mergedData, ColumnFileBundle newFile, CompressionType compression) throws IOException {
         TypedWriter dataWriter = LocalWriterFactory.getInstance(newFile, compression, traits[col]);
+        LocalWriterFactory.setWriteBehind(dataWriter, writeBehind);
         try {
             long start = System.currentTimeMillis();
             dataWriter.writeValues(mergedData, 0, tupleCount);
@@ -233,6 +254,15 @@ public final class PartitionMergerGeneral {
         }
     }
 
+    private boolean anyBaseFileHasBloomFilter (int col) throws IOException {
+        for (int i = 0; i < basePartitionCount; ++i) {
+            if (baseFiles[i][col].hasBloomFilter()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @SuppressWarnings({ "rawtypes" })
     private static void finishDataWriter (ColumnFileBundle newFile, TypedWriter dataWriter) throws IOException {
         long crc32Value = dataWriter.writeFileFooter();
@@ -240,6 +270,12 @@ public final class PartitionMergerGeneral {
         if (newFile.getPositionFile() != null) {
             dataWriter.writePositionFile(newFile.getPositionFile());
         }
+        if (newFile.getZoneMapFile() != null) {
+            dataWriter.writeZoneMapFile(newFile.getZoneMapFile());
+        }
+        if (newFile.getBloomFilterFile() != null) {
+            dataWriter.writeBloomFilterFile(newFile.getBloomFilterFile());
+        }
         dataWriter.flush();
         // collect statistics
         if (dataWriter instanceof TypedDictWriter) {
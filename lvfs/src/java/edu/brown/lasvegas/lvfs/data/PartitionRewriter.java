@@ -20,6 +20,7 @@ import edu.brown.lasvegas.lvfs.TypedWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.local.LocalFixLenWriter;
 import edu.brown.lasvegas.lvfs.local.LocalValFile;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
 import edu.brown.lasvegas.lvfs.local.LocalWriterFactory;
 import edu.brown.lasvegas.traits.FixLenValueTraits;
 import edu.brown.lasvegas.traits.ValueTraits;
@@ -70,6 +71,31 @@ public final class PartitionRewriter {
     /** the sorting column. index in the array (0 to columnCount-1). null if no sorting. */
     private final Integer newSortColumn;
 
+    /** thread pool to write out new files in background. null if synchronous. */
+    private LocalWriteBehind writeBehind;
+    /** whether to build a Bloom filter for each column. null to keep the choice made for the old files. */
+    private boolean[] bloomFilterColumns;
+
+    /**
+     * Specifies the columns to build Bloom filters for, for example when the old files
+     * belong to another replica scheme. Must be called before {@link #execute()}.
+     * Columns whose new compression type doesn't support Bloom filters are ignored.
+     * @param bloomFilterColumns whether to build a Bloom filter for each column. null to keep the choice made for the old files.
+     */
+    public void setBloomFilterColumns (boolean[] bloomFilterColumns) {
+        assert (bloomFilterColumns == null || bloomFilterColumns.length == columnCount);
+        this.bloomFilterColumns = bloomFilterColumns;
+    }
+
+    /**
+     * Makes the new files written out in background threads of the given pool
+     * so that disk writes overlap with sorting and encoding. Must be called before {@link #execute()}.
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
     /**
      * Instantiates the re-writer object.
      * @param outputFolder the folder to output newly created files
@@ -126,6 +152,13 @@ public final class PartitionRewriter {
                 newFile.setSorted(true);
                 newFile.setValueFile(outputFolder.getChildFile(LVFSFileType.VALUE_FILE.appendExtension(filename)));
             }
+            if (ColumnFileBundle.isZoneMapSupported(newCompressions[i])) {
+                newFile.setZoneMapFile(outputFolder.getChildFile(LVFSFileType.ZONE_MAP_FILE.appendExtension(filename)));
+            }
+            if (ColumnFileBundle.isBloomFilterSupported(newCompressions[i])) {
+                // reset later in execute() unless the old file has it
+                newFile.setBloomFilterFile(outputFolder.getChildFile(LVFSFileType.BLOOM_FILTER_FILE.appendExtension(filename)));
+            }
             newFile.setTupleCount(tupleCount);
             newFiles[i] = newFile;
         }
@@ -138,6 +171,13 @@ public final class PartitionRewriter {
      */
     public ColumnFileBundle[] execute () throws IOException {
         LOG.info("started");
+        for (int i = 0; i < columnCount; ++i) {
+            // Bloom filters are only for chosen columns. unless specified, keep the choice made for the old file
+            boolean bloomFilter = bloomFilterColumns != null ? bloomFilterColumns[i] : oldFiles[i].hasBloomFilter();
+            if (newFiles[i].getBloomFilterFile() != null && !bloomFilter) {
+                newFiles[i].setBloomFilterFile(null);
+            }
+        }
         if (newSortColumn == null || newSortColumn.equals(oldSortColumn)) {
             LOG.info("no need to re-sort");
             // no sorting, or the same sorting.
@@ -193,6 +233,14 @@ public final class PartitionRewriter {
         if (oldFile.getValueFile() != null) {
             VirtualFileUtil.copyFile(oldFile.getValueFile(), newFile.getValueFile());
         }
+        if (oldFile.getZoneMapFile() != null && oldFile.getZoneMapFile().exists()) {
+            VirtualFileUtil.copyFile(oldFile.getZoneMapFile(), newFile.getZoneMapFile());
+        } else {
+            newFile.setZoneMapFile(null);
+        }
+        if (newFile.getBloomFilterFile() != null) {
+            VirtualFileUtil.copyFile(oldFile.getBloomFilterFile(), newFile.getBloomFilterFile());
+        }
         // also copy all statistics
         newFile.setDataFileChecksum(oldFile.getDataFileChecksum());
         newFile.setDictionaryBytesPerEntry(oldFile.getDictionaryBytesPerEntry());
@@ -354,9 +402,12 @@ public final class PartitionRewriter {
         TypedWriter dataWriter;
         if (willInheritDictionary(col)) {
             dataWriter = new LocalFixLenWriter(newFile.getDataFile(), (FixLenValueTraits<?, ?>) traits);
+            // the data here are compressed values, so we can't collect the zone map of the original values
+            newFile.setZoneMapFile(null);
         } else {
             dataWriter = LocalWriterFactory.getInstance(newFile, newCompressions[col], traits);
         }
+        LocalWriterFactory.setWriteBehind(dataWriter, writeBehind);
         try {
             if (LOG.isInfoEnabled()) {
                 LOG.info("writing " + traits.length(data) + " values...");
@@ -367,6 +418,12 @@ public final class PartitionRewriter {
             if (newFile.getPositionFile() != null) {
                 dataWriter.writePositionFile(newFile.getPositionFile());
             }
+            if (newFile.getZoneMapFile() != null) {
+                dataWriter.writeZoneMapFile(newFile.getZoneMapFile());
+            }
+            if (newFile.getBloomFilterFile() != null) {
+                dataWriter.writeBloomFilterFile(newFile.getBloomFilterFile());
+            }
             dataWriter.flush();
             // collect statistics
             if (dataWriter instanceof TypedDictWriter) {
@@ -10,6 +10,7 @@ import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.ColumnFileWriterBundle;
 import edu.brown.lasvegas.lvfs.TypedWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
 import edu.brown.lasvegas.traits.ValueTraits;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
 import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
@@ -90,6 +91,8 @@ public class RecursiveRepartitioner {
     private final long writeBufferSizeTotal;
     /** the byte size of buffer for _each_ column file writer. */
     private final int writeBufferSize;
+    /** thread pool to write out repartitioned files in background. null if synchronous. */
+    private LocalWriteBehind writeBehind;
 
 
     /** overload without partitionsBegin/partitionsEnd for convenience. */
@@ -164,6 +167,15 @@ public class RecursiveRepartitioner {
             this.writeBufferSize = (int) (writeBufferSizeTotal / fragments) / columnCount;
         }
     }
+    /**
+     * Makes the repartitioned files written out in background threads of the given pool
+     * so that disk writes overlap with partitioning. Must be called before {@link #execute()}.
+     * The buffers of each writer are shrunk so that the total memory stays within writeBufferSizeTotal.
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
     /**
      * Repartitions the given columnar files.
      * @return the repartitioned columnar files.
@@ -190,6 +202,7 @@ public class RecursiveRepartitioner {
                                 recursedPartitionsBegin,
                                 recursedPartitionsBegin + partitionsPerFragment,
                                 maxFragments, readCacheTuples, writeBufferSizeTotal);
+                recursedPartitioner.setWriteBehind(writeBehind);
                 ColumnFileBundle[][] recursed = recursedPartitioner.execute();
                 assert (recursed.length == partitionsPerFragment);
                 for (int i = 0; i < recursed.length; ++i) {
@@ -292,8 +305,24 @@ public class RecursiveRepartitioner {
 
         fragmentFolders[fragment] = folder;
         writers[fragment] = new ColumnFileWriterBundle[columnCount];
+        if (bloomFilterColumns == null) {
+            bloomFilterColumns = new boolean[columnCount];
+            for (ColumnFileBundle[] files : baseFiles) {
+                for (int i = 0; i < columnCount; ++i) {
+                    bloomFilterColumns[i] |= files[i].hasBloomFilter();
+                }
+            }
+        }
+        // each writer with write-behind holds depth + 1 buffers. keep the total within writeBufferSizeTotal
+        int bufferSize = writeBehind == null ? writeBufferSize : Math.max(1, writeBufferSize / (writeBehind.getDepth() + 1));
         for (int i = 0; i < columnCount; ++i) {
-            writers[fragment][i] = new ColumnFileWriterBundle(folder, String.valueOf(i), columnTypes[i], compressions[i], true, writeBufferSize);
+            writers[fragment][i] = new ColumnFileWriterBundle(folder, String.valueOf(i), columnTypes[i], compressions[i], true, bufferSize);
+            writers[fragment][i].setWriteBehind(writeBehind);
+            if (bloomFilterColumns[i]) {
+                writers[fragment][i].enableBloomFilter();
+            }
         }
     }
+    /** whether each column had a Bloom filter in the base files. repartitioned files inherit the choice. */
+    private boolean[] bloomFilterColumns;
 }
@@ -1,6 +1,7 @@
 package edu.brown.lasvegas.lvfs.data;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Random;
 
 import org.apache.log4j.Logger;
@@ -11,6 +12,7 @@ import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.data.task.RepartitionTaskRunner;
 import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
 import edu.brown.lasvegas.util.ValueRange;
 
 /**
@@ -64,6 +66,15 @@ public final class Repartitioner {
     	                maxFragments, readCacheTuples, writeBufferSizeTotal);
     }
 
+    /**
+     * Makes the repartitioned files written out in background threads of the given pool.
+     * Must be called before {@link #execute()}.
+     * @see RecursiveRepartitioner#setWriteBehind(LocalWriteBehind)
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        impl.setWriteBehind(writeBehind);
+    }
+
     /**
      * Repartitions the given files.
      * @return descriptors of the repartitioned columnar files.
@@ -82,12 +93,34 @@ public final class Repartitioner {
                 continue;
             }
             finalResults[partition] = new LVColumnFile[columnCount];
+            LocalVirtualFile partitionFolder = outputFolder.getChildFile(String.valueOf(partition));
+            boolean[] moved = new boolean[columnCount];
             for (int column = 0; column < columnCount; ++column) {
+                if (moved[column]) {
+                    continue;
+                }
                 ColumnFileBundle file = results[partition][column];
                 // move the repartitioned files to outputFolder
-                file.moveFiles(outputFolder.getChildFile(String.valueOf(partition)), String.valueOf(column));
-                // then, convert the object into LVColumnFile
-                finalResults[partition][column] = file.toLVColumnFile();
+                if (file.getPaxFile() != null) {
+                    // columns sharing a PAX file must be moved together, named after the first column
+                    ArrayList<ColumnFileBundle> group = new ArrayList<ColumnFileBundle>();
+                    String paxPath = file.getPaxFile().getAbsolutePath();
+                    for (int other = column; other < columnCount; ++other) {
+                        ColumnFileBundle otherFile = results[partition][other];
+                        if (otherFile.getPaxFile() != null && otherFile.getPaxFile().getAbsolutePath().equals(paxPath)) {
+                            group.add(otherFile);
+                            moved[other] = true;
+                        }
+                    }
+                    ColumnFileBundle.moveColumnGroup(group.toArray(new ColumnFileBundle[group.size()]), partitionFolder, String.valueOf(column));
+                } else {
+                    file.moveFiles(partitionFolder, String.valueOf(column));
+                    moved[column] = true;
+                }
+            }
+            // then, convert the objects into LVColumnFile
+            for (int column = 0; column < columnCount; ++column) {
+                finalResults[partition][column] = results[partition][column].toLVColumnFile();
             }
         }
         
@@ -31,7 +31,7 @@ import edu.brown.lasvegas.lvfs.data.task.BenchmarkTpchQ15PlanBTaskRunner;
 import edu.brown.lasvegas.lvfs.data.task.BenchmarkTpchQ15TaskParameters;
 import edu.brown.lasvegas.protocol.LVMetadataProtocol;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
-import edu.brown.lasvegas.util.IntHashMap;
+import edu.brown.lasvegas.util.IntDoubleOpenHashMap;
 import edu.brown.lasvegas.util.ValueRange;
 
 /**
@@ -89,20 +89,21 @@ public class BenchmarkTpchQ15PlanBJobController extends BenchmarkTpchQ15JobContr
     }
     public static class IntermediateResultSet implements Writable {
         /** key=suppkey, value=TOTAL_REVENUE .*/
-        public IntHashMap<Double> results = new IntHashMap<Double> (1 << 16);
+        public IntDoubleOpenHashMap results = new IntDoubleOpenHashMap (1 << 16);
+
+        /** adds up the revenues of the other result set. */
+        public void addAll (IntermediateResultSet other) {
+    		for (int slot = other.results.nextSlot(-1); slot >= 0; slot = other.results.nextSlot(slot)) {
+    			results.addTo(other.results.keyAt(slot), other.results.valueAt(slot));
+    		}
+        }
 
         @Override
     	public void readFields(DataInput in) throws IOException {
     		results.clear();
     		IntermediateResultSetDeserialized deserialized = deserialize(in);
-    		for (int i = 0; i < deserialized.count; ++i) {
-    			int suppkey = deserialized.suppkeys[i];
-    			double totalRevenue = deserialized.totalRevenues[i];
-    			assert (suppkey != 0);
-    			assert (!results.containsKey(suppkey));
-    			assert (totalRevenue != 0);
-    			results.put(suppkey, totalRevenue);
-    		}
+    		results.putAll(deserialized.suppkeys, deserialized.totalRevenues, deserialized.count);
+    		assert (results.size() == deserialized.count); // no duplicate suppkeys
     	}
 		public static IntermediateResultSetDeserialized deserialize(DataInput in) throws IOException {
     		int count = in.readInt();
@@ -128,12 +129,10 @@ public class BenchmarkTpchQ15PlanBJobController extends BenchmarkTpchQ15JobContr
     		double[] totalRevenues = new double[count];
 
     		int written = 0;
-    		for (IntHashMap.Entry<Double> e : results.getTable()) {
-        		for (IntHashMap.Entry<Double> entry  = e; entry != null; entry = entry.getNext()) {
-        			suppkeys[written] = entry.getKey();
-        			totalRevenues[written] = entry.getValue();
-	    			++written;
-        		}
+    		for (int slot = results.nextSlot(-1); slot >= 0; slot = results.nextSlot(slot)) {
+    			suppkeys[written] = results.keyAt(slot);
+    			totalRevenues[written] = results.valueAt(slot);
+    			++written;
     		}
     		assert (count == written);
 
@@ -199,23 +198,22 @@ public class BenchmarkTpchQ15PlanBJobController extends BenchmarkTpchQ15JobContr
     /** find the suppliers with max total revenue from intermediateQueryResult. */
     private MaxSupp getMaxSupp () {
         MaxSupp ret = new MaxSupp();
-		for (IntHashMap.Entry<Double> e : intermediateQueryResult.results.getTable()) {
-    		for (IntHashMap.Entry<Double> entry  = e; entry != null; entry = entry.getNext()) {
-				int suppkey = entry.getKey();
-				double revenue = entry.getValue();
-				if (revenue == ret.currentMaxRevenue) {
-					// same max revenue. add these tuples.
-					ret.maxSuppkeys.add(suppkey);
-				} else if (revenue > ret.currentMaxRevenue) {
-					// this result updates the global max revenue.
-					// so, other existing tuples are discarded.
-					ret.maxSuppkeys.clear();
-					ret.maxSuppkeys.add(suppkey);
-					ret.currentMaxRevenue = revenue;
-				} else {
-		    		// then, ignored
-				}
-    		}
+		IntDoubleOpenHashMap results = intermediateQueryResult.results;
+		for (int slot = results.nextSlot(-1); slot >= 0; slot = results.nextSlot(slot)) {
+			int suppkey = results.keyAt(slot);
+			double revenue = results.valueAt(slot);
+			if (revenue == ret.currentMaxRevenue) {
+				// same max revenue. add these tuples.
+				ret.maxSuppkeys.add(suppkey);
+			} else if (revenue > ret.currentMaxRevenue) {
+				// this result updates the global max revenue.
+				// so, other existing tuples are discarded.
+				ret.maxSuppkeys.clear();
+				ret.maxSuppkeys.add(suppkey);
+				ret.currentMaxRevenue = revenue;
+			} else {
+	    		// then, ignored
+			}
 		}
         LOG.info("global max_revenue=" + ret.currentMaxRevenue + ". " + ret.maxSuppkeys.size() + " suppkeys with the total revenue");
         return ret; 
@@ -353,18 +351,7 @@ public class BenchmarkTpchQ15PlanBJobController extends BenchmarkTpchQ15JobContr
         	// unlike Plan-A, each node outputs all suppkey sub-aggregates that satisfy SHIPDATE predicate.
         	// we have to merge all of the results anyway.
     		
-    		for (int i = 0; i < subResult.count; ++i) {
-        		Double revenue = intermediateQueryResult.results.get(subResult.suppkeys[i]);
-        		if (revenue == null) {
-        			// new suppkey!
-        			revenue = subResult.totalRevenues[i];
-        		} else {
-        			// same suppkey exists. have to merge em.
-        			revenue += subResult.totalRevenues[i];
-        		}
-        		// update or newly put the value
-    			intermediateQueryResult.results.put(subResult.suppkeys[i], revenue);
-        	}
+    		intermediateQueryResult.results.addToAll(subResult.suppkeys, subResult.totalRevenues, subResult.count);
     		LOG.info("merged one result");
     	}
     }
@@ -36,6 +36,7 @@ import edu.brown.lasvegas.client.DataNodeFile;
 import edu.brown.lasvegas.client.LVDataClient;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.TypedArenaReader;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.ValueIndex;
 import edu.brown.lasvegas.lvfs.VirtualFile;
@@ -43,6 +44,7 @@ import edu.brown.lasvegas.lvfs.VirtualFileInputStream;
 import edu.brown.lasvegas.lvfs.data.task.BenchmarkTpchQ18PlanATaskRunner;
 import edu.brown.lasvegas.protocol.LVMetadataProtocol;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.util.StringArena;
 import edu.brown.lasvegas.util.ValueRange;
 
 /**
@@ -546,11 +548,12 @@ public abstract class BenchmarkTpchQ18JobController extends AbstractJobControlle
 				TypedReader<Integer, int[]> custkeyDataReader = (TypedReader<Integer, int[]>) custkeyReader.getDataReader();
 				// custkeys is a sorted map to speed this up. we should only seek forward
 				int[] custkeyValueBuffer = new int[1 << 8];
-				for (Integer custkey : keysInThisRange) {
-					int custkeyInt = custkey;
+				int[] namePositions = new int[keysInThisRange.size()];
+				for (int k = 0; k < namePositions.length; ++k) {
+					int custkeyInt = keysInThisRange.get(k);
 					// use value index to jump to the custkey.
 					// however, the index is sparse. we need to sequentially search from this position
-					int tuplePos = custkeyValueIndex.searchValues(custkey);
+					int tuplePos = custkeyValueIndex.searchValues(custkeyInt);
 					custkeyDataReader.seekToTupleAbsolute(tuplePos);
 					
 					boolean found = false;
@@ -570,9 +573,34 @@ public abstract class BenchmarkTpchQ18JobController extends AbstractJobControlle
 							++tuplePos;
 						}
 					}
-					
-					nameDataReader.seekToTupleAbsolute(tuplePos);
-					subCustnames.put(custkey, nameDataReader.readValue());
+					namePositions[k] = tuplePos;
+				}
+
+				// keys are sorted and distinct, so are their positions. read all names in one pass
+				// into an arena, and materialize Strings only for the final result.
+				int firstPos = namePositions[0];
+				for (int k = 0; k < namePositions.length; ++k) {
+					namePositions[k] -= firstPos;
+				}
+				nameDataReader.seekToTupleAbsolute(firstPos);
+				if (nameDataReader instanceof TypedArenaReader) {
+					StringArena names = new StringArena(namePositions.length, namePositions.length * 32);
+					int read = ((TypedArenaReader) nameDataReader).readValuesAtPositions(names, namePositions, namePositions.length);
+					if (read != namePositions.length) {
+						throw new IOException("couldn't read customer names. expected " + namePositions.length + " but read " + read);
+					}
+					for (int k = 0; k < namePositions.length; ++k) {
+						subCustnames.put(keysInThisRange.get(k), names.getString(k));
+					}
+				} else {
+					String[] names = new String[namePositions.length];
+					int read = nameDataReader.readValuesAtPositions(names, 0, namePositions, namePositions.length);
+					if (read != namePositions.length) {
+						throw new IOException("couldn't read customer names. expected " + namePositions.length + " but read " + read);
+					}
+					for (int k = 0; k < namePositions.length; ++k) {
+						subCustnames.put(keysInThisRange.get(k), names[k]);
+					}
 				}
 				custkeyReader.close();
 				nameReader.close();
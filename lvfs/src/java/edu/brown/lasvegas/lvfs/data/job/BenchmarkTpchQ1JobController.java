@@ -217,7 +217,8 @@ public class BenchmarkTpchQ1JobController extends AbstractJobController<Benchmar
     		}
     		return new String(buf);
     	}
-    	private Q1Result findGroup (String returnflag, String linestatus) {
+    	/** returns the group of the given returnflag/linestatus. a new empty group is added if not found. */
+    	public Q1Result findGroup (String returnflag, String linestatus) {
             for (Q1Result tuple : tuples) { // simply sequential search. as there are few returnflag/linestatus, should be fine
                 if (tuple.returnflag.equals(returnflag) && tuple.linestatus.equals(linestatus)) {
                     return tuple;
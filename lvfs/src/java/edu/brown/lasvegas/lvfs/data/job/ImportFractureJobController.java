@@ -2,15 +2,19 @@ package edu.brown.lasvegas.lvfs.data.job;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 
 import edu.brown.lasvegas.AbstractJobController;
+import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.JobType;
 import edu.brown.lasvegas.LVFracture;
 import edu.brown.lasvegas.LVReplica;
@@ -28,6 +32,7 @@ import edu.brown.lasvegas.lvfs.data.task.DeleteTmpFilesTaskParameters;
 import edu.brown.lasvegas.lvfs.data.task.LoadPartitionedTextFilesTaskParameters;
 import edu.brown.lasvegas.lvfs.data.task.PartitionRawTextFilesTaskParameters;
 import edu.brown.lasvegas.lvfs.data.task.RecoverPartitionFromBuddyTaskParameters;
+import edu.brown.lasvegas.lvfs.data.task.ShareDictionariesTaskParameters;
 import edu.brown.lasvegas.lvfs.placement.PlacementEventHandlerImpl;
 import edu.brown.lasvegas.protocol.LVMetadataProtocol;
 
@@ -126,7 +131,10 @@ public class ImportFractureJobController extends AbstractJobController<ImportFra
         // other replica schemes are loaded after this task, using the buddy files.
         if (!stopRequested && !errorEncountered) {
             assert (allPartitionedFiles != null);
-            loadPartitionedFiles (allPartitionedFiles, 1.0d / 3.0d, 2.0d / 3.0d); // 33%-66% progress
+            loadPartitionedFiles (allPartitionedFiles, 1.0d / 3.0d, 0.6d); // 33%-60% progress
+            if (!stopRequested && !errorEncountered) {
+                shareDictionaries (defaultReplicaSchemes.values(), 0.6d, 2.0d / 3.0d); // 60%-66% progress
+            }
             // okay, now replicas in default replica schemes are successfully loaded
             for (LVReplicaScheme scheme : defaultReplicaSchemes.values()) {
                 LVReplica replica = metaRepo.getReplicaFromSchemeAndFracture(scheme.getSchemeId(), fracture.getFractureId());
@@ -137,7 +145,14 @@ public class ImportFractureJobController extends AbstractJobController<ImportFra
         // loads other replica schemes in each replica group
         // this is supposed to be efficient because of the buddy files which are loaded in the previous tasks.
         if (!stopRequested && !errorEncountered) {
-            copyFromBuddyFiles (2.0d / 3.0d, 0.99d); // 66%-99% progress
+            copyFromBuddyFiles (2.0d / 3.0d, 0.95d); // 66%-95% progress
+            if (!stopRequested && !errorEncountered) {
+                List<LVReplicaScheme> others = new ArrayList<LVReplicaScheme>();
+                for (LVReplicaScheme[] schemes : otherReplicaSchemes.values()) {
+                    others.addAll(Arrays.asList(schemes));
+                }
+                shareDictionaries (others, 0.95d, 0.99d); // 95%-99% progress
+            }
             // okay, now replicas in other replica schemes are successfully loaded
             for (LVReplicaScheme[] schemes : otherReplicaSchemes.values()) {
                 for (LVReplicaScheme scheme : schemes) {
@@ -353,6 +368,154 @@ public class ImportFractureJobController extends AbstractJobController<ImportFra
         joinTasks(taskMap, baseProgress, completedProgress);
     }
     
+    /**
+     * Unifies the dictionaries of the columns that use shared dictionaries
+     * ({@link LVReplicaScheme#isSharedDictionary(int)}) in the given replica schemes.
+     * The shared dictionary of the previous fracture is extended so that it stays
+     * a subset of the new shared dictionary.
+     * For each replica, one merger node (the node of the first partition) merges the dictionaries,
+     * and then all nodes fetch the merged dictionary from it and re-code their partitions.
+     * The merged dictionaries in the merger nodes are deleted at the end even if the job fails or is stopped.
+     */
+    private void shareDictionaries (Collection<LVReplicaScheme> schemes, double baseProgress, double completedProgress) throws IOException {
+        // node id and parameters of each task in the second phase
+        List<Integer> taskNodeIds = new ArrayList<Integer>();
+        List<ShareDictionariesTaskParameters> taskParams = new ArrayList<ShareDictionariesTaskParameters>();
+        // indexes in the lists above of the tasks in merger nodes, which also run the first phase
+        List<Integer> mergerTaskIndexes = new ArrayList<Integer>();
+        for (LVReplicaScheme scheme : schemes) {
+            List<Integer> columnIds = new ArrayList<Integer>();
+            for (Integer columnId : new TreeSet<Integer>(scheme.getSharedDictionaryColumnIds())) {
+                if (scheme.getColumnCompressionScheme(columnId) == CompressionType.DICTIONARY) {
+                    columnIds.add(columnId);
+                }
+            }
+            if (columnIds.isEmpty()) {
+                continue;
+            }
+            LVReplica replica = metaRepo.getReplicaFromSchemeAndFracture(scheme.getSchemeId(), fracture.getFractureId());
+            LVReplica baseReplica = getPreviousReplica(scheme);
+            LVReplicaPartition[] partitions = metaRepo.getAllReplicaPartitionsByReplicaId(replica.getReplicaId());
+            // key = node id
+            Map<Integer, NodeFileLoadAssignment> assignmentsPerNode = new TreeMap<Integer, NodeFileLoadAssignment>();
+            LVReplicaPartition firstPartition = null;
+            for (LVReplicaPartition partition : partitions) {
+                if (partition.getStatus() != ReplicaPartitionStatus.OK) {
+                    continue;
+                }
+                if (firstPartition == null || partition.getPartitionId() < firstPartition.getPartitionId()) {
+                    firstPartition = partition;
+                }
+                NodeFileLoadAssignment assignments = assignmentsPerNode.get(partition.getNodeId());
+                if (assignments == null) {
+                    assignments = new NodeFileLoadAssignment();
+                    assignmentsPerNode.put(partition.getNodeId(), assignments);
+                }
+                assignments.partitions.add(partition);
+            }
+            if (firstPartition == null) {
+                continue;
+            }
+            int[] columnIdArray = new int[columnIds.size()];
+            for (int i = 0; i < columnIdArray.length; ++i) {
+                columnIdArray[i] = columnIds.get(i);
+            }
+
+            for (Integer nodeId : assignmentsPerNode.keySet()) {
+                NodeFileLoadAssignment assignments = assignmentsPerNode.get(nodeId);
+                ShareDictionariesTaskParameters taskParam = new ShareDictionariesTaskParameters();
+                taskParam.setReplicaId(replica.getReplicaId());
+                taskParam.setBaseReplicaId(baseReplica == null ? -1 : baseReplica.getReplicaId());
+                taskParam.setPartitionIds(assignments.getReplicaPartitionIds());
+                taskParam.setColumnIds(columnIdArray);
+                taskParam.setMergerNodeId(firstPartition.getNodeId());
+                if (nodeId.intValue() == firstPartition.getNodeId().intValue()) {
+                    mergerTaskIndexes.add(taskParams.size());
+                }
+                taskNodeIds.add(nodeId);
+                taskParams.add(taskParam);
+            }
+        }
+        if (taskParams.isEmpty()) {
+            return;
+        }
+        double midProgress = (baseProgress + completedProgress) / 2.0d;
+        // key = node id, value = folders of the merged dictionaries
+        Map<Integer, ArrayList<String>> mergedFolders = new TreeMap<Integer, ArrayList<String>>();
+        try {
+            int[] mergeTaskIds = launchShareDictionaries(taskNodeIds, taskParams, mergerTaskIndexes, false, baseProgress, midProgress);
+            for (int i = 0; i < mergerTaskIndexes.size(); ++i) {
+                int index = mergerTaskIndexes.get(i);
+                // get the latest status. the task might have finished after we stopped waiting
+                LVTask task = metaRepo.getTask(mergeTaskIds[i]);
+                if (task.getStatus() != TaskStatus.DONE || task.getOutputFilePaths() == null || task.getOutputFilePaths().length == 0) {
+                    continue;
+                }
+                String folder = task.getOutputFilePaths()[0];
+                ArrayList<String> folders = mergedFolders.get(taskNodeIds.get(index));
+                if (folders == null) {
+                    folders = new ArrayList<String>();
+                    mergedFolders.put(taskNodeIds.get(index), folders);
+                }
+                folders.add(folder);
+                int replicaId = taskParams.get(index).getReplicaId();
+                for (ShareDictionariesTaskParameters taskParam : taskParams) {
+                    if (taskParam.getReplicaId() == replicaId) {
+                        taskParam.setSharedDictionaryFolder(folder);
+                    }
+                }
+            }
+            if (!stopRequested && !errorEncountered) {
+                List<Integer> allTaskIndexes = new ArrayList<Integer>();
+                for (int i = 0; i < taskParams.size(); ++i) {
+                    allTaskIndexes.add(i);
+                }
+                launchShareDictionaries(taskNodeIds, taskParams, allTaskIndexes, true, midProgress, completedProgress);
+            }
+        } finally {
+            if (!mergedFolders.isEmpty()) {
+                LOG.info("deleting the merged dictionaries in " + mergedFolders.size() + " nodes...");
+                deleteTmpFiles(mergedFolders, completedProgress, completedProgress);
+            }
+        }
+    }
+
+    /**
+     * launches one phase of the tasks to share dictionaries and waits for them.
+     * @param taskIndexes indexes of the tasks to launch in the given lists
+     * @return IDs of the launched tasks in the order of taskIndexes
+     */
+    private int[] launchShareDictionaries (List<Integer> taskNodeIds, List<ShareDictionariesTaskParameters> taskParams,
+                    List<Integer> taskIndexes, boolean recode, double baseProgress, double completedProgress) throws IOException {
+        SortedMap<Integer, LVTask> taskMap = new TreeMap<Integer, LVTask>();
+        int[] taskIds = new int[taskIndexes.size()];
+        for (int j = 0; j < taskIds.length; ++j) {
+            int i = taskIndexes.get(j);
+            ShareDictionariesTaskParameters taskParam = taskParams.get(i);
+            taskParam.setRecode(recode);
+            int taskId = metaRepo.createNewTaskIdOnlyReturn(jobId, taskNodeIds.get(i), TaskType.SHARE_DICTIONARIES, taskParam.writeToBytes());
+            LVTask task = metaRepo.updateTask(taskId, TaskStatus.START_REQUESTED, null, null, null);
+            LOG.info("launched new task to " + (recode ? "re-code partitions with" : "merge") + " shared dictionaries: " + task);
+            assert (!taskMap.containsKey(taskId));
+            taskMap.put(taskId, task);
+            taskIds[j] = taskId;
+        }
+        joinTasks(taskMap, baseProgress, completedProgress);
+        return taskIds;
+    }
+
+    /** returns the replica of the latest previous fracture in the given replica scheme. null if none. */
+    private LVReplica getPreviousReplica (LVReplicaScheme scheme) throws IOException {
+        LVReplica latest = null;
+        for (LVReplica replica : metaRepo.getAllReplicasBySchemeId(scheme.getSchemeId())) {
+            if (replica.getFractureId() < fracture.getFractureId() && replica.getStatus() == ReplicaStatus.OK
+                && (latest == null || replica.getFractureId() > latest.getFractureId())) {
+                latest = replica;
+            }
+        }
+        return latest;
+    }
+
     private void deleteTemporaryFiles (TemporaryFilePath[] allPartitionedFiles, double baseProgress, double completedProgress) throws IOException {
     	LOG.info("deleting " + allPartitionedFiles.length + " temporary partitioned files...");
     	
@@ -366,6 +529,16 @@ public class ImportFractureJobController extends AbstractJobController<ImportFra
             }
             paths.add(path.getFilePath());
         }
+        deleteTmpFiles(filesMap, baseProgress, completedProgress);
+    	LOG.info("deleted.");
+    }
+
+    /**
+     * Deletes the given temporary files/folders in each node.
+     * If the job is failing or stopped, this only launches the tasks without waiting for them.
+     * @param filesMap key=nodeId, value=paths to delete
+     */
+    private void deleteTmpFiles (Map<Integer, ArrayList<String>> filesMap, double baseProgress, double completedProgress) throws IOException {
         SortedMap<Integer, LVTask> taskMap = new TreeMap<Integer, LVTask>();
         for (Integer nodeId : filesMap.keySet()) {
             ArrayList<String> paths = filesMap.get(nodeId);
@@ -377,7 +550,11 @@ public class ImportFractureJobController extends AbstractJobController<ImportFra
             assert (!taskMap.containsKey(taskId));
             taskMap.put(taskId, task);
         }
+        if (stopRequested || errorEncountered) {
+            // joinTasks() would cancel them
+            LOG.warn("launched " + taskMap.size() + " tasks to delete temporary files without waiting for them");
+            return;
+        }
         joinTasks(taskMap, baseProgress, completedProgress);
-    	LOG.info("deleted.");
     }
 }
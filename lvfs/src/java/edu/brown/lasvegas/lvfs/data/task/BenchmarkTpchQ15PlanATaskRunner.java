@@ -3,22 +3,24 @@ package edu.brown.lasvegas.lvfs.data.task;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 
 import edu.brown.lasvegas.LVColumn;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVTable;
 import edu.brown.lasvegas.TaskType;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.data.ParallelPartitionScanner;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15JobController.Q15Result;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15JobController.Q15ResultList;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15PlanBJobController;
+import edu.brown.lasvegas.util.IntOpenHashMap;
 
 /**
  * @see TaskType#BENCHMARK_TPCH_Q15_PLANA
  */
 public final class BenchmarkTpchQ15PlanATaskRunner extends BenchmarkTpchQ15TaskRunner {
     /** key=partition range, value=corresponding lineitem partitions (one for each fracture). */
-    private HashMap<Integer, ArrayList<LVReplicaPartition>> lineitemPartitions;
+    private IntOpenHashMap<ArrayList<LVReplicaPartition>> lineitemPartitions;
 
     private LVTable supplier;
     /** s_suppkey, s_name, s_address, s_phone. */
@@ -27,23 +29,30 @@ public final class BenchmarkTpchQ15PlanATaskRunner extends BenchmarkTpchQ15TaskR
     protected int supplierPartitionCount;
     protected LVReplicaPartition supplierPartitions[];
 
-    private double currentMaxRevenue;
-    private ArrayList<Integer> maxSuppkeys;
-    private ArrayList<Integer> maxSuppkeysPartition;
-
     @Override
     protected final String[] runDataTask() throws Exception {
         prepareInputs ();
         long startTime = System.currentTimeMillis();
         
-        // first, read all lineitems 
-        currentMaxRevenue = Double.MIN_VALUE;
-        maxSuppkeys = new ArrayList<Integer>();
-        maxSuppkeysPartition = new ArrayList<Integer>();
-        for (int i = 0; i < supplierPartitionCount; ++i) {
-            LOG.info("looking for max supplier(s).. " + i + "/" + supplierPartitionCount);
-            processLineitemPartition (i);
-        }
+        // first, read all lineitems. each scan thread looks for its own max supplier(s)
+        MaxRevenueSuppliers maxSuppliers = scanPartitionsInParallel(supplierPartitionCount, new ParallelPartitionScanner.PartitionScan<MaxRevenueSuppliers>() {
+            @Override
+            protected MaxRevenueSuppliers createPartialResult() {
+                return new MaxRevenueSuppliers();
+            }
+            @Override
+            protected void scan(int partition, TupleRange range, MaxRevenueSuppliers partialResult) throws IOException {
+                LOG.info("looking for max supplier(s).. " + partition + "/" + supplierPartitionCount);
+                processLineitemPartition (partition, partialResult);
+            }
+            @Override
+            protected void merge(MaxRevenueSuppliers result, MaxRevenueSuppliers other) {
+                result.addAll(other);
+            }
+        });
+        ArrayList<Integer> maxSuppkeys = maxSuppliers.suppkeys;
+        ArrayList<Integer> maxSuppkeysPartition = maxSuppliers.partitions;
+        double currentMaxRevenue = maxSuppliers.maxRevenue;
         
         // then, read supplier columns for the suppkey
         LOG.info("reading supplier table for " + maxSuppkeys.size() + " tuples...");
@@ -65,7 +74,7 @@ public final class BenchmarkTpchQ15PlanATaskRunner extends BenchmarkTpchQ15TaskR
         return new String[]{outputToLocalTmpFile(queryResult).getAbsolutePath()};
     }
 
-    private void processLineitemPartition (int partition) throws IOException {
+    private void processLineitemPartition (int partition, MaxRevenueSuppliers result) throws IOException {
     	LVReplicaPartition supplierPartition = supplierPartitions[partition];
         ArrayList<LVReplicaPartition> lineitemPartitionList = lineitemPartitions.get(supplierPartition.getRange()); // one for each fracture
         assert (lineitemPartitionList.size() > 0);
@@ -121,20 +130,7 @@ public final class BenchmarkTpchQ15PlanATaskRunner extends BenchmarkTpchQ15TaskR
 	        		}
         		}
         	}
-        	if (totalRevenue == currentMaxRevenue) {
-        		// tie. add this suppkey.
-                maxSuppkeys.add(minSuppKey);
-                maxSuppkeysPartition.add(partition);
-        	} else if (totalRevenue > currentMaxRevenue) {
-        		// new record! delete the old values;
-        		maxSuppkeys.clear();
-        		maxSuppkeysPartition.clear();
-                maxSuppkeys.add(minSuppKey);
-                maxSuppkeysPartition.add(partition);
-                currentMaxRevenue = totalRevenue;
-        	} else {
-        		// then, this suppkey has no chance to be in the final query result
-        	}
+        	result.add(minSuppKey, totalRevenue, partition);
         }
     }
 
@@ -149,7 +145,7 @@ public final class BenchmarkTpchQ15PlanATaskRunner extends BenchmarkTpchQ15TaskR
         }
 
         int[] lineitemPartitionIds = parameters.getLineitemPartitionIds();
-        this.lineitemPartitions = new HashMap<Integer, ArrayList<LVReplicaPartition>>();
+        this.lineitemPartitions = new IntOpenHashMap<ArrayList<LVReplicaPartition>>();
         for (int i = 0; i < lineitemPartitionIds.length; ++i) {
             LVReplicaPartition partition = context.metaRepo.getReplicaPartition(lineitemPartitionIds[i]);
             int range = partition.getRange();
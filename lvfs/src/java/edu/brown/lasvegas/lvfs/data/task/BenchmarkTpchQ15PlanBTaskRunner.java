@@ -5,6 +5,8 @@ import java.io.IOException;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.ReplicaPartitionStatus;
 import edu.brown.lasvegas.TaskType;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.data.ParallelPartitionScanner;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15PlanBJobController.IntermediateResultSet;
 
 /**
@@ -13,20 +15,29 @@ import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15PlanBJobController.Inter
  */
 public final class BenchmarkTpchQ15PlanBTaskRunner extends BenchmarkTpchQ15TaskRunner {
     private LVReplicaPartition[] lineitemPartitions;
-    private IntermediateResultSet intermediateQueryResult;
 
     @Override
     protected final String[] runDataTask() throws Exception {
         prepareInputs ();
         long startTime = System.currentTimeMillis();
         
-        // first, read all lineitems
-        intermediateQueryResult = new IntermediateResultSet();
-        int count = lineitemPartitions.length;
-        for (int i = 0; i < count; ++i) {
-            LOG.info("processing lineitem partitions... " + i + "/" + count);
-            processLineitemPartition (lineitemPartitions[i]);
-        }
+        // first, read all lineitems. each scan thread sums up revenues in its own hash map
+        final int count = lineitemPartitions.length;
+        IntermediateResultSet intermediateQueryResult = scanPartitionsInParallel(count, new ParallelPartitionScanner.PartitionScan<IntermediateResultSet>() {
+            @Override
+            protected IntermediateResultSet createPartialResult() {
+                return new IntermediateResultSet();
+            }
+            @Override
+            protected void scan(int partition, TupleRange range, IntermediateResultSet partialResult) throws IOException {
+                LOG.info("processing lineitem partitions... " + partition + "/" + count);
+                processLineitemPartition (lineitemPartitions[partition], partialResult);
+            }
+            @Override
+            protected void merge(IntermediateResultSet result, IntermediateResultSet other) {
+                result.addAll(other);
+            }
+        });
         
         long endTime = System.currentTimeMillis();
         LOG.info("total runDataTask() time: " + (endTime - startTime) + "ms");
@@ -55,26 +66,21 @@ public final class BenchmarkTpchQ15PlanBTaskRunner extends BenchmarkTpchQ15TaskR
         }
     }
 
-    private void processLineitemPartition (LVReplicaPartition lineitemPartition) throws IOException {
+    private void processLineitemPartition (LVReplicaPartition lineitemPartition, IntermediateResultSet intermediateQueryResult) throws IOException {
     	LineitemFracture fracture = new LineitemFracture(lineitemPartition);
+    	// compute the revenue of each qualifying lineitem, then add them up per suppkey in one bulk call
+    	int[] suppkeys = new int[fracture.lineitemTuples];
+    	double[] revenues = new double[fracture.lineitemTuples];
+    	int qualified = 0;
         for (int pos = 0; pos < fracture.lineitemTuples; ++pos) {
         	long shipdate = fracture.shipdates[pos];
     		if (shipdate < lowerShipdateValue || shipdate > upperShipdateValue) {
     			continue;
     		}
-    		int suppkey = fracture.lsupps[pos];
-    		double price = fracture.prices[pos];
-    		float discount = fracture.discounts[pos];
-    		Double revenue = intermediateQueryResult.results.get(suppkey);
-    		if (revenue == null) {
-    			// new suppkey!
-    			revenue = price * (1.0d - discount);
-    		} else {
-    			// same suppkey exists. have to merge em.
-    			revenue += price * (1.0d - discount);
-    		}
-    		// update or newly put the value
-			intermediateQueryResult.results.put(suppkey, revenue);
+    		suppkeys[qualified] = fracture.lsupps[pos];
+    		revenues[qualified] = fracture.prices[pos] * (1.0d - fracture.discounts[pos]);
+    		++qualified;
         }
+        intermediateQueryResult.results.addToAll(suppkeys, revenues, qualified);
     }
 }
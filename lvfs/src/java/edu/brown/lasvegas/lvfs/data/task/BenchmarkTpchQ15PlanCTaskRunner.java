@@ -10,6 +10,8 @@ import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVTable;
 import edu.brown.lasvegas.TaskType;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.data.ParallelPartitionScanner;
 import edu.brown.lasvegas.lvfs.data.RepartitionSummary;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15JobController.Q15Result;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ15JobController.Q15ResultList;
@@ -27,10 +29,6 @@ public final class BenchmarkTpchQ15PlanCTaskRunner extends BenchmarkTpchQ15TaskR
     protected int supplierPartitionCount;
     protected LVReplicaPartition supplierPartitions[];
 
-    private double currentMaxRevenue;
-    private ArrayList<Integer> maxSuppkeys;
-    private ArrayList<Integer> maxSuppkeysPartition;
-
 	private Map<Integer, LVColumnFile[][]> repartitionedFiles;//key=nodeId
     
     @Override
@@ -38,14 +36,25 @@ public final class BenchmarkTpchQ15PlanCTaskRunner extends BenchmarkTpchQ15TaskR
         prepareInputs ();
         long startTime = System.currentTimeMillis();
         
-        // first, read all lineitems 
-        currentMaxRevenue = Double.MIN_VALUE;
-        maxSuppkeys = new ArrayList<Integer>();
-        maxSuppkeysPartition = new ArrayList<Integer>();
-        for (int i = 0; i < supplierPartitionCount; ++i) {
-            LOG.info("looking for max supplier(s).. " + i + "/" + supplierPartitionCount);
-            processLineitemPartition (i);
-        }
+        // first, read all lineitems. each scan thread looks for its own max supplier(s)
+        MaxRevenueSuppliers maxSuppliers = scanPartitionsInParallel(supplierPartitionCount, new ParallelPartitionScanner.PartitionScan<MaxRevenueSuppliers>() {
+            @Override
+            protected MaxRevenueSuppliers createPartialResult() {
+                return new MaxRevenueSuppliers();
+            }
+            @Override
+            protected void scan(int partition, TupleRange range, MaxRevenueSuppliers partialResult) throws IOException {
+                LOG.info("looking for max supplier(s).. " + partition + "/" + supplierPartitionCount);
+                processLineitemPartition (partition, partialResult);
+            }
+            @Override
+            protected void merge(MaxRevenueSuppliers result, MaxRevenueSuppliers other) {
+                result.addAll(other);
+            }
+        });
+        ArrayList<Integer> maxSuppkeys = maxSuppliers.suppkeys;
+        ArrayList<Integer> maxSuppkeysPartition = maxSuppliers.partitions;
+        double currentMaxRevenue = maxSuppliers.maxRevenue;
         
         // then, read supplier columns for the suppkey
         LOG.info("reading supplier table for " + maxSuppkeys.size() + " tuples...");
@@ -67,7 +76,7 @@ public final class BenchmarkTpchQ15PlanCTaskRunner extends BenchmarkTpchQ15TaskR
         return new String[]{outputToLocalTmpFile(queryResult).getAbsolutePath()};
     }
 
-    private void processLineitemPartition (int partition) throws IOException {
+    private void processLineitemPartition (int partition, MaxRevenueSuppliers result) throws IOException {
     	LVReplicaPartition supplierPartition = supplierPartitions[partition];
 
         Object[] mergedData = RepartitionSummary.mergeRepartitionedFilesOnMemory(
@@ -105,33 +114,16 @@ public final class BenchmarkTpchQ15PlanCTaskRunner extends BenchmarkTpchQ15TaskR
     		
     		assert (suppkey > curSuppKey);
     		if (curGroupCount > 0) {
-    			addSubAggregate(curSuppKey, curTotalRevenue, partition);
+    			result.add(curSuppKey, curTotalRevenue, partition);
     		}
     		curSuppKey = suppkey;
 			curGroupCount = 1;
 			curTotalRevenue = prices[i] * (1.0d - discounts[i]);
     	}
 		if (curGroupCount > 0) {
-			addSubAggregate(curSuppKey, curTotalRevenue, partition);
+			result.add(curSuppKey, curTotalRevenue, partition);
 		}
     }
-    private void addSubAggregate (int suppkey, double totalRevenue, int partition) {
-    	if (totalRevenue == currentMaxRevenue) {
-    		// tie. add this suppkey.
-            maxSuppkeys.add(suppkey);
-            maxSuppkeysPartition.add(partition);
-    	} else if (totalRevenue > currentMaxRevenue) {
-    		// new record! delete the old values;
-    		maxSuppkeys.clear();
-    		maxSuppkeysPartition.clear();
-            maxSuppkeys.add(suppkey);
-            maxSuppkeysPartition.add(partition);
-            currentMaxRevenue = totalRevenue;
-    	} else {
-    		// then, this suppkey has no chance to be in the final query result
-    	}
-    }
-
 
     @Override
     protected void prepareInputsQ15() throws Exception {
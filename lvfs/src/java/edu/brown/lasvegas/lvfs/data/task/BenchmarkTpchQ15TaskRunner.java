@@ -1,6 +1,7 @@
 package edu.brown.lasvegas.lvfs.data.task;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
@@ -30,7 +31,10 @@ public abstract class BenchmarkTpchQ15TaskRunner extends DataTaskRunner<Benchmar
         LVColumnFile file = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), column.getColumnId());
         assert (file != null);
         ColumnFileBundle fileBundle = new ColumnFileBundle(file);
-        return new ColumnFileReaderBundle(fileBundle, 0); // no buffering needed. we read them at once
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(fileBundle, 0); // no buffering needed. we read them at once
+        reader.setBlockCache(context.blockCache);
+        reader.setBlockReadAhead(context.blockReadAhead);
+        return reader;
     }
 
     protected final void prepareInputs () throws Exception {
@@ -60,6 +64,44 @@ public abstract class BenchmarkTpchQ15TaskRunner extends DataTaskRunner<Benchmar
     }
     protected abstract void prepareInputsQ15 () throws Exception;
 
+    /**
+     * The supplier(s) with the maximum total revenue found so far, and the supplier partition of each.
+     * Each scan thread keeps its own, and they are merged after the scan.
+     */
+    protected static final class MaxRevenueSuppliers {
+        double maxRevenue = Double.MIN_VALUE;
+        final ArrayList<Integer> suppkeys = new ArrayList<Integer>();
+        final ArrayList<Integer> partitions = new ArrayList<Integer>();
+
+        void add (int suppkey, double totalRevenue, int partition) {
+            if (totalRevenue == maxRevenue) {
+                // tie. add this suppkey.
+                suppkeys.add(suppkey);
+                partitions.add(partition);
+            } else if (totalRevenue > maxRevenue) {
+                // new record! delete the old values;
+                suppkeys.clear();
+                partitions.clear();
+                suppkeys.add(suppkey);
+                partitions.add(partition);
+                maxRevenue = totalRevenue;
+            } else {
+                // then, this suppkey has no chance to be in the final query result
+            }
+        }
+        void addAll (MaxRevenueSuppliers other) {
+            if (other.maxRevenue > maxRevenue) {
+                suppkeys.clear();
+                partitions.clear();
+                maxRevenue = other.maxRevenue;
+            } else if (other.maxRevenue < maxRevenue) {
+                return;
+            }
+            suppkeys.addAll(other.suppkeys);
+            partitions.addAll(other.partitions);
+        }
+    }
+
     protected class LineitemFracture {
         /** read all tuples from the partition. */
         @SuppressWarnings("unchecked")
@@ -8,9 +8,11 @@ import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.TaskType;
 import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
-import edu.brown.lasvegas.lvfs.OrderedDictionary;
+import edu.brown.lasvegas.lvfs.DictionaryPredicate;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.data.RepartitionSummary;
+import edu.brown.lasvegas.qe.operator.ColumnArrayOperator;
+import edu.brown.lasvegas.qe.operator.ScanOperator;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
 
 /**
@@ -40,25 +42,18 @@ public final class BenchmarkTpchQ17PlanBTaskRunner extends BenchmarkTpchQ17TaskR
             assert (p_brandReader.getFileBundle().getTupleCount() == partTuples);
             assert (p_containerReader.getFileBundle().getTupleCount() == partTuples);
 
-            // first, check integer values that correspond to the given brand/container parameter.
-            // if these are null (no corresponding value), then we even don't have to read lineitem. no result.
-            Integer brandCompressed = ((OrderedDictionary<String, String[]>) p_brandReader.getDictionary()).compress(parameters.getBrand());
-            assert (p_brandReader.getFileBundle().getDictionaryBytesPerEntry() == 1); // brand column has only 50 distinct values
-            LOG.info("brand " + parameters.getBrand() + " corresponds to an integer value:" + brandCompressed);
-            if (brandCompressed == null) {
-                LOG.warn("brand " + parameters.getBrand() + " doesn't have corresponding entry in dictionary. no result.");
-                return 0;
-            }
-            
-            Integer containerCompressed = ((OrderedDictionary<String, String[]>) p_containerReader.getDictionary()).compress(parameters.getContainer());
-            LOG.info("container " + parameters.getContainer() + " corresponds to an integer value:" + containerCompressed);
-            if (containerCompressed == null) {
-                LOG.warn("container " + parameters.getContainer() + " doesn't have corresponding entry in dictionary. no result.");
+            // first, translate the brand/container parameters into predicates on dictionary codes.
+            // if either is empty (no corresponding value), then we even don't have to read lineitem. no result.
+            DictionaryPredicate[] predicates = translatePartPredicates(p_brandReader, p_containerReader);
+            if (predicates[0].isEmpty() || predicates[1].isEmpty()) {
+                LOG.warn("brand " + parameters.getBrand() + " or container " + parameters.getContainer() + " doesn't have corresponding entry in dictionary. no result.");
                 return 0;
             }
 
+            // the lineitem tuples are joined by hashing, so they don't have to be sorted after the merge
+            ColumnType[] lineitemTypes = new ColumnType[]{l_partkey.getType(), l_extendedprice.getType(), l_quantity.getType()};
             Object[] mergedData = RepartitionSummary.mergeRepartitionedFilesOnMemory(
-            		repartitionedFiles, context, partRange, new ColumnType[]{l_partkey.getType(), l_extendedprice.getType(), l_quantity.getType()}, 0);
+            		repartitionedFiles, context, partRange, lineitemTypes, null);
         	if (mergedData == null) {
         		LOG.warn("no repartitioned files for this part partition:" + partPartition);
         		return 0;
@@ -68,13 +63,16 @@ public final class BenchmarkTpchQ17PlanBTaskRunner extends BenchmarkTpchQ17TaskR
             LOG.info("lineitem partition tuple count=" + lineitemTuples);
             assert (ValueTraitsFactory.DOUBLE_TRAITS.length((double[]) mergedData[1]) == lineitemTuples);
             assert (ValueTraitsFactory.FLOAT_TRAITS.length((float[]) mergedData[2]) == lineitemTuples);
-            return processPartitionCore(
-                lineitemTuples, partTuples,
-                (int[]) mergedData[0], (double[]) mergedData[1], (float[]) mergedData[2],
+            int[] matchingPartKeys = findMatchingPartKeys(partTuples,
                 (TypedReader<Integer, int[]>) p_partkeyReader.getDataReader(),
-                (TypedReader<Byte, byte[]>) p_brandReader.getCompressedDataReader(), // without decompression
-                p_containerReader.getCompressedDataReader(), p_containerReader.getFileBundle().getDictionaryBytesPerEntry(), // without decompression
-                brandCompressed.byteValue(), containerCompressed.intValue());
+                p_brandReader.getCompressedDataReader(), predicates[0], // without decompression
+                p_containerReader.getCompressedDataReader(), predicates[1]);
+            if (matchingPartKeys.length == 0) {
+                LOG.info("no matching partkey. no result.");
+                return 0;
+            }
+            return joinLineitem(matchingPartKeys,
+                new ColumnArrayOperator(lineitemTypes, mergedData, lineitemTuples, ScanOperator.DEFAULT_BATCH_SIZE));
         } finally {
             p_partkeyReader.close();
             p_brandReader.close();
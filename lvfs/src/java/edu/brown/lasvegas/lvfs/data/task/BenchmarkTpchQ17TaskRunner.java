@@ -1,17 +1,33 @@
 package edu.brown.lasvegas.lvfs.data.task;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 
+import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.LVColumn;
 import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVTable;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.DictionaryPredicate;
+import edu.brown.lasvegas.lvfs.OrderedDictionary;
+import edu.brown.lasvegas.lvfs.TupleRange;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.data.DataTaskRunner;
+import edu.brown.lasvegas.lvfs.data.ParallelPartitionScanner;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.qe.operator.Aggregate;
+import edu.brown.lasvegas.qe.operator.ColumnArrayOperator;
+import edu.brown.lasvegas.qe.operator.Expression;
+import edu.brown.lasvegas.qe.operator.HashAggregateOperator;
+import edu.brown.lasvegas.qe.operator.Operator;
+import edu.brown.lasvegas.qe.operator.RadixHashJoinOperator;
+import edu.brown.lasvegas.qe.operator.ScanOperator;
+import edu.brown.lasvegas.qe.operator.VectorBatch;
+import edu.brown.lasvegas.tuple.TupleBuffer;
 
 /**
  * Base class for the two implementations (fast query plan and slower query plan)
@@ -28,18 +44,30 @@ public abstract class BenchmarkTpchQ17TaskRunner extends DataTaskRunner<Benchmar
     @Override
     protected final String[] runDataTask() throws Exception {
         prepareInputs ();
-        double totalSum = 0;
         long startTime = System.currentTimeMillis();
-        for (int i = 0; i < partPartitionCount; ++i) {
-            LOG.info("processing.. " + i + "/" + partPartitionCount);
-            totalSum += processPartition (i);
-        }
+        // part partitions are independent. each scan thread sums up into its own holder
+        double totalSum = scanPartitionsInParallel(partPartitionCount, new ParallelPartitionScanner.PartitionScan<double[]>() {
+            @Override
+            protected double[] createPartialResult() {
+                return new double[1];
+            }
+            @Override
+            protected void scan(int partition, TupleRange range, double[] partialResult) throws IOException {
+                LOG.info("processing.. " + partition + "/" + partPartitionCount);
+                partialResult[0] += processPartition (partition);
+            }
+            @Override
+            protected void merge(double[] result, double[] other) {
+                result[0] += other[0];
+            }
+        })[0];
         long endTime = System.currentTimeMillis();
         LOG.info("total processPartition() time: " + (endTime - startTime) + "ms");
         // a hack to make it easy. this return value should be a file path, but let's just return the query result as the string.
         return new String[]{String.valueOf (totalSum)};
     }
     
+    /** processes one part partition. called from multiple threads at the same time for different partitions. */
     protected abstract double processPartition (int partPartition) throws IOException;
     
     
@@ -48,7 +76,10 @@ public abstract class BenchmarkTpchQ17TaskRunner extends DataTaskRunner<Benchmar
         LVColumnFile file = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), column.getColumnId());
         assert (file != null);
         ColumnFileBundle fileBundle = new ColumnFileBundle(file);
-        return new ColumnFileReaderBundle(fileBundle, 0); // no buffering needed. we read them at once
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(fileBundle, 0, true); // we read them at once. memory-mapped read avoids copying them twice
+        reader.setBlockCache(context.blockCache);
+        reader.setBlockReadAhead(context.blockReadAhead);
+        return reader;
     }
 
     protected final void prepareInputs () throws Exception {
@@ -81,22 +112,55 @@ public abstract class BenchmarkTpchQ17TaskRunner extends DataTaskRunner<Benchmar
     }
     protected abstract void prepareInputsQ17 () throws Exception;
 
+    /**
+     * Translates the brand and container parameters into predicates on the dictionary codes.
+     * If either of them is empty (no corresponding entry in the dictionary), the query has no result.
+     */
+    @SuppressWarnings("unchecked")
+    protected final DictionaryPredicate[] translatePartPredicates (ColumnFileReaderBundle p_brandReader, ColumnFileReaderBundle p_containerReader) throws IOException {
+        DictionaryPredicate brandPredicate = DictionaryPredicate.equalTo((OrderedDictionary<String, String[]>) p_brandReader.getDictionary(), parameters.getBrand());
+        LOG.info("brand " + parameters.getBrand() + " corresponds to " + brandPredicate);
+        DictionaryPredicate containerPredicate = DictionaryPredicate.equalTo((OrderedDictionary<String, String[]>) p_containerReader.getDictionary(), parameters.getContainer());
+        LOG.info("container " + parameters.getContainer() + " corresponds to " + containerPredicate);
+        return new DictionaryPredicate[]{brandPredicate, containerPredicate};
+    }
+
+    /**
+     * Reads the part partition and returns the partkeys that match the given brand and container predicates,
+     * in the order of the part partition (ascending). The predicates are evaluated on the dictionary codes
+     * without decompression.
+     */
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    protected final double processPartitionCore (
-        final int lineitemTuples, final int partTuples,
-        int[] lparts, double[] prices, float[] quantities,
+    protected final int[] findMatchingPartKeys (
+        final int partTuples,
         TypedReader<Integer, int[]> p_partkeyFile,
-        TypedReader<Byte, byte[]> p_brandFile,
-        TypedReader p_containerFile, byte containerBytesPerEntry, // only container has variable types. byte/short/int depending on the size of dataset
-        final byte brandCompressed, final int containerCompressed) throws IOException {
+        TypedReader p_brandFile, DictionaryPredicate brandPredicate, // byte/short/int codes depending on the size of dataset
+        TypedReader p_containerFile, DictionaryPredicate containerPredicate) throws IOException {
 
         LOG.info("reading p_brandFile at once...");
-        byte[] brands = new byte[partTuples];
+        Object brands = p_brandFile.getValueTraits().createArray(partTuples);
         int readBrand = p_brandFile.readValues(brands, 0, partTuples);
         LOG.info("read.");
         p_brandFile.close();
         assert (readBrand == partTuples);
 
+        LOG.info("reading p_containerFile at once...");
+        Object containers = p_containerFile.getValueTraits().createArray(partTuples);
+        int containerRead = p_containerFile.readValues(containers, 0, partTuples);
+        LOG.info("read.");
+        p_containerFile.close();
+        assert (containerRead == partTuples);
+
+        // filter by brand and container
+        int[] selection = new int[partTuples];
+        int selected = brandPredicate.select(brands, 0, partTuples, selection);
+        selected = containerPredicate.refine(containers, selection, selected);
+        LOG.info(selected + " matching partkey in the part partition");
+        if (selected == 0) {
+            p_partkeyFile.close();
+            return new int[0];
+        }
+
         LOG.info("reading p_partkeyFile at once...");
         int[] pparts = new int[partTuples];
         int readPPart = p_partkeyFile.readValues(pparts, 0, partTuples);
@@ -104,70 +168,92 @@ public abstract class BenchmarkTpchQ17TaskRunner extends DataTaskRunner<Benchmar
         p_partkeyFile.close();
         assert (readPPart == partTuples);
 
-        LOG.info("reading p_containerFile at once...");
-        assert (containerBytesPerEntry == 1 || containerBytesPerEntry == 2 || containerBytesPerEntry == 4);
-        Object containers = p_containerFile.getValueTraits().createArray(partTuples);
-        int containerRead = p_containerFile.readValues(containers, 0, partTuples);
-        LOG.info("read.");
-        p_containerFile.close();
-        assert (containerRead == partTuples);
-        
-        int matchedPartKeyCount = 0;
-        int matchedLineitemCount = 0;
-        double sum = 0;
-        int lpartPos = 0;
-        for (int partIndex = 0; partIndex < partTuples; ++partIndex) {
-            // filter by brand and container
-            if (brands[partIndex] != brandCompressed) {
-                continue;
-            }
-            if (containerBytesPerEntry == 1) {
-                if (((byte[]) containers)[partIndex] != containerCompressed) {
-                    continue;
-                }
-            } else if (containerBytesPerEntry == 2) {
-                if (((short[]) containers)[partIndex] != containerCompressed) {
-                    continue;
+        int[] matchingPartKeys = new int[selected];
+        for (int i = 0; i < selected; ++i) {
+            matchingPartKeys[i] = pparts[selection[i]];
+        }
+        return matchingPartKeys;
+    }
+
+    /**
+     * Joins the matching partkeys with the lineitem tuples (l_partkey, l_extendedprice, l_quantity) and returns the sum of prices.
+     * The lineitem tuples can be in any order, either scanned from local files (plan A)
+     * or merged from repartitioned files on memory (plan B).
+     * The lineitem tuples that survive the semi-join are kept on memory because they are
+     * read twice, once to compute the average quantity of each partkey and once more to compare with it.
+     */
+    protected final double joinLineitem (int[] matchingPartKeys, Operator lineitem) throws IOException {
+        // lineitem LEFT SEMI JOIN (matching partkeys). the partkeys will be the build side
+        Operator semiJoin = new RadixHashJoinOperator(lineitem,
+            new ColumnArrayOperator(new ColumnType[]{ColumnType.INTEGER}, new Object[]{matchingPartKeys}, matchingPartKeys.length, ScanOperator.DEFAULT_BATCH_SIZE),
+            0, 0, RadixHashJoinOperator.JoinType.SEMI, ScanOperator.DEFAULT_BATCH_SIZE,
+            context.joinMemoryBytes / context.scanThreads, new LocalVirtualFile(context.localLvfsTmpDir));
+        int lineitemTuples = 0;
+        int[] lparts = new int[1 << 12];
+        double[] prices = new double[lparts.length];
+        float[] quantities = new float[lparts.length];
+        semiJoin.open();
+        try {
+            for (VectorBatch batch = semiJoin.next(); batch != null; batch = semiJoin.next()) {
+                int[] selection = batch.getSelection();
+                int[] batchParts = (int[]) batch.getColumn(0);
+                double[] batchPrices = (double[]) batch.getColumn(1);
+                float[] batchQuantities = (float[]) batch.getColumn(2);
+                int count = batch.size();
+                if (lineitemTuples + count > lparts.length) {
+                    int newLength = Math.max(lparts.length * 2, lineitemTuples + count);
+                    lparts = Arrays.copyOf(lparts, newLength);
+                    prices = Arrays.copyOf(prices, newLength);
+                    quantities = Arrays.copyOf(quantities, newLength);
                 }
-            } else {
-                assert (containerBytesPerEntry == 4);
-                if (((int[]) containers)[partIndex] != containerCompressed) {
-                    continue;
+                for (int i = 0; i < count; ++i) {
+                    int pos = selection == null ? i : selection[i];
+                    lparts[lineitemTuples] = batchParts[pos];
+                    prices[lineitemTuples] = batchPrices[pos];
+                    quantities[lineitemTuples] = batchQuantities[pos];
+                    ++lineitemTuples;
                 }
             }
-            
-            int partkey = pparts[partIndex];
-            ++matchedPartKeyCount;
-            if (LOG.isInfoEnabled() && matchedPartKeyCount % 100 == 0) {
-                LOG.info(matchedPartKeyCount + "th matching partkey=" + partkey + ", partIndex=" + partIndex + ", lpartPos=" + lpartPos + ". current sum=" + sum);
-            }
-            
-            // find the corresponding position in lineitem
-            for (; lpartPos < lineitemTuples && lparts[lpartPos] < partkey; ++lpartPos);
-            if (lpartPos == lineitemTuples || lparts[lpartPos] > partkey) {
-                continue;
-            }
-            
-            // for each partkey, first aggregate over lineitem to get the average quantity of the partkey
-            assert (lparts[lpartPos] == partkey);
-            double subQuantityTotal = 0;
-            int lpartEnd;
-            for (lpartEnd = lpartPos; lpartEnd < lineitemTuples && lparts[lpartEnd] == partkey; ++lpartEnd) {
-                subQuantityTotal += quantities[lpartEnd];
-            }
-            double thresholdQuantity = 0.2d * subQuantityTotal / (lpartEnd - lpartPos);
-            
-            // then, check if the quantity is below the threahold 
-            for (int i = lpartPos; i < lpartEnd; ++ i) {
-                if (quantities[i] < thresholdQuantity) {
-                    sum += prices[i] / 7.0d;
-                    ++matchedLineitemCount;
+        } finally {
+            semiJoin.close();
+        }
+        if (lineitemTuples == 0) {
+            LOG.info("read the partition. in total " + matchingPartKeys.length + " matching partkey and no joined lineitem tuples.");
+            return 0;
+        }
+
+        // (joined lineitem) JOIN (SELECT l_partkey, AVG(l_quantity) FROM (joined lineitem) GROUP BY l_partkey)
+        ColumnType[] lineitemTypes = lineitem.getColumnTypes();
+        Object[] joinedLineitem = new Object[]{lparts, prices, quantities};
+        Operator averages = new HashAggregateOperator(
+            new ColumnArrayOperator(lineitemTypes, joinedLineitem, lineitemTuples, ScanOperator.DEFAULT_BATCH_SIZE),
+            new int[]{0}, new Aggregate[]{Aggregate.avg(Expression.column(2, lineitemTypes[2]))}, ScanOperator.DEFAULT_BATCH_SIZE);
+        Operator join = new RadixHashJoinOperator(
+            new ColumnArrayOperator(lineitemTypes, joinedLineitem, lineitemTuples, ScanOperator.DEFAULT_BATCH_SIZE),
+            averages, 0, 0, RadixHashJoinOperator.JoinType.INNER, ScanOperator.DEFAULT_BATCH_SIZE);
+
+        // then, check if the quantity is below the threshold
+        double sum = 0;
+        int qualifiedLineitemCount = 0;
+        join.open();
+        try {
+            for (VectorBatch batch = join.next(); batch != null; batch = join.next()) {
+                TupleBuffer buffer = batch.getBuffer(); // INNER join outputs no selection vector
+                double[] batchPrices = buffer.getColumnBufferAsDouble(1);
+                float[] batchQuantities = buffer.getColumnBufferAsFloat(2);
+                double[] batchAverages = buffer.getColumnBufferAsDouble(4);
+                for (int i = 0; i < batch.size(); ++i) {
+                    if (batchQuantities[i] < 0.2d * batchAverages[i]) {
+                        sum += batchPrices[i] / 7.0d;
+                        ++qualifiedLineitemCount;
+                    }
                 }
             }
-            lpartPos = lpartEnd;
+        } finally {
+            join.close();
         }
-        
-        LOG.info("read the partition. in total " + matchedPartKeyCount + " matching partkey and " + matchedLineitemCount + " matching lineitem tuples. sum=" + sum);
+        LOG.info("read the partition. in total " + matchingPartKeys.length + " matching partkey, " + lineitemTuples
+            + " joined lineitem tuples and " + qualifiedLineitemCount + " matching lineitem tuples. sum=" + sum);
         return sum;
     }
 }
@@ -2,8 +2,10 @@ package edu.brown.lasvegas.lvfs.data.task;
 
 import java.io.IOException;
 
+import edu.brown.lasvegas.LVColumn;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.TaskType;
+import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ18JobController.Q18ResultRanking;
 
 /**
  * @see TaskType#BENCHMARK_TPCH_Q18_PLANA
@@ -19,14 +21,12 @@ public final class BenchmarkTpchQ18PlanATaskRunner extends BenchmarkTpchQ18TaskR
         }
     }
 
-    protected void processPartition (int partition) throws IOException {
+    protected void processPartition (int partition, Q18ResultRanking result) throws IOException {
     	LVReplicaPartition lineitemPartition = lineitemPartitions[partition];
-    	long[] lordkeys = (long[]) readAtOnce(lineitemPartition, l_orderkey);
-    	float[] quantities = (float[]) readAtOnce(lineitemPartition, l_quantity);
 
-        // unlike Q17 Plan A, we even don't have to merge partitions in multiple fractures.
+        // unlike Q17 Plan A, we even don't have to read partitions in multiple fractures.
     	// this is because lineitem and orders are 'co-fractured', naturally partitioned by orderkeys.
     	LVReplicaPartition ordersPartition = ordersPartitions[partition];
-    	processPartitionCore(ordersPartition, lordkeys, quantities);
+    	processPartitionCore(ordersPartition, scanLocalPartition(lineitemPartition, new LVColumn[]{l_orderkey, l_quantity}), result);
     }
 }
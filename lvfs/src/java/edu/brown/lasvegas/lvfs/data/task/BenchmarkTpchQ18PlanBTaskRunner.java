@@ -8,6 +8,9 @@ import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.TaskType;
 import edu.brown.lasvegas.lvfs.data.RepartitionSummary;
+import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ18JobController.Q18ResultRanking;
+import edu.brown.lasvegas.qe.operator.ColumnArrayOperator;
+import edu.brown.lasvegas.qe.operator.ScanOperator;
 
 /**
  * This one collects repartitioned files and then runs the query.
@@ -22,19 +25,22 @@ public final class BenchmarkTpchQ18PlanBTaskRunner extends BenchmarkTpchQ18TaskR
     }
 
     @Override
-    protected void processPartition (int partition) throws IOException {
+    protected void processPartition (int partition, Q18ResultRanking result) throws IOException {
     	LVReplicaPartition ordersPartition = ordersPartitions[partition];
     	int ordersRange = ordersPartition.getRange();
 
+        // the lineitem tuples are aggregated by hashing, so they don't have to be sorted after the merge
+        ColumnType[] lineitemTypes = new ColumnType[]{l_orderkey.getType(), l_quantity.getType()};
         Object[] mergedData = RepartitionSummary.mergeRepartitionedFilesOnMemory(
-        		repartitionedFiles, context, ordersRange, new ColumnType[]{l_orderkey.getType(), l_quantity.getType()}, 0);
+        		repartitionedFiles, context, ordersRange, lineitemTypes, null);
     	if (mergedData == null) {
     		LOG.warn("no repartitioned files for this part partition:" + ordersPartition);
     		return;
     	}
     	assert (mergedData.length == 2);
-    	long[] lordkeys = (long[]) mergedData[0];
-    	float[] quantities = (float[]) mergedData[1];
-    	processPartitionCore(ordersPartition, lordkeys, quantities);
+    	int lineitemTuples = ((long[]) mergedData[0]).length;
+    	assert (lineitemTuples == ((float[]) mergedData[1]).length);
+    	processPartitionCore(ordersPartition,
+    		new ColumnArrayOperator(lineitemTypes, mergedData, lineitemTuples, ScanOperator.DEFAULT_BATCH_SIZE), result);
     }
 }
@@ -7,20 +7,26 @@ import java.util.Random;
 import org.apache.log4j.Logger;
 
 import edu.brown.lasvegas.LVColumn;
-import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVTable;
-import edu.brown.lasvegas.lvfs.ColumnFileBundle;
-import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
-import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.TupleRange;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
 import edu.brown.lasvegas.lvfs.data.DataTaskRunner;
+import edu.brown.lasvegas.lvfs.data.ParallelPartitionScanner;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ18JobController.Q18Result;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ18JobController.Q18ResultRanking;
 import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
-import edu.brown.lasvegas.traits.ValueTraits;
-import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.qe.operator.Aggregate;
+import edu.brown.lasvegas.qe.operator.ColumnRangePredicate;
+import edu.brown.lasvegas.qe.operator.Expression;
+import edu.brown.lasvegas.qe.operator.FilterOperator;
+import edu.brown.lasvegas.qe.operator.HashAggregateOperator;
+import edu.brown.lasvegas.qe.operator.Operator;
+import edu.brown.lasvegas.qe.operator.RadixHashJoinOperator;
+import edu.brown.lasvegas.qe.operator.ScanOperator;
+import edu.brown.lasvegas.qe.operator.VectorBatch;
+import edu.brown.lasvegas.tuple.TupleBuffer;
 
 /**
  * Base class for the two implementations (fast query plan and slower query plan)
@@ -34,16 +40,26 @@ public abstract class BenchmarkTpchQ18TaskRunner extends DataTaskRunner<Benchmar
     protected int ordersPartitionCount;
     protected LVReplicaPartition ordersPartitions[];
     
-    private Q18ResultRanking result;
     @Override
     protected final String[] runDataTask() throws Exception {
         prepareInputs ();
-        result = new Q18ResultRanking();
         long startTime = System.currentTimeMillis();
-        for (int i = 0; i < ordersPartitionCount; ++i) {
-            LOG.info("processing.. " + i + "/" + ordersPartitionCount);
-            processPartition (i);
-        }
+        // each scan thread has its own sub-ranking. merging them keeps the top ones
+        Q18ResultRanking result = scanPartitionsInParallel(ordersPartitionCount, new ParallelPartitionScanner.PartitionScan<Q18ResultRanking>() {
+            @Override
+            protected Q18ResultRanking createPartialResult() {
+                return new Q18ResultRanking();
+            }
+            @Override
+            protected void scan(int partition, TupleRange range, Q18ResultRanking partialResult) throws IOException {
+                LOG.info("processing.. " + partition + "/" + ordersPartitionCount);
+                processPartition (partition, partialResult);
+            }
+            @Override
+            protected void merge(Q18ResultRanking result, Q18ResultRanking other) {
+                result.addAll(other);
+            }
+        });
         long endTime = System.currentTimeMillis();
         LOG.info("total processPartition() time: " + (endTime - startTime) + "ms");
         LOG.info("sub-ranking:" + result);
@@ -67,33 +83,11 @@ public abstract class BenchmarkTpchQ18TaskRunner extends DataTaskRunner<Benchmar
         return new String[]{subrankFile.getAbsolutePath()};
     }
     
-    protected abstract void processPartition (int partPartition) throws IOException;
-
-    // TODO this function should be somewhere in shared place
-    protected final ColumnFileReaderBundle getReader (LVReplicaPartition partition, LVColumn column) throws IOException {
-        assert (partition.getNodeId().intValue() == context.nodeId);
-        LVColumnFile file = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), column.getColumnId());
-        assert (file != null);
-        ColumnFileBundle fileBundle = new ColumnFileBundle(file);
-        return new ColumnFileReaderBundle(fileBundle, 0); // no buffering needed. we read them at once
-    }
-    
-    // TODO this function should be somewhere in shared place
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-	protected final Object readAtOnce (LVReplicaPartition partition, LVColumn column) throws IOException {
-    	ColumnFileReaderBundle reader = getReader(partition, column);
-
-    	int tupleCount = reader.getDataReader().getTotalTuples();
-    	LOG.info("reading " + column.getName() + " at once...");
-    	ValueTraits traits = ValueTraitsFactory.getInstance(column.getType());
-    	Object array = traits.createArray(tupleCount);
-        int read = ((TypedReader) reader.getDataReader()).readValues(array, 0, tupleCount);
-        LOG.info("read.");
-        reader.close();
-        assert (read == tupleCount);
-        
-        return array;
-    }
+    /**
+     * processes one orders partition and adds the qualifying orders to the given sub-ranking.
+     * called from multiple threads at the same time for different partitions.
+     */
+    protected abstract void processPartition (int partPartition, Q18ResultRanking result) throws IOException;
 
     protected final void prepareInputs () throws Exception {
         this.lineitem = context.metaRepo.getTable(parameters.getLineitemTableId());
@@ -125,62 +119,48 @@ public abstract class BenchmarkTpchQ18TaskRunner extends DataTaskRunner<Benchmar
     }
     protected abstract void prepareInputsQ18 () throws Exception;
 
-    protected final void processPartitionCore (
-    		LVReplicaPartition ordersPartition,
-    		long[] lordkeys, float[] quantities) throws IOException {
-    	final int lineitemTuples = lordkeys.length;
-    	assert (lineitemTuples == quantities.length);
-    	
-    	long[] oordkeys = (long[]) readAtOnce(ordersPartition, o_orderkey);
-    	int[] custkeys = (int[]) readAtOnce(ordersPartition, o_custkey);
-    	long[] dates = (long[]) readAtOnce(ordersPartition, o_orderdate);
-    	double[] prices = (double[]) readAtOnce(ordersPartition, o_totalprice);
-    	final int ordersTuples = oordkeys.length;
-    	assert (ordersTuples == custkeys.length);
-    	assert (ordersTuples == dates.length);
-    	assert (ordersTuples == prices.length);
-
+    /**
+     * Sums up the quantities of the lineitem tuples (l_orderkey, l_quantity) per orderkey and joins
+     * the orderkeys whose sum exceeds the threshold with the orders partition to add the qualifying orders to the sub-ranking.
+     * The lineitem tuples can be in any order, either scanned from local files (plan A)
+     * or merged from repartitioned files on memory (plan B).
+     */
+    protected final void processPartitionCore (LVReplicaPartition ordersPartition, Operator lineitem, Q18ResultRanking result) throws IOException {
+        VirtualFile spillFolder = new LocalVirtualFile(context.localLvfsTmpDir);
+        // SELECT l_orderkey, SUM(l_quantity) FROM lineitem GROUP BY l_orderkey HAVING SUM(l_quantity) > threshold
+        Operator quantityTotals = new FilterOperator(new HashAggregateOperator(lineitem, new int[]{0},
+            new Aggregate[]{Aggregate.sum(Expression.column(1, l_quantity.getType()))}, ScanOperator.DEFAULT_BATCH_SIZE,
+            context.aggregateMemoryBytes / context.scanThreads, spillFolder),
+            new ColumnRangePredicate(1, Math.nextUp(parameters.getQuantityThreshold()), null));
+        // orders JOIN (the above) ON o_orderkey=l_orderkey. the few qualifying orderkeys will be the build side
+        Operator join = new RadixHashJoinOperator(
+            scanLocalPartition(ordersPartition, new LVColumn[]{o_orderkey, o_custkey, o_orderdate, o_totalprice}),
+            quantityTotals, 0, 0, RadixHashJoinOperator.JoinType.INNER, ScanOperator.DEFAULT_BATCH_SIZE,
+            context.joinMemoryBytes / context.scanThreads, spillFolder);
         int matchedOrdKeyCount = 0;
-        int lineitemPos = 0;
-        for (int ordersIndex = 0; ordersIndex < ordersTuples; ++ordersIndex) {
-            // skip if this order will not be in the ranking anyway
-            long ordkey = oordkeys[ordersIndex];
-        	if (!willBeRanked(ordkey, dates[ordersIndex], prices[ordersIndex])) {
-        		continue;
-        	}
-        	
-            // find the corresponding position in lineitem
-            for (; lineitemPos < lineitemTuples && lordkeys[lineitemPos] < ordkey; ++lineitemPos);
-            if (lineitemPos == lineitemTuples || lordkeys[lineitemPos] > ordkey) {
-                continue;
-            }
-        	
-            // for each orderkey, first aggregate over lineitem to get the quantity sum
-            assert (lordkeys[lineitemPos] == ordkey);
-            double quantityTotal = 0;
-            int lordEnd;
-            for (lordEnd = lineitemPos; lordEnd < lineitemTuples && lordkeys[lordEnd] == ordkey; ++lordEnd) {
-                quantityTotal += quantities[lordEnd];
-            }
-            if (quantityTotal <= parameters.getQuantityThreshold()) {
-            	continue;
+        join.open();
+        try {
+            for (VectorBatch batch = join.next(); batch != null; batch = join.next()) {
+                TupleBuffer buffer = batch.getBuffer(); // INNER join outputs no selection vector
+                long[] ordkeys = buffer.getColumnBufferAsLong(0);
+                int[] custkeys = buffer.getColumnBufferAsInt(1);
+                long[] dates = buffer.getColumnBufferAsLong(2);
+                double[] prices = buffer.getColumnBufferAsDouble(3);
+                double[] sums = buffer.getColumnBufferAsDouble(5);
+                for (int i = 0; i < batch.size(); ++i) {
+                    if (result.willBeRanked(ordkeys[i], dates[i], prices[i])) {
+                        addRanking(result, custkeys[i], ordkeys[i], dates[i], prices[i], sums[i]);
+                    }
+                    ++matchedOrdKeyCount;
+                }
             }
-            addRanking(custkeys[ordersIndex], ordkey, dates[ordersIndex], prices[ordersIndex], quantityTotal);
-
-            ++matchedOrdKeyCount;
-            if (LOG.isInfoEnabled() && matchedOrdKeyCount % 100 == 0) {
-                LOG.info(matchedOrdKeyCount + "th matching ordkey=" + ordkey + ", oredersIndex=" + ordersIndex + ", quantityTotal=" + quantityTotal + ", lineitemPos=" + lineitemPos);
-            }
-            lineitemPos = lordEnd;
+        } finally {
+            join.close();
         }
-        
         LOG.info("read the partition. in total " + matchedOrdKeyCount + " matching order key");
     }
 
-    private boolean willBeRanked (long orderkey, long orderdate, double totalprice) {
-    	return result.willBeRanked(orderkey, orderdate, totalprice);
-    }
-    private void addRanking (int custkey, long orderkey, long orderdate, double totalprice, double sumquantity) {
+    private void addRanking (Q18ResultRanking result, int custkey, long orderkey, long orderdate, double totalprice, double sumquantity) {
     	Q18Result tuple = new Q18Result();
     	tuple.C_CUSTKEY = custkey;
     	tuple.O_ORDERKEY = orderkey;
@@ -8,16 +8,31 @@ import java.util.Random;
 import org.apache.log4j.Logger;
 
 import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.LVColumn;
 import edu.brown.lasvegas.LVColumnFile;
 import edu.brown.lasvegas.LVReplicaPartition;
 import edu.brown.lasvegas.LVTable;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.TypedRLEReader;
+import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.ValueRunBatch;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
 import edu.brown.lasvegas.lvfs.data.DataTaskRunner;
+import edu.brown.lasvegas.lvfs.data.ParallelPartitionScanner;
+import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ1JobController.Q1Result;
 import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ1JobController.Q1ResultSet;
 import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.qe.operator.Aggregate;
+import edu.brown.lasvegas.qe.operator.Expression;
+import edu.brown.lasvegas.qe.operator.HashAggregateOperator;
+import edu.brown.lasvegas.qe.operator.Operator;
+import edu.brown.lasvegas.qe.operator.ScanOperator;
+import edu.brown.lasvegas.qe.operator.VectorBatch;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
 import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
 import edu.brown.lasvegas.tuple.TupleBuffer;
 
@@ -36,17 +51,31 @@ public class BenchmarkTpchQ1TaskRunner extends DataTaskRunner<BenchmarkTpchQ1Tas
     private LVReplicaPartition[] partitions;
     private long thresholdShipdate;
     
-    private Q1ResultSet result;
-    private TupleBuffer buffer;
+    private ColumnFileBundle[][] partitionFiles;
     @Override
     protected final String[] runDataTask() throws Exception {
         prepareInputs ();
-        result = new Q1ResultSet();
         long startTime = System.currentTimeMillis();
-        for (int i = 0; i < partitions.length; ++i) {
-            LOG.info("processing.. " + i + "/" + partitions.length);
-            processPartition (i);
-        }
+        // each scan thread aggregates into its own result set, merged at the end
+        Q1ResultSet result = scanPartitionsInParallel(partitions.length, new ParallelPartitionScanner.PartitionScan<Q1Partial>() {
+            @Override
+            protected Q1Partial createPartialResult() {
+                return new Q1Partial();
+            }
+            @Override
+            protected void scan(int partition, TupleRange range, Q1Partial partialResult) throws IOException {
+                LOG.info("processing.. " + partition + "/" + partitions.length + (range == null ? "" : " " + range));
+                processPartition (partition, range, partialResult);
+            }
+            @Override
+            protected void merge(Q1Partial result, Q1Partial other) {
+                result.result.addAll(other.result);
+            }
+            @Override
+            protected int getTupleCount(int partition) {
+                return partitionFiles[partition][0].getTupleCount();
+            }
+        }).result;
         long endTime = System.currentTimeMillis();
         LOG.info("total processPartition() time: " + (endTime - startTime) + "ms");
         LOG.info("sub-result:" + result);
@@ -68,66 +97,217 @@ public class BenchmarkTpchQ1TaskRunner extends DataTaskRunner<BenchmarkTpchQ1Tas
         return new String[]{subresultFile.getAbsolutePath()};
     }
     
-    private void processPartition (int partitionIndex) throws IOException {
-        LVReplicaPartition partition = partitions[partitionIndex];
-        
-        
-        ColumnFileBundle[] columnFiles = new ColumnFileBundle[columns.length];
-        for (int i = 0; i < columns.length; ++i) {
-            LVColumnFile file = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), columns[i].getColumnId());
-            if (file == null) {
-                throw new IOException ("no column file in " + partition + " for column " + columns[i]);
+    /** result set of each scan thread. */
+    private static final class Q1Partial {
+        final Q1ResultSet result = new Q1ResultSet();
+    }
+
+    /**
+     * The aggregates of Q1, evaluated batch-at-a-time on the columns
+     * (returnflag, linestatus, quantity, extendedprice, discount, tax, shipdate).
+     */
+    private static Aggregate[] createAggregates () {
+        Expression discountedPrice = Expression.multiply(Expression.column(3, ColumnType.DOUBLE),
+            Expression.subtract(Expression.constant(1.0d), Expression.column(4, ColumnType.FLOAT)));
+        return new Aggregate[] {
+            Aggregate.sum(Expression.column(2, ColumnType.FLOAT)),
+            Aggregate.sum(Expression.column(3, ColumnType.DOUBLE)),
+            Aggregate.sum(discountedPrice),
+            Aggregate.sum(Expression.multiply(discountedPrice,
+                Expression.add(Expression.constant(1.0d), Expression.column(5, ColumnType.FLOAT)))),
+            Aggregate.sum(Expression.column(4, ColumnType.FLOAT)),
+            Aggregate.count(),
+        };
+    }
+
+    private void processPartition (int partitionIndex, TupleRange range, Q1Partial partial) throws IOException {
+        ColumnFileBundle[] columnFiles = partitionFiles[partitionIndex];
+        if (columnFiles[0].getCompressionType() == CompressionType.RLE && columnFiles[1].getCompressionType() == CompressionType.RLE) {
+            processPartitionRuns (columnFiles, range, partial);
+            return;
+        }
+        // the files are local and scanned sequentially. memory-mapped read avoids copying them twice
+        ColumnFileTupleReader readers = new ColumnFileTupleReader(columnFiles, 0, true, context.blockReadAhead, context.blockCache);
+        // evaluate the shipdate predicate first (skipping zones of tuples that are all shipped after the threshold)
+        // and read the other columns only for the qualifying tuples
+        readers.setFilter(6, null, thresholdShipdate);
+        if (range != null) {
+            readers.restrictToTuples(range.startTuple, range.endTuple);
+        }
+        // GROUP BY returnflag, linestatus. each of the parallel scans gets its share of the task's memory budget
+        Operator plan = new HashAggregateOperator(new ScanOperator(readers, ScanOperator.DEFAULT_BATCH_SIZE),
+            new int[]{0, 1}, createAggregates(), ScanOperator.DEFAULT_BATCH_SIZE,
+            context.aggregateMemoryBytes / context.scanThreads, new LocalVirtualFile(context.localLvfsTmpDir));
+        Q1ResultSet result = new Q1ResultSet();
+        long allCount = 0;
+        plan.open();
+        try {
+            for (VectorBatch batch = plan.next(); batch != null; batch = plan.next()) {
+                TupleBuffer buffer = batch.getBuffer();
+                String[] returnflag = buffer.getColumnBufferAsString(0);
+                String[] linestatus = buffer.getColumnBufferAsString(1);
+                double[] quantitySum = buffer.getColumnBufferAsDouble(2);
+                double[] priceSum = buffer.getColumnBufferAsDouble(3);
+                double[] discpriceSum = buffer.getColumnBufferAsDouble(4);
+                double[] chargeSum = buffer.getColumnBufferAsDouble(5);
+                double[] discountSum = buffer.getColumnBufferAsDouble(6);
+                long[] count = buffer.getColumnBufferAsLong(7);
+                for (int i = 0; i < batch.size(); ++i) {
+                    Q1Result group = new Q1Result();
+                    group.returnflag = returnflag[i];
+                    group.linestatus = linestatus[i];
+                    group.quantity_sum = quantitySum[i];
+                    group.price_sum = priceSum[i];
+                    group.discprice_sum = discpriceSum[i];
+                    group.charge_sum = chargeSum[i];
+                    group.discount_sum = discountSum[i];
+                    group.count = count[i];
+                    result.tuples.add(group);
+                    allCount += count[i];
+                }
             }
-            columnFiles[i] = new ColumnFileBundle(file);
+        } finally {
+            plan.close(); // also closes the readers
         }
-
-        long allCount = 0, droppedCount = 0;
-        ColumnFileTupleReader readers = new ColumnFileTupleReader(columnFiles, 1 << 22); // quite big buffer
-        while (true) {
-            buffer.resetCount();
-            int read = readers.nextBatch(buffer);
-            if (read < 0) {
-                break;
+        partial.result.addAll(result);
+        LOG.info("processed partition. qualifying tuples=" + allCount + " out of " + readers.getTupleCount());
+    }
+    
+    /**
+     * Processes a partition whose grouping columns (returnflag, linestatus) are both RLE-compressed,
+     * which is the case when the replica is sorted by them.
+     * The runs of the two columns are read without expanding them and are intersected into segments
+     * of tuples that belong to the same group. Each segment needs only one group lookup, and
+     * the measures are summed up in a tight loop over the segment.
+     */
+    @SuppressWarnings("unchecked")
+    private void processPartitionRuns (ColumnFileBundle[] columnFiles, TupleRange range, Q1Partial partial) throws IOException {
+        ColumnFileReaderBundle[] readers = new ColumnFileReaderBundle[columnFiles.length];
+        for (int i = 0; i < readers.length; ++i) {
+            readers[i] = new ColumnFileReaderBundle(columnFiles[i], 1 << 16, true);
+            readers[i].setBlockReadAhead(context.blockReadAhead);
+            readers[i].setBlockCache(context.blockCache);
+        }
+        Q1ResultSet result = new Q1ResultSet();
+        long allCount = 0;
+        int startTuple = range == null ? 0 : range.startTuple;
+        int endTuple = range == null ? columnFiles[0].getTupleCount() : range.endTuple;
+        try {
+            TypedRLEReader<String, String[]> returnflagReader = (TypedRLEReader<String, String[]>) readers[0].getRLEReader();
+            TypedRLEReader<String, String[]> linestatusReader = (TypedRLEReader<String, String[]>) readers[1].getRLEReader();
+            TypedReader<Float, float[]> quantityReader = (TypedReader<Float, float[]>) readers[2].getDataReader();
+            TypedReader<Double, double[]> priceReader = (TypedReader<Double, double[]>) readers[3].getDataReader();
+            TypedReader<Float, float[]> discountReader = (TypedReader<Float, float[]>) readers[4].getDataReader();
+            TypedReader<Float, float[]> taxReader = (TypedReader<Float, float[]>) readers[5].getDataReader();
+            TypedReader<Long, long[]> shipdateReader = (TypedReader<Long, long[]>) readers[6].getDataReader();
+            if (startTuple > 0) {
+                for (ColumnFileReaderBundle reader : readers) {
+                    reader.getDataReader().seekToTupleAbsolute(startTuple);
+                }
             }
-            String[] returnflag = buffer.getColumnBufferAsString(0);
-            String[] linestatus = buffer.getColumnBufferAsString(1);
-            float[] quantity = buffer.getColumnBufferAsFloat(2);
-            double[] price = buffer.getColumnBufferAsDouble(3);
-            float[] discount = buffer.getColumnBufferAsFloat(4);
-            float[] tax = buffer.getColumnBufferAsFloat(5);
-            long[] shipdate = buffer.getColumnBufferAsLong(6);
-            for (int i = 0; i < read; ++i) {
-                ++allCount;
-                if (shipdate[i] > thresholdShipdate) {
-                    ++droppedCount;
-                    continue;
+
+            final int batchSize = ScanOperator.DEFAULT_BATCH_SIZE;
+            // a run has at least one tuple, so the batches never get full before reading batchSize tuples
+            ValueRunBatch<String, String[]> returnflagRuns = new ValueRunBatch<String, String[]>(new VarcharValueTraits(), batchSize);
+            ValueRunBatch<String, String[]> linestatusRuns = new ValueRunBatch<String, String[]>(new VarcharValueTraits(), batchSize);
+            float[] quantities = new float[batchSize];
+            double[] prices = new double[batchSize];
+            float[] discounts = new float[batchSize];
+            float[] taxes = new float[batchSize];
+            long[] shipdates = new long[batchSize];
+            for (int baseTuple = startTuple; baseTuple < endTuple; baseTuple += batchSize) {
+                int len = Math.min(batchSize, endTuple - baseTuple);
+                returnflagRuns.resetCount();
+                linestatusRuns.resetCount();
+                returnflagReader.readRuns(returnflagRuns, len);
+                linestatusReader.readRuns(linestatusRuns, len);
+                if (returnflagRuns.getTupleCount() != len || linestatusRuns.getTupleCount() != len
+                    || quantityReader.readValues(quantities, 0, len) != len
+                    || priceReader.readValues(prices, 0, len) != len
+                    || discountReader.readValues(discounts, 0, len) != len
+                    || taxReader.readValues(taxes, 0, len) != len
+                    || shipdateReader.readValues(shipdates, 0, len) != len) {
+                    throw new IOException ("column files are not aligned at tuple " + baseTuple);
                 }
-                result.add(returnflag[i], linestatus[i], quantity[i], price[i], discount[i], tax[i]);
+                String[] returnflags = returnflagRuns.getValues();
+                int[] returnflagStarts = returnflagRuns.getStartTuples();
+                int[] returnflagLengths = returnflagRuns.getRunLengths();
+                String[] linestatuses = linestatusRuns.getValues();
+                int[] linestatusStarts = linestatusRuns.getStartTuples();
+                int[] linestatusLengths = linestatusRuns.getRunLengths();
+                int returnflagRun = 0, linestatusRun = 0;
+                for (int from = 0; from < len;) {
+                    int returnflagEnd = returnflagStarts[returnflagRun] + returnflagLengths[returnflagRun] - baseTuple;
+                    int linestatusEnd = linestatusStarts[linestatusRun] + linestatusLengths[linestatusRun] - baseTuple;
+                    int to = Math.min(returnflagEnd, linestatusEnd);
+                    double quantitySum = 0, priceSum = 0, discpriceSum = 0, chargeSum = 0, discountSum = 0;
+                    int count = 0;
+                    for (int i = from; i < to; ++i) {
+                        if (shipdates[i] > thresholdShipdate) {
+                            continue;
+                        }
+                        double discprice = prices[i] * (1.0d - discounts[i]);
+                        quantitySum += quantities[i];
+                        priceSum += prices[i];
+                        discpriceSum += discprice;
+                        chargeSum += discprice * (1.0d + taxes[i]);
+                        discountSum += discounts[i];
+                        ++count;
+                    }
+                    if (count > 0) {
+                        Q1Result group = result.findGroup(returnflags[returnflagRun], linestatuses[linestatusRun]);
+                        group.quantity_sum += quantitySum;
+                        group.price_sum += priceSum;
+                        group.discprice_sum += discpriceSum;
+                        group.charge_sum += chargeSum;
+                        group.discount_sum += discountSum;
+                        group.count += count;
+                        allCount += count;
+                    }
+                    if (returnflagEnd == to) {
+                        ++returnflagRun;
+                    }
+                    if (linestatusEnd == to) {
+                        ++linestatusRun;
+                    }
+                    from = to;
+                }
+            }
+        } finally {
+            for (ColumnFileReaderBundle reader : readers) {
+                reader.close();
             }
         }
-        LOG.info("processed partition. allCount=" + allCount + ", droppedCount=" + droppedCount);
+        partial.result.addAll(result);
+        LOG.info("processed partition by runs. qualifying tuples=" + allCount + " out of " + (endTuple - startTuple));
     }
-    
+
     protected final void prepareInputs () throws Exception {
         this.table = context.metaRepo.getTable(parameters.getTableId());
         assert (table != null);
         
         this.columns = new LVColumn[columnNames.length];
-        ColumnType[] types = new ColumnType[columnNames.length];
         for (int i = 0; i < columns.length; ++i) {
             columns[i] = context.metaRepo.getColumnByName(table.getTableId(), columnNames[i]);
             if (columns[i] == null) {
                 throw new IOException ("column not found:" + columnNames[i]);
             }
-            types[i] = columns[i].getType();
         }
 
         this.partitions = new LVReplicaPartition[parameters.getPartitionIds().length];
         for (int i = 0; i < partitions.length; ++i) {
             partitions[i] = context.metaRepo.getReplicaPartition(parameters.getPartitionIds()[i]);
         }
-        
-        this.buffer = new TupleBuffer(types, 1 << 18); // quite big buffer
+        this.partitionFiles = new ColumnFileBundle[partitions.length][columns.length];
+        for (int i = 0; i < partitions.length; ++i) {
+            for (int j = 0; j < columns.length; ++j) {
+                LVColumnFile file = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partitions[i].getPartitionId(), columns[j].getColumnId());
+                if (file == null) {
+                    throw new IOException ("no column file in " + partitions[i] + " for column " + columns[j]);
+                }
+                partitionFiles[i][j] = new ColumnFileBundle(file);
+            }
+        }
         this.thresholdShipdate = new GregorianCalendar(1998, 12 - 1, 1).getTimeInMillis() - (long) parameters.getDeltaDays() * 1000 * 60 * 60 * 24;
     }
 }
@@ -26,10 +26,33 @@ public final class DeletePartitionFilesTaskRunner extends DataTaskRunner<DeleteP
         prepareInputs ();
         LOG.info("deleting " + files.size() + " column files..");
         for (ColumnFileBundle file : files) {
+            if (context.blockCache != null) {
+                context.blockCache.invalidate(file.getColumnFileId());
+            }
+            if (file.getPaxFile() != null) {
+                // shared with the other columns in the column group
+                if (file.getPaxFile().exists()) {
+                    deleteAndLog(file.getPaxFile());
+                }
+                continue;
+            }
+            if (file.getSegmentFile() != null) {
+                // the other files are embedded in it
+                deleteAndLog(file.getSegmentFile());
+                continue;
+            }
             deleteAndLog(file.getDataFile());
             deleteAndLog(file.getDictionaryFile());
             deleteAndLog(file.getPositionFile());
             deleteAndLog(file.getValueFile());
+            if (file.getZoneMapFile() != null && file.getZoneMapFile().exists()) {
+                // files written before zone maps were introduced don't have it
+                deleteAndLog(file.getZoneMapFile());
+            }
+            if (file.getBloomFilterFile() != null && file.getBloomFilterFile().exists()) {
+                // Bloom filters exist only for chosen columns
+                deleteAndLog(file.getBloomFilterFile());
+            }
         }
         LOG.info("done!");
         return new String[0];
@@ -73,6 +73,8 @@ public final class LoadPartitionedTextFilesTaskRunner extends DataTaskRunner<Loa
     private VirtualFile tmpOutputFolder;
     private String[] unsortedFileTemporaryNames;
     private String[] sortedFileTemporaryNames;
+    /** whether to build a Bloom filter for each column. */
+    private boolean[] bloomFilterColumns;
     
     @Override
     protected String[] runDataTask() throws Exception {
@@ -124,6 +126,7 @@ public final class LoadPartitionedTextFilesTaskRunner extends DataTaskRunner<Loa
             }
             assert (sortColumn >= 0);
             PartitionRewriter rewriter = new PartitionRewriter(tmpOutputFolder, unsortedFiles, sortedFileTemporaryNames, finalCompressionTypes, sortColumn);
+            rewriter.setWriteBehind(context.writeBehind);
             finalFiles = rewriter.execute();
             // delete old (unsorted) files
             for (ColumnFileBundle oldFile : unsortedFiles) {
@@ -179,6 +182,9 @@ public final class LoadPartitionedTextFilesTaskRunner extends DataTaskRunner<Loa
                 // if we don't have to sort after this. the files will be the final output. So, let's calculate checksum at this point
                 boolean calculateChecksum = scheme.getSortColumnId() == null;
                 BufferedTupleWriter writer = new BufferedTupleWriter(reader, 1 << 16, tmpOutputFolder, temporaryCompressionTypes, unsortedFileTemporaryNames, calculateChecksum, callback);
+                writer.setWriteBehind(context.writeBehind);
+                // the choice is inherited when PartitionRewriter sorts the files
+                writer.setBloomFilterColumns(bloomFilterColumns);
                 try {
                     writer.appendAllTuples();
                     reader.close();
@@ -326,5 +332,13 @@ public final class LoadPartitionedTextFilesTaskRunner extends DataTaskRunner<Loa
             unsortedFileTemporaryNames[i] = "unsorted_" + i;
             sortedFileTemporaryNames[i] = "sorted_" + i;
         }
+
+        bloomFilterColumns = new boolean[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            if (scheme.isBloomFilterColumn(columns[i].getColumnId())) {
+                LOG.info("will build Bloom filter for column " + columns[i].getName());
+                bloomFilterColumns[i] = true;
+            }
+        }
     }
 }
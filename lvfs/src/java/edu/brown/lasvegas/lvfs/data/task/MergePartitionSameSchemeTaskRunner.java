@@ -97,6 +97,7 @@ public final class MergePartitionSameSchemeTaskRunner extends DataTaskRunner<Mer
             }
 
             PartitionMergerForSameScheme merger = new PartitionMergerForSameScheme(tmpOutputFolder, baseFiles, newFileTemporaryNames, columnTypes, compressions, sortColumnIndex);
+            merger.setWriteBehind(context.writeBehind);
             newFiles = merger.execute();
         } finally {
             for (LVDataClient client : dataClients.values()) {
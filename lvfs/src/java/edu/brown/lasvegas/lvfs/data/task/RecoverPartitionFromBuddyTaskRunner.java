@@ -124,7 +124,14 @@ public final class RecoverPartitionFromBuddyTaskRunner extends DataTaskRunner<Re
                 assert (sortColumn != null);
             }
 
+            // the buddy belongs to another replica scheme, which might choose other Bloom filter columns
+            boolean[] bloomFilterColumns = new boolean[columns.length];
+            for (int i = 0; i < columns.length; ++i) {
+                bloomFilterColumns[i] = scheme.isBloomFilterColumn(columns[i].getColumnId());
+            }
             PartitionRewriter rewriter = new PartitionRewriter(tmpOutputFolder, buddies, fileTemporaryNames, compressionTypes, sortColumn);
+            rewriter.setWriteBehind(context.writeBehind);
+            rewriter.setBloomFilterColumns(bloomFilterColumns);
             newFiles = rewriter.execute();
             context.metaRepo.updateReplicaPartitionNoReturn(partition.getPartitionId(), ReplicaPartitionStatus.OK, new IntWritable(partition.getNodeId()));
         } finally {
@@ -164,6 +164,7 @@ public class RecoverPartitionFromRepartitionedFilesTaskRunner extends DataTaskRu
     private ColumnFileBundle[] mergeFiles (LVReplicaPartition partition, ArrayList<ColumnFileBundle[]> copiedFiles) throws IOException {
         LOG.info("merging/sorting the merged files for " + partition.getRange() + "th partition");
         PartitionMergerGeneral merger = new PartitionMergerGeneral(copiedFiles.toArray(new ColumnFileBundle[0][]), columnTypes, sortColumnIndex);
+        merger.setWriteBehind(context.writeBehind);
         ColumnFileBundle[] merged = merger.executeOnDisk(tmpOutputFolder, fileTemporaryNames, compressionTypes);
         LOG.info("merged and sorted!");
         return merged;
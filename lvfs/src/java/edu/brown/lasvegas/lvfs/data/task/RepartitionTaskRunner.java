@@ -43,6 +43,7 @@ public final class RepartitionTaskRunner extends DataTaskRunner<RepartitionTaskP
         Repartitioner repartitioner = new Repartitioner(tmpOutputFolder, baseFiles, columnTypes, compressions,
         		partitioningColumnIndex, parameters.getPartitionRanges(),
         		parameters.getMaxFragments(), parameters.getReadCacheTuples(), parameters.getWriteBufferSizeTotal());
+        repartitioner.setWriteBehind(context.writeBehind);
         LVColumnFile[][] result = repartitioner.execute();
         LOG.info("done!");
         String summaryFilePath = RepartitionSummary.createSummaryFile(tmpOutputFolder, result);
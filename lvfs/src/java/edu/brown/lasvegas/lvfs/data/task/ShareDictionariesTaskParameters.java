@@ -0,0 +1,226 @@
+package edu.brown.lasvegas.lvfs.data.task;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import edu.brown.lasvegas.LVColumn;
+import edu.brown.lasvegas.LVReplica;
+import edu.brown.lasvegas.LVReplicaPartition;
+import edu.brown.lasvegas.LVTask;
+import edu.brown.lasvegas.lvfs.data.DataTaskParameters;
+import edu.brown.lasvegas.util.DataInputOutputUtil;
+
+/**
+ * Parameters for {@link ShareDictionariesTaskRunner}.
+ */
+public final class ShareDictionariesTaskParameters extends DataTaskParameters {
+    public ShareDictionariesTaskParameters() {
+        super();
+    }
+    public ShareDictionariesTaskParameters(byte[] serializedParameters) throws IOException {
+        super(serializedParameters);
+    }
+    public ShareDictionariesTaskParameters(LVTask task) throws IOException {
+        super(task);
+    }
+
+    /**
+     * ID of the replica ({@link LVReplica}) whose partitions will share dictionaries.
+     */
+    private int replicaId;
+
+    /**
+     * ID of the replica ({@link LVReplica}) of a previous fracture in the same replica scheme
+     * whose shared dictionaries are extended. -1 if there is no such replica.
+     */
+    private int baseReplicaId = -1;
+
+    /**
+     * ID of the partitions ({@link LVReplicaPartition}) to be re-coded at this data node.
+     */
+    private int[] partitionIds;
+
+    /**
+     * ID of the columns ({@link LVColumn}) whose dictionaries are shared.
+     */
+    private int[] columnIds;
+
+    /**
+     * Whether this task is in the second phase.
+     * In the first phase, only one task per replica runs, in the merger node. It merges the dictionaries
+     * of all partitions and saves the shared dictionary in the merger node.
+     * In the second phase, the task re-codes the partitions in this node with the shared dictionary,
+     * which is fetched from the merger node if this node is not the merger.
+     * The second phase starts after the first phase finishes, so no node reads the dictionary
+     * of a partition while it is being re-coded.
+     */
+    private boolean recode;
+
+    /**
+     * ID of the data node that merges the dictionaries in the first phase and provides the shared dictionary
+     * to the other nodes in the second phase.
+     */
+    private int mergerNodeId = -1;
+
+    /**
+     * Absolute path of the folder in the merger node that contains the shared dictionaries.
+     * Only used in the second phase. This is the output of the task in the first phase.
+     */
+    private String sharedDictionaryFolder = "";
+
+    /**
+     * @see org.apache.hadoop.io.Writable#write(java.io.DataOutput)
+     */
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(replicaId);
+        out.writeInt(baseReplicaId);
+        DataInputOutputUtil.writeIntArray(out, partitionIds);
+        DataInputOutputUtil.writeIntArray(out, columnIds);
+        out.writeBoolean(recode);
+        out.writeInt(mergerNodeId);
+        out.writeUTF(sharedDictionaryFolder);
+    }
+
+    /**
+     * @see org.apache.hadoop.io.Writable#readFields(java.io.DataInput)
+     */
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        replicaId = in.readInt();
+        baseReplicaId = in.readInt();
+        partitionIds = DataInputOutputUtil.readIntArray(in);
+        columnIds = DataInputOutputUtil.readIntArray(in);
+        recode = in.readBoolean();
+        mergerNodeId = in.readInt();
+        sharedDictionaryFolder = in.readUTF();
+    }
+
+// auto-generated getters/setters (comments by JAutodoc)
+    /**
+     * Gets the iD of the replica ({@link LVReplica}) whose partitions will share dictionaries.
+     *
+     * @return the iD of the replica ({@link LVReplica}) whose partitions will share dictionaries
+     */
+    public int getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * Sets the iD of the replica ({@link LVReplica}) whose partitions will share dictionaries.
+     *
+     * @param replicaId the new iD of the replica ({@link LVReplica}) whose partitions will share dictionaries
+     */
+    public void setReplicaId(int replicaId) {
+        this.replicaId = replicaId;
+    }
+
+    /**
+     * Gets the iD of the replica ({@link LVReplica}) of a previous fracture whose shared dictionaries are extended.
+     *
+     * @return the iD of the replica of a previous fracture. -1 if there is no such replica
+     */
+    public int getBaseReplicaId() {
+        return baseReplicaId;
+    }
+
+    /**
+     * Sets the iD of the replica ({@link LVReplica}) of a previous fracture whose shared dictionaries are extended.
+     *
+     * @param baseReplicaId the new iD of the replica of a previous fracture. -1 if there is no such replica
+     */
+    public void setBaseReplicaId(int baseReplicaId) {
+        this.baseReplicaId = baseReplicaId;
+    }
+
+    /**
+     * Gets the iD of the partitions ({@link LVReplicaPartition}) to be re-coded at this data node.
+     *
+     * @return the iD of the partitions ({@link LVReplicaPartition}) to be re-coded at this data node
+     */
+    public int[] getPartitionIds() {
+        return partitionIds;
+    }
+
+    /**
+     * Sets the iD of the partitions ({@link LVReplicaPartition}) to be re-coded at this data node.
+     *
+     * @param partitionIds the new iD of the partitions ({@link LVReplicaPartition}) to be re-coded at this data node
+     */
+    public void setPartitionIds(int[] partitionIds) {
+        this.partitionIds = partitionIds;
+    }
+
+    /**
+     * Gets the iD of the columns ({@link LVColumn}) whose dictionaries are shared.
+     *
+     * @return the iD of the columns ({@link LVColumn}) whose dictionaries are shared
+     */
+    public int[] getColumnIds() {
+        return columnIds;
+    }
+
+    /**
+     * Sets the iD of the columns ({@link LVColumn}) whose dictionaries are shared.
+     *
+     * @param columnIds the new iD of the columns ({@link LVColumn}) whose dictionaries are shared
+     */
+    public void setColumnIds(int[] columnIds) {
+        this.columnIds = columnIds;
+    }
+
+    /**
+     * Gets whether this task is in the second phase, which re-codes the partitions with the saved shared dictionary.
+     *
+     * @return whether this task is in the second phase
+     */
+    public boolean isRecode() {
+        return recode;
+    }
+
+    /**
+     * Sets whether this task is in the second phase, which re-codes the partitions with the saved shared dictionary.
+     *
+     * @param recode whether this task is in the second phase
+     */
+    public void setRecode(boolean recode) {
+        this.recode = recode;
+    }
+
+    /**
+     * Gets the ID of the data node that merges the dictionaries and provides the shared dictionary.
+     *
+     * @return the ID of the merger node
+     */
+    public int getMergerNodeId() {
+        return mergerNodeId;
+    }
+
+    /**
+     * Sets the ID of the data node that merges the dictionaries and provides the shared dictionary.
+     *
+     * @param mergerNodeId the new ID of the merger node
+     */
+    public void setMergerNodeId(int mergerNodeId) {
+        this.mergerNodeId = mergerNodeId;
+    }
+
+    /**
+     * Gets the absolute path of the folder in the merger node that contains the shared dictionaries.
+     *
+     * @return the absolute path of the folder in the merger node. only used in the second phase
+     */
+    public String getSharedDictionaryFolder() {
+        return sharedDictionaryFolder;
+    }
+
+    /**
+     * Sets the absolute path of the folder in the merger node that contains the shared dictionaries.
+     *
+     * @param sharedDictionaryFolder the new absolute path of the folder in the merger node
+     */
+    public void setSharedDictionaryFolder(String sharedDictionaryFolder) {
+        this.sharedDictionaryFolder = sharedDictionaryFolder;
+    }
+}
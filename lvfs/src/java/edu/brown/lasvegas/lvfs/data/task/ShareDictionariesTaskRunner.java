@@ -0,0 +1,329 @@
+package edu.brown.lasvegas.lvfs.data.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.JobType;
+import edu.brown.lasvegas.LVColumn;
+import edu.brown.lasvegas.LVColumnFile;
+import edu.brown.lasvegas.LVRackNode;
+import edu.brown.lasvegas.LVReplica;
+import edu.brown.lasvegas.LVReplicaPartition;
+import edu.brown.lasvegas.ReplicaPartitionStatus;
+import edu.brown.lasvegas.TaskType;
+import edu.brown.lasvegas.client.DataNodeFile;
+import edu.brown.lasvegas.client.LVDataClient;
+import edu.brown.lasvegas.lvfs.ColumnFileBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.LVFSFileType;
+import edu.brown.lasvegas.lvfs.OrderedDictionary;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.data.DataTaskRunner;
+import edu.brown.lasvegas.lvfs.data.DataTaskUtil;
+import edu.brown.lasvegas.lvfs.data.DictionaryUnifier;
+import edu.brown.lasvegas.lvfs.local.LocalDictFile;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.util.VirtualFileUtil;
+
+/**
+ * Sub task of {@link JobType#IMPORT_FRACTURE}, which runs in two phases.
+ * In the first phase, only the merger node of the replica runs this task. It collects the dictionaries
+ * of the given columns from all partitions of the replica (and the shared dictionary of the previous fracture, if any),
+ * merges them one by one into one shared dictionary ({@link DictionaryUnifier}) and saves it in a temporary folder.
+ * Thus the dictionaries are read once per replica, and only two of them are in memory at a time.
+ * In the second phase, which starts after the first phase finishes, every node fetches the shared dictionary
+ * from the merger node and re-codes the partitions in the node with it. Thus, no node reads a dictionary
+ * that is being replaced by another node.
+ * The folder in the merger node is deleted by the job controller after the second phase.
+ * @see TaskType#SHARE_DICTIONARIES
+ * @see ShareDictionariesTaskParameters#isRecode()
+ */
+public final class ShareDictionariesTaskRunner extends DataTaskRunner<ShareDictionariesTaskParameters> {
+    private static Logger LOG = Logger.getLogger(ShareDictionariesTaskRunner.class);
+
+    private LVReplica replica;
+    private LVColumn[] columns;
+    /** all non-empty partitions of the replica, ordered by partition ID. only used in the first phase. */
+    private LVReplicaPartition[] allPartitions;
+    /** the partition of the base replica to provide the previous shared dictionary. null if none. */
+    private LVReplicaPartition basePartition;
+    /** partitions to re-code in this node. */
+    private LVReplicaPartition[] partitions;
+    /** key= nodeID. keep this until we disconnect from data nodes. */
+    private Map<Integer, LVDataClient> dataClients;
+    /** whether this node merges the dictionaries and provides the shared dictionary to other nodes. */
+    private boolean merger;
+
+    /** the folder to save the shared dictionaries. in the second phase of non-merger nodes, the fetched copies. */
+    private VirtualFile sharedDictionaryFolder;
+    private VirtualFile tmpOutputFolder;
+
+    @Override
+    protected String[] runDataTask() throws Exception {
+        if (parameters.getPartitionIds().length == 0 || parameters.getColumnIds().length == 0) {
+            LOG.warn("no inputs for this node??");
+            return new String[0];
+        }
+        dataClients = new HashMap<Integer, LVDataClient>();
+        try {
+            prepareInputs();
+            if (parameters.isRecode()) {
+                try {
+                    for (int i = 0; i < columns.length; ++i) {
+                        checkTaskCanceled();
+                        recodePartitions(columns[i]);
+                        context.metaRepo.updateTaskNoReturn(task.getTaskId(), null, new DoubleWritable((i + 1.0d) / columns.length), null, null);
+                    }
+                } finally {
+                    tmpOutputFolder.delete(true);
+                    if (!merger) {
+                        // only the fetched copies. the original in the merger node might be still read by other nodes
+                        sharedDictionaryFolder.delete(true);
+                    }
+                }
+                return new String[0];
+            } else {
+                boolean succeeded = false;
+                try {
+                    for (int i = 0; i < columns.length; ++i) {
+                        checkTaskCanceled();
+                        mergeDictionaries(columns[i]);
+                        context.metaRepo.updateTaskNoReturn(task.getTaskId(), null, new DoubleWritable((i + 1.0d) / columns.length), null, null);
+                    }
+                    succeeded = true;
+                } finally {
+                    if (!succeeded) {
+                        // the second phase won't run
+                        sharedDictionaryFolder.delete(true);
+                    }
+                }
+                // the second phase fetches the shared dictionaries from here
+                return new String[]{sharedDictionaryFolder.getAbsolutePath()};
+            }
+        } finally {
+            for (LVDataClient client : dataClients.values()) {
+                client.release();
+            }
+            dataClients.clear();
+        }
+    }
+
+    /** returns the file to save the shared dictionary of the column. */
+    private VirtualFile getSharedDictionaryFile (LVColumn column) {
+        return sharedDictionaryFolder.getChildFile(LVFSFileType.DICTIONARY_FILE.appendExtension("shared_" + column.getColumnId()));
+    }
+
+    /** the first phase. */
+    private void mergeDictionaries (LVColumn column) throws Exception {
+        LOG.info("merging the dictionaries of " + column + " in " + replica + "...");
+        // merge them one by one so that we don't hold the dictionaries of all partitions at once.
+        // the merged dictionary is the sorted union of them, so the result is the same
+        OrderedDictionary<?, ?> shared = null;
+        if (basePartition != null) {
+            shared = loadDictionary(basePartition, column);
+        }
+        for (LVReplicaPartition partition : allPartitions) {
+            checkTaskCanceled();
+            OrderedDictionary<?, ?> dict = loadDictionary(partition, column);
+            if (dict == null) {
+                LOG.warn("the column isn't dictionary-compressed. skipped sharing dictionaries: " + column);
+                return;
+            }
+            if (shared == null) {
+                shared = dict;
+            } else {
+                shared = new DictionaryUnifier(column.getType(), new OrderedDictionary<?, ?>[]{shared, dict}).getSharedDictionary();
+            }
+        }
+        if (shared == null) {
+            return;
+        }
+        shared.writeToFile(getSharedDictionaryFile(column));
+    }
+
+    /**
+     * Copies the shared dictionary of the column from the merger node to this node.
+     * @return the local file of the shared dictionary, which doesn't exist if the merger didn't save one
+     */
+    private VirtualFile fetchSharedDictionary (LVColumn column) throws IOException {
+        VirtualFile localFile = getSharedDictionaryFile(column);
+        if (merger) {
+            return localFile;
+        }
+        LVDataClient client = getDataClient(parameters.getMergerNodeId());
+        VirtualFile remoteFile = new DataNodeFile(client.getChannel(), new File(parameters.getSharedDictionaryFolder(), localFile.getName()).getPath());
+        if (remoteFile.exists()) {
+            VirtualFileUtil.copyFile(remoteFile, localFile);
+        }
+        return localFile;
+    }
+
+    /** the second phase. */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void recodePartitions (LVColumn column) throws Exception {
+        VirtualFile sharedDictionaryFile = fetchSharedDictionary(column);
+        if (!sharedDictionaryFile.exists()) {
+            LOG.warn("no shared dictionary was saved for " + column + ". skipped re-coding");
+            return;
+        }
+        LOG.info("re-coding the partitions of " + column + " in " + replica + "...");
+        OrderedDictionary<?, ?> sharedDictionary = new LocalDictFile(sharedDictionaryFile, column.getType());
+        for (LVReplicaPartition partition : partitions) {
+            checkTaskCanceled();
+            LVColumnFile columnFile = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), column.getColumnId());
+            OrderedDictionary<?, ?> dict = loadDictionary(partition, column);
+            if (dict == null) {
+                throw new IOException ("the column file isn't dictionary-compressed: " + column + " in " + partition);
+            }
+            // the shared dictionary is a superset of the partition's dictionary, so unifying them gives the shared dictionary itself
+            DictionaryUnifier unifier = new DictionaryUnifier(column.getType(), new OrderedDictionary<?, ?>[]{sharedDictionary, dict});
+            assert (unifier.isIdentical(0));
+            if (unifier.isIdentical(1)) {
+                LOG.info("already has the shared dictionary: " + partition);
+                continue;
+            }
+            ColumnFileBundle oldFile = new ColumnFileBundle(columnFile);
+            ColumnFileBundle newFile = unifier.recode(1, oldFile, tmpOutputFolder, "shared_" + column.getColumnId() + "_" + partition.getPartitionId());
+            DataTaskUtil.registerTemporaryFilesAsColumnFiles(context, partition, new LVColumn[]{column}, new ColumnFileBundle[]{newFile});
+            oldFile.deleteFiles();
+        }
+    }
+
+    /**
+     * Reads the dictionary of the column file in the given partition, which might be in a remote node.
+     * In the first phase no node replaces column files, so the column file stays as it is.
+     * In the second phase only the partitions in this node are read.
+     * @return the dictionary. null if the column file is not dictionary-compressed
+     */
+    private OrderedDictionary<?, ?> loadDictionary (LVReplicaPartition partition, LVColumn column) throws IOException {
+        LVColumnFile columnFile = context.metaRepo.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), column.getColumnId());
+        if (columnFile == null) {
+            throw new IOException ("the column file doesn't exist: " + column + " in " + partition);
+        }
+        if (columnFile.getCompressionType() != CompressionType.DICTIONARY) {
+            return null;
+        }
+        ColumnFileBundle file;
+        int nodeId = partition.getNodeId();
+        if (nodeId == context.nodeId) {
+            file = new ColumnFileBundle(columnFile);
+        } else {
+            file = new ColumnFileBundle(columnFile, getDataClient(nodeId).getChannel());
+        }
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            return reader.getDictionary();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private LVDataClient getDataClient (int nodeId) throws IOException {
+        LVDataClient client = dataClients.get(nodeId);
+        if (client == null) {
+            LVRackNode node = context.metaRepo.getRackNode(nodeId);
+            if (node == null) {
+                throw new IOException ("the node ID (" + nodeId + ") doesn't exist");
+            }
+            client = new LVDataClient(context.conf, node.getAddress());
+            dataClients.put(nodeId, client);
+        }
+        return client;
+    }
+
+    private void prepareInputs () throws Exception {
+        replica = context.metaRepo.getReplica(parameters.getReplicaId());
+        if (replica == null) {
+            throw new IOException("this replica ID doesn't exist:" + parameters.getReplicaId());
+        }
+        columns = new LVColumn[parameters.getColumnIds().length];
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i] = context.metaRepo.getColumn(parameters.getColumnIds()[i]);
+            if (columns[i] == null) {
+                throw new IOException("this column ID doesn't exist:" + parameters.getColumnIds()[i]);
+            }
+        }
+        merger = parameters.getMergerNodeId() == context.nodeId;
+        if (!parameters.isRecode()) {
+            if (!merger) {
+                throw new IOException ("this node is not the merger node (" + parameters.getMergerNodeId() + ") of " + replica);
+            }
+            allPartitions = getNonEmptyPartitions(replica.getReplicaId());
+            if (parameters.getBaseReplicaId() >= 0) {
+                LVReplicaPartition[] baseReplicaPartitions = getNonEmptyPartitions(parameters.getBaseReplicaId());
+                // all partitions of the base replica have the same shared dictionary. any of them will do
+                basePartition = baseReplicaPartitions.length == 0 ? null : baseReplicaPartitions[0];
+            }
+        }
+
+        partitions = new LVReplicaPartition[parameters.getPartitionIds().length];
+        for (int i = 0; i < partitions.length; ++i) {
+            int partitionId = parameters.getPartitionIds()[i];
+            LVReplicaPartition partition = context.metaRepo.getReplicaPartition(partitionId);
+            if (partition == null) {
+                throw new IOException("this replica partition ID doesn't exist:" + partitionId);
+            }
+            if (partition.getReplicaId() != replica.getReplicaId()) {
+                throw new IOException("the replica partition doesn't belong to:" + replica);
+            }
+            if (partition.getStatus() != ReplicaPartitionStatus.OK || partition.getNodeId() == null || partition.getNodeId() != context.nodeId) {
+                throw new IOException("the replica partition is not ready in this node:" + partition);
+            }
+            partitions[i] = partition;
+        }
+
+        VirtualFile tmpFolder = new LocalVirtualFile (context.localLvfsTmpDir);
+        if (parameters.isRecode()) {
+            if (merger) {
+                // the folder saved in the first phase
+                sharedDictionaryFolder = new LocalVirtualFile(parameters.getSharedDictionaryFolder());
+                if (!sharedDictionaryFolder.exists()) {
+                    throw new IOException ("the shared dictionaries haven't been saved in this node: " + sharedDictionaryFolder.getAbsolutePath());
+                }
+            } else {
+                sharedDictionaryFolder = createTemporaryFolder(tmpFolder, "shared_dict_" + task.getJobId() + "_" + replica.getReplicaId() + "_");
+            }
+            tmpOutputFolder = createTemporaryFolder(tmpFolder, "dict_tmp_");
+        } else {
+            sharedDictionaryFolder = createTemporaryFolder(tmpFolder, "shared_dict_" + task.getJobId() + "_" + replica.getReplicaId() + "_");
+        }
+    }
+
+    private static VirtualFile createTemporaryFolder (VirtualFile tmpFolder, String prefix) throws IOException {
+        VirtualFile folder = tmpFolder.getChildFile(prefix + Math.abs(new Random(System.nanoTime()).nextInt()));
+        folder.mkdirs();
+        if (!folder.exists()) {
+            throw new IOException ("failed to create a temporary output folder: " + folder.getAbsolutePath());
+        }
+        return folder;
+    }
+
+    /** returns the partitions that have column files, ordered by partition ID so that all nodes see the same order. */
+    private LVReplicaPartition[] getNonEmptyPartitions (int replicaId) throws IOException {
+        List<LVReplicaPartition> list = new ArrayList<LVReplicaPartition>();
+        for (LVReplicaPartition partition : context.metaRepo.getAllReplicaPartitionsByReplicaId(replicaId)) {
+            if (partition.getStatus() == ReplicaPartitionStatus.OK && partition.getNodeId() != null) {
+                list.add(partition);
+            }
+        }
+        LVReplicaPartition[] array = list.toArray(new LVReplicaPartition[0]);
+        Arrays.sort(array, new Comparator<LVReplicaPartition>() {
+            @Override
+            public int compare(LVReplicaPartition o1, LVReplicaPartition o2) {
+                return o1.getPartitionId() - o2.getPartitionId();
+            }
+        });
+        return array;
+    }
+}
@@ -9,6 +9,7 @@ import org.apache.hadoop.fs.Path;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.VirtualFileInputStream;
 import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
 
 /**
  * Implementation of VirtualFile that wraps HDFS.
@@ -46,6 +47,11 @@ public final class HdfsVirtualFile implements VirtualFile {
             hdfs.create(path, true, OUTPUT_BUFFER_SIZE, DEFAULT_REPLICATION_FACTOR, DEFAULT_BLOCK_SIZE));
     }
 
+    @Override
+    public VirtualFilePositionalInput getPositionalInput() throws IOException {
+        return new HdfsVirtualFilePositionalInput(hdfs.open(path, INPUT_BUFFER_SIZE), length());
+    }
+
     @Override
     public long length() throws IOException {
         return hdfs.getFileStatus(path).getLen();
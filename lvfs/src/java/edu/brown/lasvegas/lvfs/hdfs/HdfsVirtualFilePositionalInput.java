@@ -0,0 +1,35 @@
+package edu.brown.lasvegas.lvfs.hdfs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
+
+/**
+ * An implementation of VirtualFilePositionalInput that delegates to the positioned read of HDFS's FSDataInputStream.
+ */
+public final class HdfsVirtualFilePositionalInput extends VirtualFilePositionalInput {
+    private final FSDataInputStream stream;
+    private final long length;
+    public HdfsVirtualFilePositionalInput(FSDataInputStream stream, long length) {
+        this.stream = stream;
+        this.length = length;
+    }
+
+    @Override
+    public int read(long position, byte[] buf, int off, int len) throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        return stream.read(position, buf, off, len);
+    }
+    @Override
+    public long length() throws IOException {
+        return length;
+    }
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
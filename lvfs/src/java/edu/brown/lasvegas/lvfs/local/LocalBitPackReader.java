@@ -0,0 +1,229 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.lvfs.RawValueReader;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.SmallintValueTraits;
+import edu.brown.lasvegas.traits.TinyintValueTraits;
+
+/**
+ * Reader implementation of bit-packed integer columns.
+ * <p>For the file format, see {@link LocalBitPackWriter}. As every block has the same number
+ * of values, seeking to an arbitrary tuple needs to decode only the block containing it.</p>
+ * @param <T> Value type (e.g., Integer)
+ * @param <AT> Array type (e.g., int[]).
+ */
+public final class LocalBitPackReader<T extends Number & Comparable<T>, AT> extends LocalTypedReaderBase<T, AT> {
+    private static Logger LOG = Logger.getLogger(LocalBitPackReader.class);
+
+    /** Constructs an instance for 1-byte fixed length integer values. */
+    public static LocalBitPackReader<Byte, byte[]> getInstanceTinyint(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackReader<Byte, byte[]>(rawFile, new TinyintValueTraits());
+    }
+    /** Constructs an instance for 2-byte fixed length integer values. */
+    public static LocalBitPackReader<Short, short[]> getInstanceSmallint(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackReader<Short, short[]>(rawFile, new SmallintValueTraits());
+    }
+    /** Constructs an instance for 4-byte fixed length integer values. */
+    public static LocalBitPackReader<Integer, int[]> getInstanceInteger(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackReader<Integer, int[]>(rawFile, new IntegerValueTraits());
+    }
+    /** Constructs an instance for 8-byte fixed length integer values (also date/time values). */
+    public static LocalBitPackReader<Long, long[]> getInstanceBigint(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackReader<Long, long[]>(rawFile, new BigintValueTraits());
+    }
+
+    private final LocalBitPacking.ArrayAdapter<T, AT> adapter;
+    /** number of values in each block (except the last block). */
+    private final int blockSize;
+    /** number of blocks in this file. */
+    private final int blockCount;
+    /** number of all tuples in this file. */
+    private final int totalTuples;
+    /** byte position of each block. */
+    private final long[] blockPositions;
+
+    /** the index of the block we are currently at. -1 if no block is loaded yet. */
+    private int currentBlockIndex = -1;
+    /** decoded values of the current block. */
+    private final long[] currentValues;
+    /** number of values in the current block. */
+    private int currentBlockCount = 0;
+    /** current tuple number relative to the beginning of the block. */
+    private int currentBlockTuple = 0;
+    /** reused buffer for packed words. */
+    private final long[] words;
+
+    public LocalBitPackReader(VirtualFile file, FixLenValueTraits<T, AT> traits) throws IOException {
+        this (file, traits, 1 << 16, false);
+    }
+    /**
+     * @param memoryMapped whether to read the file via memory-mapped buffer.
+     */
+    public LocalBitPackReader(VirtualFile file, FixLenValueTraits<T, AT> traits, int streamBufferSize, boolean memoryMapped) throws IOException {
+        super (file, traits, streamBufferSize, memoryMapped);
+        this.adapter = LocalBitPacking.getAdapter(traits);
+
+        // read the file footer. this is done only once when this class is instantiated.
+        final long rawFileSize = getRawReader().getRawFileSize();
+        if (rawFileSize < LocalBitPackWriter.FOOTER_TAIL_SIZE) {
+            throw new IOException ("file too small. corrupted file? file=" + this);
+        }
+        getRawReader().seekToByteAbsolute(rawFileSize - LocalBitPackWriter.FOOTER_TAIL_SIZE);
+        RawValueReader reader = getRawValueReader();
+        blockSize = reader.readInt();
+        blockCount = reader.readInt();
+        totalTuples = reader.readInt();
+        int magic = reader.readInt();
+        final long footerSize = LocalBitPackWriter.FOOTER_TAIL_SIZE + 8L * blockCount;
+        if (magic != LocalBitPackWriter.FOOTER_MAGIC || blockSize <= 0 || blockCount < 0 || totalTuples < 0
+                || rawFileSize < footerSize || (long) blockSize * blockCount < totalTuples) {
+            throw new IOException ("invalid file footer. corrupted file? blockSize=" + blockSize + ", blockCount=" + blockCount
+                + ", totalTuples=" + totalTuples + ". file=" + this);
+        }
+        blockPositions = new long[blockCount];
+        getRawReader().seekToByteAbsolute(rawFileSize - footerSize);
+        readLongsFully(blockPositions, blockCount);
+        currentValues = new long[blockSize];
+        words = new long[LocalBitPacking.packedWords(blockSize, 64)];
+    }
+
+    /** reads and decodes the specified block. */
+    private void loadBlock (int block) throws IOException {
+        assert (block >= 0 && block < blockCount);
+        getRawReader().seekToByteAbsolute(blockPositions[block]);
+        RawValueReader reader = getRawValueReader();
+        int count = reader.readInt();
+        byte mode = reader.readByte();
+        int bitWidth = reader.readByte();
+        long base = reader.readLong();
+        long minDelta = reader.readLong();
+        long multiplier = reader.readLong();
+        if (count <= 0 || count > blockSize || bitWidth < 0 || bitWidth > 64) {
+            throw new IOException ("invalid block header. corrupted file? block=" + block + ", count=" + count + ", bitWidth=" + bitWidth + ". file=" + this);
+        }
+        if (mode == LocalBitPacking.MODE_FOR) {
+            readLongsFully(words, LocalBitPacking.packedWords(count, bitWidth));
+            LocalBitPacking.unpack(words, count, bitWidth, currentValues, 0);
+            if (multiplier == 1) {
+                for (int i = 0; i < count; ++i) {
+                    currentValues[i] += base;
+                }
+            } else {
+                for (int i = 0; i < count; ++i) {
+                    currentValues[i] = base + currentValues[i] * multiplier;
+                }
+            }
+        } else if (mode == LocalBitPacking.MODE_DELTA) {
+            readLongsFully(words, LocalBitPacking.packedWords(count - 1, bitWidth));
+            LocalBitPacking.unpack(words, count - 1, bitWidth, currentValues, 1);
+            currentValues[0] = base;
+            for (int i = 1; i < count; ++i) {
+                currentValues[i] = currentValues[i - 1] + minDelta + currentValues[i] * multiplier;
+            }
+        } else {
+            throw new IOException ("unknown block mode. corrupted file? block=" + block + ", mode=" + mode + ". file=" + this);
+        }
+        currentBlockIndex = block;
+        currentBlockCount = count;
+        currentBlockTuple = 0;
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("decoded block " + block + ": " + count + " values, mode=" + mode + ", bitWidth=" + bitWidth);
+        }
+    }
+
+    private void readLongsFully (long[] buffer, int len) throws IOException {
+        int totalRead = 0;
+        while (totalRead < len) {
+            int read = getRawValueReader().readLongs(buffer, totalRead, len - totalRead);
+            if (read <= 0) {
+                throw new IOException ("unexpected EOF. corrupted file? file=" + this);
+            }
+            totalRead += read;
+        }
+    }
+
+    /** moves to the next block if the current block is exhausted. returns false if EOF. */
+    private boolean ensureValueInBlock () throws IOException {
+        if (currentBlockIndex >= 0 && currentBlockTuple < currentBlockCount) {
+            return true;
+        }
+        if (currentBlockIndex + 1 >= blockCount) {
+            return false;
+        }
+        loadBlock(currentBlockIndex + 1);
+        return true;
+    }
+
+    @Override
+    public T readValue() throws IOException {
+        if (!ensureValueInBlock()) {
+            throw new IOException("EOF");
+        }
+        return adapter.toValue(currentValues[currentBlockTuple++]);
+    }
+    @Override
+    public int readValues(AT buffer, int off, int len) throws IOException {
+        int totalRead = 0;
+        while (totalRead < len && ensureValueInBlock()) {
+            int toRead = Math.min(len - totalRead, currentBlockCount - currentBlockTuple);
+            adapter.fromLongs(currentValues, currentBlockTuple, buffer, off + totalRead, toRead);
+            currentBlockTuple += toRead;
+            totalRead += toRead;
+        }
+        if (totalRead == 0 && len > 0) {
+            return -1; // EOF
+        }
+        return totalRead;
+    }
+    @Override
+    public void skipValue() throws IOException {
+        skipValues(1);
+    }
+    @Override
+    public void skipValues(int skip) throws IOException {
+        seekToTupleAbsolute(getCurrentTuple() + skip);
+    }
+
+    /** returns the tuple position the next read will return. */
+    private int getCurrentTuple () {
+        if (currentBlockIndex < 0) {
+            return 0;
+        }
+        return currentBlockIndex * blockSize + currentBlockTuple;
+    }
+
+    @Override
+    public void seekToTupleAbsolute(int tuple) throws IOException {
+        if (tuple < 0 || tuple > totalTuples) {
+            throw new IOException ("invalid tuple position specified:" + tuple);
+        }
+        if (tuple == totalTuples) {
+            // EOF position
+            if (blockCount > 0) {
+                if (currentBlockIndex != blockCount - 1) {
+                    loadBlock(blockCount - 1);
+                }
+                currentBlockTuple = currentBlockCount;
+            }
+            return;
+        }
+        int block = tuple / blockSize;
+        if (block != currentBlockIndex) {
+            loadBlock(block);
+        }
+        currentBlockTuple = tuple - block * blockSize;
+        assert (currentBlockTuple < currentBlockCount);
+    }
+
+    @Override
+    public int getTotalTuples() {
+        return totalTuples;
+    }
+}
@@ -0,0 +1,216 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.lvfs.RawValueWriter;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.SmallintValueTraits;
+import edu.brown.lasvegas.traits.TinyintValueTraits;
+
+/**
+ * File writer for bit-packed integer columns (frame-of-reference or delta encoding).
+ * <p>The file is a series of blocks followed by a file footer. Each block contains a fixed number
+ * of values (except the last block) so that the block containing a tuple is calculated by a division.</p>
+ * <p>Each block consists of a header and packed 64-bit words.
+ * The header is value count (4 bytes), mode (1 byte), bit width (1 byte), base value (8 bytes),
+ * minimum delta (8 bytes) and multiplier (8 bytes). See {@link LocalBitPacking} for the modes.</p>
+ * <p>The file footer is the byte position (8 bytes) of each block, followed by
+ * values per block (4 bytes), block count (4 bytes), total tuple count (4 bytes)
+ * and a magic number (4 bytes).</p>
+ * <p>Unlike block-compressed files, decoding a block is just a few shifts and additions per value,
+ * which is much cheaper than Snappy while sorted keys and dates shrink to a few bits per value.</p>
+ * @param <T> Value type (e.g., Integer)
+ * @param <AT> Array type (e.g., int[]).
+ */
+public final class LocalBitPackWriter<T extends Number & Comparable<T>, AT> extends LocalTypedWriterBase<T, AT> {
+    private static Logger LOG = Logger.getLogger(LocalBitPackWriter.class);
+
+    /** magic number at the end of bit-packed files. */
+    public static final int FOOTER_MAGIC = 0xB17BAC01;
+    /** byte size of the fixed part at the end of the file footer. */
+    public static final int FOOTER_TAIL_SIZE = 16;
+    /** default number of values in each block. */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 10;
+
+    /** Constructs an instance for 1-byte fixed length integer values. */
+    public static LocalBitPackWriter<Byte, byte[]> getInstanceTinyint(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackWriter<Byte, byte[]>(rawFile, new TinyintValueTraits());
+    }
+    /** Constructs an instance for 2-byte fixed length integer values. */
+    public static LocalBitPackWriter<Short, short[]> getInstanceSmallint(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackWriter<Short, short[]>(rawFile, new SmallintValueTraits());
+    }
+    /** Constructs an instance for 4-byte fixed length integer values. */
+    public static LocalBitPackWriter<Integer, int[]> getInstanceInteger(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackWriter<Integer, int[]>(rawFile, new IntegerValueTraits());
+    }
+    /** Constructs an instance for 8-byte fixed length integer values (also date/time values). */
+    public static LocalBitPackWriter<Long, long[]> getInstanceBigint(VirtualFile rawFile) throws IOException {
+        return new LocalBitPackWriter<Long, long[]>(rawFile, new BigintValueTraits());
+    }
+
+    private final LocalBitPacking.ArrayAdapter<T, AT> adapter;
+    /** number of values in each block. */
+    private final int blockSize;
+    /** values of the current block. */
+    private final long[] blockValues;
+    /** number of values in the current block. */
+    private int blockValueCount = 0;
+    /** reused buffer for FOR offsets or deltas. */
+    private final long[] encoded;
+    /** reused buffer for packed words. */
+    private final long[] words;
+    /** byte positions of the blocks written so far. */
+    private final ArrayList<Long> blockPositions = new ArrayList<Long>();
+    /** just a statistics. total number of bits used to pack values. */
+    private long totalPackedBits = 0;
+
+    public LocalBitPackWriter(VirtualFile file, FixLenValueTraits<T, AT> traits) throws IOException {
+        this (file, traits, DEFAULT_BLOCK_SIZE, 1 << 16);
+    }
+    /**
+     * @param blockSize number of values in each block. Smaller blocks adapt to the value ranges better
+     * and make seeks cheaper, but have more header overheads.
+     */
+    public LocalBitPackWriter(VirtualFile file, FixLenValueTraits<T, AT> traits, int blockSize, int streamBufferSize) throws IOException {
+        super (file, traits, streamBufferSize);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException ("invalid block size: " + blockSize);
+        }
+        this.adapter = LocalBitPacking.getAdapter(traits);
+        this.blockSize = blockSize;
+        this.blockValues = new long[blockSize];
+        this.encoded = new long[blockSize];
+        this.words = new long[LocalBitPacking.packedWords(blockSize, 64)];
+    }
+
+    @Override
+    public void writeValue(T value) throws IOException {
+        collectValues(value);
+        blockValues[blockValueCount++] = value.longValue();
+        ++curTuple;
+        if (blockValueCount == blockSize) {
+            writeBlock ();
+        }
+    }
+    @Override
+    public void writeValues(AT values, int off, int len) throws IOException {
+        collectValues(values, off, len);
+        int written = 0;
+        while (written < len) {
+            int toCopy = Math.min(len - written, blockSize - blockValueCount);
+            adapter.toLongs(values, off + written, blockValues, blockValueCount, toCopy);
+            blockValueCount += toCopy;
+            written += toCopy;
+            if (blockValueCount == blockSize) {
+                writeBlock ();
+            }
+        }
+        curTuple += len;
+    }
+
+    @Override
+    protected boolean isValueCollectionSupported() {
+        return true;
+    }
+
+    /** encodes and writes out the current block. */
+    private void writeBlock () throws IOException {
+        final int count = blockValueCount;
+        assert (count > 0);
+        long min = blockValues[0], max = blockValues[0];
+        long minDelta = 0, maxDelta = 0;
+        for (int i = 1; i < count; ++i) {
+            long value = blockValues[i];
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            long delta = value - blockValues[i - 1];
+            if (i == 1 || delta < minDelta) {
+                minDelta = delta;
+            }
+            if (i == 1 || delta > maxDelta) {
+                maxDelta = delta;
+            }
+        }
+        // compare the two modes by the range of values to pack (before dividing by the multiplier)
+        final boolean delta = count > 1 && Long.numberOfLeadingZeros(maxDelta - minDelta) > Long.numberOfLeadingZeros(max - min);
+
+        byte mode;
+        int packedCount;
+        long base;
+        if (delta) {
+            mode = LocalBitPacking.MODE_DELTA;
+            base = blockValues[0];
+            packedCount = count - 1;
+            for (int i = 1; i < count; ++i) {
+                encoded[i - 1] = blockValues[i] - blockValues[i - 1] - minDelta;
+            }
+        } else {
+            mode = LocalBitPacking.MODE_FOR;
+            base = min;
+            minDelta = 0;
+            packedCount = count;
+            for (int i = 0; i < count; ++i) {
+                encoded[i] = blockValues[i] - min;
+            }
+        }
+        final long multiplier = LocalBitPacking.commonDivisor(encoded, 0, packedCount);
+        long maxEncoded = 0;
+        for (int i = 0; i < packedCount; ++i) {
+            if (multiplier != 1) {
+                encoded[i] /= multiplier;
+            }
+            maxEncoded |= encoded[i];
+        }
+        final int bitWidth = LocalBitPacking.bitWidth(maxEncoded);
+        LocalBitPacking.pack(encoded, 0, packedCount, bitWidth, words);
+
+        blockPositions.add(getRawCurPosition());
+        RawValueWriter writer = getRawValueWriter();
+        writer.writeInt(count);
+        writer.writeByte(mode);
+        writer.writeByte((byte) bitWidth);
+        writer.writeLong(base);
+        writer.writeLong(minDelta);
+        writer.writeLong(multiplier);
+        writer.writeLongs(words, 0, LocalBitPacking.packedWords(packedCount, bitWidth));
+        totalPackedBits += (long) packedCount * bitWidth;
+        blockValueCount = 0;
+    }
+
+    @Override
+    public long writeFileFooter() throws IOException {
+        if (blockValueCount > 0) {
+            writeBlock ();
+        }
+        RawValueWriter writer = getRawValueWriter();
+        for (Long position : blockPositions) {
+            writer.writeLong(position);
+        }
+        writer.writeInt(blockSize);
+        writer.writeInt(blockPositions.size());
+        writer.writeInt(curTuple);
+        writer.writeInt(FOOTER_MAGIC);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("wrote " + curTuple + " values in " + blockPositions.size() + " bit-packed blocks. average bits per value="
+                + (curTuple == 0 ? 0 : (double) totalPackedBits / curTuple));
+        }
+        return super.writeFileFooter();
+    }
+
+    @Override
+    public void writePositionFile(VirtualFile posFile) throws IOException {
+        // bit-packed column doesn't need position index as the file footer tells where each block starts.
+        // nothing to write.
+    }
+}
@@ -0,0 +1,199 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.util.Arrays;
+
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.SmallintValueTraits;
+import edu.brown.lasvegas.traits.TinyintValueTraits;
+
+/**
+ * Encoding and decoding routines for bit-packed files ({@link LocalBitPackWriter} and {@link LocalBitPackReader}).
+ * <p>A block of integer values is encoded either in frame-of-reference (FOR) mode
+ * or in delta mode, whichever needs fewer bits per value.</p>
+ * <ul>
+ * <li>FOR mode stores the minimum value of the block as the base and then each value minus the base.</li>
+ * <li>Delta mode stores the first value as the base and the minimum difference between adjacent values,
+ * then each difference minus the minimum difference. This is great for sorted values.</li>
+ * </ul>
+ * <p>In either mode, the stored numbers are divided by their greatest common divisor (the multiplier),
+ * which is recorded in the block header. For example, dates stored as milliseconds are multiples of
+ * a day, so a day is represented by one step rather than 86400000.</p>
+ * <p>The stored numbers are non-negative and packed with the smallest bit width
+ * that can represent the largest of them. All arithmetic is modulo 2^64, so any 64-bit values
+ * round-trip even if the differences overflow.</p>
+ */
+final class LocalBitPacking {
+    /** block mode: frame-of-reference. */
+    static final byte MODE_FOR = 0;
+    /** block mode: delta from the previous value. */
+    static final byte MODE_DELTA = 1;
+
+    /** byte size of a block header (value count, mode, bit width, base, min delta, multiplier). */
+    static final int BLOCK_HEADER_SIZE = 4 + 1 + 1 + 8 + 8 + 8;
+
+    /** returns the number of bits to represent the given value as an unsigned integer. */
+    static int bitWidth (long unsignedValue) {
+        return 64 - Long.numberOfLeadingZeros(unsignedValue);
+    }
+
+    /**
+     * Returns the greatest common divisor of the given non-negative numbers.
+     * Returns 1 if any of them is 2^63 or larger as an unsigned integer, or if all of them are zero.
+     */
+    static long commonDivisor (long[] values, int off, int count) {
+        long gcd = 0;
+        for (int i = 0; i < count; ++i) {
+            long value = values[off + i];
+            if (value < 0) {
+                return 1;
+            }
+            // Euclidean algorithm
+            long a = gcd, b = value;
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            gcd = a;
+            if (gcd == 1) {
+                return 1;
+            }
+        }
+        return gcd == 0 ? 1 : gcd;
+    }
+
+    /** returns the number of 64-bit words to pack the given number of values. */
+    static int packedWords (int count, int bitWidth) {
+        return (int) (((long) count * bitWidth + 63) >>> 6);
+    }
+
+    /**
+     * Packs the values into words.
+     * @param values non-negative values each of which fits in bitWidth bits
+     * @param words receives the packed values. must have at least {@link #packedWords(int, int)} entries.
+     */
+    static void pack (long[] values, int off, int count, int bitWidth, long[] words) {
+        Arrays.fill(words, 0, packedWords(count, bitWidth), 0L);
+        if (bitWidth == 0) {
+            return;
+        }
+        long bitPos = 0;
+        for (int i = 0; i < count; ++i) {
+            long value = values[off + i];
+            int word = (int) (bitPos >>> 6);
+            int shift = (int) (bitPos & 63);
+            words[word] |= value << shift;
+            if (shift + bitWidth > 64) {
+                words[word + 1] |= value >>> (64 - shift);
+            }
+            bitPos += bitWidth;
+        }
+    }
+
+    /**
+     * Unpacks values packed by {@link #pack(long[], int, int, int, long[])}.
+     */
+    static void unpack (long[] words, int count, int bitWidth, long[] values, int off) {
+        if (bitWidth == 0) {
+            Arrays.fill(values, off, off + count, 0L);
+            return;
+        }
+        final long mask = bitWidth == 64 ? -1L : (1L << bitWidth) - 1;
+        long bitPos = 0;
+        for (int i = 0; i < count; ++i) {
+            int word = (int) (bitPos >>> 6);
+            int shift = (int) (bitPos & 63);
+            long value = words[word] >>> shift;
+            if (shift + bitWidth > 64) {
+                value |= words[word + 1] << (64 - shift);
+            }
+            values[off + i] = value & mask;
+            bitPos += bitWidth;
+        }
+    }
+
+    /**
+     * Converts between the typed array of the column and 64-bit values.
+     * @param <T> Value type (e.g., Integer)
+     * @param <AT> Array type (e.g., int[]).
+     */
+    static abstract class ArrayAdapter<T, AT> {
+        abstract void toLongs (AT src, int srcOff, long[] dest, int destOff, int len);
+        abstract void fromLongs (long[] src, int srcOff, AT dest, int destOff, int len);
+        abstract T toValue (long value);
+    }
+
+    /**
+     * Returns the adapter for the given data type.
+     * @throws IllegalArgumentException if the data type is not an integer type.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Number & Comparable<T>, AT> ArrayAdapter<T, AT> getAdapter (FixLenValueTraits<T, AT> traits) {
+        if (traits instanceof BigintValueTraits) {
+            return (ArrayAdapter<T, AT>) new ArrayAdapter<Long, long[]>() {
+                void toLongs(long[] src, int srcOff, long[] dest, int destOff, int len) {
+                    System.arraycopy(src, srcOff, dest, destOff, len);
+                }
+                void fromLongs(long[] src, int srcOff, long[] dest, int destOff, int len) {
+                    System.arraycopy(src, srcOff, dest, destOff, len);
+                }
+                Long toValue(long value) {
+                    return value;
+                }
+            };
+        } else if (traits instanceof IntegerValueTraits) {
+            return (ArrayAdapter<T, AT>) new ArrayAdapter<Integer, int[]>() {
+                void toLongs(int[] src, int srcOff, long[] dest, int destOff, int len) {
+                    for (int i = 0; i < len; ++i) {
+                        dest[destOff + i] = src[srcOff + i];
+                    }
+                }
+                void fromLongs(long[] src, int srcOff, int[] dest, int destOff, int len) {
+                    for (int i = 0; i < len; ++i) {
+                        dest[destOff + i] = (int) src[srcOff + i];
+                    }
+                }
+                Integer toValue(long value) {
+                    return (int) value;
+                }
+            };
+        } else if (traits instanceof SmallintValueTraits) {
+            return (ArrayAdapter<T, AT>) new ArrayAdapter<Short, short[]>() {
+                void toLongs(short[] src, int srcOff, long[] dest, int destOff, int len) {
+                    for (int i = 0; i < len; ++i) {
+                        dest[destOff + i] = src[srcOff + i];
+                    }
+                }
+                void fromLongs(long[] src, int srcOff, short[] dest, int destOff, int len) {
+                    for (int i = 0; i < len; ++i) {
+                        dest[destOff + i] = (short) src[srcOff + i];
+                    }
+                }
+                Short toValue(long value) {
+                    return (short) value;
+                }
+            };
+        } else if (traits instanceof TinyintValueTraits) {
+            return (ArrayAdapter<T, AT>) new ArrayAdapter<Byte, byte[]>() {
+                void toLongs(byte[] src, int srcOff, long[] dest, int destOff, int len) {
+                    for (int i = 0; i < len; ++i) {
+                        dest[destOff + i] = src[srcOff + i];
+                    }
+                }
+                void fromLongs(long[] src, int srcOff, byte[] dest, int destOff, int len) {
+                    for (int i = 0; i < len; ++i) {
+                        dest[destOff + i] = (byte) src[srcOff + i];
+                    }
+                }
+                Byte toValue(long value) {
+                    return (byte) value;
+                }
+            };
+        }
+        throw new IllegalArgumentException("bit-packing supports only integer types (including date/time types): " + traits);
+    }
+
+    private LocalBitPacking() {}
+}
@@ -0,0 +1,345 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A node-wide cache of decompressed blocks of block-compressed column files.
+ * <p>Repeated or concurrent scans of the same (hot) column files in a data node
+ * skip reading and decompressing the blocks. Entries are identified by
+ * the ID of the column file ({@link edu.brown.lasvegas.LVColumnFile#getColumnFileId()})
+ * and the index of the block in the file.</p>
+ * <p>Decompressed blocks are held outside of the Java heap in an arena of a few large direct buffers
+ * (chunks) which are allocated once and never released. Each chunk is divided into fixed-size pages,
+ * and a block occupies contiguous pages in one chunk. Pages of evicted blocks are immediately reused
+ * for other blocks, so the memory held by the cache never exceeds the given capacity and doesn't
+ * depend on when the garbage collector finalizes direct buffers.
+ * The least recently used blocks are evicted first.</p>
+ * <p>Readers pin the block they are decoding ({@link #acquire(int, int)}) and decode values directly
+ * from the cached pages. Pinned blocks are never evicted, and pages of an invalidated block
+ * are not reused until the block is released.</p>
+ * <p>Blocks of a column file must be invalidated when the file is deleted or replaced
+ * ({@link #invalidate(int)}), otherwise readers of a new file with the same ID would get stale blocks.</p>
+ * <p>This class is thread-safe.</p>
+ * @see LocalBlockCompressionReader#setBlockCache(LocalBlockCache, int)
+ */
+public final class LocalBlockCache {
+    private static Logger LOG = Logger.getLogger(LocalBlockCache.class);
+
+    /** default byte size of a page, the unit of allocation in the arena. */
+    public static final int PAGE_SIZE_DEFAULT = 4 << 10;
+    /** maximum byte size of one chunk. */
+    private static final int CHUNK_SIZE_MAX = 64 << 20;
+
+    /** maximum total bytes of cached blocks. */
+    private final long capacity;
+    /** byte size of a page. */
+    private final int pageSize;
+    /** blocks larger than this are not cached so that one block doesn't flush the whole cache. */
+    private final int maxBlockSize;
+    /** number of pages in each chunk. */
+    private final int[] chunkPages;
+    /** direct buffers of the arena. allocated when first needed. */
+    private final ByteBuffer[] chunks;
+    /** pages in use in each chunk. */
+    private final BitSet[] usedPages;
+    /** cached blocks in access order (the eldest is the least recently used). */
+    private final LinkedHashMap<Key, CachedBlock> blocks = new LinkedHashMap<Key, CachedBlock>(1024, 0.75f, true);
+    /** total bytes of pages in use, including invalidated blocks that are still pinned. */
+    private long usedBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+
+    /**
+     * @param capacity maximum total bytes of cached blocks
+     */
+    public LocalBlockCache (long capacity) {
+        this (capacity, PAGE_SIZE_DEFAULT);
+    }
+    /**
+     * @param capacity maximum total bytes of cached blocks
+     * @param pageSize byte size of a page, the unit of allocation in the arena
+     */
+    public LocalBlockCache (long capacity, int pageSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException ("capacity must be positive: " + capacity);
+        }
+        if (pageSize <= 0 || pageSize > CHUNK_SIZE_MAX) {
+            throw new IllegalArgumentException ("invalid page size: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        long totalPages = Math.max(1L, capacity / pageSize);
+        this.capacity = totalPages * pageSize;
+        int pagesPerChunk = (int) Math.min(totalPages, CHUNK_SIZE_MAX / pageSize);
+        int chunkCount = (int) ((totalPages + pagesPerChunk - 1) / pagesPerChunk);
+        this.chunkPages = new int[chunkCount];
+        this.chunks = new ByteBuffer[chunkCount];
+        this.usedPages = new BitSet[chunkCount];
+        for (int i = 0; i < chunkCount; ++i) {
+            chunkPages[i] = (int) Math.min(pagesPerChunk, totalPages - (long) i * pagesPerChunk);
+            usedPages[i] = new BitSet(chunkPages[i]);
+        }
+        this.maxBlockSize = (int) Math.min((long) pagesPerChunk * pageSize, Math.max(pageSize, this.capacity / 8));
+        LOG.info("created a block cache. capacity=" + this.capacity + " bytes, pageSize=" + pageSize + ", chunks=" + chunkCount);
+    }
+
+    /** identifies a block. */
+    private static final class Key {
+        private final int columnFileId;
+        private final int block;
+        private Key (int columnFileId, int block) {
+            this.columnFileId = columnFileId;
+            this.block = block;
+        }
+        @Override
+        public int hashCode() {
+            return columnFileId * 31 + block;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key o = (Key) obj;
+            return columnFileId == o.columnFileId && block == o.block;
+        }
+    }
+
+    /**
+     * A decompressed block in the arena.
+     * A block returned by {@link LocalBlockCache#acquire(int, int)} is pinned until {@link #release()},
+     * so the caller can read it without copying.
+     */
+    public static final class CachedBlock {
+        private final LocalBlockCache cache;
+        private final int chunk;
+        private final int firstPage;
+        private final int pageCount;
+        /** read-only view of the block in the chunk. */
+        private final ByteBuffer data;
+        /** number of pins. guarded by the cache. */
+        private int pinCount;
+        /** whether the block has been removed from the cache. its pages are freed when it's no longer pinned. guarded by the cache. */
+        private boolean removed;
+
+        private CachedBlock (LocalBlockCache cache, int chunk, int firstPage, int pageCount, ByteBuffer data) {
+            this.cache = cache;
+            this.chunk = chunk;
+            this.firstPage = firstPage;
+            this.pageCount = pageCount;
+            this.data = data;
+        }
+        /** returns a new read-only view of the block, whose remaining bytes are the block. */
+        public ByteBuffer getData () {
+            return data.duplicate();
+        }
+        /** returns the byte length of the block. */
+        public int getLength () {
+            return data.capacity();
+        }
+        /** unpins the block. The block must not be read after this. */
+        public void release () {
+            cache.release(this);
+        }
+    }
+
+    /**
+     * Looks up the decompressed block and pins it.
+     * @param columnFileId ID of the column file
+     * @param block index of the block in the file
+     * @return the pinned block, which must be released by the caller. null if the block is not cached.
+     */
+    public synchronized CachedBlock acquire (int columnFileId, int block) {
+        CachedBlock cached = blocks.get(new Key(columnFileId, block));
+        if (cached == null) {
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+        ++cached.pinCount;
+        return cached;
+    }
+
+    private synchronized void release (CachedBlock cached) {
+        if (cached.pinCount <= 0) {
+            throw new IllegalStateException ("the block is not pinned");
+        }
+        --cached.pinCount;
+        if (cached.pinCount == 0 && cached.removed) {
+            freePages(cached);
+        }
+    }
+
+    /** returns whether the block is cached. This doesn't affect hit/miss counts nor the eviction order. */
+    public synchronized boolean contains (int columnFileId, int block) {
+        return blocks.containsKey(new Key(columnFileId, block));
+    }
+
+    /**
+     * Copies the decompressed block into this cache, evicting least recently used blocks if needed.
+     * Blocks that are too large to cache or that don't find room because other blocks are pinned are ignored.
+     * @param columnFileId ID of the column file
+     * @param block index of the block in the file
+     * @param data the decompressed block
+     * @param length byte length of the decompressed block
+     */
+    public void put (int columnFileId, int block, byte[] data, int length) {
+        if (length > maxBlockSize) {
+            return;
+        }
+        Key key = new Key(columnFileId, block);
+        CachedBlock reserved;
+        synchronized (this) {
+            if (blocks.containsKey(key)) {
+                return; // other reader has added it
+            }
+            reserved = allocate(length);
+            if (reserved == null) {
+                return;
+            }
+        }
+        // the reserved pages are not in the map yet, so nobody else touches them. copy it outside of the lock
+        ByteBuffer dest = chunks[reserved.chunk].duplicate();
+        dest.position(reserved.firstPage * pageSize);
+        dest.put(data, 0, length);
+        synchronized (this) {
+            if (blocks.containsKey(key)) {
+                freePages(reserved);
+                return;
+            }
+            blocks.put(key, reserved);
+            ++putCount;
+        }
+    }
+
+    /** reserves contiguous pages for the block, evicting least recently used blocks if needed. */
+    private CachedBlock allocate (int length) {
+        int pageCount = Math.max(1, (length + pageSize - 1) / pageSize);
+        for (int chunk = 0; chunk < chunks.length; ++chunk) {
+            CachedBlock allocated = allocateInChunk(length, chunk, pageCount);
+            if (allocated != null) {
+                return allocated;
+            }
+        }
+        for (Iterator<CachedBlock> it = blocks.values().iterator(); it.hasNext();) {
+            CachedBlock victim = it.next();
+            if (victim.pinCount > 0) {
+                continue;
+            }
+            it.remove();
+            freePages(victim);
+            ++evictionCount;
+            // only the chunk of the evicted block has got new room
+            CachedBlock allocated = allocateInChunk(length, victim.chunk, pageCount);
+            if (allocated != null) {
+                return allocated;
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("no room for a block of " + length + " bytes. not cached: " + this);
+        }
+        return null;
+    }
+
+    private CachedBlock allocateInChunk (int length, int chunk, int pageCount) {
+        BitSet used = usedPages[chunk];
+        int pages = chunkPages[chunk];
+        int start = used.nextClearBit(0);
+        while (start + pageCount <= pages) {
+            int end = used.nextSetBit(start);
+            if (end < 0 || end >= start + pageCount) {
+                if (chunks[chunk] == null) {
+                    chunks[chunk] = ByteBuffer.allocateDirect(pages * pageSize);
+                }
+                used.set(start, start + pageCount);
+                usedBytes += (long) pageCount * pageSize;
+                ByteBuffer view = chunks[chunk].duplicate();
+                view.position(start * pageSize);
+                view.limit(start * pageSize + length);
+                CachedBlock allocated = new CachedBlock(this, chunk, start, pageCount, view.slice().asReadOnlyBuffer());
+                return allocated;
+            }
+            start = used.nextClearBit(end);
+        }
+        return null;
+    }
+
+    private void freePages (CachedBlock cached) {
+        usedPages[cached.chunk].clear(cached.firstPage, cached.firstPage + cached.pageCount);
+        usedBytes -= (long) cached.pageCount * pageSize;
+    }
+
+    /** removes the block from the map. its pages are freed now or when the last pin is released. */
+    private void remove (CachedBlock cached) {
+        cached.removed = true;
+        if (cached.pinCount == 0) {
+            freePages(cached);
+        }
+    }
+
+    /** removes all cached blocks of the given column file, for example when the file is deleted. */
+    public synchronized void invalidate (int columnFileId) {
+        for (Iterator<Map.Entry<Key, CachedBlock>> it = blocks.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, CachedBlock> entry = it.next();
+            if (entry.getKey().columnFileId == columnFileId) {
+                it.remove();
+                remove(entry.getValue());
+            }
+        }
+    }
+
+    /** removes all cached blocks. The arena itself is kept for later blocks. */
+    public synchronized void clear () {
+        for (CachedBlock cached : blocks.values()) {
+            remove(cached);
+        }
+        blocks.clear();
+    }
+
+    /** returns the maximum total bytes of cached blocks, which is a multiple of the page size. */
+    public long getCapacity () {
+        return capacity;
+    }
+    /** returns the byte size of a page. */
+    public int getPageSize () {
+        return pageSize;
+    }
+    /** returns the total bytes of pages in use. */
+    public synchronized long getUsedBytes () {
+        return usedBytes;
+    }
+    /** returns the number of cached blocks. */
+    public synchronized int getBlockCount () {
+        return blocks.size();
+    }
+    /** returns the number of lookups that found the block. */
+    public synchronized long getHitCount () {
+        return hitCount;
+    }
+    /** returns the number of lookups that didn't find the block. */
+    public synchronized long getMissCount () {
+        return missCount;
+    }
+    /** returns the number of blocks added to this cache. */
+    public synchronized long getPutCount () {
+        return putCount;
+    }
+    /** returns the number of blocks evicted to make room for other blocks. */
+    public synchronized long getEvictionCount () {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LocalBlockCache: capacity=" + capacity + ", used=" + usedBytes + ", blocks=" + blocks.size()
+            + ", hit=" + hitCount + ", miss=" + missCount + ", put=" + putCount + ", evicted=" + evictionCount;
+    }
+}
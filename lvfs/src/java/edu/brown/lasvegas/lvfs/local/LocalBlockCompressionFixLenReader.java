@@ -49,7 +49,18 @@ public final class LocalBlockCompressionFixLenReader<T extends Number & Comparab
     }
 
     public LocalBlockCompressionFixLenReader(VirtualFile file, FixLenValueTraits<T, AT> traits, CompressionType compressionType) throws IOException {
-        super (file, traits, compressionType);
+        this (file, traits, compressionType, false);
+    }
+    /**
+     * @param memoryMapped whether to read the compressed blocks from memory-mapped buffer.
+     */
+    public LocalBlockCompressionFixLenReader(VirtualFile file, FixLenValueTraits<T, AT> traits, CompressionType compressionType, boolean memoryMapped) throws IOException {
+        this (file, traits, compressionType, memoryMapped, null, 0);
+    }
+    /** reads a column in a PAX file. See {@link LocalPaxFile#createReader(int, boolean)}. */
+    LocalBlockCompressionFixLenReader(VirtualFile file, FixLenValueTraits<T, AT> traits, CompressionType compressionType, boolean memoryMapped,
+                    LocalPaxFile paxFile, int paxColumn) throws IOException {
+        super (file, traits, compressionType, memoryMapped, paxFile, paxColumn);
         this.traits = traits;
         this.bitsPerValue = traits.getBitsPerValue();
     }
@@ -72,7 +83,7 @@ public final class LocalBlockCompressionFixLenReader<T extends Number & Comparab
                 assert (currentBlockTuple == 0);
                 assert (currentBlockCursor == 0);
             }
-            int nextRead = Math.min(blockTupleCounts[currentBlockIndex] - currentBlockTuple, len);
+            int nextRead = Math.min(blockTupleCounts[currentBlockIndex] - currentBlockTuple, len - totalRead);
             int read = traits.readValues(getProxyValueReader(), values, off + totalRead, nextRead);
             assert (read == nextRead);
             totalRead += read;
@@ -85,7 +96,7 @@ public final class LocalBlockCompressionFixLenReader<T extends Number & Comparab
         if (currentBlockIndex < 0) {
             seekToBlock(0);
         }
-        if (currentBlockTuple + 1 >= blockTupleCounts[currentBlockIndex]) {
+        if (currentBlockTuple >= blockTupleCounts[currentBlockIndex]) {
             // move to next block
             seekToBlock(currentBlockIndex + 1);
             assert (currentBlockTuple == 0);
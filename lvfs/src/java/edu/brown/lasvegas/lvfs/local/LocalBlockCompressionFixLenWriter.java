@@ -54,7 +54,22 @@ public final class LocalBlockCompressionFixLenWriter<T extends Number & Comparab
 
     @Override
     public void writeValues (AT values, int off, int len) throws IOException {
+        collectValues(values, off, len);
         flushBlockIfNeeded();
+        if (getTuplesPerBlock() > 0) {
+            // cut blocks exactly at the tuple boundaries
+            int curoff = off;
+            int curlen = len;
+            while (curlen > 0) {
+                int count = Math.min(curlen, getRemainingTuplesInBlock());
+                traits.writeValues(getProxyValueWriter(), values, curoff, count);
+                curoff += count;
+                curlen -= count;
+                super.curTuple += count;
+                flushBlockIfNeeded();
+            }
+            return;
+        }
         // in case len is really large, we split values to a few blocks
         int threshold = super.blockSizeInKB << 10;
         int curoff = off;
@@ -75,8 +90,13 @@ public final class LocalBlockCompressionFixLenWriter<T extends Number & Comparab
     }
     @Override
     public void writeValue(T value) throws IOException {
+        collectValues(value);
         flushBlockIfNeeded();
         traits.writeValue(getProxyValueWriter(), value);
         ++super.curTuple;
     }
+    @Override
+    protected boolean isValueCollectionSupported() {
+        return true;
+    }
 }
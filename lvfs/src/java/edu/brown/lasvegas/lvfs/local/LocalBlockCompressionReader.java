@@ -1,12 +1,13 @@
 package edu.brown.lasvegas.lvfs.local;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Logger;
-import org.xerial.snappy.Snappy;
 
 import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.lvfs.RawValueReader;
@@ -14,7 +15,7 @@ import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.ValueTraits;
 
 /**
- * File reader for a block-compressed file such as Snappy and LZO.
+ * File reader for a block-compressed file such as Snappy and LZ4.
  * <p>For the format of block-coompressed files, see {@link LocalBlockCompressionWriter}</p>
  */
 public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> extends LocalTypedReaderBase<T, AT> {
@@ -29,16 +30,53 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
     /** List of the tuples to start each block. */
     protected final int[] blockStartTuples;
     /** List of the byte position (in compressed form) of each block. */
-    protected final int[] blockPositions;
+    protected final long[] blockPositions;
     /** List of the byte length (in compressed form) of each block. */
     protected final int[] blockLengthes;
+    /** List of the byte length (without compression) of each block. -1 if the file doesn't record it (older versions). */
+    protected final int[] blockUncompressedLengthes;
     /** List of the tuple counts of each block. */
     protected final int[] blockTupleCounts;
+    /**
+     * whether the blocks have the offset-array layout, which is required for variable-length columns.
+     * See {@link LocalBlockCompressionVarLenWriter}.
+     */
+    protected final boolean offsetArrayBlocks;
     
     /** the index of the block we are currently at. */
     protected int currentBlockIndex;
-    /** data of current block without compression. */
+    /**
+     * data of current block without compression. This buffer is reused for all blocks,
+     * so it might be larger than the current block. See {@link #currentBlockLength}.
+     * null if the current block is read from the block cache. See {@link #currentCachedData}.
+     */
     protected byte[] currentBlock;
+    /**
+     * read-only view of the current block in the block cache, positioned at the beginning of the block.
+     * Values are decoded directly from the cached block without copying it.
+     * null if the current block is in {@link #currentBlock}.
+     */
+    protected ByteBuffer currentCachedData;
+    /** byte length of current block without compression. */
+    protected int currentBlockLength;
+    /** reused buffer to read compressed blocks. */
+    private byte[] compressedBuffer = new byte[0];
+    /** decompresses blocks into a reused buffer. */
+    private final LocalBlockDecompressor decompressor;
+    /** whether the file is written by older versions and has gzip-framed blocks. */
+    private final boolean gzipFramed;
+    /** thread pool to read ahead following blocks. null if read-ahead is disabled. */
+    private LocalBlockReadAhead readAhead;
+    /** blocks being read ahead or already read ahead. null if read-ahead is disabled. */
+    private ReadAheadSlot[] readAheadSlots;
+    /** the slot that owns {@link #currentBlock}. null if currentBlock is owned by {@link #decompressor} or the block is cached. */
+    private ReadAheadSlot currentSlot;
+    /** node-wide cache of decompressed blocks. null if not used. */
+    private LocalBlockCache blockCache;
+    /** ID of this file in {@link #blockCache}. */
+    private int blockCacheFileId;
+    /** the current block pinned in {@link #blockCache}. null if the current block is not from the cache. */
+    private LocalBlockCache.CachedBlock currentCachedBlock;
     /** where in currentBlock we are at in terms of byte position from the beginning of the block. */
     protected int currentBlockCursor = 0;
     /** current tuple number relative to the beginning of the block. */
@@ -49,37 +87,87 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
     }
     
     public LocalBlockCompressionReader(VirtualFile file, ValueTraits<T, AT> traits, CompressionType compressionType) throws IOException {
-        super (file, traits, 0); // as it's block-compressed, no point to buffer. 
+        this (file, traits, compressionType, false);
+    }
+    /**
+     * @param memoryMapped whether to read the compressed blocks from memory-mapped buffer.
+     */
+    public LocalBlockCompressionReader(VirtualFile file, ValueTraits<T, AT> traits, CompressionType compressionType, boolean memoryMapped) throws IOException {
+        this (file, traits, compressionType, memoryMapped, null, 0);
+    }
+    /**
+     * Constructs a reader of a block-compressed file or of a column in a PAX file.
+     * @param file the block-compressed file, or the PAX file if paxFile is given
+     * @param memoryMapped whether to read the compressed blocks from memory-mapped buffer.
+     * @param paxFile the footer of the PAX file that contains the column. null to read a block-compressed file.
+     * @param paxColumn index of the column in the PAX file. ignored if paxFile is null.
+     */
+    protected LocalBlockCompressionReader(VirtualFile file, ValueTraits<T, AT> traits, CompressionType compressionType, boolean memoryMapped,
+                    LocalPaxFile paxFile, int paxColumn) throws IOException {
+        super (file, traits, 0, memoryMapped); // as it's block-compressed, no point to buffer. 
         this.compressionType = compressionType;
         proxyReader = new ProxyValueReader();
+        if (paxFile != null) {
+            // the block positions are in the footer of the PAX file. each block is a mini-page of the column.
+            assert (paxFile.getCompressionType(paxColumn) == compressionType);
+            totalTuples = paxFile.getTotalTuples();
+            blockCount = paxFile.getBlockCount();
+            blockStartTuples = paxFile.getBlockStartTuples();
+            blockPositions = paxFile.getMiniPagePositions(paxColumn);
+            blockLengthes = paxFile.getMiniPageLengthes(paxColumn);
+            blockUncompressedLengthes = paxFile.getMiniPageUncompressedLengthes(paxColumn);
+            blockTupleCounts = new int[blockCount];
+            for (int i = 0; i < blockCount; ++i) {
+                blockTupleCounts[i] = (i == blockCount - 1 ? totalTuples : blockStartTuples[i + 1]) - blockStartTuples[i];
+            }
+            gzipFramed = false;
+            offsetArrayBlocks = true;
+            decompressor = new LocalBlockDecompressor(compressionType, gzipFramed);
+            currentBlockIndex = -1; // in no block
+            return;
+        }
 
         // Reads the block position footer at the end of the file.
         // This is done only once when this class is instantiated.
-        final int rawFileSize = getRawReader().getRawFileSize();
+        final long rawFileSize = getRawReader().getRawFileSize();
         assert (rawFileSize >= 8);
-        getRawReader().seekToByteAbsolute(rawFileSize - 8);
+        getRawReader().seekToByteAbsolute(rawFileSize - 4);
+        // the file ends with a magic number unless it's written by older versions with 32-bit positions
+        final int magic = getRawValueReader().readInt();
+        // version 4 has the same file footer as version 3
+        offsetArrayBlocks = magic == LocalBlockCompressionWriter.FOOTER_MAGIC_V4;
+        final boolean v3 = magic == LocalBlockCompressionWriter.FOOTER_MAGIC_V3 || offsetArrayBlocks;
+        final boolean v2 = magic == LocalBlockCompressionWriter.FOOTER_MAGIC_V2;
+        final int tailSize = (v3 || v2) ? LocalBlockCompressionWriter.FOOTER_TAIL_SIZE : 8;
+        final int entrySize = v3 ? LocalBlockCompressionWriter.FOOTER_ENTRY_SIZE_V3
+                        : (v2 ? LocalBlockCompressionWriter.FOOTER_ENTRY_SIZE_V2 : 4 * 3);
+        getRawReader().seekToByteAbsolute(rawFileSize - tailSize);
         blockCount = getRawValueReader().readInt();
-        if (blockCount < 0 || rawFileSize < 8 + 4 * 3 * blockCount) {
+        final long footerSize = tailSize + (long) entrySize * blockCount;
+        if (blockCount < 0 || rawFileSize < footerSize) {
             throw new IOException ("invalid file footer. corrupted file? blockCount=" + blockCount + ". file="+ this);
         }
         totalTuples = getRawValueReader().readInt();
         if (totalTuples < 0) {
             throw new IOException ("invalid file footer. corrupted file? blockCount=" + blockCount + ", totalTuples=" + totalTuples + ". file="+ this);
         }
-        getRawReader().seekToByteAbsolute(rawFileSize - 8 - 4 * 3 * blockCount);
-        int[] intBuf = new int[3 * blockCount];
-        int intRead = getRawValueReader().readInts(intBuf, 0, intBuf.length);
-        assert (intRead == intBuf.length);
-        // the 3*n array can be used as it is.. but it's easier to have variables names for them.
-        // so, split the triplets to each array. anyway, this happens only once per file.
+        getRawReader().seekToByteAbsolute(rawFileSize - footerSize);
+        byte[] footerBuf = new byte[entrySize * blockCount];
+        int footerRead = getRawValueReader().readBytes(footerBuf, 0, footerBuf.length);
+        assert (footerRead == footerBuf.length);
+        ByteBuffer footer = ByteBuffer.wrap(footerBuf);
+        // split the triplets to each array to have variables names for them.
+        // anyway, this happens only once per file.
         blockStartTuples = new int[blockCount];
-        blockPositions = new int[blockCount];
+        blockPositions = new long[blockCount];
         blockLengthes = new int[blockCount];
+        blockUncompressedLengthes = new int[blockCount];
         blockTupleCounts = new int[blockCount];
         for (int i = 0; i < blockCount; ++i) {
-            blockStartTuples[i] = intBuf[3 * i];
-            blockPositions[i] = intBuf[3 * i + 1];
-            blockLengthes[i] = intBuf[3 * i + 2];
+            blockStartTuples[i] = footer.getInt();
+            blockPositions[i] = (v3 || v2) ? footer.getLong() : footer.getInt();
+            blockLengthes[i] = footer.getInt();
+            blockUncompressedLengthes[i] = v3 ? footer.getInt() : -1;
             if (i == 0) {
                 if (blockStartTuples[i] != 0 || blockPositions[i] != 0) {
                     throw new IOException ("invalid footer. "
@@ -96,9 +184,11 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
             }
         }
         blockTupleCounts[blockCount - 1] = totalTuples - blockStartTuples[blockCount - 1];
-        if (blockPositions[blockCount - 1] + blockLengthes[blockCount - 1] + 8 + 4 * 3 * blockCount != rawFileSize) {
+        if (blockPositions[blockCount - 1] + blockLengthes[blockCount - 1] + footerSize != rawFileSize) {
             throw new IOException ("invalid footer. corrupted file? file="+ this);
         }
+        gzipFramed = !v3;
+        decompressor = new LocalBlockDecompressor(compressionType, gzipFramed);
         getRawReader().seekToByteAbsolute(0); // reset to the beginning of the file
         currentBlockIndex = -1; // in no block
     }
@@ -111,11 +201,11 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
         public byte readByte() throws IOException {
             // this should never happen. the derived classes make sure
             // we don't go beyond the end of the block.
-            if (currentBlockCursor + 1 > currentBlock.length) {
+            if (currentBlockCursor + 1 > currentBlockLength) {
                 throw new IOException ("cannot go beyond the end of current block: currentBlockCursor=" + currentBlockCursor
-                                + ", requested len=1, currentBlock.length=" + currentBlock.length);
+                                + ", requested len=1, currentBlockLength=" + currentBlockLength);
             }
-            byte ret = currentBlock[currentBlockCursor];
+            byte ret = currentBlock != null ? currentBlock[currentBlockCursor] : currentCachedData.get(currentBlockCursor);
             ++currentBlockCursor;
             if (LOG.isTraceEnabled()) {
                 LOG.trace("read in compressed block 1 byte");
@@ -126,11 +216,16 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
         public int readBytes(byte[] buf, int off, int len) throws IOException {
             // this should never happen. the derived classes make sure
             // we don't go beyond the end of the block.
-            if (currentBlockCursor + len > currentBlock.length) {
+            if (currentBlockCursor + len > currentBlockLength) {
                 throw new IOException ("cannot go beyond the end of current block: currentBlockCursor=" + currentBlockCursor
-                                + ", requested len=" + len + ", currentBlock.length=" + currentBlock.length);
+                                + ", requested len=" + len + ", currentBlockLength=" + currentBlockLength);
+            }
+            if (currentBlock != null) {
+                System.arraycopy(currentBlock, currentBlockCursor, buf, off, len);
+            } else {
+                currentCachedData.position(currentBlockCursor);
+                currentCachedData.get(buf, off, len);
             }
-            System.arraycopy(currentBlock, currentBlockCursor, buf, off, len);
             currentBlockCursor += len;
             if (LOG.isTraceEnabled()) {
                 LOG.trace("read in compressed block " + len + " bytes");
@@ -138,11 +233,29 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
             return len;
         }
         @Override
+        protected ByteBuffer readDirect(int bytesToRead) throws IOException {
+            // same as above, but let the caller directly convert values in the decompressed block
+            if (currentBlockCursor + bytesToRead > currentBlockLength) {
+                throw new IOException ("cannot go beyond the end of current block: currentBlockCursor=" + currentBlockCursor
+                                + ", requested len=" + bytesToRead + ", currentBlockLength=" + currentBlockLength);
+            }
+            ByteBuffer view;
+            if (currentBlock != null) {
+                view = ByteBuffer.wrap(currentBlock, currentBlockCursor, bytesToRead);
+            } else {
+                view = currentCachedData.duplicate();
+                view.limit(currentBlockCursor + bytesToRead);
+                view.position(currentBlockCursor);
+            }
+            currentBlockCursor += bytesToRead;
+            return view;
+        }
+        @Override
         public void skipBytes(int length) throws IOException {
             // same as above
-            if (currentBlockCursor + length  > currentBlock.length) {
+            if (currentBlockCursor + length  > currentBlockLength) {
                 throw new IOException ("cannot skip beyond the end of current block: currentBlockCursor=" + currentBlockCursor
-                                + ", requested skip=" + length + ", currentBlock.length=" + currentBlock.length);
+                                + ", requested skip=" + length + ", currentBlockLength=" + currentBlockLength);
             }
             currentBlockCursor += length;
             if (LOG.isTraceEnabled()) {
@@ -153,9 +266,13 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
         public boolean hasMore() throws IOException {
             // if there is something in this block, return true.
             // even if not, if this is not the last block, we have more to read
-            return currentBlockCursor + getCurrentBlockFooterByteSize() < currentBlock.length || currentBlockIndex < blockCount - 1;
+            return hasMoreInCurrentBlock() || currentBlockIndex < blockCount - 1;
         }
     }
+    /** returns whether the current block has more values to read. */
+    protected boolean hasMoreInCurrentBlock () {
+        return currentBlockCursor + getCurrentBlockFooterByteSize() < currentBlockLength;
+    }
     /**
      * override this to read footer of newly loaded block.
      */
@@ -168,34 +285,45 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
             throw new IOException ("invalid block specified: " + block);
         }
         if (currentBlockIndex != block) {
-            getRawReader().seekToByteAbsolute(blockPositions[block]);
-            byte[] buf = new byte[blockLengthes[block]];
-            int read = getRawValueReader().readBytes(buf, 0, buf.length);
-            assert (read == buf.length);
-            if (compressionType == CompressionType.SNAPPY) {
-                currentBlock = Snappy.uncompress(buf);
+            // read-ahead only pays off for sequential scans. random seeks don't trigger it.
+            boolean sequential = block == currentBlockIndex + 1;
+            releaseCachedBlock ();
+            LocalBlockCache.CachedBlock cached = getCachedBlock(block);
+            ReadAheadSlot slot = cached == null ? findReadAheadSlot(block) : null;
+            if (cached != null) {
+                // decode directly from the cache. the block stays pinned until we leave it
+                currentCachedBlock = cached;
+                currentCachedData = cached.getData();
+                currentBlockLength = cached.getLength();
+                currentBlock = null;
+                currentSlot = null;
+            } else if (slot != null && slot.await()) {
+                currentBlockLength = slot.uncompressedLength;
+                currentBlock = slot.decompressor.getBuffer();
+                currentSlot = slot;
             } else {
-                // GZipInputStream doesn't provide the uncompressed size.
-                // so, we simply use ByteArrayOutputStream, which might be inefficient.
-                // but, the point of CompressionType.GZIP_BEST_COMPRESSION is not performance...
-                assert (compressionType == CompressionType.GZIP_BEST_COMPRESSION);
-                GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(buf), 1 << 16);
-                ByteArrayOutputStream result = new ByteArrayOutputStream(1 << 16);
-                byte[] gzipBuf = new byte[1 << 16];
-                while (true) {
-                    int uncompressedRead = gzip.read(gzipBuf);
-                    if (uncompressedRead < 0) {
-                        break;
-                    }
-                    result.write(gzipBuf, 0, uncompressedRead);
+                currentSlot = null;
+                getRawReader().seekToByteAbsolute(blockPositions[block]);
+                int compressedLength = blockLengthes[block];
+                if (compressedBuffer.length < compressedLength) {
+                    compressedBuffer = new byte[compressedLength];
                 }
-                currentBlock = result.toByteArray();
-                gzip.close();
+                int read = getRawValueReader().readBytes(compressedBuffer, 0, compressedLength);
+                assert (read == compressedLength);
+                currentBlockLength = decompressor.decompress(compressedBuffer, 0, compressedLength, blockUncompressedLengthes[block]);
+                currentBlock = decompressor.getBuffer();
+            }
+            if (cached == null && blockCache != null) {
+                blockCache.put(blockCacheFileId, block, currentBlock, currentBlockLength);
             }
             currentBlockIndex = block;
+            if (sequential) {
+                scheduleReadAhead ();
+            }
             readBlockFooter ();
             if (LOG.isDebugEnabled()) {
-                LOG.debug("read and decompressed a block(" + block + "): " + buf.length + "bytes to " + currentBlock.length + "bytes.");
+                LOG.debug("read and decompressed a block(" + block + "): " + blockLengthes[block] + "bytes to " + currentBlockLength + "bytes."
+                    + (cached != null ? " (cached)" : (currentSlot == null ? "" : " (read ahead)")));
             }
         }
         currentBlockCursor = 0;
@@ -203,6 +331,199 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
     }
 
 
+    /**
+     * Lets this reader share decompressed blocks with other readers via the given cache.
+     * Blocks found in the cache are neither read from the file nor decompressed.
+     * @param blockCache node-wide cache of decompressed blocks. null to disable caching.
+     * @param columnFileId the ID of this file to identify its blocks in the cache.
+     * The same ID must not be used for a different file content.
+     */
+    public final void setBlockCache (LocalBlockCache blockCache, int columnFileId) {
+        this.blockCache = blockCache;
+        this.blockCacheFileId = columnFileId;
+    }
+
+    /** returns the block pinned in the cache, or null if not cached. */
+    private LocalBlockCache.CachedBlock getCachedBlock (int block) {
+        if (blockCache == null) {
+            return null;
+        }
+        LocalBlockCache.CachedBlock cached = blockCache.acquire(blockCacheFileId, block);
+        if (cached != null && blockUncompressedLengthes[block] >= 0 && cached.getLength() != blockUncompressedLengthes[block]) {
+            // this should not happen unless the file ID is reused for another file
+            LOG.warn("cached block(" + block + ") doesn't match the file. ignored: " + this);
+            cached.release();
+            return null;
+        }
+        return cached;
+    }
+    /** unpins the current block in the cache, if any. */
+    private void releaseCachedBlock () {
+        if (currentCachedBlock != null) {
+            currentCachedBlock.release();
+            currentCachedBlock = null;
+            currentCachedData = null;
+        }
+    }
+
+    /**
+     * Enables reading ahead following blocks in the given thread pool while this reader
+     * sequentially consumes the current block. Read-ahead is available only when the
+     * underlying raw reader supports concurrent reads (positional or memory-mapped mode).
+     * Otherwise, this method does nothing and blocks are read synchronously.
+     * @param readAhead thread pool to read ahead blocks. null to disable read-ahead.
+     */
+    public final void setReadAhead (LocalBlockReadAhead readAhead) throws IOException {
+        cancelReadAhead ();
+        this.readAhead = null;
+        this.readAheadSlots = null;
+        if (readAhead == null || blockCount <= 1) {
+            return;
+        }
+        if (!getRawReader().isConcurrentReadSupported()) {
+            LOG.debug("read-ahead is not available in stream mode. ignored: " + this);
+            return;
+        }
+        this.readAhead = readAhead;
+        // one more slot than the depth because the slot of the current block can't be reused
+        this.readAheadSlots = new ReadAheadSlot[readAhead.getDepth() + 1];
+        for (int i = 0; i < readAheadSlots.length; ++i) {
+            readAheadSlots[i] = new ReadAheadSlot(this);
+        }
+    }
+    /** returns whether this reader reads ahead following blocks. */
+    public final boolean isReadAheadEnabled () {
+        return readAheadSlots != null;
+    }
+
+    private ReadAheadSlot findReadAheadSlot (int block) {
+        if (readAheadSlots == null) {
+            return null;
+        }
+        for (ReadAheadSlot slot : readAheadSlots) {
+            if (slot.block == block && slot.future != null) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /** submits read-ahead tasks for the blocks following the current block. */
+    private void scheduleReadAhead () throws IOException {
+        if (readAheadSlots == null) {
+            return;
+        }
+        final int lastBlock = Math.min(blockCount - 1, currentBlockIndex + readAhead.getDepth());
+        for (int next = currentBlockIndex + 1; next <= lastBlock; ++next) {
+            if (findReadAheadSlot(next) != null || (blockCache != null && blockCache.contains(blockCacheFileId, next))) {
+                continue;
+            }
+            ReadAheadSlot free = null;
+            for (ReadAheadSlot slot : readAheadSlots) {
+                if (slot != currentSlot && (slot.future == null || slot.block <= currentBlockIndex || slot.block > lastBlock)) {
+                    free = slot;
+                    break;
+                }
+            }
+            if (free == null) {
+                break;
+            }
+            if (!free.submit(next)) {
+                // the thread pool has been shut down. fall back to synchronous reads
+                cancelReadAhead ();
+                readAheadSlots = null;
+                readAhead = null;
+                currentSlot = null;
+                break;
+            }
+        }
+    }
+
+    /** waits for all outstanding read-ahead tasks, which might be using the raw reader. */
+    private void cancelReadAhead () {
+        if (readAheadSlots == null) {
+            return;
+        }
+        for (ReadAheadSlot slot : readAheadSlots) {
+            if (slot != currentSlot) {
+                slot.await();
+                slot.block = -1;
+                slot.future = null;
+            }
+        }
+    }
+
+    /**
+     * A buffer to read and decompress one block in the read-ahead thread pool.
+     * Each slot has its own decompressor, so the decompressed block is available
+     * without copying once the task is done.
+     */
+    private static final class ReadAheadSlot implements Callable<Integer> {
+        private final LocalBlockCompressionReader<?, ?> owner;
+        /** the block this slot is reading or has read. -1 if none. */
+        private int block = -1;
+        private Future<Integer> future;
+        private byte[] compressed = new byte[0];
+        private int uncompressedLength;
+        private final LocalBlockDecompressor decompressor;
+        private ReadAheadSlot (LocalBlockCompressionReader<?, ?> owner) throws IOException {
+            this.owner = owner;
+            this.decompressor = new LocalBlockDecompressor(owner.compressionType, owner.gzipFramed);
+        }
+
+        private boolean submit (int block) {
+            await(); // just in case the previous task is still running
+            this.block = block;
+            try {
+                future = owner.readAhead.submit(this);
+                return true;
+            } catch (RejectedExecutionException ex) {
+                this.block = -1;
+                future = null;
+                return false;
+            }
+        }
+        @Override
+        public Integer call() throws Exception {
+            int compressedLength = owner.blockLengthes[block];
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            owner.getRawReader().readFullyAt(owner.blockPositions[block], compressed, 0, compressedLength);
+            return decompressor.decompress(compressed, 0, compressedLength, owner.blockUncompressedLengthes[block]);
+        }
+        /**
+         * Waits for the task. If it failed, this slot is invalidated so that the block is read
+         * synchronously, which reports the error to the caller if it's not transient.
+         * @return whether the block is available in this slot
+         */
+        private boolean await () {
+            if (future == null) {
+                return false;
+            }
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        uncompressedLength = future.get();
+                        return true;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException ex) {
+                LOG.warn("failed to read ahead block(" + block + "). will read it again: " + owner, ex.getCause());
+                block = -1;
+                future = null;
+                return false;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
     /**
      * Returns the block that contains the specified tuple.
      * @param tupleToFind the tuple position to find.
@@ -244,4 +565,23 @@ public abstract class LocalBlockCompressionReader<T extends Comparable<T>, AT> e
     public int getTotalTuples() {
         return totalTuples;
     }
+
+    /** returns the compression type of this file. */
+    public final CompressionType getCompressionType() {
+        return compressionType;
+    }
+
+    @Override
+    protected void beforeClose() throws IOException {
+        releaseCachedBlock ();
+        currentSlot = null;
+        cancelReadAhead ();
+        if (readAheadSlots != null) {
+            for (ReadAheadSlot slot : readAheadSlots) {
+                slot.decompressor.release();
+            }
+            readAheadSlots = null;
+        }
+        decompressor.release();
+    }
 }
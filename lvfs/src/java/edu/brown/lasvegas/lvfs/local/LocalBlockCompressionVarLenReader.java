@@ -3,20 +3,31 @@ package edu.brown.lasvegas.lvfs.local;
 import java.io.IOException;
 
 import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.TypedArenaReader;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.VarLenValueTraits;
 import edu.brown.lasvegas.traits.VarbinValueTraits;
 import edu.brown.lasvegas.traits.VarcharValueTraits;
 import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Reader implementation of block-compressed files for variable-length columns.
  * @param <T> Value type (e.g., String)
  */
-public class LocalBlockCompressionVarLenReader<T extends Comparable<T>> extends LocalBlockCompressionReader<T, T[]> {
+public class LocalBlockCompressionVarLenReader<T extends Comparable<T>> extends LocalBlockCompressionReader<T, T[]> implements TypedArenaReader {
     private final VarLenValueTraits<T> traits;
-    /** Variable-length block has position indexes. See class comments of {@link LocalBlockCompressionVarLenWriter}. */
-    private int[] currentBlockFooter;
+    /**
+     * offsets of values in the current block. value i is from offsets[i] to offsets[i + 1].
+     * See class comments of {@link LocalBlockCompressionVarLenWriter}.
+     */
+    private int[] blockOffsets = new int[0];
+    /** byte size of the values in the current block. */
+    private int blockDataEnd;
+    /** reused buffer to read 2-byte offsets. */
+    private short[] shortOffsets = new short[0];
+    /** reused buffer to decode a value from a cached block. */
+    private byte[] valueBuffer = new byte[0];
     
     /** Constructs an instance of varchar column. */
     public static LocalBlockCompressionVarLenReader<String> getInstanceVarchar(
@@ -30,8 +41,22 @@ public class LocalBlockCompressionVarLenReader<T extends Comparable<T>> extends
     }
 
     public LocalBlockCompressionVarLenReader(VirtualFile file, VarLenValueTraits<T> traits, CompressionType compressionType) throws IOException {
-        super (file, traits, compressionType);
+        this (file, traits, compressionType, false);
+    }
+    /**
+     * @param memoryMapped whether to read the compressed blocks from memory-mapped buffer.
+     */
+    public LocalBlockCompressionVarLenReader(VirtualFile file, VarLenValueTraits<T> traits, CompressionType compressionType, boolean memoryMapped) throws IOException {
+        this (file, traits, compressionType, memoryMapped, null, 0);
+    }
+    /** reads a column in a PAX file. See {@link LocalPaxFile#createReader(int, boolean)}. */
+    LocalBlockCompressionVarLenReader(VirtualFile file, VarLenValueTraits<T> traits, CompressionType compressionType, boolean memoryMapped,
+                    LocalPaxFile paxFile, int paxColumn) throws IOException {
+        super (file, traits, compressionType, memoryMapped, paxFile, paxColumn);
         this.traits = traits;
+        if (!offsetArrayBlocks) {
+            throw new IOException ("variable-length blocks without offset arrays (written by older versions) are not supported. file=" + this);
+        }
     }
     
     @Override
@@ -39,34 +64,92 @@ public class LocalBlockCompressionVarLenReader<T extends Comparable<T>> extends
         if (currentBlockIndex < 0) {
             seekToBlock(0);
         }
-        if (!getProxyValueReader().hasMore()) {
+        if (!moveToValue()) {
             throw new IOException("EOF");
         }
-        if (currentBlockTuple >= blockTupleCounts[currentBlockIndex]) {
-            // move to next block
-            seekToBlock(currentBlockIndex + 1);
-            assert (currentBlockTuple == 0);
-            assert (currentBlockCursor == 0);
-        }
-        T value = traits.readValue(getProxyValueReader());
+        int start = blockOffsets[currentBlockTuple];
+        int end = blockOffsets[currentBlockTuple + 1];
+        T value = decodeValue(start, end - start);
         ++currentBlockTuple;
+        currentBlockCursor = end;
         return value;
     }
+    /** decodes a value at the given position of the current block. */
+    private T decodeValue (int start, int len) {
+        if (currentBlock != null) {
+            return traits.fromBytes(currentBlock, start, len);
+        }
+        // the block is in the block cache. copy only this value out of it
+        if (valueBuffer.length < len) {
+            valueBuffer = new byte[Math.max(len, 256)];
+        }
+        currentCachedData.position(start);
+        currentCachedData.get(valueBuffer, 0, len);
+        return traits.fromBytes(valueBuffer, 0, len);
+    }
+    /**
+     * moves to the next block if the current block is done.
+     * @return false if no more values
+     */
+    private boolean moveToValue () throws IOException {
+        if (currentBlockTuple < blockTupleCounts[currentBlockIndex]) {
+            return true;
+        }
+        if (currentBlockIndex == blockCount - 1) {
+            return false;
+        }
+        seekToBlock(currentBlockIndex + 1);
+        return true;
+    }
+    @Override
+    protected boolean hasMoreInCurrentBlock() {
+        // values might be empty, so we can't tell it from the byte position
+        return currentBlockIndex >= 0 && currentBlockTuple < blockTupleCounts[currentBlockIndex];
+    }
     @Override
     public int readValues(T[] buffer, int off, int len) throws IOException {
         if (currentBlockIndex < 0) {
             seekToBlock(0);
         }
-        if (!getProxyValueReader().hasMore()) {
-            return -1; // EOF
+        // decode values in each block without parsing length headers
+        int count = 0;
+        while (count < len && moveToValue()) {
+            int batch = Math.min(len - count, blockTupleCounts[currentBlockIndex] - currentBlockTuple);
+            int[] offsets = blockOffsets;
+            for (int i = 0; i < batch; ++i) {
+                int start = offsets[currentBlockTuple + i];
+                buffer[off + count + i] = decodeValue(start, offsets[currentBlockTuple + i + 1] - start);
+            }
+            currentBlockTuple += batch;
+            currentBlockCursor = offsets[currentBlockTuple];
+            count += batch;
         }
-        for (int i = off; i < off + len; ++i) {
-            if (!getProxyValueReader().hasMore()) {
-                return i - off; // EOF
+        return (count == 0 && len > 0) ? -1 : count;
+    }
+    @Override
+    public int readValues(StringArena dest, int len) throws IOException {
+        if (currentBlockIndex < 0) {
+            seekToBlock(0);
+        }
+        // values are contiguous in the block. just copy them
+        boolean cached = currentBlock == null;
+        int count = 0;
+        while (count < len && moveToValue()) {
+            int batch = Math.min(len - count, blockTupleCounts[currentBlockIndex] - currentBlockTuple);
+            int[] offsets = blockOffsets;
+            for (int i = 0; i < batch; ++i) {
+                int start = offsets[currentBlockTuple + i];
+                if (cached) {
+                    dest.append(currentCachedData, start, offsets[currentBlockTuple + i + 1] - start);
+                } else {
+                    dest.append(currentBlock, start, offsets[currentBlockTuple + i + 1] - start);
+                }
             }
-            buffer[i] = readValue();
+            currentBlockTuple += batch;
+            currentBlockCursor = offsets[currentBlockTuple];
+            count += batch;
         }
-        return len;
+        return (count == 0 && len > 0) ? -1 : count;
     }
     @Override
     public void skipValue() throws IOException {
@@ -78,20 +161,7 @@ public class LocalBlockCompressionVarLenReader<T extends Comparable<T>> extends
         if (currentBlockIndex < 0) {
             seekToBlock(0);
         }
-        if (currentBlockTuple + skip >= blockTupleCounts[currentBlockIndex]) {
-            // we have to move to other block 
-            int tupleToFind = blockStartTuples[currentBlockIndex] + currentBlockTuple + skip;
-            int block = searchBlock(tupleToFind);
-            seekToBlock(block);
-            assert (currentBlockTuple == 0);
-            int toSkip = tupleToFind - blockStartTuples[currentBlockIndex];
-            if (toSkip > 0) {
-                skipInBlock (toSkip);
-            }
-        } else {
-            // we are in the desired block
-            skipInBlock (skip);
-        }
+        seekToTupleAbsolute(blockStartTuples[currentBlockIndex] + currentBlockTuple + skip);
     }
     @Override
     public void seekToTupleAbsolute(int tuple) throws IOException {
@@ -104,119 +174,41 @@ public class LocalBlockCompressionVarLenReader<T extends Comparable<T>> extends
             assert (currentBlockTuple == 0);
         }
 
-        // need to move back to the beginning of this block?
-        if (blockStartTuples[currentBlockIndex] + currentBlockTuple > tuple) {
-            currentBlockCursor = 0;
-            currentBlockTuple = 0;
-        }
-
-        // then just skip in the blcok, which might internally do binary search
-        skipInBlock(tuple - blockStartTuples[currentBlockIndex] - currentBlockTuple);
-    }
-    
-    /** skip specified number of values within this block. */
-    private void skipInBlock (int skip) throws IOException {
-        if (skip == 0) {
-            return;
-        }
-        assert (currentBlockIndex >= 0);
-        assert (currentBlockTuple + skip < blockTupleCounts[currentBlockIndex]);
-        if (skip < 100) {
-            // don't consider using position index for small skips
-            skipInBlockSequentially (skip);
-        } else {
-            // do binary search
-            int tupleToFind = currentBlockTuple + skip;
-            InBlockPos pos = searchInBlockPosition(tupleToFind);
-            currentBlockCursor = pos.bytePosition;
-            currentBlockTuple = pos.tuple;
-            // remaining is sequential search
-            skipInBlockSequentially (tupleToFind - pos.tuple);
-        }
+        // O(1) in the block
+        currentBlockTuple = tuple - blockStartTuples[currentBlockIndex];
+        assert (currentBlockTuple >= 0 && currentBlockTuple <= blockTupleCounts[currentBlockIndex]);
+        currentBlockCursor = blockOffsets[currentBlockTuple];
     }
-    private void skipInBlockSequentially (int skip) throws IOException {
+
+    @Override
+    protected void readBlockFooter() throws IOException {
         ProxyValueReader reader = getProxyValueReader();
-        for (int i = 0; i < skip; ++i) {
-            int bytesToSkip = reader.readLengthHeader();
-            assert (bytesToSkip >= 0);
-            reader.skipBytes(bytesToSkip);
-        }
-        currentBlockTuple += skip;
-    }
-    
-    /**
-     * Tuple-number and byte-position pair.
-     */
-    private static class InBlockPos {
-        InBlockPos (int tuple, int bytePosition) {
-            this.tuple = tuple;
-            this.bytePosition = bytePosition;
-        }
-        public final int tuple;
-        public final int bytePosition;
-        @Override
-        public String toString() {
-            return "Pos: tuple=" + tuple + ", from " + bytePosition + "th bytes";
-        }
-    }
-    /**
-     * Returns the best position to <b>start</b> reading the block.
-     * The returned position is probably not the searched tuple itself
-     * because a position index is a sparse index.
-     * However, starting from the returned position will always find
-     * the searched tuple.
-     * @param tupleToFind the tuple position to find.
-     * @return the best position to <b>start</b> reading the block.
-     */
-    private InBlockPos searchInBlockPosition (int tupleToFind) {
-        // first, assure the first entry is strictly smaller than the searched tuple
-        int[] array = currentBlockFooter;
-        if (array[0] >= tupleToFind) {
-            return new InBlockPos (array[0], array[1]);
-        }
-        // also, assure the last entry is strictly larger than the searched tuple
-        if (array[array.length - 2] <= tupleToFind) {
-            return new InBlockPos (array[array.length - 2], array[array.length - 1]);
-        }
-        
-        // then, binary search
-        int low = 0; // the entry we know strictly smaller
-        int high = (array.length / 2); // the entry we know strictly larger
-        int mid = 0;
-        while (low <= high) {
-            mid = (low + high) >>> 1;
-            int midTuple = array[mid * 2];
-            if (midTuple < tupleToFind) {
-                low = mid + 1;
-            } else if (midTuple > tupleToFind) {
-                high = mid - 1;
-            } else {
-                return new InBlockPos (midTuple, array[mid * 2 + 1]); // exact match. lucky!
+        currentBlockCursor = currentBlockLength - 8;
+        int count = reader.readInt();
+        int bytesPerOffset = reader.readInt();
+        if (count != blockTupleCounts[currentBlockIndex] || (bytesPerOffset != 2 && bytesPerOffset != 4)) {
+            throw new IOException ("invalid block footer. corrupted file? count=" + count + ", bytesPerOffset=" + bytesPerOffset + ". file=" + this);
+        }
+        if (blockOffsets.length < count + 1) {
+            blockOffsets = new int[count + 1];
+        }
+        currentBlockCursor = currentBlockLength - 8 - bytesPerOffset * (count + 1);
+        if (bytesPerOffset == 2) {
+            if (shortOffsets.length < count + 1) {
+                shortOffsets = new short[count + 1];
             }
+            reader.readShorts(shortOffsets, 0, count + 1);
+            for (int i = 0; i <= count; ++i) {
+                blockOffsets[i] = shortOffsets[i] & 0xFFFF;
+            }
+        } else {
+            reader.readInts(blockOffsets, 0, count + 1);
         }
-        // not exact match. in this case, return the position we should start searching
-        int ret = (low > mid) ? low - 1 : mid - 1;
-        assert (ret >= 0);
-        assert (ret < array.length / 2);
-        assert (array[ret * 2] < tupleToFind);
-        assert (ret == (array.length / 2) - 1 || array[(ret + 1) * 2] > tupleToFind);
-        return new InBlockPos (array[ret * 2], array[ret * 2 + 1]);
-    }
-    
-    @Override
-    protected void readBlockFooter() throws IOException {
-        currentBlockCursor = currentBlock.length - 4;
-        int positionCount = getProxyValueReader().readInt();
-        assert (positionCount > 0);
-        currentBlockFooter = new int[2 * positionCount];
-        currentBlockCursor = currentBlock.length - 4 - 4 * 2 * positionCount;
-        int intRead = getProxyValueReader().readInts(currentBlockFooter, 0, currentBlockFooter.length);
-        assert (intRead == currentBlockFooter.length);
+        blockDataEnd = blockOffsets[count];
         currentBlockCursor = 0;
     }
     @Override
     protected int getCurrentBlockFooterByteSize() {
-    	assert (currentBlockFooter != null);
-        return currentBlockFooter.length * 4 + 4;
+        return currentBlockLength - blockDataEnd;
     }
 }
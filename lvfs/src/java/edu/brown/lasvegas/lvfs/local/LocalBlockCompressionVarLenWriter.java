@@ -1,99 +1,127 @@
 package edu.brown.lasvegas.lvfs.local;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.TypedArenaWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.VarLenValueTraits;
 import edu.brown.lasvegas.traits.VarbinValueTraits;
 import edu.brown.lasvegas.traits.VarcharValueTraits;
 import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Writer implementation of block-compressed files for variable-length columns.
- * <p>As this is variable-length, seeking in each block is not trivial.
- * Thus, each block ends with a list of position indexes just like
- * a position file for variable-length file. However, as this is 
- * just for a block, both tuple numbers and byte positions are 4 byte integers
- * and relative to the beginning of the block.</p>
- * 
- * <p>At the end of a block, a 4-byte integer specifies how many positions
- * are stored as footer (just like position file, this is a sparse index).
- * Let the number be n. 2n 4-byte integers precede the end-of-block
- * value. These integers are pairs of the tuple number
- * <b>RELATIVE TO the block's beginning tuple number</b> and the byte position
- * <b>IN THE BLOCK after decompression</b>.</p>
+ * <p>Each block has the offset-array layout. The values are stored contiguously
+ * without length headers, followed by the offsets of the values in the block:</p>
+ * <pre>
+ * [value 0][value 1]...[value n-1][offset 0 (=0)][offset 1]...[offset n][int n][int bytes per offset]
+ * </pre>
+ * <p>Offsets are relative to the beginning of the block after decompression and value i
+ * is from offset i to offset i+1. Offsets are 2-byte unsigned integers if the values in the block
+ * are smaller than 64KB (as usual), 4-byte integers otherwise. Hence, the reader can jump to any tuple
+ * in the block in O(1) and decode a batch of values without parsing length headers.
+ * The files end with {@link LocalBlockCompressionWriter#FOOTER_MAGIC_V4}.</p>
  * @param <T> Value type (e.g., String)
  */
-public final class LocalBlockCompressionVarLenWriter<T extends Comparable<T>> extends LocalBlockCompressionWriter<T, T[]> {
+public final class LocalBlockCompressionVarLenWriter<T extends Comparable<T>> extends LocalBlockCompressionWriter<T, T[]> implements TypedArenaWriter {
     private final VarLenValueTraits<T> traits;
-    private final int collectPerBytes;
 
-    // note that these are relative to the beginning of current block 
-    private int prevCollectPosition = -1; // to always collect at the first value
+    /** number of tuples in the current block. */
     private int relativeTuple = 0;
-    private ArrayList<Integer> collectedTuples = new ArrayList<Integer>();
-    private ArrayList<Integer> collectedPositions = new ArrayList<Integer>();
+    /** offset array of the current block. offsets[i + 1] is the end offset of value i and offsets[0] is always 0. */
+    private int[] offsets = new int[1 << 10];
+    /** reused to write out 2-byte offsets. */
+    private short[] shortOffsets = new short[offsets.length];
+    /** to copy out values of StringArena. */
+    private byte[] arenaBuffer;
 
     /** Constructs an instance of varchar column. */
     public static LocalBlockCompressionVarLenWriter<String> getInstanceVarchar(
-                    VirtualFile file, CompressionType compressionType, int collectPerBytes) throws IOException {
-        return new LocalBlockCompressionVarLenWriter<String>(file, new VarcharValueTraits(), compressionType, collectPerBytes);
+                    VirtualFile file, CompressionType compressionType) throws IOException {
+        return new LocalBlockCompressionVarLenWriter<String>(file, new VarcharValueTraits(), compressionType);
     }
     /** Constructs an instance of varbinary column. */
     public static LocalBlockCompressionVarLenWriter<ByteArray> getInstanceVarbin(
-                    VirtualFile file, CompressionType compressionType, int collectPerBytes) throws IOException {
-        return new LocalBlockCompressionVarLenWriter<ByteArray>(file, new VarbinValueTraits(), compressionType, collectPerBytes);
+                    VirtualFile file, CompressionType compressionType) throws IOException {
+        return new LocalBlockCompressionVarLenWriter<ByteArray>(file, new VarbinValueTraits(), compressionType);
     }
 
     public LocalBlockCompressionVarLenWriter(VirtualFile file, VarLenValueTraits<T> traits, CompressionType compressionType) throws IOException {
-        this(file, traits, compressionType, 1 << 13);
-    }
-    public LocalBlockCompressionVarLenWriter(VirtualFile file, VarLenValueTraits<T> traits, CompressionType compressionType, int collectPerBytes) throws IOException {
         super (file, traits, compressionType);
         this.traits = traits;
-        this.collectPerBytes = collectPerBytes;
     }
 
     @Override
     public void writeValues (T[] values, int off, int len) throws IOException {
+        collectValues(values, off, len);
+        for (int i = off; i < off + len; ++i) {
+            writeValueInternal(values[i]);
+        }
+    }
+    @Override
+    public void writeValues (StringArena values, int off, int len) throws IOException {
+        collectValues(values, off, len);
         for (int i = off; i < off + len; ++i) {
-            writeValue(values[i]);
+            flushBlockIfNeeded();
+            int length = values.getLength(i);
+            if (arenaBuffer == null || arenaBuffer.length < length) {
+                arenaBuffer = new byte[Math.max(length, 256)];
+            }
+            values.copyTo(i, arenaBuffer, 0);
+            getProxyValueWriter().writeBytes(arenaBuffer, 0, length);
+            addValueEnd();
+            ++super.curTuple;
+            ++relativeTuple;
         }
     }
     @Override
     public void writeValue(T value) throws IOException {
+        collectValues(value);
+        writeValueInternal(value);
+    }
+    @Override
+    protected boolean isValueCollectionSupported() {
+        return true;
+    }
+    private void writeValueInternal(T value) throws IOException {
         flushBlockIfNeeded();
-        collectTuplePosition();
-        traits.writeValue(getProxyValueWriter(), value);
+        byte[] bytes = traits.toBytes(value);
+        getProxyValueWriter().writeBytes(bytes, 0, bytes.length);
+        addValueEnd();
         ++super.curTuple;
         ++relativeTuple;
     }
-    private void collectTuplePosition () {
-        if (prevCollectPosition < 0 || currentBlockUsed - prevCollectPosition >= collectPerBytes) {
-            collectedTuples.add(relativeTuple);
-            collectedPositions.add(currentBlockUsed);
-            prevCollectPosition = currentBlockUsed;
-            assert (collectedTuples.size() == collectedPositions.size());
+    private void addValueEnd () {
+        if (relativeTuple + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
         }
+        offsets[relativeTuple + 1] = currentBlockUsed;
     }
     @Override
+    protected int getFooterMagic() {
+        return FOOTER_MAGIC_V4;
+    }
+    /** appends the offset array of the current block as its footer. */
+    @Override
     protected void writeBlockFooter() throws IOException {
-        // append position indexes as a footer
-        final int count = collectedTuples.size();
-        int[] intBuf = new int[count * 2 + 1];
-        for (int i = 0; i < count; ++i) {
-            intBuf[i * 2] = collectedTuples.get(i);
-            intBuf[i * 2 + 1] = collectedPositions.get(i);
+        final int count = relativeTuple;
+        final int bytesPerOffset = currentBlockUsed < (1 << 16) ? 2 : 4;
+        if (bytesPerOffset == 2) {
+            if (shortOffsets.length < count + 1) {
+                shortOffsets = new short[offsets.length];
+            }
+            for (int i = 1; i <= count; ++i) {
+                shortOffsets[i] = (short) offsets[i];
+            }
+            getProxyValueWriter().writeShorts(shortOffsets, 0, count + 1);
+        } else {
+            getProxyValueWriter().writeInts(offsets, 0, count + 1);
         }
-        intBuf[intBuf.length - 1] = count;
-        getProxyValueWriter().writeInts(intBuf, 0, intBuf.length);
-
-        // clear objects about current blocks
-        prevCollectPosition = -1;
+        getProxyValueWriter().writeInt(count);
+        getProxyValueWriter().writeInt(bytesPerOffset);
         relativeTuple = 0;
-        collectedTuples.clear();
-        collectedPositions.clear();
     }
 }
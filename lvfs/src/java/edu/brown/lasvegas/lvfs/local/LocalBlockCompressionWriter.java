@@ -1,10 +1,10 @@
 package edu.brown.lasvegas.lvfs.local;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.zip.Deflater;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
 import org.xerial.snappy.Snappy;
@@ -14,10 +14,9 @@ import edu.brown.lasvegas.lvfs.RawValueWriter;
 import edu.brown.lasvegas.lvfs.TypedBlockCmpWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.ValueTraits;
-import edu.brown.lasvegas.util.RawByteArrayOutputStream;
 
 /**
- * File writer for a block-compressed file such as Snappy and LZO.
+ * File writer for a block-compressed file such as Snappy and LZ4.
  * <p>Because of the block-level compressions, it has a fairly different
  * structure from other file formats.</p>
  * 
@@ -25,19 +24,51 @@ import edu.brown.lasvegas.util.RawByteArrayOutputStream;
  * it's impossible to jump to each tuple without compression. So, position
  * indexes are included in the compressed file too.</p>
  * 
- * <p>At the end of the file, two 4-byte integers specifies how many blocks and tuples
- * this file has. Let the number of blocks be n. 3n 4-byte integers precede the end-of-file
- * values. These integers are triplets of the tuple number, byte position and length of each block in this file.
- * For example, "12345,9000000,500000" means that a block starting with 12345-th tuple is located from
- * 9000000-th bytes to 9500000 in the compressed file.</p>
+ * <p>The file ends with a 4-byte magic number ({@link #FOOTER_MAGIC_V3}). Preceding it,
+ * two 4-byte integers specifies how many blocks and tuples
+ * this file has. Let the number of blocks be n. n entries precede the end-of-file
+ * values. Each entry is the tuple number (4-byte), byte position (8-byte),
+ * length (4-byte) and uncompressed length (4-byte) of each block in this file.
+ * For example, "12345,9000000,500000,1000000" means that a block starting with 12345-th tuple is located from
+ * 9000000-th bytes to 9500000 in the compressed file and becomes 1000000 bytes after decompression.
+ * The uncompressed length lets the reader decompress each block into a reused buffer.</p>
  * 
- * <p>Each block in compressed form is merely a byte array.
+ * <p>Variable-length files end with {@link #FOOTER_MAGIC_V4} instead. The file footer is same as version 3,
+ * but the blocks have the offset-array layout (see {@link LocalBlockCompressionVarLenWriter}).
+ * Variable-length files written by older versions are not readable any more.</p>
+ *
+ * <p>Fixed-length files written by older versions are still readable. Version 2 ({@link #FOOTER_MAGIC_V2})
+ * lacks the uncompressed length. Version 1 has no magic number and its triplets consist of
+ * 4-byte integers only. Because the last 4 bytes of such files is
+ * the number of tuples, which is never negative, the (negative) magic number tells the format.</p>
+ * 
+ * <p>Each block in compressed form is merely a byte array. GZIP blocks are zlib (deflate) streams
+ * since version 3, and gzip streams in older versions. LZ4 blocks are in the LZ4 block format
+ * without frame (see {@link LocalLZ4}), which exist only since version 3.
  * After decompression, the block is equivalent to an independent column file (FixLen or VarLen).
  * However, each block might have a per-block footer. See the implementation class for more details.</p>
+ *
+ * <p>By default, a block is cut when it exceeds a byte size. {@link #setTuplesPerBlock(int)} instead cuts
+ * blocks at a fixed number of tuples so that blocks of several columns cover the same tuples.
+ * Such files are interleaved into a PAX file ({@link LocalPaxFile}), which is also the only
+ * place {@link CompressionType#NONE} (stored blocks) is allowed.</p>
  */
 public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> extends LocalTypedWriterBase<T, AT> implements TypedBlockCmpWriter<T, AT> {
     private static Logger LOG = Logger.getLogger(LocalBlockCompressionWriter.class);
 
+    /** the magic number at the end of block-compressed files with 64-bit block positions. */
+    public static final int FOOTER_MAGIC_V2 = 0xB10C0002;
+    /** the magic number at the end of block-compressed files with uncompressed block lengths. */
+    public static final int FOOTER_MAGIC_V3 = 0xB10C0003;
+    /** the magic number at the end of variable-length block-compressed files whose blocks have offset arrays. */
+    public static final int FOOTER_MAGIC_V4 = 0xB10C0004;
+    /** byte size of each block entry in the file footer of version 2. */
+    static final int FOOTER_ENTRY_SIZE_V2 = 4 + 8 + 4;
+    /** byte size of each block entry in the file footer of version 3. */
+    static final int FOOTER_ENTRY_SIZE_V3 = 4 + 8 + 4 + 4;
+    /** byte size of the fixed part at the end of the file footer (same in version 2 and 3). */
+    static final int FOOTER_TAIL_SIZE = 4 + 4 + 4;
+
     /** compression type for the file. */
     private final CompressionType compressionType;
     /** byte size of uncompressed block to compress together (actual block size might exceed this). */
@@ -47,15 +78,23 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
     /** how many bytes of currentBlock are filled out. */
     protected int currentBlockUsed = 0;
     private byte[] compressionBuffer;
+    /** reused for GZIP_BEST_COMPRESSION. */
+    private Deflater deflater;
+    /** reused for LZ4 and LZ4_HC. */
+    private LocalLZ4.Compressor lz4;
     private int currentBlockStartTuple = 0;
+    /** if positive, blocks are cut at this number of tuples instead of byte size. */
+    private int tuplesPerBlock = 0;
     private long totalUncompressedSize = 0L;
 
     /** List of the tuples to start each block. */
     private final ArrayList<Integer> blockStartTuples = new ArrayList<Integer>();
     /** List of the byte position (in compressed form) of each block. */
-    private final ArrayList<Integer> blockPositions = new ArrayList<Integer>();
+    private final ArrayList<Long> blockPositions = new ArrayList<Long>();
     /** List of the byte length (in compressed form) of each block. */
     private final ArrayList<Integer> blockLengthes = new ArrayList<Integer>();
+    /** List of the byte length (without compression) of each block. */
+    private final ArrayList<Integer> blockUncompressedLengthes = new ArrayList<Integer>();
     private final ProxyValueWriter proxyWriter;
     protected final ProxyValueWriter getProxyValueWriter () {
         return proxyWriter;
@@ -68,6 +107,13 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
             blockSizeInKB = 32;
         } else if (compressionType == CompressionType.GZIP_BEST_COMPRESSION) {
             blockSizeInKB = 128;
+            deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        } else if (compressionType == CompressionType.LZ4 || compressionType == CompressionType.LZ4_HC) {
+            // LZ4 can refer to only 64KB before, so larger blocks wouldn't improve the ratio much
+            blockSizeInKB = 64;
+            lz4 = new LocalLZ4.Compressor(compressionType == CompressionType.LZ4_HC);
+        } else if (compressionType == CompressionType.NONE) {
+            blockSizeInKB = 64;
         } else {
             throw new IOException ("Unexpected compression type for block compression:" + compressionType);
         }
@@ -87,7 +133,7 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
             // in that case, expand the currentBlock.
             if (currentBlock.length - currentBlockUsed < len) {
                 int newSize = (currentBlock.length + len) * 12 / 10; //assure the len with 20% margin
-                LOG.warn("As an unlucky (only in terms of performance) incident, we had to expand currentBlock from " + currentBlock.length + " to " + newSize);
+                warnExpansion(newSize);
                 currentBlock = Arrays.copyOf(currentBlock, newSize);
             }
             // simply copy into currentBlock
@@ -98,22 +144,61 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
         public void writeByte(byte v) throws IOException {
             if (currentBlock.length - currentBlockUsed < 1) {
                 int newSize = (currentBlock.length + 1) * 12 / 10; //assure the len with 20% margin
-                LOG.warn("As an unlucky (only in terms of performance) incident, we had to expand currentBlock from " + currentBlock.length + " to " + newSize);
+                warnExpansion(newSize);
                 currentBlock = Arrays.copyOf(currentBlock, newSize);
             }
             currentBlock[currentBlockUsed] = v;
             ++currentBlockUsed;
         }
     }
+    private void warnExpansion (int newSize) {
+        if (tuplesPerBlock > 0) {
+            // blocks of a fixed number of tuples can be larger than blockSizeInKB. expected.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("expanded currentBlock from " + currentBlock.length + " to " + newSize);
+            }
+        } else {
+            LOG.warn("As an unlucky (only in terms of performance) incident, we had to expand currentBlock from " + currentBlock.length + " to " + newSize);
+        }
+    }
+    /**
+     * Makes this writer cut blocks at the given number of tuples regardless of their byte size.
+     * Must be called before writing values.
+     * @param tuplesPerBlock number of tuples in each block (except the last block)
+     */
+    public final void setTuplesPerBlock (int tuplesPerBlock) {
+        assert (curTuple == 0);
+        assert (tuplesPerBlock > 0);
+        this.tuplesPerBlock = tuplesPerBlock;
+    }
+    /** returns the number of tuples in each block if blocks are cut at a fixed number of tuples, 0 otherwise. */
+    public final int getTuplesPerBlock () {
+        return tuplesPerBlock;
+    }
+    /** returns the number of tuples that can be added to the current block before it's cut by {@link #setTuplesPerBlock(int)}. */
+    protected final int getRemainingTuplesInBlock () {
+        if (tuplesPerBlock <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return tuplesPerBlock - (curTuple - currentBlockStartTuple);
+    }
     /**
      * Check how full the current buffer is, and compress it and write it out
      * if needed.
      */
     public final void flushBlockIfNeeded () throws IOException {
-        if (currentBlockUsed >= (blockSizeInKB << 10)) {
+        if (tuplesPerBlock > 0) {
+            if (curTuple - currentBlockStartTuple >= tuplesPerBlock) {
+                flushBlock();
+            }
+        } else if (currentBlockUsed >= (blockSizeInKB << 10)) {
             flushBlock();
         }
     }
+    /** returns the magic number to write at the end of the file. */
+    protected int getFooterMagic () {
+        return FOOTER_MAGIC_V3;
+    }
     /** if the implementation needs a footer for each block, override this. */
     protected void writeBlockFooter () throws IOException {}
     /**
@@ -133,24 +218,35 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
                 // this might happen, but not sure how Snappy-java handles exceptional cases..
                 throw new IOException ("compresion buffer too small???");
             }
+        } else if (compressionType == CompressionType.NONE) {
+            // stored block. just write out the current block as it is
+            sizeAfterCompression = currentBlockUsed;
+        } else if (lz4 != null) {
+            int maxLength = LocalLZ4.maxCompressedLength(currentBlockUsed);
+            if (compressionBuffer.length < maxLength) {
+                compressionBuffer = new byte[maxLength];
+            }
+            sizeAfterCompression = lz4.compress(currentBlock, 0, currentBlockUsed, compressionBuffer, 0);
         } else {
             assert (compressionType == CompressionType.GZIP_BEST_COMPRESSION);
-            RawByteArrayOutputStream rawBuffer = new RawByteArrayOutputStream(compressionBuffer);
-            // directly specify level by double brace initialization (kind of a hack)
-            GZIPOutputStream gzip = new GZIPOutputStream(rawBuffer) {{
-                def.setLevel(Deflater.BEST_COMPRESSION);
-            }};
-            gzip.write(currentBlock, 0, currentBlockUsed);
-            gzip.flush();
-            gzip.close();
-            compressionBuffer = rawBuffer.getRawBuffer(); // in case ByteArrayOutputStream expanded it
-            sizeAfterCompression = rawBuffer.size();
+            deflater.reset();
+            deflater.setInput(currentBlock, 0, currentBlockUsed);
+            deflater.finish();
+            sizeAfterCompression = 0;
+            while (!deflater.finished()) {
+                if (sizeAfterCompression == compressionBuffer.length) {
+                    // incompressible data. expand the buffer
+                    compressionBuffer = Arrays.copyOf(compressionBuffer, compressionBuffer.length * 2);
+                }
+                sizeAfterCompression += deflater.deflate(compressionBuffer, sizeAfterCompression, compressionBuffer.length - sizeAfterCompression);
+            }
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("compressed and wrote a block: " + currentBlockUsed + "bytes to " + sizeAfterCompression + "bytes");
         }
-        super.getRawValueWriter().writeBytes(compressionBuffer, 0, sizeAfterCompression);
+        super.getRawValueWriter().writeBytes(compressionType == CompressionType.NONE ? currentBlock : compressionBuffer, 0, sizeAfterCompression);
         blockLengthes.add(sizeAfterCompression);
+        blockUncompressedLengthes.add(currentBlockUsed);
         totalUncompressedSize += currentBlockUsed;
         currentBlockUsed = 0;
         currentBlockStartTuple = curTuple;
@@ -172,11 +268,13 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
         flushBlock();
         // write out the end-of-file footer.
         int blockCount = blockStartTuples.size();
-        int[] footer = new int[blockCount * 3 + 2];
+        byte[] footer = new byte[blockCount * FOOTER_ENTRY_SIZE_V3 + FOOTER_TAIL_SIZE];
+        ByteBuffer footerBuffer = ByteBuffer.wrap(footer);
         for (int i = 0; i < blockCount; ++i) {
-            footer[3 * i] = blockStartTuples.get(i);
-            footer[3 * i + 1] = blockPositions.get(i);
-            footer[3 * i + 2] = blockLengthes.get(i);
+            footerBuffer.putInt(blockStartTuples.get(i));
+            footerBuffer.putLong(blockPositions.get(i));
+            footerBuffer.putInt(blockLengthes.get(i));
+            footerBuffer.putInt(blockUncompressedLengthes.get(i));
             if (i == 0) {
                 assert (blockStartTuples.get(i) == 0);
                 assert (blockPositions.get(i) == 0);
@@ -186,15 +284,21 @@ public abstract class LocalBlockCompressionWriter<T extends Comparable<T>, AT> e
                 assert (blockPositions.get(i) - blockPositions.get(i - 1) == blockLengthes.get(i - 1));
             }
         }
-        footer[footer.length - 2] = blockCount;
-        footer[footer.length - 1] = curTuple;
-        getRawValueWriter().writeInts(footer, 0, footer.length);
-        totalUncompressedSize += footer.length * 4;
+        footerBuffer.putInt(blockCount);
+        footerBuffer.putInt(curTuple);
+        footerBuffer.putInt(getFooterMagic());
+        assert (!footerBuffer.hasRemaining());
+        getRawValueWriter().writeBytes(footer, 0, footer.length);
+        totalUncompressedSize += footer.length;
         footerWritten = true;
         return getRawValueWriter().getCRC32Value();
     }
     @Override
     protected void beforeClose() throws IOException {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
         if (!footerWritten) {
             // just warn. the user might have simply canceled writing this file 
             LOG.warn("this file format needs a file-footer but close() was called before writeFileFooter(). : " + this);
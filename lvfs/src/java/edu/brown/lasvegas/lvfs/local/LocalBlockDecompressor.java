@@ -0,0 +1,162 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.xerial.snappy.Snappy;
+
+import edu.brown.lasvegas.CompressionType;
+
+/**
+ * Decompresses blocks of a block-compressed file into a reusable buffer.
+ * <p>Once the buffer has grown to the largest block in the file, decompressing a block
+ * allocates nothing. Snappy and LZ4 blocks are raw-uncompressed into the buffer and
+ * deflate blocks are inflated by a reused {@link Inflater} directly into the buffer.</p>
+ * 
+ * <p>Files written by older versions don't record the uncompressed size of each block
+ * and their GZIP blocks have the gzip header/trailer. We still read them, but
+ * via {@link GZIPInputStream}, which involves a few allocations per block.</p>
+ * 
+ * <p>{@link CompressionType#NONE} is accepted for stored (uncompressed) blocks, which appear
+ * only in PAX files ({@link LocalPaxFile}). They are simply copied to the buffer.</p>
+ *
+ * <p>This object is not thread-safe. Use one instance per thread.</p>
+ */
+public final class LocalBlockDecompressor {
+    private final CompressionType compressionType;
+    /** whether GZIP blocks have the gzip header/trailer (files written by older versions). */
+    private final boolean gzipFramed;
+    /** reused for deflate blocks. */
+    private Inflater inflater;
+    /** buffer to receive the decompressed block. grows as needed. */
+    private byte[] buffer = new byte[0];
+
+    /**
+     * @param compressionType compression type of the file
+     * @param gzipFramed whether GZIP blocks have the gzip header/trailer
+     */
+    public LocalBlockDecompressor (CompressionType compressionType, boolean gzipFramed) throws IOException {
+        if (compressionType != CompressionType.SNAPPY && compressionType != CompressionType.GZIP_BEST_COMPRESSION
+                && compressionType != CompressionType.LZ4 && compressionType != CompressionType.LZ4_HC
+                && compressionType != CompressionType.NONE) {
+            throw new IOException ("Unexpected compression type for block compression:" + compressionType);
+        }
+        this.compressionType = compressionType;
+        this.gzipFramed = gzipFramed;
+    }
+
+    /**
+     * Returns the buffer that contains the last decompressed block.
+     * The content is overwritten by the next call of {@link #decompress(byte[], int, int, int)}.
+     */
+    public byte[] getBuffer () {
+        return buffer;
+    }
+
+    private void ensureBuffer (int size) {
+        if (buffer.length < size) {
+            // 20% margin to avoid repeated expansions
+            buffer = new byte[Math.max(size, (int) Math.min((long) buffer.length * 12 / 10, Integer.MAX_VALUE))];
+        }
+    }
+
+    /**
+     * Decompresses the given block into the internal buffer.
+     * @param src compressed data
+     * @param srcOff offset of the compressed data
+     * @param srcLen byte length of the compressed data
+     * @param uncompressedLength byte length of the decompressed block. negative if not known.
+     * @return byte length of the decompressed block, which is stored in {@link #getBuffer()}
+     */
+    public int decompress (byte[] src, int srcOff, int srcLen, int uncompressedLength) throws IOException {
+        if (compressionType == CompressionType.NONE) {
+            if (uncompressedLength >= 0 && uncompressedLength != srcLen) {
+                throw new IOException ("unexpected uncompressed size. corrupted file? expected=" + uncompressedLength + ", actual=" + srcLen);
+            }
+            ensureBuffer(srcLen);
+            System.arraycopy(src, srcOff, buffer, 0, srcLen);
+            return srcLen;
+        }
+        if (compressionType == CompressionType.SNAPPY) {
+            if (uncompressedLength < 0) {
+                uncompressedLength = Snappy.uncompressedLength(src, srcOff, srcLen);
+            }
+            ensureBuffer(uncompressedLength);
+            int len = Snappy.rawUncompress(src, srcOff, srcLen, buffer, 0);
+            if (len != uncompressedLength) {
+                throw new IOException ("unexpected uncompressed size. corrupted file? expected=" + uncompressedLength + ", actual=" + len);
+            }
+            return len;
+        }
+        if (compressionType == CompressionType.LZ4 || compressionType == CompressionType.LZ4_HC) {
+            if (uncompressedLength < 0) {
+                // LZ4 files are always written with uncompressed sizes
+                throw new IOException ("uncompressed size must be known for LZ4 blocks");
+            }
+            ensureBuffer(uncompressedLength);
+            return LocalLZ4.decompress(src, srcOff, srcLen, buffer, 0, uncompressedLength);
+        }
+        assert (compressionType == CompressionType.GZIP_BEST_COMPRESSION);
+        if (gzipFramed) {
+            return decompressGzipFramed (src, srcOff, srcLen);
+        }
+        if (uncompressedLength < 0) {
+            throw new IOException ("uncompressed size must be known for deflate blocks");
+        }
+        ensureBuffer(uncompressedLength);
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            inflater.reset();
+        }
+        inflater.setInput(src, srcOff, srcLen);
+        try {
+            int len = 0;
+            while (len < uncompressedLength && !inflater.finished()) {
+                int inflated = inflater.inflate(buffer, len, uncompressedLength - len);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                len += inflated;
+            }
+            if (len != uncompressedLength || !inflater.finished()) {
+                throw new IOException ("unexpected uncompressed size. corrupted file? expected=" + uncompressedLength + ", actual=" + len);
+            }
+            return len;
+        } catch (DataFormatException ex) {
+            throw new IOException ("failed to inflate a block. corrupted file?", ex);
+        }
+    }
+
+    /** legacy format. GZipInputStream doesn't provide the uncompressed size, so grow the buffer as we read. */
+    private int decompressGzipFramed (byte[] src, int srcOff, int srcLen) throws IOException {
+        GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(src, srcOff, srcLen), 1 << 16);
+        ensureBuffer(1 << 16);
+        int len = 0;
+        while (true) {
+            if (len == buffer.length) {
+                byte[] expanded = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, expanded, 0, len);
+                buffer = expanded;
+            }
+            int read = gzip.read(buffer, len, buffer.length - len);
+            if (read < 0) {
+                break;
+            }
+            len += read;
+        }
+        gzip.close();
+        return len;
+    }
+
+    /** releases the native resource of the inflater, if any. */
+    public void release () {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A small thread pool shared by all block-compressed file readers in a node
+ * to read and decompress blocks ahead of the current block.
+ * <p>While a reader sequentially consumes a block, the next {@link #getDepth()} blocks
+ * are read and decompressed in this pool so that I/O and decompression overlap
+ * with the consumer. Each reader holds at most depth + 1 decompressed blocks,
+ * so memory consumption is bounded.</p>
+ * @see LocalBlockCompressionReader#setReadAhead(LocalBlockReadAhead)
+ */
+public final class LocalBlockReadAhead implements Closeable {
+    private static Logger LOG = Logger.getLogger(LocalBlockReadAhead.class);
+
+    private final ExecutorService executor;
+    private final int depth;
+
+    /**
+     * @param threads number of threads to read and decompress blocks
+     * @param depth number of blocks to read ahead in each reader
+     */
+    public LocalBlockReadAhead (int threads, int depth) {
+        if (threads <= 0 || depth <= 0) {
+            throw new IllegalArgumentException ("threads and depth must be positive: threads=" + threads + ", depth=" + depth);
+        }
+        this.depth = depth;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger sequence = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lvfs-block-read-ahead-" + sequence.incrementAndGet());
+                thread.setDaemon(true); // never prevents the JVM from exiting
+                return thread;
+            }
+        });
+        LOG.info("started block read-ahead pool. threads=" + threads + ", depth=" + depth);
+    }
+
+    /** returns the number of blocks to read ahead in each reader. */
+    public int getDepth () {
+        return depth;
+    }
+
+    /** submits a task to read and decompress a block. */
+    <V> Future<V> submit (Callable<V> task) {
+        return executor.submit(task);
+    }
+
+    /** returns whether this pool has been closed. */
+    public boolean isClosed () {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Stops the thread pool. Readers that are still using this object
+     * fall back to synchronous reads.
+     */
+    @Override
+    public void close () {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,364 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.BloomFilter;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.DoubleValueTraits;
+import edu.brown.lasvegas.traits.FloatValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.SmallintValueTraits;
+import edu.brown.lasvegas.traits.TinyintValueTraits;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.traits.VarbinValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Implementation of Bloom filter file.
+ * <p>Each key is hashed into a 64-bit value, from which the bit positions are derived
+ * by double hashing (the lower and upper 32 bits). Integer keys are hashed by their
+ * numeric values, so a filter on an INTEGER column can be probed with BIGINT keys and vice versa.</p>
+ * <p>The file format is the number of hash functions (4 bytes), the number of distinct keys (4 bytes)
+ * and the serialized array of 64-bit words.</p>
+ * @see BloomFilter
+ * @see LocalBloomFilterBuilder
+ */
+public class LocalBloomFilter<T extends Comparable<T>, AT> implements BloomFilter<T, AT> {
+    private static Logger LOG = Logger.getLogger(LocalBloomFilter.class);
+
+    /**
+     * Reads a Bloom filter file into this object.
+     * This object simply reads the entire file like
+     * {@link LocalPosFile#LocalPosFile(VirtualFile)}.
+     * @param file the Bloom filter file
+     * @param type value type of the data file
+     * @see #writeToFile(VirtualFile)
+     */
+    @SuppressWarnings("unchecked")
+    public LocalBloomFilter (VirtualFile file, ColumnType type) throws IOException {
+        this (file, (ValueTraits<T, AT>) ValueTraitsFactory.getInstance(type));
+    }
+    /** overload to receive traits instead of column type. */
+    public LocalBloomFilter (VirtualFile file, ValueTraits<T, AT> traits) throws IOException {
+        this.hasher = getHasher(traits);
+        int fileSize = (int) file.length();
+        if (fileSize > 1 << 28) {
+            throw new IOException ("the Bloom filter file : " + file + " seems too large. " + (fileSize >> 20) + "MB");
+        }
+        byte[] bytes = new byte[fileSize];
+        InputStream in = file.getInputStream();
+        int read = 0;
+        while (read < bytes.length) {
+            int len = in.read(bytes, read, bytes.length - read);
+            if (len < 0) {
+                break;
+            }
+            read += len;
+        }
+        in.close();
+        if (read != bytes.length) {
+            throw new IOException ("unexpected EOF while reading Bloom filter file:" + file);
+        }
+        ByteBuffer byteBuffer  = ByteBuffer.wrap(bytes);
+        this.hashCount = byteBuffer.getInt();
+        this.keyCount = byteBuffer.getInt();
+        this.words = longTraits.deserializeArray(byteBuffer);
+        this.bitCount = (long) words.length << 6;
+        if (hashCount <= 0 || words.length == 0) {
+            throw new IOException ("invalid Bloom filter file. corrupted file? hashCount=" + hashCount + ", words=" + words.length + ". file=" + file);
+        }
+        assert (byteBuffer.position() == bytes.length);
+    }
+
+    /**
+     * Constructs a Bloom filter with the given bits.
+     * Used when writing out a Bloom filter file.
+     * @see LocalBloomFilterBuilder
+     */
+    public LocalBloomFilter (long[] words, int hashCount, int keyCount, ValueTraits<T, AT> traits) {
+        assert (words.length > 0);
+        assert (hashCount > 0);
+        this.hasher = getHasher(traits);
+        this.words = words;
+        this.bitCount = (long) words.length << 6;
+        this.hashCount = hashCount;
+        this.keyCount = keyCount;
+    }
+
+    private final KeyHasher<T, AT> hasher;
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+    private final int keyCount;
+    private final BigintValueTraits longTraits = new BigintValueTraits();
+    /** reused buffer for hash values of batches. */
+    private long[] hashBuffer;
+
+    /** sets the bits for the given hash value. */
+    static void setBits (long[] words, long bitCount, int hashCount, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; ++i) {
+            int combined = h1 + i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            long bit = combined % bitCount;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+    private boolean testBits (long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; ++i) {
+            int combined = h1 + i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            long bit = combined % bitCount;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private long[] getHashBuffer (int len) {
+        if (hashBuffer == null || hashBuffer.length < len) {
+            hashBuffer = new long[Math.max(len, 1 << 10)];
+        }
+        return hashBuffer;
+    }
+
+    @Override
+    public boolean mightContain(T key) {
+        return testBits(hasher.hash(key));
+    }
+    @Override
+    public int mightContain(AT keys, int off, int len, boolean[] results) {
+        long[] hashes = getHashBuffer(len);
+        hasher.hash(keys, off, len, hashes, 0);
+        int count = 0;
+        for (int i = 0; i < len; ++i) {
+            boolean result = testBits(hashes[i]);
+            results[off + i] = result;
+            if (result) {
+                ++count;
+            }
+        }
+        return count;
+    }
+    @Override
+    public boolean mightContainAny(AT keys, int off, int len) {
+        long[] hashes = getHashBuffer(len);
+        hasher.hash(keys, off, len, hashes, 0);
+        for (int i = 0; i < len; ++i) {
+            if (testBits(hashes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    @Override
+    public int getKeyCount() {
+        return keyCount;
+    }
+    @Override
+    public int getHashCount() {
+        return hashCount;
+    }
+    @Override
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /** Returns the internal bits. Only for testing. */
+    long[] getWords() {
+        return words;
+    }
+
+    @Override
+    public void writeToFile(VirtualFile file) throws IOException {
+        long startMillisec = System.currentTimeMillis();
+        int fileSize = 8 + longTraits.getSerializedByteSize(words);
+        byte[] bytes = new byte[fileSize];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        byteBuffer.putInt(hashCount);
+        byteBuffer.putInt(keyCount);
+        int writtenBytes = 8;
+        writtenBytes += longTraits.serializeArray(words, byteBuffer);
+        assert (bytes.length == writtenBytes);
+        assert (byteBuffer.position() == writtenBytes);
+        OutputStream out = file.getOutputStream();
+        out.write(bytes);
+        out.flush();
+        out.close();
+        long endMillisec = System.currentTimeMillis();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Wrote out a Bloom filter file (" + file.getAbsolutePath()
+                            + "):" + keyCount + " keys, " + hashCount + " hashes, " + file.length()
+                            + " bytes, in " + (endMillisec - startMillisec) + "ms");
+        }
+    }
+
+    /** finalization step of MurmurHash3. spreads the bits of 64-bit values. */
+    static long mix (long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Computes 64-bit hash values of keys without boxing them.
+     * @param <T> Value type (e.g., Integer)
+     * @param <AT> Array type (e.g., int[]).
+     */
+    static abstract class KeyHasher<T, AT> {
+        abstract long hash (T key);
+        /** computes hash values of keys[off..off+len) into hashes[hashOff..hashOff+len). */
+        abstract void hash (AT keys, int off, int len, long[] hashes, int hashOff);
+        /** computes the hash value of the index-th key in the arena. Only for VARCHAR/VARBINARY. */
+        long hash (StringArena keys, int index) {
+            throw new UnsupportedOperationException("this data type isn't stored in StringArena: " + this);
+        }
+    }
+
+    /**
+     * Returns the key hasher for the given data type.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>, AT> KeyHasher<T, AT> getHasher (ValueTraits<T, AT> traits) {
+        if (traits instanceof BigintValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<Long, long[]>() {
+                long hash(Long key) {
+                    return mix(key);
+                }
+                void hash(long[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = mix(keys[off + i]);
+                    }
+                }
+            };
+        } else if (traits instanceof IntegerValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<Integer, int[]>() {
+                long hash(Integer key) {
+                    return mix(key);
+                }
+                void hash(int[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = mix(keys[off + i]);
+                    }
+                }
+            };
+        } else if (traits instanceof SmallintValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<Short, short[]>() {
+                long hash(Short key) {
+                    return mix(key);
+                }
+                void hash(short[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = mix(keys[off + i]);
+                    }
+                }
+            };
+        } else if (traits instanceof TinyintValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<Byte, byte[]>() {
+                long hash(Byte key) {
+                    return mix(key);
+                }
+                void hash(byte[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = mix(keys[off + i]);
+                    }
+                }
+            };
+        } else if (traits instanceof DoubleValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<Double, double[]>() {
+                long hash(Double key) {
+                    return mix(Double.doubleToLongBits(key));
+                }
+                void hash(double[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = mix(Double.doubleToLongBits(keys[off + i]));
+                    }
+                }
+            };
+        } else if (traits instanceof FloatValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<Float, float[]>() {
+                long hash(Float key) {
+                    return mix(Float.floatToIntBits(key));
+                }
+                void hash(float[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = mix(Float.floatToIntBits(keys[off + i]));
+                    }
+                }
+            };
+        } else if (traits instanceof VarcharValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<String, String[]>() {
+                long hash(String key) {
+                    long h = 0x9E3779B97F4A7C15L;
+                    for (int i = 0; i < key.length(); ++i) {
+                        h = (h ^ key.charAt(i)) * 0x100000001B3L;
+                    }
+                    return mix(h ^ key.length());
+                }
+                void hash(String[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = hash(keys[off + i]);
+                    }
+                }
+                long hash(StringArena keys, int index) {
+                    if (keys.maxByte(index, index + 1) >= 0x80) {
+                        // the hash is computed from UTF-16 chars, which differ from the bytes for non-ASCII strings
+                        return hash(keys.getString(index));
+                    }
+                    int length = keys.getLength(index);
+                    long h = 0x9E3779B97F4A7C15L;
+                    for (int i = 0; i < length; ++i) {
+                        h = (h ^ keys.getByte(index, i)) * 0x100000001B3L;
+                    }
+                    return mix(h ^ length);
+                }
+            };
+        } else if (traits instanceof VarbinValueTraits) {
+            return (KeyHasher<T, AT>) new KeyHasher<ByteArray, ByteArray[]>() {
+                long hash(ByteArray key) {
+                    byte[] bytes = key.getBytes();
+                    long h = 0x9E3779B97F4A7C15L;
+                    int length = bytes == null ? 0 : bytes.length;
+                    for (int i = 0; i < length; ++i) {
+                        h = (h ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+                    }
+                    return mix(h ^ length);
+                }
+                void hash(ByteArray[] keys, int off, int len, long[] hashes, int hashOff) {
+                    for (int i = 0; i < len; ++i) {
+                        hashes[hashOff + i] = hash(keys[off + i]);
+                    }
+                }
+                long hash(StringArena keys, int index) {
+                    int length = keys.getLength(index);
+                    long h = 0x9E3779B97F4A7C15L;
+                    for (int i = 0; i < length; ++i) {
+                        h = (h ^ (keys.getByte(index, i) & 0xFF)) * 0x100000001B3L;
+                    }
+                    return mix(h ^ length);
+                }
+            };
+        }
+        throw new IllegalArgumentException("unexpected data type for Bloom filter: " + traits);
+    }
+}
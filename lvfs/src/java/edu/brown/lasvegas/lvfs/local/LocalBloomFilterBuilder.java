@@ -0,0 +1,103 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.util.Arrays;
+
+import edu.brown.lasvegas.lvfs.BloomFilter;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Collects hash values of keys while a data file is written and then
+ * constructs a Bloom filter sized for the number of distinct keys.
+ * <p>The number of distinct keys isn't known until the end of the file, so this object keeps
+ * the distinct hash values (8 bytes each) until {@link #build()}. Duplicate hash values are
+ * removed whenever the buffer becomes full, so low-cardinality columns need little memory.</p>
+ * @see LocalBloomFilter
+ */
+public class LocalBloomFilterBuilder<T extends Comparable<T>, AT> {
+    private final ValueTraits<T, AT> traits;
+    private final LocalBloomFilter.KeyHasher<T, AT> hasher;
+    private final int bitsPerKey;
+
+    /** collected hash values. the first uniqueCount entries are sorted and distinct. */
+    private long[] hashes = new long[1 << 12];
+    private int hashCount = 0;
+    private int uniqueCount = 0;
+
+    public LocalBloomFilterBuilder (ValueTraits<T, AT> traits) {
+        this (traits, BloomFilter.DEFAULT_BITS_PER_KEY);
+    }
+    public LocalBloomFilterBuilder (ValueTraits<T, AT> traits, int bitsPerKey) {
+        if (bitsPerKey <= 0) {
+            throw new IllegalArgumentException ("invalid bits per key: " + bitsPerKey);
+        }
+        this.traits = traits;
+        this.hasher = LocalBloomFilter.getHasher(traits);
+        this.bitsPerKey = bitsPerKey;
+    }
+
+    /** Adds a single key. Avoid using this, and instead use {@link #add(Object, int, int)} whenever possible. */
+    public void add (T key) {
+        if (hashCount == hashes.length) {
+            compact ();
+        }
+        hashes[hashCount++] = hasher.hash(key);
+    }
+
+    /** Adds the given keys to the Bloom filter. */
+    public void add (AT keys, int off, int len) {
+        int added = 0;
+        while (added < len) {
+            if (hashCount == hashes.length) {
+                compact ();
+            }
+            int toAdd = Math.min(len - added, hashes.length - hashCount);
+            hasher.hash(keys, off + added, toAdd, hashes, hashCount);
+            hashCount += toAdd;
+            added += toAdd;
+        }
+    }
+
+    /** Adds the keys [off, off + len) in the arena. Only for VARCHAR/VARBINARY. */
+    public void add (StringArena keys, int off, int len) {
+        for (int i = off; i < off + len; ++i) {
+            if (hashCount == hashes.length) {
+                compact ();
+            }
+            hashes[hashCount++] = hasher.hash(keys, i);
+        }
+    }
+
+    /** removes duplicate hash values, and expands the buffer if it's still more than half full. */
+    private void compact () {
+        Arrays.sort(hashes, 0, hashCount);
+        int unique = 0;
+        for (int i = 0; i < hashCount; ++i) {
+            if (unique == 0 || hashes[i] != hashes[unique - 1]) {
+                hashes[unique++] = hashes[i];
+            }
+        }
+        hashCount = unique;
+        uniqueCount = unique;
+        if (hashCount > hashes.length / 2) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+    }
+
+    /**
+     * Returns the Bloom filter for the keys added so far.
+     */
+    public LocalBloomFilter<T, AT> build () {
+        compact ();
+        assert (hashCount == uniqueCount);
+        long bits = Math.max(64L, (long) uniqueCount * bitsPerKey);
+        int wordCount = (int) Math.min(Integer.MAX_VALUE, (bits + 63) >>> 6);
+        int hashFunctions = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+        long[] words = new long[wordCount];
+        long bitCount = (long) wordCount << 6;
+        for (int i = 0; i < uniqueCount; ++i) {
+            LocalBloomFilter.setBits(words, bitCount, hashFunctions, hashes[i]);
+        }
+        return new LocalBloomFilter<T, AT>(words, hashFunctions, uniqueCount, traits);
+    }
+}
@@ -0,0 +1,619 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import edu.brown.lasvegas.lvfs.RawValueWriter;
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.DoubleValueTraits;
+import edu.brown.lasvegas.traits.FloatValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.SmallintValueTraits;
+import edu.brown.lasvegas.traits.TinyintValueTraits;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.VarbinValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+import edu.brown.lasvegas.util.ByteArray;
+
+/**
+ * Collects distinct values of a column and assigns a tentative
+ * (non-order-preserving) code to each of them in the order they first appear.
+ *
+ * <p>Used by {@link LocalDictCompressionWriter} and {@link LocalDictFile} to build dictionaries.
+ * A HashMap&lt;T, Integer&gt; boxes every value and allocates an entry object for each
+ * distinct value, so there are specialized implementations for each type:
+ * direct-indexed tables for 1/2-byte types, open-addressing tables over primitive keys
+ * for 4/8-byte types, and a table over UTF-8 byte slices in one byte arena for
+ * variable-length types.</p>
+ *
+ * <p>Floating point values are identified by their bit patterns as {@link Float#equals(Object)}
+ * and {@link Double#equals(Object)} do, so NaN is one entry and -0.0 is different from 0.0.</p>
+ */
+abstract class LocalDictBuilder<T extends Comparable<T>, AT> {
+    /**
+     * Returns a dictionary builder for the given value type.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static <T extends Comparable<T>, AT> LocalDictBuilder<T, AT> getInstance (ValueTraits<T, AT> traits) {
+        if (traits instanceof TinyintValueTraits) {
+            return (LocalDictBuilder) new TinyintDictBuilder();
+        } else if (traits instanceof SmallintValueTraits) {
+            return (LocalDictBuilder) new SmallintDictBuilder();
+        } else if (traits instanceof IntegerValueTraits) {
+            return (LocalDictBuilder) new IntegerDictBuilder();
+        } else if (traits instanceof BigintValueTraits) {
+            return (LocalDictBuilder) new BigintDictBuilder();
+        } else if (traits instanceof FloatValueTraits) {
+            return (LocalDictBuilder) new FloatDictBuilder();
+        } else if (traits instanceof DoubleValueTraits) {
+            return (LocalDictBuilder) new DoubleDictBuilder();
+        } else if (traits instanceof VarcharValueTraits) {
+            return (LocalDictBuilder) new VarcharDictBuilder();
+        } else if (traits instanceof VarbinValueTraits) {
+            return (LocalDictBuilder) new VarbinDictBuilder();
+        } else {
+            return new GenericDictBuilder<T, AT>(traits);
+        }
+    }
+
+    /**
+     * Returns the tentative code of the value, adding it as a new entry if it's not in the dictionary yet.
+     * Codes are assigned from 0 in the order of appearance.
+     */
+    abstract int add (T value);
+
+    /**
+     * Batched version of {@link #add(Comparable)}.
+     * Stores the tentative code of values[off + i] to codes[codesOff + i].
+     */
+    abstract void add (AT values, int off, int len, int[] codes, int codesOff);
+
+    /** Returns the number of distinct values added so far. */
+    abstract int size ();
+
+    /** Returns the distinct values in the order of their tentative codes. */
+    abstract AT toArray ();
+
+    /** initial capacity of the hash tables. must be a power of 2. */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    /** used for Fibonacci hashing. */
+    private static final int GOLDEN_INT = 0x9E3779B9;
+    private static final long GOLDEN_LONG = 0x9E3779B97F4A7C15L;
+
+    private static final class TinyintDictBuilder extends LocalDictBuilder<Byte, byte[]> {
+        /** index=value+128, value=code or -1. */
+        private final int[] codes = new int[1 << 8];
+        private final byte[] entries = new byte[1 << 8];
+        private int size;
+        TinyintDictBuilder () {
+            Arrays.fill(codes, -1);
+        }
+        private int add1 (byte value) {
+            int code = codes[value + 128];
+            if (code < 0) {
+                code = size;
+                codes[value + 128] = code;
+                entries[size++] = value;
+            }
+            return code;
+        }
+        @Override
+        int add(Byte value) {
+            return add1(value.byteValue());
+        }
+        @Override
+        void add(byte[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add1(values[off + i]);
+            }
+        }
+        @Override
+        int size() {
+            return size;
+        }
+        @Override
+        byte[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    private static final class SmallintDictBuilder extends LocalDictBuilder<Short, short[]> {
+        /** index=value+32768, value=code or -1. */
+        private final int[] codes = new int[1 << 16];
+        private short[] entries = new short[INITIAL_CAPACITY];
+        private int size;
+        SmallintDictBuilder () {
+            Arrays.fill(codes, -1);
+        }
+        private int add1 (short value) {
+            int code = codes[value + 32768];
+            if (code < 0) {
+                code = size;
+                codes[value + 32768] = code;
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size++] = value;
+            }
+            return code;
+        }
+        @Override
+        int add(Short value) {
+            return add1(value.shortValue());
+        }
+        @Override
+        void add(short[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add1(values[off + i]);
+            }
+        }
+        @Override
+        int size() {
+            return size;
+        }
+        @Override
+        short[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    /**
+     * Open-addressing (linear probing) table from int keys to codes.
+     * Load factor is at most 0.5.
+     */
+    private static final class IntCodeTable {
+        private int[] keys;
+        /** code of each slot. -1 if the slot is empty. */
+        private int[] codes;
+        private int bits;
+        private int size;
+        IntCodeTable () {
+            allocate (Integer.numberOfTrailingZeros(INITIAL_CAPACITY));
+        }
+        private void allocate (int newBits) {
+            bits = newBits;
+            keys = new int[1 << bits];
+            codes = new int[1 << bits];
+            Arrays.fill(codes, -1);
+        }
+        /**
+         * Returns the code of the key if it exists. Otherwise, adds the key with newCode and returns newCode.
+         */
+        int getOrAdd (int key, int newCode) {
+            int mask = (1 << bits) - 1;
+            int slot = (key * GOLDEN_INT) >>> (32 - bits);
+            while (true) {
+                int code = codes[slot];
+                if (code < 0) {
+                    keys[slot] = key;
+                    codes[slot] = newCode;
+                    if (++size > (1 << (bits - 1))) {
+                        rehash ();
+                    }
+                    return newCode;
+                }
+                if (keys[slot] == key) {
+                    return code;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        private void rehash () {
+            int[] oldKeys = keys;
+            int[] oldCodes = codes;
+            allocate (bits + 1);
+            int mask = (1 << bits) - 1;
+            for (int i = 0; i < oldCodes.length; ++i) {
+                if (oldCodes[i] < 0) {
+                    continue;
+                }
+                int slot = (oldKeys[i] * GOLDEN_INT) >>> (32 - bits);
+                while (codes[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+    }
+
+    /** Same as {@link IntCodeTable} for long keys. */
+    private static final class LongCodeTable {
+        private long[] keys;
+        private int[] codes;
+        private int bits;
+        private int size;
+        LongCodeTable () {
+            allocate (Integer.numberOfTrailingZeros(INITIAL_CAPACITY));
+        }
+        private void allocate (int newBits) {
+            bits = newBits;
+            keys = new long[1 << bits];
+            codes = new int[1 << bits];
+            Arrays.fill(codes, -1);
+        }
+        int getOrAdd (long key, int newCode) {
+            int mask = (1 << bits) - 1;
+            int slot = (int) ((key * GOLDEN_LONG) >>> (64 - bits));
+            while (true) {
+                int code = codes[slot];
+                if (code < 0) {
+                    keys[slot] = key;
+                    codes[slot] = newCode;
+                    if (++size > (1 << (bits - 1))) {
+                        rehash ();
+                    }
+                    return newCode;
+                }
+                if (keys[slot] == key) {
+                    return code;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        private void rehash () {
+            long[] oldKeys = keys;
+            int[] oldCodes = codes;
+            allocate (bits + 1);
+            int mask = (1 << bits) - 1;
+            for (int i = 0; i < oldCodes.length; ++i) {
+                if (oldCodes[i] < 0) {
+                    continue;
+                }
+                int slot = (int) ((oldKeys[i] * GOLDEN_LONG) >>> (64 - bits));
+                while (codes[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+    }
+
+    private static final class IntegerDictBuilder extends LocalDictBuilder<Integer, int[]> {
+        private final IntCodeTable table = new IntCodeTable();
+        private int[] entries = new int[INITIAL_CAPACITY];
+        private int size;
+        private int add1 (int value) {
+            int code = table.getOrAdd(value, size);
+            if (code == size) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size++] = value;
+            }
+            return code;
+        }
+        @Override
+        int add(Integer value) {
+            return add1(value.intValue());
+        }
+        @Override
+        void add(int[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add1(values[off + i]);
+            }
+        }
+        @Override
+        int size() {
+            return size;
+        }
+        @Override
+        int[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    private static final class BigintDictBuilder extends LocalDictBuilder<Long, long[]> {
+        private final LongCodeTable table = new LongCodeTable();
+        private long[] entries = new long[INITIAL_CAPACITY];
+        private int size;
+        private int add1 (long value) {
+            int code = table.getOrAdd(value, size);
+            if (code == size) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size++] = value;
+            }
+            return code;
+        }
+        @Override
+        int add(Long value) {
+            return add1(value.longValue());
+        }
+        @Override
+        void add(long[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add1(values[off + i]);
+            }
+        }
+        @Override
+        int size() {
+            return size;
+        }
+        @Override
+        long[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    private static final class FloatDictBuilder extends LocalDictBuilder<Float, float[]> {
+        private final IntCodeTable table = new IntCodeTable();
+        private float[] entries = new float[INITIAL_CAPACITY];
+        private int size;
+        private int add1 (float value) {
+            int code = table.getOrAdd(Float.floatToIntBits(value), size);
+            if (code == size) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size++] = value;
+            }
+            return code;
+        }
+        @Override
+        int add(Float value) {
+            return add1(value.floatValue());
+        }
+        @Override
+        void add(float[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add1(values[off + i]);
+            }
+        }
+        @Override
+        int size() {
+            return size;
+        }
+        @Override
+        float[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    private static final class DoubleDictBuilder extends LocalDictBuilder<Double, double[]> {
+        private final LongCodeTable table = new LongCodeTable();
+        private double[] entries = new double[INITIAL_CAPACITY];
+        private int size;
+        private int add1 (double value) {
+            int code = table.getOrAdd(Double.doubleToLongBits(value), size);
+            if (code == size) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size * 2);
+                }
+                entries[size++] = value;
+            }
+            return code;
+        }
+        @Override
+        int add(Double value) {
+            return add1(value.doubleValue());
+        }
+        @Override
+        void add(double[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add1(values[off + i]);
+            }
+        }
+        @Override
+        int size() {
+            return size;
+        }
+        @Override
+        double[] toArray() {
+            return Arrays.copyOf(entries, size);
+        }
+    }
+
+    /**
+     * Keys variable-length values by their byte representation.
+     * Distinct values are stored back-to-back in one byte arena rather than as
+     * individual objects, and the hash table holds only hashes and codes.
+     */
+    private static abstract class ByteSliceDictBuilder<T extends Comparable<T>> extends LocalDictBuilder<T, T[]> {
+        private byte[] arena = new byte[INITIAL_CAPACITY * 16];
+        private int arenaUsed;
+        /** start offset of each entry in the arena. offsets[size] is arenaUsed. */
+        private int[] offsets = new int[INITIAL_CAPACITY + 1];
+        private int size;
+
+        private int[] hashes;
+        /** code of each slot. -1 if the slot is empty. */
+        private int[] codes;
+        private int bits;
+
+        /** bytes of the value being added. set by {@link #encode(Comparable)}. */
+        protected byte[] encoded;
+
+        ByteSliceDictBuilder () {
+            allocate (Integer.numberOfTrailingZeros(INITIAL_CAPACITY));
+        }
+        private void allocate (int newBits) {
+            bits = newBits;
+            hashes = new int[1 << bits];
+            codes = new int[1 << bits];
+            Arrays.fill(codes, -1);
+        }
+
+        /** Sets the bytes of the value to {@link #encoded} and returns the byte length. */
+        protected abstract int encode (T value);
+        /** Constructs a value from its bytes. */
+        protected abstract T decode (byte[] bytes, int off, int len);
+
+        @Override
+        final int add(T value) {
+            int len = encode (value);
+            byte[] bytes = encoded;
+            int hash = 1;
+            for (int i = 0; i < len; ++i) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = (1 << bits) - 1;
+            int slot = (hash * GOLDEN_INT) >>> (32 - bits);
+            while (true) {
+                int code = codes[slot];
+                if (code < 0) {
+                    break;
+                }
+                if (hashes[slot] == hash && equalsEntry(code, bytes, len)) {
+                    return code;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // new entry
+            int code = size;
+            if (arenaUsed + len > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaUsed + len));
+            }
+            System.arraycopy(bytes, 0, arena, arenaUsed, len);
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[size] = arenaUsed;
+            arenaUsed += len;
+            ++size;
+            offsets[size] = arenaUsed;
+            hashes[slot] = hash;
+            codes[slot] = code;
+            if (size > (1 << (bits - 1))) {
+                rehash ();
+            }
+            return code;
+        }
+        private boolean equalsEntry (int code, byte[] bytes, int len) {
+            int start = offsets[code];
+            if (offsets[code + 1] - start != len) {
+                return false;
+            }
+            for (int i = 0; i < len; ++i) {
+                if (arena[start + i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        private void rehash () {
+            int[] oldHashes = hashes;
+            int[] oldCodes = codes;
+            allocate (bits + 1);
+            int mask = (1 << bits) - 1;
+            for (int i = 0; i < oldCodes.length; ++i) {
+                if (oldCodes[i] < 0) {
+                    continue;
+                }
+                int slot = (oldHashes[i] * GOLDEN_INT) >>> (32 - bits);
+                while (codes[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+        @Override
+        final void add(T[] values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add(values[off + i]);
+            }
+        }
+        @Override
+        final int size() {
+            return size;
+        }
+        /** fills the given array with the entries. */
+        protected final T[] fillArray (T[] array) {
+            for (int i = 0; i < size; ++i) {
+                array[i] = decode (arena, offsets[i], offsets[i + 1] - offsets[i]);
+            }
+            return array;
+        }
+    }
+
+    private static final class VarcharDictBuilder extends ByteSliceDictBuilder<String> {
+        VarcharDictBuilder () {
+            encoded = new byte[256];
+        }
+        @Override
+        protected int encode(String value) {
+            // most strings are ASCII. avoid the charset encoder for them
+            int len = value.length();
+            if (encoded.length < len) {
+                encoded = new byte[Math.max(len, encoded.length * 2)];
+            }
+            for (int i = 0; i < len; ++i) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    byte[] bytes = value.getBytes(RawValueWriter.CHARSET);
+                    if (encoded.length < bytes.length) {
+                        encoded = new byte[bytes.length];
+                    }
+                    System.arraycopy(bytes, 0, encoded, 0, bytes.length);
+                    return bytes.length;
+                }
+                encoded[i] = (byte) c;
+            }
+            return len;
+        }
+        @Override
+        protected String decode(byte[] bytes, int off, int len) {
+            return new String(bytes, off, len, RawValueWriter.CHARSET);
+        }
+        @Override
+        String[] toArray() {
+            return fillArray(new String[size()]);
+        }
+    }
+
+    private static final class VarbinDictBuilder extends ByteSliceDictBuilder<ByteArray> {
+        @Override
+        protected int encode(ByteArray value) {
+            encoded = value.getBytes();
+            return encoded.length;
+        }
+        @Override
+        protected ByteArray decode(byte[] bytes, int off, int len) {
+            return new ByteArray(Arrays.copyOfRange(bytes, off, off + len));
+        }
+        @Override
+        ByteArray[] toArray() {
+            return fillArray(new ByteArray[size()]);
+        }
+    }
+
+    /** for other types. same as the original HashMap-based implementation. */
+    private static final class GenericDictBuilder<T extends Comparable<T>, AT> extends LocalDictBuilder<T, AT> {
+        private final ValueTraits<T, AT> traits;
+        private final HashMap<T, Integer> dict = new HashMap<T, Integer> (1 << 16, 0.25f);
+        private final ArrayList<T> entries = new ArrayList<T> (1 << 16);
+        GenericDictBuilder (ValueTraits<T, AT> traits) {
+            this.traits = traits;
+        }
+        @Override
+        int add(T value) {
+            Integer code = dict.get(value);
+            if (code != null) {
+                return code.intValue();
+            }
+            int newCode = entries.size();
+            dict.put(value, newCode);
+            entries.add(value);
+            return newCode;
+        }
+        @Override
+        void add(AT values, int off, int len, int[] codes, int codesOff) {
+            for (int i = 0; i < len; ++i) {
+                codes[codesOff + i] = add(traits.get(values, off + i));
+            }
+        }
+        @Override
+        int size() {
+            return entries.size();
+        }
+        @Override
+        AT toArray() {
+            return traits.toArray(entries);
+        }
+    }
+}
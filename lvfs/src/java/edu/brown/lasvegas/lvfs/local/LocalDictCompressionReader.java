@@ -6,12 +6,14 @@ import org.apache.log4j.Logger;
 
 import edu.brown.lasvegas.lvfs.OrderedDictionary;
 import edu.brown.lasvegas.lvfs.PositionIndex;
+import edu.brown.lasvegas.lvfs.TypedArenaReader;
 import edu.brown.lasvegas.lvfs.TypedDictReader;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.FixLenValueTraits;
 import edu.brown.lasvegas.traits.ValueTraits;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Implementation of {@link TypedDictReader}.
@@ -19,7 +21,7 @@ import edu.brown.lasvegas.traits.ValueTraitsFactory;
  * it de-compresses the integer values to the original data type.
  */
 public class LocalDictCompressionReader<T extends Comparable<T>, AT, CT extends Number & Comparable<CT>, CAT>
-    implements TypedDictReader<T, AT, CT, CAT> {
+    implements TypedDictReader<T, AT, CT, CAT>, TypedArenaReader {
     private static Logger LOG = Logger.getLogger(LocalDictCompressionReader.class);
 
     /** the internal integer file reader BEFORE dictionary decompression. */
@@ -43,7 +45,13 @@ public class LocalDictCompressionReader<T extends Comparable<T>, AT, CT extends
     private final VirtualFile dictionaryFile;
 
     public LocalDictCompressionReader(VirtualFile compressedFile, FixLenValueTraits<CT, CAT> compressedTraits, VirtualFile dictionaryFile, ValueTraits<T, AT> originalTraits, int streamBufferSize) throws IOException {
-        this.compressedReader = new LocalFixLenReader<CT, CAT> (compressedFile, compressedTraits, streamBufferSize);
+        this (compressedFile, compressedTraits, dictionaryFile, originalTraits, streamBufferSize, false);
+    }
+    /**
+     * @param memoryMapped whether to read the compressed file via memory-mapped buffer.
+     */
+    public LocalDictCompressionReader(VirtualFile compressedFile, FixLenValueTraits<CT, CAT> compressedTraits, VirtualFile dictionaryFile, ValueTraits<T, AT> originalTraits, int streamBufferSize, boolean memoryMapped) throws IOException {
+        this.compressedReader = new LocalFixLenReader<CT, CAT> (compressedFile, compressedTraits, streamBufferSize, memoryMapped);
         this.compressedBytesPerValue = (byte) (compressedTraits.getBitsPerValue() / 8);
         assert (compressedBytesPerValue == 1 || compressedBytesPerValue == 2 || compressedBytesPerValue == 4);
         this.compressedTraits = compressedTraits;
@@ -145,6 +153,45 @@ public class LocalDictCompressionReader<T extends Comparable<T>, AT, CT extends
         }
     }
 
+    @Override
+    public int readValuesAtPositions(AT buffer, int off, int[] positions, int positionCount) throws IOException {
+        if (dict == null) {
+            loadDict ();
+        }
+        assureCATBuffer(positionCount);
+        int read = compressedReader.readValuesAtPositions(catBuffer, 0, positions, positionCount);
+        if (catBuffer instanceof byte[]) {
+            return dict.decompressBatch((byte[]) catBuffer, 0, buffer, off, read);
+        } else if (catBuffer instanceof short[]) {
+            return dict.decompressBatch((short[]) catBuffer, 0, buffer, off, read);
+        } else {
+            return dict.decompressBatch((int[]) catBuffer, 0, buffer, off, read);
+        }
+    }
+
+    @Override
+    public int readValues(StringArena dest, int len) throws IOException {
+        if (dict == null) {
+            loadDict ();
+        }
+        assureCATBuffer(len);
+        int read = readCompressedValues(catBuffer, 0, len);
+        if (read <= 0) {
+            return read;
+        }
+        return dict.decompressBatch(catBuffer, 0, dest, read);
+    }
+
+    @Override
+    public int readValuesAtPositions(StringArena dest, int[] positions, int positionCount) throws IOException {
+        if (dict == null) {
+            loadDict ();
+        }
+        assureCATBuffer(positionCount);
+        int read = compressedReader.readValuesAtPositions(catBuffer, 0, positions, positionCount);
+        return dict.decompressBatch(catBuffer, 0, dest, read);
+    }
+
     @Override
     public void skipValue() throws IOException {
         compressedReader.skipValue();
@@ -1,8 +1,7 @@
 package edu.brown.lasvegas.lvfs.local;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 
@@ -24,26 +23,45 @@ import edu.brown.lasvegas.traits.ValueTraits;
  * a dictionary file. The fixed-len integer file is the main data file
  * and one of 1-byte, 2-bytes, and 4-bytes compression scheme.</p>
  * 
- * <p>The writer internally uses one more temporary file, which always stores 4-bytes integers.
- * The values are first compressed to this file with a tentative non-order-preserving
- * dictionary, and then converted/compressed to the final file after the dictionary is fixed.
- * These final conversions are done in writeFileFooter() because it is called by the user
- * at the end of all writes.</p>
+ * <p>The values are first compressed with a tentative non-order-preserving
+ * dictionary ({@link LocalDictBuilder}), and then converted/compressed to the final file
+ * after the dictionary is fixed. These final conversions are done in writeFileFooter()
+ * because it is called by the user at the end of all writes.</p>
+ * 
+ * <p>While the tentative dictionary fits in 1 or 2 bytes, the tentative values are kept in memory
+ * as bytes or shorts and directly converted to the final file. Only when the dictionary grows
+ * larger or the tentative values exceed {@link #getMaxInMemoryCodeBytes()}, they are spilled to
+ * one more temporary file, which always stores 4-bytes integers. Hence, low-cardinality
+ * columns (e.g., TINYINT/SMALLINT columns and most of string columns with a few distinct values)
+ * never write and read back the temporary file.</p>
  */
 public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements TypedDictWriter<T, AT> {
     private static Logger LOG = Logger.getLogger(LocalDictCompressionWriter.class);
- 
-    /** tentatively compressed file. */
-    private final LocalFixLenWriter<Integer, int[]> tentativeIntWriter;
+
+    /** default value of {@link #getMaxInMemoryCodeBytes()}. */
+    public static final int DEFAULT_MAX_IN_MEMORY_CODE_BYTES = 1 << 24;
+
+    /** tentatively compressed file. null until the tentative values are spilled to the file. */
+    private LocalFixLenWriter<Integer, int[]> tentativeIntWriter;
+    /** tentative values not yet stored in memory or the tentative file. */
     private final int[] tentativeIntBuffer = new int[1 << 14];
     private int tentativeIntBufferUsed = 0;
 
+    /** tentative values kept in memory while the tentative dictionary has at most 256 entries. */
+    private byte[] memoryByteCodes = new byte[1 << 10];
+    /** tentative values kept in memory while the tentative dictionary has at most 65536 entries. */
+    private short[] memoryShortCodes;
+    /** number of tentative values kept in memory. */
+    private int memoryCodeCount = 0;
+    private int maxInMemoryCodeBytes = DEFAULT_MAX_IN_MEMORY_CODE_BYTES;
+    /** null unless the files are written out in background. */
+    private LocalWriteBehind writeBehind;
+
     /**
      * Tentative non-order-preserving dictionary.
-     * key=original string, value=compressed value (>=0) 
+     * key=original value, value=compressed value (>=0) 
      */
-    private final HashMap<T, Integer> tentativeDict;
-    private final ArrayList<T> tentativeDictArray;
+    private final LocalDictBuilder<T, AT> tentativeDict;
     
     private final VirtualFile finalDataFile;
     private final VirtualFile finalDictFile;
@@ -56,7 +74,7 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
     /**
      * @param finalDataFile the final compressed data file 
      * @param finalDictFile the final dictionary file
-     * @param tmpFile Used to tentatively write out data. Deleted after used.
+     * @param tmpFile Used to tentatively write out data if needed. Deleted after used.
      * @param type value type BEFORE compression
      */
     @SuppressWarnings("unchecked")
@@ -72,9 +90,7 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
         this.finalDictFile = finalDictFile;
         this.tmpFile = tmpFile;
         this.traits = traits;
-        tentativeDict = new HashMap<T, Integer> (1 << 16, 0.25f); // for performance, use low load factor
-        tentativeDictArray = new ArrayList<T> (1 << 16);
-        tentativeIntWriter = LocalFixLenWriter.getInstanceInteger(tmpFile);
+        tentativeDict = LocalDictBuilder.getInstance(traits);
         
         if (LOG.isInfoEnabled()) {
             LOG.info("Creating dict-comp column file (type=" + traits.toString() + "). finalDataFile=" + finalDataFile.getAbsolutePath()
@@ -82,7 +98,36 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
                             + ", tmpFile=" + tmpFile.getAbsolutePath());
         }
     }
-    
+
+    /**
+     * Returns the maximum byte size of tentative values kept in memory.
+     * Beyond this size, the tentative values are spilled to the temporary file.
+     */
+    public int getMaxInMemoryCodeBytes() {
+        return maxInMemoryCodeBytes;
+    }
+    /**
+     * Sets the maximum byte size of tentative values kept in memory.
+     * 0 to always use the temporary file.
+     */
+    public void setMaxInMemoryCodeBytes(int maxInMemoryCodeBytes) {
+        assert (curTuple == 0);
+        this.maxInMemoryCodeBytes = maxInMemoryCodeBytes;
+    }
+    /**
+     * Writes out the tentative file and the final data file in background threads of the given pool.
+     * Must be called before writing any values.
+     * @see LocalRawFileWriter#setWriteBehind(LocalWriteBehind)
+     */
+    public void setWriteBehind(LocalWriteBehind writeBehind) {
+        assert (curTuple == 0);
+        this.writeBehind = writeBehind;
+    }
+    /** Returns whether the tentative values have been spilled to the temporary file. */
+    public boolean isSpilled () {
+        return tentativeIntWriter != null;
+    }
+
     @Override
     public ValueTraits<T, AT> getValueTraits() {
         return traits;
@@ -94,7 +139,11 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
             // just warn. the user might have simply canceled writing this file 
             LOG.warn("this file format needs to finalize the compressed data, but close() was called before writeFileFooter().");
         }
-        tentativeIntWriter.close(); // might be double-closing, but it's fine.
+        if (tentativeIntWriter != null) {
+            tentativeIntWriter.close(); // might be double-closing, but it's fine.
+        }
+        memoryByteCodes = null;
+        memoryShortCodes = null;
         if (tmpFile.exists()) {
             tmpFile.delete();
         }
@@ -113,24 +162,24 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
     @Override
     public long writeFileFooter() throws IOException {
         LOG.info ("writing final files...");
-        // first, finish writing to tentative file
-        if (tentativeIntBufferUsed > 0) {
-            tentativeIntWriter.writeValues(tentativeIntBuffer, 0, tentativeIntBufferUsed);
+        // first, finish writing tentative values
+        appendTentativeValues();
+        if (tentativeIntWriter != null) {
+            // we only call flush(), not sync. we don't have to make sure it's durable. it's a tentative file. 
+            tentativeIntWriter.flush();
+            tentativeIntWriter.close();
         }
-        // we only call flush(), not sync. we don't have to make sure it's durable. it's a tentative file. 
-        tentativeIntWriter.flush();
-        tentativeIntWriter.close();
         
         // next, create an order-preserving final dictionary
         if (LOG.isInfoEnabled()) {
-            LOG.info ("writing final dictionary of " + tentativeDictArray.size() + " entries...");
+            LOG.info ("writing final dictionary of " + tentativeDict.size() + " entries...");
         }
         AT dict;
         int[] dictConversion; // index=tentative dict's value, value=final dict's value
         byte bytesPerEntry;
         {
             long startMillisec = System.currentTimeMillis();
-            int dictCount = tentativeDictArray.size();
+            int dictCount = tentativeDict.size();
             if (dictCount <= (1 << 8)) {
                 bytesPerEntry = 1;
             } else if (dictCount <= (1 << 16)) {
@@ -139,7 +188,7 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
                 bytesPerEntry = 4;
             }
 
-            dict = traits.toArray(tentativeDictArray);
+            dict = tentativeDict.toArray();
             int[] tentativePos = new int[dictCount];
             for (int i = 0; i < dictCount; ++i) {
                 tentativePos[i] = i;
@@ -210,13 +259,24 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
             FixLenValueTraits<T2, AT2> finalDataTraits = getTraits();
             AT2 buf = finalDataTraits.createArray(tentativeIntBuffer.length);
 
-            LocalFixLenReader<Integer, int[]> tentativeReader = LocalFixLenReader.getInstanceInteger(tmpFile);
+            LocalFixLenReader<Integer, int[]> tentativeReader = null;
+            if (tentativeIntWriter != null) {
+                tentativeReader = LocalFixLenReader.getInstanceInteger(tmpFile);
+            }
             try {
                 LocalFixLenWriter<T2, AT2> finalDataWriter = createFinalDataWriter (finalDataFile);
+                finalDataWriter.setWriteBehind(writeBehind);
                 try {
                     finalDataWriter.getRawValueWriter().setCRC32Enabled(crc32Enabled);
+                    int memoryCodeRead = 0;
                     while (true) {
-                        int read = tentativeReader.readValues(tentativeIntBuffer, 0, tentativeIntBuffer.length);
+                        int read;
+                        if (tentativeReader != null) {
+                            read = tentativeReader.readValues(tentativeIntBuffer, 0, tentativeIntBuffer.length);
+                        } else {
+                            read = readMemoryCodes(memoryCodeRead, tentativeIntBuffer);
+                            memoryCodeRead += read;
+                        }
                         if (read <= 0) break;
                         for (int i = 0; i < read; ++i) {
                             setBufValue (buf, i, dictConversion[tentativeIntBuffer[i]]);
@@ -228,7 +288,9 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
                     finalDataWriter.close();
                 }
             } finally {
-                tentativeReader.close();
+                if (tentativeReader != null) {
+                    tentativeReader.close();
+                }
             }
         }
         abstract FixLenValueTraits<T2, AT2> getTraits();
@@ -271,30 +333,117 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
 
     @Override
     public void writeValue(T value) throws IOException {
-        Integer compressed = tentativeDict.get(value);
-        int compressedInt;
-        if (compressed == null) {
-            // new entry
-            compressedInt = tentativeDictArray.size();
-            tentativeDict.put(value, compressedInt);
-            tentativeDictArray.add(value);
-        } else {
-            compressedInt = compressed.intValue();
+        if (zoneMapBuilder != null) {
+            zoneMapBuilder.add(value);
         }
         // use writeValues to speed-up writing
         if (tentativeIntBufferUsed == tentativeIntBuffer.length) {
-            tentativeIntWriter.writeValues(tentativeIntBuffer, 0, tentativeIntBuffer.length);
-            tentativeIntBufferUsed = 0;
+            appendTentativeValues();
         }
-        tentativeIntBuffer[tentativeIntBufferUsed] = compressedInt;
+        tentativeIntBuffer[tentativeIntBufferUsed] = tentativeDict.add(value);
         ++tentativeIntBufferUsed;
         ++curTuple;
     }
     @Override
     public void writeValues(AT values, int off, int len) throws IOException {
-        for (int i = off; i < off + len; ++i) {
-            writeValue (traits.get(values, i));
+        if (zoneMapBuilder != null) {
+            zoneMapBuilder.add(values, off, len);
+        }
+        while (len > 0) {
+            if (tentativeIntBufferUsed == tentativeIntBuffer.length) {
+                appendTentativeValues();
+            }
+            int count = Math.min(len, tentativeIntBuffer.length - tentativeIntBufferUsed);
+            tentativeDict.add(values, off, count, tentativeIntBuffer, tentativeIntBufferUsed);
+            tentativeIntBufferUsed += count;
+            curTuple += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Moves the tentative values in tentativeIntBuffer to memory or the tentative file.
+     */
+    private void appendTentativeValues () throws IOException {
+        int count = tentativeIntBufferUsed;
+        tentativeIntBufferUsed = 0;
+        if (count == 0) {
+            return;
+        }
+        if (tentativeIntWriter == null) {
+            // tentative values so far are all smaller than the current dictionary size
+            int dictCount = tentativeDict.size();
+            int bytesPerValue = dictCount <= (1 << 8) ? 1 : 2;
+            if (dictCount > (1 << 16) || (long) (memoryCodeCount + count) * bytesPerValue > maxInMemoryCodeBytes) {
+                spillMemoryCodes ();
+            } else {
+                if (bytesPerValue == 1) {
+                    if (memoryCodeCount + count > memoryByteCodes.length) {
+                        memoryByteCodes = Arrays.copyOf(memoryByteCodes, Math.max(memoryByteCodes.length * 2, memoryCodeCount + count));
+                    }
+                    for (int i = 0; i < count; ++i) {
+                        memoryByteCodes[memoryCodeCount + i] = (byte) tentativeIntBuffer[i];
+                    }
+                } else {
+                    if (memoryShortCodes == null) {
+                        // the dictionary has just outgrown 1 byte. widen the values so far
+                        memoryShortCodes = new short[Math.max(memoryByteCodes.length, memoryCodeCount + count)];
+                        for (int i = 0; i < memoryCodeCount; ++i) {
+                            memoryShortCodes[i] = (short) (memoryByteCodes[i] & 0xFF);
+                        }
+                        memoryByteCodes = null;
+                    } else if (memoryCodeCount + count > memoryShortCodes.length) {
+                        memoryShortCodes = Arrays.copyOf(memoryShortCodes, Math.max(memoryShortCodes.length * 2, memoryCodeCount + count));
+                    }
+                    for (int i = 0; i < count; ++i) {
+                        memoryShortCodes[memoryCodeCount + i] = (short) tentativeIntBuffer[i];
+                    }
+                }
+                memoryCodeCount += count;
+                return;
+            }
+        }
+        tentativeIntWriter.writeValues(tentativeIntBuffer, 0, count);
+    }
+
+    /**
+     * Creates the tentative file and moves the tentative values kept in memory to the file.
+     */
+    private void spillMemoryCodes () throws IOException {
+        if (LOG.isInfoEnabled()) {
+            LOG.info("spilling " + memoryCodeCount + " tentative values to " + tmpFile.getAbsolutePath()
+                + ". dictionary size=" + tentativeDict.size());
+        }
+        tentativeIntWriter = LocalFixLenWriter.getInstanceInteger(tmpFile);
+        tentativeIntWriter.setWriteBehind(writeBehind);
+        int[] buffer = new int[1 << 12];
+        for (int written = 0; written < memoryCodeCount;) {
+            int read = readMemoryCodes(written, buffer);
+            tentativeIntWriter.writeValues(buffer, 0, read);
+            written += read;
+        }
+        memoryByteCodes = null;
+        memoryShortCodes = null;
+        memoryCodeCount = 0;
+    }
+
+    /**
+     * Reads tentative values kept in memory into the buffer.
+     * @return number of values read
+     */
+    private int readMemoryCodes (int from, int[] buffer) {
+        int count = Math.min(buffer.length, memoryCodeCount - from);
+        if (memoryShortCodes != null) {
+            for (int i = 0; i < count; ++i) {
+                buffer[i] = memoryShortCodes[from + i] & 0xFFFF;
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                buffer[i] = memoryByteCodes[from + i] & 0xFF;
+            }
         }
+        return count;
     }
     @Override
     public void writePositionFile(VirtualFile posFile) throws IOException {
@@ -308,6 +457,28 @@ public class LocalDictCompressionWriter<T extends Comparable<T>, AT> implements
     public int getTupleCount() {
     	return curTuple;
     }
+    /** collects per-zone min/max of the original (not compressed) values. null if zone map is not enabled. */
+    private LocalZoneMapBuilder<T, AT> zoneMapBuilder;
+    @Override
+    public void enableZoneMap(int tuplesPerZone) {
+        assert (curTuple == 0);
+        zoneMapBuilder = new LocalZoneMapBuilder<T, AT>(traits, tuplesPerZone);
+    }
+    @Override
+    public void writeZoneMapFile(VirtualFile zoneMapFile) throws IOException {
+        if (zoneMapBuilder == null) {
+            throw new IllegalStateException("zone map is not enabled");
+        }
+        zoneMapBuilder.build().writeToFile(zoneMapFile);
+    }
+    @Override
+    public void enableBloomFilter(int bitsPerKey) {
+        throw new UnsupportedOperationException("dictionary-compressed column doesn't need Bloom filter. the dictionary tells exact membership");
+    }
+    @Override
+    public void writeBloomFilterFile(VirtualFile bloomFilterFile) throws IOException {
+        throw new UnsupportedOperationException("dictionary-compressed column doesn't need Bloom filter. the dictionary tells exact membership");
+    }
     private boolean crc32Enabled = false;
     private int curTuple = 0;
 }
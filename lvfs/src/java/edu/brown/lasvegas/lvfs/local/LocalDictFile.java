@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.HashSet;
 
 import org.apache.log4j.Logger;
 
@@ -14,6 +13,8 @@ import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.ValueTraitsFactory;
 import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Represents a dictionary file for dictionary compression.
@@ -51,23 +52,22 @@ public final class LocalDictFile<T extends Comparable<T>, AT> implements Ordered
     public LocalDictFile(TypedReader<T, AT> dataReader, ValueTraits<T, AT> traits) throws IOException {
         LOG.info("Creating a dictionary...");
         this.traits = traits;
-        HashSet<T> distinctValues;
+        LocalDictBuilder<T, AT> distinctValues;
         {
             long startMillisec = System.currentTimeMillis();
             // first, scan the data file to get distinct values.
             // at this point, speed is much more important than memory.
-            // so, we use HashSet (not TreeSet) with low load-factor for maximal speed
-            distinctValues = new HashSet<T>(1 << 16, 0.25f);
+            // so, we use a hash table specialized for the type (not TreeSet) for maximal speed
+            distinctValues = LocalDictBuilder.getInstance(traits);
             final int BUF_SIZE = 1 << 12;
             AT buf = traits.createArray(BUF_SIZE);
+            int[] codes = new int[BUF_SIZE];
             while (true) {
                 int read = dataReader.readValues(buf, 0, BUF_SIZE);
                 if (read < 0) {
                     break;
                 }
-                for (int i = 0; i < read; ++i) {
-                    distinctValues.add(traits.get(buf, i));
-                }
+                distinctValues.add(buf, 0, read, codes, 0);
             }
             long endMillisec = System.currentTimeMillis();
             LOG.info("scanned the data file in " + (endMillisec - startMillisec) + "ms");
@@ -75,7 +75,7 @@ public final class LocalDictFile<T extends Comparable<T>, AT> implements Ordered
         {
             long startMillisec = System.currentTimeMillis();
             // second, construct the dictionary. This involves sorting.
-            this.dict = traits.toArray(distinctValues);
+            this.dict = distinctValues.toArray();
             traits.sort(dict);
             this.dictEntryCount = traits.length(dict);
             this.bytesPerEntry = calculateBytesPerEntry(dictEntryCount);
@@ -283,6 +283,91 @@ public final class LocalDictFile<T extends Comparable<T>, AT> implements Ordered
         return len;
     }
 
+    /**
+     * Returns the entries of this dictionary encoded in an arena (UTF-8 for VARCHAR).
+     * The arena is built on the first call and shared by later calls.
+     * Only for VARCHAR/VARBINARY dictionaries.
+     */
+    public StringArena getEncodedDictionary () {
+        if (encodedDict == null) {
+            buildEncodedDictionary();
+        }
+        return encodedDict;
+    }
+    private synchronized void buildEncodedDictionary () {
+        if (encodedDict != null) {
+            return;
+        }
+        StringArena arena = new StringArena(dictEntryCount, dictEntryCount * 16);
+        for (int i = 0; i < dictEntryCount; ++i) {
+            T value = traits.get(dict, i);
+            if (value instanceof String) {
+                arena.append((String) value);
+            } else if (value instanceof ByteArray) {
+                arena.append((ByteArray) value);
+            } else {
+                throw new UnsupportedOperationException("not a variable-length dictionary: " + value.getClass());
+            }
+        }
+        // open-addressing hash table over the entry bytes. each slot stores dictionary index + 1 (0 is empty)
+        int slotCount = Integer.highestOneBit(Math.max(dictEntryCount, 1) * 2) * 2;
+        int[] slots = new int[slotCount];
+        for (int i = 0; i < dictEntryCount; ++i) {
+            int slot = arena.hashCode(i) & (slotCount - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            slots[slot] = i + 1;
+        }
+        encodedDictSlots = slots;
+        encodedDict = arena;
+    }
+
+    @Override
+    public Integer compress(StringArena values, int index) {
+        StringArena arena = getEncodedDictionary();
+        int[] slots = encodedDictSlots;
+        int mask = slots.length - 1;
+        for (int slot = values.hashCode(index) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (arena.equals(slots[slot] - 1, values, index)) {
+                return convertDictionaryIndexToCompressedValue(slots[slot] - 1);
+            }
+        }
+        return null; // not found
+    }
+
+    @Override
+    public int decompressBatch(Object src, int srcOff, StringArena dest, int len) {
+        StringArena arena = getEncodedDictionary();
+        if (len > dest.capacity() - dest.size()) {
+            len = dest.capacity() - dest.size();
+        }
+        switch (bytesPerEntry) {
+        case 1: {
+            byte[] casted = (byte[]) src;
+            for (int i = 0; i < len; ++i) {
+                dest.append(arena, casted[srcOff + i] + (1 << 7));
+            }
+            break;
+        }
+        case 2: {
+            short[] casted = (short[]) src;
+            for (int i = 0; i < len; ++i) {
+                dest.append(arena, casted[srcOff + i] + (1 << 15));
+            }
+            break;
+        }
+        default: {
+            assert (bytesPerEntry == 4);
+            int[] casted = (int[]) src;
+            for (int i = 0; i < len; ++i) {
+                dest.append(arena, casted[srcOff + i] ^ 0x80000000);
+            }
+        }
+        }
+        return len;
+    }
+
     @Override
     public int convertCompressedValueToDictionaryIndex (int compresedValue) {
         switch (bytesPerEntry) {
@@ -350,4 +435,8 @@ public final class LocalDictFile<T extends Comparable<T>, AT> implements Ordered
     /** dict.length. */
     private final int dictEntryCount;
     private final ValueTraits<T, AT> traits;
+    /** entries encoded in an arena. built lazily for VARCHAR/VARBINARY. */
+    private volatile StringArena encodedDict;
+    /** hash table to look up encodedDict by bytes. */
+    private int[] encodedDictSlots;
 }
@@ -57,7 +57,15 @@ public final class LocalFixLenReader<T extends Number & Comparable<T>, AT> exten
     }
 
     public LocalFixLenReader(VirtualFile rawFile, FixLenValueTraits<T, AT> traits, int streamBufferSize) throws IOException {
-        super (rawFile, traits, streamBufferSize);
+        this (rawFile, traits, streamBufferSize, false);
+    }
+    /**
+     * @param memoryMapped whether to read the file via memory-mapped buffer.
+     * In that case, {@link #readValues(Object, int, int)} directly converts values from the mapped buffer
+     * and seeking is O(1) in both directions.
+     */
+    public LocalFixLenReader(VirtualFile rawFile, FixLenValueTraits<T, AT> traits, int streamBufferSize, boolean memoryMapped) throws IOException {
+        super (rawFile, traits, streamBufferSize, memoryMapped);
         this.bitsPerValue = traits.getBitsPerValue();
         this.traits = traits;
     }
@@ -72,7 +80,7 @@ public final class LocalFixLenReader<T extends Number & Comparable<T>, AT> exten
         if (LOG.isDebugEnabled()) {
             LOG.debug("seeking to " + tuple + "th tuple..");
         }
-        getRawReader().seekToByteAbsolute(bitsPerValue / 8 * tuple);
+        getRawReader().seekToByteAbsolute((long) (bitsPerValue / 8) * tuple);
     }
 
     /**
@@ -82,7 +90,7 @@ public final class LocalFixLenReader<T extends Number & Comparable<T>, AT> exten
         if (LOG.isDebugEnabled()) {
             LOG.debug("jumping over " + tuple + " tuples..");
         }
-        getRawReader().seekToByteRelative(bitsPerValue / 8 * tuple);
+        getRawReader().seekToByteRelative((long) (bitsPerValue / 8) * tuple);
     }
     
     @Override
@@ -104,6 +112,6 @@ public final class LocalFixLenReader<T extends Number & Comparable<T>, AT> exten
     
     @Override
     public int getTotalTuples() {
-        return getRawReader().getRawFileSize() / (bitsPerValue / 8);
+        return (int) (getRawReader().getRawFileSize() / (bitsPerValue / 8));
     }
 }
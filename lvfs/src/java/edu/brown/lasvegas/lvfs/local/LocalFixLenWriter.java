@@ -58,14 +58,20 @@ public final class LocalFixLenWriter<T extends Number & Comparable<T>, AT> exten
 
     @Override
     public void writeValues (AT values, int off, int len) throws IOException {
+        collectValues(values, off, len);
         traits.writeValues(getRawValueWriter(), values, off, len);
         curTuple += len;
     }
     @Override
     public void writeValue(T value) throws IOException {
+        collectValues(value);
         traits.writeValue(getRawValueWriter(), value);
         ++curTuple;
     }
+    @Override
+    protected boolean isValueCollectionSupported() {
+        return true;
+    }
     
     @Override
     public void writePositionFile(VirtualFile posFile) throws IOException {
@@ -0,0 +1,293 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure-java implementation of the LZ4 block format for {@link edu.brown.lasvegas.CompressionType#LZ4}
+ * and {@link edu.brown.lasvegas.CompressionType#LZ4_HC}.
+ * <p>A compressed block is a series of sequences, each of which is a token byte (4 bits for literal length
+ * and 4 bits for match length), optional extra bytes for the literal length, literals,
+ * a 2-byte little-endian match offset and optional extra bytes for the match length.
+ * The last sequence has only literals. This is the standard LZ4 block format (without frame),
+ * so blocks are compatible with other LZ4 implementations given the uncompressed length.</p>
+ * <p>Both compressors emit the same format and share one decompressor. The fast compressor
+ * looks up one candidate per position in a small hash table. The high-compression (HC) compressor
+ * keeps hash chains over the 64KB window and takes the longest match among candidates,
+ * which is slower to compress but as fast to decompress.</p>
+ * <p>Decompression is a sequence of array copies, which is much faster than inflating deflate blocks.</p>
+ */
+final class LocalLZ4 {
+    /** minimum length of a match. */
+    private static final int MIN_MATCH = 4;
+    /** maximum distance to a match (2-byte offset). */
+    private static final int MAX_DISTANCE = 0xFFFF;
+    /** the last 5 bytes of a block are always literals. */
+    private static final int LAST_LITERALS = 5;
+    /** the last match must start at least 12 bytes before the end of the block. */
+    private static final int MF_LIMIT = 12;
+    private static final int RUN_MASK = 0x0F;
+
+    private static final int HASH_LOG = 12;
+    private static final int HASH_LOG_HC = 15;
+    /** maximum number of candidates to examine per position in the HC compressor. */
+    private static final int MAX_ATTEMPTS_HC = 256;
+
+    /** returns the maximum byte size of a compressed block for the given input size. */
+    static int maxCompressedLength (int length) {
+        return length + length / 255 + 16;
+    }
+
+    private static int readInt (byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) | ((buf[pos + 2] & 0xFF) << 16) | ((buf[pos + 3] & 0xFF) << 24);
+    }
+    private static int hash (int value, int hashLog) {
+        return (value * -1640531535) >>> (32 - hashLog);
+    }
+
+    /** writes extra length bytes for a length that didn't fit in the token. */
+    private static int writeLength (int length, byte[] dest, int dp) {
+        while (length >= 0xFF) {
+            dest[dp++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dest[dp++] = (byte) length;
+        return dp;
+    }
+
+    /**
+     * Writes a sequence of literals and a match (or only literals if matchLength is 0).
+     * @return the new position in dest
+     */
+    private static int writeSequence (byte[] src, int literalOff, int literalLength, int matchOffset, int matchLength, byte[] dest, int dp) {
+        final int tokenPos = dp++;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dp = writeLength(literalLength - RUN_MASK, dest, dp);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOff, dest, dp, literalLength);
+        dp += literalLength;
+        if (matchLength > 0) {
+            dest[dp++] = (byte) matchOffset;
+            dest[dp++] = (byte) (matchOffset >>> 8);
+            int extra = matchLength - MIN_MATCH;
+            if (extra >= RUN_MASK) {
+                token |= RUN_MASK;
+                dp = writeLength(extra - RUN_MASK, dest, dp);
+            } else {
+                token |= extra;
+            }
+        }
+        dest[tokenPos] = (byte) token;
+        return dp;
+    }
+
+    /** returns the length of the common bytes at the two positions, not exceeding the limit. */
+    private static int commonLength (byte[] src, int ref, int pos, int limit) {
+        int len = 0;
+        while (pos + len < limit && src[ref + len] == src[pos + len]) {
+            ++len;
+        }
+        return len;
+    }
+
+    /**
+     * Compresses blocks. Holds the hash tables to reuse.
+     * <p>This object is not thread-safe. Use one instance per thread.</p>
+     */
+    static final class Compressor {
+        private final boolean highCompression;
+        /** the last position for each hash value. -1 if none. */
+        private final int[] hashTable;
+        /** only for HC. the previous position with the same hash value, indexed by position modulo 64KB. */
+        private final int[] chainTable;
+
+        /**
+         * @param highCompression whether to search for longer matches (LZ4 HC).
+         */
+        Compressor (boolean highCompression) {
+            this.highCompression = highCompression;
+            this.hashTable = new int[1 << (highCompression ? HASH_LOG_HC : HASH_LOG)];
+            this.chainTable = highCompression ? new int[MAX_DISTANCE + 1] : null;
+        }
+
+        /**
+         * Compresses the given data into a block.
+         * @param dest must have at least {@link LocalLZ4#maxCompressedLength(int)} bytes after destOff
+         * @return byte length of the compressed block
+         */
+        int compress (byte[] src, int srcOff, int srcLen, byte[] dest, int destOff) {
+            Arrays.fill(hashTable, -1);
+            final int end = srcOff + srcLen;
+            int anchor = srcOff;
+            int dp = destOff;
+            if (srcLen > MF_LIMIT) {
+                if (highCompression) {
+                    dp = compressHC (src, srcOff, end, dest, dp);
+                } else {
+                    dp = compressFast (src, srcOff, end, dest, dp);
+                }
+                anchor = lastAnchor;
+            }
+            dp = writeSequence(src, anchor, end - anchor, 0, 0, dest, dp);
+            return dp - destOff;
+        }
+        /** where the trailing literals start after compressFast/compressHC. */
+        private int lastAnchor;
+
+        private int compressFast (byte[] src, int srcOff, int end, byte[] dest, int dp) {
+            final int matchLimit = end - LAST_LITERALS;
+            final int mfLimit = end - MF_LIMIT;
+            int anchor = srcOff;
+            int sp = srcOff;
+            while (sp <= mfLimit) {
+                int value = readInt(src, sp);
+                int h = hash(value, HASH_LOG);
+                int ref = hashTable[h];
+                hashTable[h] = sp;
+                if (ref < 0 || sp - ref > MAX_DISTANCE || readInt(src, ref) != value) {
+                    // skip faster in incompressible data
+                    sp += 1 + ((sp - anchor) >>> 6);
+                    continue;
+                }
+                // extend the match backwards
+                while (sp > anchor && ref > srcOff && src[sp - 1] == src[ref - 1]) {
+                    --sp;
+                    --ref;
+                }
+                int matchLength = MIN_MATCH + commonLength(src, ref + MIN_MATCH, sp + MIN_MATCH, matchLimit);
+                dp = writeSequence(src, anchor, sp - anchor, sp - ref, matchLength, dest, dp);
+                sp += matchLength;
+                anchor = sp;
+                if (sp - 2 <= mfLimit) {
+                    hashTable[hash(readInt(src, sp - 2), HASH_LOG)] = sp - 2;
+                }
+            }
+            lastAnchor = anchor;
+            return dp;
+        }
+
+        private int compressHC (byte[] src, int srcOff, int end, byte[] dest, int dp) {
+            final int matchLimit = end - LAST_LITERALS;
+            final int mfLimit = end - MF_LIMIT;
+            int anchor = srcOff;
+            int sp = srcOff;
+            int nextToInsert = srcOff;
+            while (sp <= mfLimit) {
+                // add all positions up to the current position to the hash chains
+                for (; nextToInsert <= sp; ++nextToInsert) {
+                    int h = hash(readInt(src, nextToInsert), HASH_LOG_HC);
+                    chainTable[nextToInsert & MAX_DISTANCE] = hashTable[h];
+                    hashTable[h] = nextToInsert;
+                }
+                int bestLength = 0, bestRef = -1;
+                int ref = chainTable[sp & MAX_DISTANCE];
+                for (int attempts = MAX_ATTEMPTS_HC; ref >= 0 && sp - ref <= MAX_DISTANCE && attempts > 0; --attempts) {
+                    // quickly rule out candidates that can't be longer than the current best
+                    if (sp + bestLength < matchLimit && src[ref + bestLength] == src[sp + bestLength]) {
+                        int length = commonLength(src, ref, sp, matchLimit);
+                        if (length > bestLength) {
+                            bestLength = length;
+                            bestRef = ref;
+                            if (sp + length >= matchLimit) {
+                                break;
+                            }
+                        }
+                    }
+                    ref = chainTable[ref & MAX_DISTANCE];
+                }
+                if (bestLength < MIN_MATCH) {
+                    ++sp;
+                    continue;
+                }
+                dp = writeSequence(src, anchor, sp - anchor, sp - bestRef, bestLength, dest, dp);
+                sp += bestLength;
+                anchor = sp;
+            }
+            lastAnchor = anchor;
+            return dp;
+        }
+    }
+
+    /**
+     * Decompresses a block.
+     * @param uncompressedLength byte length of the decompressed block
+     * @return byte length of the decompressed block
+     * @throws IOException if the block is malformed or doesn't decompress to the expected length
+     */
+    static int decompress (byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int uncompressedLength) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int destEnd = destOff + uncompressedLength;
+        int sp = srcOff;
+        int dp = destOff;
+        while (true) {
+            if (sp >= srcEnd) {
+                throw new IOException ("unexpected end of LZ4 block. corrupted file?");
+            }
+            final int token = src[sp++] & 0xFF;
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException ("unexpected end of LZ4 block. corrupted file?");
+                    }
+                    b = src[sp++] & 0xFF;
+                    literalLength += b;
+                } while (b == 0xFF);
+            }
+            if (literalLength > srcEnd - sp || literalLength > destEnd - dp) {
+                throw new IOException ("literals overrun the LZ4 block. corrupted file?");
+            }
+            System.arraycopy(src, sp, dest, dp, literalLength);
+            sp += literalLength;
+            dp += literalLength;
+            if (sp == srcEnd) {
+                break; // the last sequence has only literals
+            }
+
+            if (sp + 2 > srcEnd) {
+                throw new IOException ("unexpected end of LZ4 block. corrupted file?");
+            }
+            final int offset = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+            sp += 2;
+            if (offset == 0 || offset > dp - destOff) {
+                throw new IOException ("invalid LZ4 match offset " + offset + ". corrupted file?");
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException ("unexpected end of LZ4 block. corrupted file?");
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLength += b;
+                } while (b == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > destEnd - dp) {
+                throw new IOException ("match overruns the LZ4 block. corrupted file?");
+            }
+            final int ref = dp - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dest, ref, dest, dp, matchLength);
+            } else {
+                // overlapping match (repeated pattern). copy byte by byte
+                for (int i = 0; i < matchLength; ++i) {
+                    dest[dp + i] = dest[ref + i];
+                }
+            }
+            dp += matchLength;
+        }
+        if (dp != destEnd) {
+            throw new IOException ("unexpected uncompressed size. corrupted file? expected=" + uncompressedLength + ", actual=" + (dp - destOff));
+        }
+        return uncompressedLength;
+    }
+
+    private LocalLZ4() {}
+}
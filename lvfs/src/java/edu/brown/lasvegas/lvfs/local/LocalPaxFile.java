@@ -0,0 +1,433 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.traits.VarLenValueTraits;
+
+/**
+ * A PAX (Partition Attributes Across) file, which stores a group of columns
+ * that are usually read together in one file.
+ *
+ * <p>The file consists of blocks, each of which covers the same tuples for all columns.
+ * A block consists of one mini-page per column. Each mini-page is exactly a block of the
+ * block-compressed file format ({@link LocalBlockCompressionWriter}) of the column,
+ * so each column is compressed individually (or stored without compression) and
+ * read by {@link LocalBlockCompressionFixLenReader} or {@link LocalBlockCompressionVarLenReader}
+ * through the {@link TypedReader} interface. Reading a block of all columns in the group
+ * is one contiguous read instead of one seek per column file.</p>
+ * <pre>
+ * [block 0: mini-page of column 0][mini-page of column 1]...[block 1: ...]...
+ * [footer][int footerLength][int MAGIC]
+ * </pre>
+ * <p>Mini-pages of variable-length columns have the offset-array layout
+ * (see {@link LocalBlockCompressionVarLenWriter}).</p>
+ * <p>The footer consists of the version, the number of columns, blocks and tuples,
+ * the ID, type and compression type of each column, and the start tuple of each block
+ * followed by the byte position, length and uncompressed length of each mini-page in it.</p>
+ *
+ * <p>A PAX file is built by {@link #interleave(VirtualFile, int[], VirtualFile[], ColumnType[], CompressionType[])}
+ * from block-compressed files whose blocks are cut at the same tuples
+ * ({@link LocalBlockCompressionWriter#setTuplesPerBlock(int)}).</p>
+ */
+public final class LocalPaxFile {
+    private static Logger LOG = Logger.getLogger(LocalPaxFile.class);
+
+    /** magic number at the end of PAX files. */
+    public static final int MAGIC = 0x4C565058; // "LVPX"
+    /** version of the footer format. */
+    public static final int VERSION = 1;
+    /** byte size of the tail (footerLength and MAGIC). */
+    private static final int TAIL_SIZE = 8;
+
+    private final VirtualFile file;
+    private final int version;
+    private final int[] columnIds;
+    private final ColumnType[] columnTypes;
+    private final CompressionType[] compressionTypes;
+    private final int totalTuples;
+    /** the tuple to start each block. */
+    private final int[] blockStartTuples;
+    /** byte position of each mini-page. [column][block]. */
+    private final long[][] miniPagePositions;
+    /** byte length of each mini-page. [column][block]. */
+    private final int[][] miniPageLengthes;
+    /** byte length of each mini-page without compression. [column][block]. */
+    private final int[][] miniPageUncompressedLengthes;
+    /** CRC32 of the mini-pages of each column. null if this object is opened from an existing file. */
+    private final long[] columnChecksums;
+
+    private LocalPaxFile (VirtualFile file, int version, int[] columnIds, ColumnType[] columnTypes, CompressionType[] compressionTypes,
+                    int totalTuples, int[] blockStartTuples, long[][] miniPagePositions, int[][] miniPageLengthes, int[][] miniPageUncompressedLengthes,
+                    long[] columnChecksums) {
+        this.file = file;
+        this.version = version;
+        this.columnIds = columnIds;
+        this.columnTypes = columnTypes;
+        this.compressionTypes = compressionTypes;
+        this.totalTuples = totalTuples;
+        this.blockStartTuples = blockStartTuples;
+        this.miniPagePositions = miniPagePositions;
+        this.miniPageLengthes = miniPageLengthes;
+        this.miniPageUncompressedLengthes = miniPageUncompressedLengthes;
+        this.columnChecksums = columnChecksums;
+    }
+
+    /**
+     * Returns whether the given compression type can be used for a column in PAX files.
+     * Only block compressions and no-compression, whose files consist of independent blocks, are supported.
+     */
+    public static boolean isSupported (CompressionType compressionType) {
+        switch (compressionType) {
+        case NONE:
+        case SNAPPY:
+        case GZIP_BEST_COMPRESSION:
+        case LZ4:
+        case LZ4_HC:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Creates a writer of the given column to write a file that is later interleaved into a PAX file.
+     * @param tuplesPerBlock number of tuples in each block. must be same for all columns in the group
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static LocalBlockCompressionWriter<?, ?> createColumnWriter (VirtualFile file, ColumnType columnType, CompressionType compressionType, int tuplesPerBlock) throws IOException {
+        if (!isSupported(compressionType)) {
+            throw new IOException ("compression type " + compressionType + " is not supported in PAX files");
+        }
+        ValueTraits<?, ?> traits = ValueTraitsFactory.getInstance(columnType);
+        LocalBlockCompressionWriter<?, ?> writer;
+        if (traits instanceof VarLenValueTraits<?>) {
+            writer = new LocalBlockCompressionVarLenWriter(file, (VarLenValueTraits<?>) traits, compressionType);
+        } else {
+            writer = new LocalBlockCompressionFixLenWriter(file, (FixLenValueTraits<?, ?>) traits, compressionType);
+        }
+        writer.setTuplesPerBlock(tuplesPerBlock);
+        return writer;
+    }
+
+    /**
+     * Interleaves the blocks of the given column files into a PAX file.
+     * The column files are not deleted.
+     * @param paxFile the PAX file to write. overwritten if it exists.
+     * @param columnIds ID of each column
+     * @param columnFiles block-compressed files written by {@link #createColumnWriter(VirtualFile, ColumnType, CompressionType, int)}
+     * @param columnTypes type of each column
+     * @param compressionTypes compression type of each column file
+     * @return the written PAX file
+     */
+    public static LocalPaxFile interleave (VirtualFile paxFile, int[] columnIds, VirtualFile[] columnFiles,
+                    ColumnType[] columnTypes, CompressionType[] compressionTypes) throws IOException {
+        final int columnCount = columnFiles.length;
+        assert (columnIds.length == columnCount);
+        assert (columnTypes.length == columnCount);
+        assert (compressionTypes.length == columnCount);
+        LocalBlockCompressionReader<?, ?>[] readers = new LocalBlockCompressionReader<?, ?>[columnCount];
+        try {
+            for (int i = 0; i < columnCount; ++i) {
+                readers[i] = (LocalBlockCompressionReader<?, ?>) createReader(columnFiles[i], columnTypes[i], compressionTypes[i], null, i, false);
+            }
+            // blocks must be aligned to be interleaved
+            final int blockCount = readers[0].blockCount;
+            final int totalTuples = readers[0].totalTuples;
+            for (int i = 1; i < columnCount; ++i) {
+                if (readers[i].blockCount != blockCount || readers[i].totalTuples != totalTuples) {
+                    throw new IOException ("blocks of the column files are not aligned. blockCount=" + readers[i].blockCount + "/" + blockCount
+                        + ", totalTuples=" + readers[i].totalTuples + "/" + totalTuples + ". file=" + columnFiles[i]);
+                }
+                for (int block = 0; block < blockCount; ++block) {
+                    if (readers[i].blockStartTuples[block] != readers[0].blockStartTuples[block]) {
+                        throw new IOException ("blocks of the column files are not aligned at block " + block + ". file=" + columnFiles[i]);
+                    }
+                }
+            }
+
+            long[][] positions = new long[columnCount][blockCount];
+            int[][] lengthes = new int[columnCount][blockCount];
+            int[][] uncompressedLengthes = new int[columnCount][blockCount];
+            CRC32[] crcs = new CRC32[columnCount];
+            for (int i = 0; i < columnCount; ++i) {
+                crcs[i] = new CRC32();
+            }
+            byte[] buffer = new byte[1 << 16];
+            long position = 0;
+            OutputStream out = paxFile.getOutputStream();
+            try {
+                for (int block = 0; block < blockCount; ++block) {
+                    for (int i = 0; i < columnCount; ++i) {
+                        int length = readers[i].blockLengthes[block];
+                        if (buffer.length < length) {
+                            buffer = new byte[length];
+                        }
+                        LocalRawFileReader rawReader = readers[i].getRawReader();
+                        if (rawReader.isConcurrentReadSupported()) {
+                            rawReader.readFullyAt(readers[i].blockPositions[block], buffer, 0, length);
+                        } else {
+                            rawReader.seekToByteAbsolute(readers[i].blockPositions[block]);
+                            int read = rawReader.getRawValueReader().readBytes(buffer, 0, length);
+                            assert (read == length);
+                        }
+                        out.write(buffer, 0, length);
+                        crcs[i].update(buffer, 0, length);
+                        positions[i][block] = position;
+                        lengthes[i][block] = length;
+                        uncompressedLengthes[i][block] = readers[i].blockUncompressedLengthes[block];
+                        position += length;
+                    }
+                }
+
+                ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+                DataOutputStream footer = new DataOutputStream(footerBytes);
+                footer.writeInt(VERSION);
+                footer.writeInt(columnCount);
+                footer.writeInt(blockCount);
+                footer.writeInt(totalTuples);
+                for (int i = 0; i < columnCount; ++i) {
+                    footer.writeInt(columnIds[i]);
+                    footer.writeUTF(columnTypes[i].name());
+                    footer.writeUTF(compressionTypes[i].name());
+                }
+                for (int block = 0; block < blockCount; ++block) {
+                    footer.writeInt(readers[0].blockStartTuples[block]);
+                    for (int i = 0; i < columnCount; ++i) {
+                        footer.writeLong(positions[i][block]);
+                        footer.writeInt(lengthes[i][block]);
+                        footer.writeInt(uncompressedLengthes[i][block]);
+                    }
+                }
+                footer.flush();
+                out.write(footerBytes.toByteArray());
+                DataOutputStream tail = new DataOutputStream(out);
+                tail.writeInt(footerBytes.size());
+                tail.writeInt(MAGIC);
+                tail.flush();
+            } finally {
+                out.close();
+            }
+            if (LOG.isInfoEnabled()) {
+                LOG.info("interleaved " + columnCount + " columns (" + blockCount + " blocks, " + totalTuples + " tuples) into " + paxFile);
+            }
+            int[] blockStartTuples = readers[0].blockStartTuples.clone();
+            long[] checksums = new long[columnCount];
+            for (int i = 0; i < columnCount; ++i) {
+                checksums[i] = crcs[i].getValue();
+            }
+            return new LocalPaxFile(paxFile, VERSION, columnIds.clone(), columnTypes.clone(), compressionTypes.clone(),
+                totalTuples, blockStartTuples, positions, lengthes, uncompressedLengthes, checksums);
+        } finally {
+            for (int i = 0; i < columnCount; ++i) {
+                if (readers[i] != null) {
+                    readers[i].close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the footer of the PAX file.
+     */
+    public static LocalPaxFile open (VirtualFile file) throws IOException {
+        long fileLength = file.length();
+        if (fileLength < TAIL_SIZE) {
+            throw new IOException ("too short for a PAX file: " + file);
+        }
+        ByteBuffer tail = ByteBuffer.wrap(readBytes(file, fileLength - TAIL_SIZE, TAIL_SIZE));
+        int footerLength = tail.getInt();
+        if (tail.getInt() != MAGIC) {
+            throw new IOException ("not a PAX file (magic number doesn't match): " + file);
+        }
+        if (footerLength <= 0 || footerLength > fileLength - TAIL_SIZE) {
+            throw new IOException ("invalid footer length " + footerLength + ". corrupted file? file=" + file);
+        }
+        long footerOffset = fileLength - TAIL_SIZE - footerLength;
+        DataInputStream footer = new DataInputStream(new ByteArrayInputStream(readBytes(file, footerOffset, footerLength)));
+        int version = footer.readInt();
+        if (version != VERSION) {
+            throw new IOException ("unsupported PAX file version " + version + ": " + file);
+        }
+        int columnCount = footer.readInt();
+        int blockCount = footer.readInt();
+        int totalTuples = footer.readInt();
+        if (columnCount <= 0 || blockCount < 0 || totalTuples < 0) {
+            throw new IOException ("invalid PAX file footer. corrupted file? columnCount=" + columnCount
+                + ", blockCount=" + blockCount + ", totalTuples=" + totalTuples + ". file=" + file);
+        }
+        int[] columnIds = new int[columnCount];
+        ColumnType[] columnTypes = new ColumnType[columnCount];
+        CompressionType[] compressionTypes = new CompressionType[columnCount];
+        for (int i = 0; i < columnCount; ++i) {
+            columnIds[i] = footer.readInt();
+            columnTypes[i] = ColumnType.valueOf(footer.readUTF());
+            compressionTypes[i] = CompressionType.valueOf(footer.readUTF());
+        }
+        int[] blockStartTuples = new int[blockCount];
+        long[][] positions = new long[columnCount][blockCount];
+        int[][] lengthes = new int[columnCount][blockCount];
+        int[][] uncompressedLengthes = new int[columnCount][blockCount];
+        for (int block = 0; block < blockCount; ++block) {
+            blockStartTuples[block] = footer.readInt();
+            if (block == 0 ? blockStartTuples[block] != 0 : blockStartTuples[block] <= blockStartTuples[block - 1]) {
+                throw new IOException ("invalid PAX file footer. corrupted file? blockStartTuples[" + block + "]=" + blockStartTuples[block] + ". file=" + file);
+            }
+            for (int i = 0; i < columnCount; ++i) {
+                positions[i][block] = footer.readLong();
+                lengthes[i][block] = footer.readInt();
+                uncompressedLengthes[i][block] = footer.readInt();
+                if (positions[i][block] < 0 || lengthes[i][block] < 0 || positions[i][block] + lengthes[i][block] > footerOffset) {
+                    throw new IOException ("invalid mini-page: position=" + positions[i][block] + ", length=" + lengthes[i][block]
+                        + ". corrupted file? file=" + file);
+                }
+            }
+        }
+        return new LocalPaxFile(file, version, columnIds, columnTypes, compressionTypes,
+            totalTuples, blockStartTuples, positions, lengthes, uncompressedLengthes, null);
+    }
+
+    /** reads the given byte range of the file. */
+    private static byte[] readBytes (VirtualFile file, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        VirtualFilePositionalInput input = file.getPositionalInput();
+        if (input != null) {
+            try {
+                input.readFully(position, bytes, 0, length);
+            } finally {
+                input.close();
+            }
+            return bytes;
+        }
+        LocalRawFileReader reader = new LocalRawFileReader(file, 0);
+        try {
+            reader.seekToByteAbsolute(position);
+            int read = reader.getRawValueReader().readBytes(bytes, 0, length);
+            if (read != length) {
+                throw new IOException ("EOF before reading " + length + " bytes from " + position + ": " + file);
+            }
+        } finally {
+            reader.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates a reader of the given column in this file.
+     * @param column index of the column in this file (not column ID)
+     * @param memoryMapped whether to read the mini-pages from memory-mapped buffer.
+     */
+    public TypedReader<?, ?> createReader (int column, boolean memoryMapped) throws IOException {
+        return createReader(file, columnTypes[column], compressionTypes[column], this, column, memoryMapped);
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static TypedReader<?, ?> createReader (VirtualFile file, ColumnType columnType, CompressionType compressionType,
+                    LocalPaxFile paxFile, int column, boolean memoryMapped) throws IOException {
+        ValueTraits<?, ?> traits = ValueTraitsFactory.getInstance(columnType);
+        if (traits instanceof VarLenValueTraits<?>) {
+            return new LocalBlockCompressionVarLenReader(file, (VarLenValueTraits<?>) traits, compressionType, memoryMapped, paxFile, column);
+        } else {
+            return new LocalBlockCompressionFixLenReader(file, (FixLenValueTraits<?, ?>) traits, compressionType, memoryMapped, paxFile, column);
+        }
+    }
+
+    /**
+     * Returns the index of the column in this file.
+     * @return index of the column. -1 if the column is not in this file.
+     */
+    public int getColumnIndex (int columnId) {
+        for (int i = 0; i < columnIds.length; ++i) {
+            if (columnIds[i] == columnId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "PaxFile:" + file + "[columns=" + columnIds.length + ", blocks=" + blockStartTuples.length + ", tuples=" + totalTuples + "]";
+    }
+
+    /** Returns the version of the file format. */
+    public int getVersion () {
+        return version;
+    }
+    /** Returns the PAX file. */
+    public VirtualFile getFile () {
+        return file;
+    }
+    /** Returns the number of columns in this file. */
+    public int getColumnCount () {
+        return columnIds.length;
+    }
+    /** Returns the ID of the column. */
+    public int getColumnId (int column) {
+        return columnIds[column];
+    }
+    /** Returns the type of the column. */
+    public ColumnType getColumnType (int column) {
+        return columnTypes[column];
+    }
+    /** Returns the compression type of the column. */
+    public CompressionType getCompressionType (int column) {
+        return compressionTypes[column];
+    }
+    /** Returns the number of tuples in this file. */
+    public int getTotalTuples () {
+        return totalTuples;
+    }
+    /** Returns the total byte size of the mini-pages of the column, which is the share of the column in this file. */
+    public long getColumnByteSize (int column) {
+        long size = 0;
+        for (int length : miniPageLengthes[column]) {
+            size += length;
+        }
+        return size;
+    }
+    /**
+     * Returns the CRC32 of the mini-pages of the column in the order they are stored.
+     * Only available on the object returned by {@link #interleave(VirtualFile, int[], VirtualFile[], ColumnType[], CompressionType[])}.
+     * 0 if this object is opened from an existing file.
+     */
+    public long getColumnChecksum (int column) {
+        return columnChecksums == null ? 0L : columnChecksums[column];
+    }
+    /** Returns the number of blocks in this file. */
+    public int getBlockCount () {
+        return blockStartTuples.length;
+    }
+
+    /** the tuple to start each block. shared, not copied. */
+    int[] getBlockStartTuples () {
+        return blockStartTuples;
+    }
+    /** byte position of the mini-page of the column in each block. shared, not copied. */
+    long[] getMiniPagePositions (int column) {
+        return miniPagePositions[column];
+    }
+    /** byte length of the mini-page of the column in each block. shared, not copied. */
+    int[] getMiniPageLengthes (int column) {
+        return miniPageLengthes[column];
+    }
+    /** byte length of the mini-page of the column in each block without compression. shared, not copied. */
+    int[] getMiniPageUncompressedLengthes (int column) {
+        return miniPageUncompressedLengthes[column];
+    }
+}
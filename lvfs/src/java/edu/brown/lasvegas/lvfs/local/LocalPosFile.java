@@ -15,23 +15,35 @@ import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
  * A position file is a sparse tuple-position index file for variable-length values
  * and a few non-seekable compressions (e.g., RLE, Snappy).
  * 
- * <p>A position file simply stores lots of long values so that both reading and
+ * <p>A position file simply stores lots of integer values so that both reading and
  * writing are extremely simple and fast. Also, a position file should be small,
  * most likely 100-200KB or so. So, we read/write them at once.</p>
  * 
- * <p>The file format is a series of int-pairs.
- * 1) tuple-num of the pointed tuple.
- * 2) byte position of the tuple.</p>
+ * <p>The file format starts with a 4-byte magic number ({@link #FORMAT_MAGIC_V2})
+ * and a 4-byte integer for the number of entries. Then, each entry consists of
+ * 1) 4-byte tuple-num of the pointed tuple.
+ * 2) 8-byte byte position of the tuple.</p>
  * 
  * <p>Additionally, it's guaranteed that the first pair points to the first tuple
  * in the file, the last pair points to the last tuple + 1 (=the total number of tuples).</p>
  * 
- * <p>Writing is simply to dump the bunch of int-values. Reading
+ * <p>Writing is simply to dump the bunch of values. Reading
  * is a binary-search on the tuple-num.</p>
+ * 
+ * <p>Older position files are a series of 4-byte int-pairs without the header,
+ * which can't point beyond 2GB. They are still readable. As the first tuple-num
+ * of such files is always 0, the (negative) magic number distinguishes the two formats.</p>
  */
 public final class LocalPosFile implements PositionIndex {
     private static Logger LOG = Logger.getLogger(LocalPosFile.class);
-    
+
+    /** the magic number at the beginning of position files with 64-bit byte positions. */
+    public static final int FORMAT_MAGIC_V2 = 0xF05F11E2;
+    /** byte size of the header in the current format. */
+    private static final int HEADER_SIZE = 8;
+    /** byte size of each entry in the current format. */
+    private static final int ENTRY_SIZE = 4 + 8;
+
     /**
      * Newly creates a position file with the given tuple-num and byte positions.
      * @param file the file to write.
@@ -41,36 +53,39 @@ public final class LocalPosFile implements PositionIndex {
      * @param totalBytes total byte size of the file
      * @throws IOException
      */
-    public static void createPosFile (VirtualFile file, ArrayList<Integer> tuples, ArrayList<Integer> positions,
-                    int totalTuples, int totalBytes) throws IOException {
+    public static void createPosFile (VirtualFile file, ArrayList<Integer> tuples, ArrayList<Long> positions,
+                    int totalTuples, long totalBytes) throws IOException {
         assert (tuples.size() == positions.size());
         if (LOG.isDebugEnabled()) {
             LOG.debug("writing " + tuples.size() + " positions into a position file " + file.getAbsolutePath());
         }
         long startTime = LOG.isDebugEnabled() ? System.nanoTime() : 0L;
-        int[] array = new int[(tuples.size() + 1) * 2];
+        int[] tupleArray = new int[tuples.size() + 1];
+        long[] positionArray = new long[tuples.size() + 1];
         for (int i = 0; i < tuples.size(); ++i) {
-            array[i * 2] = tuples.get(i);
-            array[i * 2 + 1] = positions.get(i);
+            tupleArray[i] = tuples.get(i);
+            positionArray[i] = positions.get(i);
             if (i == 0) {
-                assert (array[i * 2] == 0);
+                assert (tupleArray[i] == 0);
             } else {
-                assert (array[i * 2] > array[(i - 1) * 2]); 
-                assert (array[i * 2 + 1] > array[(i - 1) * 2 + 1]); 
+                assert (tupleArray[i] > tupleArray[i - 1]); 
+                assert (positionArray[i] > positionArray[i - 1]); 
             }
         }
         // last entry always gives the total number of tuples and end of file position 
-        array[tuples.size() * 2] = totalTuples;
-        array[tuples.size() * 2 + 1] = totalBytes;
+        tupleArray[tuples.size()] = totalTuples;
+        positionArray[tuples.size()] = totalBytes;
         long midTime = LOG.isDebugEnabled() ? System.nanoTime() : 0L; // after CPU intensive stuffs
         if (LOG.isDebugEnabled()) {
             LOG.debug("convert-time=" + (midTime - startTime) + "ns");
         }
-        writeToFile (file, array);
+        writeToFile (file, tupleArray, positionArray);
     }
     
-    /** content of this file. see the class comment for the file format. */
-    private final int[] array;
+    /** tuple-nums of the entries. see the class comment for the file format. */
+    private final int[] tupleArray;
+    /** byte positions of the entries. */
+    private final long[] positionArray;
 
     /**
      * Reads a position file into this object.
@@ -80,25 +95,44 @@ public final class LocalPosFile implements PositionIndex {
      * Adding complexity wouldn't worth it.
      */
     public LocalPosFile(VirtualFile file) throws IOException {
-        assert (file.length() % 8 == 0);
         if (file.length() > (1 << 22)) {
             throw new IOException ("this file seems too large as a position file:"
                 + file.getAbsolutePath()
-                + "=" + file.length() + " bytes (" + (file.length()<<20) + "MB)");
+                + "=" + file.length() + " bytes (" + (file.length()>>20) + "MB)");
         }
         long startTime = LOG.isDebugEnabled() ? System.nanoTime() : 0L;
-        array = new int[(int) file.length() / 4];
         byte[] bytes = new byte[(int) file.length()];
         InputStream stream = file.getInputStream();
         int read = stream.read(bytes);
         stream.close();
         assert (read == bytes.length);
-        // simply reads it to int[]. we don't convert it to Pos[] because
-        // it will create a lot of unused objects.
-        ByteBuffer.wrap(bytes).asIntBuffer().get(array);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length >= HEADER_SIZE && buffer.getInt(0) == FORMAT_MAGIC_V2) {
+            int entryCount = buffer.getInt(4);
+            if (entryCount <= 0 || bytes.length != HEADER_SIZE + entryCount * ENTRY_SIZE) {
+                throw new IOException ("invalid position file. corrupted file? entryCount=" + entryCount + ", file=" + file.getAbsolutePath());
+            }
+            tupleArray = new int[entryCount];
+            positionArray = new long[entryCount];
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < entryCount; ++i) {
+                tupleArray[i] = buffer.getInt();
+                positionArray[i] = buffer.getLong();
+            }
+        } else {
+            // old format. series of int-pairs
+            assert (bytes.length % 8 == 0);
+            int entryCount = bytes.length / 8;
+            tupleArray = new int[entryCount];
+            positionArray = new long[entryCount];
+            for (int i = 0; i < entryCount; ++i) {
+                tupleArray[i] = buffer.getInt();
+                positionArray[i] = buffer.getInt();
+            }
+        }
         long endTime = LOG.isDebugEnabled() ? System.nanoTime() : 0L;
         if (LOG.isDebugEnabled()) {
-            LOG.debug("read " + array.length + " long values from a position file " + file.getAbsolutePath()
+            LOG.debug("read " + tupleArray.length + " entries from a position file " + file.getAbsolutePath()
                     + ". time=" + (endTime - startTime) + "ns");
         }
     }
@@ -108,63 +142,70 @@ public final class LocalPosFile implements PositionIndex {
         if (tupleToFind < 0 || tupleToFind  >= getTotalTuples()) { 
             throw new IllegalArgumentException("this tuple position does not exist in this file:" + tupleToFind);
         }
-        assert (array[0] == 0);
+        assert (tupleArray[0] == 0);
         // first, assure the first entry is strictly smaller than the searched tuple
         if (tupleToFind == 0) {
-            return new Pos (array[0], array[1]);
+            return new Pos (tupleArray[0], positionArray[0]);
         }
         // the last entry is always strictly larger than the searched tuple
         
         // then, binary search
         int low = 0; // the entry we know strictly smaller
-        int high = (array.length / 2); // the entry we know strictly larger
+        int high = tupleArray.length; // the entry we know strictly larger
         int mid = 0;
         while (low <= high) {
             mid = (low + high) >>> 1;
-            int midTuple = array[mid * 2];
+            int midTuple = tupleArray[mid];
             if (midTuple < tupleToFind) {
                 low = mid + 1;
             } else if (midTuple > tupleToFind) {
                 high = mid - 1;
             } else {
-                return new Pos (midTuple, array[mid * 2 + 1]); // exact match. lucky!
+                return new Pos (midTuple, positionArray[mid]); // exact match. lucky!
             }
         }
         // not exact match. in this case, return the position we should start searching
         int ret = (low > mid) ? low - 1 : mid - 1;
         assert (ret >= 0);
-        assert (ret < array.length / 2);
-        assert (array[ret * 2] < tupleToFind);
-        assert (ret == (array.length / 2) - 1 || array[(ret + 1) * 2] > tupleToFind);
+        assert (ret < tupleArray.length);
+        assert (tupleArray[ret] < tupleToFind);
+        assert (ret == tupleArray.length - 1 || tupleArray[ret + 1] > tupleToFind);
         return getEntry(ret);
     }
     @Override
     public int getEntryCount() {
-        return array.length / 2;
+        return tupleArray.length;
     }
     @Override
     public Pos getEntry(int entry) {
-        return new Pos (array[entry * 2], array[entry * 2 + 1]);
+        return new Pos (tupleArray[entry], positionArray[entry]);
     }
     
     @Override
     public int getTotalTuples () {
         // the last tuple must point to the end of the file (non existing tuple)
-        return (int) array[array.length - 2];
+        return tupleArray[tupleArray.length - 1];
     }
 
     @Override
-    public int getTotalBytes () {
-        return array[array.length - 1];
+    public long getTotalBytes () {
+        return positionArray[positionArray.length - 1];
     }
     
     @Override
     public void writeToFile(VirtualFile file) throws IOException {
-        writeToFile (file, array);
+        writeToFile (file, tupleArray, positionArray);
     }
-    private static void writeToFile (VirtualFile file, int[] theArray) throws IOException {
-        byte[] bytes = new byte[theArray.length * 4];
-        ByteBuffer.wrap(bytes).asIntBuffer().put(theArray);
+    private static void writeToFile (VirtualFile file, int[] theTupleArray, long[] thePositionArray) throws IOException {
+        assert (theTupleArray.length == thePositionArray.length);
+        byte[] bytes = new byte[HEADER_SIZE + theTupleArray.length * ENTRY_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(FORMAT_MAGIC_V2);
+        buffer.putInt(theTupleArray.length);
+        for (int i = 0; i < theTupleArray.length; ++i) {
+            buffer.putInt(theTupleArray[i]);
+            buffer.putLong(thePositionArray[i]);
+        }
         long midTime = LOG.isDebugEnabled() ? System.nanoTime() : 0L; // after CPU intensive stuffs
         VirtualFileOutputStream stream = file.getOutputStream();
         stream.write(bytes);
@@ -172,7 +213,7 @@ public final class LocalPosFile implements PositionIndex {
         stream.close();
         long endTime = LOG.isDebugEnabled() ? System.nanoTime() : 0L; // after all
         if (LOG.isDebugEnabled()) {
-            LOG.debug("wrote " + theArray.length + " integers into a position file " + file.getAbsolutePath()
+            LOG.debug("wrote " + theTupleArray.length + " entries into a position file " + file.getAbsolutePath()
                     + ". IO-time=" + (endTime - midTime) + "ns");
         }
     }
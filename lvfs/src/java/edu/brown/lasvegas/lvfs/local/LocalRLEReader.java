@@ -7,6 +7,7 @@ import org.apache.log4j.Logger;
 import edu.brown.lasvegas.lvfs.PositionIndex.Pos;
 import edu.brown.lasvegas.lvfs.TypedRLEReader;
 import edu.brown.lasvegas.lvfs.ValueRun;
+import edu.brown.lasvegas.lvfs.ValueRunBatch;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.BigintValueTraits;
 import edu.brown.lasvegas.traits.DoubleValueTraits;
@@ -72,7 +73,16 @@ public final class LocalRLEReader<T extends Comparable<T>, AT> extends LocalType
      * @param posFile optional. position file to speed up locating tuple. (without it, seeking might be slow, but not as much as non-compressed file)
      */
     public LocalRLEReader(VirtualFile dataFile, VirtualFile posFile, ValueTraits<T, AT> traits, int streamBufferSize) throws IOException {
-        super (dataFile, traits, streamBufferSize);
+        this (dataFile, posFile, traits, streamBufferSize, false);
+    }
+    /**
+     * Constructs a RLE-compression reader. The optional position file speeds up seeking
+     * @param dataFile required. the main data file
+     * @param posFile optional. position file to speed up locating tuple.
+     * @param memoryMapped whether to read the file via memory-mapped buffer.
+     */
+    public LocalRLEReader(VirtualFile dataFile, VirtualFile posFile, ValueTraits<T, AT> traits, int streamBufferSize, boolean memoryMapped) throws IOException {
+        super (dataFile, traits, streamBufferSize, memoryMapped);
         this.traits = traits;
         if (posFile != null) {
             loadPositionFile(posFile);
@@ -155,6 +165,33 @@ public final class LocalRLEReader<T extends Comparable<T>, AT> extends LocalType
         }
     }
     
+    @Override
+    public final int readRuns(ValueRunBatch<T, AT> batch, int maxTuples) throws IOException {
+        assert (curTuple >= curRun.startTuple);
+        int runsRead = 0;
+        int tuplesRead = 0;
+        while (tuplesRead < maxTuples && !batch.isFull()) {
+            int remainingRun = curRun.startTuple + curRun.runLength - curTuple;
+            assert (remainingRun >= 0);
+            if (remainingRun == 0) {
+                ValueRun<T> next = getNextRun();
+                if (next == null) {
+                    break;
+                }
+                continue;
+            }
+            int len = Math.min(remainingRun, maxTuples - tuplesRead);
+            batch.add(curRun.value, curTuple, len);
+            curTuple += len;
+            tuplesRead += len;
+            ++runsRead;
+        }
+        if (runsRead == 0 && maxTuples > 0 && !batch.isFull()) {
+            return -1;
+        }
+        return runsRead;
+    }
+
     @Override
     public final void skipValue() throws IOException {
         assert (curTuple >= curRun.startTuple);
@@ -69,9 +69,9 @@ public final class LocalRLEWriter<T extends Comparable<T>, AT> extends LocalType
     private ValueRun<T> curRun = new ValueRun<T>();
 
     private final int collectPerBytes;
-    private int prevCollectPosition = -1; // to always collect at the first value
+    private long prevCollectPosition = -1; // to always collect at the first value
     private ArrayList<Integer> collectedTuples = new ArrayList<Integer>();
-    private ArrayList<Integer> collectedPositions = new ArrayList<Integer>();
+    private ArrayList<Long> collectedPositions = new ArrayList<Long>();
     /** just a statistics. */
     private int runCount = 0;
 
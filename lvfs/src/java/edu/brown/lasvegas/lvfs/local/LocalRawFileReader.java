@@ -4,11 +4,15 @@ import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 
 import org.apache.log4j.Logger;
 
 import edu.brown.lasvegas.lvfs.RawValueReader;
 import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.VirtualFileSlice;
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
 
 /**
  * Reads a read-only local data file.
@@ -16,6 +20,17 @@ import edu.brown.lasvegas.lvfs.VirtualFile;
  * each entry is stored contiguously. No dictionary,
  * no index whatever. Those additional things are
  * stored in separate files.
+ * 
+ * <p>This reader has three modes. The default mode reads the file via positional reads
+ * ({@link VirtualFilePositionalInput}) with a small window buffer of its own.
+ * Seeking in this mode only changes the cursor, so jumping backward costs the same as jumping forward,
+ * and the underlying file handle is shared with other readers of the same file.
+ * If the file system doesn't support positional reads, the reader falls back to
+ * a (buffered) input stream, which has to be re-opened to seek backward.
+ * The memory-mapped mode maps the whole file into memory and serves
+ * all reads directly from the mapped buffer. The latter avoids the copy to the stream buffer
+ * and the conversion buffer in {@link RawValueReader}. It is available only for local files
+ * ({@link LocalVirtualFile}) and their slices ({@link VirtualFileSlice}). Otherwise, the reader silently falls back to the default mode.</p>
  */
 public class LocalRawFileReader implements Closeable {
     private static Logger LOG = Logger.getLogger(LocalRawFileReader.class);
@@ -23,7 +38,7 @@ public class LocalRawFileReader implements Closeable {
     /** underlying file handle. */
     private final VirtualFile rawFile;
     /** actual size of underlying file. */
-    private final int rawFileSize;
+    private final long rawFileSize;
     
     private final RawValueReader reader;
     /**
@@ -35,12 +50,16 @@ public class LocalRawFileReader implements Closeable {
     }
 
     private final int streamBufferSize;
-    /** input stream of the raw file. */
+    /** input stream of the raw file. null unless stream mode. */
     private InputStream rawStream;
+    /** positional input of the raw file. null unless positional mode. */
+    private VirtualFilePositionalInput positionalInput;
+    /** memory-mapped content of the raw file. null unless memory-mapped mode. */
+    private MappedByteBuffer mappedFile;
     /** current byte position of the input stream. */
-    private int curPosition;
+    private long curPosition;
     /** returns current byte position of the input stream. */
-    public int getCurPosition() {
+    public long getCurPosition() {
         return curPosition;
     }
     
@@ -51,79 +70,255 @@ public class LocalRawFileReader implements Closeable {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public LocalRawFileReader (VirtualFile rawFile, int streamBufferSize) throws IOException {
+        this (rawFile, streamBufferSize, false);
+    }
+
+    /**
+     * Instantiates a new local raw file reader.
+     *
+     * @param rawFile the raw file
+     * @param streamBufferSize buffer size of the input stream (or the read window in positional mode).
+     * ignored in memory-mapped mode.
+     * @param memoryMapped whether to map the file into memory rather than reading it via input stream.
+     * ignored if the file is not a local file or too large to map at once (2GB or larger).
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public LocalRawFileReader (VirtualFile rawFile, int streamBufferSize, boolean memoryMapped) throws IOException {
         this.rawFile = rawFile;
-        if (rawFile.length() > 0x7FFFFFFF) {
-            throw new IOException ("too large file: " + rawFile);
-        }
-        rawFileSize = (int) rawFile.length();
+        rawFileSize = rawFile.length();
         this.streamBufferSize = streamBufferSize;
+        curPosition = 0;
+        // a slice of a local file (embedded in a segment file) can be mapped too
+        LocalVirtualFile localFile = null;
+        long mapOffset = 0;
+        if (rawFile instanceof LocalVirtualFile) {
+            localFile = (LocalVirtualFile) rawFile;
+        } else if (rawFile instanceof VirtualFileSlice && ((VirtualFileSlice) rawFile).getBaseFile() instanceof LocalVirtualFile) {
+            localFile = (LocalVirtualFile) ((VirtualFileSlice) rawFile).getBaseFile();
+            mapOffset = ((VirtualFileSlice) rawFile).getOffset();
+        }
+        if (memoryMapped && localFile != null && rawFileSize > Integer.MAX_VALUE) {
+            LOG.warn("the file is too large to map at once. falls back to non-mapped mode: " + rawFile);
+            memoryMapped = false;
+        }
+        if (memoryMapped && localFile != null) {
+            mappedFile = localFile == rawFile ? localFile.mapReadOnly() : localFile.mapReadOnly(mapOffset, rawFileSize);
+            assert (mappedFile.capacity() == rawFileSize);
+            reader = new MappedValueReader();
+        } else {
+            if (memoryMapped) {
+                LOG.warn("memory-mapped mode is not available for non-local file. falls back to non-mapped mode: " + rawFile);
+            }
+            positionalInput = rawFile.getPositionalInput();
+            if (positionalInput != null) {
+                reader = new PositionalValueReader();
+            } else {
+                rawStream = openStream();
+                reader = new StreamValueReader();
+            }
+        }
+        if (LOG.isInfoEnabled()) {
+            LOG.info("opened raw file:" + this);
+        }
+    }
+
+    private InputStream openStream () throws IOException {
+        InputStream stream;
         if (streamBufferSize > 0) {
-            rawStream = new BufferedInputStream(rawFile.getInputStream(), streamBufferSize);
+            stream = new BufferedInputStream(rawFile.getInputStream(), streamBufferSize);
         } else {
-            rawStream = rawFile.getInputStream();
+            stream = rawFile.getInputStream();
         }
-        assert (rawStream != null);
-        curPosition = 0;
-        reader = new RawValueReader() {
-            @Override
-            public byte readByte() throws IOException {
-                int read = rawStream.read();
-                if (read < 0) {
-                    throw new IOException ("EOF " + this);
-                }
-                ++curPosition;
-                return (byte) read;
-            }
-            @Override
-            public int readBytes(byte[] buf, int off, int len) throws IOException {
-                int read = rawStream.read(buf, off, len);
-                if (read <= 0) {
-                    return read;
-                }
-                curPosition += read;
+        assert (stream != null);
+        return stream;
+    }
+
+    /** reads the file via the input stream. */
+    private class StreamValueReader extends RawValueReader {
+        @Override
+        public byte readByte() throws IOException {
+            int read = rawStream.read();
+            if (read < 0) {
+                throw new IOException ("EOF " + this);
+            }
+            ++curPosition;
+            return (byte) read;
+        }
+        @Override
+        public int readBytes(byte[] buf, int off, int len) throws IOException {
+            int read = rawStream.read(buf, off, len);
+            if (read <= 0) {
                 return read;
             }
-            @Override
-            public void skipBytes(int length) throws IOException {
-                if (length < 0) {
-                    throw new IOException ("negative skip length:" + length);
-                }
-                if (length == 0) {
-                    return;
-                }
-                // InputStream#skip() might skip fewer bytes than requested for legitimate reasons
-                // ex. buffered stream reached the end of the buffer.
-                // So, we need to repeatedly call it. (negative return is definitely an error though)
-                for (int totalSkipped = 0; totalSkipped < length;) {
-                    int skippedByte = (int) rawStream.skip(length - totalSkipped);
-                    if (skippedByte < 0) {
-                        throw new IOException ("failed to skip??");
-                    }
-                    totalSkipped += skippedByte;
-                    assert (totalSkipped <= length);
-                }
-                curPosition += length;
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("skipped " + length + " bytes");
+            curPosition += read;
+            return read;
+        }
+        @Override
+        public void skipBytes(int length) throws IOException {
+            if (length < 0) {
+                throw new IOException ("negative skip length:" + length);
+            }
+            if (length == 0) {
+                return;
+            }
+            skipStream(length);
+        }
+        @Override
+        public boolean hasMore() throws IOException {
+            return curPosition < rawFileSize;
+        }
+    }
+
+    /** skips the given number of bytes in the input stream. */
+    private void skipStream (long length) throws IOException {
+        // InputStream#skip() might skip fewer bytes than requested for legitimate reasons
+        // ex. buffered stream reached the end of the buffer.
+        // So, we need to repeatedly call it. (negative return is definitely an error though)
+        for (long totalSkipped = 0; totalSkipped < length;) {
+            long skippedByte = rawStream.skip(length - totalSkipped);
+            if (skippedByte < 0) {
+                throw new IOException ("failed to skip??");
+            }
+            totalSkipped += skippedByte;
+            assert (totalSkipped <= length);
+        }
+        curPosition += length;
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("skipped " + length + " bytes");
+        }
+    }
+
+    /**
+     * reads the file directly from the memory-mapped buffer.
+     * curPosition is always same as the position of the mapped buffer.
+     */
+    private class MappedValueReader extends RawValueReader {
+        @Override
+        public byte readByte() throws IOException {
+            if (curPosition >= rawFileSize) {
+                throw new IOException ("EOF " + this);
+            }
+            ++curPosition;
+            return mappedFile.get();
+        }
+        @Override
+        public int readBytes(byte[] buf, int off, int len) throws IOException {
+            if (curPosition >= rawFileSize && len > 0) {
+                return -1;
+            }
+            int read = (int) Math.min(len, rawFileSize - curPosition);
+            mappedFile.get(buf, off, read);
+            curPosition += read;
+            return read;
+        }
+        @Override
+        protected ByteBuffer readDirect(int bytesToRead) throws IOException {
+            int read = (int) Math.min(bytesToRead, rawFileSize - curPosition);
+            ByteBuffer view = mappedFile.duplicate();
+            view.limit((int) curPosition + read);
+            curPosition += read;
+            mappedFile.position((int) curPosition);
+            return view;
+        }
+        @Override
+        public void skipBytes(int length) throws IOException {
+            if (length < 0) {
+                throw new IOException ("negative skip length:" + length);
+            }
+            if (curPosition + length > rawFileSize) {
+                throw new IOException ("tried to skip beyond EOF: " + this + ", length=" + length);
+            }
+            curPosition += length;
+            mappedFile.position((int) curPosition);
+        }
+        @Override
+        public boolean hasMore() throws IOException {
+            return curPosition < rawFileSize;
+        }
+    }
+    
+    /** window size of positional mode when streamBufferSize is not specified. */
+    private static final int DEFAULT_POSITIONAL_WINDOW_SIZE = 1 << 13;
+
+    /**
+     * reads the file via positional reads.
+     * Small reads are served from a window buffer while large reads
+     * directly go to the file. Skipping/seeking only moves curPosition.
+     */
+    private class PositionalValueReader extends RawValueReader {
+        private final byte[] window = new byte[streamBufferSize > 0 ? streamBufferSize : DEFAULT_POSITIONAL_WINDOW_SIZE];
+        /** byte position of the first byte in window. */
+        private long windowStart = 0;
+        /** number of valid bytes in window. */
+        private int windowLength = 0;
+
+        private void fillWindow () throws IOException {
+            int len = (int) Math.min(window.length, rawFileSize - curPosition);
+            positionalInput.readFully(curPosition, window, 0, len);
+            windowStart = curPosition;
+            windowLength = len;
+        }
+        private boolean inWindow () {
+            return curPosition >= windowStart && curPosition < windowStart + windowLength;
+        }
+        @Override
+        public byte readByte() throws IOException {
+            if (curPosition >= rawFileSize) {
+                throw new IOException ("EOF " + this);
+            }
+            if (!inWindow()) {
+                fillWindow();
+            }
+            byte ret = window[(int) (curPosition - windowStart)];
+            ++curPosition;
+            return ret;
+        }
+        @Override
+        public int readBytes(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (curPosition >= rawFileSize) {
+                return -1;
+            }
+            int read = (int) Math.min(len, rawFileSize - curPosition);
+            for (int totalRead = 0; totalRead < read;) {
+                int remaining = read - totalRead;
+                if (inWindow()) {
+                    int copied = (int) Math.min(remaining, windowStart + windowLength - curPosition);
+                    System.arraycopy(window, (int) (curPosition - windowStart), buf, off + totalRead, copied);
+                    curPosition += copied;
+                    totalRead += copied;
+                } else if (remaining >= window.length) {
+                    // large read. no point to copy via the window
+                    positionalInput.readFully(curPosition, buf, off + totalRead, remaining);
+                    curPosition += remaining;
+                    totalRead += remaining;
+                } else {
+                    fillWindow();
                 }
             }
-            @Override
-            public boolean hasMore() throws IOException {
-                return curPosition < rawFileSize;
+            return read;
+        }
+        @Override
+        public void skipBytes(int length) throws IOException {
+            if (length < 0) {
+                throw new IOException ("negative skip length:" + length);
             }
-        };
-        if (LOG.isInfoEnabled()) {
-            LOG.info("opened raw file:" + this);
+            if (curPosition + length > rawFileSize) {
+                throw new IOException ("tried to skip beyond EOF: " + this + ", length=" + length);
+            }
+            curPosition += length;
+        }
+        @Override
+        public boolean hasMore() throws IOException {
+            return curPosition < rawFileSize;
         }
     }
     
     private void reopenStream () throws IOException {
         rawStream.close();
-        if (streamBufferSize > 0) {
-            rawStream = new BufferedInputStream(rawFile.getInputStream(), streamBufferSize);
-        } else {
-            rawStream = rawFile.getInputStream();
-        }
+        rawStream = openStream();
         curPosition = 0;
         LOG.info("reopened stream");
     }
@@ -136,20 +331,77 @@ public class LocalRawFileReader implements Closeable {
             rawStream.close();
             rawStream = null;
         }
+        if (positionalInput != null) {
+            positionalInput.close();
+            positionalInput = null;
+        }
+        // a mapped buffer can't be explicitly unmapped. it's released when garbage-collected.
+        mappedFile = null;
+    }
+    
+    /** returns whether this reader reads the file via positional reads. */
+    public boolean isPositional () {
+        return positionalInput != null;
+    }
+
+    /**
+     * Returns whether {@link #readFullyAt(long, byte[], int, int)} is available,
+     * which is the case in positional and memory-mapped modes.
+     */
+    public boolean isConcurrentReadSupported () {
+        return mappedFile != null || positionalInput != null;
+    }
+
+    /**
+     * Reads the specified bytes at the given absolute position without moving the cursor of this reader.
+     * Unlike other methods, this method is thread-safe and can be called while the owner thread
+     * is using this reader. Available only when {@link #isConcurrentReadSupported()} returns true.
+     */
+    public void readFullyAt (long position, byte[] buf, int off, int len) throws IOException {
+        if (position < 0 || position + len > rawFileSize) {
+            throw new IOException ("tried to read beyond EOF: " + this + ", position=" + position + ", len=" + len);
+        }
+        MappedByteBuffer mapped = mappedFile;
+        VirtualFilePositionalInput positional = positionalInput;
+        if (mapped != null) {
+            ByteBuffer view = mapped.duplicate();
+            view.position((int) position);
+            view.get(buf, off, len);
+        } else if (positional != null) {
+            positional.readFully(position, buf, off, len);
+        } else {
+            throw new IOException ("concurrent read is not supported in stream mode: " + this);
+        }
+    }
+
+    /** returns whether this reader serves reads from a memory-mapped buffer. */
+    public boolean isMemoryMapped () {
+        return mappedFile != null;
     }
     
     /**
      * Jump to the desired absolute byte position. This method can jump to
      * previous position. In that case, this method re-opens the
-     * input stream.
+     * input stream if the reader is in stream mode. In other modes, seeking is O(1).
      * @param bytePosition moves the input stream cursor to this position
      * @throws IOException
      */
-    public final void seekToByteAbsolute (int bytePosition) throws IOException {
+    public final void seekToByteAbsolute (long bytePosition) throws IOException {
         assert (bytePosition >= 0);
         if (bytePosition == curPosition) {
             return;
         }
+        if (mappedFile != null || positionalInput != null) {
+            if (bytePosition > rawFileSize) {
+                LOG.warn("too large byte position. adjusted to file size " + bytePosition + "/" + rawFileSize + " at " + this);
+                bytePosition = rawFileSize;
+            }
+            curPosition = bytePosition;
+            if (mappedFile != null) {
+                mappedFile.position((int) curPosition);
+            }
+            return;
+        }
         if (bytePosition < curPosition) {
             reopenStream ();
             assert (curPosition == 0);
@@ -158,7 +410,7 @@ public class LocalRawFileReader implements Closeable {
             LOG.warn("too large byte position. adjusted to file size " + bytePosition + "/" + rawFileSize + " at " + this);
             bytePosition = rawFileSize;
         }
-        reader.skipBytes(bytePosition - curPosition);
+        skipStream(bytePosition - curPosition);
     }
     /**
      * Jump to the desired byte position relative to current position. This method can jump to
@@ -167,12 +419,12 @@ public class LocalRawFileReader implements Closeable {
      * @param bytesToSkip number of bytes to skip. negative values will reopen the file.
      * @throws IOException
      */
-    public final void seekToByteRelative (int bytesToSkip) throws IOException {
+    public final void seekToByteRelative (long bytesToSkip) throws IOException {
         seekToByteAbsolute (curPosition + bytesToSkip);
     }    
 
     /** returns actual size of underlying file. */
-    public int getRawFileSize() {
+    public long getRawFileSize() {
         return rawFileSize;
     }
 
@@ -181,6 +433,6 @@ public class LocalRawFileReader implements Closeable {
      */
     @Override
     public String toString() {
-        return "RawFileReader (" + rawFile.getAbsolutePath() + ", " + rawFileSize + ") curPos=" + curPosition;
+        return "RawFileReader (" + rawFile.getAbsolutePath() + ", " + rawFileSize + (mappedFile != null ? ", mmap" : (positionalInput != null ? ", pread" : "")) + ") curPos=" + curPosition;
     }
 }
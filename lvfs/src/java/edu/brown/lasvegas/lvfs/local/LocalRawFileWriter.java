@@ -25,8 +25,9 @@ public final class LocalRawFileWriter implements Closeable {
     private final VirtualFile file;
     
     /** output stream of the raw file. */
-    private final OutputStream stream;
+    private OutputStream stream;
     private final VirtualFileOutputStream fo;
+    private final int bufferSize;
 
     private final RawValueWriter writer;
     /**
@@ -37,8 +38,8 @@ public final class LocalRawFileWriter implements Closeable {
         return writer;
     }
 
-    private int curPosition = 0;
-    public final int getCurPosition () {
+    private long curPosition = 0;
+    public final long getCurPosition () {
         return curPosition;
     }
     // no setter because only this class should maintain it
@@ -49,6 +50,7 @@ public final class LocalRawFileWriter implements Closeable {
             file.delete();
         }
         fo = file.getOutputStream();
+        this.bufferSize = bufferSize;
         if (bufferSize <= 0) {
             stream = fo;
         } else {
@@ -73,6 +75,22 @@ public final class LocalRawFileWriter implements Closeable {
         }
     }
 
+    /**
+     * Makes this writer hand over filled buffers to the given pool so that disk writes
+     * overlap with the caller filling the next buffer. The buffer size given to the constructor
+     * is used for each of the buffers, so this writer consumes up to (depth + 1) times the memory.
+     * Must be called before writing anything.
+     * @param writeBehind thread pool to write out buffers. null or closed pool to keep synchronous writes.
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        assert (curPosition == 0);
+        if (writeBehind == null || writeBehind.isClosed()) {
+            return;
+        }
+        // the buffered stream is still empty, so we can just discard it
+        stream = writeBehind.wrap(fo, bufferSize);
+    }
+
     /**
      * this version only flushes the underlying stream, does not call sync.
      */
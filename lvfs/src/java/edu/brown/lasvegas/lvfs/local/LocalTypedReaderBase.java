@@ -7,6 +7,7 @@ import edu.brown.lasvegas.lvfs.RawValueReader;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Base implementation of TypedReader. Doesn't do much. 
@@ -15,7 +16,13 @@ public abstract class LocalTypedReaderBase<T extends Comparable<T>, AT> implemen
     private final LocalRawFileReader rawReader;
     private final ValueTraits<T, AT> traits;
     protected LocalTypedReaderBase (VirtualFile file, ValueTraits<T, AT> traits, int streamBufferSize) throws IOException {
-        this.rawReader = new LocalRawFileReader(file, streamBufferSize);
+        this (file, traits, streamBufferSize, false);
+    }
+    /**
+     * @param memoryMapped whether to read the file via memory-mapped buffer. See {@link LocalRawFileReader}.
+     */
+    protected LocalTypedReaderBase (VirtualFile file, ValueTraits<T, AT> traits, int streamBufferSize, boolean memoryMapped) throws IOException {
+        this.rawReader = new LocalRawFileReader(file, streamBufferSize, memoryMapped);
         this.traits = traits;
     }
     @Override
@@ -33,6 +40,69 @@ public abstract class LocalTypedReaderBase<T extends Comparable<T>, AT> implemen
         return rawReader.getCurPosition();
     }
 
+    @Override
+    public int readValuesAtPositions(AT buffer, int off, int[] positions, int positionCount) throws IOException {
+        int nextPosition = 0; // relative position of the current tuple
+        int done = 0;
+        while (done < positionCount) {
+            int start = positions[done];
+            assert (start >= nextPosition);
+            // read consecutive positions at once
+            int end = done + 1;
+            while (end < positionCount && positions[end] == positions[end - 1] + 1) {
+                ++end;
+            }
+            if (start > nextPosition) {
+                skipValues(start - nextPosition);
+            }
+            int len = end - done;
+            int read = readValues(buffer, off + done, len);
+            if (read != len) {
+                throw new IOException ("EOF while reading position " + (start + Math.max(read, 0)) + ". file=" + rawReader);
+            }
+            nextPosition = start + len;
+            done = end;
+        }
+        return done;
+    }
+
+    /**
+     * Reads values into the arena. Only readers of variable-length columns
+     * ({@link edu.brown.lasvegas.lvfs.TypedArenaReader}) override this.
+     * @see edu.brown.lasvegas.lvfs.TypedArenaReader#readValues(StringArena, int)
+     */
+    public int readValues(StringArena dest, int len) throws IOException {
+        throw new UnsupportedOperationException("this reader doesn't read values into an arena: " + getClass().getName());
+    }
+
+    /**
+     * Same as {@link #readValuesAtPositions(Object, int, int[], int)} except it calls {@link #readValues(StringArena, int)}.
+     * @see edu.brown.lasvegas.lvfs.TypedArenaReader#readValuesAtPositions(StringArena, int[], int)
+     */
+    public int readValuesAtPositions(StringArena dest, int[] positions, int positionCount) throws IOException {
+        int nextPosition = 0; // relative position of the current tuple
+        int done = 0;
+        while (done < positionCount) {
+            int start = positions[done];
+            assert (start >= nextPosition);
+            int end = done + 1;
+            while (end < positionCount && positions[end] == positions[end - 1] + 1) {
+                ++end;
+            }
+            if (start > nextPosition) {
+                skipValues(start - nextPosition);
+            }
+            int len = end - done;
+            int read = readValues(dest, len);
+            if (read != len) {
+                throw new IOException ("EOF while reading position " + (start + Math.max(read, 0)) + ". file=" + rawReader);
+            }
+            nextPosition = start + len;
+            done = end;
+        }
+        return done;
+    }
+
     /** Override this to add close-hook. */
     protected void beforeClose() throws IOException {}
 
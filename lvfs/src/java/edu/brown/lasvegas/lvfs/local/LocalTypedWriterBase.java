@@ -2,10 +2,13 @@ package edu.brown.lasvegas.lvfs.local;
 
 import java.io.IOException;
 
+import edu.brown.lasvegas.lvfs.BloomFilter;
 import edu.brown.lasvegas.lvfs.RawValueWriter;
 import edu.brown.lasvegas.lvfs.TypedWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.ZoneMap;
 import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Base implementation of TypedWriter. Doesn't do much. 
@@ -34,10 +37,93 @@ public abstract class LocalTypedWriterBase<T extends Comparable<T>, AT> implemen
         return rawWriter.getRawValueWriter().getCRC32Value();
     }
     
+    /** collects per-zone min/max values. null if zone map is not enabled. */
+    private LocalZoneMapBuilder<T, AT> zoneMapBuilder;
+    /** collects hash values of keys. null if Bloom filter is not enabled. */
+    private LocalBloomFilterBuilder<T, AT> bloomFilterBuilder;
+
+    /**
+     * Override this to return true if the implementation class calls collectValues() for all written values.
+     * Zone map and Bloom filter are supported only when this returns true.
+     */
+    protected boolean isValueCollectionSupported () {
+        return false;
+    }
+    @Override
+    public final void enableZoneMap(int tuplesPerZone) {
+        if (!isValueCollectionSupported()) {
+            throw new UnsupportedOperationException("this file type doesn't support zone map: " + getClass().getName());
+        }
+        assert (curTuple == 0);
+        zoneMapBuilder = new LocalZoneMapBuilder<T, AT>(traits, tuplesPerZone);
+    }
+    @Override
+    public final void enableBloomFilter(int bitsPerKey) {
+        if (!isValueCollectionSupported()) {
+            throw new UnsupportedOperationException("this file type doesn't support Bloom filter: " + getClass().getName());
+        }
+        assert (curTuple == 0);
+        bloomFilterBuilder = new LocalBloomFilterBuilder<T, AT>(traits, bitsPerKey);
+    }
+    /** Implementation classes call this for all written values. Does nothing unless zone map or Bloom filter is enabled. */
+    protected final void collectValues (AT values, int off, int len) {
+        if (zoneMapBuilder != null) {
+            zoneMapBuilder.add(values, off, len);
+        }
+        if (bloomFilterBuilder != null) {
+            bloomFilterBuilder.add(values, off, len);
+        }
+    }
+    /** Arena version of {@link #collectValues(Object, int, int)} for VARCHAR/VARBINARY writers. */
+    protected final void collectValues (StringArena values, int off, int len) {
+        if (zoneMapBuilder != null) {
+            zoneMapBuilder.add(values, off, len);
+        }
+        if (bloomFilterBuilder != null) {
+            bloomFilterBuilder.add(values, off, len);
+        }
+    }
+    /** Single-value version of {@link #collectValues(Object, int, int)}. */
+    protected final void collectValues (T value) {
+        if (zoneMapBuilder != null) {
+            zoneMapBuilder.add(value);
+        }
+        if (bloomFilterBuilder != null) {
+            bloomFilterBuilder.add(value);
+        }
+    }
+    @Override
+    public final void writeZoneMapFile(VirtualFile zoneMapFile) throws IOException {
+        if (zoneMapBuilder == null) {
+            throw new IllegalStateException("zone map is not enabled");
+        }
+        ZoneMap<T> zoneMap = zoneMapBuilder.build();
+        assert (zoneMap.getTotalTuples() == curTuple);
+        zoneMap.writeToFile(zoneMapFile);
+    }
+    @Override
+    public final void writeBloomFilterFile(VirtualFile bloomFilterFile) throws IOException {
+        if (bloomFilterBuilder == null) {
+            throw new IllegalStateException("Bloom filter is not enabled");
+        }
+        BloomFilter<T, AT> bloomFilter = bloomFilterBuilder.build();
+        bloomFilter.writeToFile(bloomFilterFile);
+    }
+
+    /**
+     * Writes out the file in background threads of the given pool.
+     * Must be called before writing any values.
+     * @see LocalRawFileWriter#setWriteBehind(LocalWriteBehind)
+     */
+    public final void setWriteBehind (LocalWriteBehind writeBehind) {
+        assert (curTuple == 0);
+        rawWriter.setWriteBehind(writeBehind);
+    }
+
     public final RawValueWriter getRawValueWriter () {
         return rawWriter.getRawValueWriter();
     }
-    public final int getRawCurPosition() {
+    public final long getRawCurPosition() {
         return rawWriter.getCurPosition();
     }
 
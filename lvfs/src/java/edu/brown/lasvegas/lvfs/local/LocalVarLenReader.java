@@ -5,11 +5,14 @@ import java.io.IOException;
 import org.apache.log4j.Logger;
 
 import edu.brown.lasvegas.lvfs.PositionIndex.Pos;
+import edu.brown.lasvegas.lvfs.RawValueReader;
+import edu.brown.lasvegas.lvfs.TypedArenaReader;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.VarLenValueTraits;
 import edu.brown.lasvegas.traits.VarbinValueTraits;
 import edu.brown.lasvegas.traits.VarcharValueTraits;
 import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * File reader for variable-length entries.
@@ -26,7 +29,7 @@ import edu.brown.lasvegas.util.ByteArray;
  * <p>This file reader cannot jump to arbitrary tuple position by itself.
  * Give a position file ({@link LocalPosFileReader}) to the constructor to speed it up.</p>
  */
-public final class LocalVarLenReader<T extends Comparable<T>> extends LocalTypedReaderBase<T, T[]> {
+public final class LocalVarLenReader<T extends Comparable<T>> extends LocalTypedReaderBase<T, T[]> implements TypedArenaReader {
     private static Logger LOG = Logger.getLogger(LocalVarLenReader.class);
     private final VarLenValueTraits<T> traits;
 
@@ -51,7 +54,16 @@ public final class LocalVarLenReader<T extends Comparable<T>> extends LocalTyped
      * @param posFile optional. position file to speed up locating tuple. (without it, seeking will be terribly slow)
      */
     public LocalVarLenReader(VirtualFile dataFile, VirtualFile posFile, VarLenValueTraits<T> traits, int streamBufferSize) throws IOException {
-        super (dataFile, traits, streamBufferSize);
+        this (dataFile, posFile, traits, streamBufferSize, false);
+    }
+    /**
+     * Constructs a variable-length file reader. The optional position file speeds up seeking
+     * @param dataFile required. the main data file
+     * @param posFile optional. position file to speed up locating tuple. (without it, seeking will be terribly slow)
+     * @param memoryMapped whether to read the file via memory-mapped buffer.
+     */
+    public LocalVarLenReader(VirtualFile dataFile, VirtualFile posFile, VarLenValueTraits<T> traits, int streamBufferSize, boolean memoryMapped) throws IOException {
+        super (dataFile, traits, streamBufferSize, memoryMapped);
         assert (dataFile != null);
         this.traits = traits;
         if (posFile != null) {
@@ -79,6 +91,19 @@ public final class LocalVarLenReader<T extends Comparable<T>> extends LocalTyped
         }
         return count;
     }
+    @Override
+    public int readValues(StringArena dest, int len) throws IOException {
+        RawValueReader reader = getRawValueReader();
+        if (!reader.hasMore()) {
+            return -1;
+        }
+        int count = 0;
+        for (; count < len && reader.hasMore(); ++count) {
+            traits.readValue(reader, dest);
+        }
+        curTuple += count;
+        return count;
+    }
 
     @Override
     public void skipValue () throws IOException {
@@ -108,6 +133,13 @@ public final class LocalVarLenReader<T extends Comparable<T>> extends LocalTyped
         } else {
             // seek using the position file
             Pos pos = posIndex.searchPosition(tuple);
+            if (pos.tuple <= curTuple && curTuple <= tuple) {
+                // the current position is closer. this happens when skipping a few tuples
+                while (tuple > curTuple) {
+                    skipValue();
+                }
+                return;
+            }
             getRawReader().seekToByteAbsolute(pos.bytePosition);
             curTuple = pos.tuple;
             // remaining is sequential search
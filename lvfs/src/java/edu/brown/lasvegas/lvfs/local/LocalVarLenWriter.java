@@ -3,11 +3,13 @@ package edu.brown.lasvegas.lvfs.local;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import edu.brown.lasvegas.lvfs.TypedArenaWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.VarLenValueTraits;
 import edu.brown.lasvegas.traits.VarbinValueTraits;
 import edu.brown.lasvegas.traits.VarcharValueTraits;
 import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * File writer for variable-length values.
@@ -17,7 +19,7 @@ import edu.brown.lasvegas.util.ByteArray;
  * Thus, this writer also collects tuple positions
  * to produce a "position file" as a sparse index.
  */
-public final class LocalVarLenWriter<T extends Comparable<T>> extends LocalTypedWriterBase<T, T[]>  {
+public final class LocalVarLenWriter<T extends Comparable<T>> extends LocalTypedWriterBase<T, T[]> implements TypedArenaWriter {
     /** Constructs an instance of varchar column. */
     public static LocalVarLenWriter<String> getInstanceVarchar(VirtualFile rawFile, int collectPerBytes) throws IOException {
         return new LocalVarLenWriter<String>(rawFile, new VarcharValueTraits(), collectPerBytes);
@@ -30,9 +32,9 @@ public final class LocalVarLenWriter<T extends Comparable<T>> extends LocalTyped
     private final VarLenValueTraits<T> traits;
 
     private final int collectPerBytes;
-    private int prevCollectPosition = -1; // to always collect at the first value
+    private long prevCollectPosition = -1; // to always collect at the first value
     private ArrayList<Integer> collectedTuples = new ArrayList<Integer>();
-    private ArrayList<Integer> collectedPositions = new ArrayList<Integer>();
+    private ArrayList<Long> collectedPositions = new ArrayList<Long>();
     public LocalVarLenWriter(VirtualFile file, VarLenValueTraits<T> traits) throws IOException {
         this (file, traits, 1 << 13);
     }
@@ -48,12 +50,26 @@ public final class LocalVarLenWriter<T extends Comparable<T>> extends LocalTyped
     public void writeValues(T[] values, int off, int len) throws IOException {
         // simply loop.
         // because of length header, there is no faster way to do this.
+        collectValues(values, off, len);
         for (int i = off; i < off + len; ++i) {
-            writeValue(values[i]);
+            writeValueInternal(values[i]);
+        }
+    }
+    @Override
+    public void writeValues(StringArena values, int off, int len) throws IOException {
+        collectValues(values, off, len);
+        for (int i = off; i < off + len; ++i) {
+            collectTuplePosition();
+            traits.writeValue(getRawValueWriter(), values, i);
+            ++curTuple;
         }
     }
     @Override
     public void writeValue (T value) throws IOException {
+        collectValues(value);
+        writeValueInternal(value);
+    }
+    private void writeValueInternal (T value) throws IOException {
         collectTuplePosition();
         traits.writeValue(getRawValueWriter(), value);
         ++curTuple;
@@ -68,6 +84,11 @@ public final class LocalVarLenWriter<T extends Comparable<T>> extends LocalTyped
         }
     }
 
+    @Override
+    protected boolean isValueCollectionSupported() {
+        return true;
+    }
+
     @Override
     public void writePositionFile (VirtualFile posFile) throws IOException {
         LocalPosFile.createPosFile(posFile, collectedTuples, collectedPositions, curTuple, getRawCurPosition());
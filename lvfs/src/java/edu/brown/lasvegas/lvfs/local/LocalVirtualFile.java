@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.VirtualFileInputStream;
@@ -36,6 +39,39 @@ public final class LocalVirtualFile implements VirtualFile {
         return new LocalVirtualFileOutputStream(new FileOutputStream(file));
     }
     @Override
+    public LocalVirtualFilePositionalInput getPositionalInput() throws IOException {
+        return LocalVirtualFilePositionalInput.open(file);
+    }
+    /**
+     * Maps the whole file into memory in read-only mode.
+     * The returned buffer stays valid after this method closes the file handle
+     * and is released when it is garbage-collected.
+     * @return memory-mapped content of the file, positioned at the beginning of the file.
+     */
+    public MappedByteBuffer mapReadOnly() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+    /**
+     * Maps the given byte range of the file into memory in read-only mode.
+     * @param offset byte position to start mapping
+     * @param length number of bytes to map
+     * @return memory-mapped content of the byte range, positioned at its beginning.
+     */
+    public MappedByteBuffer mapReadOnly(long offset, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally {
+            raf.close();
+        }
+    }
+    @Override
     public long length() {
         return file.length();
     }
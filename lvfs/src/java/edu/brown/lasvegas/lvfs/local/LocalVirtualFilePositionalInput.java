@@ -0,0 +1,183 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
+
+/**
+ * An implementation of VirtualFilePositionalInput backed by a FileChannel.
+ * <p>FileChannel#read(ByteBuffer, long) doesn't modify the channel's position
+ * and is safe to call concurrently, so all readers of the same local file
+ * share one channel. The channel is reference-counted and closed
+ * when the last reader releases it.</p>
+ * <p>If the file has been replaced (deleted and re-created) since the shared channel was opened,
+ * the old channel still points to the old content. Thus, a channel is shared only while
+ * the file's length and last-modified time are unchanged.</p>
+ * <p>A FileChannel closes itself when a thread reading from it is interrupted (e.g., by task cancellation).
+ * In that case, the broken channel is evicted and the readers sharing it move to a newly opened channel.
+ * Only the interrupted reader sees the exception.</p>
+ */
+public final class LocalVirtualFilePositionalInput extends VirtualFilePositionalInput {
+    private static Logger LOG = Logger.getLogger(LocalVirtualFilePositionalInput.class);
+
+    /** a shared file handle. */
+    private static final class SharedChannel {
+        private SharedChannel (String key, File file) throws IOException {
+            this.key = key;
+            this.lastModified = file.lastModified();
+            this.raf = new RandomAccessFile(file, "r");
+            this.channel = raf.getChannel();
+        }
+        private final String key;
+        private final long lastModified;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        /** guarded by SHARED_CHANNELS. */
+        private int refCount;
+    }
+    /** currently opened channels, keyed by absolute path. */
+    private static final HashMap<String, SharedChannel> SHARED_CHANNELS = new HashMap<String, SharedChannel>();
+
+    /**
+     * Returns a positional input of the given file, sharing the file handle if it is already opened.
+     */
+    public static LocalVirtualFilePositionalInput open (File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (SHARED_CHANNELS) {
+            SharedChannel shared = SHARED_CHANNELS.get(key);
+            if (shared != null && (!shared.channel.isOpen() || shared.lastModified != file.lastModified() || shared.channel.size() != file.length())) {
+                // the file has been replaced or the channel has been closed by an interrupt.
+                // current readers keep using the old one but it's no longer shared with new readers.
+                SHARED_CHANNELS.remove(key);
+                shared = null;
+            }
+            if (shared == null) {
+                shared = new SharedChannel(key, file);
+                SHARED_CHANNELS.put(key, shared);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("opened a shared channel for " + key);
+                }
+            }
+            ++shared.refCount;
+            return new LocalVirtualFilePositionalInput(shared);
+        }
+    }
+
+    /**
+     * Returns the number of readers currently sharing the handle of the given file. Mainly for testing.
+     */
+    public static int getSharedCount (File file) {
+        synchronized (SHARED_CHANNELS) {
+            SharedChannel shared = SHARED_CHANNELS.get(file.getAbsolutePath());
+            return shared == null ? 0 : shared.refCount;
+        }
+    }
+
+    /** reassigned by reopen() and close() while read-ahead threads might be reading it. */
+    private volatile SharedChannel shared;
+
+    private LocalVirtualFilePositionalInput (SharedChannel shared) {
+        this.shared = shared;
+    }
+
+    @Override
+    public int read(long position, byte[] buf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            SharedChannel current = shared;
+            if (current == null) {
+                throw new IOException ("already closed");
+            }
+            try {
+                return current.channel.read(ByteBuffer.wrap(buf, off, len), position);
+            } catch (ClosedChannelException ex) {
+                reopen(current, ex);
+            }
+        }
+    }
+
+    @Override
+    public long length() throws IOException {
+        while (true) {
+            SharedChannel current = shared;
+            if (current == null) {
+                throw new IOException ("already closed");
+            }
+            try {
+                return current.channel.size();
+            } catch (ClosedChannelException ex) {
+                reopen(current, ex);
+            }
+        }
+    }
+
+    /**
+     * Called when the shared channel turned out to be closed by an interrupt of some reader thread.
+     * Releases the broken channel and switches to a newly opened (or already re-opened) one.
+     * If the interrupted thread is the calling thread, the exception is rethrown after switching
+     * so that this reader stays usable while the interrupt is still delivered to the caller.
+     */
+    private void reopen (SharedChannel broken, ClosedChannelException ex) throws IOException {
+        synchronized (SHARED_CHANNELS) {
+            if (shared == broken) {
+                SharedChannel current = SHARED_CHANNELS.get(broken.key);
+                if (current == null || current == broken || !current.channel.isOpen() || current.lastModified != broken.lastModified) {
+                    current = new SharedChannel(broken.key, new File(broken.key));
+                    if (current.lastModified != broken.lastModified) {
+                        current.raf.close();
+                        throw new IOException ("the file " + broken.key + " has been replaced while reading it", ex);
+                    }
+                    SHARED_CHANNELS.put(broken.key, current);
+                    LOG.info("re-opened the shared channel for " + broken.key + " closed by an interrupt");
+                }
+                ++current.refCount;
+                release(broken);
+                shared = current;
+            }
+        }
+        if (ex instanceof ClosedByInterruptException) {
+            throw ex;
+        }
+    }
+
+    /** decrements the reference count of the channel and closes it if no one uses it. called in synchronized (SHARED_CHANNELS). */
+    private static void release (SharedChannel channel) throws IOException {
+        --channel.refCount;
+        if (channel.refCount == 0) {
+            if (SHARED_CHANNELS.get(channel.key) == channel) {
+                SHARED_CHANNELS.remove(channel.key);
+            }
+            channel.raf.close();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("closed the shared channel for " + channel.key);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (SHARED_CHANNELS) {
+            if (shared == null) {
+                return;
+            }
+            release(shared);
+            shared = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LocalVirtualFilePositionalInput(" + (shared == null ? "closed" : shared.key) + ")";
+    }
+}
@@ -0,0 +1,298 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A small thread pool shared by all local file writers in a node
+ * to write out filled buffers in background.
+ * <p>A writer with write-behind fills a buffer on the producer thread (encoding, compression, CRC)
+ * and hands it over to this pool when it's full, then immediately continues to fill the next buffer.
+ * Each writer has at most {@link #getDepth()} buffers waiting or being written plus the buffer being filled,
+ * so memory consumption per writer is bounded by (depth + 1) * its stream buffer size
+ * ({@link #getBufferSize()} for writers without their own buffering).
+ * When all of them are in flight, the producer waits for the disk.</p>
+ * <p>Buffers of one writer are always written one at a time in order, so the file content
+ * is the same as synchronous writes. flush() waits for all buffers handed over so far,
+ * hence flush(true) still guarantees durability of everything written before.</p>
+ * @see LocalRawFileWriter#setWriteBehind(LocalWriteBehind)
+ */
+public final class LocalWriteBehind implements Closeable {
+    private static Logger LOG = Logger.getLogger(LocalWriteBehind.class);
+
+    private final ExecutorService executor;
+    private final int depth;
+    private final int bufferSize;
+
+    /**
+     * @param threads number of threads to write out buffers
+     * @param depth number of buffers each writer can hand over before it waits
+     * @param bufferSize byte size of each buffer for writers without their own buffering
+     */
+    public LocalWriteBehind (int threads, int depth, int bufferSize) {
+        if (threads <= 0 || depth <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException ("threads, depth and bufferSize must be positive: threads=" + threads
+                + ", depth=" + depth + ", bufferSize=" + bufferSize);
+        }
+        this.depth = depth;
+        this.bufferSize = bufferSize;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger sequence = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lvfs-write-behind-" + sequence.incrementAndGet());
+                thread.setDaemon(true); // never prevents the JVM from exiting
+                return thread;
+            }
+        });
+        LOG.info("started write-behind pool. threads=" + threads + ", depth=" + depth + ", bufferSize=" + bufferSize);
+    }
+
+    /** returns the number of buffers each writer can hand over before it waits. */
+    public int getDepth () {
+        return depth;
+    }
+    /** returns the byte size of each buffer for writers without their own buffering. */
+    public int getBufferSize () {
+        return bufferSize;
+    }
+
+    /**
+     * Wraps the given stream so that the written bytes are written out to the stream in this pool.
+     * The returned stream must be used by one thread.
+     * @param bufferSize byte size of each buffer. 0 to use {@link #getBufferSize()}.
+     */
+    OutputStream wrap (OutputStream out, int bufferSize) {
+        return new WriteBehindOutputStream(out, bufferSize > 0 ? bufferSize : this.bufferSize);
+    }
+
+    /** returns whether this pool has been closed. */
+    public boolean isClosed () {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Stops the thread pool. Writers that are still using this object
+     * fall back to synchronous writes.
+     */
+    @Override
+    public void close () {
+        executor.shutdown();
+    }
+
+    /** a filled buffer waiting to be written out. */
+    private static final class Chunk {
+        Chunk (byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+        final byte[] buffer;
+        final int length;
+    }
+
+    /**
+     * Output stream that hands over filled buffers to the pool.
+     * All fields except the buffer being filled are guarded by lock.
+     */
+    private final class WriteBehindOutputStream extends OutputStream implements Runnable {
+        private final OutputStream out;
+        private final int chunkSize;
+        private final Object lock = new Object();
+
+        /** the buffer being filled by the producer. */
+        private byte[] current;
+        private int currentUsed;
+
+        /** filled buffers not yet written out, including the one being written. */
+        private final LinkedList<Chunk> pending = new LinkedList<Chunk>();
+        /** buffers already written out, reused for next fills. */
+        private final ArrayList<byte[]> free = new ArrayList<byte[]>();
+        /** whether a task to write out pending buffers is submitted or running. */
+        private boolean draining;
+        /** the first exception while writing out. thrown to the producer at next call. */
+        private IOException error;
+        /** set when the pool rejected our task. then we write synchronously. */
+        private boolean synchronous;
+        private boolean closed;
+        /** set when close() gives up the pending buffers. the background task stops after the buffer in flight. */
+        private boolean cancelled;
+
+        WriteBehindOutputStream (OutputStream out, int chunkSize) {
+            this.out = out;
+            this.chunkSize = chunkSize;
+            this.current = new byte[chunkSize];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (currentUsed == current.length) {
+                handOver();
+            }
+            current[currentUsed++] = (byte) b;
+        }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (currentUsed == current.length) {
+                    handOver();
+                }
+                int copied = Math.min(len, current.length - currentUsed);
+                System.arraycopy(b, off, current, currentUsed, copied);
+                currentUsed += copied;
+                off += copied;
+                len -= copied;
+            }
+        }
+
+        /** passes the current buffer to the pool and gets an empty buffer. */
+        private void handOver () throws IOException {
+            if (currentUsed == 0) {
+                return;
+            }
+            if (synchronous) {
+                checkError();
+                out.write(current, 0, currentUsed);
+                currentUsed = 0;
+                return;
+            }
+            boolean startDraining = false;
+            synchronized (lock) {
+                while (pending.size() >= depth && error == null) {
+                    waitLock();
+                }
+                checkError();
+                pending.add(new Chunk(current, currentUsed));
+                current = free.isEmpty() ? new byte[chunkSize] : free.remove(free.size() - 1);
+                currentUsed = 0;
+                if (!draining) {
+                    draining = true;
+                    startDraining = true;
+                }
+            }
+            if (startDraining) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    // the pool has been closed. write out by ourselves from now on.
+                    LOG.warn("write-behind pool is not available. falling back to synchronous writes");
+                    synchronous = true;
+                    run();
+                    checkError();
+                }
+            }
+        }
+
+        /** writes out pending buffers in order. at most one thread runs this for each stream. */
+        @Override
+        public void run () {
+            while (true) {
+                Chunk chunk;
+                synchronized (lock) {
+                    if (pending.isEmpty() || error != null || cancelled) {
+                        draining = false;
+                        lock.notifyAll();
+                        return;
+                    }
+                    chunk = pending.getFirst();
+                }
+                IOException caught = null;
+                try {
+                    out.write(chunk.buffer, 0, chunk.length);
+                } catch (IOException ex) {
+                    caught = ex;
+                } catch (RuntimeException ex) {
+                    caught = new IOException ("unexpected exception while writing out a buffer", ex);
+                }
+                synchronized (lock) {
+                    pending.removeFirst();
+                    free.add(chunk.buffer);
+                    if (caught != null) {
+                        LOG.error("failed to write out a buffer", caught);
+                        error = caught;
+                        pending.clear();
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        private void waitLock () throws IOException {
+            try {
+                lock.wait();
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException("interrupted while waiting for write-behind");
+            }
+        }
+        /** throws the exception in write-behind, if any. must be called in lock or after waiting for it. */
+        private void checkError () throws IOException {
+            if (error != null) {
+                throw new IOException ("failed to write out a buffer in background", error);
+            }
+        }
+
+        /** hands over the current buffer and waits until all buffers are written out. */
+        private void drainAll () throws IOException {
+            handOver();
+            synchronized (lock) {
+                while (draining) {
+                    waitLock();
+                }
+                checkError();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drainAll();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                drainAll();
+            } finally {
+                // if drainAll() failed (e.g., interrupted), a pool thread might be still writing to the stream.
+                // drop the buffers not started yet and wait for the one in flight before closing the stream.
+                cancelAndWait();
+                out.close();
+            }
+        }
+
+        /** stops the background task after the buffer being written and waits for it. */
+        private void cancelAndWait () {
+            boolean interrupted = false;
+            synchronized (lock) {
+                cancelled = true;
+                while (draining) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        // we must not return while the buffer is being written. wait again and restore the flag later
+                        interrupted = true;
+                    }
+                }
+                pending.clear();
+                free.clear();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
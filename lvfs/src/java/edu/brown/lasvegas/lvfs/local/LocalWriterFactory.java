@@ -3,8 +3,10 @@ package edu.brown.lasvegas.lvfs.local;
 import java.io.IOException;
 
 import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.BloomFilter;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.TypedWriter;
+import edu.brown.lasvegas.lvfs.ZoneMap;
 import edu.brown.lasvegas.traits.FixLenValueTraits;
 import edu.brown.lasvegas.traits.ValueTraits;
 import edu.brown.lasvegas.traits.VarLenValueTraits;
@@ -30,11 +32,40 @@ public final class LocalWriterFactory {
      * @param compression the compression to apply while the writes.
      * @param traits the data type traits BEFORE compression.
      * @param streamBufferSize buffering size for underlying output stream
-     * @return writer object
+     * @return writer object. collects a zone map if {@link ColumnFileBundle#getZoneMapFile()} is set,
+     * and a Bloom filter if {@link ColumnFileBundle#getBloomFilterFile()} is set.
      * @throws IOException
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public static TypedWriter<?, ?> getInstance(ColumnFileBundle fileBundle, CompressionType compression, ValueTraits<?,?> traits, int streamBufferSize) throws IOException {
+        TypedWriter<?, ?> writer = instantiate(fileBundle, compression, traits, streamBufferSize);
+        if (fileBundle.getZoneMapFile() != null) {
+            writer.enableZoneMap(ZoneMap.DEFAULT_TUPLES_PER_ZONE);
+        }
+        if (fileBundle.getBloomFilterFile() != null) {
+            writer.enableBloomFilter(BloomFilter.DEFAULT_BITS_PER_KEY);
+        }
+        return writer;
+    }
+    /**
+     * Makes the given writer write out its files in background threads of the given pool.
+     * Must be called before writing any values. Does nothing for writers that don't support write-behind.
+     * @param writer writer object instantiated by this class
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     * @see LocalRawFileWriter#setWriteBehind(LocalWriteBehind)
+     */
+    public static void setWriteBehind(TypedWriter<?, ?> writer, LocalWriteBehind writeBehind) {
+        if (writeBehind == null) {
+            return;
+        }
+        if (writer instanceof LocalTypedWriterBase<?, ?>) {
+            ((LocalTypedWriterBase<?, ?>) writer).setWriteBehind(writeBehind);
+        } else if (writer instanceof LocalDictCompressionWriter<?, ?>) {
+            ((LocalDictCompressionWriter<?, ?>) writer).setWriteBehind(writeBehind);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static TypedWriter<?, ?> instantiate(ColumnFileBundle fileBundle, CompressionType compression, ValueTraits<?,?> traits, int streamBufferSize) throws IOException {
         assert (fileBundle.getDataFile() != null);
         switch (compression) {
         case DICTIONARY:
@@ -45,11 +76,15 @@ public final class LocalWriterFactory {
             return new LocalRLEWriter(fileBundle.getDataFile(), traits);
         case GZIP_BEST_COMPRESSION:
         case SNAPPY:
+        case LZ4:
+        case LZ4_HC:
             if (traits instanceof VarLenValueTraits<?>) {
                 return new LocalBlockCompressionVarLenWriter(fileBundle.getDataFile(), (VarLenValueTraits<?>) traits, compression);
             } else {
                 return new LocalBlockCompressionFixLenWriter(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) traits, compression);
             }
+        case BITPACK:
+            return new LocalBitPackWriter(fileBundle.getDataFile(), (FixLenValueTraits<?, ?>) traits, LocalBitPackWriter.DEFAULT_BLOCK_SIZE, streamBufferSize);
         case NONE:
             if (traits instanceof VarLenValueTraits<?>) {
                 return new LocalVarLenWriter(fileBundle.getDataFile(), (VarLenValueTraits<?>) traits);
@@ -0,0 +1,139 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.util.ArrayList;
+
+import edu.brown.lasvegas.lvfs.ZoneMap;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.VarLenValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Collects per-zone minimum and maximum values while a data file is written.
+ * A new zone starts every tuplesPerZone tuples.
+ * @see LocalZoneMapFile
+ */
+public class LocalZoneMapBuilder<T extends Comparable<T>, AT> {
+    private final ValueTraits<T, AT> traits;
+    private final int tuplesPerZone;
+
+    /** minimum and maximum values of the current zone. */
+    private final AT currentMinMax;
+    /** number of tuples in the current zone. */
+    private int currentZoneTuples = 0;
+    /** number of tuples added so far. */
+    private int totalTuples = 0;
+    /** scratch array to add a single value. */
+    private final AT single;
+
+    private final ArrayList<Integer> zoneStarts = new ArrayList<Integer>();
+    private final ArrayList<T> mins = new ArrayList<T>();
+    private final ArrayList<T> maxs = new ArrayList<T>();
+
+    public LocalZoneMapBuilder (ValueTraits<T, AT> traits) {
+        this (traits, ZoneMap.DEFAULT_TUPLES_PER_ZONE);
+    }
+    public LocalZoneMapBuilder (ValueTraits<T, AT> traits, int tuplesPerZone) {
+        if (tuplesPerZone <= 0) {
+            throw new IllegalArgumentException ("invalid zone size: " + tuplesPerZone);
+        }
+        this.traits = traits;
+        this.tuplesPerZone = tuplesPerZone;
+        this.currentMinMax = traits.createArray(2);
+        this.single = traits.createArray(1);
+    }
+
+    /** Adds a single value. Avoid using this, and instead use {@link #add(Object, int, int)} whenever possible. */
+    public void add (T value) {
+        traits.set(single, 0, value);
+        add (single, 0, 1);
+    }
+
+    /** Adds the given values to the zone map. */
+    public void add (AT values, int off, int len) {
+        int added = 0;
+        while (added < len) {
+            int toAdd = Math.min(len - added, tuplesPerZone - currentZoneTuples);
+            traits.updateMinMax(values, off + added, toAdd, currentMinMax, currentZoneTuples == 0);
+            currentZoneTuples += toAdd;
+            added += toAdd;
+            if (currentZoneTuples == tuplesPerZone) {
+                finishZone ();
+            }
+        }
+    }
+
+    /**
+     * Adds the values [off, off + len) in the arena. Only for VARCHAR/VARBINARY.
+     * VARCHAR values without supplementary characters are compared on their bytes and only the minimum
+     * and maximum of each zone are materialized. Other values are materialized to be compared by the traits.
+     */
+    @SuppressWarnings("unchecked")
+    public void add (StringArena values, int off, int len) {
+        VarLenValueTraits<T> varLenTraits = (VarLenValueTraits<T>) traits;
+        int added = 0;
+        while (added < len) {
+            int toAdd = Math.min(len - added, tuplesPerZone - currentZoneTuples);
+            int from = off + added;
+            T[] candidates;
+            if (traits instanceof VarcharValueTraits && values.maxByte(from, from + toAdd) < 0xF0) {
+                // unsigned byte order of UTF-8 is the same as String#compareTo() without supplementary characters
+                int min = from, max = from;
+                for (int i = from + 1; i < from + toAdd; ++i) {
+                    if (values.compare(i, values, min) < 0) {
+                        min = i;
+                    }
+                    if (values.compare(i, values, max) > 0) {
+                        max = i;
+                    }
+                }
+                candidates = varLenTraits.createArray(2);
+                candidates[0] = materialize(varLenTraits, values, min);
+                candidates[1] = materialize(varLenTraits, values, max);
+            } else {
+                candidates = varLenTraits.createArray(toAdd);
+                for (int i = 0; i < toAdd; ++i) {
+                    candidates[i] = materialize(varLenTraits, values, from + i);
+                }
+            }
+            traits.updateMinMax((AT) candidates, 0, candidates.length, currentMinMax, currentZoneTuples == 0);
+            currentZoneTuples += toAdd;
+            added += toAdd;
+            if (currentZoneTuples == tuplesPerZone) {
+                finishZone ();
+            }
+        }
+    }
+    private byte[] materializeBuffer;
+    private T materialize (VarLenValueTraits<T> varLenTraits, StringArena values, int index) {
+        int length = values.getLength(index);
+        if (materializeBuffer == null || materializeBuffer.length < length) {
+            materializeBuffer = new byte[Math.max(length, 256)];
+        }
+        values.copyTo(index, materializeBuffer, 0);
+        return varLenTraits.fromBytes(materializeBuffer, 0, length);
+    }
+
+    private void finishZone () {
+        assert (currentZoneTuples > 0);
+        zoneStarts.add(totalTuples);
+        mins.add(traits.get(currentMinMax, 0));
+        maxs.add(traits.get(currentMinMax, 1));
+        totalTuples += currentZoneTuples;
+        currentZoneTuples = 0;
+    }
+
+    /**
+     * Finishes the last zone and returns the zone map.
+     */
+    public LocalZoneMapFile<T, AT> build () {
+        if (currentZoneTuples > 0) {
+            finishZone ();
+        }
+        int[] starts = new int[zoneStarts.size()];
+        for (int i = 0; i < starts.length; ++i) {
+            starts[i] = zoneStarts.get(i);
+        }
+        return new LocalZoneMapFile<T, AT>(starts, traits.toArray(mins), traits.toArray(maxs), totalTuples, traits);
+    }
+}
@@ -0,0 +1,175 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.ZoneMap;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.ValueTraitsFactory;
+
+/**
+ * Implementation of zone map file.
+ * <p>The file format is the total number of tuples (4 bytes) followed by
+ * the serialized arrays of zone start tuples, minimum values and maximum values.</p>
+ * @see ZoneMap
+ * @see LocalZoneMapBuilder
+ */
+public class LocalZoneMapFile<T extends Comparable<T>, AT> implements ZoneMap<T> {
+    private static Logger LOG = Logger.getLogger(LocalZoneMapFile.class);
+
+    /**
+     * Reads a zone map file into this object.
+     * This object simply reads the entire file like
+     * {@link LocalPosFile#LocalPosFile(VirtualFile)}.
+     * @param file the zone map file
+     * @param type value type of the data file
+     * @see #writeToFile(VirtualFile)
+     */
+    @SuppressWarnings("unchecked")
+    public LocalZoneMapFile (VirtualFile file, ColumnType type) throws IOException {
+        this (file, (ValueTraits<T, AT>) ValueTraitsFactory.getInstance(type));
+    }
+    /** overload to receive traits instead of column type. */
+    public LocalZoneMapFile (VirtualFile file, ValueTraits<T, AT> traits) throws IOException {
+        this.traits = traits;
+        int fileSize = (int) file.length();
+        if (fileSize > 1 << 24) {
+            throw new IOException ("the zone map file : " + file + " seems too large. " + (fileSize >> 20) + "MB");
+        }
+        byte[] bytes = new byte[fileSize];
+        InputStream in = file.getInputStream();
+        int read = 0;
+        while (read < bytes.length) {
+            int len = in.read(bytes, read, bytes.length - read);
+            if (len < 0) {
+                break;
+            }
+            read += len;
+        }
+        in.close();
+        if (read != bytes.length) {
+            throw new IOException ("unexpected EOF while reading zone map file:" + file);
+        }
+        ByteBuffer byteBuffer  = ByteBuffer.wrap(bytes);
+        this.totalTuples = byteBuffer.getInt();
+        this.zoneStarts = intTraits.deserializeArray(byteBuffer);
+        this.mins = traits.deserializeArray(byteBuffer);
+        this.maxs = traits.deserializeArray(byteBuffer);
+        this.zoneCount = zoneStarts.length;
+        if (zoneCount != traits.length(mins) || zoneCount != traits.length(maxs)) {
+            throw new IOException ("inconsistent array sizes in zone map file:" + file);
+        }
+        assert (byteBuffer.position() == bytes.length);
+    }
+
+    /**
+     * Constructs a zone map with the given values.
+     * Used when writing out a zone map file.
+     * @param zoneStarts the first tuple of each zone
+     * @param mins the minimum value of each zone
+     * @param maxs the maximum value of each zone
+     * @param totalTuples the number of tuples in the data file
+     */
+    public LocalZoneMapFile (int[] zoneStarts, AT mins, AT maxs, int totalTuples, ValueTraits<T, AT> traits) {
+        this.traits = traits;
+        this.zoneStarts = zoneStarts;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.zoneCount = zoneStarts.length;
+        this.totalTuples = totalTuples;
+        assert (zoneCount == traits.length(mins));
+        assert (zoneCount == traits.length(maxs));
+    }
+
+    private final int[] zoneStarts;
+    private final AT mins;
+    private final AT maxs;
+    private final int zoneCount;
+    private final int totalTuples;
+    private final ValueTraits<T, AT> traits;
+    private final IntegerValueTraits intTraits = new IntegerValueTraits();
+
+    @Override
+    public int getZoneCount() {
+        return zoneCount;
+    }
+    @Override
+    public int getZoneStartTuple(int zone) {
+        return zoneStarts[zone];
+    }
+    @Override
+    public T getMin(int zone) {
+        return traits.get(mins, zone);
+    }
+    @Override
+    public T getMax(int zone) {
+        return traits.get(maxs, zone);
+    }
+    @Override
+    public int getTotalTuples() {
+        return totalTuples;
+    }
+
+    @Override
+    public List<TupleRange> searchRange(T lower, T upper) {
+        ArrayList<TupleRange> ranges = new ArrayList<TupleRange>();
+        int rangeStart = -1;
+        for (int zone = 0; zone < zoneCount; ++zone) {
+            boolean qualifies = (lower == null || traits.get(maxs, zone).compareTo(lower) >= 0)
+                && (upper == null || traits.get(mins, zone).compareTo(upper) <= 0);
+            if (qualifies) {
+                if (rangeStart < 0) {
+                    rangeStart = zoneStarts[zone];
+                }
+            } else if (rangeStart >= 0) {
+                ranges.add(new TupleRange(rangeStart, zoneStarts[zone]));
+                rangeStart = -1;
+            }
+        }
+        if (rangeStart >= 0) {
+            ranges.add(new TupleRange(rangeStart, totalTuples));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("zone map search [" + lower + "," + upper + "]: " + ranges.size() + " ranges in " + zoneCount + " zones");
+        }
+        return ranges;
+    }
+
+    @Override
+    public void writeToFile(VirtualFile file) throws IOException {
+        long startMillisec = System.currentTimeMillis();
+        int fileSize = 4 + intTraits.getSerializedByteSize(zoneStarts) + traits.getSerializedByteSize(mins) + traits.getSerializedByteSize(maxs);
+        if (fileSize > 1 << 26) {
+            throw new IOException ("This zone map will be too large: " + (fileSize >> 20) + "MB");
+        }
+        byte[] bytes = new byte[fileSize];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        byteBuffer.putInt(totalTuples);
+        int writtenBytes = 4;
+        writtenBytes += intTraits.serializeArray(zoneStarts, byteBuffer);
+        writtenBytes += traits.serializeArray(mins, byteBuffer);
+        writtenBytes += traits.serializeArray(maxs, byteBuffer);
+        assert (bytes.length == writtenBytes);
+        assert (byteBuffer.position() == writtenBytes);
+        OutputStream out = file.getOutputStream();
+        out.write(bytes);
+        out.flush();
+        out.close();
+        long endMillisec = System.currentTimeMillis();
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Wrote out a zone map file (" + file.getAbsolutePath()
+                            + "):" + zoneCount + " zones, " + file.length()
+                            + " bytes, in " + (endMillisec - startMillisec) + "ms");
+        }
+    }
+}
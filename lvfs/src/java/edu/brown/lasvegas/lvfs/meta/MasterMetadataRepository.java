@@ -32,6 +32,7 @@ import com.sleepycat.persist.EntityIndex;
 import com.sleepycat.persist.PrimaryIndex;
 import com.sleepycat.persist.SecondaryIndex;
 
+import edu.brown.lasvegas.ColumnFileLayout;
 import edu.brown.lasvegas.ColumnStatus;
 import edu.brown.lasvegas.DatabaseStatus;
 import edu.brown.lasvegas.FractureStatus;
@@ -725,6 +726,7 @@ public class MasterMetadataRepository implements LVMetadataProtocol {
             if (sortingColumn != null && column.getColumnId() == sortingColumn.getColumnId()) {
                 foundSortingColumn = true;
             }
+            checkCompressionSupported(column, clonedCompressionSchemes.get(column.getColumnId()));
             if (!clonedCompressionSchemes.containsKey(column.getColumnId())) {
                 if (column.getName().equals(LVColumn.EPOCH_COLUMN_NAME)) {
                     // epoch is always RLE because it's a few-valued column
@@ -745,14 +747,58 @@ public class MasterMetadataRepository implements LVMetadataProtocol {
         return scheme;
     }
 
+    /** throws an exception if the compression type can't be applied to the column. */
+    private static void checkCompressionSupported (LVColumn column, CompressionType compressionType) throws IOException {
+        if (compressionType != null && !compressionType.isSupported(column.getType())) {
+            throw new IOException ("compression type " + compressionType + " can't be applied to column " + column.getName() + " of type " + column.getType());
+        }
+    }
+
     @Override
     public LVReplicaScheme changeColumnCompressionScheme(LVReplicaScheme scheme, LVColumn column, CompressionType compressionType) throws IOException {
         assert (scheme.getSchemeId() > 0);
+        checkCompressionSupported(column, compressionType);
         scheme.getColumnCompressionSchemes().put(column.getColumnId(), compressionType);
         putNoReturnTransactional(bdbTableAccessors.replicaSchemeAccessor.PKX, scheme);
         return scheme;
     }
 
+    @Override
+    public LVReplicaScheme changeColumnGroup(LVReplicaScheme scheme, LVColumn column, Integer columnGroup) throws IOException {
+        assert (scheme.getSchemeId() > 0);
+        if (columnGroup == null) {
+            scheme.getColumnGroups().remove(column.getColumnId());
+        } else {
+            scheme.getColumnGroups().put(column.getColumnId(), columnGroup);
+        }
+        putNoReturnTransactional(bdbTableAccessors.replicaSchemeAccessor.PKX, scheme);
+        return scheme;
+    }
+
+    @Override
+    public LVReplicaScheme changeSharedDictionary(LVReplicaScheme scheme, LVColumn column, boolean shared) throws IOException {
+        assert (scheme.getSchemeId() > 0);
+        if (shared) {
+            scheme.getSharedDictionaryColumnIds().add(column.getColumnId());
+        } else {
+            scheme.getSharedDictionaryColumnIds().remove(column.getColumnId());
+        }
+        putNoReturnTransactional(bdbTableAccessors.replicaSchemeAccessor.PKX, scheme);
+        return scheme;
+    }
+
+    @Override
+    public LVReplicaScheme changeBloomFilter(LVReplicaScheme scheme, LVColumn column, boolean bloomFilter) throws IOException {
+        assert (scheme.getSchemeId() > 0);
+        if (bloomFilter) {
+            scheme.getBloomFilterColumnIds().add(column.getColumnId());
+        } else {
+            scheme.getBloomFilterColumnIds().remove(column.getColumnId());
+        }
+        putNoReturnTransactional(bdbTableAccessors.replicaSchemeAccessor.PKX, scheme);
+        return scheme;
+    }
+
     @Override
     public void dropReplicaScheme(LVReplicaScheme scheme) throws IOException {
         assert (scheme.getSchemeId() > 0);
@@ -946,8 +992,9 @@ public class MasterMetadataRepository implements LVMetadataProtocol {
 
     @Override
     public LVColumnFile createNewColumnFile(int subPartitionId, int columnId,
-                    String localFilePath, int fileSize, int tupleCount,
-                    long checksum, byte dictionaryBytesPerEntry, int distinctValues, int runCount, int uncompressedSizeKB) throws IOException {
+                    String localFilePath, long fileSize, int tupleCount,
+                    long checksum, byte dictionaryBytesPerEntry, int distinctValues, int runCount, int uncompressedSizeKB,
+                    int bloomFilterSize) throws IOException {
         LVReplicaPartition subPartition = getReplicaPartition(subPartitionId);
         LVColumn column = getColumn(columnId);
         LVReplica replica = getReplica(subPartition.getReplicaId());
@@ -963,6 +1010,7 @@ public class MasterMetadataRepository implements LVMetadataProtocol {
         file.setDistinctValues(distinctValues);
         file.setRunCount(runCount);
         file.setUncompressedSizeKB(uncompressedSizeKB);
+        file.setBloomFilterSize(bloomFilterSize);
         // de-normalization attributes
         file.setColumnType(column.getType());
         file.setCompressionType(scheme.getColumnCompressionScheme(column.getColumnId()));
@@ -973,9 +1021,9 @@ public class MasterMetadataRepository implements LVMetadataProtocol {
         return file;
     }
     @Override
-    public int createNewColumnFileIdOnlyReturn(int subPartitionId, int columnId, String localFilePath, int fileSize, int tupleCount, long checksum,
-                    byte dictionaryBytesPerEntry, int distinctValues, int runCount, int uncompressedSizeKB) throws IOException {
-        return createNewColumnFile(subPartitionId, columnId, localFilePath, fileSize, tupleCount, checksum, dictionaryBytesPerEntry, distinctValues, runCount, uncompressedSizeKB).getColumnFileId();
+    public int createNewColumnFileIdOnlyReturn(int subPartitionId, int columnId, String localFilePath, long fileSize, int tupleCount, long checksum,
+                    byte dictionaryBytesPerEntry, int distinctValues, int runCount, int uncompressedSizeKB, int bloomFilterSize) throws IOException {
+        return createNewColumnFile(subPartitionId, columnId, localFilePath, fileSize, tupleCount, checksum, dictionaryBytesPerEntry, distinctValues, runCount, uncompressedSizeKB, bloomFilterSize).getColumnFileId();
     }
 
     @Override
@@ -989,6 +1037,18 @@ public class MasterMetadataRepository implements LVMetadataProtocol {
     public void updateColumnFilePathNoReturn(int columnFileId, String newLocalFilePath) throws IOException {
         updateColumnFilePath (columnFileId, newLocalFilePath);
     }
+    @Override
+    public LVColumnFile updateColumnFilePath(int columnFileId, String newLocalFilePath, ColumnFileLayout layout) throws IOException {
+        final LVColumnFile file = getColumnFile(columnFileId);
+        file.setLocalFilePath(newLocalFilePath);
+        file.setLayout(layout);
+        putNoReturnTransactional(bdbTableAccessors.columnFileAccessor.PKX, file);
+        return file;
+    }
+    @Override
+    public void updateColumnFilePathNoReturn(int columnFileId, String newLocalFilePath, ColumnFileLayout layout) throws IOException {
+        updateColumnFilePath (columnFileId, newLocalFilePath, layout);
+    }
 
     @Override
     public void dropColumnFile(final int columnFileId) throws IOException {
@@ -14,10 +14,10 @@ public interface LVDataProtocol extends Remote {
     /**
      * Returns the byte size of the specified LVFS file in the data node.
      * @param localPath file path in the data node.
-     * @return size in byte (0 if not exists). ok to be a 4 bytes integer because it's a partitioned column file
+     * @return size in byte (0 if not exists). 64-bit as a partitioned column file might exceed 2GB.
      * @throws IOException
      */
-    int getFileLength (String localPath) throws IOException;
+    long getFileLength (String localPath) throws IOException;
     
     /**
      * Returns an input stream over RMI of the specified LVFS file in the data node.
@@ -39,7 +39,7 @@ public interface LVDataProtocol extends Remote {
      * @return 3 integers. file length, exists(1=true/0=false), directory (1=true/0=false). 
      * @throws IOException
      */
-    int[] getCombinedFileStatus (String localPath) throws IOException;
+    long[] getCombinedFileStatus (String localPath) throws IOException;
 
     /**
      * Deletes a file or folder in the data node.
@@ -55,5 +55,5 @@ public interface LVDataProtocol extends Remote {
      */
     void shutdown () throws IOException;
     
-    public static final long versionID = 1L;
+    public static final long versionID = 2L;
 }
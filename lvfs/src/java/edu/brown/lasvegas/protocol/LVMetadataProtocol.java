@@ -12,6 +12,7 @@ import edu.brown.lasvegas.FractureStatus;
 import edu.brown.lasvegas.JobStatus;
 import edu.brown.lasvegas.JobType;
 import edu.brown.lasvegas.LVColumnFile;
+import edu.brown.lasvegas.ColumnFileLayout;
 import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.LVDatabase;
@@ -615,6 +616,44 @@ public interface LVMetadataProtocol extends VersionedProtocol {
      */
     LVReplicaScheme changeColumnCompressionScheme(LVReplicaScheme scheme,
                     LVColumn column, CompressionType compressionType) throws IOException;
+
+    /**
+     * Changes the column group of the specified column.
+     * Columns in the same group are stored together in one PAX file when the partitions are written next time.
+     * Files already written are not affected.
+     * @param scheme the replica scheme to apply the new column group
+     * @param column the column to change column group
+     * @param columnGroup ID of the new column group (unique only in the replica scheme). null to store the column in its own files.
+     * @return modified replica scheme object
+     * @throws IOException
+     */
+    LVReplicaScheme changeColumnGroup(LVReplicaScheme scheme,
+                    LVColumn column, Integer columnGroup) throws IOException;
+
+    /**
+     * Changes whether the partitions of the specified column share one dictionary.
+     * This is effective only for dictionary-compressed columns. The dictionaries
+     * are unified when a fracture is imported next time. Files already written are not affected.
+     * @param scheme the replica scheme to apply the change
+     * @param column the column to change
+     * @param shared whether the partitions of the column share one dictionary
+     * @return modified replica scheme object
+     * @throws IOException
+     */
+    LVReplicaScheme changeSharedDictionary(LVReplicaScheme scheme,
+                    LVColumn column, boolean shared) throws IOException;
+
+    /**
+     * Changes whether the files of the specified column come with a Bloom filter.
+     * Bloom filters are built when the partitions are written next time. Files already written are not affected.
+     * @param scheme the replica scheme to apply the change
+     * @param column the column to change
+     * @param bloomFilter whether the files of the column come with a Bloom filter
+     * @return modified replica scheme object
+     * @throws IOException
+     */
+    LVReplicaScheme changeBloomFilter(LVReplicaScheme scheme,
+                    LVColumn column, boolean bloomFilter) throws IOException;
     
     /**
      * Deletes the replica scheme metadata object and related objects from this repository.
@@ -786,23 +825,26 @@ public interface LVMetadataProtocol extends VersionedProtocol {
      * @param distinctValues The number of distinct values in this file, Set only when the column file is dictionary-compressed or sorted (otherwise 0).
      * @param runCount total count of value runs in this file, Set only when the column file is RLE-compressed (otherwise 0)
      * @param uncompressedSizeKB file size without gzip/snappy compression (in KB).  Set only when the column file is GZIP/SNAPPY-compressed (otherwise 0)
+     * @param bloomFilterSize byte size of the Bloom filter file. 0 if the column file has no Bloom filter
      * @return new column file
      * @throws IOException
      */
     LVColumnFile createNewColumnFile(int subPartitionId, int columnId,
-                    String localFilePath, int fileSize, int tupleCount, long checksum,
+                    String localFilePath, long fileSize, int tupleCount, long checksum,
                     byte dictionaryBytesPerEntry,
                     int distinctValues,
                     int runCount,
-                    int uncompressedSizeKB
+                    int uncompressedSizeKB,
+                    int bloomFilterSize
                     ) throws IOException;
     /** Overload to receive only ID of the created column file. */
     int createNewColumnFileIdOnlyReturn(int subPartitionId, int columnId,
-                    String localFilePath, int fileSize, int tupleCount, long checksum,
+                    String localFilePath, long fileSize, int tupleCount, long checksum,
                     byte dictionaryBytesPerEntry,
                     int distinctValues,
                     int runCount,
-                    int uncompressedSizeKB
+                    int uncompressedSizeKB,
+                    int bloomFilterSize
                     ) throws IOException;
     
     /**
@@ -817,6 +859,20 @@ public interface LVMetadataProtocol extends VersionedProtocol {
     
     /** overload to avoid receiving the modified object. */
     void updateColumnFilePathNoReturn(int columnFileId, String newLocalFilePath) throws IOException;
+
+    /**
+     * Updates localPath and the layout of the given column file.
+     * Called when the files are moved to their permanent place, possibly packed into a segment or PAX file.
+     * @param columnFileId ID of the column file to update
+     * @param newLocalFilePath new localFilePath
+     * @param layout how the files are laid out at the new localFilePath
+     * @return updated object
+     * @throws IOException
+     */
+    LVColumnFile updateColumnFilePath(int columnFileId, String newLocalFilePath, ColumnFileLayout layout) throws IOException;
+
+    /** overload to avoid receiving the modified object. */
+    void updateColumnFilePathNoReturn(int columnFileId, String newLocalFilePath, ColumnFileLayout layout) throws IOException;
     
     /**
      * Deletes the column file metadata object from this repository.
@@ -991,5 +1047,5 @@ public interface LVMetadataProtocol extends VersionedProtocol {
      */
     void compactJobAndTask (boolean compactOnly, boolean taskOnly, boolean finishedOnly, long minimalAgeMilliseconds) throws IOException;
     
-    public static final long versionID = 1L;
+    public static final long versionID = 2L;
 }
@@ -0,0 +1,77 @@
+package edu.brown.lasvegas.qe.operator;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * An aggregate function computed by {@link HashAggregateOperator}.
+ * <p>SUM, MIN and MAX return BIGINT for integral inputs and DOUBLE for FLOAT/DOUBLE inputs.
+ * COUNT returns BIGINT and AVG returns DOUBLE.</p>
+ */
+public final class Aggregate {
+    /** aggregate functions. */
+    public enum Function {
+        COUNT,
+        SUM,
+        MIN,
+        MAX,
+        AVG,
+    }
+
+    private final Function function;
+    private final Expression input;
+
+    /**
+     * @param function the aggregate function
+     * @param input the values to aggregate. null only for COUNT(*).
+     */
+    public Aggregate (Function function, Expression input) {
+        if (function != Function.COUNT && (input == null || !VectorUtil.isNumeric(input.getType()))) {
+            throw new IllegalArgumentException (function + " needs a numeric input: " + input);
+        }
+        this.function = function;
+        this.input = input;
+    }
+
+    /** returns COUNT(*). */
+    public static Aggregate count () {
+        return new Aggregate(Function.COUNT, null);
+    }
+    /** returns SUM(input). */
+    public static Aggregate sum (Expression input) {
+        return new Aggregate(Function.SUM, input);
+    }
+    /** returns MIN(input). */
+    public static Aggregate min (Expression input) {
+        return new Aggregate(Function.MIN, input);
+    }
+    /** returns MAX(input). */
+    public static Aggregate max (Expression input) {
+        return new Aggregate(Function.MAX, input);
+    }
+    /** returns AVG(input). */
+    public static Aggregate avg (Expression input) {
+        return new Aggregate(Function.AVG, input);
+    }
+
+    public Function getFunction () {
+        return function;
+    }
+    public Expression getInput () {
+        return input;
+    }
+
+    /** returns whether the accumulator is double (otherwise long). */
+    boolean isDoubleAccumulator () {
+        return function == Function.AVG || (function != Function.COUNT && VectorUtil.isFloating(input.getType()));
+    }
+
+    /** returns the type of the aggregated value. */
+    public ColumnType getResultType () {
+        return isDoubleAccumulator() ? ColumnType.DOUBLE : ColumnType.BIGINT;
+    }
+
+    @Override
+    public String toString() {
+        return function + "(" + (input == null ? "*" : input.toString()) + ")";
+    }
+}
@@ -0,0 +1,23 @@
+package edu.brown.lasvegas.qe.operator;
+
+/**
+ * Conjunction of predicates. Each predicate evaluates only the tuples
+ * the previous ones selected, so put the most selective one first.
+ */
+public final class AndPredicate extends Predicate {
+    private final Predicate[] predicates;
+
+    public AndPredicate (Predicate... predicates) {
+        assert (predicates.length > 0);
+        this.predicates = predicates;
+    }
+
+    @Override
+    public int select(VectorBatch batch, int[] in, int inCount, int[] out) {
+        int count = predicates[0].select(batch, in, inCount, out);
+        for (int i = 1; i < predicates.length && count > 0; ++i) {
+            count = predicates[i].select(batch, out, count, out);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,136 @@
+package edu.brown.lasvegas.qe.operator;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * Binary arithmetic on numeric expressions.
+ * The result is DOUBLE if either operand is FLOAT or DOUBLE, otherwise BIGINT.
+ * A {@link Constant} operand is applied as a scalar without filling an array.
+ */
+public final class Arithmetic extends Expression {
+    /** arithmetic operators. */
+    public enum Op {
+        ADD,
+        SUBTRACT,
+        MULTIPLY,
+        DIVIDE,
+    }
+
+    private final Op op;
+    private final Expression left, right;
+    private final ColumnType type;
+    private double[] doubleResult, leftDoubles, rightDoubles;
+    private long[] longResult, leftLongs, rightLongs;
+
+    public Arithmetic (Op op, Expression left, Expression right) {
+        if (!VectorUtil.isNumeric(left.getType()) || !VectorUtil.isNumeric(right.getType())) {
+            throw new IllegalArgumentException ("arithmetic on non-numeric values: " + left.getType() + " " + op + " " + right.getType());
+        }
+        this.op = op;
+        this.left = left;
+        this.right = right;
+        this.type = (VectorUtil.isFloating(left.getType()) || VectorUtil.isFloating(right.getType())) ? ColumnType.DOUBLE : ColumnType.BIGINT;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    @Override
+    public Object evaluate(VectorBatch batch) {
+        final int n = batch.size();
+        final int capacity = batch.getBuffer().getBufferSize();
+        if (type == ColumnType.DOUBLE) {
+            doubleResult = VectorUtil.ensure(doubleResult, capacity);
+            if (left instanceof Constant) {
+                rightDoubles = VectorUtil.ensure(rightDoubles, capacity);
+                double[] b = VectorUtil.toDouble(right.evaluate(batch), null, n, rightDoubles);
+                computeScalarLeft(((Constant) left).getDoubleValue(), b, doubleResult, n);
+            } else if (right instanceof Constant) {
+                leftDoubles = VectorUtil.ensure(leftDoubles, capacity);
+                double[] a = VectorUtil.toDouble(left.evaluate(batch), null, n, leftDoubles);
+                computeScalarRight(a, ((Constant) right).getDoubleValue(), doubleResult, n);
+            } else {
+                leftDoubles = VectorUtil.ensure(leftDoubles, capacity);
+                rightDoubles = VectorUtil.ensure(rightDoubles, capacity);
+                double[] a = VectorUtil.toDouble(left.evaluate(batch), null, n, leftDoubles);
+                double[] b = VectorUtil.toDouble(right.evaluate(batch), null, n, rightDoubles);
+                compute(a, b, doubleResult, n);
+            }
+            return doubleResult;
+        } else {
+            longResult = VectorUtil.ensure(longResult, capacity);
+            if (left instanceof Constant) {
+                rightLongs = VectorUtil.ensure(rightLongs, capacity);
+                long[] b = VectorUtil.toLong(right.evaluate(batch), null, n, rightLongs);
+                computeScalarLeft(((Constant) left).getLongValue(), b, longResult, n);
+            } else if (right instanceof Constant) {
+                leftLongs = VectorUtil.ensure(leftLongs, capacity);
+                long[] a = VectorUtil.toLong(left.evaluate(batch), null, n, leftLongs);
+                computeScalarRight(a, ((Constant) right).getLongValue(), longResult, n);
+            } else {
+                leftLongs = VectorUtil.ensure(leftLongs, capacity);
+                rightLongs = VectorUtil.ensure(rightLongs, capacity);
+                long[] a = VectorUtil.toLong(left.evaluate(batch), null, n, leftLongs);
+                long[] b = VectorUtil.toLong(right.evaluate(batch), null, n, rightLongs);
+                compute(a, b, longResult, n);
+            }
+            return longResult;
+        }
+    }
+
+    private void compute (double[] a, double[] b, double[] out, int n) {
+        switch (op) {
+        case ADD: for (int i = 0; i < n; ++i) out[i] = a[i] + b[i]; break;
+        case SUBTRACT: for (int i = 0; i < n; ++i) out[i] = a[i] - b[i]; break;
+        case MULTIPLY: for (int i = 0; i < n; ++i) out[i] = a[i] * b[i]; break;
+        case DIVIDE: for (int i = 0; i < n; ++i) out[i] = a[i] / b[i]; break;
+        }
+    }
+    private void computeScalarLeft (double a, double[] b, double[] out, int n) {
+        switch (op) {
+        case ADD: for (int i = 0; i < n; ++i) out[i] = a + b[i]; break;
+        case SUBTRACT: for (int i = 0; i < n; ++i) out[i] = a - b[i]; break;
+        case MULTIPLY: for (int i = 0; i < n; ++i) out[i] = a * b[i]; break;
+        case DIVIDE: for (int i = 0; i < n; ++i) out[i] = a / b[i]; break;
+        }
+    }
+    private void computeScalarRight (double[] a, double b, double[] out, int n) {
+        switch (op) {
+        case ADD: for (int i = 0; i < n; ++i) out[i] = a[i] + b; break;
+        case SUBTRACT: for (int i = 0; i < n; ++i) out[i] = a[i] - b; break;
+        case MULTIPLY: for (int i = 0; i < n; ++i) out[i] = a[i] * b; break;
+        case DIVIDE: for (int i = 0; i < n; ++i) out[i] = a[i] / b; break;
+        }
+    }
+    private void compute (long[] a, long[] b, long[] out, int n) {
+        switch (op) {
+        case ADD: for (int i = 0; i < n; ++i) out[i] = a[i] + b[i]; break;
+        case SUBTRACT: for (int i = 0; i < n; ++i) out[i] = a[i] - b[i]; break;
+        case MULTIPLY: for (int i = 0; i < n; ++i) out[i] = a[i] * b[i]; break;
+        case DIVIDE: for (int i = 0; i < n; ++i) out[i] = a[i] / b[i]; break;
+        }
+    }
+    private void computeScalarLeft (long a, long[] b, long[] out, int n) {
+        switch (op) {
+        case ADD: for (int i = 0; i < n; ++i) out[i] = a + b[i]; break;
+        case SUBTRACT: for (int i = 0; i < n; ++i) out[i] = a - b[i]; break;
+        case MULTIPLY: for (int i = 0; i < n; ++i) out[i] = a * b[i]; break;
+        case DIVIDE: for (int i = 0; i < n; ++i) out[i] = a / b[i]; break;
+        }
+    }
+    private void computeScalarRight (long[] a, long b, long[] out, int n) {
+        switch (op) {
+        case ADD: for (int i = 0; i < n; ++i) out[i] = a[i] + b; break;
+        case SUBTRACT: for (int i = 0; i < n; ++i) out[i] = a[i] - b; break;
+        case MULTIPLY: for (int i = 0; i < n; ++i) out[i] = a[i] * b; break;
+        case DIVIDE: for (int i = 0; i < n; ++i) out[i] = a[i] / b; break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + " " + op + " " + right + ")";
+    }
+}
@@ -0,0 +1,65 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Leaf operator that outputs column arrays already in memory, such as the columns merged by
+ * {@link edu.brown.lasvegas.lvfs.data.RepartitionSummary#mergeRepartitionedFilesOnMemory},
+ * so that they can be processed by the same operators as the columns scanned from local files.
+ */
+public final class ColumnArrayOperator implements Operator {
+    private final ColumnType[] types;
+    private final Object[] columns;
+    private final int count;
+    private final int batchSize;
+    private int position;
+    private VectorBatch batch;
+
+    /**
+     * @param types type of each column
+     * @param columns values of each column, arrays of the type as in {@link TupleBuffer}
+     * @param count number of tuples in the arrays
+     * @param batchSize number of tuples in each output batch
+     */
+    public ColumnArrayOperator (ColumnType[] types, Object[] columns, int count, int batchSize) {
+        assert (types.length == columns.length);
+        this.types = types;
+        this.columns = columns;
+        this.count = count;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    @Override
+    public void open() throws IOException {
+        position = 0;
+        batch = new VectorBatch(new TupleBuffer(types, batchSize));
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        if (position >= count) {
+            return null;
+        }
+        int n = Math.min(batchSize, count - position);
+        batch.reset();
+        for (int i = 0; i < columns.length; ++i) {
+            System.arraycopy(columns[i], position, batch.getColumn(i), 0, n);
+        }
+        batch.getBuffer().setCount(n);
+        position += n;
+        return batch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        batch = null;
+    }
+}
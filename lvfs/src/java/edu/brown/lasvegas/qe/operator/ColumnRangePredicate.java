@@ -0,0 +1,146 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.util.Date;
+
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * lower &lt;= column &lt;= upper on one column, evaluated with a loop specialized for the column type.
+ * <p>Bounds are numbers (or {@link Date}s for date/time columns) for numeric columns
+ * and Strings for VARCHAR columns. Either bound can be null to leave that side open.</p>
+ * <p>VARCHAR/VARBINARY columns in a {@link StringArena} are compared on their bytes
+ * without materializing Strings. Byte order of UTF-8 is code point order, which differs from
+ * {@link String#compareTo(String)} only for supplementary characters.</p>
+ */
+public final class ColumnRangePredicate extends Predicate {
+    private final int columnIndex;
+    private final Comparable<?> lower, upper;
+    private final long lowerLong, upperLong;
+    private final double lowerDouble, upperDouble;
+    private final float lowerFloat, upperFloat;
+    private final byte[] lowerBytes, upperBytes;
+
+    /**
+     * @param columnIndex the column to evaluate
+     * @param lower the lower bound (inclusive). null to specify no lower bound.
+     * @param upper the upper bound (inclusive). null to specify no upper bound.
+     */
+    public ColumnRangePredicate (int columnIndex, Comparable<?> lower, Comparable<?> upper) {
+        this.columnIndex = columnIndex;
+        this.lower = lower;
+        this.upper = upper;
+        this.lowerLong = lower == null || lower instanceof String ? Long.MIN_VALUE : toNumber(lower).longValue();
+        this.upperLong = upper == null || upper instanceof String ? Long.MAX_VALUE : toNumber(upper).longValue();
+        this.lowerDouble = lower == null || lower instanceof String ? Double.NEGATIVE_INFINITY : toNumber(lower).doubleValue();
+        this.upperDouble = upper == null || upper instanceof String ? Double.POSITIVE_INFINITY : toNumber(upper).doubleValue();
+        this.lowerFloat = (float) lowerDouble;
+        this.upperFloat = (float) upperDouble;
+        this.lowerBytes = toBytes(lower);
+        this.upperBytes = toBytes(upper);
+    }
+    private static byte[] toBytes (Comparable<?> value) {
+        if (value instanceof String) {
+            try {
+                return ((String) value).getBytes("UTF-8");
+            } catch (java.io.UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else if (value instanceof ByteArray) {
+            return ((ByteArray) value).getBytes();
+        }
+        return null;
+    }
+    private static Number toNumber (Comparable<?> value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return (Number) value;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public int select(VectorBatch batch, int[] in, int inCount, int[] out) {
+        Object column = batch.getColumn(columnIndex);
+        int count = 0;
+        if (column instanceof long[]) {
+            long[] values = (long[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                long value = values[pos];
+                if (value >= lowerLong && value <= upperLong) {
+                    out[count++] = pos;
+                }
+            }
+        } else if (column instanceof int[]) {
+            int[] values = (int[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                int value = values[pos];
+                if (value >= lowerLong && value <= upperLong) {
+                    out[count++] = pos;
+                }
+            }
+        } else if (column instanceof double[]) {
+            double[] values = (double[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                double value = values[pos];
+                if (value >= lowerDouble && value <= upperDouble) {
+                    out[count++] = pos;
+                }
+            }
+        } else if (column instanceof float[]) {
+            float[] values = (float[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                float value = values[pos];
+                if (value >= lowerFloat && value <= upperFloat) {
+                    out[count++] = pos;
+                }
+            }
+        } else if (column instanceof short[]) {
+            short[] values = (short[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                short value = values[pos];
+                if (value >= lowerLong && value <= upperLong) {
+                    out[count++] = pos;
+                }
+            }
+        } else if (column instanceof byte[]) {
+            byte[] values = (byte[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                byte value = values[pos];
+                if (value >= lowerLong && value <= upperLong) {
+                    out[count++] = pos;
+                }
+            }
+        } else if (column instanceof StringArena) {
+            StringArena values = (StringArena) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                if ((lowerBytes == null || values.compare(pos, lowerBytes, 0, lowerBytes.length) >= 0)
+                    && (upperBytes == null || values.compare(pos, upperBytes, 0, upperBytes.length) <= 0)) {
+                    out[count++] = pos;
+                }
+            }
+        } else {
+            Comparable[] values = (Comparable[]) column;
+            for (int i = 0; i < inCount; ++i) {
+                int pos = in == null ? i : in[i];
+                Comparable value = values[pos];
+                if ((lower == null || value.compareTo(lower) >= 0) && (upper == null || value.compareTo(upper) <= 0)) {
+                    out[count++] = pos;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return (lower == null ? "" : lower + " <= ") + "$" + columnIndex + (upper == null ? "" : " <= " + upper);
+    }
+}
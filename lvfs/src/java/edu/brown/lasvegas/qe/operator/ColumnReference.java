@@ -0,0 +1,50 @@
+package edu.brown.lasvegas.qe.operator;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * An expression that returns the values of a column.
+ */
+public final class ColumnReference extends Expression {
+    private final int columnIndex;
+    private final ColumnType type;
+    /** compacted values when the batch has a selection vector. */
+    private Object scratch;
+    private int scratchSize;
+
+    public ColumnReference (int columnIndex, ColumnType type) {
+        this.columnIndex = columnIndex;
+        this.type = type;
+    }
+
+    /** returns the index of the column in the input batches. */
+    public int getColumnIndex () {
+        return columnIndex;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    @Override
+    public Object evaluate(VectorBatch batch) {
+        Object column = batch.getColumn(columnIndex);
+        int[] selection = batch.getSelection();
+        if (selection == null) {
+            return column;
+        }
+        int size = batch.size();
+        if (scratch == null || scratchSize < size) {
+            scratchSize = batch.getBuffer().getBufferSize();
+            scratch = VectorUtil.createArray(type, scratchSize);
+        }
+        VectorUtil.gather(column, selection, size, scratch, 0);
+        return scratch;
+    }
+
+    @Override
+    public String toString() {
+        return "$" + columnIndex;
+    }
+}
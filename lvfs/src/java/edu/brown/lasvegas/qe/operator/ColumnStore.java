@@ -0,0 +1,100 @@
+package edu.brown.lasvegas.qe.operator;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Growable in-memory columns to materialize the input of blocking operators
+ * (the build side of a join, the input of a sort).
+ * Each column is a typed array as in {@link TupleBuffer}.
+ */
+final class ColumnStore {
+    private final ColumnType[] types;
+    private Object[] columns;
+    private int count;
+    private int capacity;
+
+    ColumnStore (ColumnType[] types, int initialCapacity) {
+        this.types = types;
+        this.capacity = Math.max(initialCapacity, 16);
+        this.columns = new Object[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            columns[i] = VectorUtil.createArray(types[i], capacity);
+        }
+    }
+
+    int size () {
+        return count;
+    }
+    ColumnType[] getColumnTypes () {
+        return types;
+    }
+    /** returns the values of the column. valid only for [0, size()) and until the next append. */
+    Object getColumn (int col) {
+        return columns[col];
+    }
+
+    /** returns the estimated bytes of the columns, assuming 48 bytes per VARCHAR/VARBINARY value. */
+    long getEstimatedBytes () {
+        long bytesPerTuple = 0;
+        for (Object column : columns) {
+            if (column instanceof long[] || column instanceof double[]) {
+                bytesPerTuple += 8;
+            } else if (column instanceof int[] || column instanceof float[]) {
+                bytesPerTuple += 4;
+            } else if (column instanceof short[]) {
+                bytesPerTuple += 2;
+            } else if (column instanceof byte[]) {
+                bytesPerTuple += 1;
+            } else {
+                bytesPerTuple += 48;
+            }
+        }
+        return bytesPerTuple * capacity;
+    }
+
+    /** appends the live tuples of the batch. */
+    void append (VectorBatch batch) {
+        int n = batch.size();
+        if (count + n > capacity) {
+            int newCapacity = capacity;
+            while (count + n > newCapacity) {
+                newCapacity *= 2;
+            }
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i] = VectorUtil.growArray(columns[i], newCapacity);
+            }
+            capacity = newCapacity;
+        }
+        int[] selection = batch.getSelection();
+        for (int i = 0; i < columns.length; ++i) {
+            VectorUtil.gather(batch.getColumn(i), selection, n, columns[i], count);
+        }
+        count += n;
+    }
+
+    /** keeps only the given tuples, in the given order. */
+    void retain (int[] rows, int rowCount) {
+        for (int i = 0; i < columns.length; ++i) {
+            Object newColumn = VectorUtil.createArray(types[i], Math.max(rowCount, 16));
+            VectorUtil.gather(columns[i], rows, rowCount, newColumn, 0);
+            columns[i] = newColumn;
+        }
+        count = rowCount;
+        capacity = Math.max(rowCount, 16);
+    }
+
+    /** copies the given tuples to the columns [destCol, destCol + column count) of the buffer, from position 0. */
+    void copyRows (int[] rows, int rowCount, TupleBuffer dest, int destCol) {
+        for (int i = 0; i < columns.length; ++i) {
+            VectorUtil.gather(columns[i], rows, rowCount, dest.getColumnBuffer(destCol + i), 0);
+        }
+    }
+
+    /** copies tuples [from, from + rowCount) to the columns [destCol, destCol + column count) of the buffer, from position 0. */
+    void copyRange (int from, int rowCount, TupleBuffer dest, int destCol) {
+        for (int i = 0; i < columns.length; ++i) {
+            System.arraycopy(columns[i], from, dest.getColumnBuffer(destCol + i), 0, rowCount);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.util.Arrays;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * A DOUBLE or BIGINT constant.
+ * {@link Arithmetic} treats a constant operand as a scalar, so {@link #evaluate(VectorBatch)}
+ * is called only when a constant is used alone.
+ */
+public final class Constant extends Expression {
+    private final ColumnType type;
+    private final double doubleValue;
+    private final long longValue;
+    private Object filled;
+    private int filledSize;
+
+    public Constant (double value) {
+        this.type = ColumnType.DOUBLE;
+        this.doubleValue = value;
+        this.longValue = (long) value;
+    }
+    public Constant (long value) {
+        this.type = ColumnType.BIGINT;
+        this.doubleValue = value;
+        this.longValue = value;
+    }
+
+    /** returns the value as double. */
+    public double getDoubleValue () {
+        return doubleValue;
+    }
+    /** returns the value as long. */
+    public long getLongValue () {
+        return longValue;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    @Override
+    public Object evaluate(VectorBatch batch) {
+        int size = batch.size();
+        if (filled == null || filledSize < size) {
+            filledSize = batch.getBuffer().getBufferSize();
+            if (type == ColumnType.DOUBLE) {
+                double[] array = new double[filledSize];
+                Arrays.fill(array, doubleValue);
+                filled = array;
+            } else {
+                long[] array = new long[filledSize];
+                Arrays.fill(array, longValue);
+                filled = array;
+            }
+        }
+        return filled;
+    }
+
+    @Override
+    public String toString() {
+        return type == ColumnType.DOUBLE ? String.valueOf(doubleValue) : String.valueOf(longValue);
+    }
+}
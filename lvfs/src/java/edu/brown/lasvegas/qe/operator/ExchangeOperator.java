@@ -0,0 +1,192 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Gathers the outputs of several operators (e.g. one pipeline per partition) run in parallel.
+ * <p>Each child runs in a thread of the given executor and copies its batches (compacted)
+ * into buffers from a small pool, which are handed to the consumer through a blocking queue.
+ * The pool bounds the memory and makes fast children wait for the consumer.
+ * The output order among children is arbitrary.</p>
+ * <p>If the executor is null, the children are simply run one after another in the calling thread
+ * and their batches are passed up as they are.</p>
+ */
+public final class ExchangeOperator implements Operator {
+    private static Logger LOG = Logger.getLogger(ExchangeOperator.class);
+
+    /** marks the end of a child's output in the queue. */
+    private static final VectorBatch END_OF_CHILD = new VectorBatch(null);
+
+    private final Operator[] children;
+    private final ExecutorService executor;
+    private final int buffersPerChild;
+    private final ColumnType[] types;
+
+    private BlockingQueue<VectorBatch> freeBatches;
+    private BlockingQueue<VectorBatch> fullBatches;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private int finishedChildren;
+    private VectorBatch current;
+    /** the child being run in the calling thread when there is no executor. */
+    private int sequentialChild;
+
+    /**
+     * @param children operators producing the same columns
+     * @param executor the threads to run the children. null to run them sequentially in the calling thread.
+     * @param buffersPerChild number of batches each child can produce ahead of the consumer
+     */
+    public ExchangeOperator (Operator[] children, ExecutorService executor, int buffersPerChild) {
+        assert (children.length > 0);
+        this.children = children;
+        this.executor = executor;
+        this.buffersPerChild = Math.max(buffersPerChild, 1);
+        this.types = children[0].getColumnTypes();
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    @Override
+    public void open() throws IOException {
+        cancelled = false;
+        error = null;
+        finishedChildren = 0;
+        current = null;
+        if (executor == null) {
+            sequentialChild = 0;
+            children[0].open();
+            return;
+        }
+        int poolSize = children.length * buffersPerChild;
+        freeBatches = new ArrayBlockingQueue<VectorBatch>(poolSize);
+        // +children for the END_OF_CHILD markers
+        fullBatches = new ArrayBlockingQueue<VectorBatch>(poolSize + children.length);
+        for (int i = 0; i < poolSize; ++i) {
+            freeBatches.add(new VectorBatch(new TupleBuffer(types, ScanOperator.DEFAULT_BATCH_SIZE)));
+        }
+        for (final Operator child : children) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runChild(child);
+                }
+            });
+        }
+    }
+
+    private void runChild (Operator child) {
+        try {
+            child.open();
+            try {
+                for (VectorBatch batch = child.next(); batch != null && !cancelled; batch = child.next()) {
+                    VectorBatch copy = freeBatches.take();
+                    int n = batch.size();
+                    if (copy.getBuffer().getBufferSize() < n) {
+                        copy = new VectorBatch(new TupleBuffer(types, n));
+                    }
+                    copy.reset();
+                    for (int i = 0; i < types.length; ++i) {
+                        VectorUtil.gather(batch.getColumn(i), batch.getSelection(), n, copy.getBuffer().getColumnBuffer(i), 0);
+                    }
+                    copy.getBuffer().setCount(n);
+                    fullBatches.put(copy);
+                }
+            } finally {
+                child.close();
+            }
+        } catch (Throwable ex) {
+            LOG.error("error in exchange child " + child, ex);
+            error = ex;
+        } finally {
+            try {
+                fullBatches.put(END_OF_CHILD);
+            } catch (InterruptedException ex) {
+                LOG.warn("interrupted while finishing exchange child", ex);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        if (executor == null) {
+            return nextSequential();
+        }
+        if (current != null) {
+            freeBatches.add(current);
+            current = null;
+        }
+        try {
+            while (finishedChildren < children.length) {
+                VectorBatch batch = fullBatches.take();
+                if (batch == END_OF_CHILD) {
+                    ++finishedChildren;
+                    if (error != null) {
+                        throw new IOException ("an exchange child failed: " + error.getMessage(), error);
+                    }
+                    continue;
+                }
+                current = batch;
+                return batch;
+            }
+            return null;
+        } catch (InterruptedException ex) {
+            throw new IOException ("interrupted while waiting for exchange children", ex);
+        }
+    }
+
+    private VectorBatch nextSequential () throws IOException {
+        while (sequentialChild < children.length) {
+            VectorBatch batch = children[sequentialChild].next();
+            if (batch != null) {
+                return batch;
+            }
+            children[sequentialChild].close();
+            ++sequentialChild;
+            if (sequentialChild < children.length) {
+                children[sequentialChild].open();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor == null) {
+            if (sequentialChild < children.length) {
+                children[sequentialChild].close();
+                sequentialChild = children.length;
+            }
+            return;
+        }
+        cancelled = true;
+        // keep returning buffers until every child has stopped, so that none stays blocked
+        try {
+            if (current != null) {
+                freeBatches.add(current);
+                current = null;
+            }
+            while (finishedChildren < children.length) {
+                VectorBatch batch = fullBatches.take();
+                if (batch == END_OF_CHILD) {
+                    ++finishedChildren;
+                } else {
+                    freeBatches.add(batch);
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException ("interrupted while closing exchange children", ex);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package edu.brown.lasvegas.qe.operator;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * A scalar expression evaluated over all live tuples of a batch at once.
+ * <p>The result of {@link #evaluate(VectorBatch)} is compacted: its i-th element is the value
+ * for the i-th live tuple of the batch, not the i-th position of the buffer.
+ * Without a selection vector, the two are the same, so a column reference
+ * can return the column array as it is.</p>
+ * <p>An expression keeps scratch arrays for its results, so an instance must be used by one thread.</p>
+ */
+public abstract class Expression {
+    /** returns the type of values this expression returns. */
+    public abstract ColumnType getType ();
+
+    /**
+     * Evaluates this expression for the live tuples of the batch.
+     * @return array of the type for {@link #getType()} (same as TupleBuffer) whose first
+     * batch.size() elements are the results. Valid until the next call.
+     */
+    public abstract Object evaluate (VectorBatch batch);
+
+    /** returns an expression to reference the given column. */
+    public static ColumnReference column (int columnIndex, ColumnType type) {
+        return new ColumnReference(columnIndex, type);
+    }
+    /** returns a DOUBLE constant. */
+    public static Constant constant (double value) {
+        return new Constant(value);
+    }
+    /** returns a BIGINT constant. */
+    public static Constant constant (long value) {
+        return new Constant(value);
+    }
+    /** returns left + right. */
+    public static Arithmetic add (Expression left, Expression right) {
+        return new Arithmetic(Arithmetic.Op.ADD, left, right);
+    }
+    /** returns left - right. */
+    public static Arithmetic subtract (Expression left, Expression right) {
+        return new Arithmetic(Arithmetic.Op.SUBTRACT, left, right);
+    }
+    /** returns left * right. */
+    public static Arithmetic multiply (Expression left, Expression right) {
+        return new Arithmetic(Arithmetic.Op.MULTIPLY, left, right);
+    }
+    /** returns left / right. */
+    public static Arithmetic divide (Expression left, Expression right) {
+        return new Arithmetic(Arithmetic.Op.DIVIDE, left, right);
+    }
+}
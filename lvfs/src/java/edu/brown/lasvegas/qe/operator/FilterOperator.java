@@ -0,0 +1,51 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * Filters tuples by a {@link Predicate}.
+ * The values are not moved. The batch from the child is passed up with a selection vector.
+ */
+public final class FilterOperator implements Operator {
+    private final Operator child;
+    private final Predicate predicate;
+    private int[] selection;
+
+    public FilterOperator (Operator child, Predicate predicate) {
+        this.child = child;
+        this.predicate = predicate;
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return child.getColumnTypes();
+    }
+
+    @Override
+    public void open() throws IOException {
+        child.open();
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        while (true) {
+            VectorBatch batch = child.next();
+            if (batch == null) {
+                return null;
+            }
+            selection = VectorUtil.ensure(selection, batch.getBuffer().getBufferSize());
+            int selected = predicate.select(batch, batch.getSelection(), batch.size(), selection);
+            if (selected > 0) {
+                batch.setSelection(selection, selected);
+                return batch;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        child.close();
+    }
+}
@@ -0,0 +1,845 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+import edu.brown.lasvegas.util.ByteArray;
+
+/**
+ * GROUP BY with aggregate functions on an in-memory hash table.
+ * <p>For each batch, the group keys are hashed column by column, each live tuple is mapped to
+ * its group ID by probing an open-addressing table, and then each aggregate is updated
+ * in one loop over the group IDs. Numeric keys are stored as long (FLOAT/DOUBLE as their bits)
+ * and accumulators are long[] or double[] indexed by group ID, so nothing is boxed per tuple.</p>
+ * <p>The output columns are the group columns (in their types) followed by the aggregates.
+ * All input is consumed at the first call of {@link #next()}. Without group columns,
+ * this returns exactly one tuple even for an empty input.</p>
+ * <p>If all group columns are BOOLEAN/TINYINT/SMALLINT, such as byte/short dictionary codes
+ * of a dictionary-compressed column, the group ID is looked up from a direct-mapped array
+ * of the codes without hashing. At most 2^16 groups are possible then.</p>
+ * <h3>Spilling</h3>
+ * <p>When a memory budget and a spill folder are given, the (estimated) size of the hash table
+ * is checked after each batch. Once it exceeds the budget, the groups are partitioned by
+ * the high bits of their hashes and their partial states (keys, accumulators and AVG counts)
+ * are appended to one temporary file per partition, and the table starts over empty.
+ * After the input ends, the partitions are loaded one by one and their partial states
+ * are merged into the table. A partition still exceeding the budget is spilled again with
+ * the next bits of the hashes, so the groups are emitted partition by partition in no particular order.</p>
+ */
+public final class HashAggregateOperator implements Operator {
+    private static Logger LOG = Logger.getLogger(HashAggregateOperator.class);
+
+    private static final int INITIAL_GROUPS = 1 << 10;
+    /** hash bits used to partition the groups in each spill. */
+    private static final int FANOUT_BITS = 4;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    /** spilled partitions at this level are not spilled again because there are no more hash bits to partition with. */
+    private static final int MAX_SPILL_LEVEL = 32 / FANOUT_BITS - 1;
+    /** combined code space above which the direct-mapped group lookup is not used. */
+    private static final int MAX_DIRECT_GROUPS = 1 << 16;
+
+    /** partial states of groups spilled to a file. */
+    private static final class SpilledPartition {
+        SpilledPartition (SpillFile file, int level) {
+            this.file = file;
+            this.level = level;
+        }
+        final SpillFile file;
+        /** the hash bits already used to partition the groups, in FANOUT_BITS. */
+        final int level;
+    }
+
+    private final Operator child;
+    private final int[] groupColumns;
+    private final Aggregate[] aggregates;
+    private final int batchSize;
+    private final ColumnType[] keyTypes;
+    private final ColumnType[] types;
+    /** types of the partial states written to spill files. */
+    private final ColumnType[] partialTypes;
+    private final long memoryBudget;
+    private final VirtualFile spillFolder;
+
+    private int groupCount;
+    private int groupCapacity;
+    private int[] groupHashes;
+    /** key values of each group. [key column][group]. null for VARCHAR/VARBINARY keys. */
+    private long[][] keyLongs;
+    /** key values of each group. [key column][group]. null for numeric keys. */
+    private Object[][] keyObjects;
+    /** open-addressing table of group ID + 1. 0 is an empty slot. */
+    private int[] slots;
+    private long[][] longAccumulators;
+    private double[][] doubleAccumulators;
+    /** tuple count of each group for AVG. */
+    private long[][] avgCounts;
+    /** estimated bytes of the VARCHAR/VARBINARY key values. */
+    private long objectKeyBytes;
+
+    /** group ID + 1 for each combined code of the group columns. null unless the direct-mapped lookup is used. */
+    private int[] directGroups;
+    /** the offset to add to the value of each group column to make its code non-negative. */
+    private int[] directOffsets;
+    /** the multiplier of the code of each group column in the combined code. */
+    private int[] directStrides;
+
+    // scratch arrays for each batch
+    private long[][] batchKeyLongs;
+    private Object[][] batchKeyObjects;
+    private Object[][] objectScratch;
+    private int[] hashes;
+    private int[] groupIds;
+    private long[] longValues;
+    private double[] doubleValues;
+
+    private boolean consumed;
+    private int emitted;
+    private VectorBatch output;
+
+    /** the spill level of the groups in the table. 0 while consuming the input. */
+    private int level;
+    /** the files to spill the groups in the table, one for each partition. null if not spilled at this level. */
+    private SpillFile[] spillFiles;
+    /** spilled partitions not loaded yet. loaded from the end. */
+    private ArrayList<SpilledPartition> pendingPartitions;
+    /** the folder of the spill files of this operator. created on the first spill. */
+    private VirtualFile spillDir;
+    private int spillFileSequence;
+    private long spilledGroups;
+    private boolean warnedSpillLimit;
+
+    /**
+     * Constructs an aggregation entirely in memory.
+     * @param child the input
+     * @param groupColumns indexes of the group columns in the input. empty for a global aggregate.
+     * @param aggregates the aggregates to compute for each group
+     * @param batchSize number of groups in each output batch
+     */
+    public HashAggregateOperator (Operator child, int[] groupColumns, Aggregate[] aggregates, int batchSize) {
+        this (child, groupColumns, aggregates, batchSize, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Constructs an aggregation that spills to disk when the hash table exceeds the memory budget.
+     * @param child the input
+     * @param groupColumns indexes of the group columns in the input. empty for a global aggregate.
+     * @param aggregates the aggregates to compute for each group
+     * @param batchSize number of groups in each output batch
+     * @param memoryBudget the maximum bytes of the hash table before spilling (estimated)
+     * @param spillFolder the folder in the local file system to create temporary files in.
+     * null to never spill.
+     */
+    public HashAggregateOperator (Operator child, int[] groupColumns, Aggregate[] aggregates, int batchSize,
+                    long memoryBudget, VirtualFile spillFolder) {
+        this.child = child;
+        this.groupColumns = groupColumns;
+        this.aggregates = aggregates;
+        this.batchSize = batchSize;
+        this.memoryBudget = memoryBudget;
+        this.spillFolder = spillFolder;
+        ColumnType[] childTypes = child.getColumnTypes();
+        this.keyTypes = new ColumnType[groupColumns.length];
+        this.types = new ColumnType[groupColumns.length + aggregates.length];
+        for (int k = 0; k < groupColumns.length; ++k) {
+            keyTypes[k] = childTypes[groupColumns[k]];
+            types[k] = keyTypes[k];
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            types[groupColumns.length + a] = aggregates[a].getResultType();
+        }
+        ArrayList<ColumnType> partial = new ArrayList<ColumnType>();
+        for (int k = 0; k < groupColumns.length; ++k) {
+            // numeric keys are spilled as they are stored in the table
+            partial.add(VectorUtil.isNumeric(keyTypes[k]) ? ColumnType.BIGINT : keyTypes[k]);
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            partial.add(aggregates[a].isDoubleAccumulator() ? ColumnType.DOUBLE : ColumnType.BIGINT);
+            if (aggregates[a].getFunction() == Aggregate.Function.AVG) {
+                partial.add(ColumnType.BIGINT);
+            }
+        }
+        this.partialTypes = partial.toArray(new ColumnType[partial.size()]);
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    @Override
+    public void open() throws IOException {
+        child.open();
+        batchKeyLongs = new long[groupColumns.length][];
+        batchKeyObjects = new Object[groupColumns.length][];
+        objectScratch = new Object[groupColumns.length][];
+        initDirectGroups();
+        resetTable();
+        level = 0;
+        spillFiles = null;
+        pendingPartitions = new ArrayList<SpilledPartition>();
+        spilledGroups = 0;
+        warnedSpillLimit = false;
+        consumed = false;
+        if (groupColumns.length == 0) {
+            newGroup(0, 0);
+        }
+    }
+
+    /** sets up the direct-mapped group lookup if all group columns are small integers. */
+    private void initDirectGroups () {
+        directGroups = null;
+        if (groupColumns.length == 0) {
+            return;
+        }
+        int[] offsets = new int[groupColumns.length];
+        int[] strides = new int[groupColumns.length];
+        int codes = 1;
+        for (int k = 0; k < groupColumns.length; ++k) {
+            int range;
+            switch (keyTypes[k]) {
+            case BOOLEAN:
+            case TINYINT:
+                range = 1 << 8;
+                break;
+            case SMALLINT:
+                range = 1 << 16;
+                break;
+            default:
+                return;
+            }
+            offsets[k] = range / 2;
+            strides[k] = codes;
+            if ((long) codes * range > MAX_DIRECT_GROUPS) {
+                return;
+            }
+            codes *= range;
+        }
+        directOffsets = offsets;
+        directStrides = strides;
+        directGroups = new int[codes];
+    }
+
+    /** discards all groups and allocates an empty hash table. */
+    private void resetTable () {
+        groupCount = 0;
+        groupCapacity = INITIAL_GROUPS;
+        groupHashes = new int[groupCapacity];
+        keyLongs = new long[groupColumns.length][];
+        keyObjects = new Object[groupColumns.length][];
+        for (int k = 0; k < groupColumns.length; ++k) {
+            if (VectorUtil.isNumeric(keyTypes[k])) {
+                keyLongs[k] = new long[groupCapacity];
+            } else {
+                keyObjects[k] = new Object[groupCapacity];
+            }
+        }
+        slots = new int[groupCapacity * 2];
+        longAccumulators = new long[aggregates.length][];
+        doubleAccumulators = new double[aggregates.length][];
+        avgCounts = new long[aggregates.length][];
+        for (int a = 0; a < aggregates.length; ++a) {
+            if (aggregates[a].isDoubleAccumulator()) {
+                doubleAccumulators[a] = new double[groupCapacity];
+            } else {
+                longAccumulators[a] = new long[groupCapacity];
+            }
+            if (aggregates[a].getFunction() == Aggregate.Function.AVG) {
+                avgCounts[a] = new long[groupCapacity];
+            }
+        }
+        objectKeyBytes = 0;
+        emitted = 0;
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        if (!consumed) {
+            for (VectorBatch batch = child.next(); batch != null; batch = child.next()) {
+                consume(batch);
+                spillIfExceeded();
+            }
+            finishSpilling();
+            consumed = true;
+            output = new VectorBatch(new TupleBuffer(types, batchSize));
+        }
+        while (emitted >= groupCount) {
+            if (pendingPartitions.isEmpty()) {
+                return null;
+            }
+            loadPartition(pendingPartitions.remove(pendingPartitions.size() - 1));
+        }
+        int count = Math.min(batchSize, groupCount - emitted);
+        output.reset();
+        emit(output.getBuffer(), emitted, count);
+        emitted += count;
+        return output;
+    }
+
+    /** returns the number of groups in the hash table now. */
+    public int getGroupCount () {
+        return groupCount;
+    }
+
+    /** returns the total number of groups spilled to disk so far, including those spilled again. */
+    public long getSpilledGroupCount () {
+        return spilledGroups;
+    }
+
+    /** returns the estimated bytes of the hash table. */
+    public long getEstimatedBytes () {
+        long bytesPerGroup = 4L + 8L * groupColumns.length;
+        for (int a = 0; a < aggregates.length; ++a) {
+            bytesPerGroup += avgCounts[a] != null ? 16L : 8L;
+        }
+        return groupCapacity * bytesPerGroup + slots.length * 4L + objectKeyBytes
+            + (directGroups == null ? 0L : directGroups.length * 4L);
+    }
+
+    private void consume (VectorBatch batch) {
+        final int n = batch.size();
+        final int[] selection = batch.getSelection();
+        final int capacity = batch.getBuffer().getBufferSize();
+        groupIds = VectorUtil.ensure(groupIds, capacity);
+        if (groupColumns.length == 0) {
+            Arrays.fill(groupIds, 0, n, 0);
+        } else {
+            extractKeys(batch, selection, n, capacity);
+            if (directGroups != null) {
+                findOrCreateDirectGroups(n);
+            } else {
+                for (int i = 0; i < n; ++i) {
+                    groupIds[i] = findOrCreateGroup(i, hashes[i]);
+                }
+            }
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            accumulate(a, batch, n, capacity);
+        }
+    }
+
+    private static int mix (long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return (int) (value ^ (value >>> 32));
+    }
+
+    /** copies the key values of the live tuples to the scratch arrays and computes their hashes. */
+    private void extractKeys (VectorBatch batch, int[] selection, int n, int capacity) {
+        for (int k = 0; k < groupColumns.length; ++k) {
+            Object column = batch.getColumn(groupColumns[k]);
+            if (keyLongs[k] != null) {
+                long[] scratch = VectorUtil.ensure(batchKeyLongs[k], capacity);
+                long[] keys;
+                if (VectorUtil.isFloating(keyTypes[k])) {
+                    doubleValues = VectorUtil.ensure(doubleValues, capacity);
+                    double[] values = VectorUtil.toDouble(column, selection, n, doubleValues);
+                    for (int i = 0; i < n; ++i) {
+                        scratch[i] = Double.doubleToLongBits(values[i]);
+                    }
+                    keys = scratch;
+                } else {
+                    keys = VectorUtil.toLong(column, selection, n, scratch);
+                }
+                batchKeyLongs[k] = scratch;
+                if (keys != scratch) {
+                    // the column itself was returned. copy it as the column buffer is reused
+                    System.arraycopy(keys, 0, scratch, 0, n);
+                }
+            } else {
+                Object[] keys;
+                if (selection == null && column instanceof Object[]) {
+                    keys = (Object[]) column;
+                } else {
+                    if (objectScratch[k] == null || objectScratch[k].length < capacity) {
+                        objectScratch[k] = (Object[]) VectorUtil.createArray(keyTypes[k], capacity);
+                    }
+                    keys = objectScratch[k];
+                    VectorUtil.gather(column, selection, n, keys, 0);
+                }
+                batchKeyObjects[k] = keys;
+            }
+        }
+        if (directGroups == null) {
+            hashKeys(n, capacity);
+        }
+    }
+
+    /** computes the hashes of the keys in the scratch arrays. */
+    private void hashKeys (int n, int capacity) {
+        hashes = VectorUtil.ensure(hashes, capacity);
+        Arrays.fill(hashes, 0, n, 0);
+        for (int k = 0; k < groupColumns.length; ++k) {
+            if (keyLongs[k] != null) {
+                long[] keys = batchKeyLongs[k];
+                for (int i = 0; i < n; ++i) {
+                    hashes[i] = hashes[i] * 31 + mix(keys[i]);
+                }
+            } else {
+                Object[] keys = batchKeyObjects[k];
+                for (int i = 0; i < n; ++i) {
+                    Object key = keys[i];
+                    hashes[i] = hashes[i] * 31 + (key == null ? 0 : key.hashCode());
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            int h = hashes[i];
+            hashes[i] = h ^ (h >>> 16);
+        }
+    }
+
+    /** maps the keys in the scratch arrays to group IDs with the direct-mapped array. */
+    private void findOrCreateDirectGroups (int n) {
+        int[] codes = VectorUtil.ensure(hashes, groupIds.length); // the hashes are not needed
+        hashes = codes;
+        Arrays.fill(codes, 0, n, 0);
+        for (int k = 0; k < groupColumns.length; ++k) {
+            long[] keys = batchKeyLongs[k];
+            int offset = directOffsets[k];
+            int stride = directStrides[k];
+            for (int i = 0; i < n; ++i) {
+                codes[i] += ((int) keys[i] + offset) * stride;
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            int group = directGroups[codes[i]] - 1;
+            if (group < 0) {
+                group = newGroup(i, 0);
+                directGroups[codes[i]] = group + 1;
+            }
+            groupIds[i] = group;
+        }
+    }
+
+    private int findOrCreateGroup (int i, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int group = slots[slot] - 1;
+            if (group < 0) {
+                group = newGroup(i, hash);
+                slots[slot] = group + 1;
+                if (groupCount * 2 > slots.length) {
+                    rehash();
+                }
+                return group;
+            }
+            if (groupHashes[group] == hash && keysEqual(group, i)) {
+                return group;
+            }
+        }
+    }
+
+    private boolean keysEqual (int group, int i) {
+        for (int k = 0; k < groupColumns.length; ++k) {
+            if (keyLongs[k] != null) {
+                if (keyLongs[k][group] != batchKeyLongs[k][i]) {
+                    return false;
+                }
+            } else {
+                Object a = keyObjects[k][group];
+                Object b = batchKeyObjects[k][i];
+                if (a == null ? b != null : !a.equals(b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void rehash () {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int group = 0; group < groupCount; ++group) {
+            int slot = groupHashes[group] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = group + 1;
+        }
+    }
+
+    private int newGroup (int i, int hash) {
+        if (groupCount == groupCapacity) {
+            growGroups();
+        }
+        int group = groupCount++;
+        groupHashes[group] = hash;
+        for (int k = 0; k < groupColumns.length; ++k) {
+            if (keyLongs[k] != null) {
+                keyLongs[k][group] = batchKeyLongs[k][i];
+            } else {
+                Object key = batchKeyObjects[k][i];
+                keyObjects[k][group] = key;
+                if (key instanceof String) {
+                    objectKeyBytes += 40 + 2 * ((String) key).length();
+                } else if (key instanceof ByteArray) {
+                    objectKeyBytes += 32 + ((ByteArray) key).getBytes().length;
+                }
+            }
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            switch (aggregates[a].getFunction()) {
+            case MIN:
+                if (doubleAccumulators[a] != null) {
+                    doubleAccumulators[a][group] = Double.POSITIVE_INFINITY;
+                } else {
+                    longAccumulators[a][group] = Long.MAX_VALUE;
+                }
+                break;
+            case MAX:
+                if (doubleAccumulators[a] != null) {
+                    doubleAccumulators[a][group] = Double.NEGATIVE_INFINITY;
+                } else {
+                    longAccumulators[a][group] = Long.MIN_VALUE;
+                }
+                break;
+            default:
+                break; // zero
+            }
+        }
+        return group;
+    }
+
+    private void growGroups () {
+        groupCapacity *= 2;
+        groupHashes = Arrays.copyOf(groupHashes, groupCapacity);
+        for (int k = 0; k < groupColumns.length; ++k) {
+            if (keyLongs[k] != null) {
+                keyLongs[k] = Arrays.copyOf(keyLongs[k], groupCapacity);
+            } else {
+                keyObjects[k] = Arrays.copyOf(keyObjects[k], groupCapacity);
+            }
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            if (doubleAccumulators[a] != null) {
+                doubleAccumulators[a] = Arrays.copyOf(doubleAccumulators[a], groupCapacity);
+            } else {
+                longAccumulators[a] = Arrays.copyOf(longAccumulators[a], groupCapacity);
+            }
+            if (avgCounts[a] != null) {
+                avgCounts[a] = Arrays.copyOf(avgCounts[a], groupCapacity);
+            }
+        }
+    }
+
+    private void accumulate (int a, VectorBatch batch, int n, int capacity) {
+        final Aggregate aggregate = aggregates[a];
+        final int[] g = groupIds;
+        if (aggregate.getFunction() == Aggregate.Function.COUNT) {
+            long[] acc = longAccumulators[a];
+            for (int i = 0; i < n; ++i) {
+                ++acc[g[i]];
+            }
+            return;
+        }
+        Object input = aggregate.getInput().evaluate(batch);
+        if (doubleAccumulators[a] != null) {
+            doubleValues = VectorUtil.ensure(doubleValues, capacity);
+            double[] v = VectorUtil.toDouble(input, null, n, doubleValues);
+            double[] acc = doubleAccumulators[a];
+            switch (aggregate.getFunction()) {
+            case SUM:
+                for (int i = 0; i < n; ++i) {
+                    acc[g[i]] += v[i];
+                }
+                break;
+            case AVG:
+                long[] counts = avgCounts[a];
+                for (int i = 0; i < n; ++i) {
+                    acc[g[i]] += v[i];
+                    ++counts[g[i]];
+                }
+                break;
+            case MIN:
+                for (int i = 0; i < n; ++i) {
+                    if (v[i] < acc[g[i]]) {
+                        acc[g[i]] = v[i];
+                    }
+                }
+                break;
+            case MAX:
+                for (int i = 0; i < n; ++i) {
+                    if (v[i] > acc[g[i]]) {
+                        acc[g[i]] = v[i];
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException ();
+            }
+        } else {
+            longValues = VectorUtil.ensure(longValues, capacity);
+            long[] v = VectorUtil.toLong(input, null, n, longValues);
+            long[] acc = longAccumulators[a];
+            switch (aggregate.getFunction()) {
+            case SUM:
+                for (int i = 0; i < n; ++i) {
+                    acc[g[i]] += v[i];
+                }
+                break;
+            case MIN:
+                for (int i = 0; i < n; ++i) {
+                    if (v[i] < acc[g[i]]) {
+                        acc[g[i]] = v[i];
+                    }
+                }
+                break;
+            case MAX:
+                for (int i = 0; i < n; ++i) {
+                    if (v[i] > acc[g[i]]) {
+                        acc[g[i]] = v[i];
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException ();
+            }
+        }
+    }
+
+    /** spills the groups in the table if it exceeds the memory budget. */
+    private void spillIfExceeded () throws IOException {
+        if (spillFolder == null || groupColumns.length == 0 || directGroups != null
+            || groupCount == 0 || getEstimatedBytes() <= memoryBudget) {
+            return;
+        }
+        if (level >= MAX_SPILL_LEVEL) {
+            if (!warnedSpillLimit) {
+                LOG.warn("groups in a spilled partition still exceed the memory budget, but no more hash bits to partition with. keeping them in memory");
+                warnedSpillLimit = true;
+            }
+            return;
+        }
+        spillTable();
+    }
+
+    /** appends the partial states of all groups in the table to the spill files of their partitions, and empties the table. */
+    private void spillTable () throws IOException {
+        if (spillFiles == null) {
+            if (spillDir == null) {
+                spillDir = spillFolder.getChildFile("agg_spill_" + Math.abs(new Random(System.nanoTime()).nextInt()));
+                spillDir.mkdirs();
+            }
+            spillFiles = new SpillFile[FANOUT];
+            for (int p = 0; p < FANOUT; ++p) {
+                spillFiles[p] = new SpillFile(spillDir.getChildFile("p" + (level + 1) + "_" + (spillFileSequence++)), partialTypes, batchSize);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("spilling " + groupCount + " groups (" + getEstimatedBytes() + " bytes) at level " + level);
+        }
+        // counting sort of the groups by partition
+        int shift = 32 - FANOUT_BITS * (level + 1);
+        int[] partitionStarts = new int[FANOUT + 1];
+        for (int group = 0; group < groupCount; ++group) {
+            ++partitionStarts[((groupHashes[group] >>> shift) & (FANOUT - 1)) + 1];
+        }
+        for (int p = 0; p < FANOUT; ++p) {
+            partitionStarts[p + 1] += partitionStarts[p];
+        }
+        int[] rows = new int[groupCount];
+        int[] cursors = Arrays.copyOf(partitionStarts, FANOUT);
+        for (int group = 0; group < groupCount; ++group) {
+            rows[cursors[(groupHashes[group] >>> shift) & (FANOUT - 1)]++] = group;
+        }
+        Object[] partialColumns = new Object[partialTypes.length];
+        int col = 0;
+        for (int k = 0; k < groupColumns.length; ++k) {
+            partialColumns[col++] = keyLongs[k] != null ? keyLongs[k] : keyObjects[k];
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            partialColumns[col++] = doubleAccumulators[a] != null ? doubleAccumulators[a] : longAccumulators[a];
+            if (avgCounts[a] != null) {
+                partialColumns[col++] = avgCounts[a];
+            }
+        }
+        for (int p = 0; p < FANOUT; ++p) {
+            spillFiles[p].write(partialColumns, rows, partitionStarts[p], partitionStarts[p + 1] - partitionStarts[p]);
+        }
+        spilledGroups += groupCount;
+        resetTable();
+    }
+
+    /** if the groups have been spilled at the current level, spills the rest too and queues the spilled partitions. */
+    private void finishSpilling () throws IOException {
+        if (spillFiles == null) {
+            return;
+        }
+        spillTable();
+        for (int p = FANOUT - 1; p >= 0; --p) {
+            spillFiles[p].finishWriting();
+            if (spillFiles[p].getTupleCount() == 0) {
+                spillFiles[p].delete();
+            } else {
+                pendingPartitions.add(new SpilledPartition(spillFiles[p], level + 1));
+            }
+        }
+        spillFiles = null;
+    }
+
+    /** merges the partial states in the spilled partition into the (empty) table. */
+    private void loadPartition (SpilledPartition partition) throws IOException {
+        assert (groupCount == 0 || emitted == groupCount);
+        resetTable();
+        level = partition.level;
+        TupleBuffer buffer = new TupleBuffer(partialTypes, batchSize);
+        for (int n = partition.file.read(buffer); n > 0; n = partition.file.read(buffer)) {
+            mergePartial(buffer, n);
+            spillIfExceeded();
+        }
+        partition.file.delete();
+        finishSpilling();
+    }
+
+    /** merges the partial states of groups read from a spill file. */
+    private void mergePartial (TupleBuffer buffer, int n) {
+        groupIds = VectorUtil.ensure(groupIds, n);
+        int col = 0;
+        for (int k = 0; k < groupColumns.length; ++k, ++col) {
+            if (keyLongs[k] != null) {
+                batchKeyLongs[k] = VectorUtil.ensure(batchKeyLongs[k], n);
+                System.arraycopy(buffer.getColumnBuffer(col), 0, batchKeyLongs[k], 0, n);
+            } else {
+                batchKeyObjects[k] = (Object[]) buffer.getColumnBuffer(col);
+            }
+        }
+        hashKeys(n, n);
+        for (int i = 0; i < n; ++i) {
+            groupIds[i] = findOrCreateGroup(i, hashes[i]);
+        }
+        final int[] g = groupIds;
+        for (int a = 0; a < aggregates.length; ++a) {
+            Aggregate.Function function = aggregates[a].getFunction();
+            if (doubleAccumulators[a] != null) {
+                double[] v = (double[]) buffer.getColumnBuffer(col++);
+                double[] acc = doubleAccumulators[a];
+                if (function == Aggregate.Function.MIN) {
+                    for (int i = 0; i < n; ++i) {
+                        acc[g[i]] = Math.min(acc[g[i]], v[i]);
+                    }
+                } else if (function == Aggregate.Function.MAX) {
+                    for (int i = 0; i < n; ++i) {
+                        acc[g[i]] = Math.max(acc[g[i]], v[i]);
+                    }
+                } else {
+                    for (int i = 0; i < n; ++i) {
+                        acc[g[i]] += v[i];
+                    }
+                }
+            } else {
+                long[] v = (long[]) buffer.getColumnBuffer(col++);
+                long[] acc = longAccumulators[a];
+                if (function == Aggregate.Function.MIN) {
+                    for (int i = 0; i < n; ++i) {
+                        acc[g[i]] = Math.min(acc[g[i]], v[i]);
+                    }
+                } else if (function == Aggregate.Function.MAX) {
+                    for (int i = 0; i < n; ++i) {
+                        acc[g[i]] = Math.max(acc[g[i]], v[i]);
+                    }
+                } else {
+                    for (int i = 0; i < n; ++i) {
+                        acc[g[i]] += v[i]; // COUNT adds up the counts, too
+                    }
+                }
+            }
+            if (avgCounts[a] != null) {
+                long[] v = (long[]) buffer.getColumnBuffer(col++);
+                long[] counts = avgCounts[a];
+                for (int i = 0; i < n; ++i) {
+                    counts[g[i]] += v[i];
+                }
+            }
+        }
+    }
+
+    /** writes groups [from, from + count) to the buffer. */
+    private void emit (TupleBuffer buffer, int from, int count) {
+        for (int k = 0; k < groupColumns.length; ++k) {
+            Object dest = buffer.getColumnBuffer(k);
+            if (keyLongs[k] == null) {
+                System.arraycopy(keyObjects[k], from, dest, 0, count);
+                continue;
+            }
+            long[] keys = keyLongs[k];
+            if (dest instanceof long[]) {
+                System.arraycopy(keys, from, dest, 0, count);
+            } else if (dest instanceof int[]) {
+                int[] d = (int[]) dest;
+                for (int i = 0; i < count; ++i) {
+                    d[i] = (int) keys[from + i];
+                }
+            } else if (dest instanceof short[]) {
+                short[] d = (short[]) dest;
+                for (int i = 0; i < count; ++i) {
+                    d[i] = (short) keys[from + i];
+                }
+            } else if (dest instanceof byte[]) {
+                byte[] d = (byte[]) dest;
+                for (int i = 0; i < count; ++i) {
+                    d[i] = (byte) keys[from + i];
+                }
+            } else if (dest instanceof double[]) {
+                double[] d = (double[]) dest;
+                for (int i = 0; i < count; ++i) {
+                    d[i] = Double.longBitsToDouble(keys[from + i]);
+                }
+            } else {
+                float[] d = (float[]) dest;
+                for (int i = 0; i < count; ++i) {
+                    d[i] = (float) Double.longBitsToDouble(keys[from + i]);
+                }
+            }
+        }
+        for (int a = 0; a < aggregates.length; ++a) {
+            Object dest = buffer.getColumnBuffer(groupColumns.length + a);
+            if (avgCounts[a] != null) {
+                double[] d = (double[]) dest;
+                for (int i = 0; i < count; ++i) {
+                    long groupTuples = avgCounts[a][from + i];
+                    d[i] = groupTuples == 0 ? 0 : doubleAccumulators[a][from + i] / groupTuples;
+                }
+            } else if (doubleAccumulators[a] != null) {
+                System.arraycopy(doubleAccumulators[a], from, dest, 0, count);
+            } else {
+                System.arraycopy(longAccumulators[a], from, dest, 0, count);
+            }
+        }
+        buffer.setCount(count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        child.close();
+        slots = null;
+        keyLongs = null;
+        keyObjects = null;
+        longAccumulators = null;
+        doubleAccumulators = null;
+        avgCounts = null;
+        directGroups = null;
+        output = null;
+        if (spillFiles != null) {
+            for (SpillFile file : spillFiles) {
+                file.delete();
+            }
+            spillFiles = null;
+        }
+        if (pendingPartitions != null) {
+            for (SpilledPartition partition : pendingPartitions) {
+                partition.file.delete();
+            }
+            pendingPartitions = null;
+        }
+        if (spillDir != null) {
+            spillDir.delete(true);
+            spillDir = null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Inner equi-join on one integral key column.
+ * <p>At open, the whole build side is materialized into columns and chained into
+ * a bucket array (head/next arrays of tuple positions, no entry objects).
+ * Each probe batch is then matched a batch at a time. The output is the probe columns
+ * followed by the build columns. When a probe batch has more matches than fit in an output
+ * batch, the probe is resumed at the same probe tuple and chain position at the next call.</p>
+ */
+public final class HashJoinOperator implements Operator {
+    private final Operator build;
+    private final Operator probe;
+    private final int buildKeyColumn;
+    private final int probeKeyColumn;
+    private final int batchSize;
+    private final ColumnType[] types;
+    private final int probeColumnCount;
+
+    private ColumnStore buildStore;
+    private long[] buildKeys;
+    private int[] head;
+    private int[] chain;
+    private int mask;
+
+    private VectorBatch probeBatch;
+    private long[] probeKeys;
+    private long[] probeKeyScratch;
+    private int probeCount;
+    /** the probe tuple (index among live tuples) to resume from. */
+    private int probeIndex;
+    /** the build tuple to resume from in the chain of the current probe tuple. -1 to start from the bucket head. */
+    private int resumeRow;
+
+    private int[] probeRows;
+    private int[] buildRows;
+    private VectorBatch output;
+
+    /**
+     * @param build the build side, materialized in memory. should be the smaller input.
+     * @param probe the probe side, streamed
+     * @param buildKeyColumn index of the key column in the build side
+     * @param probeKeyColumn index of the key column in the probe side
+     * @param batchSize number of tuples in each output batch
+     */
+    public HashJoinOperator (Operator build, Operator probe, int buildKeyColumn, int probeKeyColumn, int batchSize) {
+        ColumnType[] buildTypes = build.getColumnTypes();
+        ColumnType[] probeTypes = probe.getColumnTypes();
+        if (!VectorUtil.isIntegral(buildTypes[buildKeyColumn]) || !VectorUtil.isIntegral(probeTypes[probeKeyColumn])) {
+            throw new IllegalArgumentException ("join keys must be integral: " + buildTypes[buildKeyColumn] + ", " + probeTypes[probeKeyColumn]);
+        }
+        this.build = build;
+        this.probe = probe;
+        this.buildKeyColumn = buildKeyColumn;
+        this.probeKeyColumn = probeKeyColumn;
+        this.batchSize = batchSize;
+        this.probeColumnCount = probeTypes.length;
+        this.types = new ColumnType[probeTypes.length + buildTypes.length];
+        System.arraycopy(probeTypes, 0, types, 0, probeTypes.length);
+        System.arraycopy(buildTypes, 0, types, probeTypes.length, buildTypes.length);
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    private static int hash (long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    @Override
+    public void open() throws IOException {
+        build.open();
+        buildStore = new ColumnStore(build.getColumnTypes(), batchSize);
+        for (VectorBatch batch = build.next(); batch != null; batch = build.next()) {
+            buildStore.append(batch);
+        }
+        build.close();
+        int n = buildStore.size();
+        buildKeys = VectorUtil.toLong(buildStore.getColumn(buildKeyColumn), null, n, new long[n]);
+        int buckets = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1;
+        mask = buckets - 1;
+        head = new int[buckets];
+        Arrays.fill(head, -1);
+        chain = new int[n];
+        // insert in reverse order so that each chain lists build tuples in their input order
+        for (int row = n - 1; row >= 0; --row) {
+            int bucket = hash(buildKeys[row]) & mask;
+            chain[row] = head[bucket];
+            head[bucket] = row;
+        }
+
+        probe.open();
+        probeBatch = null;
+        probeRows = new int[batchSize];
+        buildRows = new int[batchSize];
+        output = new VectorBatch(new TupleBuffer(types, batchSize));
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        while (true) {
+            if (probeBatch == null || probeIndex >= probeCount) {
+                probeBatch = probe.next();
+                if (probeBatch == null) {
+                    return null;
+                }
+                probeCount = probeBatch.size();
+                probeIndex = 0;
+                resumeRow = -1;
+                probeKeyScratch = VectorUtil.ensure(probeKeyScratch, probeBatch.getBuffer().getBufferSize());
+                probeKeys = VectorUtil.toLong(probeBatch.getColumn(probeKeyColumn), probeBatch.getSelection(), probeCount, probeKeyScratch);
+            }
+            int out = probeCurrentBatch();
+            if (out > 0) {
+                output.reset();
+                TupleBuffer buffer = output.getBuffer();
+                for (int i = 0; i < probeColumnCount; ++i) {
+                    VectorUtil.gather(probeBatch.getColumn(i), probeRows, out, buffer.getColumnBuffer(i), 0);
+                }
+                buildStore.copyRows(buildRows, out, buffer, probeColumnCount);
+                buffer.setCount(out);
+                return output;
+            }
+        }
+    }
+
+    /** matches the current probe batch until the output is full or the batch is exhausted. */
+    private int probeCurrentBatch () {
+        final int[] selection = probeBatch.getSelection();
+        int out = 0;
+        for (; probeIndex < probeCount; ++probeIndex) {
+            long key = probeKeys[probeIndex];
+            int row = resumeRow >= 0 ? resumeRow : head[hash(key) & mask];
+            for (; row >= 0; row = chain[row]) {
+                if (buildKeys[row] == key) {
+                    if (out == batchSize) {
+                        resumeRow = row;
+                        return out;
+                    }
+                    probeRows[out] = selection == null ? probeIndex : selection[probeIndex];
+                    buildRows[out] = row;
+                    ++out;
+                }
+            }
+            resumeRow = -1;
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        probe.close();
+        buildStore = null;
+        buildKeys = null;
+        head = null;
+        chain = null;
+        output = null;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * A vectorized query operator, which produces tuples a batch at a time.
+ * <p>Usage: {@link #open()}, call {@link #next()} until it returns null, then {@link #close()}.
+ * An operator is used by one thread. Use {@link ExchangeOperator} to run operators in parallel.</p>
+ */
+public interface Operator extends Closeable {
+    /** returns the value type of each output column. */
+    ColumnType[] getColumnTypes ();
+
+    /** prepares to produce tuples. Opens the child operators too. */
+    void open () throws IOException;
+
+    /**
+     * Returns the next batch of tuples.
+     * The returned batch (and its buffer) belongs to this operator and is valid only until the next call.
+     * @return the next batch with at least one live tuple. null if no more tuples.
+     */
+    VectorBatch next () throws IOException;
+
+    /** releases the resources of this operator and its child operators. */
+    @Override
+    void close () throws IOException;
+}
@@ -0,0 +1,18 @@
+package edu.brown.lasvegas.qe.operator;
+
+/**
+ * A predicate evaluated over many tuples of a batch at once, producing a selection vector.
+ * @see FilterOperator
+ */
+public abstract class Predicate {
+    /**
+     * Selects the tuples that satisfy this predicate.
+     * @param batch the batch to evaluate on
+     * @param in positions of the tuples to evaluate in ascending order. null to evaluate positions [0, inCount).
+     * @param inCount number of tuples to evaluate
+     * @param out receives the positions of the satisfying tuples in ascending order.
+     * can be the same array as in.
+     * @return the number of satisfying tuples
+     */
+    public abstract int select (VectorBatch batch, int[] in, int inCount, int[] out);
+}
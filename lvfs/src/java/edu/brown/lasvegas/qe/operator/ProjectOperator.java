@@ -0,0 +1,62 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Evaluates expressions over the live tuples of each batch and outputs them as columns.
+ * The output batches are compacted (no selection vector).
+ */
+public final class ProjectOperator implements Operator {
+    private final Operator child;
+    private final Expression[] expressions;
+    private final ColumnType[] types;
+    private VectorBatch output;
+
+    public ProjectOperator (Operator child, Expression... expressions) {
+        this.child = child;
+        this.expressions = expressions;
+        this.types = new ColumnType[expressions.length];
+        for (int i = 0; i < expressions.length; ++i) {
+            types[i] = expressions[i].getType();
+        }
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    @Override
+    public void open() throws IOException {
+        child.open();
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        VectorBatch batch = child.next();
+        if (batch == null) {
+            return null;
+        }
+        int size = batch.size();
+        if (output == null || output.getBuffer().getBufferSize() < batch.getBuffer().getBufferSize()) {
+            output = new VectorBatch(new TupleBuffer(types, batch.getBuffer().getBufferSize()));
+        }
+        output.reset();
+        TupleBuffer buffer = output.getBuffer();
+        for (int i = 0; i < expressions.length; ++i) {
+            // results are compacted and of the output type already
+            VectorUtil.gather(expressions[i].evaluate(batch), null, size, buffer.getColumnBuffer(i), 0);
+        }
+        buffer.setCount(size);
+        return output;
+    }
+
+    @Override
+    public void close() throws IOException {
+        child.close();
+        output = null;
+    }
+}
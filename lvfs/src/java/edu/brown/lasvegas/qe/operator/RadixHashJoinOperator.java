@@ -0,0 +1,697 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Equi-join on one primitive key column with radix-partitioned hash tables.
+ * <p>The two inputs are read a batch at a time, always from the side with fewer buffered bytes
+ * (including its would-be hash table), until either of them ends. The side that ended is not larger
+ * than what is buffered from the other side, so it becomes the build side. The build tuples are
+ * clustered by the low bits of their key hashes into partitions small enough to stay in the CPU cache,
+ * each with its own bucket array (head/chain arrays of tuple positions, no entry objects).
+ * Each probe batch is clustered by the same bits before probing, so that consecutive probes
+ * hit the same small part of the table. The tuples of the other side read while deciding
+ * the build side are probed first, followed by the rest of that input.</p>
+ * <p>Key hashes are 64-bit. The radix partitions and buckets use the low 32 bits and spilling uses the high 32 bits,
+ * so the tuples of a partition spilled several times still spread over all buckets.
+ * Keys are compared as long. FLOAT/DOUBLE keys are compared by their bits (with -0 as 0),
+ * so both keys must be integral or both floating.</p>
+ * <p>INNER join outputs the left columns followed by the right columns, in no particular order.
+ * SEMI and ANTI joins output the left columns only. When the right side is the build side,
+ * they pass up each left batch with a selection vector of the left tuples with (or without) a match.
+ * When the left side is the build side, the build tuples are marked while probing with the right side
+ * and the marked (or unmarked) ones are emitted at the end.</p>
+ * <h3>Spilling</h3>
+ * <p>When a memory budget and a spill folder are given and the tuples read before deciding the build side
+ * exceed the budget, both inputs are partitioned by the highest bits of the key hashes into temporary files.
+ * Each pair of partitions is then joined by another instance of this operator,
+ * which might spill again with the next bits of the hashes (still in the high 32 bits).</p>
+ */
+public final class RadixHashJoinOperator implements Operator {
+    private static Logger LOG = Logger.getLogger(RadixHashJoinOperator.class);
+
+    /** kinds of joins. */
+    public static enum JoinType {
+        /** pairs of left and right tuples with the same key. */
+        INNER,
+        /** left tuples that have at least one right tuple with the same key, each only once. */
+        SEMI,
+        /** left tuples that have no right tuple with the same key. */
+        ANTI,
+    }
+
+    /** number of build tuples to aim for in each radix partition, so that its keys, chains and buckets fit in L2 cache. */
+    private static final int TARGET_PARTITION_TUPLES = 1 << 13;
+    private static final int MAX_RADIX_BITS = 12;
+    /** hash bits used to partition the inputs in each spill. */
+    private static final int FANOUT_BITS = 4;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    /** partitions spilled at this level are not spilled again because there are no more (high 32) hash bits to partition with. */
+    private static final int MAX_SPILL_LEVEL = 32 / FANOUT_BITS - 1;
+    /** estimated bytes of the hash table per build tuple (key, hash, position, chain and buckets). */
+    private static final int TABLE_BYTES_PER_TUPLE = 28;
+
+    private final Operator left;
+    private final Operator right;
+    private final int leftKeyColumn;
+    private final int rightKeyColumn;
+    private final JoinType joinType;
+    private final int batchSize;
+    private final long memoryBudget;
+    private final VirtualFile spillFolder;
+    /** the hash bits already used to partition the inputs, in FANOUT_BITS. */
+    private final int level;
+    private final boolean floatingKeys;
+    private final ColumnType[] types;
+    private final int leftColumnCount;
+
+    private boolean buildIsLeft;
+    private ColumnStore buildStore;
+    private int radixBits;
+    /** keys of the build tuples, in the order of the radix partitions. */
+    private long[] buildKeys;
+    /** the position in buildStore of each tuple in the order of the radix partitions. */
+    private int[] buildRows;
+    /** the first bucket of each radix partition in head. */
+    private int[] bucketOffsets;
+    private int[] bucketMasks;
+    private int[] head;
+    private int[] chain;
+    /** whether each build tuple has a match. only for SEMI/ANTI joins with the left side as the build side. */
+    private boolean[] buildMatched;
+    private int buildEmitted;
+
+    private Operator probe;
+    private int probeKeyColumn;
+    private boolean probeOpen;
+    /** the probe tuples read while deciding the build side. null after all of them are probed. */
+    private ColumnStore probeStore;
+    private int probeStoreEmitted;
+    private VectorBatch probeStoreBatch;
+    private VectorBatch probeBatch;
+    private int probeCount;
+    private long[] probeKeys;
+    private long[] probeKeyScratch;
+    private double[] doubleScratch;
+    private int[] probeHashes;
+    /** live tuples of the probe batch clustered by radix partition. */
+    private int[] probeOrder;
+    private int[] partitionCursors;
+    /** the position in probeOrder to resume from. */
+    private int probeCursor;
+    /** the build tuple to resume from in the chain of the current probe tuple. -1 to start from the bucket head. */
+    private int resumeTuple;
+    private byte[] probeMatched;
+    private int[] selection;
+
+    private int[] outProbeRows;
+    private int[] outBuildRows;
+    private VectorBatch output;
+
+    /** the folder of the spill files of this operator. null if not spilled. */
+    private VirtualFile spillDir;
+    /** joins of the spilled partitions not run yet. null if not spilled. */
+    private ArrayList<RadixHashJoinOperator> subJoins;
+    private RadixHashJoinOperator currentSubJoin;
+
+    /**
+     * Constructs a join entirely in memory.
+     * @param left the left input
+     * @param right the right input
+     * @param leftKeyColumn index of the key column in the left input
+     * @param rightKeyColumn index of the key column in the right input
+     * @param joinType the kind of the join
+     * @param batchSize number of tuples in each output batch
+     */
+    public RadixHashJoinOperator (Operator left, Operator right, int leftKeyColumn, int rightKeyColumn, JoinType joinType, int batchSize) {
+        this (left, right, leftKeyColumn, rightKeyColumn, joinType, batchSize, Long.MAX_VALUE, null, 0);
+    }
+
+    /**
+     * Constructs a join that spills to disk when the inputs exceed the memory budget.
+     * @param left the left input
+     * @param right the right input
+     * @param leftKeyColumn index of the key column in the left input
+     * @param rightKeyColumn index of the key column in the right input
+     * @param joinType the kind of the join
+     * @param batchSize number of tuples in each output batch
+     * @param memoryBudget the maximum bytes of the tuples and the hash table before spilling (estimated)
+     * @param spillFolder the folder in the local file system to create temporary files in.
+     * null to never spill.
+     */
+    public RadixHashJoinOperator (Operator left, Operator right, int leftKeyColumn, int rightKeyColumn, JoinType joinType, int batchSize,
+                    long memoryBudget, VirtualFile spillFolder) {
+        this (left, right, leftKeyColumn, rightKeyColumn, joinType, batchSize, memoryBudget, spillFolder, 0);
+    }
+
+    private RadixHashJoinOperator (Operator left, Operator right, int leftKeyColumn, int rightKeyColumn, JoinType joinType, int batchSize,
+                    long memoryBudget, VirtualFile spillFolder, int level) {
+        ColumnType[] leftTypes = left.getColumnTypes();
+        ColumnType[] rightTypes = right.getColumnTypes();
+        ColumnType leftKeyType = leftTypes[leftKeyColumn];
+        ColumnType rightKeyType = rightTypes[rightKeyColumn];
+        if (!(VectorUtil.isIntegral(leftKeyType) && VectorUtil.isIntegral(rightKeyType))
+            && !(VectorUtil.isFloating(leftKeyType) && VectorUtil.isFloating(rightKeyType))) {
+            throw new IllegalArgumentException ("join keys must be both integral or both floating: " + leftKeyType + ", " + rightKeyType);
+        }
+        this.left = left;
+        this.right = right;
+        this.leftKeyColumn = leftKeyColumn;
+        this.rightKeyColumn = rightKeyColumn;
+        this.joinType = joinType;
+        this.batchSize = batchSize;
+        this.memoryBudget = memoryBudget;
+        this.spillFolder = spillFolder;
+        this.level = level;
+        this.floatingKeys = VectorUtil.isFloating(leftKeyType);
+        this.leftColumnCount = leftTypes.length;
+        if (joinType == JoinType.INNER) {
+            this.types = new ColumnType[leftTypes.length + rightTypes.length];
+            System.arraycopy(leftTypes, 0, types, 0, leftTypes.length);
+            System.arraycopy(rightTypes, 0, types, leftTypes.length, rightTypes.length);
+        } else {
+            this.types = leftTypes;
+        }
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    /** 64-bit hash of the key (finalizer of MurmurHash3), whose low and high 32 bits are used independently. */
+    private static long hash64 (long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+    /** hash bits for the radix partitions and buckets of the hash table. */
+    private static int hash (long key) {
+        return (int) hash64(key);
+    }
+    /** hash bits for the spill partitions, disjoint from {@link #hash(long)}. */
+    private static int spillHash (long key) {
+        return (int) (hash64(key) >>> 32);
+    }
+    /** estimated bytes of the tuples and the hash table if the store became the build side. */
+    private static long buildBytes (ColumnStore store) {
+        return store.getEstimatedBytes() + (long) TABLE_BYTES_PER_TUPLE * store.size();
+    }
+
+    /** returns the keys of the live tuples as long. might return the column itself. */
+    private long[] normalizeKeys (Object column, int[] rows, int count, long[] scratch) {
+        if (!floatingKeys) {
+            return VectorUtil.toLong(column, rows, count, scratch);
+        }
+        doubleScratch = VectorUtil.ensure(doubleScratch, count);
+        double[] values = VectorUtil.toDouble(column, rows, count, doubleScratch);
+        for (int i = 0; i < count; ++i) {
+            scratch[i] = Double.doubleToLongBits(values[i] + 0.0d); // -0 becomes 0
+        }
+        return scratch;
+    }
+
+    @Override
+    public void open() throws IOException {
+        left.open();
+        right.open();
+        subJoins = null;
+        currentSubJoin = null;
+        buildMatched = null;
+        probeOpen = false;
+        probeBatch = null;
+        ColumnStore leftStore = new ColumnStore(left.getColumnTypes(), batchSize);
+        ColumnStore rightStore = new ColumnStore(right.getColumnTypes(), batchSize);
+        boolean leftEnded = false;
+        boolean warned = false;
+        while (true) {
+            // read the side with fewer buffered bytes, not each in turn, because the batches of the two sides
+            // might differ in size (e.g., selection vectors, wider tuples)
+            long leftBytes = buildBytes(leftStore);
+            long rightBytes = buildBytes(rightStore);
+            if (leftBytes <= rightBytes) {
+                VectorBatch batch = left.next();
+                if (batch == null) {
+                    leftEnded = true;
+                    break;
+                }
+                leftStore.append(batch);
+            } else {
+                VectorBatch batch = right.next();
+                if (batch == null) {
+                    break;
+                }
+                rightStore.append(batch);
+            }
+            if (!warned && spillFolder != null && leftStore.getEstimatedBytes() + rightStore.getEstimatedBytes()
+                + (long) TABLE_BYTES_PER_TUPLE * Math.min(leftStore.size(), rightStore.size()) > memoryBudget) {
+                if (level < MAX_SPILL_LEVEL) {
+                    spill(leftStore, rightStore);
+                    return;
+                }
+                LOG.warn("spilled partitions of a join still exceed the memory budget, but no more hash bits to partition with. joining them in memory");
+                warned = true;
+            }
+        }
+
+        // the input that ended has no more bytes than the other one
+        buildIsLeft = leftEnded;
+        if (buildIsLeft) {
+            left.close();
+            buildStore = leftStore;
+            probe = right;
+            probeStore = rightStore;
+            probeKeyColumn = rightKeyColumn;
+        } else {
+            right.close();
+            buildStore = rightStore;
+            probe = left;
+            probeStore = leftStore;
+            probeKeyColumn = leftKeyColumn;
+        }
+        probeOpen = true;
+        buildTable(buildIsLeft ? leftKeyColumn : rightKeyColumn);
+        if (buildIsLeft && joinType != JoinType.INNER) {
+            buildMatched = new boolean[buildStore.size()];
+            buildEmitted = 0;
+        }
+        probeStoreEmitted = 0;
+        probeStoreBatch = new VectorBatch(new TupleBuffer(probe.getColumnTypes(), batchSize));
+        partitionCursors = new int[(1 << radixBits) + 1];
+        outProbeRows = new int[batchSize];
+        outBuildRows = new int[batchSize];
+        output = new VectorBatch(new TupleBuffer(types, batchSize));
+    }
+
+    /** clusters the build tuples into radix partitions and chains them into the bucket array of each partition. */
+    private void buildTable (int keyColumn) {
+        final int n = buildStore.size();
+        long[] keys = normalizeKeys(buildStore.getColumn(keyColumn), null, n, new long[n]);
+        radixBits = 0;
+        while (radixBits < MAX_RADIX_BITS && (n >> radixBits) > TARGET_PARTITION_TUPLES) {
+            ++radixBits;
+        }
+        final int partitions = 1 << radixBits;
+        final int radixMask = partitions - 1;
+        int[] hashes = new int[n];
+        int[] starts = new int[partitions + 1];
+        for (int row = 0; row < n; ++row) {
+            hashes[row] = hash(keys[row]);
+            ++starts[(hashes[row] & radixMask) + 1];
+        }
+        for (int p = 0; p < partitions; ++p) {
+            starts[p + 1] += starts[p];
+        }
+        int[] cursors = Arrays.copyOf(starts, partitions);
+        buildKeys = new long[n];
+        buildRows = new int[n];
+        int[] partitionedHashes = new int[n];
+        for (int row = 0; row < n; ++row) {
+            int index = cursors[hashes[row] & radixMask]++;
+            buildKeys[index] = keys[row];
+            buildRows[index] = row;
+            partitionedHashes[index] = hashes[row];
+        }
+
+        bucketOffsets = new int[partitions + 1];
+        bucketMasks = new int[partitions];
+        for (int p = 0; p < partitions; ++p) {
+            int size = starts[p + 1] - starts[p];
+            int buckets = size == 0 ? 1 : Integer.highestOneBit(size * 2 - 1) << 1;
+            bucketMasks[p] = buckets - 1;
+            bucketOffsets[p + 1] = bucketOffsets[p] + buckets;
+        }
+        head = new int[bucketOffsets[partitions]];
+        Arrays.fill(head, -1);
+        chain = new int[n];
+        for (int p = 0; p < partitions; ++p) {
+            // insert in reverse order so that each chain lists build tuples in their input order
+            for (int index = starts[p + 1] - 1; index >= starts[p]; --index) {
+                int bucket = bucketOffsets[p] + ((partitionedHashes[index] >>> radixBits) & bucketMasks[p]);
+                chain[index] = head[bucket];
+                head[bucket] = index;
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("built " + n + " tuples into " + partitions + " radix partitions. build side=" + (buildIsLeft ? "left" : "right"));
+        }
+    }
+
+    private int bucketOf (int hash) {
+        int partition = hash & ((1 << radixBits) - 1);
+        return bucketOffsets[partition] + ((hash >>> radixBits) & bucketMasks[partition]);
+    }
+
+    /** returns the next probe batch, first from the buffered tuples and then from the input. */
+    private VectorBatch nextProbeBatch () throws IOException {
+        if (probeStore != null) {
+            if (probeStoreEmitted < probeStore.size()) {
+                int n = Math.min(batchSize, probeStore.size() - probeStoreEmitted);
+                probeStoreBatch.reset();
+                probeStore.copyRange(probeStoreEmitted, n, probeStoreBatch.getBuffer(), 0);
+                probeStoreBatch.getBuffer().setCount(n);
+                probeStoreEmitted += n;
+                return probeStoreBatch;
+            }
+            probeStore = null;
+        }
+        return probe.next();
+    }
+
+    /** computes the keys and hashes of the live tuples in the probe batch and clusters them by radix partition. */
+    private void prepareProbe (VectorBatch batch) {
+        probeBatch = batch;
+        probeCount = batch.size();
+        int capacity = batch.getBuffer().getBufferSize();
+        probeKeyScratch = VectorUtil.ensure(probeKeyScratch, capacity);
+        probeKeys = normalizeKeys(batch.getColumn(probeKeyColumn), batch.getSelection(), probeCount, probeKeyScratch);
+        probeHashes = VectorUtil.ensure(probeHashes, capacity);
+        probeOrder = VectorUtil.ensure(probeOrder, capacity);
+        final int radixMask = (1 << radixBits) - 1;
+        if (radixMask == 0) {
+            for (int i = 0; i < probeCount; ++i) {
+                probeHashes[i] = hash(probeKeys[i]);
+                probeOrder[i] = i;
+            }
+        } else {
+            Arrays.fill(partitionCursors, 0);
+            for (int i = 0; i < probeCount; ++i) {
+                int h = hash(probeKeys[i]);
+                probeHashes[i] = h;
+                ++partitionCursors[(h & radixMask) + 1];
+            }
+            for (int p = 0; p < radixMask; ++p) {
+                partitionCursors[p + 1] += partitionCursors[p];
+            }
+            for (int i = 0; i < probeCount; ++i) {
+                probeOrder[partitionCursors[probeHashes[i] & radixMask]++] = i;
+            }
+        }
+        probeCursor = 0;
+        resumeTuple = -1;
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        if (subJoins != null) {
+            return nextFromSubJoins();
+        }
+        if (joinType == JoinType.INNER) {
+            return nextInner();
+        } else if (buildIsLeft) {
+            return nextMarkedBuild();
+        } else {
+            return nextFilteredProbe();
+        }
+    }
+
+    private VectorBatch nextInner () throws IOException {
+        while (true) {
+            if (probeBatch == null || probeCursor >= probeCount) {
+                VectorBatch batch = nextProbeBatch();
+                if (batch == null) {
+                    probeBatch = null;
+                    return null;
+                }
+                prepareProbe(batch);
+            }
+            int out = probeInner();
+            if (out > 0) {
+                output.reset();
+                TupleBuffer buffer = output.getBuffer();
+                int probeColumn = buildIsLeft ? leftColumnCount : 0;
+                for (int i = 0; i < probeBatch.getColumnCount(); ++i) {
+                    VectorUtil.gather(probeBatch.getColumn(i), outProbeRows, out, buffer.getColumnBuffer(probeColumn + i), 0);
+                }
+                buildStore.copyRows(outBuildRows, out, buffer, buildIsLeft ? 0 : leftColumnCount);
+                buffer.setCount(out);
+                return output;
+            }
+        }
+    }
+
+    /** matches the current probe batch until the output is full or the batch is exhausted. */
+    private int probeInner () {
+        final int[] probeSelection = probeBatch.getSelection();
+        int out = 0;
+        for (; probeCursor < probeCount; ++probeCursor) {
+            int i = probeOrder[probeCursor];
+            long key = probeKeys[i];
+            int tuple = resumeTuple >= 0 ? resumeTuple : head[bucketOf(probeHashes[i])];
+            for (; tuple >= 0; tuple = chain[tuple]) {
+                if (buildKeys[tuple] == key) {
+                    if (out == batchSize) {
+                        resumeTuple = tuple;
+                        return out;
+                    }
+                    outProbeRows[out] = probeSelection == null ? i : probeSelection[i];
+                    outBuildRows[out] = buildRows[tuple];
+                    ++out;
+                }
+            }
+            resumeTuple = -1;
+        }
+        return out;
+    }
+
+    /** SEMI/ANTI join probing with the left side. passes up each left batch with the qualifying tuples selected. */
+    private VectorBatch nextFilteredProbe () throws IOException {
+        final byte wanted = joinType == JoinType.SEMI ? (byte) 1 : (byte) 0;
+        while (true) {
+            VectorBatch batch = nextProbeBatch();
+            if (batch == null) {
+                return null;
+            }
+            prepareProbe(batch);
+            int capacity = batch.getBuffer().getBufferSize();
+            if (probeMatched == null || probeMatched.length < capacity) {
+                probeMatched = new byte[capacity];
+            }
+            for (int c = 0; c < probeCount; ++c) {
+                int i = probeOrder[c];
+                long key = probeKeys[i];
+                byte matched = 0;
+                for (int tuple = head[bucketOf(probeHashes[i])]; tuple >= 0; tuple = chain[tuple]) {
+                    if (buildKeys[tuple] == key) {
+                        matched = 1;
+                        break;
+                    }
+                }
+                probeMatched[i] = matched;
+            }
+            // the selection vector must be in ascending order, so collect them in the original order
+            selection = VectorUtil.ensure(selection, capacity);
+            final int[] probeSelection = batch.getSelection();
+            int selected = 0;
+            for (int i = 0; i < probeCount; ++i) {
+                if (probeMatched[i] == wanted) {
+                    selection[selected++] = probeSelection == null ? i : probeSelection[i];
+                }
+            }
+            if (selected > 0) {
+                batch.setSelection(selection, selected);
+                return batch;
+            }
+        }
+    }
+
+    /** SEMI/ANTI join with the left side as the build side. marks the matched build tuples, then emits them. */
+    private VectorBatch nextMarkedBuild () throws IOException {
+        if (probeOpen) {
+            for (VectorBatch batch = nextProbeBatch(); batch != null; batch = nextProbeBatch()) {
+                prepareProbe(batch);
+                for (int c = 0; c < probeCount; ++c) {
+                    int i = probeOrder[c];
+                    long key = probeKeys[i];
+                    for (int tuple = head[bucketOf(probeHashes[i])]; tuple >= 0; tuple = chain[tuple]) {
+                        if (buildKeys[tuple] == key) {
+                            buildMatched[buildRows[tuple]] = true;
+                        }
+                    }
+                }
+            }
+            probe.close();
+            probeOpen = false;
+        }
+        final boolean wanted = joinType == JoinType.SEMI;
+        final int n = buildStore.size();
+        int out = 0;
+        for (; buildEmitted < n && out < batchSize; ++buildEmitted) {
+            if (buildMatched[buildEmitted] == wanted) {
+                outBuildRows[out++] = buildEmitted;
+            }
+        }
+        if (out == 0) {
+            return null;
+        }
+        output.reset();
+        buildStore.copyRows(outBuildRows, out, output.getBuffer(), 0);
+        output.getBuffer().setCount(out);
+        return output;
+    }
+
+    /** partitions both inputs into spill files and prepares the joins of each pair of partitions. */
+    private void spill (ColumnStore leftStore, ColumnStore rightStore) throws IOException {
+        LOG.info("spilling a join at level " + level + " after reading " + leftStore.size() + " left tuples and " + rightStore.size() + " right tuples");
+        spillDir = spillFolder.getChildFile("join_spill_" + Math.abs(new Random(System.nanoTime()).nextInt()));
+        spillDir.mkdirs();
+        SpillFile[] leftFiles = new SpillFile[FANOUT];
+        SpillFile[] rightFiles = new SpillFile[FANOUT];
+        for (int p = 0; p < FANOUT; ++p) {
+            leftFiles[p] = new SpillFile(spillDir.getChildFile("l" + p), left.getColumnTypes(), batchSize);
+            rightFiles[p] = new SpillFile(spillDir.getChildFile("r" + p), right.getColumnTypes(), batchSize);
+        }
+        scatterStore(leftStore, leftKeyColumn, leftFiles);
+        scatterStore(rightStore, rightKeyColumn, rightFiles);
+        for (VectorBatch batch = left.next(); batch != null; batch = left.next()) {
+            scatter(columnsOf(batch), batch.getSelection(), batch.size(), leftKeyColumn, leftFiles);
+        }
+        left.close();
+        for (VectorBatch batch = right.next(); batch != null; batch = right.next()) {
+            scatter(columnsOf(batch), batch.getSelection(), batch.size(), rightKeyColumn, rightFiles);
+        }
+        right.close();
+
+        subJoins = new ArrayList<RadixHashJoinOperator>();
+        for (int p = 0; p < FANOUT; ++p) {
+            leftFiles[p].finishWriting();
+            rightFiles[p].finishWriting();
+            if (leftFiles[p].getTupleCount() == 0 || (joinType != JoinType.ANTI && rightFiles[p].getTupleCount() == 0)) {
+                // no output from this partition
+                leftFiles[p].delete();
+                rightFiles[p].delete();
+                continue;
+            }
+            subJoins.add(new RadixHashJoinOperator(
+                new SpillFileScan(leftFiles[p], left.getColumnTypes(), batchSize),
+                new SpillFileScan(rightFiles[p], right.getColumnTypes(), batchSize),
+                leftKeyColumn, rightKeyColumn, joinType, batchSize, memoryBudget, spillFolder, level + 1));
+        }
+    }
+
+    private static Object[] columnsOf (VectorBatch batch) {
+        Object[] columns = new Object[batch.getColumnCount()];
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i] = batch.getColumn(i);
+        }
+        return columns;
+    }
+
+    private void scatterStore (ColumnStore store, int keyColumn, SpillFile[] files) throws IOException {
+        Object[] columns = new Object[store.getColumnTypes().length];
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i] = store.getColumn(i);
+        }
+        scatter(columns, null, store.size(), keyColumn, files);
+    }
+
+    /** appends the live tuples to the spill file of their partitions. */
+    private void scatter (Object[] columns, int[] rows, int count, int keyColumn, SpillFile[] files) throws IOException {
+        long[] keys = normalizeKeys(columns[keyColumn], rows, count, new long[count]);
+        final int shift = 32 - FANOUT_BITS * (level + 1);
+        int[] partitions = new int[count];
+        int[] starts = new int[FANOUT + 1];
+        for (int i = 0; i < count; ++i) {
+            partitions[i] = (spillHash(keys[i]) >>> shift) & (FANOUT - 1);
+            ++starts[partitions[i] + 1];
+        }
+        for (int p = 0; p < FANOUT; ++p) {
+            starts[p + 1] += starts[p];
+        }
+        int[] cursors = Arrays.copyOf(starts, FANOUT);
+        int[] ordered = new int[count];
+        for (int i = 0; i < count; ++i) {
+            ordered[cursors[partitions[i]]++] = rows == null ? i : rows[i];
+        }
+        for (int p = 0; p < FANOUT; ++p) {
+            files[p].write(columns, ordered, starts[p], starts[p + 1] - starts[p]);
+        }
+    }
+
+    private VectorBatch nextFromSubJoins () throws IOException {
+        while (true) {
+            if (currentSubJoin == null) {
+                if (subJoins.isEmpty()) {
+                    return null;
+                }
+                currentSubJoin = subJoins.remove(0);
+                currentSubJoin.open();
+            }
+            VectorBatch batch = currentSubJoin.next();
+            if (batch != null) {
+                return batch;
+            }
+            currentSubJoin.close();
+            currentSubJoin = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (currentSubJoin != null) {
+            currentSubJoin.close();
+            currentSubJoin = null;
+        }
+        subJoins = null;
+        if (probeOpen) {
+            probe.close();
+            probeOpen = false;
+        }
+        buildStore = null;
+        probeStore = null;
+        buildKeys = null;
+        buildRows = null;
+        head = null;
+        chain = null;
+        buildMatched = null;
+        output = null;
+        if (spillDir != null) {
+            // also deletes the files of the partitions not joined yet
+            spillDir.delete(true);
+            spillDir = null;
+        }
+    }
+
+    /** reads back the tuples of a spilled partition. deletes the file when closed. */
+    private static final class SpillFileScan implements Operator {
+        private final SpillFile file;
+        private final ColumnType[] types;
+        private final int batchSize;
+        private VectorBatch batch;
+
+        SpillFileScan (SpillFile file, ColumnType[] types, int batchSize) {
+            this.file = file;
+            this.types = types;
+            this.batchSize = batchSize;
+        }
+        @Override
+        public ColumnType[] getColumnTypes() {
+            return types;
+        }
+        @Override
+        public void open() throws IOException {
+            batch = new VectorBatch(new TupleBuffer(types, batchSize));
+        }
+        @Override
+        public VectorBatch next() throws IOException {
+            batch.reset();
+            return file.read(batch.getBuffer()) == 0 ? null : batch;
+        }
+        @Override
+        public void close() throws IOException {
+            file.delete();
+            batch = null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+import edu.brown.lasvegas.tuple.TupleReader;
+
+/**
+ * Leaf operator that reads batches of tuples from a {@link TupleReader}.
+ * <p>Predicates and tuple ranges the reader supports natively, such as
+ * {@link edu.brown.lasvegas.tuple.ColumnFileTupleReader#setFilter(int, Comparable, Comparable)},
+ * should be set on the reader before the scan. They skip reading and decompression,
+ * which no operator above the scan can do.</p>
+ */
+public final class ScanOperator implements Operator {
+    /** default number of tuples in each batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1 << 12;
+
+    private final TupleReader reader;
+    private final ColumnType[] types;
+    private final int batchSize;
+    private final boolean useStringArena;
+    private VectorBatch batch;
+
+    /**
+     * @param reader the reader to scan. closed when this operator is closed.
+     * @param batchSize number of tuples in each batch
+     */
+    public ScanOperator (TupleReader reader, int batchSize) {
+        this (reader, batchSize, false);
+    }
+    /**
+     * @param reader the reader to scan. closed when this operator is closed.
+     * @param batchSize number of tuples in each batch
+     * @param useStringArena whether to read VARCHAR/VARBINARY columns into
+     * {@link edu.brown.lasvegas.util.StringArena}s instead of String[]/ByteArray[].
+     * Operators above the scan filter arena columns on their bytes and materialize
+     * only the values they copy out (see {@link VectorUtil#gather(Object, int[], int, Object, int)}).
+     */
+    public ScanOperator (TupleReader reader, int batchSize, boolean useStringArena) {
+        this.reader = reader;
+        this.types = reader.getColumnTypes();
+        this.batchSize = batchSize;
+        this.useStringArena = useStringArena;
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return types;
+    }
+
+    @Override
+    public void open() throws IOException {
+        batch = new VectorBatch(new TupleBuffer(types, batchSize, useStringArena, false));
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        while (true) {
+            batch.reset();
+            int read = reader.nextBatch(batch.getBuffer());
+            if (read < 0) {
+                return null;
+            }
+            if (read > 0) {
+                return batch;
+            }
+            // a filtered reader might return an empty batch. keep reading
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        batch = null;
+    }
+}
@@ -0,0 +1,200 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * ORDER BY on in-memory columns.
+ * <p>The input is materialized, then an int[] of tuple positions is merge-sorted (stable).
+ * Numeric sort keys are first normalized to long values whose signed order is the sort order
+ * (FLOAT/DOUBLE bits are flipped to be comparable as long, descending keys are negated),
+ * so comparisons are on primitive arrays without boxing. VARCHAR/VARBINARY keys are compared
+ * as Comparable with nulls first.</p>
+ * <p>{@link TopNOperator} uses this with a limit.</p>
+ */
+public class SortOperator implements Operator {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final Operator child;
+    private final int[] keyColumns;
+    private final boolean[] descending;
+    private final int limit;
+    private final int batchSize;
+
+    private ColumnStore store;
+    private boolean sorted;
+    private int emitted;
+    private VectorBatch output;
+
+    /** normalized numeric sort keys. [key][tuple]. null for non-numeric keys. */
+    private long[][] normalizedKeys;
+    /** non-numeric sort keys. [key][tuple]. null for numeric keys. */
+    private Comparable<Object>[][] objectKeys;
+
+    /**
+     * @param child the input
+     * @param keyColumns indexes of the sort key columns, most significant first
+     * @param descending whether each key is sorted in descending order. null for all ascending.
+     * @param batchSize number of tuples in each output batch
+     */
+    public SortOperator (Operator child, int[] keyColumns, boolean[] descending, int batchSize) {
+        this (child, keyColumns, descending, -1, batchSize);
+    }
+
+    /**
+     * @param limit maximum number of tuples to output. -1 for no limit.
+     */
+    protected SortOperator (Operator child, int[] keyColumns, boolean[] descending, int limit, int batchSize) {
+        this.child = child;
+        this.keyColumns = keyColumns;
+        this.descending = descending == null ? new boolean[keyColumns.length] : descending;
+        this.limit = limit;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public ColumnType[] getColumnTypes() {
+        return child.getColumnTypes();
+    }
+
+    @Override
+    public void open() throws IOException {
+        child.open();
+        store = new ColumnStore(child.getColumnTypes(), batchSize);
+        sorted = false;
+        emitted = 0;
+    }
+
+    @Override
+    public VectorBatch next() throws IOException {
+        if (!sorted) {
+            for (VectorBatch batch = child.next(); batch != null; batch = child.next()) {
+                store.append(batch);
+                if (limit >= 0 && store.size() > Math.max(limit * 2, batchSize)) {
+                    // keep at most about twice the limit in memory
+                    sortStore(limit);
+                }
+            }
+            sortStore(limit);
+            sorted = true;
+            output = new VectorBatch(new TupleBuffer(child.getColumnTypes(), batchSize));
+        }
+        if (emitted >= store.size()) {
+            return null;
+        }
+        int count = Math.min(batchSize, store.size() - emitted);
+        output.reset();
+        store.copyRange(emitted, count, output.getBuffer(), 0);
+        output.getBuffer().setCount(count);
+        emitted += count;
+        return output;
+    }
+
+    /** sorts the stored tuples and keeps the first maxCount of them (all if negative). */
+    private void sortStore (int maxCount) {
+        int n = store.size();
+        normalizeKeys(n);
+        int[] index = new int[n];
+        for (int i = 0; i < n; ++i) {
+            index[i] = i;
+        }
+        mergeSort(index, new int[n], 0, n);
+        store.retain(index, maxCount >= 0 && maxCount < n ? maxCount : n);
+        normalizedKeys = null;
+        objectKeys = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void normalizeKeys (int n) {
+        ColumnType[] types = store.getColumnTypes();
+        normalizedKeys = new long[keyColumns.length][];
+        objectKeys = new Comparable[keyColumns.length][];
+        for (int k = 0; k < keyColumns.length; ++k) {
+            ColumnType type = types[keyColumns[k]];
+            Object column = store.getColumn(keyColumns[k]);
+            if (!VectorUtil.isNumeric(type)) {
+                objectKeys[k] = (Comparable<Object>[]) column;
+                continue;
+            }
+            long[] keys = new long[n];
+            if (VectorUtil.isFloating(type)) {
+                double[] values = VectorUtil.toDouble(column, null, n, new double[n]);
+                for (int i = 0; i < n; ++i) {
+                    long bits = Double.doubleToLongBits(values[i]);
+                    // negative values have their magnitude bits flipped to sort in signed long order
+                    keys[i] = bits ^ ((bits >> 63) & 0x7FFFFFFFFFFFFFFFL);
+                }
+            } else {
+                System.arraycopy(VectorUtil.toLong(column, null, n, keys), 0, keys, 0, n);
+            }
+            if (descending[k]) {
+                for (int i = 0; i < n; ++i) {
+                    keys[i] = ~keys[i]; // unlike negation, no overflow on MIN_VALUE
+                }
+            }
+            normalizedKeys[k] = keys;
+        }
+    }
+
+    private int compare (int a, int b) {
+        for (int k = 0; k < keyColumns.length; ++k) {
+            long[] keys = normalizedKeys[k];
+            if (keys != null) {
+                if (keys[a] != keys[b]) {
+                    return keys[a] < keys[b] ? -1 : 1;
+                }
+            } else {
+                Comparable<Object> x = objectKeys[k][a], y = objectKeys[k][b];
+                int cmp;
+                if (x == null || y == null) {
+                    cmp = (x == null ? 0 : 1) - (y == null ? 0 : 1);
+                } else {
+                    cmp = x.compareTo(y);
+                }
+                if (cmp != 0) {
+                    return descending[k] ? -cmp : cmp;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** stable merge sort of index[from, to) using tmp of the same size. */
+    private void mergeSort (int[] index, int[] tmp, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; ++i) {
+                int value = index[i];
+                int j = i - 1;
+                for (; j >= from && compare(index[j], value) > 0; --j) {
+                    index[j + 1] = index[j];
+                }
+                index[j + 1] = value;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(index, tmp, from, mid);
+        mergeSort(index, tmp, mid, to);
+        if (compare(index[mid - 1], index[mid]) <= 0) {
+            return; // already in order
+        }
+        System.arraycopy(index, from, tmp, from, to - from);
+        int left = from, right = mid;
+        for (int i = from; i < to; ++i) {
+            if (right >= to || (left < mid && compare(tmp[left], tmp[right]) <= 0)) {
+                index[i] = tmp[left++];
+            } else {
+                index[i] = tmp[right++];
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        child.close();
+        store = null;
+        output = null;
+    }
+}
@@ -0,0 +1,229 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * A temporary file to which an operator spills tuples when they don't fit in its memory budget.
+ * <p>Tuples are appended in chunks of at most chunkSize tuples, each of which is written column by column,
+ * and then read back chunk by chunk into a {@link TupleBuffer} of the same types.
+ * All column arrays of {@link TupleBuffer} without string arenas are supported.</p>
+ */
+final class SpillFile {
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private final VirtualFile file;
+    private final ColumnType[] types;
+    private final int chunkSize;
+    private DataOutputStream out;
+    /** to copy out values of StringArena columns. */
+    private byte[] byteScratch;
+    private DataInputStream in;
+    private int chunks;
+    private int chunksRead;
+    private long tupleCount;
+
+    /**
+     * @param file the file to write. overwritten if exists.
+     * @param types the types of the columns
+     * @param chunkSize maximum number of tuples in each chunk, which must fit in the buffer to read
+     */
+    SpillFile (VirtualFile file, ColumnType[] types, int chunkSize) {
+        this.file = file;
+        this.types = types;
+        this.chunkSize = chunkSize;
+    }
+
+    /** returns the number of tuples written so far. */
+    long getTupleCount () {
+        return tupleCount;
+    }
+
+    /**
+     * Appends the tuples at rows[rowsOff] to rows[rowsOff + count - 1].
+     * @param columns the column arrays, one for each type
+     */
+    void write (Object[] columns, int[] rows, int rowsOff, int count) throws IOException {
+        assert (columns.length == types.length);
+        assert (in == null);
+        if (count == 0) {
+            return;
+        }
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(file.getOutputStream(), STREAM_BUFFER_SIZE));
+        }
+        for (int chunkOff = 0; chunkOff < count; chunkOff += chunkSize) {
+            int chunkCount = Math.min(chunkSize, count - chunkOff);
+            int from = rowsOff + chunkOff;
+            out.writeInt(chunkCount);
+            for (int c = 0; c < columns.length; ++c) {
+                writeColumn(columns[c], rows, from, chunkCount);
+            }
+            ++chunks;
+            tupleCount += chunkCount;
+        }
+    }
+
+    private void writeColumn (Object column, int[] rows, int from, int count) throws IOException {
+        final int to = from + count;
+        if (column instanceof long[]) {
+            long[] values = (long[]) column;
+            for (int i = from; i < to; ++i) {
+                out.writeLong(values[rows[i]]);
+            }
+        } else if (column instanceof int[]) {
+            int[] values = (int[]) column;
+            for (int i = from; i < to; ++i) {
+                out.writeInt(values[rows[i]]);
+            }
+        } else if (column instanceof short[]) {
+            short[] values = (short[]) column;
+            for (int i = from; i < to; ++i) {
+                out.writeShort(values[rows[i]]);
+            }
+        } else if (column instanceof byte[]) {
+            byte[] values = (byte[]) column;
+            for (int i = from; i < to; ++i) {
+                out.writeByte(values[rows[i]]);
+            }
+        } else if (column instanceof double[]) {
+            double[] values = (double[]) column;
+            for (int i = from; i < to; ++i) {
+                out.writeDouble(values[rows[i]]);
+            }
+        } else if (column instanceof float[]) {
+            float[] values = (float[]) column;
+            for (int i = from; i < to; ++i) {
+                out.writeFloat(values[rows[i]]);
+            }
+        } else if (column instanceof Object[]) {
+            Object[] values = (Object[]) column;
+            for (int i = from; i < to; ++i) {
+                Object value = values[rows[i]];
+                byte[] bytes;
+                if (value == null) {
+                    bytes = null;
+                } else if (value instanceof ByteArray) {
+                    bytes = ((ByteArray) value).getBytes();
+                } else {
+                    bytes = ((String) value).getBytes("UTF-8");
+                }
+                if (bytes == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        } else if (column instanceof StringArena) {
+            StringArena values = (StringArena) column;
+            for (int i = from; i < to; ++i) {
+                int length = values.getLength(rows[i]);
+                if (byteScratch == null || byteScratch.length < length) {
+                    byteScratch = new byte[Math.max(length, 256)];
+                }
+                values.copyTo(rows[i], byteScratch, 0);
+                out.writeInt(length);
+                out.write(byteScratch, 0, length);
+            }
+        } else {
+            throw new IllegalArgumentException ("unsupported column array to spill:" + column);
+        }
+    }
+
+    /** finishes writing. Must be called before reading. */
+    void finishWriting () throws IOException {
+        if (out != null) {
+            out.flush();
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Reads the next chunk into the buffer.
+     * @return the number of tuples read, 0 if no more
+     */
+    int read (TupleBuffer buffer) throws IOException {
+        assert (out == null);
+        assert (buffer.getBufferSize() >= chunkSize);
+        if (chunksRead >= chunks) {
+            return 0;
+        }
+        if (in == null) {
+            in = new DataInputStream(new BufferedInputStream(file.getInputStream(), STREAM_BUFFER_SIZE));
+        }
+        int count = in.readInt();
+        for (int c = 0; c < types.length; ++c) {
+            Object column = buffer.getColumnBuffer(c);
+            if (column instanceof long[]) {
+                long[] values = (long[]) column;
+                for (int i = 0; i < count; ++i) {
+                    values[i] = in.readLong();
+                }
+            } else if (column instanceof int[]) {
+                int[] values = (int[]) column;
+                for (int i = 0; i < count; ++i) {
+                    values[i] = in.readInt();
+                }
+            } else if (column instanceof short[]) {
+                short[] values = (short[]) column;
+                for (int i = 0; i < count; ++i) {
+                    values[i] = in.readShort();
+                }
+            } else if (column instanceof byte[]) {
+                in.readFully((byte[]) column, 0, count);
+            } else if (column instanceof double[]) {
+                double[] values = (double[]) column;
+                for (int i = 0; i < count; ++i) {
+                    values[i] = in.readDouble();
+                }
+            } else if (column instanceof float[]) {
+                float[] values = (float[]) column;
+                for (int i = 0; i < count; ++i) {
+                    values[i] = in.readFloat();
+                }
+            } else {
+                Object[] values = (Object[]) column;
+                boolean binary = types[c] == ColumnType.VARBINARY;
+                for (int i = 0; i < count; ++i) {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        values[i] = null;
+                        continue;
+                    }
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    values[i] = binary ? new ByteArray(bytes) : new String(bytes, "UTF-8");
+                }
+            }
+        }
+        ++chunksRead;
+        buffer.setCount(count);
+        return count;
+    }
+
+    /** closes the streams and deletes the file. */
+    void delete () throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package edu.brown.lasvegas.qe.operator;
+
+/**
+ * ORDER BY ... LIMIT n.
+ * Same as {@link SortOperator} except that the materialized input is sorted and cut
+ * down to n tuples whenever it grows beyond about 2n, so memory stays proportional to n.
+ */
+public final class TopNOperator extends SortOperator {
+    /**
+     * @param child the input
+     * @param keyColumns indexes of the sort key columns, most significant first
+     * @param descending whether each key is sorted in descending order. null for all ascending.
+     * @param limit number of tuples to output
+     * @param batchSize number of tuples in each output batch
+     */
+    public TopNOperator (Operator child, int[] keyColumns, boolean[] descending, int limit, int batchSize) {
+        super (child, keyColumns, descending, checkLimit(limit), batchSize);
+    }
+    private static int checkLimit (int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException ("negative limit: " + limit);
+        }
+        return limit;
+    }
+}
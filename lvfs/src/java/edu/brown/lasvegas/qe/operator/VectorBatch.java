@@ -0,0 +1,69 @@
+package edu.brown.lasvegas.qe.operator;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * A batch of tuples passed between operators.
+ * <p>The column values are the arrays of the underlying {@link TupleBuffer}.
+ * Filters don't move values but set a selection vector, which lists the positions
+ * of the live tuples in ascending order. Without a selection vector, all tuples
+ * in the buffer are live.</p>
+ * <p>A batch returned by {@link Operator#next()} is valid only until the next call.</p>
+ */
+public final class VectorBatch {
+    private final TupleBuffer buffer;
+    private int[] selection;
+    private int selectedCount;
+
+    public VectorBatch (TupleBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** returns the underlying buffer. */
+    public TupleBuffer getBuffer () {
+        return buffer;
+    }
+    /** returns the number of columns. */
+    public int getColumnCount () {
+        return buffer.getColumnCount();
+    }
+    /** returns the value type of each column. */
+    public ColumnType[] getColumnTypes () {
+        return buffer.getColumnTypes();
+    }
+    /** returns the values of the column, indexed by tuple position (not by live tuple). */
+    public Object getColumn (int col) {
+        return buffer.getColumnBuffer(col);
+    }
+
+    /** returns the number of live tuples. */
+    public int size () {
+        return selection == null ? buffer.getCount() : selectedCount;
+    }
+    /** returns the selection vector. null if all tuples are live. */
+    public int[] getSelection () {
+        return selection;
+    }
+    /**
+     * Sets the selection vector.
+     * @param selection positions of live tuples in ascending order. null to make all tuples live.
+     * @param count number of live tuples
+     */
+    public void setSelection (int[] selection, int count) {
+        this.selection = selection;
+        this.selectedCount = count;
+    }
+
+    /** empties this batch for next use. */
+    public void reset () {
+        buffer.resetCount();
+        selection = null;
+        selectedCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "VectorBatch (size=" + size() + ", bufferCount=" + buffer.getCount() + (selection == null ? "" : ", selected") + ")";
+    }
+}
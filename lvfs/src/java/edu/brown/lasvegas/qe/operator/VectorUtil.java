@@ -0,0 +1,257 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.lang.reflect.Array;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Type-specialized loops over the column arrays shared by operators.
+ * Each method dispatches on the array type once and then runs a tight loop.
+ * The array type of each {@link ColumnType} is the same as {@link edu.brown.lasvegas.tuple.TupleBuffer}.
+ */
+final class VectorUtil {
+    private VectorUtil() {}
+
+    /** creates an array to hold values of the given type, as TupleBuffer does. */
+    static Object createArray (ColumnType type, int size) {
+        switch (type) {
+        case BIGINT:
+        case DATE:
+        case TIME:
+        case TIMESTAMP:
+            return new long[size];
+        case INTEGER:
+            return new int[size];
+        case SMALLINT:
+            return new short[size];
+        case BOOLEAN:
+        case TINYINT:
+            return new byte[size];
+        case FLOAT:
+            return new float[size];
+        case DOUBLE:
+            return new double[size];
+        case VARCHAR:
+            return new String[size];
+        case VARBINARY:
+            return new ByteArray[size];
+        default:
+            throw new IllegalArgumentException ("unexpected column type:" + type);
+        }
+    }
+
+    /** returns a larger copy of the given array. */
+    static Object growArray (Object array, int newSize) {
+        Object newArray = Array.newInstance(array.getClass().getComponentType(), newSize);
+        System.arraycopy(array, 0, newArray, 0, Array.getLength(array));
+        return newArray;
+    }
+
+    /** returns whether the values of the type are FLOAT or DOUBLE. */
+    static boolean isFloating (ColumnType type) {
+        return type == ColumnType.FLOAT || type == ColumnType.DOUBLE;
+    }
+    /** returns whether the values of the type are stored as integers (including dates and booleans). */
+    static boolean isIntegral (ColumnType type) {
+        switch (type) {
+        case BIGINT:
+        case DATE:
+        case TIME:
+        case TIMESTAMP:
+        case INTEGER:
+        case SMALLINT:
+        case BOOLEAN:
+        case TINYINT:
+            return true;
+        default:
+            return false;
+        }
+    }
+    /** returns whether the values of the type are numbers (integral or floating). */
+    static boolean isNumeric (ColumnType type) {
+        return isIntegral(type) || isFloating(type);
+    }
+
+    /**
+     * Copies src[rows[i]] (or src[i] if rows is null) for i in [0, count) to dest[destOff + i].
+     * src and dest must be arrays of the same type, except that a VARCHAR/VARBINARY src
+     * can be a {@link StringArena}. Its values are appended to a dest arena
+     * (which must have destOff values) or materialized into a String[]/ByteArray[] dest.
+     */
+    static void gather (Object src, int[] rows, int count, Object dest, int destOff) {
+        if (src instanceof StringArena) {
+            gatherArena ((StringArena) src, rows, count, dest, destOff);
+        } else if (rows == null) {
+            System.arraycopy(src, 0, dest, destOff, count);
+        } else if (src instanceof long[]) {
+            long[] s = (long[]) src;
+            long[] d = (long[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        } else if (src instanceof int[]) {
+            int[] s = (int[]) src;
+            int[] d = (int[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        } else if (src instanceof double[]) {
+            double[] s = (double[]) src;
+            double[] d = (double[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        } else if (src instanceof float[]) {
+            float[] s = (float[]) src;
+            float[] d = (float[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        } else if (src instanceof short[]) {
+            short[] s = (short[]) src;
+            short[] d = (short[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        } else if (src instanceof byte[]) {
+            byte[] s = (byte[]) src;
+            byte[] d = (byte[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        } else {
+            Object[] s = (Object[]) src;
+            Object[] d = (Object[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = s[rows[i]];
+            }
+        }
+    }
+
+    private static void gatherArena (StringArena src, int[] rows, int count, Object dest, int destOff) {
+        if (dest instanceof StringArena) {
+            StringArena d = (StringArena) dest;
+            assert (d.size() == destOff);
+            for (int i = 0; i < count; ++i) {
+                d.append(src, rows == null ? i : rows[i]);
+            }
+        } else if (dest instanceof String[]) {
+            String[] d = (String[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = src.getString(rows == null ? i : rows[i]);
+            }
+        } else {
+            ByteArray[] d = (ByteArray[]) dest;
+            for (int i = 0; i < count; ++i) {
+                d[destOff + i] = src.getByteArray(rows == null ? i : rows[i]);
+            }
+        }
+    }
+
+    /**
+     * Converts the values at the given positions of an integral or floating array to long.
+     * @param rows positions to convert. null to convert [0, count).
+     * @param scratch array to store the result, at least count elements
+     * @return scratch, or src itself if it's already a long[] and rows is null
+     */
+    static long[] toLong (Object src, int[] rows, int count, long[] scratch) {
+        if (src instanceof long[]) {
+            long[] s = (long[]) src;
+            if (rows == null) {
+                return s;
+            }
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows[i]];
+            }
+        } else if (src instanceof int[]) {
+            int[] s = (int[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof short[]) {
+            short[] s = (short[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof byte[]) {
+            byte[] s = (byte[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof double[]) {
+            double[] s = (double[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = (long) s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof float[]) {
+            float[] s = (float[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = (long) s[rows == null ? i : rows[i]];
+            }
+        } else {
+            throw new IllegalArgumentException ("not a numeric array:" + src.getClass());
+        }
+        return scratch;
+    }
+
+    /**
+     * Converts the values at the given positions of an integral or floating array to double.
+     * @param rows positions to convert. null to convert [0, count).
+     * @param scratch array to store the result, at least count elements
+     * @return scratch, or src itself if it's already a double[] and rows is null
+     */
+    static double[] toDouble (Object src, int[] rows, int count, double[] scratch) {
+        if (src instanceof double[]) {
+            double[] s = (double[]) src;
+            if (rows == null) {
+                return s;
+            }
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows[i]];
+            }
+        } else if (src instanceof float[]) {
+            float[] s = (float[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof long[]) {
+            long[] s = (long[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof int[]) {
+            int[] s = (int[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof short[]) {
+            short[] s = (short[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else if (src instanceof byte[]) {
+            byte[] s = (byte[]) src;
+            for (int i = 0; i < count; ++i) {
+                scratch[i] = s[rows == null ? i : rows[i]];
+            }
+        } else {
+            throw new IllegalArgumentException ("not a numeric array:" + src.getClass());
+        }
+        return scratch;
+    }
+
+    /** returns a scratch array of at least the given size, reusing the given one if large enough. */
+    static long[] ensure (long[] array, int size) {
+        return array != null && array.length >= size ? array : new long[size];
+    }
+    /** returns a scratch array of at least the given size, reusing the given one if large enough. */
+    static double[] ensure (double[] array, int size) {
+        return array != null && array.length >= size ? array : new double[size];
+    }
+    /** returns a scratch array of at least the given size, reusing the given one if large enough. */
+    static int[] ensure (int[] array, int size) {
+        return array != null && array.length >= size ? array : new int[size];
+    }
+}
@@ -222,6 +222,28 @@ public final class BigintValueTraits implements FixLenValueTraits<Long, long[]>
         return finalDictionary;
     }
 
+    @Override
+    public void updateMinMax(long[] values, int off, int len, long[] minMax, boolean empty) {
+        if (len <= 0) return;
+        long min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (values[i] < min) {
+                min = values[i];
+            }
+            if (values[i] > max) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public Long minValue() {
     	return Long.MIN_VALUE;
@@ -223,6 +223,29 @@ public final class DoubleValueTraits implements FixLenValueTraits<Double, double
         return finalDictionary;
     }
     
+    @Override
+    public void updateMinMax(double[] values, int off, int len, double[] minMax, boolean empty) {
+        if (len <= 0) return;
+        double min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        // compare() instead of operators to be consistent with compareTo() for NaN and -0
+        for (int i = off; i < off + len; ++i) {
+            if (Double.compare(values[i], min) < 0) {
+                min = values[i];
+            }
+            if (Double.compare(values[i], max) > 0) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public Double minValue() {
     	return Double.MIN_VALUE;
@@ -223,6 +223,29 @@ public final class FloatValueTraits implements FixLenValueTraits<Float, float[]>
         return finalDictionary;
     }
     
+    @Override
+    public void updateMinMax(float[] values, int off, int len, float[] minMax, boolean empty) {
+        if (len <= 0) return;
+        float min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        // compare() instead of operators to be consistent with compareTo() for NaN and -0
+        for (int i = off; i < off + len; ++i) {
+            if (Float.compare(values[i], min) < 0) {
+                min = values[i];
+            }
+            if (Float.compare(values[i], max) > 0) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public Float minValue() {
     	return Float.MIN_VALUE;
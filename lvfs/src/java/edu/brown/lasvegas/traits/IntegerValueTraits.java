@@ -223,6 +223,28 @@ public final class IntegerValueTraits implements FixLenValueTraits<Integer, int[
         return finalDictionary;
     }
     @Override
+    public void updateMinMax(int[] values, int off, int len, int[] minMax, boolean empty) {
+        if (len <= 0) return;
+        int min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (values[i] < min) {
+                min = values[i];
+            }
+            if (values[i] > max) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
+    @Override
     public Integer minValue() {
     	return Integer.MIN_VALUE;
     }
@@ -222,6 +222,28 @@ public final class SmallintValueTraits implements FixLenValueTraits<Short, short
         return finalDictionary;
     }
     
+    @Override
+    public void updateMinMax(short[] values, int off, int len, short[] minMax, boolean empty) {
+        if (len <= 0) return;
+        short min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (values[i] < min) {
+                min = values[i];
+            }
+            if (values[i] > max) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public Short minValue() {
     	return Short.MIN_VALUE;
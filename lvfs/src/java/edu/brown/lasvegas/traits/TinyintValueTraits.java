@@ -219,6 +219,28 @@ public final class TinyintValueTraits implements FixLenValueTraits<Byte, byte[]>
         return finalDictionary;
     }
     
+    @Override
+    public void updateMinMax(byte[] values, int off, int len, byte[] minMax, boolean empty) {
+        if (len <= 0) return;
+        byte min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (values[i] < min) {
+                min = values[i];
+            }
+            if (values[i] > max) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public Byte minValue() {
     	return Byte.MIN_VALUE;
@@ -173,6 +173,18 @@ public interface ValueTraits<T extends Comparable<T>, AT> {
      */
     AT mergeDictionary (AT[] arrays, int[][] conversions);
     
+    /**
+     * Scans the values and updates the minimum and maximum values among them.
+     * Used to build zone maps ({@link edu.brown.lasvegas.lvfs.ZoneMap}) without boxing each value.
+     * The order is same as {@link Comparable#compareTo(Object)} of the value type.
+     * @param values the values to scan
+     * @param off offset of the values
+     * @param len number of values to scan
+     * @param minMax array of two elements. [0] is the minimum and [1] is the maximum value so far.
+     * @param empty whether no value has been scanned so far. if true, the current content of minMax is ignored.
+     */
+    void updateMinMax (AT values, int off, int len, AT minMax, boolean empty);
+
     /**
      * Returns the minimal possible value for this value type.
      */
@@ -1,5 +1,10 @@
 package edu.brown.lasvegas.traits;
 
+import java.io.IOException;
+
+import edu.brown.lasvegas.lvfs.RawValueReader;
+import edu.brown.lasvegas.lvfs.RawValueWriter;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Functor to read/write variable-length java objects.
@@ -7,4 +12,23 @@ package edu.brown.lasvegas.traits;
  * the implementation will be anyway just a loop.
  */
 public interface VarLenValueTraits<T extends Comparable<T>> extends ValueTraits<T, T[]> {
+    /**
+     * Reads a value and appends its bytes to the arena without materializing a java object.
+     */
+    void readValue (RawValueReader reader, StringArena dest) throws IOException;
+
+    /**
+     * Writes the index-th value in the arena. Same format as {@link #writeValue(RawValueWriter, Object)}.
+     */
+    void writeValue (RawValueWriter writer, StringArena values, int index) throws IOException;
+
+    /**
+     * Returns the value stored in the given bytes (without length header).
+     */
+    T fromBytes (byte[] buf, int off, int len);
+
+    /**
+     * Returns the bytes to store the value (without length header). Inverse of {@link #fromBytes(byte[], int, int)}.
+     */
+    byte[] toBytes (T value);
 }
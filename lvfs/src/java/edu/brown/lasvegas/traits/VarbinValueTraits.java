@@ -12,6 +12,7 @@ import edu.brown.lasvegas.lvfs.TypedRLEWriter;
 import edu.brown.lasvegas.lvfs.ValueRun;
 import edu.brown.lasvegas.util.ByteArray;
 import edu.brown.lasvegas.util.KeyValueArrays;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Traits for variable-length binary data (ByteArray).
@@ -26,6 +27,22 @@ public final class VarbinValueTraits implements VarLenValueTraits<ByteArray> {
         writer.writeBytesWithLengthHeader(value.getBytes());
     }
     @Override
+    public void readValue(RawValueReader reader, StringArena dest) throws IOException {
+        dest.appendWithLengthHeader(reader);
+    }
+    @Override
+    public void writeValue(RawValueWriter writer, StringArena values, int index) throws IOException {
+        values.writeWithLengthHeader(index, writer);
+    }
+    @Override
+    public ByteArray fromBytes(byte[] buf, int off, int len) {
+        return new ByteArray(Arrays.copyOfRange(buf, off, off + len));
+    }
+    @Override
+    public byte[] toBytes(ByteArray value) {
+        return value.getBytes();
+    }
+    @Override
     public void writeRunLengthes(TypedRLEWriter<ByteArray, ByteArray[]> writer, ByteArray[] values, int off, int len) throws IOException {
         ValueRun<ByteArray> cur = writer.getCurrentRun();
         ByteArray curValue = cur.value;
@@ -260,6 +277,28 @@ public final class VarbinValueTraits implements VarLenValueTraits<ByteArray> {
         return finalDictionary;
     }
     
+    @Override
+    public void updateMinMax(ByteArray[] values, int off, int len, ByteArray[] minMax, boolean empty) {
+        if (len <= 0) return;
+        ByteArray min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (values[i].compareTo(min) < 0) {
+                min = values[i];
+            }
+            if (values[i].compareTo(max) > 0) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public ByteArray minValue() {
     	return new ByteArray(new byte[0]);
@@ -12,6 +12,7 @@ import edu.brown.lasvegas.lvfs.RawValueWriter;
 import edu.brown.lasvegas.lvfs.TypedRLEWriter;
 import edu.brown.lasvegas.lvfs.ValueRun;
 import edu.brown.lasvegas.util.KeyValueArrays;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Traits for variable-length char (java-String).
@@ -26,6 +27,22 @@ public final class VarcharValueTraits implements VarLenValueTraits<String> {
         writer.writeBytesWithLengthHeader(value.getBytes(RawValueWriter.CHARSET));
     }
     @Override
+    public void readValue(RawValueReader reader, StringArena dest) throws IOException {
+        dest.appendWithLengthHeader(reader);
+    }
+    @Override
+    public void writeValue(RawValueWriter writer, StringArena values, int index) throws IOException {
+        values.writeWithLengthHeader(index, writer);
+    }
+    @Override
+    public String fromBytes(byte[] buf, int off, int len) {
+        return new String(buf, off, len, RawValueReader.CHARSET);
+    }
+    @Override
+    public byte[] toBytes(String value) {
+        return value.getBytes(RawValueWriter.CHARSET);
+    }
+    @Override
     public void writeRunLengthes(TypedRLEWriter<String, String[]> writer, String[] values, int off, int len) throws IOException {
         ValueRun<String> cur = writer.getCurrentRun();
         String curValue = cur.value;
@@ -281,6 +298,28 @@ public final class VarcharValueTraits implements VarLenValueTraits<String> {
         return finalDictionary;
     }
     
+    @Override
+    public void updateMinMax(String[] values, int off, int len, String[] minMax, boolean empty) {
+        if (len <= 0) return;
+        String min, max;
+        if (empty) {
+            min = values[off];
+            max = values[off];
+        } else {
+            min = minMax[0];
+            max = minMax[1];
+        }
+        for (int i = off; i < off + len; ++i) {
+            if (values[i].compareTo(min) < 0) {
+                min = values[i];
+            }
+            if (values[i].compareTo(max) > 0) {
+                max = values[i];
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
     @Override
     public String minValue() {
     	return "";
@@ -8,13 +8,22 @@ import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.ColumnFileWriterBundle;
+import edu.brown.lasvegas.lvfs.TypedArenaWriter;
 import edu.brown.lasvegas.lvfs.TypedWriter;
 import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.local.LocalWriteBehind;
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Buffered implementation of TupleWriter.
  * This implementation always outputs the resulting files
  * to the local file system.
+ * 
+ * If the reader is a {@link TupleArenaReader} (e.g., text files), VARCHAR/VARBINARY values
+ * are buffered in {@link StringArena}s and written by {@link TypedArenaWriter}s without
+ * creating String objects. Writers that need objects (e.g., dictionary compression)
+ * receive values materialized from the arena.
  */
 public class BufferedTupleWriter implements TupleWriter {
     private static Logger LOG = Logger.getLogger(BufferedTupleWriter.class);
@@ -45,7 +54,7 @@ public class BufferedTupleWriter implements TupleWriter {
         this.columnTypes = reader.getColumnTypes();
         this.compressionTypes = compressionTypes;
         this.columnCount = columnTypes.length;
-        this.buffer = new TupleBuffer(columnTypes, bufferSize);
+        this.buffer = new TupleBuffer(columnTypes, bufferSize, reader instanceof TupleArenaReader, false);
         this.reader = reader;
         this.callback = callback;
         this.columnWriters = new ColumnFileWriterBundle[columnCount];
@@ -82,6 +91,36 @@ public class BufferedTupleWriter implements TupleWriter {
     
     private int tuplesWritten = 0;
 
+    /**
+     * Makes the column writers output Bloom filter files for the specified columns.
+     * Must be called before {@link #appendAllTuples()}. Columns whose compression type
+     * doesn't support Bloom filters are silently ignored.
+     * @param bloomFilterColumns whether to build a Bloom filter for each column
+     */
+    public void setBloomFilterColumns (boolean[] bloomFilterColumns) {
+        if (bloomFilterColumns.length != columnCount) {
+            throw new IllegalArgumentException("length of bloomFilterColumns doesn't match");
+        }
+        assert (tuplesWritten == 0);
+        for (int i = 0; i < columnCount; ++i) {
+            if (bloomFilterColumns[i]) {
+                columnWriters[i].enableBloomFilter();
+            }
+        }
+    }
+
+    /**
+     * Makes the column writers write out their files in background threads of the given pool
+     * while this writer fills the next buffers. Must be called before {@link #appendAllTuples()}.
+     * @param writeBehind thread pool to write out buffers. null to keep synchronous writes.
+     */
+    public void setWriteBehind (LocalWriteBehind writeBehind) {
+        assert (tuplesWritten == 0);
+        for (int i = 0; i < columnCount; ++i) {
+            columnWriters[i].setWriteBehind(writeBehind);
+        }
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     public int appendAllTuples() throws IOException {
@@ -97,7 +136,16 @@ public class BufferedTupleWriter implements TupleWriter {
             }
             for (int i = 0; i < columnCount; ++i) {
                 Object columnData = buffer.getColumnBuffer(i);
-                ((TypedWriter) columnWriters[i].getDataWriter()).writeValues(columnData, 0, read);
+                TypedWriter dataWriter = columnWriters[i].getDataWriter();
+                if (columnData instanceof StringArena) {
+                    StringArena arena = (StringArena) columnData;
+                    if (dataWriter instanceof TypedArenaWriter) {
+                        ((TypedArenaWriter) dataWriter).writeValues(arena, 0, read);
+                        continue;
+                    }
+                    columnData = materialize(i, arena, read);
+                }
+                dataWriter.writeValues(columnData, 0, read);
             }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("wrote " + read + " tuples to " + columnCount + " column files.");
@@ -115,6 +163,22 @@ public class BufferedTupleWriter implements TupleWriter {
         return tuplesWritten;
     }
 
+    /** scratch arrays to materialize values in StringArena for writers that don't support it. */
+    private Object[][] materializeBuffers;
+    private Object[] materialize (int col, StringArena arena, int count) {
+        if (materializeBuffers == null) {
+            materializeBuffers = new Object[columnCount][];
+        }
+        if (materializeBuffers[col] == null) {
+            materializeBuffers[col] = columnTypes[col] == ColumnType.VARCHAR ? new String[buffer.getBufferSize()] : new ByteArray[buffer.getBufferSize()];
+        }
+        Object[] values = materializeBuffers[col];
+        for (int i = 0; i < count; ++i) {
+            values[i] = columnTypes[col] == ColumnType.VARCHAR ? arena.getString(i) : arena.getByteArray(i);
+        }
+        return values;
+    }
+
     @Override
     public ColumnFileBundle[] finish() throws IOException {
         ColumnFileBundle[] fileBundles = new ColumnFileBundle[columnCount];
@@ -134,6 +198,8 @@ public class BufferedTupleWriter implements TupleWriter {
             bundle.setSorted(false);
             bundle.setTupleCount(tuplesWritten);
             bundle.setUncompressedSizeKB(writer.getUncompressedSizeKB());
+            bundle.setZoneMapFile(writer.getZoneMapFile());
+            bundle.setBloomFilterFile(writer.getBloomFilterFile());
             // bundle.setValueFile(writer.getValueFile()); because BufferedTupleWriter sequentially writes, it never outputs a value index file
             fileBundles[i] = bundle;
         }
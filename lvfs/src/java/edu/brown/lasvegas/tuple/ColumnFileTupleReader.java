@@ -4,12 +4,22 @@ import java.io.IOException;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.DictionaryPredicate;
+import edu.brown.lasvegas.lvfs.OrderedDictionary;
+import edu.brown.lasvegas.lvfs.RangePredicate;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.TypedDictReader;
 import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.local.LocalBlockCache;
+import edu.brown.lasvegas.lvfs.local.LocalBlockReadAhead;
 import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Implementation of {@link TupleReader} backed by columnar files.
@@ -18,6 +28,13 @@ import edu.brown.lasvegas.util.ByteArray;
  * Hence, directly using the raw column file readers is sometimes beneficial for the best performance.
  * 
  * Anyways, use {@link #nextBatch(TupleBuffer)} for better performance.
+ * 
+ * To skip tuples that can't satisfy a range predicate, call {@link #restrictToRange(int, Comparable, Comparable)}
+ * before reading. The predicate still has to be evaluated on the returned tuples.
+ * 
+ * Alternatively, {@link #setFilter(int, Comparable, Comparable)} makes this reader evaluate the predicate by itself
+ * (late materialization). It reads the predicate column first and reads the other columns
+ * only at the positions that satisfy the predicate.
  */
 public final class ColumnFileTupleReader implements TupleReader {
     private final int columnCount;
@@ -30,10 +47,39 @@ public final class ColumnFileTupleReader implements TupleReader {
 
     private final int tupleCount;
     private int nextTuplePos;
+
+    /** tuple ranges to read. null to read all tuples. */
+    private List<TupleRange> tupleRanges;
+    /** index of the current range in tupleRanges. */
+    private int currentRange;
+    /** the end of the current range (exclusive). */
+    private int currentRangeEnd;
     
     /** for non-buffered read. */
     private final Object[] currentTuple;
 
+    /** the column to evaluate the filter on. -1 if no filter is set. */
+    private int filterColumn = -1;
+    /** the filter evaluated on de-compressed values. null if the filter column is dictionary-encoded. */
+    private RangePredicate filterRange;
+    /** the filter translated into dictionary codes. null if the filter column is not dictionary-encoded. */
+    private DictionaryPredicate filterCodes;
+    /** the dictionary of the filter column. null if the filter column is not dictionary-encoded. */
+    @SuppressWarnings("rawtypes")
+    private OrderedDictionary filterDict;
+    /** reads the filter column. the compressed reader if it's dictionary-encoded. */
+    @SuppressWarnings("rawtypes")
+    private TypedReader filterReader;
+    /** readers for the other columns, which are read only at the selected positions. null for the filter column. */
+    @SuppressWarnings("rawtypes")
+    private TypedReader[] lateReaders;
+    /** reused buffer to receive the values of the filter column. */
+    private Object filterValues;
+    /** reused buffer for the positions that satisfy the filter. */
+    private int[] selection;
+    /** the tuple the readers in lateReaders are at. they lag behind nextTuplePos. */
+    private int lateTuplePos;
+
     public ColumnFileTupleReader (ColumnFileBundle[] files) throws IOException {
         this (files, 1 << 16);
     }
@@ -41,6 +87,34 @@ public final class ColumnFileTupleReader implements TupleReader {
      * @param streamBufferSize buffer size for each underlying columnar file.
      */
     public ColumnFileTupleReader (ColumnFileBundle[] files, int streamBufferSize) throws IOException {
+        this (files, streamBufferSize, false);
+    }
+    /**
+     * @param streamBufferSize buffer size for each underlying columnar file.
+     * @param memoryMapped whether to read the columnar files via memory-mapped buffer.
+     * See {@link ColumnFileReaderBundle#ColumnFileReaderBundle(ColumnFileBundle, int, boolean)}.
+     */
+    public ColumnFileTupleReader (ColumnFileBundle[] files, int streamBufferSize, boolean memoryMapped) throws IOException {
+        this (files, streamBufferSize, memoryMapped, null);
+    }
+    /**
+     * @param streamBufferSize buffer size for each underlying columnar file.
+     * @param memoryMapped whether to read the columnar files via memory-mapped buffer.
+     * @param blockReadAhead thread pool to read ahead blocks of block-compressed files. null to disable read-ahead.
+     * See {@link ColumnFileReaderBundle#setBlockReadAhead(LocalBlockReadAhead)}.
+     */
+    public ColumnFileTupleReader (ColumnFileBundle[] files, int streamBufferSize, boolean memoryMapped, LocalBlockReadAhead blockReadAhead) throws IOException {
+        this (files, streamBufferSize, memoryMapped, blockReadAhead, null);
+    }
+    /**
+     * @param streamBufferSize buffer size for each underlying columnar file.
+     * @param memoryMapped whether to read the columnar files via memory-mapped buffer.
+     * @param blockReadAhead thread pool to read ahead blocks of block-compressed files. null to disable read-ahead.
+     * @param blockCache node-wide cache of decompressed blocks. null to disable caching.
+     * See {@link ColumnFileReaderBundle#setBlockCache(LocalBlockCache)}.
+     */
+    public ColumnFileTupleReader (ColumnFileBundle[] files, int streamBufferSize, boolean memoryMapped,
+                    LocalBlockReadAhead blockReadAhead, LocalBlockCache blockCache) throws IOException {
         this.columnCount = files.length;
         this.readerBundles = new ColumnFileReaderBundle[columnCount];
         this.dataReaders = new TypedReader[columnCount];
@@ -48,10 +122,13 @@ public final class ColumnFileTupleReader implements TupleReader {
         this.currentTuple = new Object[columnCount];
         this.tupleCount = files[0].getTupleCount();
         this.nextTuplePos = 0;
+        this.currentRangeEnd = tupleCount;
         for (int i = 0; i < columnCount; ++i) {
             assert (tupleCount == files[i].getTupleCount());
             columnTypes[i] = files[i].getColumnType();
-            readerBundles[i] = new ColumnFileReaderBundle(files[i], streamBufferSize);
+            readerBundles[i] = new ColumnFileReaderBundle(files[i], streamBufferSize, memoryMapped);
+            readerBundles[i].setBlockCache(blockCache);
+            readerBundles[i].setBlockReadAhead(blockReadAhead);
             dataReaders[i] = readerBundles[i].getDataReader();
         }
     }
@@ -61,6 +138,113 @@ public final class ColumnFileTupleReader implements TupleReader {
         return tupleCount;
     }
 
+    /**
+     * Restricts the tuples to read to the given ranges.
+     * This method has to be called before reading any tuple.
+     * @param tupleRanges tuple ranges in ascending order without overlaps.
+     */
+    public void setTupleRanges (List<TupleRange> tupleRanges) throws IOException {
+        if (nextTuplePos != 0) {
+            throw new IllegalStateException ("tuple ranges must be set before reading tuples");
+        }
+        for (int i = 0; i < columnCount; ++i) {
+            // seeking in some file types needs position index
+            readerBundles[i].getPositionIndex();
+        }
+        this.tupleRanges = tupleRanges;
+        this.currentRange = -1;
+        this.currentRangeEnd = 0;
+    }
+
+    /**
+     * Skips zones of tuples whose values in the given column can't be between the given bounds,
+     * using the zone map of the column file if it exists.
+     * This method has to be called before reading any tuple.
+     * @param columnIndex the column to check
+     * @param lower the lower bound (inclusive). null to specify no lower bound.
+     * @param upper the upper bound (inclusive). null to specify no upper bound.
+     * @see ColumnFileReaderBundle#getQualifyingTupleRanges(Comparable, Comparable)
+     */
+    public void restrictToRange (int columnIndex, Comparable<?> lower, Comparable<?> upper) throws IOException {
+        setTupleRanges(readerBundles[columnIndex].getQualifyingTupleRanges(lower, upper));
+    }
+
+    /**
+     * Further restricts the tuples to read to [begin, end), intersecting with the ranges
+     * set so far. Used to read a part of the file in parallel scans.
+     * This method has to be called before reading any tuple, and after
+     * {@link #setFilter(int, Comparable, Comparable)} if both are used.
+     * @param begin the first tuple to read
+     * @param end the tuple after the last tuple to read (exclusive)
+     */
+    public void restrictToTuples (int begin, int end) throws IOException {
+        List<TupleRange> current = tupleRanges;
+        if (current == null) {
+            current = new ArrayList<TupleRange>();
+            current.add(new TupleRange(0, tupleCount));
+        }
+        ArrayList<TupleRange> restricted = new ArrayList<TupleRange>();
+        for (TupleRange range : current) {
+            int start = Math.max(begin, range.startTuple);
+            int stop = Math.min(end, range.endTuple);
+            if (start < stop) {
+                restricted.add(new TupleRange(start, stop));
+            }
+        }
+        setTupleRanges(restricted);
+    }
+
+    /**
+     * Makes this reader return only the tuples whose value in the given column is between the given bounds.
+     * The filter column is read first, and the other columns are read only at the positions
+     * that satisfy the predicate, which saves reading and de-compressing them for rejected tuples.
+     * If the column is dictionary-encoded, the predicate is evaluated on the compressed values.
+     * This also skips zones of tuples as {@link #restrictToRange(int, Comparable, Comparable)} does.
+     * This method has to be called before reading any tuple.
+     * @param columnIndex the column to evaluate the predicate on
+     * @param lower the lower bound (inclusive). null to specify no lower bound.
+     * @param upper the upper bound (inclusive). null to specify no upper bound.
+     */
+    public void setFilter (int columnIndex, Comparable<?> lower, Comparable<?> upper) throws IOException {
+        restrictToRange(columnIndex, lower, upper);
+        filterColumn = columnIndex;
+        filterRange = new RangePredicate(lower, upper);
+        if (dataReaders[columnIndex] instanceof TypedDictReader<?, ?, ?, ?>) {
+            filterDict = readerBundles[columnIndex].getDictionary();
+            filterCodes = filterRange.toDictionaryPredicate(filterDict);
+            filterReader = readerBundles[columnIndex].getCompressedDataReader();
+            if (filterCodes.isEmpty()) {
+                // no value in this file satisfies the predicate
+                tupleRanges = new ArrayList<TupleRange>();
+            }
+        } else {
+            filterReader = dataReaders[columnIndex];
+        }
+        lateReaders = dataReaders.clone();
+        lateReaders[columnIndex] = null;
+        lateTuplePos = 0;
+    }
+
+    /**
+     * Moves to the next tuple range if the current one is exhausted.
+     * @return false if no more tuples to read
+     */
+    private boolean moveToRange () throws IOException {
+        while (nextTuplePos >= currentRangeEnd) {
+            if (tupleRanges == null || ++currentRange >= tupleRanges.size()) {
+                return false;
+            }
+            TupleRange range = tupleRanges.get(currentRange);
+            for (int i = 0; i < columnCount; ++i) {
+                dataReaders[i].seekToTupleAbsolute(range.startTuple);
+            }
+            nextTuplePos = range.startTuple;
+            lateTuplePos = range.startTuple;
+            currentRangeEnd = range.endTuple;
+        }
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
         for (int i = 0; i < columnCount; ++i) {
@@ -69,7 +253,10 @@ public final class ColumnFileTupleReader implements TupleReader {
     }
     @Override
     public boolean next() throws IOException {
-        if (nextTuplePos >= tupleCount) {
+        if (filterColumn >= 0) {
+            return nextFiltered();
+        }
+        if (!moveToRange()) {
             return false;
         }
         for (int i = 0; i < columnCount; ++i) {
@@ -78,10 +265,159 @@ public final class ColumnFileTupleReader implements TupleReader {
         ++nextTuplePos;
         return true;
     }
+    @SuppressWarnings("unchecked")
+    private boolean nextFiltered() throws IOException {
+        while (moveToRange()) {
+            Object value = filterReader.readValue();
+            int tuple = nextTuplePos++;
+            if (filterCodes != null) {
+                int code = ((Number) value).intValue();
+                if (!filterCodes.matches(code)) {
+                    continue;
+                }
+                value = filterDict.decompress(code);
+            } else if (!filterRange.matches((Comparable<?>) value)) {
+                continue;
+            }
+            currentTuple[filterColumn] = value;
+            for (int i = 0; i < columnCount; ++i) {
+                if (i == filterColumn) {
+                    continue;
+                }
+                if (tuple > lateTuplePos) {
+                    lateReaders[i].skipValues(tuple - lateTuplePos);
+                }
+                currentTuple[i] = lateReaders[i].readValue();
+            }
+            lateTuplePos = tuple + 1;
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int nextBatchFiltered(TupleBuffer buffer) throws IOException {
+        while (true) {
+            if (!moveToRange()) {
+                return -1;
+            }
+            int toRead = Math.min(currentRangeEnd - nextTuplePos, buffer.getBufferSize() - buffer.getCount());
+            if (selection == null || selection.length < toRead) {
+                filterValues = filterReader.getValueTraits().createArray(toRead);
+                selection = new int[toRead];
+            }
+            int read = filterReader.readValues(filterValues, 0, toRead);
+            if (read <= 0) {
+                return -1;
+            }
+            int selected;
+            if (filterCodes != null) {
+                selected = filterCodes.select(filterValues, 0, read, selection);
+            } else {
+                selected = filterRange.select(filterValues, 0, read, selection);
+            }
+            int batchStart = nextTuplePos;
+            nextTuplePos += read;
+            if (selected == 0) {
+                continue;
+            }
+
+            // the filter column is already read. pack the selected values and put them into the buffer
+            compactSelected(filterValues, selection, selected);
+            Object dest = buffer.getColumnBuffer(filterColumn);
+            if (dest instanceof StringArena) {
+                StringArena arena = (StringArena) dest;
+                if (filterCodes != null) {
+                    filterDict.decompressBatch(filterValues, 0, arena, selected);
+                } else {
+                    Object[] values = (Object[]) filterValues;
+                    for (int i = 0; i < selected; ++i) {
+                        Object value = values[i];
+                        if (value instanceof String) {
+                            arena.append((String) value);
+                        } else {
+                            arena.append((ByteArray) value);
+                        }
+                    }
+                }
+            } else if (filterCodes != null) {
+                if (filterValues instanceof byte[]) {
+                    filterDict.decompressBatch((byte[]) filterValues, 0, dest, buffer.getCount(), selected);
+                } else if (filterValues instanceof short[]) {
+                    filterDict.decompressBatch((short[]) filterValues, 0, dest, buffer.getCount(), selected);
+                } else {
+                    filterDict.decompressBatch((int[]) filterValues, 0, dest, buffer.getCount(), selected);
+                }
+            } else {
+                System.arraycopy(filterValues, 0, dest, buffer.getCount(), selected);
+            }
+
+            // then read the other columns only at the selected positions
+            int lastPosition = selection[selected - 1];
+            int shift = batchStart - lateTuplePos;
+            if (shift != 0) {
+                for (int i = 0; i < selected; ++i) {
+                    selection[i] += shift;
+                }
+            }
+            buffer.appendTuplesAtPositions(selection, selected, lateReaders);
+            lateTuplePos = batchStart + lastPosition + 1;
+            return selected;
+        }
+    }
+
+    /** moves array[selection[i]] to array[i]. as selection[i] &gt;= i, this can be done in-place. */
+    private static void compactSelected (Object array, int[] selection, int count) {
+        if (array instanceof long[]) {
+            long[] casted = (long[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        } else if (array instanceof int[]) {
+            int[] casted = (int[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        } else if (array instanceof short[]) {
+            short[] casted = (short[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        } else if (array instanceof byte[]) {
+            byte[] casted = (byte[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        } else if (array instanceof float[]) {
+            float[] casted = (float[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        } else if (array instanceof double[]) {
+            double[] casted = (double[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        } else {
+            Object[] casted = (Object[]) array;
+            for (int i = 0; i < count; ++i) {
+                casted[i] = casted[selection[i]];
+            }
+        }
+    }
+
     @Override
     public int nextBatch(TupleBuffer buffer) throws IOException {
-        int read = buffer.appendTuples(dataReaders);
-        nextTuplePos += read;
+        if (filterColumn >= 0) {
+            return nextBatchFiltered(buffer);
+        }
+        if (!moveToRange()) {
+            return -1;
+        }
+        int read = buffer.appendTuples(currentRangeEnd - nextTuplePos, dataReaders);
+        if (read > 0) {
+            nextTuplePos += read;
+        }
         return read;
     }
     @Override
@@ -16,6 +16,7 @@ import edu.brown.lasvegas.lvfs.data.PartitionedTextFileReader;
 import edu.brown.lasvegas.util.ByteArray;
 import edu.brown.lasvegas.util.ParseUtil;
 import edu.brown.lasvegas.util.ParseUtil.DateCachedParser;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * A tuple reader implementation which reads one or more text files.
@@ -23,8 +24,11 @@ import edu.brown.lasvegas.util.ParseUtil.DateCachedParser;
  * VARBINARY column must be BASE64 encoded.
  * 
  * This class also implements {@link #sample(TupleBuffer)} method, but in a very inefficient way.
+ * 
+ * When {@link #nextBatch(TupleBuffer)} receives a buffer that stores VARCHAR columns in
+ * {@link StringArena}, the values are appended from the line without creating substrings.
  */
-public class TextFileTupleReader extends DefaultTupleReader implements SampleableTupleReader {
+public class TextFileTupleReader extends DefaultTupleReader implements SampleableTupleReader, TupleArenaReader {
     private final VirtualFile[] textFiles;
     private final CompressionType textFileCompression;
 
@@ -39,6 +43,11 @@ public class TextFileTupleReader extends DefaultTupleReader implements Sampleabl
     private int nextTextFile = 0;
     private String currentLine;
 
+    /** whether each column is a VARCHAR column read into StringArena in the current batch. null if none. */
+    private boolean[] arenaColumns;
+    /** the range of each arena column's value in {@link #currentLine}. */
+    private final int[] valueStarts, valueEnds;
+
     public TextFileTupleReader (VirtualFile textFile, ColumnType[] columnTypes, char delimiter) throws IOException {
         this (new VirtualFile[]{textFile}, columnTypes, delimiter);
     }
@@ -62,6 +71,8 @@ public class TextFileTupleReader extends DefaultTupleReader implements Sampleabl
         this.dateParser = new DateCachedParser(dateFormat);
         this.timeParser = new DateCachedParser(timeFormat);
         this.timestampParser = new DateCachedParser(timestampFormat);
+        this.valueStarts = new int[columnCount];
+        this.valueEnds = new int[columnCount];
     }
     @Override
     public String getCurrentTupleAsString() {
@@ -89,6 +100,35 @@ public class TextFileTupleReader extends DefaultTupleReader implements Sampleabl
         closeCurrentFile();
     }
 
+    @Override
+    public int nextBatch(TupleBuffer buffer) throws IOException {
+        arenaColumns = null;
+        for (int i = 0; i < columnCount; ++i) {
+            if (columnTypes[i] == ColumnType.VARCHAR && buffer.getColumnBuffer(i) instanceof StringArena) {
+                if (arenaColumns == null) {
+                    arenaColumns = new boolean[columnCount];
+                }
+                arenaColumns[i] = true;
+            }
+        }
+        try {
+            return super.nextBatch(buffer);
+        } finally {
+            arenaColumns = null;
+        }
+    }
+
+    @Override
+    public void appendValue(int columnIndex, StringArena dest) throws IOException {
+        if (arenaColumns != null && arenaColumns[columnIndex]) {
+            dest.append(currentLine, valueStarts[columnIndex], valueEnds[columnIndex]);
+        } else if (columnTypes[columnIndex] == ColumnType.VARCHAR) {
+            dest.append(getVarchar(columnIndex));
+        } else {
+            dest.append(getVarbin(columnIndex));
+        }
+    }
+
     @Override
     public boolean next() throws IOException {
         String line;
@@ -158,7 +198,12 @@ public class TextFileTupleReader extends DefaultTupleReader implements Sampleabl
                 for (pos = offset; pos < lineEnd && line.charAt(pos) != delimiter; ++pos);
                 
                 // now, pos should be pointing to a delimiter, or out of bound (EoL).
-                if (offset == pos) {
+                if (arenaColumns != null && arenaColumns[i]) {
+                    // appended to the arena later in appendValue(). an empty column is an empty string
+                    valueStarts[i] = offset;
+                    valueEnds[i] = pos;
+                    dest[i] = null;
+                } else if (offset == pos) {
                     // empty column data
                     dest[i] = null;
                 } else {
@@ -0,0 +1,21 @@
+package edu.brown.lasvegas.tuple;
+
+import java.io.IOException;
+
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Optional interface for {@link TupleReader}s that can append the VARCHAR/VARBINARY values
+ * of the current tuple to a {@link StringArena} without creating java objects.
+ * {@link TupleBuffer} constructed with useStringArena=true uses this instead of
+ * {@link TupleReader#getVarchar(int)}.
+ * @see edu.brown.lasvegas.lvfs.TypedArenaReader
+ */
+public interface TupleArenaReader {
+    /**
+     * Appends the value of the given column in the current tuple to the arena.
+     * @param columnIndex a VARCHAR/VARBINARY column
+     * @param dest the arena to receive the value
+     */
+    void appendValue (int columnIndex, StringArena dest) throws IOException;
+}
@@ -3,8 +3,10 @@ package edu.brown.lasvegas.tuple;
 import java.io.IOException;
 
 import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.TypedArenaReader;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * A fixed-size buffer class to tentatively store a number of tuples in
@@ -19,6 +21,17 @@ public class TupleBuffer {
      * @param bufferSize maximum number of tuples to buffer.
      */
     public TupleBuffer (ColumnType[] types, int bufferSize) {
+        this (types, bufferSize, false, false);
+    }
+    /**
+     * Constructs a fixed-size (so, no automatic extension) buffer.
+     * @param types value type of each column 
+     * @param bufferSize maximum number of tuples to buffer.
+     * @param useStringArena whether to store VARCHAR/VARBINARY columns in {@link StringArena}
+     * instead of String[]/ByteArray[]. See {@link #getColumnBufferAsStringArena(int)}.
+     * @param offHeap whether the arenas are allocated off-heap (direct ByteBuffer)
+     */
+    public TupleBuffer (ColumnType[] types, int bufferSize, boolean useStringArena, boolean offHeap) {
         this.types = types;
         this.bufferSize = bufferSize;
         this.columnCount = types.length;
@@ -58,13 +71,20 @@ public class TupleBuffer {
                 accessors[i] = new DoubleColumnAccessor(i);
                 break;
             case VARCHAR:
+            case VARBINARY:
+                if (useStringArena) {
+                    data[i] = new StringArena(bufferSize, bufferSize * 16, offHeap);
+                    accessors[i] = new StringArenaColumnAccessor(i);
+                    break;
+                }
+                if (this.types[i] == ColumnType.VARBINARY) {
+                    data[i] = new ByteArray[bufferSize];
+                    accessors[i] = new ByteArrayColumnAccessor(i);
+                    break;
+                }
                 data[i] = new String[bufferSize];
                 accessors[i] = new StringColumnAccessor(i);
                 break;
-            case VARBINARY:
-                data[i] = new ByteArray[bufferSize];
-                accessors[i] = new ByteArrayColumnAccessor(i);
-                break;
             default:
                 throw new RuntimeException ("unexpected column type:" + types[i]); 
             }
@@ -78,6 +98,19 @@ public class TupleBuffer {
     /** Sets zero to count. In other words, makes this buffer empty for next use. */
     public void resetCount () {
         count = 0;
+        for (int i = 0; i < columnCount; ++i) {
+            if (data[i] instanceof StringArena) {
+                ((StringArena) data[i]).clear();
+            }
+        }
+    }
+    /**
+     * Sets the number of tuples buffered after the column arrays are filled directly,
+     * for example by vectorized operators ({@link edu.brown.lasvegas.qe.operator.Operator}).
+     */
+    public void setCount (int count) {
+        assert (count >= 0 && count <= bufferSize);
+        this.count = count;
     }
     /** returns the maximum number of tuples this buffer can hold. */
     public int getBufferSize()  {
@@ -91,6 +124,10 @@ public class TupleBuffer {
     public int getColumnCount()  {
         return columnCount;
     }
+    /** returns the value type of each column. */
+    public ColumnType[] getColumnTypes()  {
+        return types;
+    }
     
     public Object getColumnBuffer (int col) {
         return data[col];
@@ -119,6 +156,13 @@ public class TupleBuffer {
     public ByteArray[] getColumnBufferAsByteArray (int col) {
         return (ByteArray[]) data[col];
     }
+    /**
+     * Returns the VARCHAR (UTF-8 encoded) or VARBINARY column buffer.
+     * Only when this buffer is constructed with useStringArena=true.
+     */
+    public StringArena getColumnBufferAsStringArena (int col) {
+        return (StringArena) data[col];
+    }
     
     /**
      * Append a tuple to this buffer from the given table reader.
@@ -178,13 +222,37 @@ public class TupleBuffer {
         return actuallyRead;
     }
 
+    /**
+     * Append the tuples only at the given positions from the column file readers (late materialization).
+     * @param positions tuple positions relative to the current tuple of the readers, in ascending order.
+     * See {@link TypedReader#readValuesAtPositions(Object, int, int[], int)}.
+     * @param positionCount number of positions to read
+     * @param columnReaders column file readers. Columns whose reader is null are not read
+     * (e.g., the caller fills them by itself).
+     * @return the number of tuples read from the column files and appended to this buffer
+     * @throws IOException
+     */
+    public int appendTuplesAtPositions (int[] positions, int positionCount, TypedReader<?,?>[] columnReaders) throws IOException {
+        if (positionCount > bufferSize - count) {
+            throw new IllegalArgumentException ("too many positions for this buffer: " + positionCount);
+        }
+        for (int i = 0; i < columnCount; ++i) {
+            if (accessors[i] != null && columnReaders[i] != null) {
+                @SuppressWarnings({ "unchecked", "rawtypes" })
+                int read = ((ColumnAccessor) accessors[i]).putAtPositions(positions, positionCount, columnReaders[i]);
+                assert (read == positionCount);
+            }
+        }
+        return positionCount;
+    }
+
     /** the number of tuples currently buffered. */
     private int count = 0;
     
     /** the maximum number of tuples this buffer can hold. */
     private final int bufferSize;
     
-    /** buffered data of all columns. i-th column's data = data[i], which might be int[], long[], String[] etc. */
+    /** buffered data of all columns. i-th column's data = data[i], which might be int[], long[], String[], StringArena etc. */
     private final Object[] data;
     
     /** value type of each column. */
@@ -202,6 +270,9 @@ public class TupleBuffer {
         }
         public abstract void put (TupleReader reader) throws IOException;
         public abstract int put (int tuplesToRead, TypedReader<T,AT> reader) throws IOException;
+        public int putAtPositions (int[] positions, int positionCount, TypedReader<T,AT> reader) throws IOException {
+            return reader.readValuesAtPositions(array, count, positions, positionCount);
+        }
         final AT array;
         final int col;
     }
@@ -319,4 +390,67 @@ public class TupleBuffer {
             return reader.readValues(array, count, tuplesToRead);
         }
     }
+
+    /**
+     * Accessor for VARCHAR/VARBINARY columns stored in {@link StringArena}.
+     * Readers that implement {@link TypedArenaReader} or {@link TupleArenaReader} append the bytes without materializing java objects.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private class StringArenaColumnAccessor extends ColumnAccessor {
+        private Object[] tmpArray;
+        private StringArenaColumnAccessor (int col) {
+            super(col);
+        }
+        @Override
+        public void put(TupleReader reader) throws IOException {
+            assert (((StringArena) array).size() == count);
+            if (reader instanceof TupleArenaReader) {
+                ((TupleArenaReader) reader).appendValue(col, (StringArena) array);
+            } else if (types[col] == ColumnType.VARCHAR) {
+                ((StringArena) array).append(reader.getVarchar(col));
+            } else {
+                ((StringArena) array).append(reader.getVarbin(col));
+            }
+        }
+        @Override
+        public int put(int tuplesToRead, TypedReader reader) throws IOException {
+            StringArena arena = (StringArena) array;
+            assert (arena.size() == count);
+            if (reader instanceof TypedArenaReader) {
+                return ((TypedArenaReader) reader).readValues(arena, tuplesToRead);
+            }
+            // other readers (e.g., RLE) don't know arena. read objects and then copy them.
+            Object[] tmp = getTmpArray(reader, tuplesToRead);
+            int read = reader.readValues(tmp, 0, tuplesToRead);
+            appendTmpArray(arena, tmp, read);
+            return read;
+        }
+        @Override
+        public int putAtPositions(int[] positions, int positionCount, TypedReader reader) throws IOException {
+            StringArena arena = (StringArena) array;
+            assert (arena.size() == count);
+            if (reader instanceof TypedArenaReader) {
+                return ((TypedArenaReader) reader).readValuesAtPositions(arena, positions, positionCount);
+            }
+            Object[] tmp = getTmpArray(reader, positionCount);
+            int read = reader.readValuesAtPositions(tmp, 0, positions, positionCount);
+            appendTmpArray(arena, tmp, read);
+            return read;
+        }
+        private Object[] getTmpArray (TypedReader reader, int size) {
+            if (tmpArray == null || tmpArray.length < size) {
+                tmpArray = (Object[]) reader.getValueTraits().createArray(size);
+            }
+            return tmpArray;
+        }
+        private void appendTmpArray (StringArena arena, Object[] tmp, int read) {
+            for (int i = 0; i < read; ++i) {
+                if (tmp[i] instanceof String) {
+                    arena.append((String) tmp[i]);
+                } else {
+                    arena.append((ByteArray) tmp[i]);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package edu.brown.lasvegas.util;
+
+/**
+ * An open-addressing hash map with int keys and double values. See {@link IntOpenHashTable} for the table layout.
+ * <p>Values are in a double[] parallel to the keys, so neither keys nor values are boxed and there is
+ * no object per entry. Besides the methods for one key, this has methods to insert or look up a batch of keys
+ * given as arrays, such as {@link #getAll(int[], int, double[], double)} and {@link #addToAll(int[], double[], int)}.</p>
+ */
+public final class IntDoubleOpenHashMap extends IntOpenHashTable {
+    private double[] values;
+
+    /** Constructs an empty map with the default expected size and load factor. */
+    public IntDoubleOpenHashMap() {
+        this(DEFAULT_EXPECTED_SIZE, DEFAULT_LOAD_FACTOR);
+    }
+    /**
+     * Constructs an empty map with the default load factor.
+     * @param expectedSize the number of keys to hold without rehashing
+     */
+    public IntDoubleOpenHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+    /**
+     * Constructs an empty map.
+     * @param expectedSize the number of keys to hold without rehashing
+     * @param loadFactor the maximum ratio of used slots. must be in (0, 1).
+     */
+    public IntDoubleOpenHashMap(int expectedSize, float loadFactor) {
+        super(expectedSize, loadFactor);
+        values = new double[keys.length];
+    }
+
+    /**
+     * Returns the value of the key.
+     * @param defaultValue the value to return if the key doesn't exist
+     */
+    public double get(int key, double defaultValue) {
+        int slot = indexOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    /** associates the value with the key, overwriting the current value if any. */
+    public void put(int key, double value) {
+        int slot = insertKey(key);
+        values[slot < 0 ? -slot - 1 : slot] = value;
+    }
+
+    /**
+     * Adds the delta to the value of the key. The value of a new key starts from 0.
+     * @return the value after the addition
+     */
+    public double addTo(int key, double delta) {
+        int slot = insertKey(key);
+        if (slot < 0) {
+            values[-slot - 1] = delta;
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    /**
+     * Removes the key.
+     * @return whether the key existed
+     */
+    public boolean remove(int key) {
+        return removeKey(key);
+    }
+
+    /** returns the value in the slot. see {@link #nextSlot(int)}. */
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Looks up a batch of keys.
+     * @param keyArray the keys to look up
+     * @param count the number of keys in keyArray to look up
+     * @param valueArray receives the value of each key, or defaultValue if the key doesn't exist
+     * @return the number of keys that exist
+     */
+    public int getAll(int[] keyArray, int count, double[] valueArray, double defaultValue) {
+        int found = 0;
+        for (int i = 0; i < count; ++i) {
+            int slot = indexOf(keyArray[i]);
+            if (slot < 0) {
+                valueArray[i] = defaultValue;
+            } else {
+                valueArray[i] = values[slot];
+                ++found;
+            }
+        }
+        return found;
+    }
+
+    /** puts a batch of keys and values, same as calling {@link #put(int, double)} for each of them. */
+    public void putAll(int[] keyArray, double[] valueArray, int count) {
+        for (int i = 0; i < count; ++i) {
+            int slot = insertKey(keyArray[i]);
+            values[slot < 0 ? -slot - 1 : slot] = valueArray[i];
+        }
+    }
+
+    /** adds a batch of deltas, same as calling {@link #addTo(int, double)} for each of them. */
+    public void addToAll(int[] keyArray, double[] deltaArray, int count) {
+        for (int i = 0; i < count; ++i) {
+            int slot = insertKey(keyArray[i]);
+            if (slot < 0) {
+                values[-slot - 1] = deltaArray[i];
+            } else {
+                values[slot] += deltaArray[i];
+            }
+        }
+    }
+
+    @Override
+    protected void rehashValues(int[] moved, int newLength) {
+        double[] newValues = new double[newLength];
+        for (int i = 0; i < moved.length; ++i) {
+            if (moved[i] >= 0) {
+                newValues[moved[i]] = values[i];
+            }
+        }
+        values = newValues;
+    }
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = 0;
+    }
+}
@@ -0,0 +1,134 @@
+package edu.brown.lasvegas.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map with int keys and Object values. See {@link IntOpenHashTable} for the table layout.
+ * <p>Values are in an Object[] parallel to the keys, so there is no Entry object per key as in {@link IntHashMap}.
+ * Besides the methods for one key, this has methods to insert or look up a batch of keys given as arrays.</p>
+ */
+public final class IntOpenHashMap<V> extends IntOpenHashTable {
+    private Object[] values;
+
+    /** Constructs an empty map with the default expected size and load factor. */
+    public IntOpenHashMap() {
+        this(DEFAULT_EXPECTED_SIZE, DEFAULT_LOAD_FACTOR);
+    }
+    /**
+     * Constructs an empty map with the default load factor.
+     * @param expectedSize the number of keys to hold without rehashing
+     */
+    public IntOpenHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+    /**
+     * Constructs an empty map.
+     * @param expectedSize the number of keys to hold without rehashing
+     * @param loadFactor the maximum ratio of used slots. must be in (0, 1).
+     */
+    public IntOpenHashMap(int expectedSize, float loadFactor) {
+        super(expectedSize, loadFactor);
+        values = new Object[keys.length];
+    }
+
+    /**
+     * Returns the value of the key.
+     * @return the value, or null if the key doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * Associates the value with the key.
+     * @return the previous value of the key, or null if the key didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int slot = insertKey(key);
+        if (slot < 0) {
+            values[-slot - 1] = value;
+            return null;
+        }
+        V old = (V) values[slot];
+        values[slot] = value;
+        return old;
+    }
+
+    /**
+     * Removes the key.
+     * @return the value of the key, or null if the key didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        V old = (V) values[slot];
+        removeKey(key);
+        return old;
+    }
+
+    /** returns the value in the slot. see {@link #nextSlot(int)}. */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /**
+     * Looks up a batch of keys.
+     * @param keyArray the keys to look up
+     * @param count the number of keys in keyArray to look up
+     * @param valueArray receives the value of each key, or null if the key doesn't exist
+     * @return the number of keys that exist
+     */
+    @SuppressWarnings("unchecked")
+    public int getAll(int[] keyArray, int count, V[] valueArray) {
+        int found = 0;
+        for (int i = 0; i < count; ++i) {
+            int slot = indexOf(keyArray[i]);
+            if (slot < 0) {
+                valueArray[i] = null;
+            } else {
+                valueArray[i] = (V) values[slot];
+                ++found;
+            }
+        }
+        return found;
+    }
+
+    /** puts a batch of keys and values, same as calling {@link #put(int, Object)} for each of them. */
+    public void putAll(int[] keyArray, V[] valueArray, int count) {
+        for (int i = 0; i < count; ++i) {
+            int slot = insertKey(keyArray[i]);
+            values[slot < 0 ? -slot - 1 : slot] = valueArray[i];
+        }
+    }
+
+    @Override
+    protected void rehashValues(int[] moved, int newLength) {
+        Object[] newValues = new Object[newLength];
+        for (int i = 0; i < moved.length; ++i) {
+            if (moved[i] >= 0) {
+                newValues[moved[i]] = values[i];
+            }
+        }
+        values = newValues;
+    }
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = null;
+    }
+    @Override
+    public void clear() {
+        super.clear();
+        Arrays.fill(values, null);
+    }
+}
@@ -0,0 +1,232 @@
+package edu.brown.lasvegas.util;
+
+import java.util.Arrays;
+
+/**
+ * Base class of the open-addressing hash tables with int keys, such as {@link IntDoubleOpenHashMap} and {@link IntOpenHashMap}.
+ * <p>Unlike {@link IntHashMap}, there is no Entry object per key. Keys are stored in one int[] and probed linearly
+ * from the hashed slot, and subclasses keep values in a parallel primitive array indexed by the same slot.
+ * Key 0 marks an empty slot, so the key 0 itself is kept in the extra slot at the end of the arrays.
+ * Removal shifts back the following keys of the cluster instead of leaving tombstones.</p>
+ * <p>Slots can be iterated with {@link #nextSlot(int)} and {@link #keyAt(int)}.
+ * Like the other hash maps in this package, this class is not thread-safe.</p>
+ */
+public abstract class IntOpenHashTable {
+    /** default load factor. Linear probing needs a lower one than chaining. */
+    public static final float DEFAULT_LOAD_FACTOR = 0.6f;
+    /** default expected number of keys. */
+    public static final int DEFAULT_EXPECTED_SIZE = 16;
+
+    /** keys of each slot. 0 means empty. keys[capacity] is the slot of the key 0 and always stays 0. */
+    protected int[] keys;
+    /** capacity - 1. capacity is a power of two. */
+    protected int mask;
+    /** number of keys. */
+    protected int size;
+    /** whether the key 0 is in the table. */
+    protected boolean hasZeroKey;
+    private final float loadFactor;
+    /** the table is rehashed when the size exceeds this. */
+    private int threshold;
+
+    /**
+     * @param expectedSize the number of keys to hold without rehashing
+     * @param loadFactor the maximum ratio of used slots. must be in (0, 1).
+     */
+    protected IntOpenHashTable (int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + expectedSize);
+        }
+        if (loadFactor <= 0 || loadFactor >= 1) {
+            throw new IllegalArgumentException("Illegal Load: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        int capacity = 2;
+        while (capacity < (1 << 30) && capacity * (double) loadFactor < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity + 1];
+        mask = capacity - 1;
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    /** spreads the bits of the key so that sequential keys don't form long clusters. */
+    protected static int hash (int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** returns the number of keys. */
+    public final int size() {
+        return size;
+    }
+    /** returns whether there is no key. */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+    /** returns the number of slots (excluding the slot of the key 0). */
+    public final int getCapacity() {
+        return mask + 1;
+    }
+    /** returns whether the key exists. */
+    public final boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /** returns the slot of the key, or -1 if not found. */
+    protected final int indexOf (int key) {
+        if (key == 0) {
+            return hasZeroKey ? mask + 1 : -1;
+        }
+        final int[] k = keys;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            int cur = k[i];
+            if (cur == key) {
+                return i;
+            }
+            if (cur == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the key, inserting the key if it doesn't exist yet.
+     * @return the slot if the key already existed, or -(slot + 1) if the key was inserted.
+     * In the latter case, the caller has to set the value of the slot.
+     */
+    protected final int insertKey (int key) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                return mask + 1;
+            }
+            hasZeroKey = true;
+            ++size;
+            return -(mask + 1) - 1;
+        }
+        final int[] k = keys;
+        int i = hash(key) & mask;
+        for (;; i = (i + 1) & mask) {
+            int cur = k[i];
+            if (cur == key) {
+                return i;
+            }
+            if (cur == 0) {
+                break;
+            }
+        }
+        k[i] = key;
+        ++size;
+        if (size > threshold) {
+            rehash();
+            i = indexOf(key);
+        }
+        return -i - 1;
+    }
+
+    /**
+     * Removes the key.
+     * @return whether the key existed
+     */
+    protected final boolean removeKey (int key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return false;
+            }
+            hasZeroKey = false;
+            --size;
+            clearValue(mask + 1);
+            return true;
+        }
+        int gap = indexOf(key);
+        if (gap < 0) {
+            return false;
+        }
+        --size;
+        // shift back the following keys that can't be found anymore once the slot becomes empty
+        final int[] k = keys;
+        for (int j = (gap + 1) & mask;; j = (j + 1) & mask) {
+            int cur = k[j];
+            if (cur == 0) {
+                break;
+            }
+            int home = hash(cur) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                k[gap] = cur;
+                moveValue(j, gap);
+                gap = j;
+            }
+        }
+        k[gap] = 0;
+        clearValue(gap);
+        return true;
+    }
+
+    private void rehash () {
+        int oldCapacity = mask + 1;
+        int newCapacity = oldCapacity * 2;
+        int newMask = newCapacity - 1;
+        int[] oldKeys = keys;
+        int[] newKeys = new int[newCapacity + 1];
+        int[] moved = new int[oldCapacity + 1];
+        for (int i = 0; i < oldCapacity; ++i) {
+            int key = oldKeys[i];
+            if (key == 0) {
+                moved[i] = -1;
+                continue;
+            }
+            int j = hash(key) & newMask;
+            while (newKeys[j] != 0) {
+                j = (j + 1) & newMask;
+            }
+            newKeys[j] = key;
+            moved[i] = j;
+        }
+        moved[oldCapacity] = newCapacity;
+        keys = newKeys;
+        mask = newMask;
+        threshold = (int) (newCapacity * loadFactor);
+        rehashValues(moved, newCapacity + 1);
+    }
+
+    /**
+     * Moves the values to new arrays of the given length after rehashing.
+     * @param moved the new slot of the value in each old slot, -1 for empty slots
+     */
+    protected abstract void rehashValues (int[] moved, int newLength);
+    /** moves the value in one slot to another slot. called when removing a key. */
+    protected abstract void moveValue (int from, int to);
+    /** clears the value of the slot (only matters for object values). */
+    protected abstract void clearValue (int slot);
+
+    /**
+     * Returns the next used slot, to iterate over the keys as follows.
+     * <pre>for (int slot = table.nextSlot(-1); slot >= 0; slot = table.nextSlot(slot)) { table.keyAt(slot) ... }</pre>
+     * The table must not be modified during the iteration.
+     * @param slot the previous slot. -1 to get the first slot.
+     * @return the next used slot, or -1 if no more
+     */
+    public final int nextSlot (int slot) {
+        final int capacity = mask + 1;
+        for (int i = slot + 1; i < capacity; ++i) {
+            if (keys[i] != 0) {
+                return i;
+            }
+        }
+        if (slot < capacity && hasZeroKey) {
+            return capacity;
+        }
+        return -1;
+    }
+    /** returns the key in the slot. */
+    public final int keyAt (int slot) {
+        return keys[slot];
+    }
+
+    /** removes all keys. */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+}
@@ -0,0 +1,399 @@
+package edu.brown.lasvegas.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.brown.lasvegas.lvfs.RawValueReader;
+import edu.brown.lasvegas.lvfs.RawValueWriter;
+
+/**
+ * An array of variable-length values (UTF-8 encoded VARCHAR or raw VARBINARY)
+ * stored in one byte arena plus an offsets array.
+ *
+ * <p>String[] and ByteArray[] allocate an object for every value, which dominates GC when
+ * we scan a large VARCHAR column. This class instead appends the bytes of each value
+ * to one growing arena, so reading a batch of values allocates nothing once the arena is large enough.
+ * Comparison, hashing and equality are done on the bytes. {@link #getString(int)} and
+ * {@link #getByteArray(int)} materialize a value only when it's really needed.</p>
+ *
+ * <p>The arena is either a byte[] or a direct ByteBuffer (off-heap).
+ * Values can only be appended, and {@link #clear()} empties the array for next use
+ * without releasing the arena.</p>
+ *
+ * <p>{@link #compare(int, StringArena, int)} compares unsigned bytes, which is the Unicode code point
+ * order for UTF-8 strings. This is the same as {@link String#compareTo(String)} except
+ * for supplementary characters compared with characters in U+E000-U+FFFF.</p>
+ */
+public final class StringArena {
+    /** the arena. null if direct. */
+    private byte[] heap;
+    /** the direct arena. null if on-heap. */
+    private ByteBuffer direct;
+    /** capacity of the arena in bytes. */
+    private int arenaCapacity;
+    /** start of each value in the arena. offsets[size] is the end of the last value. */
+    private final int[] offsets;
+    /** number of values. */
+    private int size;
+    /** temporary buffer to copy bytes from/to the direct arena. */
+    private byte[] scratch;
+
+    /**
+     * Constructs an on-heap arena.
+     * @param capacity maximum number of values
+     * @param initialBytes initial size of the arena in bytes. the arena grows if needed.
+     */
+    public StringArena (int capacity, int initialBytes) {
+        this (capacity, initialBytes, false);
+    }
+    /**
+     * Constructs an arena.
+     * @param capacity maximum number of values
+     * @param initialBytes initial size of the arena in bytes. the arena grows if needed.
+     * @param offHeap whether to allocate the arena as a direct ByteBuffer
+     */
+    public StringArena (int capacity, int initialBytes, boolean offHeap) {
+        this.offsets = new int[capacity + 1];
+        this.arenaCapacity = Math.max(16, initialBytes);
+        if (offHeap) {
+            direct = ByteBuffer.allocateDirect(arenaCapacity);
+        } else {
+            heap = new byte[arenaCapacity];
+        }
+    }
+
+    /** returns the number of values. */
+    public int size () {
+        return size;
+    }
+    /** returns the maximum number of values. */
+    public int capacity () {
+        return offsets.length - 1;
+    }
+    /** returns whether the arena is a direct ByteBuffer. */
+    public boolean isOffHeap () {
+        return direct != null;
+    }
+    /** returns the total bytes of the values. */
+    public int getTotalBytes () {
+        return offsets[size];
+    }
+    /** removes all values. The arena is kept for next use. */
+    public void clear () {
+        size = 0;
+    }
+    /** removes the values after the given number of values. */
+    public void truncate (int newSize) {
+        assert (newSize >= 0 && newSize <= size);
+        size = newSize;
+    }
+
+    private void reserve (int additionalBytes) {
+        if (size >= offsets.length - 1) {
+            throw new ArrayIndexOutOfBoundsException ("the arena is full: " + size);
+        }
+        int required = offsets[size] + additionalBytes;
+        if (required <= arenaCapacity) {
+            return;
+        }
+        int newCapacity = Math.max(required, arenaCapacity * 2);
+        if (heap != null) {
+            byte[] newHeap = new byte[newCapacity];
+            System.arraycopy(heap, 0, newHeap, 0, offsets[size]);
+            heap = newHeap;
+        } else {
+            ByteBuffer newDirect = ByteBuffer.allocateDirect(newCapacity);
+            ByteBuffer old = direct.duplicate();
+            old.position(0);
+            old.limit(offsets[size]);
+            newDirect.put(old);
+            direct = newDirect;
+        }
+        arenaCapacity = newCapacity;
+    }
+    private byte[] getScratch (int len) {
+        if (scratch == null || scratch.length < len) {
+            scratch = new byte[Math.max(len, 256)];
+        }
+        return scratch;
+    }
+
+    /** appends the given bytes as a value. */
+    public void append (byte[] src, int off, int len) {
+        reserve(len);
+        int start = offsets[size];
+        if (heap != null) {
+            System.arraycopy(src, off, heap, start, len);
+        } else {
+            ByteBuffer buf = direct.duplicate();
+            buf.position(start);
+            buf.put(src, off, len);
+        }
+        offsets[++size] = start + len;
+    }
+    /** appends the given bytes as a value. The position of src is not changed. */
+    public void append (ByteBuffer src, int off, int len) {
+        reserve(len);
+        int start = offsets[size];
+        ByteBuffer from = src.duplicate();
+        from.limit(off + len);
+        from.position(off);
+        if (heap != null) {
+            from.get(heap, start, len);
+        } else {
+            ByteBuffer buf = direct.duplicate();
+            buf.position(start);
+            buf.put(from);
+        }
+        offsets[++size] = start + len;
+    }
+    /** appends the UTF-8 bytes of the given string as a value. */
+    public void append (String value) {
+        append (value, 0, value.length());
+    }
+    /**
+     * Appends the UTF-8 bytes of value.substring(begin, end) as a value
+     * without creating the substring unless it contains non-ASCII characters.
+     */
+    public void append (String value, int begin, int end) {
+        boolean ascii = true;
+        for (int i = begin; i < end; ++i) {
+            if (value.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (!ascii) {
+            byte[] bytes = value.substring(begin, end).getBytes(RawValueWriter.CHARSET);
+            append(bytes, 0, bytes.length);
+            return;
+        }
+        // ASCII strings don't need the encoder
+        int len = end - begin;
+        reserve(len);
+        int start = offsets[size];
+        if (heap != null) {
+            for (int i = 0; i < len; ++i) {
+                heap[start + i] = (byte) value.charAt(begin + i);
+            }
+        } else {
+            for (int i = 0; i < len; ++i) {
+                direct.put(start + i, (byte) value.charAt(begin + i));
+            }
+        }
+        offsets[++size] = start + len;
+    }
+    /** appends the bytes of the given value. */
+    public void append (ByteArray value) {
+        append(value.getBytes(), 0, value.getBytes().length);
+    }
+    /** appends the index-th value of the given arena. */
+    public void append (StringArena other, int index) {
+        int len = other.getLength(index);
+        if (other.heap != null) {
+            append(other.heap, other.offsets[index], len);
+        } else {
+            byte[] buf = getScratch(len);
+            other.copyTo(index, buf, 0);
+            append(buf, 0, len);
+        }
+    }
+    /**
+     * Reads a value with length header from the given reader and appends its bytes.
+     * This is the format written by {@link RawValueWriter#writeBytesWithLengthHeader(byte[])}.
+     */
+    public void appendWithLengthHeader (RawValueReader reader) throws IOException {
+        int len = reader.readLengthHeader();
+        reserve(len);
+        int start = offsets[size];
+        int read;
+        if (heap != null) {
+            read = reader.readBytes(heap, start, len);
+        } else {
+            byte[] buf = getScratch(len);
+            read = reader.readBytes(buf, 0, len);
+            ByteBuffer dup = direct.duplicate();
+            dup.position(start);
+            dup.put(buf, 0, len);
+        }
+        if (read < len) {
+            throw new IOException ("coudln't read part of " + len + " bytes entry??");
+        }
+        offsets[++size] = start + len;
+    }
+    /**
+     * Writes the index-th value with length header to the given writer.
+     * This is the format read by {@link #appendWithLengthHeader(RawValueReader)}.
+     */
+    public void writeWithLengthHeader (int index, RawValueWriter writer) throws IOException {
+        int len = getLength(index);
+        if (heap != null) {
+            writer.writeBytesWithLengthHeader(heap, offsets[index], len);
+        } else {
+            byte[] buf = getScratch(len);
+            copyTo(index, buf, 0);
+            writer.writeBytesWithLengthHeader(buf, 0, len);
+        }
+    }
+
+    /** returns the byte length of the index-th value. */
+    public int getLength (int index) {
+        assert (index >= 0 && index < size);
+        return offsets[index + 1] - offsets[index];
+    }
+    /** returns the j-th byte of the index-th value. */
+    public byte getByte (int index, int j) {
+        assert (j >= 0 && j < getLength(index));
+        int pos = offsets[index] + j;
+        return heap != null ? heap[pos] : direct.get(pos);
+    }
+    /** copies the bytes of the index-th value to the given array. */
+    public void copyTo (int index, byte[] dest, int destOff) {
+        int len = getLength(index);
+        if (heap != null) {
+            System.arraycopy(heap, offsets[index], dest, destOff, len);
+        } else {
+            ByteBuffer dup = direct.duplicate();
+            dup.position(offsets[index]);
+            dup.get(dest, destOff, len);
+        }
+    }
+    /**
+     * Returns the largest byte (as unsigned) in the values [fromIndex, toIndex), 0 if they are empty.
+     * For UTF-8 strings, less than 0x80 means ASCII only and less than 0xF0 means no supplementary characters.
+     */
+    public int maxByte (int fromIndex, int toIndex) {
+        assert (fromIndex >= 0 && fromIndex <= toIndex && toIndex <= size);
+        int max = 0;
+        int end = offsets[toIndex];
+        if (heap != null) {
+            for (int i = offsets[fromIndex]; i < end; ++i) {
+                max = Math.max(max, heap[i] & 0xFF);
+            }
+        } else {
+            for (int i = offsets[fromIndex]; i < end; ++i) {
+                max = Math.max(max, direct.get(i) & 0xFF);
+            }
+        }
+        return max;
+    }
+    /** materializes the index-th value as a String. */
+    public String getString (int index) {
+        int len = getLength(index);
+        if (heap != null) {
+            return new String(heap, offsets[index], len, RawValueReader.CHARSET);
+        }
+        byte[] buf = getScratch(len);
+        copyTo(index, buf, 0);
+        return new String(buf, 0, len, RawValueReader.CHARSET);
+    }
+    /** materializes the index-th value as a ByteArray. */
+    public ByteArray getByteArray (int index) {
+        byte[] bytes = new byte[getLength(index)];
+        copyTo(index, bytes, 0);
+        return new ByteArray(bytes);
+    }
+
+    /** returns the hash code of the index-th value computed from its bytes (FNV-1a). */
+    public int hashCode (int index) {
+        int hash = 0x811C9DC5;
+        int end = offsets[index + 1];
+        if (heap != null) {
+            for (int i = offsets[index]; i < end; ++i) {
+                hash = (hash ^ (heap[i] & 0xFF)) * 0x01000193;
+            }
+        } else {
+            for (int i = offsets[index]; i < end; ++i) {
+                hash = (hash ^ (direct.get(i) & 0xFF)) * 0x01000193;
+            }
+        }
+        return hash;
+    }
+    /** returns the hash code of the given bytes. Same as {@link #hashCode(int)} for the same bytes. */
+    public static int hashCode (byte[] bytes, int off, int len) {
+        int hash = 0x811C9DC5;
+        for (int i = off; i < off + len; ++i) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /** returns whether the index-th value has the same bytes as the given bytes. */
+    public boolean equals (int index, byte[] other, int off, int len) {
+        if (getLength(index) != len) {
+            return false;
+        }
+        int start = offsets[index];
+        if (heap != null) {
+            for (int i = 0; i < len; ++i) {
+                if (heap[start + i] != other[off + i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < len; ++i) {
+                if (direct.get(start + i) != other[off + i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    /** returns whether the index-th value has the same bytes as the otherIndex-th value of the other arena. */
+    public boolean equals (int index, StringArena other, int otherIndex) {
+        return compare(index, other, otherIndex) == 0;
+    }
+
+    /**
+     * Compares the index-th value with the given bytes as unsigned bytes.
+     * @return negative, zero or positive if the value is smaller than, equal to or larger than the given bytes
+     */
+    public int compare (int index, byte[] other, int off, int len) {
+        int myLen = getLength(index);
+        int start = offsets[index];
+        int common = Math.min(myLen, len);
+        for (int i = 0; i < common; ++i) {
+            int a = (heap != null ? heap[start + i] : direct.get(start + i)) & 0xFF;
+            int b = other[off + i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return myLen - len;
+    }
+    /**
+     * Compares the index-th value with the otherIndex-th value of the other arena as unsigned bytes.
+     * @return negative, zero or positive if the value is smaller than, equal to or larger than the other value
+     */
+    public int compare (int index, StringArena other, int otherIndex) {
+        int myLen = getLength(index);
+        int otherLen = other.getLength(otherIndex);
+        int start = offsets[index];
+        int otherStart = other.offsets[otherIndex];
+        int common = Math.min(myLen, otherLen);
+        if (heap != null && other.heap != null) {
+            for (int i = 0; i < common; ++i) {
+                int a = heap[start + i] & 0xFF;
+                int b = other.heap[otherStart + i] & 0xFF;
+                if (a != b) {
+                    return a - b;
+                }
+            }
+        } else {
+            for (int i = 0; i < common; ++i) {
+                int a = getByte(index, i) & 0xFF;
+                int b = other.getByte(otherIndex, i) & 0xFF;
+                if (a != b) {
+                    return a - b;
+                }
+            }
+        }
+        return myLen - otherLen;
+    }
+
+    @Override
+    public String toString() {
+        return "StringArena (size=" + size + ", bytes=" + offsets[size] + ", capacity=" + capacity()
+            + ", arenaCapacity=" + arenaCapacity + (direct != null ? ", off-heap" : "") + ")";
+    }
+}
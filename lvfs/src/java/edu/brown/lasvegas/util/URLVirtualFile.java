@@ -7,6 +7,7 @@ import java.net.URLConnection;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.lvfs.VirtualFileInputStream;
 import edu.brown.lasvegas.lvfs.VirtualFileOutputStream;
+import edu.brown.lasvegas.lvfs.VirtualFilePositionalInput;
 
 /**
  * Dummy implementation of VirtualFile that proxies java.net.URL.
@@ -28,6 +29,10 @@ public final class URLVirtualFile implements VirtualFile {
         throw new UnsupportedOperationException();
     }
     @Override
+    public VirtualFilePositionalInput getPositionalInput() throws IOException {
+        return null;
+    }
+    @Override
     public long length() throws IOException {
         URLConnection connection = url.openConnection();
         int len = connection.getContentLength();
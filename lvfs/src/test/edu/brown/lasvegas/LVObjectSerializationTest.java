@@ -8,6 +8,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import org.junit.After;
 import org.junit.Before;
@@ -107,6 +108,7 @@ public class LVObjectSerializationTest {
         obj2.setColumnType(ColumnType.INTEGER);
         obj2.setTupleCount(4431);
         obj2.setCompressionType(CompressionType.RLE);
+        obj2.setLayout(ColumnFileLayout.SEGMENT);
         obj2.write(out);
 
         LVColumnFile[] org = new LVColumnFile[]{obj1, obj2};
@@ -128,7 +130,9 @@ public class LVObjectSerializationTest {
             assertEquals(org[i].isSorted(), copied.isSorted());
             assertEquals(org[i].getTupleCount(), copied.getTupleCount());
             assertEquals(org[i].getUncompressedSizeKB(), copied.getUncompressedSizeKB());
+            assertEquals(org[i].getLayout(), copied.getLayout());
         }
+        assertEquals(ColumnFileLayout.SEPARATE, obj1.getLayout());
     }
 
     @Test
@@ -375,6 +379,13 @@ public class LVObjectSerializationTest {
         types2.put(2, CompressionType.GZIP_BEST_COMPRESSION);
         types2.put(8, CompressionType.NONE);
         obj2.setColumnCompressionSchemes(types2);
+        HashMap<Integer, Integer> groups2 = new HashMap<Integer, Integer>();
+        groups2.put(1, 0);
+        groups2.put(8, 0);
+        obj2.setColumnGroups(groups2);
+        HashSet<Integer> shared2 = new HashSet<Integer>();
+        shared2.add(8);
+        obj2.setSharedDictionaryColumnIds(shared2);
         obj2.write(out);
 
         LVReplicaScheme[] org = new LVReplicaScheme[]{obj1, obj2};
@@ -385,6 +396,8 @@ public class LVObjectSerializationTest {
             assertEquals(org[i].getSchemeId(), copied.getSchemeId());
             assertEquals(org[i].getSortColumnId(), copied.getSortColumnId());
             assertEquals(org[i].getColumnCompressionSchemes(), copied.getColumnCompressionSchemes());
+            assertEquals(org[i].getColumnGroups(), copied.getColumnGroups());
+            assertEquals(org[i].getSharedDictionaryColumnIds(), copied.getSharedDictionaryColumnIds());
             assertEquals(org[i].getPrimaryKey(), copied.getPrimaryKey());
         }
     }
@@ -0,0 +1,147 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+
+/**
+ * Testcases for Bloom filters written by {@link ColumnFileWriterBundle}
+ * and key probes on {@link ColumnFileReaderBundle}.
+ */
+public class ColumnFileBloomFilterTest {
+    private static final int COUNT = 30000;
+    private LocalVirtualFile tmpFolder;
+
+    @Before
+    public void setUp () throws Exception {
+        tmpFolder = new LocalVirtualFile("test/bloomfilter/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    /** writes even numbers only. */
+    private ColumnFileBundle writeFile (String name, CompressionType compression, boolean bloomFilter) throws Exception {
+        ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, name, ColumnType.INTEGER, compression, true);
+        try {
+            if (bloomFilter) {
+                assertEquals (ColumnFileBundle.isBloomFilterSupported(compression), writer.enableBloomFilter());
+            }
+            int[] values = new int[COUNT];
+            for (int i = 0; i < COUNT; ++i) {
+                values[i] = i * 2;
+            }
+            @SuppressWarnings("unchecked")
+            TypedWriter<Integer, int[]> dataWriter = (TypedWriter<Integer, int[]>) writer.getDataWriter();
+            dataWriter.writeValues(values, 0, COUNT);
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+        return new ColumnFileBundle(writer, false);
+    }
+
+    private static void validateProbes (ColumnFileReaderBundle reader, boolean exact) throws Exception {
+        for (int i = 0; i < COUNT; ++i) {
+            assertTrue (reader.mightContain(i * 2));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < COUNT; ++i) {
+            if (reader.mightContain(i * 2 + 1)) {
+                ++falsePositives;
+            }
+        }
+        if (exact) {
+            assertEquals (0, falsePositives);
+        } else {
+            assertTrue ("false positives=" + falsePositives, falsePositives < COUNT * 3 / 100);
+        }
+        assertTrue (reader.mightContainAny(new int[]{-1, 100, -3}, 0, 3));
+        if (exact) {
+            assertFalse (reader.mightContainAny(new int[]{-1, 100, -3}, 2, 1));
+        }
+    }
+
+    @Test
+    public void testLZ4 () throws Exception {
+        ColumnFileBundle file = writeFile("lz4", CompressionType.LZ4, true);
+        assertTrue (file.hasBloomFilter());
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            assertNotNull (reader.getBloomFilter());
+            assertEquals (COUNT, reader.getBloomFilter().getKeyCount());
+            validateProbes (reader, false);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testBitPack () throws Exception {
+        ColumnFileBundle file = writeFile("bitpack", CompressionType.BITPACK, true);
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            assertNotNull (reader.getBloomFilter());
+            validateProbes (reader, false);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testDictionaryFallback () throws Exception {
+        // dictionary-compressed files don't have Bloom filters. the dictionary gives the exact answer
+        ColumnFileBundle file = writeFile("dict", CompressionType.DICTIONARY, true);
+        assertFalse (file.hasBloomFilter());
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            assertNull (reader.getBloomFilter());
+            validateProbes (reader, true);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testNoBloomFilter () throws Exception {
+        ColumnFileBundle file = writeFile("none", CompressionType.NONE, false);
+        assertFalse (file.hasBloomFilter());
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            assertNull (reader.getBloomFilter());
+            // without any filter, we can't skip the file
+            assertTrue (reader.mightContain(-1));
+            assertTrue (reader.mightContainAny(new int[]{-1}, 0, 1));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMoveFiles () throws Exception {
+        ColumnFileBundle file = writeFile("move", CompressionType.NONE, true);
+        file.moveFiles(tmpFolder.getChildFile("moved"), "moved");
+        assertTrue (file.hasBloomFilter());
+        assertTrue (file.getBloomFilterFile().getAbsolutePath().endsWith("moved.blm"));
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            validateProbes (reader, false);
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Testcases for position-list reads ({@link TypedReader#readValuesAtPositions(Object, int, int[], int)})
+ * and the late materialization in {@link ColumnFileTupleReader#setFilter(int, Comparable, Comparable)}.
+ */
+public class ColumnFileLateMaterializationTest {
+    private static final int COUNT = 30000;
+    private static final long DAY = 86400000L;
+    private static final ColumnType[] TYPES = new ColumnType[]{
+        ColumnType.DATE, ColumnType.VARCHAR, ColumnType.INTEGER, ColumnType.VARCHAR, ColumnType.BIGINT, ColumnType.VARCHAR};
+    private static final CompressionType[] COMPRESSIONS = new CompressionType[]{
+        CompressionType.BITPACK, CompressionType.LZ4, CompressionType.NONE, CompressionType.DICTIONARY, CompressionType.RLE, CompressionType.NONE};
+    private LocalVirtualFile tmpFolder;
+    private ColumnFileBundle[] files;
+
+    @Before
+    public void setUp () throws Exception {
+        tmpFolder = new LocalVirtualFile("test/latemat/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+        files = new ColumnFileBundle[TYPES.length];
+        for (int col = 0; col < TYPES.length; ++col) {
+            ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, "col" + col, TYPES[col], COMPRESSIONS[col], true);
+            try {
+                for (int i = 0; i < COUNT; ++i) {
+                    writeValue(writer.getDataWriter(), col, i);
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            files[col] = new ColumnFileBundle(writer, false);
+        }
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void writeValue (TypedWriter writer, int col, int tuple) throws Exception {
+        writer.writeValue((Comparable) getValue(col, tuple));
+    }
+    private static Comparable<?> getValue (int col, int tuple) {
+        switch (col) {
+        case 0: return 10000L * DAY + (tuple / 100) * DAY;
+        case 1: return "str" + tuple;
+        case 2: return (tuple * 7919) % 1000;
+        case 3: return "v" + (10 + tuple % 37);
+        case 4: return (long) (tuple / 50);
+        default: return "s" + tuple;
+        }
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testReadValuesAtPositions () throws Exception {
+        int[] positions = new int[]{0, 1, 2, 10, 11, 500, 3000, 3001, 12345};
+        for (int col = 0; col < TYPES.length; ++col) {
+            ColumnFileReaderBundle bundle = new ColumnFileReaderBundle(files[col]);
+            try {
+                TypedReader reader = bundle.getDataReader();
+                reader.skipValues(100);
+                Object buffer = reader.getValueTraits().createArray(positions.length + 2);
+                assertEquals (positions.length, reader.readValuesAtPositions(buffer, 2, positions, positions.length));
+                for (int i = 0; i < positions.length; ++i) {
+                    assertEquals ("col" + col, getValue(col, 100 + positions[i]), reader.getValueTraits().get(buffer, 2 + i));
+                }
+                // the reader is now after the last position
+                assertEquals ("col" + col, getValue(col, 100 + 12346), reader.readValue());
+            } finally {
+                bundle.close();
+            }
+        }
+    }
+
+    @Test
+    public void testFilterBatch () throws Exception {
+        // the predicate on the unclustered column selects 1% of tuples
+        verifyFilterBatch(2, 500, 509, 300);
+    }
+
+    @Test
+    public void testFilterBatchDictionary () throws Exception {
+        // the predicate is evaluated on dictionary codes
+        verifyFilterBatch(3, "v20", "v21", 811 + 811);
+    }
+
+    @Test
+    public void testFilterBatchClustered () throws Exception {
+        // the zone map also skips zones
+        verifyFilterBatch(0, getValue(0, 5000), getValue(0, 5999), 1000);
+    }
+
+    @Test
+    public void testFilterBatchNoMatch () throws Exception {
+        verifyFilterBatch(3, "x", null, 0);
+    }
+
+    private void verifyFilterBatch (int filterColumn, Comparable<?> lower, Comparable<?> upper, int expectedCount) throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+        try {
+            reader.setFilter(filterColumn, lower, upper);
+            TupleBuffer buffer = new TupleBuffer(reader.getColumnTypes(), 1000);
+            int count = 0;
+            int prevTuple = -1;
+            while (true) {
+                buffer.resetCount();
+                int read = reader.nextBatch(buffer);
+                if (read < 0) {
+                    break;
+                }
+                assertTrue (read > 0);
+                String[] strs = buffer.getColumnBufferAsString(1);
+                for (int i = 0; i < read; ++i) {
+                    int tuple = Integer.parseInt(strs[i].substring(3));
+                    assertTrue (tuple > prevTuple);
+                    prevTuple = tuple;
+                    assertTrue (new RangePredicate(lower, upper).matches(getValue(filterColumn, tuple)));
+                    assertEquals (((Long) getValue(0, tuple)).longValue(), buffer.getColumnBufferAsLong(0)[i]);
+                    assertEquals (getValue(2, tuple), buffer.getColumnBufferAsInt(2)[i]);
+                    assertEquals (getValue(3, tuple), buffer.getColumnBufferAsString(3)[i]);
+                    assertEquals (getValue(4, tuple), buffer.getColumnBufferAsLong(4)[i]);
+                    assertEquals (getValue(5, tuple), buffer.getColumnBufferAsString(5)[i]);
+                    ++count;
+                }
+            }
+            assertEquals (expectedCount, count);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFilterRestrictToTuples () throws Exception {
+        // parallel scans read tuple ranges of the same file with separate readers
+        int total = 0;
+        for (int begin = 0; begin < COUNT; begin += 7000) {
+            int end = Math.min(COUNT, begin + 7000);
+            ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+            try {
+                reader.setFilter(2, 500, 509);
+                reader.restrictToTuples(begin, end);
+                int prevTuple = begin - 1;
+                while (reader.next()) {
+                    int tuple = Integer.parseInt(reader.getVarchar(1).substring(3));
+                    assertTrue (tuple > prevTuple && tuple < end);
+                    prevTuple = tuple;
+                    int value = reader.getInteger(2);
+                    assertTrue (value >= 500 && value <= 509);
+                    assertEquals (getValue(3, tuple), reader.getVarchar(3));
+                    ++total;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        assertEquals (300, total);
+    }
+
+    @Test
+    public void testStringArenaBatch () throws Exception {
+        // VARCHAR columns are read into arenas without String objects
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+        try {
+            TupleBuffer buffer = new TupleBuffer(reader.getColumnTypes(), 1000, true, false);
+            int tuple = 0;
+            while (true) {
+                buffer.resetCount();
+                int read = reader.nextBatch(buffer);
+                if (read < 0) {
+                    break;
+                }
+                StringArena lz4 = buffer.getColumnBufferAsStringArena(1);
+                StringArena dict = buffer.getColumnBufferAsStringArena(3);
+                StringArena none = buffer.getColumnBufferAsStringArena(5);
+                assertEquals (read, lz4.size());
+                assertEquals (read, dict.size());
+                assertEquals (read, none.size());
+                for (int i = 0; i < read; ++i) {
+                    assertEquals (getValue(1, tuple), lz4.getString(i));
+                    assertEquals (getValue(3, tuple), dict.getString(i));
+                    assertEquals (getValue(5, tuple), none.getString(i));
+                    assertEquals (getValue(2, tuple), buffer.getColumnBufferAsInt(2)[i]);
+                    ++tuple;
+                }
+            }
+            assertEquals (COUNT, tuple);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testStringArenaFilter () throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+        ColumnFileReaderBundle dictBundle = new ColumnFileReaderBundle(files[3]);
+        try {
+            reader.setFilter(3, "v30", "v31");
+            TupleBuffer buffer = new TupleBuffer(reader.getColumnTypes(), 700, true, true);
+            OrderedDictionary<String, String[]> dict = (OrderedDictionary<String, String[]>) dictBundle.getDictionary();
+            Integer v30 = dict.compress("v30");
+            int count = 0;
+            while (true) {
+                buffer.resetCount();
+                int read = reader.nextBatch(buffer);
+                if (read < 0) {
+                    break;
+                }
+                StringArena strs = buffer.getColumnBufferAsStringArena(1);
+                StringArena filtered = buffer.getColumnBufferAsStringArena(3);
+                for (int i = 0; i < read; ++i) {
+                    int tuple = Integer.parseInt(strs.getString(i).substring(3));
+                    assertEquals (getValue(3, tuple), filtered.getString(i));
+                    // dictionary lookup on the bytes
+                    assertEquals (dict.compress((String) getValue(3, tuple)), dict.compress(filtered, i));
+                    assertEquals (getValue(3, tuple).equals("v30"), v30.equals(dict.compress(filtered, i)));
+                    assertEquals (getValue(5, tuple), buffer.getColumnBufferAsStringArena(5).getString(i));
+                    ++count;
+                }
+            }
+            assertEquals (811 + 811, count);
+            StringArena unknown = new StringArena(1, 16);
+            unknown.append("v99");
+            assertNull (dict.compress(unknown, 0));
+        } finally {
+            dictBundle.close();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFilterNext () throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+        try {
+            reader.setFilter(3, "v30", "v30");
+            int count = 0;
+            while (reader.next()) {
+                int tuple = Integer.parseInt(reader.getVarchar(1).substring(3));
+                assertEquals (20, tuple % 37);
+                assertEquals ("v30", reader.getVarchar(3));
+                assertEquals (getValue(2, tuple), reader.getInteger(2));
+                assertEquals (getValue(4, tuple), reader.getBigint(4));
+                ++count;
+            }
+            assertEquals ((COUNT - 20 + 36) / 37, count);
+        } finally {
+            reader.close();
+        }
+    }
+}
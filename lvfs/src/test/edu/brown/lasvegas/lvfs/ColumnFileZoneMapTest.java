@@ -0,0 +1,159 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Testcases for zone maps written by {@link ColumnFileWriterBundle}
+ * and range-restricted scans on {@link ColumnFileReaderBundle} and {@link ColumnFileTupleReader}.
+ */
+public class ColumnFileZoneMapTest {
+    private static final int COUNT = 50000;
+    private static final long DAY = 86400000L;
+    private LocalVirtualFile tmpFolder;
+    private ColumnFileBundle[] files;
+
+    @Before
+    public void setUp () throws Exception {
+        tmpFolder = new LocalVirtualFile("test/zonemap/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+        ColumnType[] types = new ColumnType[]{ColumnType.DATE, ColumnType.VARCHAR, ColumnType.INTEGER};
+        CompressionType[] compressions = new CompressionType[]{CompressionType.BITPACK, CompressionType.LZ4, CompressionType.NONE};
+        files = new ColumnFileBundle[types.length];
+        for (int col = 0; col < types.length; ++col) {
+            ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, "col" + col, types[col], compressions[col], true);
+            try {
+                for (int i = 0; i < COUNT; ++i) {
+                    writeValue(writer.getDataWriter(), col, i);
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            assertNotNull (writer.getZoneMapFile());
+            assertTrue (writer.getZoneMapFile().exists());
+            files[col] = new ColumnFileBundle(writer, false);
+        }
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void writeValue (TypedWriter writer, int col, int tuple) throws Exception {
+        switch (col) {
+        case 0: writer.writeValue(getDate(tuple)); break;
+        case 1: writer.writeValue("str" + tuple); break;
+        default: writer.writeValue(tuple); break;
+        }
+    }
+    /** dates are clustered by the loading order. */
+    private static Long getDate (int tuple) {
+        return 10000L * DAY + (tuple / 100) * DAY;
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    @Test
+    public void testQualifyingTupleRanges () throws Exception {
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(files[0]);
+        try {
+            assertNotNull (reader.getZoneMap());
+            List<TupleRange> ranges = reader.getQualifyingTupleRanges(getDate(20000), getDate(20999));
+            assertEquals (1, ranges.size());
+            assertTrue (ranges.get(0).startTuple <= 20000);
+            assertTrue (ranges.get(0).endTuple >= 21000);
+            assertTrue (ranges.get(0).getTupleCount() < 2000 + 2 * ZoneMap.DEFAULT_TUPLES_PER_ZONE);
+            assertEquals (0, reader.getQualifyingTupleRanges(null, getDate(0) - DAY).size());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testNoZoneMap () throws Exception {
+        // files written before zone maps were introduced don't have it
+        files[2].getZoneMapFile().delete();
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(files[2]);
+        try {
+            assertNull (reader.getZoneMap());
+            List<TupleRange> ranges = reader.getQualifyingTupleRanges(10, 20);
+            assertEquals (1, ranges.size());
+            assertEquals (0, ranges.get(0).startTuple);
+            assertEquals (COUNT, ranges.get(0).endTuple);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testRestrictedScanBatch () throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+        try {
+            // two ranges: less than 5000, and between 30000 and 31000
+            reader.setTupleRanges(Arrays.asList(new TupleRange(0, 5000), new TupleRange(30000, 31000)));
+            TupleBuffer buffer = new TupleBuffer(reader.getColumnTypes(), 1200);
+            int expected = 0;
+            while (true) {
+                buffer.resetCount();
+                int read = reader.nextBatch(buffer);
+                if (read < 0) {
+                    break;
+                }
+                long[] dates = buffer.getColumnBufferAsLong(0);
+                String[] strs = buffer.getColumnBufferAsString(1);
+                int[] ints = buffer.getColumnBufferAsInt(2);
+                for (int i = 0; i < read; ++i) {
+                    if (expected == 5000) {
+                        expected = 30000;
+                    }
+                    assertEquals (getDate(expected).longValue(), dates[i]);
+                    assertEquals ("str" + expected, strs[i]);
+                    assertEquals (expected, ints[i]);
+                    ++expected;
+                }
+            }
+            assertEquals (31000, expected);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testRestrictToRange () throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(files);
+        try {
+            reader.restrictToRange(2, 40000, 40010);
+            int matched = 0, scanned = 0;
+            while (reader.next()) {
+                ++scanned;
+                int value = reader.getInteger(2);
+                assertEquals ("str" + value, reader.getVarchar(1));
+                assertEquals (getDate(value).longValue(), reader.getBigint(0));
+                if (value >= 40000 && value <= 40010) {
+                    ++matched;
+                }
+            }
+            assertEquals (11, matched);
+            assertTrue (scanned <= 2 * ZoneMap.DEFAULT_TUPLES_PER_ZONE);
+        } finally {
+            reader.close();
+        }
+    }
+}
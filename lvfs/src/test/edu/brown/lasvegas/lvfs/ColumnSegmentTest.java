@@ -0,0 +1,244 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnFileLayout;
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.LVColumnFile;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Testcases for {@link ColumnSegment} and {@link VirtualFileSlice}.
+ */
+public class ColumnSegmentTest {
+    private static final int COUNT = 20000;
+    private static final ColumnType[] TYPES = new ColumnType[]{
+        ColumnType.INTEGER, ColumnType.VARCHAR, ColumnType.BIGINT, ColumnType.VARCHAR};
+    private static final CompressionType[] COMPRESSIONS = new CompressionType[]{
+        CompressionType.LZ4, CompressionType.DICTIONARY, CompressionType.RLE, CompressionType.NONE};
+    private LocalVirtualFile tmpFolder;
+    private ColumnFileBundle[] files;
+
+    @Before
+    public void setUp () throws Exception {
+        tmpFolder = new LocalVirtualFile("test/segment/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+        files = new ColumnFileBundle[TYPES.length];
+        for (int col = 0; col < TYPES.length; ++col) {
+            ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, "col" + col, TYPES[col], COMPRESSIONS[col], true);
+            try {
+                if (col == 0) {
+                    writer.enableBloomFilter();
+                }
+                for (int i = 0; i < COUNT; ++i) {
+                    writeValue(writer.getDataWriter(), col, i);
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            files[col] = new ColumnFileBundle(writer, false);
+        }
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void writeValue (TypedWriter writer, int col, int tuple) throws Exception {
+        writer.writeValue((Comparable) getValue(col, tuple));
+    }
+    private static Comparable<?> getValue (int col, int tuple) {
+        switch (col) {
+        case 0: return tuple * 3;
+        case 1: return "v" + (tuple % 100);
+        case 2: return (long) (tuple / 30);
+        default: return "str" + tuple;
+        }
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    private ColumnFileBundle[] packAll (String prefix) throws Exception {
+        ColumnFileBundle[] packed = new ColumnFileBundle[files.length];
+        for (int col = 0; col < files.length; ++col) {
+            VirtualFile segment = tmpFolder.getChildFile(prefix + col + ".seg");
+            packed[col] = ColumnSegment.pack(files[col], segment);
+            assertTrue (ColumnSegment.isSegmentFile(segment));
+            assertFalse (ColumnSegment.isSegmentFile(files[col].getDataFile()));
+        }
+        return packed;
+    }
+
+    @Test
+    public void testPackAndOpen () throws Exception {
+        ColumnFileBundle[] packed = packAll("packed");
+        for (int col = 0; col < files.length; ++col) {
+            assertEquals (files[col].getColumnType(), packed[col].getColumnType());
+            assertEquals (files[col].getCompressionType(), packed[col].getCompressionType());
+            assertEquals (files[col].getTupleCount(), packed[col].getTupleCount());
+            assertEquals (files[col].getDictionaryBytesPerEntry(), packed[col].getDictionaryBytesPerEntry());
+            assertEquals (files[col].getDataFileChecksum(), packed[col].getDataFileChecksum());
+            assertEquals (files[col].getDataFile().length(), packed[col].getDataFile().length());
+            assertTrue (packed[col].getDataFile() instanceof VirtualFileSlice);
+            assertEquals (files[col].getDictionaryFile() != null, packed[col].getDictionaryFile() != null);
+            assertEquals (files[col].getPositionFile() != null, packed[col].getPositionFile() != null);
+            assertEquals (files[col].getZoneMapFile() != null, packed[col].getZoneMapFile() != null);
+        }
+        verifyScan(packed, false);
+        verifyScan(packed, true);
+
+        // indexes embedded in the segment
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(packed[0]);
+        try {
+            assertNotNull (reader.getZoneMap());
+            assertNotNull (reader.getBloomFilter());
+            assertTrue (reader.mightContain(300));
+            assertEquals (1, reader.getQualifyingTupleRanges(300, 300).size());
+        } finally {
+            reader.close();
+        }
+        reader = new ColumnFileReaderBundle(packed[1]);
+        try {
+            assertEquals (100, reader.getDictionary().getDictionarySize());
+        } finally {
+            reader.close();
+        }
+        reader = new ColumnFileReaderBundle(packed[3]);
+        try {
+            reader.getDataReader().seekToTupleAbsolute(12345);
+            assertEquals ("str12345", reader.getDataReader().readValue());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void verifyScan (ColumnFileBundle[] bundles, boolean memoryMapped) throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(bundles, 1 << 12, memoryMapped);
+        try {
+            TupleBuffer buffer = new TupleBuffer(reader.getColumnTypes(), 3000);
+            int tuple = 0;
+            while (true) {
+                buffer.resetCount();
+                int read = reader.nextBatch(buffer);
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; ++i) {
+                    assertEquals (getValue(0, tuple), buffer.getColumnBufferAsInt(0)[i]);
+                    assertEquals (getValue(1, tuple), buffer.getColumnBufferAsString(1)[i]);
+                    assertEquals (getValue(2, tuple), buffer.getColumnBufferAsLong(2)[i]);
+                    assertEquals (getValue(3, tuple), buffer.getColumnBufferAsString(3)[i]);
+                    ++tuple;
+                }
+            }
+            assertEquals (COUNT, tuple);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSliceStream () throws Exception {
+        VirtualFile segment = tmpFolder.getChildFile("slice.seg");
+        ColumnSegment.pack(files[2], segment);
+        ColumnFileBundle packed = ColumnSegment.open(segment);
+        VirtualFileSlice slice = (VirtualFileSlice) packed.getPositionFile();
+        byte[] original = readAll(files[2].getPositionFile());
+        assertArrayEquals (original, readAll(slice));
+        assertEquals (original.length, slice.length());
+        assertEquals ("slice.pos", slice.getName());
+    }
+    @Test
+    public void testPackInPlace () throws Exception {
+        for (int col = 0; col < TYPES.length; ++col) {
+            byte[] originalData = readAll(files[col].getDataFile());
+            LocalVirtualFile originalDataFile = new LocalVirtualFile(files[col].getDataFile().getAbsolutePath());
+            byte[] originalPosition = files[col].getPositionFile() == null ? null : readAll(files[col].getPositionFile());
+            LocalVirtualFile segment = tmpFolder.getChildFile("inplace" + col + ".seg");
+            ColumnFileBundle packed = ColumnSegment.packInPlace(files[col], segment);
+            // the data file became the segment file, and the other files were deleted
+            assertTrue (ColumnSegment.isSegmentFile(segment));
+            assertFalse (originalDataFile.exists());
+            assertTrue (files[col].getPositionFile() == null || !files[col].getPositionFile().exists());
+            assertArrayEquals (originalData, readAll(packed.getDataFile()));
+            if (originalPosition != null) {
+                assertArrayEquals (originalPosition, readAll(packed.getPositionFile()));
+            }
+            assertEquals (COUNT, packed.getTupleCount());
+            ColumnFileReaderBundle reader = new ColumnFileReaderBundle(packed);
+            try {
+                reader.getDataReader().seekToTupleAbsolute(COUNT - 1);
+                assertEquals (getValue(col, COUNT - 1), reader.getDataReader().readValue());
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static byte[] readAll (VirtualFile file) throws Exception {
+        byte[] bytes = new byte[(int) file.length()];
+        java.io.InputStream in = file.getInputStream();
+        try {
+            int total = 0;
+            while (total < bytes.length) {
+                int read = in.read(bytes, total, bytes.length - total);
+                assertTrue (read > 0);
+                total += read;
+            }
+            assertEquals (-1, in.read());
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testColumnFileRecord () throws Exception {
+        // a registered column file whose files are packed into a segment file is opened from the segment
+        LocalVirtualFile segment = tmpFolder.getChildFile("123.seg");
+        ColumnSegment.pack(files[1], segment);
+        LVColumnFile record = new LVColumnFile();
+        record.setColumnFileId(123);
+        record.setColumnType(files[1].getColumnType());
+        record.setCompressionType(files[1].getCompressionType());
+        record.setDictionaryBytesPerEntry(files[1].getDictionaryBytesPerEntry());
+        record.setTupleCount(COUNT);
+        record.setLocalFilePath(tmpFolder.getChildFile("123").getAbsolutePath());
+        record.setLayout(ColumnFileLayout.SEGMENT);
+        ColumnFileBundle bundle = new ColumnFileBundle(record);
+        assertNotNull (bundle.getSegmentFile());
+        assertEquals (123, bundle.getColumnFileId());
+        assertTrue (bundle.getDictionaryFile() instanceof VirtualFileSlice);
+        assertEquals (record.getLocalFilePath(), bundle.toLVColumnFile().getLocalFilePath());
+        assertEquals (ColumnFileLayout.SEGMENT, bundle.toLVColumnFile().getLayout());
+
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(bundle);
+        try {
+            reader.getDataReader().seekToTupleAbsolute(777);
+            assertEquals ("v77", reader.getDataReader().readValue());
+        } finally {
+            reader.close();
+        }
+
+        LocalVirtualFile movedFolder = tmpFolder.getChildFile("moved");
+        bundle.moveFiles(movedFolder, "456");
+        assertFalse (segment.exists());
+        assertEquals (123, bundle.getColumnFileId());
+        assertTrue (movedFolder.getChildFile("456.seg").exists());
+        assertEquals (COUNT, bundle.getTupleCount());
+        bundle.deleteFiles();
+        assertFalse (movedFolder.getChildFile("456.seg").exists());
+    }
+}
@@ -0,0 +1,169 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.lvfs.local.LocalDictFile;
+import edu.brown.lasvegas.traits.VarbinValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+import edu.brown.lasvegas.util.ByteArray;
+
+/**
+ * Testcases for {@link DictionaryPredicate}.
+ * Checks the results on codes against the same predicates evaluated on decompressed values.
+ */
+public class DictionaryPredicateTest {
+    /** interface to evaluate a predicate on a decompressed value. */
+    private static interface Expected {
+        boolean matches (String value);
+    }
+
+    /** sorted distinct strings like "Brand#12". */
+    private static String[] generateDictionary (int size) {
+        String[] dict = new String[size];
+        for (int i = 0; i < size; ++i) {
+            dict[i] = "Brand#" + (100000 + i * 2); // only even numbers
+        }
+        return dict;
+    }
+
+    /** evaluates the predicate on randomly generated codes with all the array types. */
+    private static void check (LocalDictFile<String, String[]> dict, DictionaryPredicate predicate, Expected expected) {
+        final int count = 5000;
+        Random random = new Random(1234L);
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; ++i) {
+            indexes[i] = random.nextInt(dict.getDictionarySize());
+        }
+        Object codes;
+        switch (dict.getBytesPerEntry()) {
+        case 1: codes = new byte[count]; break;
+        case 2: codes = new short[count]; break;
+        default: codes = new int[count]; break;
+        }
+        for (int i = 0; i < count; ++i) {
+            int code = dict.convertDictionaryIndexToCompressedValue(indexes[i]);
+            if (codes instanceof byte[]) {
+                ((byte[]) codes)[i] = (byte) code;
+            } else if (codes instanceof short[]) {
+                ((short[]) codes)[i] = (short) code;
+            } else {
+                ((int[]) codes)[i] = code;
+            }
+        }
+
+        int[] selection = new int[count];
+        final int off = 7;
+        int selected = predicate.select(codes, off, count - off, selection);
+        int pos = 0;
+        for (int i = off; i < count; ++i) {
+            String value = dict.getDictionary()[indexes[i]];
+            assertEquals (expected.matches(value), predicate.matches(dict.convertDictionaryIndexToCompressedValue(indexes[i])));
+            if (expected.matches(value)) {
+                assertTrue (pos < selected);
+                assertEquals (i, selection[pos++]);
+            }
+        }
+        assertEquals (pos, selected);
+        boolean anyMatch = false;
+        for (String value : dict.getDictionary()) {
+            anyMatch |= expected.matches(value);
+        }
+        assertEquals (!anyMatch, predicate.isEmpty());
+
+        // refine with the same predicate doesn't change the selection
+        int[] copied = Arrays.copyOf(selection, selected);
+        assertEquals (selected, predicate.refine(codes, copied, selected));
+        for (int i = 0; i < selected; ++i) {
+            assertEquals (selection[i], copied[i]);
+        }
+    }
+
+    private static void checkAll (int size) throws Exception {
+        final String[] values = generateDictionary(size);
+        LocalDictFile<String, String[]> dict = new LocalDictFile<String, String[]>(values, new VarcharValueTraits());
+        final String middle = values[size / 2];
+        final String notExist = "Brand#" + (100000 + size + 1); // odd number
+
+        check (dict, DictionaryPredicate.equalTo(dict, middle), new Expected() {
+            public boolean matches(String value) { return value.equals(middle); }
+        });
+        assertTrue (DictionaryPredicate.equalTo(dict, notExist).isEmpty());
+
+        check (dict, DictionaryPredicate.range(dict, values[3], true, middle, false), new Expected() {
+            public boolean matches(String value) { return value.compareTo(values[3]) >= 0 && value.compareTo(middle) < 0; }
+        });
+        check (dict, DictionaryPredicate.range(dict, notExist, false, null, false), new Expected() {
+            public boolean matches(String value) { return value.compareTo(notExist) > 0; }
+        });
+        check (dict, DictionaryPredicate.range(dict, null, false, notExist, true), new Expected() {
+            public boolean matches(String value) { return value.compareTo(notExist) <= 0; }
+        });
+        check (dict, DictionaryPredicate.range(dict, middle, false, middle, true), new Expected() {
+            public boolean matches(String value) { return false; }
+        });
+        check (dict, DictionaryPredicate.range(dict, "A", true, "B", true), new Expected() {
+            public boolean matches(String value) { return false; }
+        });
+
+        final String prefix = middle.substring(0, middle.length() - 1);
+        check (dict, DictionaryPredicate.startsWith(dict, prefix), new Expected() {
+            public boolean matches(String value) { return value.startsWith(prefix); }
+        });
+        check (dict, DictionaryPredicate.startsWith(dict, "Brand#"), new Expected() {
+            public boolean matches(String value) { return true; }
+        });
+
+        final ArrayList<String> inList = new ArrayList<String>();
+        inList.add(values[0]);
+        inList.add(notExist);
+        inList.add(middle);
+        inList.add(values[size - 1]);
+        DictionaryPredicate inPredicate = DictionaryPredicate.in(dict, inList);
+        assertFalse (inPredicate.isRange());
+        check (dict, inPredicate, new Expected() {
+            public boolean matches(String value) { return inList.contains(value); }
+        });
+    }
+
+    @Test
+    public void test1Byte () throws Exception {
+        checkAll (200);
+    }
+    @Test
+    public void test2Bytes () throws Exception {
+        checkAll (3000);
+    }
+    @Test
+    public void test4Bytes () throws Exception {
+        checkAll (70000);
+    }
+
+    @Test
+    public void testVarbinPrefix () throws Exception {
+        ByteArray[] values = new ByteArray[]{
+            new ByteArray(new byte[]{-5, 1}),
+            new ByteArray(new byte[]{1, 2}),
+            new ByteArray(new byte[]{1, 2, 3}),
+            new ByteArray(new byte[]{1, 127}),
+            new ByteArray(new byte[]{1, 127, 5}),
+            new ByteArray(new byte[]{2, -100}),
+        };
+        LocalDictFile<ByteArray, ByteArray[]> dict = new LocalDictFile<ByteArray, ByteArray[]>(values, new VarbinValueTraits());
+        DictionaryPredicate predicate = DictionaryPredicate.startsWith(dict, new ByteArray(new byte[]{1, 2}));
+        assertEquals (dict.convertDictionaryIndexToCompressedValue(1), predicate.getMinCode());
+        assertEquals (dict.convertDictionaryIndexToCompressedValue(2), predicate.getMaxCode());
+        predicate = DictionaryPredicate.startsWith(dict, new ByteArray(new byte[]{1, 127}));
+        assertEquals (dict.convertDictionaryIndexToCompressedValue(3), predicate.getMinCode());
+        assertEquals (dict.convertDictionaryIndexToCompressedValue(4), predicate.getMaxCode());
+        predicate = DictionaryPredicate.startsWith(dict, new ByteArray(new byte[]{1}));
+        assertEquals (dict.convertDictionaryIndexToCompressedValue(1), predicate.getMinCode());
+        assertEquals (dict.convertDictionaryIndexToCompressedValue(4), predicate.getMaxCode());
+        assertTrue (DictionaryPredicate.startsWith(dict, new ByteArray(new byte[]{3})).isEmpty());
+    }
+}
@@ -0,0 +1,271 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnFileLayout;
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.LVColumnFile;
+import edu.brown.lasvegas.lvfs.local.LocalPaxFile;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.tuple.ColumnFileTupleReader;
+import edu.brown.lasvegas.tuple.TupleBuffer;
+
+/**
+ * Testcases for {@link PaxColumnGroup} and {@link LocalPaxFile}.
+ */
+public class PaxColumnGroupTest {
+    private static final int COUNT = 25000;
+    private static final int TUPLES_PER_BLOCK = 3000;
+    private static final int[] COLUMN_IDS = new int[]{11, 12, 13};
+    private static final ColumnType[] TYPES = new ColumnType[]{
+        ColumnType.BIGINT, ColumnType.INTEGER, ColumnType.VARCHAR};
+    private static final CompressionType[] COMPRESSIONS = new CompressionType[]{
+        CompressionType.NONE, CompressionType.LZ4, CompressionType.GZIP_BEST_COMPRESSION};
+    private LocalVirtualFile tmpFolder;
+    private ColumnFileBundle[] files;
+
+    @Before
+    public void setUp () throws Exception {
+        tmpFolder = new LocalVirtualFile("test/pax/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+        files = new ColumnFileBundle[TYPES.length];
+        for (int col = 0; col < TYPES.length; ++col) {
+            ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, "col" + col, TYPES[col], COMPRESSIONS[col], true);
+            try {
+                for (int i = 0; i < COUNT; ++i) {
+                    writeValue(writer.getDataWriter(), col, i);
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            files[col] = new ColumnFileBundle(writer, false);
+        }
+    }
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void writeValue (TypedWriter writer, int col, int tuple) throws Exception {
+        writer.writeValue((Comparable) getValue(col, tuple));
+    }
+    private static Comparable<?> getValue (int col, int tuple) {
+        switch (col) {
+        case 0: return tuple * 1000000007L;
+        case 1: return tuple % 50;
+        default: return "str" + tuple;
+        }
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    @Test
+    public void testPack () throws Exception {
+        LocalVirtualFile paxFile = tmpFolder.getChildFile("group.pax");
+        ColumnFileBundle[] packed = PaxColumnGroup.pack(files, COLUMN_IDS, paxFile, TUPLES_PER_BLOCK);
+        assertEquals (TYPES.length, packed.length);
+        assertFalse (tmpFolder.getChildFile("group.pax_0.tmp").exists());
+
+        LocalPaxFile pax = LocalPaxFile.open(paxFile);
+        assertEquals (3, pax.getColumnCount());
+        assertEquals (COUNT, pax.getTotalTuples());
+        assertEquals ((COUNT + TUPLES_PER_BLOCK - 1) / TUPLES_PER_BLOCK, pax.getBlockCount());
+        for (int col = 0; col < TYPES.length; ++col) {
+            assertEquals (col, pax.getColumnIndex(COLUMN_IDS[col]));
+            assertEquals (TYPES[col], pax.getColumnType(col));
+            assertEquals (COMPRESSIONS[col], pax.getCompressionType(col));
+            assertSame (paxFile, packed[col].getPaxFile());
+            assertEquals (COLUMN_IDS[col], packed[col].getPaxColumnId());
+            assertEquals (COUNT, packed[col].getTupleCount());
+        }
+        assertEquals (-1, pax.getColumnIndex(99));
+
+        verifyScan(packed, false);
+        verifyScan(packed, true);
+    }
+
+    private void verifyScan (ColumnFileBundle[] bundles, boolean memoryMapped) throws Exception {
+        ColumnFileTupleReader reader = new ColumnFileTupleReader(bundles, 1 << 12, memoryMapped);
+        try {
+            TupleBuffer buffer = new TupleBuffer(reader.getColumnTypes(), 1234);
+            int tuple = 0;
+            while (true) {
+                buffer.resetCount();
+                int read = reader.nextBatch(buffer);
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; ++i) {
+                    assertEquals (getValue(0, tuple), buffer.getColumnBufferAsLong(0)[i]);
+                    assertEquals (getValue(1, tuple), buffer.getColumnBufferAsInt(1)[i]);
+                    assertEquals (getValue(2, tuple), buffer.getColumnBufferAsString(2)[i]);
+                    ++tuple;
+                }
+            }
+            assertEquals (COUNT, tuple);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testSeekAndPositions () throws Exception {
+        ColumnFileBundle[] packed = PaxColumnGroup.pack(files, COLUMN_IDS, tmpFolder.getChildFile("seek.pax"), TUPLES_PER_BLOCK);
+        int[] positions = new int[]{0, 1, 2999, 3000, 3001, 9000, 20000};
+        for (int col = 0; col < TYPES.length; ++col) {
+            ColumnFileReaderBundle bundle = new ColumnFileReaderBundle(packed[col]);
+            try {
+                TypedReader reader = bundle.getDataReader();
+                assertEquals (COUNT, reader.getTotalTuples());
+                reader.seekToTupleAbsolute(6001);
+                assertEquals (getValue(col, 6001), reader.readValue());
+                reader.seekToTupleAbsolute(10);
+                Object buffer = reader.getValueTraits().createArray(positions.length);
+                assertEquals (positions.length, reader.readValuesAtPositions(buffer, 0, positions, positions.length));
+                for (int i = 0; i < positions.length; ++i) {
+                    assertEquals (getValue(col, 10 + positions[i]), reader.getValueTraits().get(buffer, i));
+                }
+                assertEquals (getValue(col, 20011), reader.readValue());
+            } finally {
+                bundle.close();
+            }
+        }
+    }
+
+    @Test
+    public void testColumnFileRecord () throws Exception {
+        // all column files in the group point to the same PAX file
+        LocalVirtualFile paxFile = tmpFolder.getChildFile("123.pax");
+        PaxColumnGroup.pack(files, COLUMN_IDS, paxFile, TUPLES_PER_BLOCK);
+        ColumnFileBundle[] bundles = new ColumnFileBundle[TYPES.length];
+        for (int col = 0; col < TYPES.length; ++col) {
+            LVColumnFile record = new LVColumnFile();
+            record.setColumnFileId(200 + col);
+            record.setColumnId(COLUMN_IDS[col]);
+            record.setColumnType(TYPES[col]);
+            record.setCompressionType(COMPRESSIONS[col]);
+            record.setTupleCount(COUNT);
+            record.setLocalFilePath(tmpFolder.getChildFile("123").getAbsolutePath());
+            record.setLayout(ColumnFileLayout.PAX);
+            bundles[col] = new ColumnFileBundle(record);
+            assertEquals (paxFile.getAbsolutePath(), bundles[col].getPaxFile().getAbsolutePath());
+            assertEquals (COLUMN_IDS[col], bundles[col].getPaxColumnId());
+            assertEquals (record.getLocalFilePath(), bundles[col].toLVColumnFile().getLocalFilePath());
+            assertEquals (ColumnFileLayout.PAX, bundles[col].toLVColumnFile().getLayout());
+        }
+        verifyScan(bundles, false);
+
+        LocalVirtualFile copyFolder = tmpFolder.getChildFile("copied");
+        ColumnFileBundle[] copied = new ColumnFileBundle[TYPES.length];
+        for (int col = 0; col < TYPES.length; ++col) {
+            copied[col] = bundles[col].copyFiles(copyFolder);
+            assertEquals (200 + col, copied[col].getColumnFileId());
+        }
+        verifyScan(copied, false);
+
+        for (int col = 0; col < TYPES.length; ++col) {
+            bundles[col].deleteFiles();
+        }
+        assertFalse (paxFile.exists());
+    }
+
+    @Test
+    public void testChecksumsAndSizes () throws Exception {
+        LocalVirtualFile paxFile = tmpFolder.getChildFile("sizes.pax");
+        ColumnFileBundle[] packed = PaxColumnGroup.pack(files, COLUMN_IDS, paxFile, TUPLES_PER_BLOCK);
+        long totalSize = 0;
+        for (int col = 0; col < TYPES.length; ++col) {
+            // checksums and sizes are of the packed mini-pages of each column
+            assertTrue (packed[col].getDataFileChecksum() != 0);
+            assertTrue (packed[col].getDataFileSize() > 0);
+            assertTrue (packed[col].getDataFileSize() < paxFile.length());
+            assertEquals (packed[col].getDataFileSize(), packed[col].toLVColumnFile().getFileSize());
+            totalSize += packed[col].getDataFileSize();
+            for (int other = 0; other < col; ++other) {
+                assertTrue (packed[col].getDataFileChecksum() != packed[other].getDataFileChecksum());
+            }
+            // the zone maps are kept beside the PAX file
+            if (files[col].getZoneMapFile() != null) {
+                assertNotNull (packed[col].getZoneMapFile());
+                assertTrue (packed[col].getZoneMapFile().exists());
+                assertEquals (PaxColumnGroup.getIndexFile(paxFile, COLUMN_IDS[col], LVFSFileType.ZONE_MAP_FILE).getAbsolutePath(),
+                    packed[col].getZoneMapFile().getAbsolutePath());
+            }
+        }
+        assertTrue (totalSize <= paxFile.length());
+    }
+
+    @Test
+    public void testMoveColumnGroup () throws Exception {
+        LocalVirtualFile paxFile = tmpFolder.getChildFile("before.pax");
+        ColumnFileBundle[] packed = PaxColumnGroup.pack(files, COLUMN_IDS, paxFile, TUPLES_PER_BLOCK);
+        try {
+            // moving one column alone would break the other columns
+            packed[0].moveFiles(tmpFolder.getChildFile("moved"), "after");
+            fail ();
+        } catch (IOException ex) {
+        }
+        assertTrue (paxFile.exists());
+
+        LocalVirtualFile movedFolder = tmpFolder.getChildFile("moved");
+        // the moved file object is renamed. check with another object of the original path
+        LocalVirtualFile originalPaxFile = new LocalVirtualFile(paxFile.getAbsolutePath());
+        ColumnFileBundle.moveColumnGroup(packed, movedFolder, "after");
+        assertFalse (originalPaxFile.exists());
+        LocalVirtualFile movedPax = movedFolder.getChildFile("after.pax");
+        assertTrue (movedPax.exists());
+        for (int col = 0; col < TYPES.length; ++col) {
+            assertEquals (movedPax.getAbsolutePath(), packed[col].getPaxFile().getAbsolutePath());
+            assertEquals (movedPax.getAbsolutePath(), packed[col].getDataFile().getAbsolutePath());
+            if (packed[col].getZoneMapFile() != null) {
+                assertTrue (packed[col].getZoneMapFile().exists());
+                assertEquals (movedFolder.getAbsolutePath(), packed[col].getZoneMapFile().getParentFile().getAbsolutePath());
+                assertFalse (PaxColumnGroup.getIndexFile(originalPaxFile, COLUMN_IDS[col], LVFSFileType.ZONE_MAP_FILE).exists());
+            }
+        }
+        verifyScan(packed, false);
+
+        for (int col = 0; col < TYPES.length; ++col) {
+            packed[col].deleteFiles();
+            assertTrue (packed[col].getZoneMapFile() == null || !packed[col].getZoneMapFile().exists());
+        }
+        assertFalse (movedPax.exists());
+    }
+
+    @Test
+    public void testAlignedBlocks () throws Exception {
+        // blocks are cut at the same tuples regardless of the byte size of values
+        ColumnFileBundle[] packed = PaxColumnGroup.pack(new ColumnFileBundle[]{files[2], files[0]},
+            new int[]{1, 2}, tmpFolder.getChildFile("aligned.pax"), 10000);
+        LocalPaxFile pax = LocalPaxFile.open(packed[0].getPaxFile());
+        assertEquals (3, pax.getBlockCount());
+        assertEquals (ColumnType.VARCHAR, pax.getColumnType(pax.getColumnIndex(1)));
+        verifyColumn (packed[0], 2);
+        verifyColumn (packed[1], 0);
+    }
+    @SuppressWarnings("rawtypes")
+    private void verifyColumn (ColumnFileBundle file, int col) throws Exception {
+        ColumnFileReaderBundle bundle = new ColumnFileReaderBundle(file);
+        try {
+            TypedReader reader = bundle.getDataReader();
+            for (int i = 0; i < COUNT; ++i) {
+                assertEquals (getValue(col, i), reader.readValue());
+            }
+        } finally {
+            bundle.close();
+        }
+    }
+}
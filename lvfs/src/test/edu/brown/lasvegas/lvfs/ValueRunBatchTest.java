@@ -0,0 +1,180 @@
+package edu.brown.lasvegas.lvfs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.traits.DoubleValueTraits;
+import edu.brown.lasvegas.traits.FloatValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+
+/**
+ * Testcases for {@link ValueRunBatch}.
+ */
+public class ValueRunBatchTest {
+    private ValueRunBatch<Integer, int[]> batch;
+
+    @Before
+    public void setUp() {
+        // tuples 100-109: 5 x3, 7 x2, 5 x1, 9 x4
+        batch = new ValueRunBatch<Integer, int[]>(new IntegerValueTraits(), 8);
+        batch.add(5, 100, 3);
+        batch.add(7, 103, 2);
+        batch.add(5, 105, 1);
+        batch.add(9, 106, 4);
+    }
+
+    @Test
+    public void testBasic() {
+        assertEquals(4, batch.getCount());
+        assertFalse(batch.isFull());
+        assertEquals(100, batch.getFirstTuple());
+        assertEquals(110, batch.getEndTuple());
+        assertEquals(10, batch.getTupleCount());
+        assertEquals(Integer.valueOf(7), batch.getValue(1));
+        batch.resetCount();
+        assertEquals(0, batch.getTupleCount());
+    }
+
+    @Test
+    public void testSelectRuns() {
+        int[] runs = new int[batch.getCount()];
+        assertEquals(2, batch.selectRuns(5, true, 5, true, runs));
+        assertEquals(0, runs[0]);
+        assertEquals(2, runs[1]);
+        assertEquals(4, batch.countTuples(runs, 2));
+
+        assertEquals(2, batch.selectRuns(5, false, null, false, runs));
+        assertEquals(1, runs[0]);
+        assertEquals(3, runs[1]);
+        assertEquals(6, batch.countTuples(runs, 2));
+
+        assertEquals(3, batch.selectRuns(null, false, 9, false, runs));
+        assertEquals(0, batch.selectRuns(10, true, null, false, runs));
+        assertEquals(10, batch.countTuples(null, 0));
+    }
+
+    @Test
+    public void testSum() {
+        assertEquals(5 * 3 + 7 * 2 + 5 + 9 * 4, batch.sumLong(null, 0));
+        int[] runs = new int[]{1, 3};
+        assertEquals(7 * 2 + 9 * 4, batch.sumLong(runs, 2));
+        assertEquals(7 * 2 + 9 * 4, batch.sumDouble(runs, 2), 0.0001d);
+    }
+
+    @Test
+    public void testSumFloatingPoint() {
+        ValueRunBatch<Float, float[]> floats = new ValueRunBatch<Float, float[]>(new FloatValueTraits(), 4);
+        floats.add(1.5f, 0, 4);
+        floats.add(2.25f, 4, 2);
+        assertEquals(10.5d, floats.sumDouble(null, 0), 0.0001d);
+        assertEquals(10L, floats.sumLong(null, 0));
+        assertEquals(4L, floats.sumLong(new int[]{1}, 1));
+
+        ValueRunBatch<Double, double[]> doubles = new ValueRunBatch<Double, double[]>(new DoubleValueTraits(), 4);
+        doubles.add(-0.5d, 10, 3);
+        doubles.add(100.0d, 13, 1);
+        assertEquals(98.5d, doubles.sumDouble(null, 0), 0.0001d);
+        assertEquals(98L, doubles.sumLong(null, 0));
+        assertEquals(-1L, doubles.sumLong(new int[]{0}, 1));
+    }
+
+    @Test
+    public void testCountByValue() {
+        Map<Integer, long[]> counts = new TreeMap<Integer, long[]>();
+        batch.countByValue(null, 0, counts);
+        assertEquals(3, counts.size());
+        assertEquals(4L, counts.get(5)[0]);
+        assertEquals(2L, counts.get(7)[0]);
+        assertEquals(4L, counts.get(9)[0]);
+    }
+
+    @Test
+    public void testSumPerRun() {
+        // another column of tuples 98-111
+        double[] measures = new double[14];
+        for (int i = 0; i < measures.length; ++i) {
+            measures[i] = i;
+        }
+        double[] sums = new double[4];
+        batch.sumPerRun(measures, 98, null, 0, sums);
+        assertEquals(2 + 3 + 4, sums[0], 0.0001d);
+        assertEquals(5 + 6, sums[1], 0.0001d);
+        assertEquals(7, sums[2], 0.0001d);
+        assertEquals(8 + 9 + 10 + 11, sums[3], 0.0001d);
+
+        long[] longMeasures = new long[]{10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+        long[] longSums = new long[2];
+        batch.sumPerRun(longMeasures, 100, new int[]{1, 2}, 2, longSums);
+        assertEquals(40 + 50, longSums[0]);
+        assertEquals(60, longSums[1]);
+    }
+
+    @Test
+    public void testSelection() {
+        int[] runs = new int[batch.getCount()];
+        int runCount = batch.selectRuns(5, true, 5, true, runs);
+        int[] selection = new int[10];
+        int count = batch.toSelection(runs, runCount, 100, selection);
+        assertArrayEquals(new int[]{0, 1, 2, 5}, trim(selection, count));
+
+        // AND with another predicate that selected even positions
+        int[] other = new int[]{0, 2, 4, 6, 8};
+        count = batch.refineSelection(runs, runCount, 100, other, other.length);
+        assertArrayEquals(new int[]{0, 2}, trim(other, count));
+
+        other = new int[]{1, 3, 5, 7, 9};
+        count = batch.refineSelection(runs, runCount, 100, other, other.length);
+        assertArrayEquals(new int[]{1, 5}, trim(other, count));
+    }
+
+    @Test
+    public void testToTupleRanges() {
+        List<TupleRange> ranges = new ArrayList<TupleRange>();
+        batch.toTupleRanges(new int[]{0, 1, 3}, 3, ranges);
+        assertEquals(2, ranges.size());
+        assertEquals(100, ranges.get(0).startTuple);
+        assertEquals(105, ranges.get(0).endTuple);
+        assertEquals(106, ranges.get(1).startTuple);
+        assertEquals(110, ranges.get(1).endTuple);
+
+        // merged with the last range of the previous batch
+        ValueRunBatch<Integer, int[]> next = new ValueRunBatch<Integer, int[]>(new IntegerValueTraits(), 2);
+        next.add(9, 110, 5);
+        next.add(3, 115, 5);
+        assertTrue(next.isFull());
+        next.toTupleRanges(null, 0, ranges);
+        assertEquals(2, ranges.size());
+        assertEquals(106, ranges.get(1).startTuple);
+        assertEquals(120, ranges.get(1).endTuple);
+    }
+
+    @Test
+    public void testVarchar() {
+        ValueRunBatch<String, String[]> strings = new ValueRunBatch<String, String[]>(new VarcharValueTraits(), 4);
+        strings.add("A", 0, 10);
+        strings.add("N", 10, 20);
+        strings.add("R", 30, 5);
+        int[] runs = new int[3];
+        assertEquals(2, strings.selectRuns("B", true, null, false, runs));
+        assertEquals(25, strings.countTuples(runs, 2));
+        try {
+            strings.sumLong(null, 0);
+            fail();
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+
+    private static int[] trim (int[] array, int count) {
+        int[] trimmed = new int[count];
+        System.arraycopy(array, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
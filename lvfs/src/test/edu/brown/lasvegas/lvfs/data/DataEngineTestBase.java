@@ -136,10 +136,10 @@ public abstract class DataEngineTestBase {
 
     @Test
     public void testGetCombinedFileStatus() throws IOException {
-        assertArrayEquals(new int[]{FILE1_SIZE * 4, 1, 0}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + FILE1_NAME));
-        assertArrayEquals(new int[]{FILE2_SIZE * 4, 1, 0}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + FILE2_NAME));
-        assertArrayEquals(new int[]{0, 0, 0}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + "dummy"));
-        assertArrayEquals(new int[]{0, 1, 1}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + FILE2_DIR));
+        assertArrayEquals(new long[]{FILE1_SIZE * 4, 1, 0}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + FILE1_NAME));
+        assertArrayEquals(new long[]{FILE2_SIZE * 4, 1, 0}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + FILE2_NAME));
+        assertArrayEquals(new long[]{0, 0, 0}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + "dummy"));
+        assertArrayEquals(new long[]{0, 1, 1}, dataProtocol.getCombinedFileStatus(tmpDir + "/" + FILE2_DIR));
     }
 
     @Test
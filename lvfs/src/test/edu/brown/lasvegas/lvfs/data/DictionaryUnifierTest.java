@@ -0,0 +1,178 @@
+package edu.brown.lasvegas.lvfs.data;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.ColumnFileBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileWriterBundle;
+import edu.brown.lasvegas.lvfs.OrderedDictionary;
+import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.TypedWriter;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+
+/**
+ * Testcases for {@link DictionaryUnifier}.
+ */
+public class DictionaryUnifierTest {
+    private static final int COUNT = 5000;
+    private LocalVirtualFile tmpFolder;
+
+    @Before
+    public void setUp () throws Exception {
+        tmpFolder = new LocalVirtualFile("test/dictunify/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    /** partition p has values str(p*offset + 0) to str(p*offset + distinct-1). */
+    private static String getValue (int partition, int tuple, int distinct, int offset) {
+        return "str" + (10000 + partition * offset + (tuple * 7) % distinct);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ColumnFileBundle[] createFiles (int partitions, int distinct, int offset) throws Exception {
+        ColumnFileBundle[] files = new ColumnFileBundle[partitions];
+        for (int p = 0; p < partitions; ++p) {
+            ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, "part" + p, ColumnType.VARCHAR, CompressionType.DICTIONARY, true);
+            try {
+                TypedWriter dataWriter = writer.getDataWriter();
+                for (int i = 0; i < COUNT; ++i) {
+                    dataWriter.writeValue(getValue(p, i, distinct, offset));
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            files[p] = new ColumnFileBundle(writer, false);
+        }
+        return files;
+    }
+
+    private static OrderedDictionary<?, ?>[] loadDictionaries (ColumnFileBundle[] files) throws Exception {
+        OrderedDictionary<?, ?>[] dicts = new OrderedDictionary<?, ?>[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            ColumnFileReaderBundle reader = new ColumnFileReaderBundle(files[i]);
+            try {
+                dicts[i] = reader.getDictionary();
+            } finally {
+                reader.close();
+            }
+        }
+        return dicts;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static void verifyFile (ColumnFileBundle file, int partition, int distinct, int offset) throws Exception {
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(file);
+        try {
+            TypedReader dataReader = reader.getDataReader();
+            for (int i = 0; i < COUNT; ++i) {
+                assertEquals (getValue(partition, i, distinct, offset), dataReader.readValue());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testRecode () throws Exception {
+        // partitions overlap by half
+        ColumnFileBundle[] files = createFiles(3, 60, 30);
+        DictionaryUnifier unifier = new DictionaryUnifier(ColumnType.VARCHAR, loadDictionaries(files));
+        OrderedDictionary shared = unifier.getSharedDictionary();
+        assertEquals (120, shared.getDictionarySize());
+        for (int p = 0; p < files.length; ++p) {
+            assertFalse (unifier.isIdentical(p));
+            ColumnFileBundle recoded = unifier.recode(p, files[p], tmpFolder, "recoded" + p);
+            assertEquals (COUNT, recoded.getTupleCount());
+            assertEquals (CompressionType.DICTIONARY, recoded.getCompressionType());
+            assertEquals (1, recoded.getDictionaryBytesPerEntry());
+            assertEquals (files[p].getDistinctValues(), recoded.getDistinctValues());
+            verifyFile (recoded, p, 60, 30);
+
+            // compressed values now mean the same in all partitions
+            ColumnFileReaderBundle reader = new ColumnFileReaderBundle(recoded);
+            try {
+                assertEquals (120, reader.getDictionary().getDictionarySize());
+                TypedReader compressedReader = reader.getCompressedDataReader();
+                for (int i = 0; i < COUNT; ++i) {
+                    Number code = (Number) compressedReader.readValue();
+                    assertEquals (shared.compress(getValue(p, i, 60, 30)).intValue(), code.intValue());
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void testIdentical () throws Exception {
+        ColumnFileBundle[] files = createFiles(2, 50, 0);
+        DictionaryUnifier unifier = new DictionaryUnifier(ColumnType.VARCHAR, loadDictionaries(files));
+        assertEquals (50, unifier.getSharedDictionary().getDictionarySize());
+        assertTrue (unifier.isIdentical(0));
+        assertTrue (unifier.isIdentical(1));
+        int[] conversion = unifier.getConversion(0);
+        for (int i = 0; i < conversion.length; ++i) {
+            assertEquals (i, conversion[i]);
+        }
+    }
+
+    @Test
+    public void testWidenedCodes () throws Exception {
+        // each partition fits in 1 byte, but the shared dictionary needs 2 bytes
+        ColumnFileBundle[] files = createFiles(2, 200, 200);
+        assertEquals (1, files[0].getDictionaryBytesPerEntry());
+        DictionaryUnifier unifier = new DictionaryUnifier(ColumnType.VARCHAR, loadDictionaries(files));
+        assertEquals (400, unifier.getSharedDictionary().getDictionarySize());
+        for (int p = 0; p < files.length; ++p) {
+            ColumnFileBundle recoded = unifier.recode(p, files[p], tmpFolder, "widened" + p);
+            assertEquals (2, recoded.getDictionaryBytesPerEntry());
+            verifyFile (recoded, p, 200, 200);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testMergeSharedPartitions () throws Exception {
+        ColumnFileBundle[] files = createFiles(2, 100, 50);
+        DictionaryUnifier unifier = new DictionaryUnifier(ColumnType.VARCHAR, loadDictionaries(files));
+        ColumnFileBundle[][] baseFiles = new ColumnFileBundle[2][];
+        for (int p = 0; p < files.length; ++p) {
+            baseFiles[p] = new ColumnFileBundle[]{unifier.recode(p, files[p], tmpFolder, "shared" + p)};
+        }
+        // merging partitions with the shared dictionary copies compressed values as they are
+        PartitionMergerForSameScheme merger = new PartitionMergerForSameScheme(tmpFolder, baseFiles, new String[]{"merged"},
+            new ColumnType[]{ColumnType.VARCHAR}, new CompressionType[]{CompressionType.DICTIONARY}, null);
+        ColumnFileBundle merged = merger.execute()[0];
+        assertEquals (COUNT * 2, merged.getTupleCount());
+        ColumnFileReaderBundle reader = new ColumnFileReaderBundle(merged);
+        try {
+            assertEquals (150, reader.getDictionary().getDictionarySize());
+            TypedReader dataReader = reader.getDataReader();
+            for (int p = 0; p < 2; ++p) {
+                for (int i = 0; i < COUNT; ++i) {
+                    assertEquals (getValue(p, i, 100, 50), dataReader.readValue());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -4,15 +4,20 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.TreeSet;
 
 import org.apache.hadoop.conf.Configuration;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import edu.brown.lasvegas.ColumnFileLayout;
 import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.JobStatus;
@@ -31,6 +36,7 @@ import edu.brown.lasvegas.LVTable;
 import edu.brown.lasvegas.lvfs.ColumnFileBundle;
 import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
 import edu.brown.lasvegas.lvfs.LVFSFilePath;
+import edu.brown.lasvegas.lvfs.LVFSFileType;
 import edu.brown.lasvegas.lvfs.TypedReader;
 import edu.brown.lasvegas.lvfs.data.job.ImportFractureJobController;
 import edu.brown.lasvegas.lvfs.data.job.ImportFractureJobParameters;
@@ -147,6 +153,7 @@ public class ImportFractureJobControllerTest {
         CompressionType[] compressionScheme2 = new CompressionType[columnIds.length];
         Arrays.fill(compressionScheme2, CompressionType.NONE);
         LVReplicaScheme scheme11 = masterRepository.createNewReplicaScheme(group1, masterRepository.getColumnByName(table.getTableId(), "lo_orderkey"), columnIds, compressionScheme1);
+        scheme11 = masterRepository.changeBloomFilter(scheme11, columns.get("lo_custkey"), true);
         /*LVReplicaScheme scheme12 =*/ masterRepository.createNewReplicaScheme(group1, masterRepository.getColumnByName(table.getTableId(), "lo_orderdate"), columnIds, compressionScheme2);
         /*LVReplicaScheme scheme21 =*/ masterRepository.createNewReplicaScheme(group2, masterRepository.getColumnByName(table.getTableId(), "lo_orderkey"), columnIds, compressionScheme1);
         /*LVReplicaScheme scheme22 =*/ masterRepository.createNewReplicaScheme(group2, masterRepository.getColumnByName(table.getTableId(), "lo_orderdate"), columnIds, compressionScheme2);
@@ -175,6 +182,15 @@ public class ImportFractureJobControllerTest {
             assertTrue(values[i] >= values[i - 1]);
         }
         readers.close();
+        assertFalse(columnFile.hasBloomFilter());
+        assertFalse(bundle.hasBloomFilter());
+
+        // the scheme chose to build Bloom filters for lo_custkey
+        LVColumnFile custkeyFile = masterRepository.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), columns.get("lo_custkey").getColumnId());
+        assertTrue(custkeyFile.hasBloomFilter());
+        ColumnFileBundle custkeyBundle = new ColumnFileBundle(custkeyFile);
+        assertTrue(custkeyBundle.hasBloomFilter());
+        assertEquals(custkeyFile.getBloomFilterSize(), custkeyBundle.getBloomFilterFile().length());
     }
 
     @Test
@@ -235,6 +251,188 @@ public class ImportFractureJobControllerTest {
         }
     }
 
+    @Test
+    public void testSegmentAndColumnGroupSSBLineorder() throws Exception {
+        MiniDataSource dataSource = new MiniSSBLineorder();
+        createInputFile (dataSource, "copied.tbl");
+        final String[] columnNames = dataSource.getColumnNames();
+        LVTable table = masterRepository.createNewTable(database.getDatabaseId(), "tablesegment", columnNames, dataSource.getScheme());
+        HashMap<String, LVColumn> columns = new HashMap<String, LVColumn>();
+        for (LVColumn column : masterRepository.getAllColumnsExceptEpochColumn(table.getTableId())) {
+            columns.put(column.getName(), column);
+        }
+
+        LVReplicaGroup group1 = masterRepository.createNewReplicaGroup(table, columns.get("lo_orderkey"), new ValueRange[]{new ValueRange(ColumnType.INTEGER, null, null)});
+        int[] columnIds = new int[columnNames.length];
+        for (int i = 0; i < columnIds.length; ++i) {
+            columnIds[i] = columns.get(columnNames[i]).getColumnId();
+        }
+        LVReplicaScheme scheme = masterRepository.createNewReplicaScheme(group1, columns.get("lo_orderkey"), columnIds, dataSource.getDefaultCompressions());
+        scheme = masterRepository.changeColumnGroup(scheme, columns.get("lo_quantity"), 1);
+        scheme = masterRepository.changeColumnGroup(scheme, columns.get("lo_discount"), 1);
+
+        conf1.setBoolean(DataEngineContext.COLUMN_SEGMENT_KEY, true);
+        conf2.setBoolean(DataEngineContext.COLUMN_SEGMENT_KEY, true);
+        ImportFractureJobController controller;
+        try {
+            ImportFractureJobParameters params = new ImportFractureJobParameters(table.getTableId());
+            params.addNodeFilePath(node1.getNodeId(), tmpDir1 + "/copied.tbl");
+            controller = new ImportFractureJobController(masterRepository, 100, 100, 100);
+            LVJob job = controller.startSync(params);
+            assertEquals (JobStatus.DONE, job.getStatus());
+        } finally {
+            conf1.setBoolean(DataEngineContext.COLUMN_SEGMENT_KEY, DataEngineContext.COLUMN_SEGMENT_DEFAULT);
+            conf2.setBoolean(DataEngineContext.COLUMN_SEGMENT_KEY, DataEngineContext.COLUMN_SEGMENT_DEFAULT);
+        }
+
+        LVReplica replica = masterRepository.getReplicaFromSchemeAndFracture(scheme.getSchemeId(), controller.getFracture().getFractureId());
+        LVReplicaPartition partition = masterRepository.getReplicaPartitionByReplicaAndRange(replica.getReplicaId(), 0);
+        // the layout is recorded, so the bundle is constructed without probing the files
+        LVColumnFile orderkeyFile = masterRepository.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), columns.get("lo_orderkey").getColumnId());
+        assertEquals (ColumnFileLayout.SEGMENT, orderkeyFile.getLayout());
+        ColumnFileBundle orderkeyBundle = new ColumnFileBundle(orderkeyFile);
+        assertNotNull (orderkeyBundle.getSegmentFile());
+        assertTrue (orderkeyBundle.getSegmentFile().exists());
+        assertFalse (new File(LVFSFileType.DATA_FILE.appendExtension(orderkeyFile.getLocalFilePath())).exists());
+        ColumnFileReaderBundle readers = new ColumnFileReaderBundle(orderkeyBundle);
+        try {
+            @SuppressWarnings("unchecked")
+            TypedReader<Integer, int[]> dataReader = (TypedReader<Integer, int[]>) readers.getDataReader();
+            int[] values = new int[dataReader.getTotalTuples()];
+            assertEquals(dataSource.getCount(), values.length);
+            assertEquals(values.length, dataReader.readValues(values, 0, values.length));
+            assertEquals(1, values[0]);
+            for (int i = 1; i < values.length; ++i) {
+                assertTrue(values[i] >= values[i - 1]);
+            }
+        } finally {
+            readers.close();
+        }
+
+        long previousChecksum = 0;
+        for (String name : new String[]{"lo_quantity", "lo_discount"}) {
+            LVColumnFile groupedFile = masterRepository.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), columns.get(name).getColumnId());
+            assertEquals (ColumnFileLayout.PAX, groupedFile.getLayout());
+            ColumnFileBundle groupedBundle = new ColumnFileBundle(groupedFile);
+            assertNotNull (groupedBundle.getPaxFile());
+            assertTrue (groupedBundle.getPaxFile().exists());
+            // the checksum and size are of the column, not of the whole PAX file
+            assertTrue (groupedFile.getChecksum() != 0);
+            assertTrue (groupedFile.getChecksum() != previousChecksum);
+            previousChecksum = groupedFile.getChecksum();
+            assertTrue (groupedFile.getFileSize() > 0);
+            assertTrue (groupedFile.getFileSize() < groupedBundle.getPaxFile().length());
+            // the zone map survives beside the PAX file
+            if (groupedBundle.getZoneMapFile() != null) {
+                assertTrue (groupedBundle.getZoneMapFile().exists());
+            }
+            ColumnFileReaderBundle groupedReaders = new ColumnFileReaderBundle(groupedBundle);
+            try {
+                assertEquals(dataSource.getCount(), groupedReaders.getDataReader().getTotalTuples());
+            } finally {
+                groupedReaders.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSharedDictionarySSBLineorder() throws Exception {
+        MiniDataSource dataSource = new MiniSSBLineorder();
+        createInputFile (dataSource, "copied.tbl");
+        final String[] columnNames = dataSource.getColumnNames();
+        LVTable table = masterRepository.createNewTable(database.getDatabaseId(), "tableshared", columnNames, dataSource.getScheme());
+        // partition 1 has only 2 of the 5 values in lo_orderpriority, so it must be re-coded
+        String[] sharedColumnNames = new String[]{"lo_orderpriority", "lo_shipmode"};
+        int[] sharedColumnIndexes = new int[]{6, 16};
+
+        LVReplicaGroup group1 = masterRepository.createNewReplicaGroup(table, masterRepository.getColumnByName(table.getTableId(), "lo_orderkey"), new ValueRange[]{new ValueRange(ColumnType.INTEGER, null, 10), new ValueRange(ColumnType.INTEGER, 10, null)});
+        int[] columnIds = new int[columnNames.length];
+        for (int i = 0; i < columnIds.length; ++i) {
+            columnIds[i] = masterRepository.getColumnByName(table.getTableId(), columnNames[i]).getColumnId();
+        }
+        CompressionType[] compressionScheme = dataSource.getDefaultCompressions();
+        LVReplicaScheme[] schemes = new LVReplicaScheme[]{
+            masterRepository.createNewReplicaScheme(group1, null, columnIds, compressionScheme),
+            masterRepository.createNewReplicaScheme(group1, masterRepository.getColumnByName(table.getTableId(), "lo_orderpriority"), columnIds, compressionScheme),
+        };
+        for (int sch = 0; sch < schemes.length; ++sch) {
+            for (String name : sharedColumnNames) {
+                schemes[sch] = masterRepository.changeSharedDictionary(schemes[sch], masterRepository.getColumnByName(table.getTableId(), name), true);
+            }
+        }
+
+        // import two fractures. the second one extends the shared dictionary of the first one
+        String[][][] previousDictionaries = new String[schemes.length][sharedColumnNames.length][];
+        for (int frac = 0; frac < 2; ++frac) {
+            ImportFractureJobParameters params = new ImportFractureJobParameters(table.getTableId());
+            params.addNodeFilePath(node1.getNodeId(), tmpDir1 + "/copied.tbl");
+            ImportFractureJobController controller = new ImportFractureJobController(masterRepository, 100, 100, 100);
+            LVJob job = controller.startSync(params);
+            assertEquals (JobStatus.DONE, job.getStatus());
+            // the merged dictionaries and their fetched copies are deleted
+            for (String tmpDir : new String[]{tmpDir1, tmpDir2}) {
+                String[] children = new File(tmpDir).list();
+                if (children != null) {
+                    for (String child : children) {
+                        assertFalse (child, child.startsWith("shared_dict_"));
+                    }
+                }
+            }
+
+            LVFracture fracture = controller.getFracture();
+            for (int sch = 0; sch < schemes.length; ++sch) {
+                LVReplica replica = masterRepository.getReplicaFromSchemeAndFracture(schemes[sch].getSchemeId(), fracture.getFractureId());
+                for (int col = 0; col < sharedColumnNames.length; ++col) {
+                    LVColumn column = masterRepository.getColumnByName(table.getTableId(), sharedColumnNames[col]);
+                    String[] sharedDictionary = null;
+                    for (int par = 0; par < 2; ++par) {
+                        LVReplicaPartition partition = masterRepository.getReplicaPartitionByReplicaAndRange(replica.getReplicaId(), par);
+                        LVColumnFile columnFile = masterRepository.getColumnFileByReplicaPartitionAndColumn(partition.getPartitionId(), column.getColumnId());
+                        assertEquals (CompressionType.DICTIONARY, columnFile.getCompressionType());
+                        ColumnFileReaderBundle readers = new ColumnFileReaderBundle(new ColumnFileBundle(columnFile));
+                        try {
+                            String[] dictionary = (String[]) readers.getDictionary().getDictionary();
+                            if (sharedDictionary == null) {
+                                sharedDictionary = dictionary;
+                            } else {
+                                assertArrayEquals (sharedDictionary, dictionary);
+                            }
+                            @SuppressWarnings("unchecked")
+                            TypedReader<String, String[]> dataReader = (TypedReader<String, String[]>) readers.getDataReader();
+                            String[] values = new String[dataReader.getTotalTuples()];
+                            assertEquals(values.length, dataReader.readValues(values, 0, values.length));
+                            List<String> actual = new ArrayList<String>(Arrays.asList(values));
+                            Collections.sort(actual);
+                            assertEquals (getSortedColumnValues(dataSource, sharedColumnIndexes[col], par == 0), actual);
+                        } finally {
+                            readers.close();
+                        }
+                    }
+                    // the shared dictionary has the distinct values of all partitions
+                    TreeSet<String> distinctValues = new TreeSet<String>(getSortedColumnValues(dataSource, sharedColumnIndexes[col], true));
+                    distinctValues.addAll(getSortedColumnValues(dataSource, sharedColumnIndexes[col], false));
+                    assertArrayEquals (distinctValues.toArray(new String[0]), sharedDictionary);
+                    if (previousDictionaries[sch][col] != null) {
+                        assertTrue (Arrays.asList(sharedDictionary).containsAll(Arrays.asList(previousDictionaries[sch][col])));
+                    }
+                    previousDictionaries[sch][col] = sharedDictionary;
+                }
+            }
+        }
+    }
+    /** returns the values of the column in the partition lo_orderkey&lt;10 (or lo_orderkey&gt;=10), sorted. */
+    private static List<String> getSortedColumnValues (MiniDataSource dataSource, int columnIndex, boolean firstPartition) throws Exception {
+        List<String> values = new ArrayList<String>();
+        for (String line : new String(dataSource.getFileBody(), "UTF-8").split("\n")) {
+            String[] columns = line.split("\\|");
+            if ((Integer.parseInt(columns[0]) < 10) == firstPartition) {
+                values.add(columns[columnIndex]);
+            }
+        }
+        Collections.sort(values);
+        return values;
+    }
+
     @Test
     public void testNoPartitionTPCHLineitem() throws Exception {
         MiniDataSource dataSource = new MiniTPCHLineitem();
@@ -0,0 +1,139 @@
+package edu.brown.lasvegas.lvfs.data;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.lvfs.TupleRange;
+
+/**
+ * Testcases for {@link ParallelPartitionScanner}.
+ */
+public class ParallelPartitionScannerTest {
+    private static final int PARTITIONS = 7;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp () throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        executor.shutdownNow();
+    }
+
+    /** partition p has tuples 0 to (p+1)*1000-1 whose values are the tuple positions. */
+    private static int getTupleCountOf (int partition) {
+        return (partition + 1) * 1000;
+    }
+
+    /** sums up the values of all tuples, remembering which threads ran the scan. */
+    private static class SumScan extends ParallelPartitionScanner.PartitionScan<long[]> {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger scannedTuples = new AtomicInteger();
+        @Override
+        protected long[] createPartialResult() {
+            return new long[1];
+        }
+        @Override
+        protected void scan(int partition, TupleRange range, long[] partialResult) throws IOException {
+            threads.add(Thread.currentThread().getName());
+            int begin = range == null ? 0 : range.startTuple;
+            int end = range == null ? getTupleCountOf(partition) : range.endTuple;
+            for (int i = begin; i < end; ++i) {
+                partialResult[0] += i;
+            }
+            scannedTuples.addAndGet(end - begin);
+        }
+        @Override
+        protected void merge(long[] result, long[] other) {
+            result[0] += other[0];
+        }
+        @Override
+        protected int getTupleCount(int partition) {
+            return getTupleCountOf(partition);
+        }
+    }
+
+    private static long expectedSum () {
+        long sum = 0;
+        for (int p = 0; p < PARTITIONS; ++p) {
+            long n = getTupleCountOf(p);
+            sum += n * (n - 1) / 2;
+        }
+        return sum;
+    }
+
+    @Test
+    public void testSplit () throws Exception {
+        // partitions larger than 1500 tuples are split into ranges
+        ParallelPartitionScanner scanner = new ParallelPartitionScanner(executor, 4, 1500, null);
+        SumScan scan = new SumScan();
+        assertEquals (expectedSum(), scanner.execute(PARTITIONS, scan)[0]);
+        assertEquals (28000, scan.scannedTuples.get());
+    }
+
+    @Test
+    public void testSequential () throws Exception {
+        ParallelPartitionScanner scanner = new ParallelPartitionScanner(null, 4, 1500, null);
+        SumScan scan = new SumScan();
+        assertEquals (expectedSum(), scanner.execute(PARTITIONS, scan)[0]);
+        // without a pool, everything runs on the calling thread
+        assertEquals (1, scan.threads.size());
+        assertTrue (scan.threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testEmpty () throws Exception {
+        ParallelPartitionScanner scanner = new ParallelPartitionScanner(executor, 4, 1500, null);
+        assertEquals (0L, scanner.execute(0, new SumScan())[0]);
+    }
+
+    @Test
+    public void testCanceled () throws Exception {
+        ParallelPartitionScanner scanner = new ParallelPartitionScanner(executor, 4, 1500, new ParallelPartitionScanner.CancelCheck() {
+            @Override
+            public boolean isCanceled() {
+                return true;
+            }
+        });
+        SumScan scan = new SumScan();
+        try {
+            scanner.execute(PARTITIONS, scan);
+            fail ("the scan should have been canceled");
+        } catch (TaskCanceledException ex) {
+        }
+        // the first check happens before the first unit
+        assertEquals (0, scan.scannedTuples.get());
+    }
+
+    @Test
+    public void testError () throws Exception {
+        ParallelPartitionScanner scanner = new ParallelPartitionScanner(executor, 4, 1500, null);
+        try {
+            scanner.execute(PARTITIONS, new SumScan() {
+                @Override
+                protected void scan(int partition, TupleRange range, long[] partialResult) throws IOException {
+                    if (partition == 3) {
+                        throw new IOException ("broken file");
+                    }
+                    super.scan(partition, range, partialResult);
+                }
+            });
+            fail ("the error in a scan thread should have been thrown");
+        } catch (IOException ex) {
+            assertEquals ("broken file", ex.getMessage());
+        }
+    }
+}
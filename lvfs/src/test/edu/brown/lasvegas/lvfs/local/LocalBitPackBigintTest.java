@@ -0,0 +1,53 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+
+/**
+ * Sorted dates (as milliseconds), which should be delta-encoded with a few bits.
+ */
+public class LocalBitPackBigintTest extends LocalBitPackTestBase<Long, long[]> {
+    private static final long BASE_DATE = 15000L * 86400000L;
+    @Override
+    protected Long generateValue(int index) { return BASE_DATE + 86400000L * (index / 10); }
+    @Override
+    protected FixLenValueTraits<Long, long[]> createTraits() { return new BigintValueTraits();}
+    @Override
+    protected long[] createArray (int size) { return new long[size];}
+    @Override
+    protected void setToArray(long[] array, int index, Long value){ array[index] = value; }
+    @Override
+    protected Long getFromArray(long[] array, int index) { return array[index]; }
+
+    @Test
+    public void testCompressionRatio() throws IOException {
+        // uncompressed file would be 8 bytes per value
+        assertTrue ("file size=" + file.length(), file.length() * 6 < VALUE_COUNT * 8L);
+    }
+
+    @Test
+    public void testFullRange() throws IOException {
+        // differences between these values overflow 64-bit integers
+        long[] values = new long[] {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1, Long.MIN_VALUE + 1};
+        VirtualFile rangeFile = new LocalVirtualFile("test/local/bitpack_range.bin");
+        rangeFile.delete();
+        LocalBitPackWriter<Long, long[]> writer = new LocalBitPackWriter<Long, long[]>(rangeFile, traits, 3, 1 << 10);
+        writer.writeValues(values, 0, values.length);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+        LocalBitPackReader<Long, long[]> rangeReader = LocalBitPackReader.getInstanceBigint(rangeFile);
+        long[] read = new long[values.length];
+        assertEquals(values.length, rangeReader.readValues(read, 0, values.length));
+        assertArrayEquals(values, read);
+        rangeReader.close();
+        rangeFile.delete();
+    }
+}
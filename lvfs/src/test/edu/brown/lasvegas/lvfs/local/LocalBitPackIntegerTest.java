@@ -0,0 +1,25 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+
+/**
+ * Unsorted integers with occasional extreme values.
+ */
+public class LocalBitPackIntegerTest extends LocalBitPackTestBase<Integer, int[]> {
+    @Override
+    protected Integer generateValue(int index) {
+        if (index % 1000 == 7) {
+            return index % 2 == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        return (294493 * index) % (1 << 18) - 5000;
+    }
+    @Override
+    protected FixLenValueTraits<Integer, int[]> createTraits() { return new IntegerValueTraits();}
+    @Override
+    protected int[] createArray (int size) { return new int[size];}
+    @Override
+    protected void setToArray(int[] array, int index, Integer value){ array[index] = value; }
+    @Override
+    protected Integer getFromArray(int[] array, int index) { return array[index]; }
+}
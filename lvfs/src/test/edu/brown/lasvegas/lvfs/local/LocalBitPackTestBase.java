@@ -0,0 +1,175 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.FixLenValueTraits;
+import edu.brown.lasvegas.util.ChecksumUtil;
+
+/**
+ * Base class of testcases for {@link LocalBitPackReader} and {@link LocalBitPackWriter}.
+ * Name of this abstract class doesn't end with Test so that our ant script
+ * would skip this. 
+ */
+public abstract class LocalBitPackTestBase<T extends Number & Comparable<T>, AT> {
+    protected static VirtualFile file;
+    protected FixLenValueTraits<T, AT> traits;
+    protected LocalBitPackReader<T, AT> reader;
+
+    protected final static int VALUE_COUNT = 12345;
+    /** small block size to test block boundaries. */
+    protected final static int BLOCK_SIZE = 100;
+    /** deterministically generate a value for index-th entry. */
+    protected abstract T generateValue (int index);
+    protected abstract FixLenValueTraits<T, AT> createTraits ();
+    protected abstract AT createArray (int size);
+    protected abstract void setToArray (AT array, int index, T value);
+    protected abstract T getFromArray (AT array, int index);
+
+    private static HashSet<Class<?>> inittedClasses = new HashSet<Class<?>>();
+    /**
+     * "BeforeClass" has to be static method, but this class needs an instance to initialize.
+     * So, each setUp() calls this method to do the one-time initialization.
+     */
+    private void initOnce() throws Exception {
+        if (inittedClasses.contains(getClass())) {
+            return;
+        }
+        inittedClasses.add(getClass());
+        // create the file to test
+        file = new LocalVirtualFile("test/local/bitpack.bin");
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new Exception ("Couldn't create test directory " + file.getParentFile().getAbsolutePath());
+        }
+        file.delete();
+        traits = createTraits();
+        AT buf = createArray(VALUE_COUNT);
+        for (int i = 0; i < VALUE_COUNT; ++i) {
+            setToArray(buf, i, generateValue(i));
+        }
+        LocalBitPackWriter<T, AT> writer = new LocalBitPackWriter<T, AT>(file, traits, BLOCK_SIZE, 1 << 16);
+        writer.setCRC32Enabled(true);
+        // write some of them one by one
+        for (int i = 0; i < 150; ++i) {
+            writer.writeValue(generateValue(i));
+        }
+        writer.writeValues(buf, 150, VALUE_COUNT - 150);
+        long crc32 = writer.writeFileFooter();
+        assertTrue (crc32 != 0);
+        writer.flush();
+        writer.close();
+        long correctCrc32 = ChecksumUtil.getFileCheckSum(file);
+        assertEquals (correctCrc32, crc32);
+        assertEquals (VALUE_COUNT, writer.getTupleCount());
+    }
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        file.delete();
+        file = null;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        initOnce();
+        this.traits = createTraits();
+        this.reader = new LocalBitPackReader<T, AT>(file, traits);
+    }
+    @After
+    public void tearDown() throws Exception {
+        this.traits = null;
+        this.reader.close();
+        this.reader = null;
+    }
+
+    @Test
+    public void testReadValue() throws IOException {
+        for (int i = 0; i < 250; ++i) {
+            T value = reader.readValue();
+            assertEquals(generateValue(i), value);
+        }
+        reader.seekToTupleAbsolute(5);
+        for (int i = 0; i < 10; ++i) {
+            T value = reader.readValue();
+            assertEquals(generateValue(5 + i), value);
+        }
+    }
+
+    @Test
+    public void testReadValues() throws IOException {
+        AT buf = createArray(VALUE_COUNT + 10);
+        assertEquals(7, reader.readValues(buf, 3, 7));
+        for (int i = 0; i < 7; ++i) {
+            assertEquals(generateValue(i), getFromArray(buf, 3 + i));
+        }
+        assertEquals(VALUE_COUNT - 7, reader.readValues(buf, 0, VALUE_COUNT + 10));
+        for (int i = 0; i < VALUE_COUNT - 7; ++i) {
+            assertEquals(generateValue(7 + i), getFromArray(buf, i));
+        }
+        assertEquals(-1, reader.readValues(buf, 0, 10));
+    }
+
+    @Test
+    public void testSkipValues() throws IOException {
+        reader.skipValues(3);
+        for (int i = 0; i < 10; ++i) {
+            T value = reader.readValue();
+            assertEquals(generateValue(3 + i), value);
+        }
+        reader.skipValue();
+        reader.skipValues(250);
+        for (int i = 0; i < 5; ++i) {
+            T value = reader.readValue();
+            assertEquals(generateValue(3 + 10 + 1 + 250 + i), value);
+        }
+    }
+
+    @Test
+    public void testSeekToTupleAbsolute() throws IOException {
+        for (int tuple : new int[] {VALUE_COUNT - 1, 45, 10, 99, 100, 101, 5000, 0, 12300}) {
+            reader.seekToTupleAbsolute(tuple);
+            assertEquals(generateValue(tuple), reader.readValue());
+        }
+        reader.seekToTupleAbsolute(VALUE_COUNT);
+        AT buf = createArray(10);
+        assertEquals(-1, reader.readValues(buf, 0, 10));
+    }
+
+    @Test
+    public void testGetTotalTuples() throws IOException {
+        assertEquals (VALUE_COUNT, reader.getTotalTuples());
+    }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        LocalBitPackReader<T, AT> mappedReader = new LocalBitPackReader<T, AT>(file, traits, 0, true);
+        AT buf = createArray(VALUE_COUNT);
+        assertEquals(VALUE_COUNT, mappedReader.readValues(buf, 0, VALUE_COUNT));
+        for (int i = 0; i < VALUE_COUNT; ++i) {
+            assertEquals(generateValue(i), getFromArray(buf, i));
+        }
+        mappedReader.close();
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        VirtualFile emptyFile = new LocalVirtualFile("test/local/bitpack_empty.bin");
+        emptyFile.delete();
+        LocalBitPackWriter<T, AT> writer = new LocalBitPackWriter<T, AT>(emptyFile, traits);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+        LocalBitPackReader<T, AT> emptyReader = new LocalBitPackReader<T, AT>(emptyFile, traits);
+        assertEquals(0, emptyReader.getTotalTuples());
+        assertEquals(-1, emptyReader.readValues(createArray(10), 0, 10));
+        emptyReader.close();
+        emptyFile.delete();
+    }
+}
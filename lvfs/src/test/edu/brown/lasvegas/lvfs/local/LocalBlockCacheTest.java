@@ -0,0 +1,240 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Testcase for {@link LocalBlockCache}.
+ */
+public class LocalBlockCacheTest {
+    private static byte[] createBlock (int length, int seed) {
+        byte[] block = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            block[i] = (byte) (i * 7 + seed);
+        }
+        return block;
+    }
+    private static void assertBlock (byte[] expected, LocalBlockCache.CachedBlock actual) {
+        assertNotNull (actual);
+        ByteBuffer data = actual.getData();
+        assertTrue (data.isReadOnly());
+        assertTrue (data.isDirect());
+        assertEquals (expected.length, data.remaining());
+        byte[] copied = new byte[expected.length];
+        data.get(copied);
+        assertArrayEquals (expected, copied);
+        actual.release();
+    }
+
+    @Test
+    public void testGetPut() {
+        LocalBlockCache cache = new LocalBlockCache(1 << 20, 1000);
+        byte[] block1 = createBlock(1000, 1);
+        byte[] block2 = createBlock(2000, 2);
+        assertNull (cache.acquire(3, 0));
+        cache.put(3, 0, block1, block1.length);
+        cache.put(3, 1, block2, block2.length);
+        cache.put(4, 0, block2, 500); // only first 500 bytes
+        byte[] original1 = block1.clone();
+        block1[0] = (byte) (block1[0] + 1); // the cache holds its own copy
+        assertBlock (original1, cache.acquire(3, 0));
+        assertBlock (block2, cache.acquire(3, 1));
+        LocalBlockCache.CachedBlock partial = cache.acquire(4, 0);
+        assertEquals (500, partial.getLength());
+        partial.release();
+        assertNull (cache.acquire(4, 1));
+        assertTrue (cache.contains(3, 1));
+        assertFalse (cache.contains(5, 1));
+
+        assertEquals (3, cache.getBlockCount());
+        assertEquals (4000, cache.getUsedBytes()); // 500 bytes block takes one page
+        assertEquals (3, cache.getHitCount());
+        assertEquals (2, cache.getMissCount());
+        assertEquals (3, cache.getPutCount());
+
+        cache.invalidate(3);
+        assertEquals (1, cache.getBlockCount());
+        assertEquals (1000, cache.getUsedBytes());
+        assertNull (cache.acquire(3, 0));
+        cache.clear();
+        assertEquals (0, cache.getBlockCount());
+        assertEquals (0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testEviction() {
+        LocalBlockCache cache = new LocalBlockCache(10000, 1000);
+        byte[] block = createBlock(1000, 3);
+        for (int i = 0; i < 10; ++i) {
+            cache.put(1, i, block, block.length);
+        }
+        assertEquals (10000, cache.getUsedBytes());
+        assertEquals (0, cache.getEvictionCount());
+        cache.acquire(1, 0).release(); // now block 1 is the least recently used
+        cache.put(1, 10, block, block.length);
+        assertEquals (1, cache.getEvictionCount());
+        assertEquals (10000, cache.getUsedBytes());
+        assertTrue (cache.contains(1, 0));
+        assertFalse (cache.contains(1, 1));
+        assertTrue (cache.contains(1, 10));
+
+        // too large blocks are not cached
+        byte[] large = createBlock(5000, 4);
+        cache.put(2, 0, large, large.length);
+        assertFalse (cache.contains(2, 0));
+        assertEquals (1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testPin() {
+        LocalBlockCache cache = new LocalBlockCache(4000, 1000);
+        byte[] block = createBlock(1000, 5);
+        for (int i = 0; i < 4; ++i) {
+            cache.put(1, i, block, block.length);
+        }
+        // pinned blocks are not evicted even if they are the least recently used
+        LocalBlockCache.CachedBlock pinned = cache.acquire(1, 0);
+        for (int i = 1; i < 4; ++i) {
+            cache.acquire(1, i).release();
+        }
+        byte[] other = createBlock(1000, 6);
+        cache.put(2, 0, other, other.length);
+        assertTrue (cache.contains(1, 0));
+        assertFalse (cache.contains(1, 1));
+        assertTrue (cache.contains(2, 0));
+
+        // pages of an invalidated block are not reused while it's pinned
+        cache.invalidate(1);
+        assertFalse (cache.contains(1, 0));
+        assertEquals (2000, cache.getUsedBytes());
+        cache.put(3, 1, other, other.length);
+        cache.put(3, 2, other, other.length);
+        assertEquals (4000, cache.getUsedBytes());
+        assertEquals (3, cache.getBlockCount());
+        assertEquals (1, cache.getEvictionCount());
+        byte[] copied = new byte[block.length];
+        pinned.getData().get(copied);
+        assertArrayEquals (block, copied);
+        pinned.release();
+        assertEquals (3000, cache.getUsedBytes());
+        cache.put(3, 3, other, other.length);
+        assertTrue (cache.contains(3, 3));
+        assertEquals (4000, cache.getUsedBytes());
+        assertEquals (1, cache.getEvictionCount());
+    }
+
+    /** a block larger than a page occupies contiguous pages, which are reused after eviction. */
+    @Test
+    public void testContiguousPages() {
+        LocalBlockCache cache = new LocalBlockCache(24000, 1000);
+        byte[] small = createBlock(1000, 7);
+        for (int i = 0; i < 24; ++i) {
+            cache.put(1, i, small, small.length);
+        }
+        byte[] large = createBlock(2500, 8);
+        cache.put(2, 0, large, large.length);
+        assertEquals (3, cache.getEvictionCount());
+        assertEquals (24000, cache.getUsedBytes());
+        assertBlock (large, cache.acquire(2, 0));
+        for (int i = 3; i < 24; ++i) {
+            assertBlock (small, cache.acquire(1, i));
+        }
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        final int count = 300000;
+        VirtualFile file = new LocalVirtualFile("test/local/block_cache.bin");
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        file.delete();
+        int[] values = new int[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = i * 31 + (i % 13);
+        }
+        LocalBlockCompressionFixLenWriter<Integer, int[]> writer = LocalBlockCompressionFixLenWriter.getInstanceInteger(file, CompressionType.GZIP_BEST_COMPRESSION);
+        writer.writeValues(values, 0, count);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+
+        LocalBlockCache cache = new LocalBlockCache(64 << 20);
+        int blockCount = -1;
+        for (int pass = 0; pass < 2; ++pass) {
+            LocalBlockCompressionFixLenReader<Integer, int[]> reader = new LocalBlockCompressionFixLenReader<Integer, int[]>(file, new IntegerValueTraits(), CompressionType.GZIP_BEST_COMPRESSION);
+            reader.setBlockCache(cache, 123);
+            int[] buf = new int[count];
+            assertEquals (count, reader.readValues(buf, 0, count));
+            assertArrayEquals (values, buf);
+            reader.seekToTupleAbsolute(5);
+            assertEquals (values[5], reader.readValue().intValue());
+            reader.close();
+            if (pass == 0) {
+                blockCount = cache.getBlockCount();
+                assertTrue (blockCount > 1);
+                assertEquals (1, cache.getHitCount()); // only the seek back to the first block hits
+                assertEquals (blockCount, cache.getMissCount());
+            } else {
+                // all blocks are served from the cache in the second pass
+                assertEquals (blockCount, cache.getBlockCount());
+                assertEquals (blockCount, cache.getMissCount());
+                assertEquals (1 + blockCount + 1, cache.getHitCount());
+            }
+        }
+        file.delete();
+    }
+
+    /** var-len values are decoded from the cached blocks, both into objects and into an arena. */
+    @Test
+    public void testVarcharReader() throws IOException {
+        final int count = 50000;
+        VirtualFile file = new LocalVirtualFile("test/local/block_cache_varchar.bin");
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        file.delete();
+        String[] values = new String[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = "value-" + (i * 7) + (i % 3 == 0 ? "\u3042" : "");
+        }
+        LocalBlockCompressionVarLenWriter<String> writer = LocalBlockCompressionVarLenWriter.getInstanceVarchar(file, CompressionType.LZ4);
+        writer.writeValues(values, 0, count);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+
+        LocalBlockCache cache = new LocalBlockCache(64 << 20);
+        for (int pass = 0; pass < 2; ++pass) {
+            LocalBlockCompressionVarLenReader<String> reader = LocalBlockCompressionVarLenReader.getInstanceVarchar(file, CompressionType.LZ4);
+            reader.setBlockCache(cache, 456);
+            String[] buf = new String[count];
+            assertEquals (count, reader.readValues(buf, 0, count));
+            assertArrayEquals (values, buf);
+            reader.seekToTupleAbsolute(count / 2);
+            assertEquals (values[count / 2], reader.readValue());
+            reader.seekToTupleAbsolute(0);
+            StringArena arena = new StringArena(count, 1 << 20, pass == 1);
+            assertEquals (count, reader.readValues(arena, count));
+            for (int i = 0; i < count; ++i) {
+                assertEquals (values[i], arena.getString(i));
+            }
+            reader.close();
+        }
+        assertTrue (cache.getBlockCount() > 1);
+        assertTrue (cache.getHitCount() > cache.getBlockCount());
+        // the second reader has released all pins, so everything can be evicted
+        cache.clear();
+        assertEquals (0, cache.getUsedBytes());
+        file.delete();
+    }
+}
@@ -0,0 +1,10 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import edu.brown.lasvegas.CompressionType;
+
+public class LocalBlockCompressionFixLenBigintLZ4Test extends LocalBlockCompressionFixLenBigintTest {
+    @Override
+    protected CompressionType getType() {
+        return CompressionType.LZ4;
+    }
+}
@@ -0,0 +1,11 @@
+package edu.brown.lasvegas.lvfs.local;
+
+/**
+ * Same as {@link LocalBlockCompressionFixLenIntegerGzipTest} except that the file is memory-mapped.
+ */
+public class LocalBlockCompressionFixLenIntegerGzipMappedTest extends LocalBlockCompressionFixLenIntegerGzipTest {
+    @Override
+    protected boolean isMemoryMapped() {
+        return true;
+    }
+}
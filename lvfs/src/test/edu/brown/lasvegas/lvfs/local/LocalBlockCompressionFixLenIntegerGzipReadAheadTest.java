@@ -0,0 +1,63 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.brown.lasvegas.lvfs.VirtualFile;
+
+/**
+ * Same as {@link LocalBlockCompressionFixLenIntegerGzipTest} except that following blocks are read ahead.
+ */
+public class LocalBlockCompressionFixLenIntegerGzipReadAheadTest extends LocalBlockCompressionFixLenIntegerGzipTest {
+    private static LocalBlockReadAhead readAhead;
+    @BeforeClass
+    public static void setUpReadAhead() throws Exception {
+        readAhead = new LocalBlockReadAhead(2, 2);
+    }
+    @AfterClass
+    public static void tearDownReadAhead() throws Exception {
+        readAhead.close();
+        readAhead = null;
+    }
+    @Override
+    protected LocalBlockReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    /** readers must keep working with synchronous reads after the thread pool is stopped. */
+    @Test
+    public void testClosedReadAhead() throws IOException {
+        final int count = 300000;
+        VirtualFile largeFile = new LocalVirtualFile("test/local/block_comp_large.bin");
+        largeFile.delete();
+        int[] buf = new int[count];
+        for (int i = 0; i < count; ++i) {
+            buf[i] = generateValue(i);
+        }
+        LocalBlockCompressionFixLenWriter<Integer, int[]> writer = new LocalBlockCompressionFixLenWriter<Integer, int[]>(largeFile, traits, getType());
+        writer.writeValues(buf, 0, count);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+
+        LocalBlockReadAhead closed = new LocalBlockReadAhead(1, 3);
+        LocalBlockCompressionFixLenReader<Integer, int[]> largeReader = new LocalBlockCompressionFixLenReader<Integer, int[]>(largeFile, traits, getType());
+        largeReader.setReadAhead(closed);
+        assertTrue (largeReader.isReadAheadEnabled());
+        int[] readBuf = new int[count];
+        assertEquals(count / 2, largeReader.readValues(readBuf, 0, count / 2));
+        closed.close();
+        assertEquals(count - count / 2, largeReader.readValues(readBuf, count / 2, count - count / 2));
+        for (int i = 0; i < count; ++i) {
+            assertEquals(generateValue(i).intValue(), readBuf[i]);
+        }
+        assertFalse (largeReader.isReadAheadEnabled());
+        largeReader.close();
+        largeFile.delete();
+    }
+}
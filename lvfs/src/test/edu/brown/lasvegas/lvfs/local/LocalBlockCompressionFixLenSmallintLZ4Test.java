@@ -0,0 +1,10 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import edu.brown.lasvegas.CompressionType;
+
+public class LocalBlockCompressionFixLenSmallintLZ4Test extends LocalBlockCompressionFixLenSmallintTest {
+    @Override
+    protected CompressionType getType() {
+        return CompressionType.LZ4;
+    }
+}
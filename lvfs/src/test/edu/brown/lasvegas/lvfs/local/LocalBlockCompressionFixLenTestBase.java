@@ -2,13 +2,20 @@ package edu.brown.lasvegas.lvfs.local;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import org.xerial.snappy.Snappy;
 
 import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.lvfs.VirtualFile;
@@ -35,6 +42,10 @@ public abstract class LocalBlockCompressionFixLenTestBase<T extends Number & Com
 
     /** override this to change the compression algorithm to use. */
     protected CompressionType getType () {return CompressionType.SNAPPY;}
+    /** override this to test memory-mapped mode. */
+    protected boolean isMemoryMapped () {return false;}
+    /** override this to test reading ahead blocks. */
+    protected LocalBlockReadAhead getReadAhead () {return null;}
     
     private static HashSet<Class<?>> inittedClasses = new HashSet<Class<?>>();
     /**
@@ -78,7 +89,8 @@ public abstract class LocalBlockCompressionFixLenTestBase<T extends Number & Com
     public void setUp() throws Exception {
         initOnce();
         this.traits = createTraits();
-        this.reader = new LocalBlockCompressionFixLenReader<T, AT>(file, traits, getType());
+        this.reader = new LocalBlockCompressionFixLenReader<T, AT>(file, traits, getType(), isMemoryMapped());
+        this.reader.setReadAhead(getReadAhead());
     }
     @After
     public void tearDown() throws Exception {
@@ -177,4 +189,122 @@ public abstract class LocalBlockCompressionFixLenTestBase<T extends Number & Com
         assertEquals (VALUE_COUNT, reader.getTotalTuples());
     }
 
+    /** decompression buffers are reused across blocks, so blocks of different sizes must not interfere. */
+    @Test
+    public void testMultipleBlocks() throws IOException {
+        final int count = 300000;
+        VirtualFile largeFile = new LocalVirtualFile("test/local/block_comp_large.bin");
+        largeFile.delete();
+        AT buf = createArray(count);
+        for (int i = 0; i < count; ++i) {
+            setToArray(buf, i, generateValue(i));
+        }
+        LocalBlockCompressionFixLenWriter<T, AT> writer = new LocalBlockCompressionFixLenWriter<T, AT>(largeFile, traits, getType());
+        writer.writeValues(buf, 0, count);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+
+        LocalBlockCompressionFixLenReader<T, AT> largeReader = new LocalBlockCompressionFixLenReader<T, AT>(largeFile, traits, getType(), isMemoryMapped());
+        largeReader.setReadAhead(getReadAhead());
+        assertEquals (getReadAhead() != null, largeReader.isReadAheadEnabled());
+        assertEquals (count, largeReader.getTotalTuples());
+        AT readBuf = createArray(count);
+        assertEquals (count, largeReader.readValues(readBuf, 0, count));
+        for (int i = 0; i < count; ++i) {
+            assertEquals(generateValue(i), getFromArray(readBuf, i));
+        }
+        for (int tuple : new int[] {count - 1, 3, count / 2, 250000, 0, 123456}) {
+            largeReader.seekToTupleAbsolute(tuple);
+            assertEquals(generateValue(tuple), largeReader.readValue());
+        }
+        largeReader.close();
+        largeFile.delete();
+    }
+
+    /**
+     * Creates a file in the format of older versions, which has gzip-framed GZIP blocks
+     * and doesn't record uncompressed block sizes.
+     * @param v2 whether to use 64-bit block positions with a magic number (version 2) or
+     * 4-byte block positions without magic number (version 1).
+     */
+    private VirtualFile createLegacyFile (boolean v2) throws IOException {
+        // the uncompressed form of a fixed-length block is same as a non-compressed column file
+        VirtualFile rawFile = new LocalVirtualFile("test/local/block_comp_legacy.raw");
+        rawFile.delete();
+        AT buf = createArray(VALUE_COUNT);
+        for (int i = 0; i < VALUE_COUNT; ++i) {
+            setToArray(buf, i, generateValue(i));
+        }
+        LocalFixLenWriter<T, AT> rawWriter = new LocalFixLenWriter<T, AT>(rawFile, traits);
+        rawWriter.writeValues(buf, 0, VALUE_COUNT);
+        rawWriter.flush();
+        rawWriter.close();
+        byte[] rawBytes = new byte[(int) rawFile.length()];
+        InputStream in = rawFile.getInputStream();
+        assertEquals(rawBytes.length, in.read(rawBytes));
+        in.close();
+        rawFile.delete();
+
+        // put everything in one block
+        byte[] block;
+        if (getType() == CompressionType.SNAPPY) {
+            block = Snappy.compress(rawBytes);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(rawBytes);
+            gzip.close();
+            block = bytes.toByteArray();
+        }
+        ByteBuffer legacy = ByteBuffer.allocate(block.length + 4 + 8 + 4 + 12);
+        legacy.put(block);
+        legacy.putInt(0); // start tuple
+        if (v2) {
+            legacy.putLong(0L);
+        } else {
+            legacy.putInt(0);
+        }
+        legacy.putInt(block.length);
+        legacy.putInt(1); // block count
+        legacy.putInt(VALUE_COUNT);
+        if (v2) {
+            legacy.putInt(LocalBlockCompressionWriter.FOOTER_MAGIC_V2);
+        }
+
+        VirtualFile legacyFile = new LocalVirtualFile("test/local/block_comp_legacy.bin");
+        legacyFile.delete();
+        OutputStream out = legacyFile.getOutputStream();
+        out.write(legacy.array(), 0, legacy.position());
+        out.close();
+        return legacyFile;
+    }
+    private void testLegacyFile (boolean v2) throws IOException {
+        // LZ4 didn't exist in older versions
+        Assume.assumeTrue(getType() == CompressionType.SNAPPY || getType() == CompressionType.GZIP_BEST_COMPRESSION);
+        VirtualFile legacyFile = createLegacyFile(v2);
+        LocalBlockCompressionFixLenReader<T, AT> legacyReader = new LocalBlockCompressionFixLenReader<T, AT>(legacyFile, traits, getType(), isMemoryMapped());
+        assertEquals (VALUE_COUNT, legacyReader.getTotalTuples());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(generateValue(i), legacyReader.readValue());
+        }
+        legacyReader.seekToTupleAbsolute(VALUE_COUNT - 10);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(generateValue(VALUE_COUNT - 10 + i), legacyReader.readValue());
+        }
+        legacyReader.close();
+        legacyFile.delete();
+    }
+
+    /** files written by the first version have 4-byte block positions and no footer magic. */
+    @Test
+    public void testFooterFormatV1() throws IOException {
+        testLegacyFile(false);
+    }
+
+    /** files written by the second version have 8-byte block positions but no uncompressed block sizes. */
+    @Test
+    public void testFooterFormatV2() throws IOException {
+        testLegacyFile(true);
+    }
 }
@@ -11,6 +11,7 @@ import edu.brown.lasvegas.CompressionType;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.util.ByteArray;
 import edu.brown.lasvegas.util.ChecksumUtil;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Testcase for {@link LocalBlockCompressionVarLenWriter} and {@link LocalBlockCompressionVarLenReader}.
@@ -39,12 +40,39 @@ public class LocalBlockCompressionVarLenTest {
         file = null;
     }
     
+    @Test
+    public void testArenaWriter() throws Exception {
+        final int COUNT = 12345;
+        StringArena arena = new StringArena(1000, 1 << 12);
+        LocalBlockCompressionVarLenWriter<String> writer
+            = LocalBlockCompressionVarLenWriter.getInstanceVarchar(file, getType());
+        for (int i = 0; i < COUNT; i += 1000) {
+            arena.clear();
+            for (int j = i; j < Math.min(COUNT, i + 1000); ++j) {
+                arena.append(generateValue(j));
+            }
+            writer.writeValues(arena, 0, arena.size());
+        }
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+        assertEquals (COUNT, writer.getTupleCount());
+
+        LocalBlockCompressionVarLenReader<String> reader = LocalBlockCompressionVarLenReader.getInstanceVarchar(file, getType());
+        String[] buffer = new String[COUNT];
+        assertEquals(COUNT, reader.readValues(buffer, 0, buffer.length));
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals (generateValue(i), buffer[i]);
+        }
+        reader.close();
+    }
+
     @Test
     public void testStringWriter() throws Exception {
         final int COUNT = 12345;
         {
             LocalBlockCompressionVarLenWriter<String> writer
-                = LocalBlockCompressionVarLenWriter.getInstanceVarchar(file, getType(), 100);
+                = LocalBlockCompressionVarLenWriter.getInstanceVarchar(file, getType());
             writer.setCRC32Enabled(true);
             for (int i = 0; i < COUNT; ++i) {
                 writer.writeValue(generateValue(i));
@@ -104,7 +132,7 @@ public class LocalBlockCompressionVarLenTest {
         final int COUNT = 12345;
         {
             LocalBlockCompressionVarLenWriter<ByteArray> writer
-                = LocalBlockCompressionVarLenWriter.getInstanceVarbin(file, getType(), 100);
+                = LocalBlockCompressionVarLenWriter.getInstanceVarbin(file, getType());
             writer.setCRC32Enabled(true);
             for (int i = 0; i < COUNT; ++i) {
                 writer.writeValue(new ByteArray(generateValue(i).getBytes("UTF-8")));
@@ -155,4 +183,69 @@ public class LocalBlockCompressionVarLenTest {
             reader.close();
         }
     }
+
+    /** includes empty values and values larger than a block. */
+    private static String generateIrregularValue (int index) {
+        if (index % 7 == 0) {
+            return "";
+        }
+        if (index % 1000 == 999) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 7000; ++i) {
+                builder.append("long").append(i);
+            }
+            return builder.toString();
+        }
+        return generateValue(index);
+    }
+
+    @Test
+    public void testOffsetArray() throws Exception {
+        final int COUNT = 5432;
+        {
+            LocalBlockCompressionVarLenWriter<String> writer
+                = LocalBlockCompressionVarLenWriter.getInstanceVarchar(file, getType());
+            for (int i = 0; i < COUNT; ++i) {
+                writer.writeValue(generateIrregularValue(i));
+            }
+            writer.writeFileFooter();
+            writer.flush();
+            writer.close();
+        }
+        {
+            LocalBlockCompressionVarLenReader<String> reader = LocalBlockCompressionVarLenReader.getInstanceVarchar(file, getType());
+            String[] buffer = new String[COUNT + 10];
+            assertEquals(COUNT, reader.readValues(buffer, 0, buffer.length));
+            for (int i = 0; i < COUNT; ++i) {
+                assertEquals (generateIrregularValue(i), buffer[i]);
+            }
+            assertEquals(-1, reader.readValues(buffer, 0, buffer.length));
+
+            // seek and skip in O(1)
+            reader.seekToTupleAbsolute(4998);
+            assertEquals (generateIrregularValue(4998), reader.readValue());
+            assertEquals (generateIrregularValue(4999), reader.readValue());
+            reader.skipValues(400);
+            assertEquals (generateIrregularValue(5400), reader.readValue());
+            reader.seekToTupleAbsolute(7);
+            assertEquals ("", reader.readValue());
+            reader.skipValue();
+            assertEquals (generateIrregularValue(9), reader.readValue());
+
+            // into arena and at positions
+            reader.seekToTupleAbsolute(990);
+            StringArena arena = new StringArena(100, 16);
+            assertEquals (20, reader.readValues(arena, 20));
+            for (int i = 0; i < 20; ++i) {
+                assertEquals (generateIrregularValue(990 + i), arena.getString(i));
+            }
+            int[] positions = new int[]{0, 1, 700, 2000, 4421};
+            String[] picked = new String[positions.length];
+            assertEquals (positions.length, reader.readValuesAtPositions(picked, 0, positions, positions.length));
+            for (int i = 0; i < positions.length; ++i) {
+                assertEquals (generateIrregularValue(1010 + positions[i]), picked[i]);
+            }
+            reader.close();
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.BloomFilter;
+import edu.brown.lasvegas.traits.BigintValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.VarbinValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+import edu.brown.lasvegas.util.ByteArray;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Testcases for {@link LocalBloomFilter} and {@link LocalBloomFilterBuilder}.
+ */
+public class LocalBloomFilterTest {
+    private static final int COUNT = 20000;
+
+    /** random keys with some duplicates. */
+    private static int[] generateInts () {
+        Random random = new Random(1234L);
+        int[] values = new int[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = random.nextInt(COUNT * 2) * 3; // only multiples of 3
+        }
+        return values;
+    }
+
+    private static void validateIntFilter (BloomFilter<Integer, int[]> filter, int[] values) {
+        HashSet<Integer> distinct = new HashSet<Integer>();
+        for (int value : values) {
+            distinct.add(value);
+            assertTrue (filter.mightContain(value)); // no false negatives
+        }
+        assertEquals (distinct.size(), filter.getKeyCount());
+        assertTrue (filter.getBitCount() >= (long) distinct.size() * BloomFilter.DEFAULT_BITS_PER_KEY);
+        assertEquals (0, filter.getBitCount() % 64);
+
+        // keys that are not multiples of 3 are never added
+        int falsePositives = 0;
+        for (int i = 0; i < COUNT; ++i) {
+            if (filter.mightContain(i * 3 + 1)) {
+                ++falsePositives;
+            }
+        }
+        // 10 bits per key should give about 1% false positives
+        assertTrue ("false positives=" + falsePositives, falsePositives < COUNT * 3 / 100);
+
+        // batch API
+        boolean[] results = new boolean[values.length + 5];
+        assertEquals (values.length - 5, filter.mightContain(values, 5, values.length - 5, results));
+        for (int i = 5; i < values.length; ++i) {
+            assertTrue (results[i]);
+        }
+        assertTrue (filter.mightContainAny(values, 0, values.length));
+        assertTrue (filter.mightContainAny(new int[]{1, 4, values[100], 7}, 0, 4));
+        assertFalse (filter.mightContainAny(values, 0, 0));
+    }
+
+    @Test
+    public void testInteger () throws Exception {
+        int[] values = generateInts ();
+        LocalBloomFilterBuilder<Integer, int[]> builder = new LocalBloomFilterBuilder<Integer, int[]>(new IntegerValueTraits());
+        builder.add(values, 0, COUNT / 2);
+        for (int i = COUNT / 2; i < COUNT; ++i) {
+            builder.add(values[i]);
+        }
+        LocalBloomFilter<Integer, int[]> filter = builder.build();
+        validateIntFilter(filter, values);
+
+        LocalVirtualFile file = new LocalVirtualFile("test/local/bloom_int.blm");
+        file.getParentFile().mkdirs();
+        file.delete();
+        filter.writeToFile(file);
+        assertTrue (file.exists());
+        LocalBloomFilter<Integer, int[]> loaded = new LocalBloomFilter<Integer, int[]>(file, ColumnType.INTEGER);
+        assertEquals (filter.getHashCount(), loaded.getHashCount());
+        assertEquals (filter.getBitCount(), loaded.getBitCount());
+        validateIntFilter(loaded, values);
+        file.delete();
+    }
+
+    @Test
+    public void testBigintKeysCompatible () throws Exception {
+        // integer keys are hashed by their numeric values, so INTEGER and BIGINT keys give the same answer
+        int[] values = generateInts ();
+        LocalBloomFilterBuilder<Integer, int[]> builder = new LocalBloomFilterBuilder<Integer, int[]>(new IntegerValueTraits());
+        builder.add(values, 0, COUNT);
+        LocalBloomFilter<Integer, int[]> filter = builder.build();
+        LocalBloomFilter<Long, long[]> longFilter = new LocalBloomFilter<Long, long[]>(
+            filter.getWords(), filter.getHashCount(), filter.getKeyCount(), new BigintValueTraits());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals (filter.mightContain(i), longFilter.mightContain((long) i));
+        }
+    }
+
+    @Test
+    public void testVarchar () throws Exception {
+        String[] values = new String[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = "key" + (i % 5000);
+        }
+        LocalBloomFilterBuilder<String, String[]> builder = new LocalBloomFilterBuilder<String, String[]>(new VarcharValueTraits(), 16);
+        builder.add(values, 0, COUNT);
+        LocalBloomFilter<String, String[]> filter = builder.build();
+        assertEquals (5000, filter.getKeyCount());
+        for (String value : values) {
+            assertTrue (filter.mightContain(value));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 5000; ++i) {
+            if (filter.mightContain("nokey" + i)) {
+                ++falsePositives;
+            }
+        }
+        assertTrue ("false positives=" + falsePositives, falsePositives < 5000 / 100);
+    }
+
+    @Test
+    public void testEmpty () throws Exception {
+        LocalBloomFilter<Integer, int[]> filter = new LocalBloomFilterBuilder<Integer, int[]>(new IntegerValueTraits()).build();
+        assertEquals (0, filter.getKeyCount());
+        assertEquals (64, filter.getBitCount());
+        assertFalse (filter.mightContain(123));
+    }
+
+    @Test
+    public void testArena () throws Exception {
+        // keys in StringArena must be hashed the same as String/ByteArray keys, including non-ASCII strings
+        String[] values = new String[COUNT];
+        ByteArray[] binaries = new ByteArray[COUNT];
+        StringArena arena = new StringArena(COUNT, 1 << 16);
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = (i % 2 == 0 ? "key" : "\u6728\u6751") + (i % 5000);
+            binaries[i] = new ByteArray(new byte[]{(byte) i, (byte) (i >> 8), (byte) 0xFF});
+        }
+        LocalBloomFilterBuilder<String, String[]> expected = new LocalBloomFilterBuilder<String, String[]>(new VarcharValueTraits());
+        expected.add(values, 0, COUNT);
+        LocalBloomFilterBuilder<String, String[]> builder = new LocalBloomFilterBuilder<String, String[]>(new VarcharValueTraits());
+        for (String value : values) {
+            arena.append(value);
+        }
+        builder.add(arena, 0, COUNT);
+        assertArrayEquals (expected.build().getWords(), builder.build().getWords());
+
+        LocalBloomFilterBuilder<ByteArray, ByteArray[]> expectedBin = new LocalBloomFilterBuilder<ByteArray, ByteArray[]>(new VarbinValueTraits());
+        expectedBin.add(binaries, 0, COUNT);
+        LocalBloomFilterBuilder<ByteArray, ByteArray[]> builderBin = new LocalBloomFilterBuilder<ByteArray, ByteArray[]>(new VarbinValueTraits());
+        arena.clear();
+        for (ByteArray value : binaries) {
+            arena.append(value);
+        }
+        builderBin.add(arena, 0, COUNT);
+        assertArrayEquals (expectedBin.build().getWords(), builderBin.build().getWords());
+    }
+}
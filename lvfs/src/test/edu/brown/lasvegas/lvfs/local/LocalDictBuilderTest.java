@@ -0,0 +1,105 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.traits.ValueTraits;
+import edu.brown.lasvegas.traits.ValueTraitsFactory;
+import edu.brown.lasvegas.util.ByteArray;
+
+/**
+ * Testcases for {@link LocalDictBuilder}.
+ */
+public class LocalDictBuilderTest {
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>, AT> LocalDictBuilder<T, AT> create (ColumnType type) {
+        return LocalDictBuilder.getInstance((ValueTraits<T, AT>) ValueTraitsFactory.getInstance(type));
+    }
+
+    @Test
+    public void testBigint () {
+        LocalDictBuilder<Long, long[]> builder = create(ColumnType.BIGINT);
+        final int DISTINCT = 50000;
+        long[] values = new long[DISTINCT * 3];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (i % DISTINCT) * 0x100000000L - 12345L;
+        }
+        int[] codes = new int[values.length + 10];
+        builder.add(values, 0, values.length, codes, 10);
+        assertEquals (DISTINCT, builder.size());
+        for (int i = 0; i < values.length; ++i) {
+            assertEquals (i % DISTINCT, codes[10 + i]);
+        }
+        long[] entries = builder.toArray();
+        assertEquals (DISTINCT, entries.length);
+        for (int i = 0; i < DISTINCT; ++i) {
+            assertEquals (values[i], entries[i]);
+        }
+        assertEquals (777, builder.add(values[777]));
+        assertEquals (DISTINCT, builder.add(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testSmallTypes () {
+        LocalDictBuilder<Byte, byte[]> bytes = create(ColumnType.TINYINT);
+        byte[] byteValues = new byte[]{5, -128, 127, 5, 0, -128};
+        int[] codes = new int[byteValues.length];
+        bytes.add(byteValues, 0, byteValues.length, codes, 0);
+        assertArrayEquals (new int[]{0, 1, 2, 0, 3, 1}, codes);
+        assertArrayEquals (new byte[]{5, -128, 127, 0}, bytes.toArray());
+
+        LocalDictBuilder<Short, short[]> shorts = create(ColumnType.SMALLINT);
+        for (int i = Short.MIN_VALUE; i <= Short.MAX_VALUE; ++i) {
+            assertEquals (i - Short.MIN_VALUE, shorts.add((short) i));
+        }
+        assertEquals (1 << 16, shorts.size());
+        assertEquals (3, shorts.add((short) (Short.MIN_VALUE + 3)));
+    }
+
+    @Test
+    public void testFloatingPoints () {
+        LocalDictBuilder<Double, double[]> doubles = create(ColumnType.DOUBLE);
+        double[] values = new double[]{0.0d, -0.0d, Double.NaN, 1.5d, Double.NaN, 0.0d};
+        int[] codes = new int[values.length];
+        doubles.add(values, 0, values.length, codes, 0);
+        // same as Double#equals()
+        assertArrayEquals (new int[]{0, 1, 2, 3, 2, 0}, codes);
+
+        LocalDictBuilder<Float, float[]> floats = create(ColumnType.FLOAT);
+        for (int i = 0; i < 10000; ++i) {
+            assertEquals (i, floats.add(i * 0.25f));
+        }
+        assertEquals (40, floats.add(10.0f));
+        assertEquals (10000, floats.toArray().length);
+    }
+
+    @Test
+    public void testVarchar () {
+        LocalDictBuilder<String, String[]> builder = create(ColumnType.VARCHAR);
+        String[] values = new String[]{"abc", "", "\u3042\u3044", "abc", "ab", "\u3042\u3044", ""};
+        int[] codes = new int[values.length];
+        builder.add(values, 0, values.length, codes, 0);
+        assertArrayEquals (new int[]{0, 1, 2, 0, 3, 2, 1}, codes);
+        assertArrayEquals (new String[]{"abc", "", "\u3042\u3044", "ab"}, builder.toArray());
+
+        // enough entries to rehash and grow the byte arena
+        for (int i = 0; i < 100000; ++i) {
+            assertEquals (4 + i, builder.add("long string value " + i));
+        }
+        assertEquals (4 + 99999, builder.add("long string value 99999"));
+        assertEquals ("long string value 12345", builder.toArray()[4 + 12345]);
+    }
+
+    @Test
+    public void testVarbin () {
+        LocalDictBuilder<ByteArray, ByteArray[]> builder = create(ColumnType.VARBINARY);
+        assertEquals (0, builder.add(new ByteArray(new byte[]{1, 2, 3})));
+        assertEquals (1, builder.add(new ByteArray(new byte[]{1, 2})));
+        assertEquals (0, builder.add(new ByteArray(new byte[]{1, 2, 3})));
+        ByteArray[] entries = builder.toArray();
+        assertEquals (2, entries.length);
+        assertArrayEquals (new byte[]{1, 2}, entries[1].getBytes());
+    }
+}
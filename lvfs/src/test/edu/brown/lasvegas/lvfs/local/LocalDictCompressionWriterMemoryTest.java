@@ -0,0 +1,116 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.util.ChecksumUtil;
+
+/**
+ * Testcases for in-memory tentative values and spilling in {@link LocalDictCompressionWriter}.
+ */
+public class LocalDictCompressionWriterMemoryTest {
+    private static final int COUNT = 100000;
+    private VirtualFile dataFile, dictFile, tmpFile;
+
+    @Before
+    public void setUp () throws Exception {
+        dataFile = new LocalVirtualFile("test/local/dict_mem.dat");
+        if (!dataFile.getParentFile().exists() && !dataFile.getParentFile().mkdirs()) {
+            throw new Exception ("Couldn't create test directory " + dataFile.getParentFile().getAbsolutePath());
+        }
+        dictFile = new LocalVirtualFile("test/local/dict_mem.dat.dict");
+        tmpFile = new LocalVirtualFile("test/local/dict_mem.dat.tmp");
+        tearDown();
+    }
+    @After
+    public void tearDown () throws Exception {
+        dataFile.delete();
+        dictFile.delete();
+        tmpFile.delete();
+    }
+
+    private static int getValue (int tuple, int distinct) {
+        return (int) ((tuple * 7919L) % distinct) * 3 - 1000;
+    }
+
+    /**
+     * Writes values with writeValues() and verifies the result.
+     * @return whether the tentative values were spilled
+     */
+    private boolean writeAndVerify (int distinct, int maxInMemoryCodeBytes, int bytesPerEntry) throws Exception {
+        LocalDictCompressionWriter<Integer, int[]> writer = new LocalDictCompressionWriter<Integer, int[]>(dataFile, dictFile, tmpFile, ColumnType.INTEGER);
+        boolean spilled;
+        try {
+            writer.setCRC32Enabled(true);
+            writer.setMaxInMemoryCodeBytes(maxInMemoryCodeBytes);
+            int[] buffer = new int[3000];
+            for (int written = 0; written < COUNT;) {
+                int count = Math.min(buffer.length, COUNT - written);
+                for (int i = 0; i < count; ++i) {
+                    buffer[i] = getValue(written + i, distinct);
+                }
+                writer.writeValues(buffer, 0, count);
+                written += count;
+            }
+            long crc32 = writer.writeFileFooter();
+            assertEquals (ChecksumUtil.getFileCheckSum(dataFile), crc32);
+            assertEquals (COUNT, writer.getTupleCount());
+            spilled = writer.isSpilled();
+            assertEquals (spilled, tmpFile.exists());
+        } finally {
+            writer.close();
+        }
+        assertFalse (tmpFile.exists());
+
+        assertEquals ((long) bytesPerEntry * COUNT, dataFile.length());
+        LocalDictFile<Integer, int[]> dict = new LocalDictFile<Integer, int[]>(dictFile, ColumnType.INTEGER);
+        assertEquals (distinct, dict.getDictionarySize());
+        assertEquals (bytesPerEntry, dict.getBytesPerEntry());
+        LocalFixLenReader<Integer, int[]> reader = LocalFixLenReader.getInstanceInteger(dataFile);
+        LocalFixLenReader<Short, short[]> shortReader = LocalFixLenReader.getInstanceSmallint(dataFile);
+        LocalFixLenReader<Byte, byte[]> byteReader = LocalFixLenReader.getInstanceTinyint(dataFile);
+        try {
+            for (int i = 0; i < COUNT; ++i) {
+                int compressed;
+                switch (bytesPerEntry) {
+                case 1: compressed = byteReader.readValue(); break;
+                case 2: compressed = shortReader.readValue(); break;
+                default: compressed = reader.readValue(); break;
+                }
+                assertEquals (getValue(i, distinct), dict.decompress(compressed).intValue());
+            }
+        } finally {
+            reader.close();
+            shortReader.close();
+            byteReader.close();
+        }
+        return spilled;
+    }
+
+    @Test
+    public void testByteInMemory () throws Exception {
+        assertFalse (writeAndVerify(200, LocalDictCompressionWriter.DEFAULT_MAX_IN_MEMORY_CODE_BYTES, 1));
+    }
+
+    @Test
+    public void testShortInMemory () throws Exception {
+        // widens 1-byte values to 2-byte values in the middle
+        assertFalse (writeAndVerify(30000, LocalDictCompressionWriter.DEFAULT_MAX_IN_MEMORY_CODE_BYTES, 2));
+    }
+
+    @Test
+    public void testSpillByCardinality () throws Exception {
+        assertTrue (writeAndVerify(90000, LocalDictCompressionWriter.DEFAULT_MAX_IN_MEMORY_CODE_BYTES, 4));
+    }
+
+    @Test
+    public void testSpillByMemory () throws Exception {
+        assertTrue (writeAndVerify(1000, COUNT, 2));
+        assertTrue (writeAndVerify(100, 0, 1));
+    }
+}
@@ -0,0 +1,11 @@
+package edu.brown.lasvegas.lvfs.local;
+
+/**
+ * Same as {@link LocalFixLenReaderBigintTest} except that the file is memory-mapped.
+ */
+public class LocalFixLenReaderBigintMappedTest extends LocalFixLenReaderBigintTest {
+    @Override
+    protected boolean isMemoryMapped() {
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+package edu.brown.lasvegas.lvfs.local;
+
+/**
+ * Same as {@link LocalFixLenReaderIntegerTest} except that the file is memory-mapped.
+ */
+public class LocalFixLenReaderIntegerMappedTest extends LocalFixLenReaderIntegerTest {
+    @Override
+    protected boolean isMemoryMapped() {
+        return true;
+    }
+}
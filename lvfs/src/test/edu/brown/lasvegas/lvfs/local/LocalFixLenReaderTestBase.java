@@ -30,6 +30,8 @@ public abstract class LocalFixLenReaderTestBase<T extends Number & Comparable<T>
     protected abstract AT createArray (int size);
     protected abstract void setToArray (AT array, int index, T value);
     protected abstract T getFromArray (AT array, int index);
+    /** override this to test memory-mapped mode. */
+    protected boolean isMemoryMapped () {return false;}
 
     
     private static HashSet<Class<?>> inittedClasses = new HashSet<Class<?>>();
@@ -70,7 +72,7 @@ public abstract class LocalFixLenReaderTestBase<T extends Number & Comparable<T>
     public void setUp() throws Exception {
         initOnce();
         this.traits = createTraits();
-        this.reader = new LocalFixLenReader<T, AT>(file, traits);
+        this.reader = new LocalFixLenReader<T, AT>(file, traits, 1 << 16, isMemoryMapped());
     }
     @After
     public void tearDown() throws Exception {
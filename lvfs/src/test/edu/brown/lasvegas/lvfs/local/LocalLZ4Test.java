@@ -0,0 +1,103 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link LocalLZ4}.
+ */
+public class LocalLZ4Test {
+    /** compresses with the fast and HC compressors, decompresses them and checks the results. returns compressed sizes. */
+    private int[] roundTrip (byte[] data) throws IOException {
+        int[] sizes = new int[2];
+        for (int i = 0; i < 2; ++i) {
+            LocalLZ4.Compressor compressor = new LocalLZ4.Compressor(i == 1);
+            // compress twice to make sure the reused tables don't affect the result
+            for (int rep = 0; rep < 2; ++rep) {
+                byte[] compressed = new byte[3 + LocalLZ4.maxCompressedLength(data.length)];
+                int compressedLength = compressor.compress(data, 0, data.length, compressed, 3);
+                assertTrue (compressedLength <= LocalLZ4.maxCompressedLength(data.length));
+                byte[] decompressed = new byte[data.length + 5];
+                assertEquals (data.length, LocalLZ4.decompress(compressed, 3, compressedLength, decompressed, 5, data.length));
+                assertArrayEquals (data, Arrays.copyOfRange(decompressed, 5, 5 + data.length));
+                sizes[i] = compressedLength;
+            }
+        }
+        return sizes;
+    }
+
+    @Test
+    public void testSmall() throws IOException {
+        for (int len = 0; len < 40; ++len) {
+            byte[] data = new byte[len];
+            for (int i = 0; i < len; ++i) {
+                data[i] = (byte) (i % 3);
+            }
+            roundTrip (data);
+        }
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(1234L).nextBytes(data);
+        int[] sizes = roundTrip (data);
+        // incompressible data shouldn't expand much
+        assertTrue (sizes[0] <= LocalLZ4.maxCompressedLength(data.length));
+        assertTrue (sizes[1] <= LocalLZ4.maxCompressedLength(data.length));
+    }
+
+    @Test
+    public void testRepetitive() throws IOException {
+        // long runs (overlapping matches) and long literal runs
+        byte[] data = new byte[200000];
+        Random random = new Random(5678L);
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (i / 1000) % 2 == 0 ? (byte) 7 : (byte) random.nextInt(4);
+        }
+        int[] sizes = roundTrip (data);
+        assertTrue (sizes[0] < data.length / 2);
+        assertTrue (sizes[1] < data.length / 2);
+    }
+
+    @Test
+    public void testHighCompression() throws IOException {
+        // text-like data with many repeated words
+        String[] words = {"lineitem", "orders", "partsupp", "customer", "nation", "region", "supplier", "part", "DELIVER IN PERSON", "TAKE BACK RETURN"};
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(91011L);
+        while (text.length() < 60000) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(100)).append(' ');
+        }
+        byte[] data = text.toString().getBytes("UTF-8");
+        int[] sizes = roundTrip (data);
+        assertTrue (sizes[0] < data.length / 2);
+        assertTrue ("fast=" + sizes[0] + ", hc=" + sizes[1], sizes[1] < sizes[0]);
+    }
+
+    @Test
+    public void testCorrupted() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) (i % 10);
+        }
+        byte[] compressed = new byte[LocalLZ4.maxCompressedLength(data.length)];
+        int compressedLength = new LocalLZ4.Compressor(false).compress(data, 0, data.length, compressed, 0);
+        byte[] decompressed = new byte[data.length];
+        try {
+            LocalLZ4.decompress(compressed, 0, compressedLength - 1, decompressed, 0, data.length);
+            fail ("truncated block should be detected");
+        } catch (IOException ex) {
+        }
+        try {
+            LocalLZ4.decompress(compressed, 0, compressedLength, decompressed, 0, data.length - 1);
+            fail ("wrong uncompressed size should be detected");
+        } catch (IOException ex) {
+        }
+    }
+}
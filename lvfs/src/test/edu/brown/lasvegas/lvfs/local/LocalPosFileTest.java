@@ -3,6 +3,8 @@ package edu.brown.lasvegas.lvfs.local;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import org.junit.Test;
@@ -22,11 +24,11 @@ public class LocalPosFileTest {
         }
         file.delete();
         ArrayList<Integer> tuples = new ArrayList<Integer>();
-        ArrayList<Integer> positions = new ArrayList<Integer>();
+        ArrayList<Long> positions = new ArrayList<Long>();
 
         final int ENTRY_COUNT = 1000;
         int curTup = 0;
-        int curPos = 12;
+        long curPos = 12;
         for (int i = 0; i < ENTRY_COUNT; ++i) {
             tuples.add(curTup);
             positions.add(curPos);
@@ -36,7 +38,7 @@ public class LocalPosFileTest {
         // suppose it really ends at 1000 * 100 - 50, 1000 * 1024 - 500
 
         LocalPosFile.createPosFile(file, tuples, positions, ENTRY_COUNT * 100 - 50, ENTRY_COUNT * 1024 - 500);
-        assertEquals ((tuples.size() + 1) * 2 * 4, file.length());
+        assertEquals (8 + (tuples.size() + 1) * (4 + 8), file.length());
         
         LocalPosFile posFile = new LocalPosFile(file);
         assertEquals (ENTRY_COUNT * 100 - 50, posFile.getTotalTuples());
@@ -74,4 +76,53 @@ public class LocalPosFileTest {
             assertEquals (12 + 1024 * 999, pos.bytePosition);
         }
     }
+
+    /** position files written by older versions are series of 4-byte int-pairs. */
+    @Test
+    public void testOldFormat() throws Exception {
+        VirtualFile file = new LocalVirtualFile("test/local/test_old.pos");
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new Exception ("Couldn't create test directory " + file.getParentFile().getAbsolutePath());
+        }
+        file.delete();
+        int[] array = new int[] {0, 12, 100, 1036, 200, 2060, 250, 2560};
+        ByteBuffer buffer = ByteBuffer.allocate(array.length * 4);
+        buffer.asIntBuffer().put(array);
+        OutputStream out = file.getOutputStream();
+        out.write(buffer.array());
+        out.close();
+
+        LocalPosFile posFile = new LocalPosFile(file);
+        assertEquals (4, posFile.getEntryCount());
+        assertEquals (250, posFile.getTotalTuples());
+        assertEquals (2560L, posFile.getTotalBytes());
+        Pos pos = posFile.searchPosition(150);
+        assertEquals (100, pos.tuple);
+        assertEquals (1036L, pos.bytePosition);
+
+        // writing it out again converts it to the current format
+        posFile.writeToFile(file);
+        assertEquals (8 + 4 * (4 + 8), file.length());
+        posFile = new LocalPosFile(file);
+        assertEquals (250, posFile.getTotalTuples());
+        assertEquals (2060L, posFile.searchPosition(249).bytePosition);
+        file.delete();
+    }
+
+    @Test
+    public void testLargePosition() throws Exception {
+        VirtualFile file = new LocalVirtualFile("test/local/test_large.pos");
+        file.delete();
+        ArrayList<Integer> tuples = new ArrayList<Integer>();
+        ArrayList<Long> positions = new ArrayList<Long>();
+        tuples.add(0);
+        positions.add(0L);
+        tuples.add(1000000);
+        positions.add(3L << 31);
+        LocalPosFile.createPosFile(file, tuples, positions, 2000000, 1L << 33);
+        LocalPosFile posFile = new LocalPosFile(file);
+        assertEquals (3L << 31, posFile.searchPosition(1500000).bytePosition);
+        assertEquals (1L << 33, posFile.getTotalBytes());
+        file.delete();
+    }
 }
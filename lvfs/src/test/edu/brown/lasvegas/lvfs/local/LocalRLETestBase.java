@@ -11,6 +11,7 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.brown.lasvegas.lvfs.ValueRunBatch;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.traits.ValueTraits;
 import edu.brown.lasvegas.util.ChecksumUtil;
@@ -168,6 +169,42 @@ public abstract class LocalRLETestBase<T extends Comparable<T>, AT> {
         }
     }
 
+    @Test
+    public void testReadRuns() throws IOException {
+        reader.seekToTupleAbsolute(7);
+        ValueRunBatch<T, AT> batch = new ValueRunBatch<T, AT>(traits, 10);
+        int nextTuple = 7;
+        int totalRuns = 0;
+        while (true) {
+            batch.resetCount();
+            int read = reader.readRuns(batch, 100);
+            if (read < 0) {
+                break;
+            }
+            assertEquals (batch.getCount(), read);
+            assertTrue (batch.getTupleCount() <= 100);
+            for (int i = 0; i < read; ++i) {
+                assertEquals (nextTuple, batch.getStartTuples()[i]);
+                assertTrue (batch.getRunLengths()[i] > 0);
+                for (int j = 0; j < batch.getRunLengths()[i]; ++j) {
+                    assertEqualsT(generateValue(nextTuple + j), batch.getValue(i));
+                }
+                nextTuple += batch.getRunLengths()[i];
+            }
+            totalRuns += read;
+        }
+        assertEquals (VALUE_COUNT, nextTuple);
+        assertTrue (totalRuns >= runCount - 1);
+
+        // runs and values can be read interchangeably
+        reader.seekToTupleAbsolute(3);
+        batch.resetCount();
+        int read = reader.readRuns(batch, 5);
+        assertTrue (read > 0);
+        assertEquals (5, batch.getTupleCount());
+        assertEqualsT(generateValue(8), reader.readValue());
+    }
+
     @Test
     public void testGetTotalTuples() throws IOException {
         assertEquals (VALUE_COUNT, reader.getTotalTuples());
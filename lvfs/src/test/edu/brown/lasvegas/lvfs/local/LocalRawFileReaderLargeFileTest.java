@@ -0,0 +1,71 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.RandomAccessFile;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Testcase for {@link LocalRawFileReader} on a file larger than 2GB.
+ * The file is sparse, so it doesn't actually consume the disk space
+ * (on most file systems).
+ */
+public class LocalRawFileReaderLargeFileTest {
+    private static LocalVirtualFile file;
+    private static final long LARGE_POSITION = (3L << 30) + 7;
+    private static final long FILE_SIZE = LARGE_POSITION + 1024;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        file = new LocalVirtualFile("test/local/largefile.bin");
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new Exception ("Couldn't create test directory " + file.getParentFile().getAbsolutePath());
+        }
+        file.delete();
+        RandomAccessFile raf = new RandomAccessFile(file.getAbsolutePath(), "rw");
+        raf.setLength(FILE_SIZE);
+        raf.seek(12);
+        raf.writeInt(0x2490F939);
+        raf.seek(LARGE_POSITION);
+        raf.writeLong(0xD02E908A2490F939L);
+        raf.writeInt(0xB490F979);
+        raf.close();
+    }
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        file.delete();
+        file = null;
+    }
+
+    private void testLargeFile (LocalRawFileReader reader) throws Exception {
+        assertEquals (FILE_SIZE, reader.getRawFileSize());
+        reader.seekToByteAbsolute(LARGE_POSITION);
+        assertEquals (0xD02E908A2490F939L, reader.getRawValueReader().readLong());
+        assertEquals (LARGE_POSITION + 8, reader.getCurPosition());
+        reader.seekToByteAbsolute(12);
+        assertEquals (0x2490F939, reader.getRawValueReader().readInt());
+        reader.seekToByteRelative(LARGE_POSITION + 8 - 16);
+        int[] ints = new int[1];
+        assertEquals (1, reader.getRawValueReader().readInts(ints, 0, 1));
+        assertEquals (0xB490F979, ints[0]);
+        reader.close();
+    }
+
+    @Test
+    public void testPositional() throws Exception {
+        LocalRawFileReader reader = new LocalRawFileReader(file, 1024);
+        assertTrue (reader.isPositional());
+        testLargeFile(reader);
+    }
+
+    @Test
+    public void testMappedFallback() throws Exception {
+        // too large to map at once
+        LocalRawFileReader reader = new LocalRawFileReader(file, 1024, true);
+        assertFalse (reader.isMemoryMapped());
+        testLargeFile(reader);
+    }
+}
@@ -0,0 +1,15 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcase for memory-mapped mode of {@link LocalRawFileReader}.
+ */
+public class LocalRawFileReaderMappedTest extends LocalRawFileReaderTest {
+    @Override
+    protected LocalRawFileReader createReader() throws Exception {
+        LocalRawFileReader rawReader = new LocalRawFileReader(file, 1024, true);
+        assertTrue (rawReader.isMemoryMapped());
+        return rawReader;
+    }
+}
@@ -0,0 +1,70 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.channels.ClosedByInterruptException;
+
+import org.junit.Test;
+
+/**
+ * Testcase for positional (pread) mode of {@link LocalRawFileReader}.
+ * Uses a tiny window so that reads cross the window boundary frequently.
+ */
+public class LocalRawFileReaderPositionalTest extends LocalRawFileReaderTest {
+    @Override
+    protected LocalRawFileReader createReader() throws Exception {
+        LocalRawFileReader rawReader = new LocalRawFileReader(file, 5);
+        assertTrue (rawReader.isPositional());
+        return rawReader;
+    }
+
+    @Test
+    public void testSharedHandle() throws Exception {
+        File ioFile = new File(file.getAbsolutePath());
+        int before = LocalVirtualFilePositionalInput.getSharedCount(ioFile);
+        LocalRawFileReader reader1 = createReader();
+        LocalRawFileReader reader2 = createReader();
+        assertEquals(before + 2, LocalVirtualFilePositionalInput.getSharedCount(ioFile));
+        reader1.seekToByteAbsolute(27);
+        reader2.seekToByteAbsolute(11);
+        assertEquals(0x102E908A2490F9EAL, reader1.getRawValueReader().readLong());
+        assertEquals(0x2490F939, reader2.getRawValueReader().readInt());
+        reader1.close();
+        assertEquals(before + 1, LocalVirtualFilePositionalInput.getSharedCount(ioFile));
+        assertEquals(0xB490F979, reader2.getRawValueReader().readInt());
+        reader2.close();
+        assertEquals(before, LocalVirtualFilePositionalInput.getSharedCount(ioFile));
+    }
+
+    @Test
+    public void testInterruptedReader() throws Exception {
+        File ioFile = new File(file.getAbsolutePath());
+        LocalVirtualFilePositionalInput input1 = LocalVirtualFilePositionalInput.open(ioFile);
+        LocalVirtualFilePositionalInput input2 = LocalVirtualFilePositionalInput.open(ioFile);
+        byte[] expected = new byte[8];
+        assertEquals(8, input2.read(27, expected, 0, 8));
+
+        // the interrupt closes the shared channel
+        Thread.currentThread().interrupt();
+        try {
+            input1.read(27, new byte[8], 0, 8);
+            fail("the interrupt should have been thrown");
+        } catch (ClosedByInterruptException ex) {
+        }
+        assertTrue(Thread.interrupted());
+
+        // but the other reader, and the interrupted reader itself, keep working on a re-opened channel
+        byte[] buf = new byte[8];
+        assertEquals(8, input2.read(27, buf, 0, 8));
+        assertArrayEquals(expected, buf);
+        buf = new byte[8];
+        assertEquals(8, input1.read(27, buf, 0, 8));
+        assertArrayEquals(expected, buf);
+        // other readers (if any) move to the re-opened channel on their next read
+        assertEquals(2, LocalVirtualFilePositionalInput.getSharedCount(ioFile));
+        input1.close();
+        input2.close();
+        assertEquals(0, LocalVirtualFilePositionalInput.getSharedCount(ioFile));
+    }
+}
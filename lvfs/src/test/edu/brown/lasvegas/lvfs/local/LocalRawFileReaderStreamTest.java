@@ -0,0 +1,22 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import edu.brown.lasvegas.util.URLVirtualFile;
+
+/**
+ * Testcase for stream mode of {@link LocalRawFileReader}, which is used
+ * when the file system doesn't support positional reads.
+ */
+public class LocalRawFileReaderStreamTest extends LocalRawFileReaderTest {
+    @Override
+    protected LocalRawFileReader createReader() throws Exception {
+        // URLVirtualFile doesn't provide positional input
+        LocalRawFileReader rawReader = new LocalRawFileReader(new URLVirtualFile(new File(file.getAbsolutePath()).toURI().toURL()), 5);
+        assertFalse (rawReader.isPositional());
+        assertFalse (rawReader.isMemoryMapped());
+        return rawReader;
+    }
+}
@@ -1,9 +1,12 @@
 package edu.brown.lasvegas.lvfs.local;
 
+import static org.junit.Assert.*;
+
 import java.io.DataOutputStream;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 /**
  * Testcase for {@link LocalRawFileReader}.
@@ -47,4 +50,22 @@ public class LocalRawFileReaderTest extends LocalRawFileTestBase {
         file.delete();
         file = null;
     }
+
+    @Test
+    public void testSeekBackward() throws Exception {
+        LocalRawFileReader rawReader = createReader();
+        rawReader.seekToByteAbsolute(27);
+        assertEquals(0x102E908A2490F9EAL, rawReader.getRawValueReader().readLong());
+        rawReader.seekToByteAbsolute(11);
+        assertEquals(0x2490F939, rawReader.getRawValueReader().readInt());
+        assertEquals(15, rawReader.getCurPosition());
+        int[] ints = new int[3];
+        assertEquals(1, rawReader.getRawValueReader().readInts(ints, 1, 1));
+        assertEquals(0xB490F979, ints[1]);
+        rawReader.seekToByteAbsolute(rawReader.getRawFileSize() - 2);
+        assertEquals(0, rawReader.getRawValueReader().readInts(ints, 0, 3));
+        rawReader.seekToByteAbsolute(rawReader.getRawFileSize());
+        assertEquals(-1, rawReader.getRawValueReader().readInts(ints, 0, 3));
+        rawReader.close();
+    }
 }
@@ -21,9 +21,14 @@ import edu.brown.lasvegas.lvfs.VirtualFile;
 public abstract class LocalRawFileTestBase {
     protected static VirtualFile file;
     
+    /** override this to test other modes of the reader. */
+    protected LocalRawFileReader createReader () throws Exception {
+        return new LocalRawFileReader(file, 1024);
+    }
+
     @Before
     public void setUp() throws Exception {
-        rawReader = new LocalRawFileReader(file, 1024);
+        rawReader = createReader();
         reader = rawReader.getRawValueReader();
     }
 
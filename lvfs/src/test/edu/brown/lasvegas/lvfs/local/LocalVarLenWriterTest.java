@@ -11,6 +11,7 @@ import edu.brown.lasvegas.lvfs.PositionIndex.Pos;
 import edu.brown.lasvegas.lvfs.VirtualFile;
 import edu.brown.lasvegas.util.ByteArray;
 import edu.brown.lasvegas.util.ChecksumUtil;
+import edu.brown.lasvegas.util.StringArena;
 
 /**
  * Testcase for {@link LocalVarLenWriter}.
@@ -164,4 +165,37 @@ public class LocalVarLenWriterTest {
         }
         readerWithPos.close();
     }
+
+    @Test
+    public void testArenaWriter() throws Exception {
+        // writing from StringArena must produce exactly the same files as writing Strings
+        final int COUNT = 12345;
+        VirtualFile arenaFile = new LocalVirtualFile("test/local/strfile_arena.data");
+        VirtualFile arenaPosFile = new LocalVirtualFile("test/local/strfile_arena.data.pos");
+        String[] values = new String[COUNT];
+        StringArena arena = new StringArena(COUNT, 1 << 16);
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = generateValue(i);
+            arena.append(values[i]);
+        }
+        LocalVarLenWriter<String> writer = LocalVarLenWriter.getInstanceVarchar(dataFile, 100);
+        writer.writeValues(values, 0, COUNT);
+        writer.writePositionFile(posFile);
+        writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+
+        LocalVarLenWriter<String> arenaWriter = LocalVarLenWriter.getInstanceVarchar(arenaFile, 100);
+        arenaWriter.writeValues(arena, 0, 1000);
+        arenaWriter.writeValues(arena, 1000, COUNT - 1000);
+        arenaWriter.writePositionFile(arenaPosFile);
+        arenaWriter.writeFileFooter();
+        arenaWriter.flush();
+        arenaWriter.close();
+        assertEquals (COUNT, arenaWriter.getTupleCount());
+        assertEquals (ChecksumUtil.getFileCheckSum(dataFile), ChecksumUtil.getFileCheckSum(arenaFile));
+        assertEquals (ChecksumUtil.getFileCheckSum(posFile), ChecksumUtil.getFileCheckSum(arenaPosFile));
+        arenaFile.delete();
+        arenaPosFile.delete();
+    }
 }
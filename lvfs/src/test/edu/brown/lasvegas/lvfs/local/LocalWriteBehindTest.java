@@ -0,0 +1,216 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.ColumnFileBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileReaderBundle;
+import edu.brown.lasvegas.lvfs.ColumnFileWriterBundle;
+import edu.brown.lasvegas.lvfs.TypedReader;
+import edu.brown.lasvegas.lvfs.TypedWriter;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+
+/**
+ * Testcase for {@link LocalWriteBehind}.
+ */
+public class LocalWriteBehindTest {
+    private static final int COUNT = 100000;
+    private LocalWriteBehind writeBehind;
+    private LocalVirtualFile tmpFolder;
+
+    @Before
+    public void setUp () throws Exception {
+        // small buffers and depth to make the producer wait for the pool
+        writeBehind = new LocalWriteBehind(2, 2, 1 << 10);
+        tmpFolder = new LocalVirtualFile("test/writebehind/");
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+        tmpFolder.mkdirs();
+    }
+
+    @After
+    public void tearDown () throws Exception {
+        writeBehind.close();
+        if (tmpFolder.exists()) {
+            tmpFolder.delete(true);
+        }
+    }
+
+    private long writeIntegers (VirtualFile file, LocalWriteBehind pool) throws IOException {
+        LocalFixLenWriter<Integer, int[]> writer = new LocalFixLenWriter<Integer, int[]>(file, new IntegerValueTraits(), 1000);
+        writer.setWriteBehind(pool);
+        writer.setCRC32Enabled(true);
+        int[] buf = new int[777];
+        for (int written = 0; written < COUNT;) {
+            int len = Math.min(buf.length, COUNT - written);
+            for (int i = 0; i < len; ++i) {
+                buf[i] = (written + i) * 31;
+            }
+            writer.writeValues(buf, 0, len);
+            written += len;
+            if (written == 777 * 10) {
+                // everything written so far must be in the file after flush
+                writer.flush(true);
+                assertEquals (written * 4L, file.length());
+            }
+        }
+        long crc = writer.writeFileFooter();
+        writer.flush();
+        writer.close();
+        return crc;
+    }
+
+    @Test
+    public void testFixLen () throws Exception {
+        VirtualFile syncFile = tmpFolder.getChildFile("sync.bin");
+        VirtualFile asyncFile = tmpFolder.getChildFile("async.bin");
+        long syncCrc = writeIntegers(syncFile, null);
+        long asyncCrc = writeIntegers(asyncFile, writeBehind);
+        assertEquals (syncCrc, asyncCrc);
+        assertEquals (COUNT * 4L, asyncFile.length());
+
+        LocalFixLenReader<Integer, int[]> reader = LocalFixLenReader.getInstanceInteger(asyncFile);
+        try {
+            int[] buf = new int[COUNT];
+            assertEquals (COUNT, reader.readValues(buf, 0, COUNT));
+            for (int i = 0; i < COUNT; ++i) {
+                assertEquals (i * 31, buf[i]);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testColumnFiles () throws Exception {
+        // block-compressed writers have no buffering of their own, dictionary writers create files internally
+        CompressionType[] compressions = new CompressionType[]{CompressionType.NONE, CompressionType.LZ4, CompressionType.DICTIONARY};
+        for (int c = 0; c < compressions.length; ++c) {
+            ColumnFileWriterBundle writer = new ColumnFileWriterBundle(tmpFolder, "col" + c, ColumnType.VARCHAR, compressions[c], true);
+            try {
+                writer.setWriteBehind(writeBehind);
+                for (int i = 0; i < COUNT; ++i) {
+                    ((TypedWriter) writer.getDataWriter()).writeValue("str" + (i % 5000));
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            ColumnFileReaderBundle reader = new ColumnFileReaderBundle(new ColumnFileBundle(writer, false));
+            try {
+                TypedReader dataReader = reader.getDataReader();
+                for (int i = 0; i < COUNT; ++i) {
+                    assertEquals ("str" + (i % 5000), dataReader.readValue());
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /** writers must keep working with synchronous writes after the thread pool is stopped. */
+    @Test
+    public void testClosedPool () throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream stream = writeBehind.wrap(out, 100);
+        byte[] bytes = new byte[5000];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i * 7);
+        }
+        stream.write(bytes, 0, 2500);
+        writeBehind.close();
+        stream.write(bytes, 2500, 2500);
+        stream.close();
+        assertArrayEquals (bytes, out.toByteArray());
+
+        // a closed pool is simply ignored
+        long crc = writeIntegers(tmpFolder.getChildFile("closed.bin"), writeBehind);
+        assertEquals (writeIntegers(tmpFolder.getChildFile("sync.bin"), null), crc);
+    }
+
+    /** an error in background is thrown to the producer. */
+    @Test
+    public void testError () throws Exception {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        OutputStream stream = writeBehind.wrap(failing, 16);
+        try {
+            // thrown at the next write or flush, whichever comes after the failure
+            stream.write(new byte[100]);
+            stream.flush();
+            fail ("the error in background should have been thrown");
+        } catch (IOException ex) {
+            assertEquals ("disk full", ex.getCause().getMessage());
+        }
+    }
+
+    /** an interrupted close() must not close the stream while a buffer is being written out. */
+    @Test
+    public void testInterruptedClose () throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final boolean[] closedWhileWriting = new boolean[1];
+        OutputStream slow = new OutputStream() {
+            private volatile boolean busy;
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                busy = true;
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                busy = false;
+            }
+            @Override
+            public void close() throws IOException {
+                closedWhileWriting[0] = busy;
+            }
+        };
+        OutputStream stream = writeBehind.wrap(slow, 16);
+        stream.write(new byte[40]);
+        assertTrue (writing.await(10, TimeUnit.SECONDS));
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ex) {
+                }
+                release.countDown();
+            }
+        }.start();
+        Thread.currentThread().interrupt();
+        try {
+            stream.close();
+            fail ("close() should have been interrupted");
+        } catch (InterruptedIOException ex) {
+        }
+        Thread.interrupted();
+        assertFalse (closedWhileWriting[0]);
+    }
+}
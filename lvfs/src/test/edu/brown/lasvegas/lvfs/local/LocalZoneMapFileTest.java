@@ -0,0 +1,224 @@
+package edu.brown.lasvegas.lvfs.local;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.CompressionType;
+import edu.brown.lasvegas.lvfs.TupleRange;
+import edu.brown.lasvegas.lvfs.ZoneMap;
+import edu.brown.lasvegas.traits.DoubleValueTraits;
+import edu.brown.lasvegas.traits.IntegerValueTraits;
+import edu.brown.lasvegas.traits.VarcharValueTraits;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Testcases for {@link LocalZoneMapFile} and {@link LocalZoneMapBuilder}.
+ */
+public class LocalZoneMapFileTest {
+    private static final int COUNT = 10000;
+    private static final int TUPLES_PER_ZONE = 300;
+
+    /** slowly increasing values with some noise, like dates in a fact table. */
+    private static int[] generateInts () {
+        Random random = new Random(1234L);
+        int[] values = new int[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = i / 10 + random.nextInt(20);
+        }
+        return values;
+    }
+
+    /** checks that the zone map never drops a qualifying tuple and that it merges adjacent zones. */
+    private static <T extends Comparable<T>> void validateSearch (ZoneMap<T> zoneMap, T[] values, T lower, T upper) {
+        List<TupleRange> ranges = zoneMap.searchRange(lower, upper);
+        boolean[] covered = new boolean[values.length];
+        int prevEnd = -1;
+        for (TupleRange range : ranges) {
+            assertTrue (range.startTuple > prevEnd); // ascending, and adjacent ranges are merged
+            assertTrue (range.getTupleCount() > 0);
+            for (int i = range.startTuple; i < range.endTuple; ++i) {
+                covered[i] = true;
+            }
+            prevEnd = range.endTuple;
+        }
+        for (int i = 0; i < values.length; ++i) {
+            boolean qualifies = (lower == null || values[i].compareTo(lower) >= 0) && (upper == null || values[i].compareTo(upper) <= 0);
+            if (qualifies) {
+                assertTrue ("tuple " + i + " was skipped", covered[i]);
+            }
+        }
+    }
+
+    private static void validateIntZoneMap (ZoneMap<Integer> zoneMap, int[] values) {
+        assertEquals (COUNT, zoneMap.getTotalTuples());
+        assertEquals ((COUNT + TUPLES_PER_ZONE - 1) / TUPLES_PER_ZONE, zoneMap.getZoneCount());
+        for (int zone = 0; zone < zoneMap.getZoneCount(); ++zone) {
+            int start = zone * TUPLES_PER_ZONE;
+            assertEquals (start, zoneMap.getZoneStartTuple(zone));
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (int i = start; i < Math.min(COUNT, start + TUPLES_PER_ZONE); ++i) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+            assertEquals (min, zoneMap.getMin(zone).intValue());
+            assertEquals (max, zoneMap.getMax(zone).intValue());
+        }
+        Integer[] boxed = new Integer[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            boxed[i] = values[i];
+        }
+        validateSearch (zoneMap, boxed, null, null);
+        validateSearch (zoneMap, boxed, null, 50);
+        validateSearch (zoneMap, boxed, 500, 510);
+        validateSearch (zoneMap, boxed, 900, null);
+        // the range predicate on clustered values should skip most zones
+        List<TupleRange> ranges = zoneMap.searchRange(500, 510);
+        assertEquals (1, ranges.size());
+        assertTrue (ranges.get(0).getTupleCount() <= 3 * TUPLES_PER_ZONE);
+        assertEquals (0, zoneMap.searchRange(-100, -1).size());
+        assertEquals (0, zoneMap.searchRange(100000, null).size());
+        ranges = zoneMap.searchRange(null, null);
+        assertEquals (1, ranges.size());
+        assertEquals (0, ranges.get(0).startTuple);
+        assertEquals (COUNT, ranges.get(0).endTuple);
+    }
+
+    @Test
+    public void testInteger() throws Exception {
+        int[] values = generateInts();
+        LocalZoneMapBuilder<Integer, int[]> builder = new LocalZoneMapBuilder<Integer, int[]>(new IntegerValueTraits(), TUPLES_PER_ZONE);
+        // mix single-value adds and batches that span zones
+        for (int i = 0; i < 10; ++i) {
+            builder.add(values[i]);
+        }
+        builder.add(values, 10, 1000);
+        builder.add(values, 1010, COUNT - 1010);
+        LocalZoneMapFile<Integer, int[]> zoneMap = builder.build();
+        validateIntZoneMap (zoneMap, values);
+
+        LocalVirtualFile file = new LocalVirtualFile("test/local/test.zmp");
+        file.getParentFile().mkdirs();
+        file.delete();
+        zoneMap.writeToFile(file);
+        validateIntZoneMap (new LocalZoneMapFile<Integer, int[]>(file, ColumnType.INTEGER), values);
+    }
+
+    @Test
+    public void testVarchar() throws Exception {
+        String[] values = new String[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = "str" + (10000 + i);
+        }
+        LocalZoneMapBuilder<String, String[]> builder = new LocalZoneMapBuilder<String, String[]>(new VarcharValueTraits(), TUPLES_PER_ZONE);
+        builder.add(values, 0, COUNT);
+        LocalVirtualFile file = new LocalVirtualFile("test/local/test.zmp");
+        file.getParentFile().mkdirs();
+        file.delete();
+        builder.build().writeToFile(file);
+        LocalZoneMapFile<String, String[]> zoneMap = new LocalZoneMapFile<String, String[]>(file, ColumnType.VARCHAR);
+        assertEquals ("str10000", zoneMap.getMin(0));
+        assertEquals ("str" + (10000 + TUPLES_PER_ZONE - 1), zoneMap.getMax(0));
+        validateSearch (zoneMap, values, "str12000", "str12100");
+        List<TupleRange> ranges = zoneMap.searchRange("str12000", "str12100");
+        assertEquals (1, ranges.size());
+        assertTrue (ranges.get(0).getTupleCount() <= 2 * TUPLES_PER_ZONE);
+    }
+
+    @Test
+    public void testDoubleNaN() throws Exception {
+        double[] values = new double[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = i % 1000 == 7 ? Double.NaN : i * 0.5d;
+        }
+        LocalZoneMapBuilder<Double, double[]> builder = new LocalZoneMapBuilder<Double, double[]>(new DoubleValueTraits(), TUPLES_PER_ZONE);
+        builder.add(values, 0, COUNT);
+        ZoneMap<Double> zoneMap = builder.build();
+        Double[] boxed = new Double[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            boxed[i] = values[i];
+        }
+        // NaN is larger than any other value in Double#compareTo
+        assertTrue (zoneMap.getMax(0).isNaN());
+        validateSearch (zoneMap, boxed, 100d, 200d);
+        validateSearch (zoneMap, boxed, Double.NaN, null);
+    }
+
+    @Test
+    public void testWriters() throws Exception {
+        int[] values = generateInts();
+        LocalVirtualFile dataFile = new LocalVirtualFile("test/local/zonemap.dat");
+        LocalVirtualFile file = new LocalVirtualFile("test/local/zonemap.zmp");
+        file.getParentFile().mkdirs();
+        for (CompressionType type : new CompressionType[]{CompressionType.NONE, CompressionType.LZ4, CompressionType.BITPACK}) {
+            dataFile.delete();
+            file.delete();
+            LocalTypedWriterBase<Integer, int[]> writer;
+            if (type == CompressionType.NONE) {
+                writer = LocalFixLenWriter.getInstanceInteger(dataFile);
+            } else if (type == CompressionType.BITPACK) {
+                writer = LocalBitPackWriter.getInstanceInteger(dataFile);
+            } else {
+                writer = LocalBlockCompressionFixLenWriter.getInstanceInteger(dataFile, type);
+            }
+            writer.enableZoneMap(TUPLES_PER_ZONE);
+            writer.writeValue(values[0]);
+            writer.writeValues(values, 1, COUNT - 1);
+            writer.writeFileFooter();
+            writer.flush();
+            writer.writeZoneMapFile(file);
+            writer.close();
+            validateIntZoneMap (new LocalZoneMapFile<Integer, int[]>(file, ColumnType.INTEGER), values);
+        }
+        dataFile.delete();
+        file.delete();
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testRLEUnsupported() throws Exception {
+        LocalVirtualFile dataFile = new LocalVirtualFile("test/local/zonemap.dat");
+        dataFile.getParentFile().mkdirs();
+        dataFile.delete();
+        LocalRLEWriter<Integer, int[]> writer = new LocalRLEWriter<Integer, int[]>(dataFile, new IntegerValueTraits());
+        try {
+            writer.enableZoneMap(TUPLES_PER_ZONE);
+        } finally {
+            writer.close();
+            dataFile.delete();
+        }
+    }
+
+    @Test
+    public void testVarcharArena() throws Exception {
+        // ASCII zones, zones with U+FF01 and zones with a supplementary character, which sorts
+        // before U+FF01 in String#compareTo() but after it in UTF-8 bytes
+        String[] values = new String[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            int zone = i / TUPLES_PER_ZONE;
+            String prefix = zone % 3 == 0 ? "" : (zone % 3 == 1 ? "\uff01" : (i % 2 == 0 ? "\uff01" : "\ud83d\ude00"));
+            values[i] = prefix + "str" + ((i * 7) % 1000);
+        }
+        LocalZoneMapBuilder<String, String[]> expected = new LocalZoneMapBuilder<String, String[]>(new VarcharValueTraits(), TUPLES_PER_ZONE);
+        expected.add(values, 0, COUNT);
+        LocalZoneMapBuilder<String, String[]> builder = new LocalZoneMapBuilder<String, String[]>(new VarcharValueTraits(), TUPLES_PER_ZONE);
+        StringArena arena = new StringArena(1000, 1 << 12);
+        for (int i = 0; i < COUNT; i += 1000) {
+            arena.clear();
+            for (int j = i; j < Math.min(COUNT, i + 1000); ++j) {
+                arena.append(values[j]);
+            }
+            builder.add(arena, 0, arena.size());
+        }
+        ZoneMap<String> expectedMap = expected.build();
+        ZoneMap<String> zoneMap = builder.build();
+        assertEquals (expectedMap.getZoneCount(), zoneMap.getZoneCount());
+        for (int zone = 0; zone < zoneMap.getZoneCount(); ++zone) {
+            assertEquals (expectedMap.getMin(zone), zoneMap.getMin(zone));
+            assertEquals (expectedMap.getMax(zone), zoneMap.getMax(zone));
+        }
+    }
+}
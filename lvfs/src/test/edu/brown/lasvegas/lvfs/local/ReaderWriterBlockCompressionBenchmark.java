@@ -18,7 +18,7 @@ public class ReaderWriterBlockCompressionBenchmark {
         boolean write_sync = false;
         boolean read = false;
         if (args.length < 2) {
-            System.out.println("args: <snappy/gzip> <writeonly/writeonly_sync/readonly/all>");
+            System.out.println("args: <snappy/gzip/lz4/lz4hc> <writeonly/writeonly_sync/readonly/all>");
             System.out.println("default: snappy all");
             compType = CompressionType.SNAPPY;
             write = true;
@@ -29,6 +29,10 @@ public class ReaderWriterBlockCompressionBenchmark {
                 compType = CompressionType.SNAPPY;
             } else if (args[0].equalsIgnoreCase("gzip")) {
                 compType = CompressionType.GZIP_BEST_COMPRESSION;
+            } else if (args[0].equalsIgnoreCase("lz4")) {
+                compType = CompressionType.LZ4;
+            } else if (args[0].equalsIgnoreCase("lz4hc")) {
+                compType = CompressionType.LZ4_HC;
             } else {
                 System.err.println("compression type??:" + args[0]);
                 return;
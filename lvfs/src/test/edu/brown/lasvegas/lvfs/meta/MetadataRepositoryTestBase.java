@@ -2,6 +2,7 @@ package edu.brown.lasvegas.lvfs.meta;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -16,6 +17,7 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.junit.Test;
 
+import edu.brown.lasvegas.ColumnFileLayout;
 import edu.brown.lasvegas.ColumnStatus;
 import edu.brown.lasvegas.ColumnType;
 import edu.brown.lasvegas.CompressionType;
@@ -176,7 +178,7 @@ public abstract class MetadataRepositoryTestBase {
             DEFAULT_COLUMN_FILES[i] = new LVColumnFile[DEFAULT_COLUMNS.length];
             for (int j = 0; j < DEFAULT_COLUMNS.length; ++j) {
                 DEFAULT_COLUMN_FILES[i][j] = repository.createNewColumnFile(DEFAULT_REPLICA_PARTITIONS[i].getPartitionId(),
-                                DEFAULT_COLUMNS[j].getColumnId(), "hdfs://dummy_url_" + i + "/colfile" + j, 123456 + j, 55155 + j, 654321 + j, (byte) j, 2 + j, 4 + j, 8 + j);
+                                DEFAULT_COLUMNS[j].getColumnId(), "hdfs://dummy_url_" + i + "/colfile" + j, 123456 + j, 55155 + j, 654321 + j, (byte) j, 2 + j, 4 + j, 8 + j, 16 + j);
                 assertEquals(DEFAULT_COLUMNS[j].getColumnId(), DEFAULT_COLUMN_FILES[i][j].getColumnId());
                 assertEquals(123456L + j, DEFAULT_COLUMN_FILES[i][j].getFileSize());
                 assertEquals(654321 + j, DEFAULT_COLUMN_FILES[i][j].getChecksum());
@@ -185,6 +187,8 @@ public abstract class MetadataRepositoryTestBase {
                 assertEquals(2 + j, DEFAULT_COLUMN_FILES[i][j].getDistinctValues());
                 assertEquals(4 + j, DEFAULT_COLUMN_FILES[i][j].getRunCount());
                 assertEquals(8 + j, DEFAULT_COLUMN_FILES[i][j].getUncompressedSizeKB());
+                assertEquals(16 + j, DEFAULT_COLUMN_FILES[i][j].getBloomFilterSize());
+                assertTrue(DEFAULT_COLUMN_FILES[i][j].hasBloomFilter());
                 assertEquals(DEFAULT_REPLICA_PARTITIONS[i].getPartitionId(), DEFAULT_COLUMN_FILES[i][j].getPartitionId());
                 assertEquals("hdfs://dummy_url_" + i + "/colfile" + j, DEFAULT_COLUMN_FILES[i][j].getLocalFilePath());
             }
@@ -884,6 +888,29 @@ public abstract class MetadataRepositoryTestBase {
         assertNull (scheme.getSortColumnId());
     }
     @Test
+    public void testReplicaSchemeUnsupportedCompression() throws IOException {
+        try {
+            // strcol is VARCHAR, which can't be bit-packed
+            repository.createNewReplicaScheme(DEFAULT_GROUP, null,
+                new int[]{DEFAULT_COLUMNS[1].getColumnId(), DEFAULT_COLUMNS[2].getColumnId()},
+                new CompressionType[]{CompressionType.BITPACK, CompressionType.BITPACK});
+            fail ();
+        } catch (IOException ex) {
+        }
+        LVReplicaScheme scheme = repository.createNewReplicaScheme(DEFAULT_GROUP, null,
+            new int[]{DEFAULT_COLUMNS[1].getColumnId(), DEFAULT_COLUMNS[4].getColumnId()},
+            new CompressionType[]{CompressionType.BITPACK, CompressionType.BITPACK});
+        try {
+            repository.changeColumnCompressionScheme(scheme, DEFAULT_COLUMNS[3], CompressionType.BITPACK); // FLOAT
+            fail ();
+        } catch (IOException ex) {
+        }
+        scheme = repository.getReplicaScheme(scheme.getSchemeId());
+        assertEquals (CompressionType.BITPACK, scheme.getColumnCompressionScheme(DEFAULT_COLUMNS[1].getColumnId()));
+        assertEquals (CompressionType.BITPACK, scheme.getColumnCompressionScheme(DEFAULT_COLUMNS[4].getColumnId()));
+        assertEquals (CompressionType.NONE, scheme.getColumnCompressionScheme(DEFAULT_COLUMNS[3].getColumnId()));
+    }
+    @Test
     public void testReplicaSchemeAssorted() throws IOException {
         LVReplicaScheme scheme = repository.createNewReplicaScheme(DEFAULT_GROUP, DEFAULT_COLUMNS[2],
             new int[]{DEFAULT_COLUMNS[0].getColumnId(), DEFAULT_COLUMNS[1].getColumnId(), DEFAULT_COLUMNS[2].getColumnId()},
@@ -924,6 +951,32 @@ public abstract class MetadataRepositoryTestBase {
         assertEquals (CompressionType.NONE, scheme.getColumnCompressionScheme(DEFAULT_COLUMNS[2].getColumnId()));
         assertEquals (CompressionType.NONE, scheme.getColumnCompressionScheme(DEFAULT_COLUMNS[3].getColumnId()));
         assertEquals (CompressionType.SNAPPY, scheme.getColumnCompressionScheme(DEFAULT_COLUMNS[4].getColumnId()));
+
+        scheme = repository.changeColumnGroup(scheme, DEFAULT_COLUMNS[3], 1);
+        scheme = repository.changeColumnGroup(scheme, DEFAULT_COLUMNS[4], 1);
+        scheme = repository.changeColumnGroup(scheme, DEFAULT_COLUMNS[2], 1);
+        scheme = repository.changeColumnGroup(scheme, DEFAULT_COLUMNS[2], null);
+        reloadRepository();
+        scheme = repository.getReplicaScheme(scheme.getSchemeId());
+        assertNull (scheme.getColumnGroup(DEFAULT_COLUMNS[2].getColumnId()));
+        assertEquals (1, scheme.getColumnGroup(DEFAULT_COLUMNS[3].getColumnId()).intValue());
+        assertEquals (1, scheme.getColumnGroup(DEFAULT_COLUMNS[4].getColumnId()).intValue());
+
+        scheme = repository.changeSharedDictionary(scheme, DEFAULT_COLUMNS[3], true);
+        scheme = repository.changeSharedDictionary(scheme, DEFAULT_COLUMNS[4], true);
+        scheme = repository.changeSharedDictionary(scheme, DEFAULT_COLUMNS[4], false);
+        reloadRepository();
+        scheme = repository.getReplicaScheme(scheme.getSchemeId());
+        assertTrue (scheme.isSharedDictionary(DEFAULT_COLUMNS[3].getColumnId()));
+        assertFalse (scheme.isSharedDictionary(DEFAULT_COLUMNS[4].getColumnId()));
+
+        scheme = repository.changeBloomFilter(scheme, DEFAULT_COLUMNS[1], true);
+        scheme = repository.changeBloomFilter(scheme, DEFAULT_COLUMNS[4], true);
+        scheme = repository.changeBloomFilter(scheme, DEFAULT_COLUMNS[4], false);
+        reloadRepository();
+        scheme = repository.getReplicaScheme(scheme.getSchemeId());
+        assertTrue (scheme.isBloomFilterColumn(DEFAULT_COLUMNS[1].getColumnId()));
+        assertFalse (scheme.isBloomFilterColumn(DEFAULT_COLUMNS[4].getColumnId()));
         
         repository.dropReplicaScheme(schemes[0]);
 
@@ -1091,6 +1144,7 @@ public abstract class MetadataRepositoryTestBase {
         assertEquals(DEFAULT_COLUMNS[col].getColumnId(), file.getColumnId());
         assertEquals(DEFAULT_COLUMN_FILES[partition][col].getFileSize(), file.getFileSize());
         assertEquals(DEFAULT_COLUMN_FILES[partition][col].getChecksum(), file.getChecksum());
+        assertEquals(DEFAULT_COLUMN_FILES[partition][col].getBloomFilterSize(), file.getBloomFilterSize());
         assertEquals(DEFAULT_REPLICA_PARTITIONS[partition].getPartitionId(), file.getPartitionId());
         assertEquals("hdfs://dummy_url_" + partition + "/colfile" + col, file.getLocalFilePath());
     }
@@ -1102,6 +1156,14 @@ public abstract class MetadataRepositoryTestBase {
         assertEquals ("sdfjksdjf", repository.getColumnFile(DEFAULT_COLUMN_FILES[0][3].getColumnFileId()).getLocalFilePath());
         repository.updateColumnFilePathNoReturn(DEFAULT_COLUMN_FILES[0][1].getColumnFileId(), "dflgjldkjfglkfjdg");
         assertEquals ("dflgjldkjfglkfjdg", repository.getColumnFile(DEFAULT_COLUMN_FILES[0][1].getColumnFileId()).getLocalFilePath());
+        assertEquals (ColumnFileLayout.SEPARATE, repository.getColumnFile(DEFAULT_COLUMN_FILES[0][1].getColumnFileId()).getLayout());
+
+        file = repository.updateColumnFilePath(DEFAULT_COLUMN_FILES[0][3].getColumnFileId(), "seg1", ColumnFileLayout.SEGMENT);
+        assertEquals (ColumnFileLayout.SEGMENT, file.getLayout());
+        assertEquals ("seg1", repository.getColumnFile(DEFAULT_COLUMN_FILES[0][3].getColumnFileId()).getLocalFilePath());
+        assertEquals (ColumnFileLayout.SEGMENT, repository.getColumnFile(DEFAULT_COLUMN_FILES[0][3].getColumnFileId()).getLayout());
+        repository.updateColumnFilePathNoReturn(DEFAULT_COLUMN_FILES[0][1].getColumnFileId(), "pax1", ColumnFileLayout.PAX);
+        assertEquals (ColumnFileLayout.PAX, repository.getColumnFile(DEFAULT_COLUMN_FILES[0][1].getColumnFileId()).getLayout());
     }
 
     @Test
@@ -1122,7 +1184,7 @@ public abstract class MetadataRepositoryTestBase {
         LVColumnFile[] files = new LVColumnFile[2];
         for (int i = 0; i < 2; ++i) {
             files[i] = repository.createNewColumnFile(DEFAULT_REPLICA_PARTITIONS[i].getPartitionId(),
-                            column.getColumnId(), "hdfs://dummy_url_" + i + "/newcolfile" + i, 576324, 3332, 12176, (byte) 0, 1, 2, 3);
+                            column.getColumnId(), "hdfs://dummy_url_" + i + "/newcolfile" + i, 576324, 3332, 12176, (byte) 0, 1, 2, 3, 0);
             assertEquals(column.getColumnId(), files[i].getColumnId());
             assertEquals(576324, files[i].getFileSize());
             assertEquals(3332, files[i].getTupleCount());
@@ -1157,7 +1219,7 @@ public abstract class MetadataRepositoryTestBase {
         LVColumnFile[] files = new LVColumnFile[2];
         for (int i = 0; i < 2; ++i) {
             int id = repository.createNewColumnFileIdOnlyReturn(DEFAULT_REPLICA_PARTITIONS[i].getPartitionId(),
-                            column.getColumnId(), "hdfs://dummy_url_" + i + "/newcolfile" + i, 576324, 3332, 12176, (byte) 0, 1, 2, 3);
+                            column.getColumnId(), "hdfs://dummy_url_" + i + "/newcolfile" + i, 576324, 3332, 12176, (byte) 0, 1, 2, 3, 0);
             files[i] = repository.getColumnFile(id);
             assertEquals(column.getColumnId(), files[i].getColumnId());
             assertEquals(576324, files[i].getFileSize());
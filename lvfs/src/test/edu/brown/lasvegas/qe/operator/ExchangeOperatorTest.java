@@ -0,0 +1,116 @@
+package edu.brown.lasvegas.qe.operator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * Testcases for {@link ExchangeOperator}.
+ */
+public class ExchangeOperatorTest {
+    private static Operator[] createChildren (int childCount, int tuplesPerChild) {
+        Operator[] children = new Operator[childCount];
+        for (int c = 0; c < childCount; ++c) {
+            long[] values = new long[tuplesPerChild];
+            for (int i = 0; i < tuplesPerChild; ++i) {
+                values[i] = c * tuplesPerChild + i;
+            }
+            ArrayOperator array = new ArrayOperator(new ColumnType[]{ColumnType.BIGINT}, new Object[]{values}, tuplesPerChild, 100);
+            // filter out odd values so that the exchange has to copy with a selection vector
+            children[c] = new FilterOperator(array, new Predicate() {
+                @Override
+                public int select(VectorBatch batch, int[] in, int inCount, int[] out) {
+                    long[] v = (long[]) batch.getColumn(0);
+                    int count = 0;
+                    for (int i = 0; i < inCount; ++i) {
+                        int pos = in == null ? i : in[i];
+                        if (v[pos] % 2 == 0) {
+                            out[count++] = pos;
+                        }
+                    }
+                    return count;
+                }
+            });
+        }
+        return children;
+    }
+
+    private static void checkAll (ExchangeOperator exchange, int total) throws IOException {
+        boolean[] seen = new boolean[total];
+        int count = 0;
+        exchange.open();
+        for (VectorBatch batch = exchange.next(); batch != null; batch = exchange.next()) {
+            long[] values = (long[]) batch.getColumn(0);
+            int[] selection = batch.getSelection();
+            for (int i = 0; i < batch.size(); ++i) {
+                long value = values[selection == null ? i : selection[i]];
+                assertEquals(0, value % 2);
+                assertFalse(seen[(int) value]);
+                seen[(int) value] = true;
+                ++count;
+            }
+        }
+        exchange.close();
+        assertEquals(total / 2, count);
+    }
+
+    @Test
+    public void testParallel () throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            checkAll(new ExchangeOperator(createChildren(5, 1000), executor, 2), 5000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSequential () throws Exception {
+        checkAll(new ExchangeOperator(createChildren(5, 1000), null, 2), 5000);
+    }
+
+    @Test
+    public void testCloseEarly () throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ExchangeOperator exchange = new ExchangeOperator(createChildren(4, 10000), executor, 1);
+            exchange.open();
+            assertNotNull(exchange.next());
+            exchange.close(); // must not hang
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testError () throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Operator[] children = createChildren(2, 1000);
+            children[1] = new FilterOperator(children[1], new Predicate() {
+                @Override
+                public int select(VectorBatch batch, int[] in, int inCount, int[] out) {
+                    throw new IllegalStateException ("test error");
+                }
+            });
+            ExchangeOperator exchange = new ExchangeOperator(children, executor, 2);
+            exchange.open();
+            try {
+                while (exchange.next() != null) {
+                }
+                fail();
+            } catch (IOException ex) {
+                assertTrue(ex.getCause() instanceof IllegalStateException);
+            }
+            exchange.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package edu.brown.lasvegas.qe.operator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+
+/**
+ * Testcases for {@link HashAggregateOperator} with {@link FilterOperator} and {@link Expression}s.
+ */
+public class HashAggregateOperatorTest {
+    private static final int COUNT = 10000;
+
+    /** (INTEGER key, VARCHAR key, BIGINT value, DOUBLE value). */
+    private static ArrayOperator createInput (int batchSize) {
+        int[] intKeys = new int[COUNT];
+        String[] stringKeys = new String[COUNT];
+        long[] longValues = new long[COUNT];
+        double[] doubleValues = new double[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            intKeys[i] = i % 500;
+            stringKeys[i] = "k" + (i % 3);
+            longValues[i] = i;
+            doubleValues[i] = i * 0.5d;
+        }
+        return new ArrayOperator(new ColumnType[]{ColumnType.INTEGER, ColumnType.VARCHAR, ColumnType.BIGINT, ColumnType.DOUBLE},
+            new Object[]{intKeys, stringKeys, longValues, doubleValues}, COUNT, batchSize);
+    }
+
+    private static Aggregate[] createAggregates () {
+        return new Aggregate[]{
+            Aggregate.count(),
+            Aggregate.sum(Expression.column(2, ColumnType.BIGINT)),
+            Aggregate.min(Expression.column(3, ColumnType.DOUBLE)),
+            Aggregate.max(Expression.column(2, ColumnType.BIGINT)),
+            Aggregate.avg(Expression.column(2, ColumnType.BIGINT)),
+        };
+    }
+
+    @Test
+    public void testGroupByTwoKeys () throws Exception {
+        HashAggregateOperator aggregate = new HashAggregateOperator(createInput(333), new int[]{0, 1}, createAggregates(), 100);
+        checkGroupByTwoKeys(aggregate);
+        assertEquals(0L, aggregate.getSpilledGroupCount());
+    }
+
+    @Test
+    public void testSpill () throws Exception {
+        File folder = new File("test/aggspill");
+        folder.mkdirs();
+        // spills once and then each partition fits; or spills again until running out of hash bits
+        for (long budget : new long[]{100000L, 1L}) {
+            HashAggregateOperator aggregate = new HashAggregateOperator(createInput(333), new int[]{0, 1}, createAggregates(), 100,
+                budget, new LocalVirtualFile(folder));
+            checkGroupByTwoKeys(aggregate);
+            assertTrue(aggregate.getSpilledGroupCount() >= 1500);
+            assertEquals(0, folder.list().length); // spill files are deleted
+        }
+    }
+
+    @Test
+    public void testDirectGroups () throws Exception {
+        // (TINYINT code, TINYINT code, BIGINT value)
+        byte[] codes1 = new byte[COUNT];
+        byte[] codes2 = new byte[COUNT];
+        long[] values = new long[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            codes1[i] = (byte) (i % 7 - 3);
+            codes2[i] = (byte) (i % 200 - 100);
+            values[i] = i;
+        }
+        ArrayOperator input = new ArrayOperator(new ColumnType[]{ColumnType.TINYINT, ColumnType.TINYINT, ColumnType.BIGINT},
+            new Object[]{codes1, codes2, values}, COUNT, 256);
+        HashAggregateOperator aggregate = new HashAggregateOperator(input, new int[]{0, 1}, new Aggregate[]{
+            Aggregate.count(), Aggregate.sum(Expression.column(2, ColumnType.BIGINT))}, 1000);
+        HashMap<Integer, long[]> expected = new HashMap<Integer, long[]>();
+        for (int i = 0; i < COUNT; ++i) {
+            int key = codes1[i] * 1000 + codes2[i];
+            long[] group = expected.get(key);
+            if (group == null) {
+                group = new long[2];
+                expected.put(key, group);
+            }
+            ++group[0];
+            group[1] += i;
+        }
+        aggregate.open();
+        int groups = 0;
+        for (VectorBatch batch = aggregate.next(); batch != null; batch = aggregate.next()) {
+            byte[] keys1 = (byte[]) batch.getColumn(0);
+            byte[] keys2 = (byte[]) batch.getColumn(1);
+            long[] counts = (long[]) batch.getColumn(2);
+            long[] sums = (long[]) batch.getColumn(3);
+            for (int i = 0; i < batch.size(); ++i) {
+                long[] group = expected.remove(keys1[i] * 1000 + keys2[i]);
+                assertNotNull(group);
+                assertEquals(group[0], counts[i]);
+                assertEquals(group[1], sums[i]);
+                ++groups;
+            }
+        }
+        aggregate.close();
+        assertEquals(1400, groups);
+        assertTrue(expected.isEmpty());
+    }
+
+    private static void checkGroupByTwoKeys (HashAggregateOperator aggregate) throws Exception {
+        assertArrayEquals(new ColumnType[]{ColumnType.INTEGER, ColumnType.VARCHAR, ColumnType.BIGINT, ColumnType.BIGINT, ColumnType.DOUBLE, ColumnType.BIGINT, ColumnType.DOUBLE},
+            aggregate.getColumnTypes());
+
+        // expected results computed tuple by tuple
+        HashMap<String, long[]> expected = new HashMap<String, long[]>(); // count, sum, min, max
+        for (int i = 0; i < COUNT; ++i) {
+            String key = (i % 500) + "/k" + (i % 3);
+            long[] group = expected.get(key);
+            if (group == null) {
+                group = new long[]{0, 0, Long.MAX_VALUE, Long.MIN_VALUE};
+                expected.put(key, group);
+            }
+            ++group[0];
+            group[1] += i;
+            group[2] = Math.min(group[2], i);
+            group[3] = Math.max(group[3], i);
+        }
+
+        aggregate.open();
+        int groups = 0;
+        for (VectorBatch batch = aggregate.next(); batch != null; batch = aggregate.next()) {
+            assertTrue(batch.size() <= 100);
+            assertNull(batch.getSelection());
+            int[] intKeys = (int[]) batch.getColumn(0);
+            String[] stringKeys = (String[]) batch.getColumn(1);
+            long[] counts = (long[]) batch.getColumn(2);
+            long[] sums = (long[]) batch.getColumn(3);
+            double[] mins = (double[]) batch.getColumn(4);
+            long[] maxs = (long[]) batch.getColumn(5);
+            double[] avgs = (double[]) batch.getColumn(6);
+            for (int i = 0; i < batch.size(); ++i) {
+                long[] group = expected.remove(intKeys[i] + "/" + stringKeys[i]);
+                assertNotNull(group);
+                assertEquals(group[0], counts[i]);
+                assertEquals(group[1], sums[i]);
+                assertEquals(group[2] * 0.5d, mins[i], 0.000001d);
+                assertEquals(group[3], maxs[i]);
+                assertEquals((double) group[1] / group[0], avgs[i], 0.000001d);
+                ++groups;
+            }
+        }
+        aggregate.close();
+        assertEquals(1500, groups);
+        assertTrue(expected.isEmpty());
+    }
+
+    @Test
+    public void testGlobalAggregateWithFilter () throws Exception {
+        // SUM(value * 2 + 1), COUNT(*) WHERE 100 <= value <= 199
+        FilterOperator filter = new FilterOperator(createInput(64), new ColumnRangePredicate(2, 100L, 199L));
+        HashAggregateOperator aggregate = new HashAggregateOperator(filter, new int[0], new Aggregate[]{
+            Aggregate.sum(Expression.add(Expression.multiply(Expression.column(2, ColumnType.BIGINT), Expression.constant(2L)), Expression.constant(1L))),
+            Aggregate.count(),
+        }, 100);
+        aggregate.open();
+        VectorBatch batch = aggregate.next();
+        assertEquals(1, batch.size());
+        long expectedSum = 0;
+        for (long i = 100; i <= 199; ++i) {
+            expectedSum += i * 2 + 1;
+        }
+        assertEquals(expectedSum, ((long[]) batch.getColumn(0))[0]);
+        assertEquals(100L, ((long[]) batch.getColumn(1))[0]);
+        assertNull(aggregate.next());
+        aggregate.close();
+    }
+
+    @Test
+    public void testGlobalAggregateEmpty () throws Exception {
+        FilterOperator filter = new FilterOperator(createInput(64), new ColumnRangePredicate(2, -10L, -1L));
+        HashAggregateOperator aggregate = new HashAggregateOperator(filter, new int[0], new Aggregate[]{Aggregate.count()}, 100);
+        aggregate.open();
+        VectorBatch batch = aggregate.next();
+        assertEquals(1, batch.size());
+        assertEquals(0L, ((long[]) batch.getColumn(0))[0]);
+        assertNull(aggregate.next());
+        aggregate.close();
+    }
+}
@@ -0,0 +1,87 @@
+package edu.brown.lasvegas.qe.operator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * Testcases for {@link HashJoinOperator}.
+ */
+public class HashJoinOperatorTest {
+    @Test
+    public void testJoin () throws Exception {
+        // build: (key INTEGER, name VARCHAR). keys 0..99, each key twice
+        int buildCount = 200;
+        int[] buildKeys = new int[buildCount];
+        String[] names = new String[buildCount];
+        for (int i = 0; i < buildCount; ++i) {
+            buildKeys[i] = i % 100;
+            names[i] = "n" + i;
+        }
+        // probe: (key BIGINT, value DOUBLE). keys 0..199, so half of them have no match
+        int probeCount = 2000;
+        long[] probeKeys = new long[probeCount];
+        double[] values = new double[probeCount];
+        for (int i = 0; i < probeCount; ++i) {
+            probeKeys[i] = i % 200;
+            values[i] = i;
+        }
+        ArrayOperator build = new ArrayOperator(new ColumnType[]{ColumnType.INTEGER, ColumnType.VARCHAR}, new Object[]{buildKeys, names}, buildCount, 64);
+        ArrayOperator probe = new ArrayOperator(new ColumnType[]{ColumnType.BIGINT, ColumnType.DOUBLE}, new Object[]{probeKeys, values}, probeCount, 300);
+        // output batch smaller than the matches of a probe batch to test resuming the probe
+        HashJoinOperator join = new HashJoinOperator(build, probe, 0, 0, 50);
+        assertArrayEquals(new ColumnType[]{ColumnType.BIGINT, ColumnType.DOUBLE, ColumnType.INTEGER, ColumnType.VARCHAR}, join.getColumnTypes());
+        join.open();
+        assertTrue(build.closed);
+        int[] matchesPerProbe = new int[probeCount];
+        int total = 0;
+        for (VectorBatch batch = join.next(); batch != null; batch = join.next()) {
+            assertTrue(batch.size() <= 50);
+            long[] outProbeKeys = (long[]) batch.getColumn(0);
+            double[] outValues = (double[]) batch.getColumn(1);
+            int[] outBuildKeys = (int[]) batch.getColumn(2);
+            String[] outNames = (String[]) batch.getColumn(3);
+            for (int i = 0; i < batch.size(); ++i) {
+                assertEquals(outProbeKeys[i], outBuildKeys[i]);
+                int name = Integer.parseInt(outNames[i].substring(1));
+                assertEquals(outBuildKeys[i], name % 100);
+                ++matchesPerProbe[(int) outValues[i]];
+                ++total;
+            }
+        }
+        join.close();
+        assertTrue(probe.closed);
+        assertEquals(probeCount / 2 * 2, total);
+        for (int i = 0; i < probeCount; ++i) {
+            assertEquals(i % 200 < 100 ? 2 : 0, matchesPerProbe[i]);
+        }
+    }
+
+    @Test
+    public void testFilteredProbe () throws Exception {
+        long[] buildKeys = new long[]{5, 7, 9};
+        long[] probeKeys = new long[]{1, 5, 7, 9, 5, 11};
+        ArrayOperator build = new ArrayOperator(new ColumnType[]{ColumnType.BIGINT}, new Object[]{buildKeys}, 3, 10);
+        ArrayOperator probe = new ArrayOperator(new ColumnType[]{ColumnType.BIGINT}, new Object[]{probeKeys}, 6, 10);
+        // only the probe tuples with 6 <= key pass the filter
+        HashJoinOperator join = new HashJoinOperator(build, new FilterOperator(probe, new ColumnRangePredicate(0, 6L, null)), 0, 0, 10);
+        join.open();
+        VectorBatch batch = join.next();
+        assertEquals(2, batch.size());
+        assertEquals(7L, ((long[]) batch.getColumn(0))[0]);
+        assertEquals(7L, ((long[]) batch.getColumn(1))[0]);
+        assertEquals(9L, ((long[]) batch.getColumn(0))[1]);
+        assertEquals(9L, ((long[]) batch.getColumn(1))[1]);
+        assertNull(join.next());
+        join.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonIntegralKey () throws Exception {
+        ArrayOperator build = new ArrayOperator(new ColumnType[]{ColumnType.DOUBLE}, new Object[]{new double[0]}, 0, 10);
+        ArrayOperator probe = new ArrayOperator(new ColumnType[]{ColumnType.BIGINT}, new Object[]{new long[0]}, 0, 10);
+        new HashJoinOperator(build, probe, 0, 0, 10);
+    }
+}
@@ -0,0 +1,166 @@
+package edu.brown.lasvegas.qe.operator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.qe.operator.RadixHashJoinOperator.JoinType;
+
+/**
+ * Testcases for {@link RadixHashJoinOperator} and {@link ColumnArrayOperator}.
+ */
+public class RadixHashJoinOperatorTest {
+    /** (INTEGER key, BIGINT id). key = (id * multiplier) % keyMod. */
+    private static int[] createKeys (int count, int multiplier, int keyMod) {
+        int[] keys = new int[count];
+        for (int i = 0; i < count; ++i) {
+            keys[i] = (i * multiplier) % keyMod;
+        }
+        return keys;
+    }
+    private static Operator createSide (int[] keys, int batchSize) {
+        long[] ids = new long[keys.length];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = i;
+        }
+        return new ColumnArrayOperator(new ColumnType[]{ColumnType.INTEGER, ColumnType.BIGINT}, new Object[]{keys, ids}, keys.length, batchSize);
+    }
+
+    /** returns leftId * 1000000 + rightId for INNER, leftId for SEMI/ANTI, in ascending order. */
+    private static long[] expected (int[] leftKeys, int[] rightKeys, JoinType type) {
+        HashMap<Integer, ArrayList<Integer>> rightIds = new HashMap<Integer, ArrayList<Integer>>();
+        for (int r = 0; r < rightKeys.length; ++r) {
+            ArrayList<Integer> ids = rightIds.get(rightKeys[r]);
+            if (ids == null) {
+                ids = new ArrayList<Integer>();
+                rightIds.put(rightKeys[r], ids);
+            }
+            ids.add(r);
+        }
+        ArrayList<Long> results = new ArrayList<Long>();
+        for (int l = 0; l < leftKeys.length; ++l) {
+            ArrayList<Integer> ids = rightIds.get(leftKeys[l]);
+            boolean matched = ids != null;
+            if (matched && type == JoinType.INNER) {
+                for (int r : ids) {
+                    results.add(l * 1000000L + r);
+                }
+            }
+            if ((type == JoinType.SEMI && matched) || (type == JoinType.ANTI && !matched)) {
+                results.add((long) l);
+            }
+        }
+        long[] array = new long[results.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = results.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static long[] run (RadixHashJoinOperator join, JoinType type) throws Exception {
+        ArrayList<Long> results = new ArrayList<Long>();
+        join.open();
+        for (VectorBatch batch = join.next(); batch != null; batch = join.next()) {
+            int[] selection = batch.getSelection();
+            long[] leftIds = (long[]) batch.getColumn(1);
+            for (int i = 0; i < batch.size(); ++i) {
+                int pos = selection == null ? i : selection[i];
+                if (type == JoinType.INNER) {
+                    assertEquals(((int[]) batch.getColumn(0))[pos], ((int[]) batch.getColumn(2))[pos]);
+                    results.add(leftIds[pos] * 1000000L + ((long[]) batch.getColumn(3))[pos]);
+                } else {
+                    results.add(leftIds[pos]);
+                }
+            }
+        }
+        join.close();
+        long[] array = new long[results.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = results.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static void check (int[] leftKeys, int[] rightKeys, int batchSize, long budget, File spillFolder) throws Exception {
+        for (JoinType type : JoinType.values()) {
+            RadixHashJoinOperator join = new RadixHashJoinOperator(createSide(leftKeys, batchSize), createSide(rightKeys, batchSize),
+                0, 0, type, batchSize, budget, spillFolder == null ? null : new LocalVirtualFile(spillFolder));
+            assertEquals(type == JoinType.INNER ? 4 : 2, join.getColumnTypes().length);
+            assertArrayEquals(type.toString(), expected(leftKeys, rightKeys, type), run(join, type));
+        }
+    }
+
+    @Test
+    public void testSmallerLeft () throws Exception {
+        check(createKeys(300, 3, 1000), createKeys(3000, 7, 500), 100, Long.MAX_VALUE, null);
+    }
+
+    @Test
+    public void testSmallerRight () throws Exception {
+        check(createKeys(3000, 7, 500), createKeys(300, 3, 1000), 64, Long.MAX_VALUE, null);
+    }
+
+    @Test
+    public void testBuildSideByBytes () throws Exception {
+        // the larger left side comes in large batches. reading a batch from each side in turn would end the left side first
+        int[] leftKeys = createKeys(2000, 3, 1000);
+        int[] rightKeys = createKeys(100, 7, 300);
+        RadixHashJoinOperator join = new RadixHashJoinOperator(createSide(leftKeys, 1000), createSide(rightKeys, 10), 0, 0, JoinType.SEMI, 1000);
+        join.open();
+        VectorBatch batch = join.next();
+        // the right side is the build side, so the left batches are passed up with selection vectors
+        assertNotNull(batch.getSelection());
+        join.close();
+        join = new RadixHashJoinOperator(createSide(leftKeys, 1000), createSide(rightKeys, 10), 0, 0, JoinType.SEMI, 1000);
+        assertArrayEquals(expected(leftKeys, rightKeys, JoinType.SEMI), run(join, JoinType.SEMI));
+    }
+
+    @Test
+    public void testRadixPartitions () throws Exception {
+        // large enough to be split into several radix partitions
+        check(createKeys(40000, 13, 30000), createKeys(50000, 1, 45000), 1000, Long.MAX_VALUE, null);
+    }
+
+    @Test
+    public void testSpill () throws Exception {
+        File folder = new File("test/joinspill");
+        folder.mkdirs();
+        // spills once and then each partition fits
+        check(createKeys(3000, 7, 2000), createKeys(2500, 3, 3000), 100, 80000L, folder);
+        // spills again until running out of hash bits
+        check(createKeys(300, 7, 200), createKeys(250, 3, 300), 10, 1L, folder);
+        assertEquals(0, folder.list().length); // spill files are deleted
+    }
+
+    @Test
+    public void testSelectionAndFloatingKeys () throws Exception {
+        // DOUBLE keys on left (with a filter), FLOAT keys on right. -0 and 0 must match
+        double[] leftKeys = new double[]{0.5d, -0.0d, 1.5d, 2.5d, 3.5d, 0.5d};
+        long[] leftIds = new long[]{0, 1, 2, 3, 4, 5};
+        float[] rightKeys = new float[]{0.0f, 0.5f, 3.5f, 9.0f};
+        Operator left = new FilterOperator(new ColumnArrayOperator(new ColumnType[]{ColumnType.DOUBLE, ColumnType.BIGINT},
+            new Object[]{leftKeys, leftIds}, leftKeys.length, 4), new ColumnRangePredicate(1, 1L, 5L));
+        Operator right = new ColumnArrayOperator(new ColumnType[]{ColumnType.FLOAT}, new Object[]{rightKeys}, rightKeys.length, 4);
+
+        RadixHashJoinOperator semi = new RadixHashJoinOperator(left, right, 0, 0, JoinType.SEMI, 4);
+        assertArrayEquals(new long[]{1, 4, 5}, run(semi, JoinType.SEMI));
+        RadixHashJoinOperator anti = new RadixHashJoinOperator(left, right, 0, 0, JoinType.ANTI, 4);
+        assertArrayEquals(new long[]{2, 3}, run(anti, JoinType.ANTI));
+
+        try {
+            new RadixHashJoinOperator(left, createSide(new int[]{1}, 4), 0, 0, JoinType.INNER, 4);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // floating and integral keys can't be joined
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package edu.brown.lasvegas.qe.operator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.VirtualFile;
+import edu.brown.lasvegas.lvfs.local.LocalVirtualFile;
+import edu.brown.lasvegas.qe.operator.RadixHashJoinOperator.JoinType;
+import edu.brown.lasvegas.tuple.TextFileTupleReader;
+import edu.brown.lasvegas.util.StringArena;
+
+/**
+ * Testcases for {@link ScanOperator} reading VARCHAR columns into {@link StringArena}
+ * and the operators above it.
+ */
+public class ScanOperatorTest {
+    private static final int COUNT = 5000;
+    private static final ColumnType[] TYPES = new ColumnType[]{ColumnType.INTEGER, ColumnType.VARCHAR};
+    private static File folder;
+    private static File textFile;
+
+    /** some names have a non-ASCII character. */
+    private static String name (int i) {
+        return "n" + (i % 7) + (i % 2 == 0 ? "" : "\u00e9");
+    }
+
+    @BeforeClass
+    public static void setUpBeforeClass () throws Exception {
+        folder = new File("test/scanarena");
+        folder.mkdirs();
+        textFile = new File(folder, "data.txt");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(textFile), "UTF-8");
+        for (int i = 0; i < COUNT; ++i) {
+            writer.write(i + "|" + name(i) + "\n");
+        }
+        writer.close();
+    }
+    @AfterClass
+    public static void tearDownAfterClass () throws Exception {
+        textFile.delete();
+        folder.delete();
+    }
+
+    private static ScanOperator createScan (boolean useStringArena) throws Exception {
+        return new ScanOperator(new TextFileTupleReader(new VirtualFile[]{new LocalVirtualFile(textFile)}, TYPES, '|'), 300, useStringArena);
+    }
+
+    @Test
+    public void testArenaBatch () throws Exception {
+        ScanOperator scan = createScan(true);
+        scan.open();
+        int count = 0;
+        for (VectorBatch batch = scan.next(); batch != null; batch = scan.next()) {
+            assertTrue(batch.getColumn(1) instanceof StringArena);
+            StringArena names = (StringArena) batch.getColumn(1);
+            int[] keys = (int[]) batch.getColumn(0);
+            for (int i = 0; i < batch.size(); ++i) {
+                assertEquals(count, keys[i]);
+                assertEquals(name(count), names.getString(i));
+                ++count;
+            }
+        }
+        scan.close();
+        assertEquals(COUNT, count);
+    }
+
+    @Test
+    public void testFilterAndAggregate () throws Exception {
+        HashMap<String, Long> expected = new HashMap<String, Long>();
+        for (int i = 0; i < COUNT; ++i) {
+            String name = name(i);
+            if (name.compareTo("n2") >= 0 && name.compareTo("n4") <= 0) {
+                Long current = expected.get(name);
+                expected.put(name, current == null ? 1L : current + 1L);
+            }
+        }
+        assertEquals(5, expected.size());
+        for (boolean useStringArena : new boolean[]{false, true}) {
+            HashAggregateOperator aggregate = new HashAggregateOperator(
+                new FilterOperator(createScan(useStringArena), new ColumnRangePredicate(1, "n2", "n4")),
+                new int[]{1}, new Aggregate[]{Aggregate.count()}, 100);
+            HashMap<String, Long> actual = new HashMap<String, Long>();
+            aggregate.open();
+            for (VectorBatch batch = aggregate.next(); batch != null; batch = aggregate.next()) {
+                String[] names = (String[]) batch.getColumn(0);
+                long[] counts = (long[]) batch.getColumn(1);
+                for (int i = 0; i < batch.size(); ++i) {
+                    actual.put(names[i], counts[i]);
+                }
+            }
+            aggregate.close();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testProjectAndSpilledJoin () throws Exception {
+        File spillFolder = new File(folder, "spill");
+        spillFolder.mkdirs();
+        int[] rightKeys = new int[COUNT / 10];
+        long[] rightIds = new long[rightKeys.length];
+        for (int i = 0; i < rightKeys.length; ++i) {
+            rightKeys[i] = i * 10;
+            rightIds[i] = i;
+        }
+        for (boolean project : new boolean[]{false, true}) {
+            ArrayOperator right = new ArrayOperator(new ColumnType[]{ColumnType.INTEGER, ColumnType.BIGINT}, new Object[]{rightKeys, rightIds}, rightKeys.length, 64);
+            // the filter leaves a selection vector on the arena column
+            Operator left = new FilterOperator(createScan(true), new ColumnRangePredicate(0, 0L, (long) COUNT / 2));
+            if (project) {
+                left = new ProjectOperator(left, Expression.column(0, ColumnType.INTEGER), Expression.column(1, ColumnType.VARCHAR));
+            }
+            // a tiny memory budget to spill the input batches, including the arena column without the projection
+            RadixHashJoinOperator join = new RadixHashJoinOperator(left, right, 0, 0, JoinType.INNER, 100, 1L, new LocalVirtualFile(spillFolder));
+            join.open();
+            int count = 0;
+            for (VectorBatch batch = join.next(); batch != null; batch = join.next()) {
+                int[] selection = batch.getSelection();
+                int[] keys = (int[]) batch.getColumn(0);
+                String[] names = (String[]) batch.getColumn(1);
+                for (int i = 0; i < batch.size(); ++i) {
+                    int pos = selection == null ? i : selection[i];
+                    assertEquals(name(keys[pos]), names[pos]);
+                    ++count;
+                }
+            }
+            join.close();
+            assertEquals(COUNT / 20 + 1, count);
+        }
+        spillFolder.delete();
+    }
+}
@@ -0,0 +1,93 @@
+package edu.brown.lasvegas.qe.operator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.brown.lasvegas.ColumnType;
+
+/**
+ * Testcases for {@link SortOperator} and {@link TopNOperator}.
+ */
+public class SortOperatorTest {
+    private static final int COUNT = 5000;
+    private final String[] strings = new String[COUNT];
+    private final double[] doubles = new double[COUNT];
+    private final int[] ids = new int[COUNT];
+
+    public SortOperatorTest () {
+        Random random = new Random(1234L);
+        for (int i = 0; i < COUNT; ++i) {
+            strings[i] = "s" + random.nextInt(20);
+            doubles[i] = (random.nextDouble() - 0.5d) * 1000.0d;
+            ids[i] = i;
+        }
+    }
+
+    private ArrayOperator createInput () {
+        return new ArrayOperator(new ColumnType[]{ColumnType.VARCHAR, ColumnType.DOUBLE, ColumnType.INTEGER},
+            new Object[]{strings, doubles, ids}, COUNT, 128);
+    }
+
+    /** checks the output is ordered by (string ASC, double DESC) and returns the ids. */
+    private static ArrayList<Integer> readSorted (Operator sort) throws Exception {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        String prevString = null;
+        double prevDouble = 0;
+        sort.open();
+        for (VectorBatch batch = sort.next(); batch != null; batch = sort.next()) {
+            String[] s = (String[]) batch.getColumn(0);
+            double[] d = (double[]) batch.getColumn(1);
+            int[] id = (int[]) batch.getColumn(2);
+            for (int i = 0; i < batch.size(); ++i) {
+                if (prevString != null) {
+                    int cmp = prevString.compareTo(s[i]);
+                    assertTrue(cmp <= 0);
+                    if (cmp == 0) {
+                        assertTrue(prevDouble >= d[i]);
+                    }
+                }
+                prevString = s[i];
+                prevDouble = d[i];
+                result.add(id[i]);
+            }
+        }
+        sort.close();
+        return result;
+    }
+
+    @Test
+    public void testSort () throws Exception {
+        SortOperator sort = new SortOperator(createInput(), new int[]{0, 1}, new boolean[]{false, true}, 1000);
+        ArrayList<Integer> result = readSorted(sort);
+        assertEquals(COUNT, result.size());
+        boolean[] seen = new boolean[COUNT];
+        for (int id : result) {
+            assertFalse(seen[id]);
+            seen[id] = true;
+        }
+    }
+
+    @Test
+    public void testTopN () throws Exception {
+        ArrayList<Integer> all = readSorted(new SortOperator(createInput(), new int[]{0, 1}, new boolean[]{false, true}, 1000));
+        ArrayList<Integer> top = readSorted(new TopNOperator(createInput(), new int[]{0, 1}, new boolean[]{false, true}, 77, 10));
+        assertEquals(all.subList(0, 77), top);
+    }
+
+    @Test
+    public void testStableAscending () throws Exception {
+        long[] keys = new long[]{3, 1, Long.MIN_VALUE, 3, Long.MAX_VALUE, 1};
+        int[] positions = new int[]{0, 1, 2, 3, 4, 5};
+        SortOperator sort = new SortOperator(new ArrayOperator(new ColumnType[]{ColumnType.BIGINT, ColumnType.INTEGER},
+            new Object[]{keys, positions}, 6, 4), new int[]{0}, null, 10);
+        sort.open();
+        VectorBatch batch = sort.next();
+        assertArrayEquals(new int[]{2, 1, 5, 0, 3, 4}, java.util.Arrays.copyOf((int[]) batch.getColumn(1), 6));
+        assertNull(sort.next());
+        sort.close();
+    }
+}
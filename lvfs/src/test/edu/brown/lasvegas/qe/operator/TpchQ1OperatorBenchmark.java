@@ -0,0 +1,127 @@
+package edu.brown.lasvegas.qe.operator;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.lasvegas.ColumnType;
+import edu.brown.lasvegas.lvfs.data.job.BenchmarkTpchQ1JobController.Q1ResultSet;
+import edu.brown.lasvegas.lvfs.data.task.BenchmarkTpchQ1TaskRunner;
+
+/**
+ * Compares the operator pipeline of {@link BenchmarkTpchQ1TaskRunner}
+ * (scan + hash aggregate) with the hand-coded per-tuple loop it replaced
+ * ({@link Q1ResultSet#add(String, String, double, double, double, double)}),
+ * on synthetic lineitem columns in memory so that only the CPU cost is measured.
+ * This is NOT a test case.
+ */
+public class TpchQ1OperatorBenchmark {
+    private static final Logger LOG = Logger.getLogger(TpchQ1OperatorBenchmark.class);
+    private static final ColumnType[] TYPES = new ColumnType[]{
+        ColumnType.VARCHAR, ColumnType.VARCHAR, ColumnType.FLOAT, ColumnType.DOUBLE, ColumnType.FLOAT, ColumnType.FLOAT};
+
+    private final int count;
+    private final Object[] columns;
+
+    public TpchQ1OperatorBenchmark (int count) {
+        this.count = count;
+        // 4 groups as in TPC-H Q1 (A/F, N/F, N/O, R/F)
+        final String[][] groups = new String[][]{{"A", "F"}, {"N", "F"}, {"N", "O"}, {"R", "F"}};
+        String[] returnflag = new String[count];
+        String[] linestatus = new String[count];
+        float[] quantity = new float[count];
+        double[] price = new double[count];
+        float[] discount = new float[count];
+        float[] tax = new float[count];
+        Random random = new Random(12345L);
+        for (int i = 0; i < count; ++i) {
+            String[] group = groups[random.nextInt(groups.length)];
+            returnflag[i] = group[0];
+            linestatus[i] = group[1];
+            quantity[i] = 1 + random.nextInt(50);
+            price[i] = 900.0d + random.nextInt(100000) / 100.0d;
+            discount[i] = random.nextInt(11) / 100.0f;
+            tax[i] = random.nextInt(9) / 100.0f;
+        }
+        columns = new Object[]{returnflag, linestatus, quantity, price, discount, tax};
+    }
+
+    /** same aggregates as BenchmarkTpchQ1TaskRunner. */
+    private static Aggregate[] createAggregates () {
+        Expression discountedPrice = Expression.multiply(Expression.column(3, ColumnType.DOUBLE),
+            Expression.subtract(Expression.constant(1.0d), Expression.column(4, ColumnType.FLOAT)));
+        return new Aggregate[] {
+            Aggregate.sum(Expression.column(2, ColumnType.FLOAT)),
+            Aggregate.sum(Expression.column(3, ColumnType.DOUBLE)),
+            Aggregate.sum(discountedPrice),
+            Aggregate.sum(Expression.multiply(discountedPrice,
+                Expression.add(Expression.constant(1.0d), Expression.column(5, ColumnType.FLOAT)))),
+            Aggregate.sum(Expression.column(4, ColumnType.FLOAT)),
+            Aggregate.count(),
+        };
+    }
+
+    /** returns the sum of the counts to check both plans see all tuples. */
+    public long runOperators () throws Exception {
+        Operator plan = new HashAggregateOperator(new ArrayOperator(TYPES, columns, count, ScanOperator.DEFAULT_BATCH_SIZE),
+            new int[]{0, 1}, createAggregates(), ScanOperator.DEFAULT_BATCH_SIZE);
+        plan.open();
+        long total = 0;
+        for (VectorBatch batch = plan.next(); batch != null; batch = plan.next()) {
+            long[] counts = (long[]) batch.getColumn(7);
+            for (int i = 0; i < batch.size(); ++i) {
+                total += counts[i];
+            }
+        }
+        plan.close();
+        return total;
+    }
+
+    /** the same batches, aggregated tuple by tuple as the task runner did before the operators. */
+    public long runHandCoded () throws Exception {
+        Operator scan = new ArrayOperator(TYPES, columns, count, ScanOperator.DEFAULT_BATCH_SIZE);
+        Q1ResultSet result = new Q1ResultSet();
+        scan.open();
+        for (VectorBatch batch = scan.next(); batch != null; batch = scan.next()) {
+            String[] returnflag = (String[]) batch.getColumn(0);
+            String[] linestatus = (String[]) batch.getColumn(1);
+            float[] quantity = (float[]) batch.getColumn(2);
+            double[] price = (double[]) batch.getColumn(3);
+            float[] discount = (float[]) batch.getColumn(4);
+            float[] tax = (float[]) batch.getColumn(5);
+            for (int i = 0; i < batch.size(); ++i) {
+                result.add(returnflag[i], linestatus[i], quantity[i], price[i], discount[i], tax[i]);
+            }
+        }
+        scan.close();
+        long total = 0;
+        for (int i = 0; i < result.tuples.size(); ++i) {
+            total += result.tuples.get(i).count;
+        }
+        return total;
+    }
+
+    public static void main (String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 6000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        LOG.info("generating " + count + " tuples...");
+        TpchQ1OperatorBenchmark benchmark = new TpchQ1OperatorBenchmark(count);
+        long bestOperators = Long.MAX_VALUE, bestHandCoded = Long.MAX_VALUE;
+        for (int run = 0; run < runs; ++run) {
+            long start = System.nanoTime();
+            long operatorTotal = benchmark.runOperators();
+            long mid = System.nanoTime();
+            long handCodedTotal = benchmark.runHandCoded();
+            long end = System.nanoTime();
+            if (operatorTotal != count || handCodedTotal != count) {
+                throw new IllegalStateException("wrong count: " + operatorTotal + ", " + handCodedTotal);
+            }
+            LOG.info("run " + run + ": operators=" + (mid - start) / 1000000 + "ms, hand-coded=" + (end - mid) / 1000000 + "ms");
+            bestOperators = Math.min(bestOperators, mid - start);
+            bestHandCoded = Math.min(bestHandCoded, end - mid);
+        }
+        LOG.info("best of " + runs + " runs for " + count + " tuples: operators=" + bestOperators / 1000000
+            + "ms (" + bestOperators / count + "ns/tuple), hand-coded=" + bestHandCoded / 1000000
+            + "ms (" + bestHandCoded / count + "ns/tuple)");
+    }
+}
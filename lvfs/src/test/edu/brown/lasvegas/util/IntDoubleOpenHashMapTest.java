@@ -0,0 +1,116 @@
+package edu.brown.lasvegas.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testcases for {@link IntDoubleOpenHashMap} and {@link IntOpenHashMap},
+ * which also test {@link IntOpenHashTable}.
+ */
+public class IntDoubleOpenHashMapTest {
+    @Test
+    public void testRandomOperations() {
+        Random rand = new Random (12345L); // fixed seed
+        IntDoubleOpenHashMap map = new IntDoubleOpenHashMap(4); // small to cause many rehashes
+        HashMap<Integer, Double> expected = new HashMap<Integer, Double>();
+        for (int i = 0; i < 100000; ++i) {
+            int key = rand.nextInt(3000) - 1000; // including 0 and negative keys
+            switch (rand.nextInt(4)) {
+            case 0:
+            case 1:
+                map.put(key, i * 0.5d);
+                expected.put(key, i * 0.5d);
+                break;
+            case 2:
+                assertEquals(expected.containsKey(key), map.remove(key));
+                expected.remove(key);
+                break;
+            default:
+                double delta = rand.nextInt(10) * 0.25d;
+                Double current = expected.get(key);
+                double added = map.addTo(key, delta);
+                expected.put(key, current == null ? delta : current + delta);
+                assertEquals(expected.get(key).doubleValue(), added, 0.000001d);
+                break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = -1000; key < 2000; ++key) {
+            Double value = expected.get(key);
+            assertEquals(value != null, map.containsKey(key));
+            assertEquals(value == null ? -1.0d : value.doubleValue(), map.get(key, -1.0d), 0.000001d);
+        }
+
+        // iterate over all slots
+        int iterated = 0;
+        for (int slot = map.nextSlot(-1); slot >= 0; slot = map.nextSlot(slot)) {
+            assertEquals(expected.get(map.keyAt(slot)).doubleValue(), map.valueAt(slot), 0.000001d);
+            ++iterated;
+        }
+        assertEquals(expected.size(), iterated);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.nextSlot(-1));
+        assertFalse(map.containsKey(0));
+    }
+
+    @Test
+    public void testBulk() {
+        int[] keys = new int[]{5, 0, 1 << 20, -3, 5, 7};
+        double[] deltas = new double[]{1, 2, 3, 4, 5, 6};
+        IntDoubleOpenHashMap map = new IntDoubleOpenHashMap();
+        map.addToAll(keys, deltas, keys.length);
+        assertEquals(5, map.size());
+        assertEquals(6.0d, map.get(5, 0), 0.000001d);
+
+        int[] probes = new int[]{7, 8, 0, -3};
+        double[] values = new double[probes.length];
+        assertEquals(3, map.getAll(probes, probes.length, values, -1));
+        assertArrayEquals(new double[]{6, -1, 2, 4}, values, 0.000001d);
+
+        map.putAll(probes, new double[]{10, 20, 30, 40}, 2);
+        assertEquals(10.0d, map.get(7, 0), 0.000001d);
+        assertEquals(20.0d, map.get(8, 0), 0.000001d);
+        assertEquals(2.0d, map.get(0, 0), 0.000001d);
+    }
+
+    @Test
+    public void testObjectValues() {
+        IntOpenHashMap<String> map = new IntOpenHashMap<String>(2);
+        for (int i = -100; i < 100; ++i) {
+            assertNull(map.put(i * 10007, "v" + i));
+        }
+        assertEquals("v5", map.put(5 * 10007, "w5"));
+        assertEquals("w5", map.get(5 * 10007));
+        assertEquals("v0", map.get(0));
+        assertNull(map.get(1));
+
+        int[] keys = new int[]{0, 1, -3 * 10007};
+        String[] values = new String[keys.length];
+        assertEquals(2, map.getAll(keys, keys.length, values));
+        assertArrayEquals(new String[]{"v0", null, "v-3"}, values);
+
+        map.putAll(new int[]{1, 2}, new String[]{"x1", "x2"}, 2);
+        assertEquals("x2", map.get(2));
+        assertEquals(202, map.size());
+
+        int iterated = 0;
+        for (int slot = map.nextSlot(-1); slot >= 0; slot = map.nextSlot(slot)) {
+            assertEquals(map.get(map.keyAt(slot)), map.valueAt(slot));
+            ++iterated;
+        }
+        assertEquals(202, iterated);
+
+        assertEquals("v0", map.remove(0));
+        assertNull(map.remove(0));
+        assertEquals(201, map.size());
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(5 * 10007));
+    }
+}
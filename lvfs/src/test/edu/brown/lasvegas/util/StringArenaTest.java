@@ -0,0 +1,106 @@
+package edu.brown.lasvegas.util;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Testcases for {@link StringArena}.
+ */
+public class StringArenaTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static void testAppend (boolean offHeap) {
+        // starts with a tiny arena to test expansion
+        StringArena arena = new StringArena(1000, 16, offHeap);
+        assertEquals (offHeap, arena.isOffHeap());
+        for (int i = 0; i < 1000; ++i) {
+            if (i % 3 == 0) {
+                arena.append("str" + i);
+            } else if (i % 3 == 1) {
+                arena.append("\u3042\u3044" + i); // non-ASCII
+            } else {
+                byte[] bytes = ("x" + i).getBytes();
+                arena.append(bytes, 0, bytes.length);
+            }
+        }
+        assertEquals (1000, arena.size());
+        for (int i = 0; i < 1000; ++i) {
+            String expected = (i % 3 == 0 ? "str" : (i % 3 == 1 ? "\u3042\u3044" : "x")) + i;
+            assertEquals (expected, arena.getString(i));
+            assertEquals (expected.getBytes(UTF8).length, arena.getLength(i));
+        }
+        arena.clear();
+        assertEquals (0, arena.size());
+        arena.append("abc");
+        assertEquals ("abc", arena.getString(0));
+    }
+    @Test
+    public void testAppendHeap () {
+        testAppend (false);
+    }
+    @Test
+    public void testAppendOffHeap () {
+        testAppend (true);
+    }
+
+    @Test
+    public void testCompareAndHash () {
+        StringArena heap = new StringArena(10, 64);
+        StringArena direct = new StringArena(10, 64, true);
+        String[] values = new String[]{"", "a", "ab", "abc", "b", "\u00e9", "\u3042"};
+        for (String value : values) {
+            heap.append(value);
+            direct.append(value);
+        }
+        for (int i = 0; i < values.length; ++i) {
+            for (int j = 0; j < values.length; ++j) {
+                // same as String#compareTo for BMP characters
+                assertEquals (Integer.signum(values[i].compareTo(values[j])), Integer.signum(heap.compare(i, direct, j)));
+                assertEquals (i == j, heap.equals(i, direct, j));
+            }
+            assertEquals (heap.hashCode(i), direct.hashCode(i));
+            byte[] bytes = values[i].getBytes(UTF8);
+            assertEquals (heap.hashCode(i), StringArena.hashCode(bytes, 0, bytes.length));
+            assertTrue (direct.equals(i, bytes, 0, bytes.length));
+            assertEquals (0, direct.compare(i, bytes, 0, bytes.length));
+        }
+        StringArena copied = new StringArena(10, 1);
+        copied.append(direct, 6);
+        copied.append(heap, 3);
+        assertEquals ("\u3042", copied.getString(0));
+        assertEquals ("abc", copied.getString(1));
+        assertEquals (new ByteArray("abc".getBytes()), copied.getByteArray(1));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testFull () {
+        StringArena arena = new StringArena(2, 16);
+        arena.append("a");
+        arena.append("b");
+        arena.append("c");
+    }
+
+    @Test
+    public void testAppendSubstringAndMaxByte () {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            StringArena arena = new StringArena(10, 16, offHeap);
+            String line = "abc|\u3042\u3044x|\ud83d\ude00|";
+            arena.append(line, 0, 3);
+            arena.append(line, 4, 7);
+            arena.append(line, 8, 10);
+            arena.append(line, 11, 11);
+            assertEquals ("abc", arena.getString(0));
+            assertEquals ("\u3042\u3044x", arena.getString(1));
+            assertEquals ("\ud83d\ude00", arena.getString(2));
+            assertEquals ("", arena.getString(3));
+            assertEquals ('c', arena.maxByte(0, 1));
+            assertTrue (arena.maxByte(1, 2) >= 0x80 && arena.maxByte(1, 2) < 0xF0);
+            assertTrue (arena.maxByte(0, 3) >= 0xF0);
+            assertEquals (0, arena.maxByte(3, 4));
+            assertEquals (0, arena.maxByte(1, 1));
+        }
+    }
+}